@@ -0,0 +1,115 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import qupath.lib.color.ColorDeconvolutionStains;
+import qupath.lib.color.ColorDeconvolutionStains.DefaultColorDeconvolutionStains;
+import qupath.lib.color.ColorTransformKernels;
+import qupath.lib.color.ColorTransformer;
+import qupath.lib.color.ColorTransformer.ColorTransformMethod;
+
+/**
+ * Benchmarks comparing per-pixel color transforms with the bulk kernels in {@link ColorTransformKernels}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ColorTransformBenchmark {
+	
+	/**
+	 * Number of pixels to transform (default corresponds to a 512x512 tile).
+	 */
+	@Param({"262144"})
+	public int nPixels;
+	
+	private ColorDeconvolutionStains stains;
+	private int[] rgb;
+	private float[] stain1, stain2, stain3;
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		stains = ColorDeconvolutionStains.makeDefaultColorDeconvolutionStains(DefaultColorDeconvolutionStains.H_DAB);
+		var rand = new Random(20200615L);
+		rgb = new int[nPixels];
+		for (int i = 0; i < nPixels; i++)
+			rgb[i] = rand.nextInt(0xffffff + 1);
+		stain1 = new float[nPixels];
+		stain2 = new float[nPixels];
+		stain3 = new float[nPixels];
+	}
+	
+	@Benchmark
+	public float[] deconvolveOneStainPerPixel() {
+		for (int i = 0; i < nPixels; i++)
+			stain1[i] = ColorTransformer.colorDeconvolveRGBPixel(rgb[i], stains, 0);
+		return stain1;
+	}
+	
+	@Benchmark
+	public float[] deconvolveOneStainKernel() {
+		return ColorTransformKernels.deconvolve(rgb, stains, 1, stain1);
+	}
+	
+	@Benchmark
+	public float[] deconvolveAllStainsPerPixel() {
+		for (int i = 0; i < nPixels; i++) {
+			int v = rgb[i];
+			stain1[i] = ColorTransformer.colorDeconvolveRGBPixel(v, stains, 0);
+			stain2[i] = ColorTransformer.colorDeconvolveRGBPixel(v, stains, 1);
+			stain3[i] = ColorTransformer.colorDeconvolveRGBPixel(v, stains, 2);
+		}
+		return stain3;
+	}
+	
+	@Benchmark
+	public float[] deconvolveAllStainsKernel() {
+		ColorTransformKernels.deconvolve(rgb, stains, stain1, stain2, stain3);
+		return stain3;
+	}
+	
+	@Benchmark
+	public float[] opticalDensitySumPerPixel() {
+		for (int i = 0; i < nPixels; i++)
+			stain1[i] = ColorTransformer.getPixelValue(rgb[i], ColorTransformMethod.Optical_density_sum, stains);
+		return stain1;
+	}
+	
+	@Benchmark
+	public float[] opticalDensitySumKernel() {
+		return ColorTransformKernels.opticalDensitySum(rgb, stains, stain1);
+	}
+
+}
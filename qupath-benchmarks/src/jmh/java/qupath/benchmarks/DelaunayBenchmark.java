@@ -0,0 +1,80 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.benchmarks;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import qupath.lib.analysis.DelaunayTools;
+import qupath.lib.analysis.DelaunayTools.Subdivision;
+import qupath.lib.objects.PathObject;
+
+/**
+ * Benchmarks for computing a Delaunay triangulation from detection centroids, 
+ * and for extracting the neighbors of every detection.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DelaunayBenchmark {
+	
+	/**
+	 * Number of detections.
+	 */
+	@Param({"10000", "100000"})
+	public int nDetections;
+	
+	private List<PathObject> detections;
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		double size = Math.sqrt(nDetections * 400.0);
+		detections = SyntheticData.createDetections(20200615L, nDetections, size, size, 0);
+	}
+	
+	@Benchmark
+	public Subdivision createFromCentroids() {
+		return DelaunayTools.createFromCentroids(detections, false);
+	}
+	
+	/**
+	 * Neighbors are cached by the subdivision, so the triangulation needs to be recomputed each time.
+	 * @return
+	 */
+	@Benchmark
+	public Map<PathObject, List<PathObject>> createAndGetAllNeighbors() {
+		return DelaunayTools.createFromCentroids(detections, false).getAllNeighbors();
+	}
+
+}
@@ -0,0 +1,120 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.UUID;
+
+import qupath.lib.images.servers.AbstractTileableImageServer;
+import qupath.lib.images.servers.ImageChannel;
+import qupath.lib.images.servers.ImageServerBuilder.ServerBuilder;
+import qupath.lib.images.servers.ImageServerMetadata;
+import qupath.lib.images.servers.PixelType;
+import qupath.lib.images.servers.TileRequest;
+
+/**
+ * Synthetic RGB image server that generates deterministic tiles on request.
+ * <p>
+ * This avoids any dependency on image files or decoding libraries, so that benchmarks 
+ * measure the overhead of tile management, caching and stitching rather than I/O.
+ */
+public class GeneratingImageServer extends AbstractTileableImageServer {
+	
+	private ImageServerMetadata metadata;
+	
+	/**
+	 * Constructor.
+	 * @param width full resolution image width
+	 * @param height full resolution image height
+	 * @param tileSize preferred tile width and height
+	 * @param downsamples downsample values for each pyramid level
+	 */
+	public GeneratingImageServer(int width, int height, int tileSize, double... downsamples) {
+		super();
+		this.metadata = new ImageServerMetadata.Builder(getClass(), createID(), width, height)
+				.preferredTileSize(tileSize, tileSize)
+				.levelsFromDownsamples(downsamples)
+				.rgb(true)
+				.pixelType(PixelType.UINT8)
+				.channels(ImageChannel.getDefaultRGBChannels())
+				.build();
+	}
+
+	@Override
+	public Collection<URI> getURIs() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public String getServerType() {
+		return "Generating image server";
+	}
+
+	@Override
+	public ImageServerMetadata getOriginalMetadata() {
+		return metadata;
+	}
+
+	/**
+	 * Generate a tile with smoothly-varying, hematoxylin &amp; eosin-like colors.
+	 * Values depend only upon the full-resolution pixel coordinates, so tiles are identical 
+	 * however often they are requested.
+	 */
+	@Override
+	protected BufferedImage readTile(TileRequest tileRequest) throws IOException {
+		int w = tileRequest.getTileWidth();
+		int h = tileRequest.getTileHeight();
+		double downsample = tileRequest.getDownsample();
+		var img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+		int[] rgb = new int[w * h];
+		for (int y = 0; y < h; y++) {
+			int yy = (int)((tileRequest.getTileY() + y) * downsample);
+			for (int x = 0; x < w; x++) {
+				int xx = (int)((tileRequest.getTileX() + x) * downsample);
+				int hash = (xx * 73856093) ^ (yy * 19349663);
+				int noise = (hash >>> 24) & 0x1f;
+				int r = 160 + ((xx >> 3) & 0x3f) - noise;
+				int g = 80 + ((yy >> 3) & 0x3f) + noise;
+				int b = 180 + (((xx + yy) >> 4) & 0x3f) - noise;
+				rgb[y * w + x] = (r << 16) | (g << 8) | b;
+			}
+		}
+		img.getRaster().setDataElements(0, 0, w, h, rgb);
+		return img;
+	}
+
+	@Override
+	protected ServerBuilder<BufferedImage> createServerBuilder() {
+		return null;
+	}
+
+	@Override
+	protected String createID() {
+		return UUID.randomUUID().toString();
+	}
+
+}
@@ -0,0 +1,83 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.locationtech.jts.geom.Geometry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import qupath.lib.roi.GeometryTools;
+
+/**
+ * Benchmarks for merging many small, partially-overlapping geometries, 
+ * as happens when creating annotations from pixel classification or merging tiles.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GeometryUnionBenchmark {
+	
+	/**
+	 * Number of geometries to merge.
+	 */
+	@Param({"1000", "10000"})
+	public int nGeometries;
+	
+	/**
+	 * Approximate fraction of the image area covered by geometries, which controls the amount of overlap.
+	 */
+	@Param({"0.2", "1.0"})
+	public double coverage;
+	
+	private List<Geometry> geometries;
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		var rand = new Random(20200615L);
+		double radius = 10;
+		double size = Math.sqrt(nGeometries * Math.PI * radius * radius / coverage);
+		geometries = new ArrayList<>(nGeometries);
+		for (int i = 0; i < nGeometries; i++) {
+			var roi = SyntheticData.createNucleusROI(rand, rand.nextDouble() * size, rand.nextDouble() * size, radius, 16);
+			geometries.add(roi.getGeometry());
+		}
+	}
+	
+	@Benchmark
+	public Geometry union() {
+		return GeometryTools.union(geometries);
+	}
+
+}
@@ -0,0 +1,111 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import qupath.lib.objects.PathDetectionObject;
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.hierarchy.PathObjectHierarchy;
+import qupath.lib.regions.ImageRegion;
+
+/**
+ * Benchmarks for spatial queries of a large object hierarchy, 
+ * similar to those made when painting detections in the viewer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HierarchyBenchmark {
+	
+	private static final int WIDTH = 100_000;
+	private static final int HEIGHT = 80_000;
+	private static final int N_REGIONS = 256;
+
+	/**
+	 * Number of detections in the hierarchy.
+	 */
+	@Param({"1000000"})
+	public int nDetections;
+	
+	/**
+	 * Width and height of each query region.
+	 */
+	@Param({"512", "4096"})
+	public int regionSize;
+	
+	private PathObjectHierarchy hierarchy;
+	private ImageRegion[] regions;
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		hierarchy = new PathObjectHierarchy();
+		hierarchy.addPathObjects(SyntheticData.createDetections(20200615L, nDetections, WIDTH, HEIGHT, 0));
+		
+		var rand = new Random(20200616L);
+		regions = new ImageRegion[N_REGIONS];
+		for (int i = 0; i < N_REGIONS; i++) {
+			regions[i] = ImageRegion.createInstance(
+					rand.nextInt(WIDTH - regionSize), rand.nextInt(HEIGHT - regionSize),
+					regionSize, regionSize, 0, 0);
+		}
+		// Ensure any lazily-built spatial cache is populated before measuring
+		hierarchy.getObjectsForRegion(PathDetectionObject.class, regions[0], null);
+	}
+	
+	@State(Scope.Thread)
+	public static class QueryState {
+		
+		private int ind = 0;
+		private List<PathObject> results = new ArrayList<>();
+		
+		ImageRegion next(ImageRegion[] regions) {
+			var region = regions[ind];
+			ind = (ind + 1) % regions.length;
+			results.clear();
+			return region;
+		}
+		
+	}
+	
+	@Benchmark
+	public Collection<PathObject> getObjectsForRegion(QueryState state) {
+		var region = state.next(regions);
+		return hierarchy.getObjectsForRegion(PathDetectionObject.class, region, state.results);
+	}
+
+}
@@ -0,0 +1,109 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import qupath.lib.measurements.MeasurementList;
+import qupath.lib.measurements.MeasurementList.MeasurementListType;
+import qupath.lib.measurements.MeasurementListFactory;
+
+/**
+ * Benchmarks for adding and retrieving named values in numeric measurement lists.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MeasurementListBenchmark {
+	
+	/**
+	 * Number of measurements per list (cell detection typically generates around 50).
+	 */
+	@Param({"10", "50", "200"})
+	public int nMeasurements;
+	
+	/**
+	 * Type of measurement list.
+	 */
+	@Param({"FLOAT", "DOUBLE"})
+	public MeasurementListType type;
+	
+	private List<String> names;
+	private MeasurementList list;
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		names = SyntheticData.createMeasurementNames(nMeasurements);
+		list = MeasurementListFactory.createMeasurementList(nMeasurements, type);
+		for (int i = 0; i < nMeasurements; i++)
+			list.addMeasurement(names.get(i), i);
+		list.close();
+	}
+
+	/**
+	 * Create, populate and close a new list, as happens for every detection.
+	 * @return
+	 */
+	@Benchmark
+	public MeasurementList putAll() {
+		var newList = MeasurementListFactory.createMeasurementList(nMeasurements, type);
+		int i = 0;
+		for (var name : names)
+			newList.putMeasurement(name, i++);
+		newList.close();
+		return newList;
+	}
+	
+	/**
+	 * Retrieve every value by name, as happens when exporting or classifying.
+	 * @param bh
+	 */
+	@Benchmark
+	public void getAllByName(Blackhole bh) {
+		for (var name : names)
+			bh.consume(list.getMeasurementValue(name));
+	}
+	
+	/**
+	 * Replace every value in a closed list.
+	 */
+	@Benchmark
+	public void updateAll() {
+		int i = 0;
+		for (var name : names)
+			list.putMeasurement(name, i++);
+	}
+
+}
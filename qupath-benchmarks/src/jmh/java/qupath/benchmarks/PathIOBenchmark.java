@@ -0,0 +1,91 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import qupath.lib.images.ImageData;
+import qupath.lib.io.PathIO;
+import qupath.lib.io.PathIO.DataFormat;
+import qupath.lib.objects.hierarchy.PathObjectHierarchy;
+
+/**
+ * Benchmarks for writing and reading .qpdata files, using either data format.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PathIOBenchmark {
+	
+	/**
+	 * Number of detections in the hierarchy.
+	 */
+	@Param({"10000", "100000"})
+	public int nDetections;
+	
+	/**
+	 * Format used when writing the data.
+	 */
+	@Param({"SERIALIZED", "BINARY"})
+	public DataFormat format;
+	
+	private GeneratingImageServer server;
+	private ImageData<BufferedImage> imageData;
+	private byte[] bytes;
+	
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		server = new GeneratingImageServer(40_000, 30_000, 512, 1.0);
+		var hierarchy = new PathObjectHierarchy();
+		hierarchy.addPathObjects(SyntheticData.createDetections(20200615L, nDetections, 40_000, 30_000, 20));
+		imageData = new ImageData<>(server, hierarchy);
+		bytes = write().toByteArray();
+	}
+	
+	@Benchmark
+	public ByteArrayOutputStream write() throws IOException {
+		var stream = new ByteArrayOutputStream(bytes == null ? 1024 * 1024 : bytes.length);
+		PathIO.writeImageData(stream, imageData, format);
+		return stream;
+	}
+	
+	@Benchmark
+	public ImageData<BufferedImage> read() throws IOException {
+		return PathIO.readImageData(new ByteArrayInputStream(bytes), null, server, BufferedImage.class);
+	}
+
+}
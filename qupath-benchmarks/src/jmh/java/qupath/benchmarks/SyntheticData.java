@@ -0,0 +1,114 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import qupath.lib.measurements.MeasurementList;
+import qupath.lib.measurements.MeasurementListFactory;
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjects;
+import qupath.lib.objects.classes.PathClass;
+import qupath.lib.objects.classes.PathClassFactory;
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.roi.ROIs;
+import qupath.lib.roi.interfaces.ROI;
+
+/**
+ * Helper methods to create reproducible datasets for benchmarking.
+ * <p>
+ * All methods require a seed, so that repeated runs (and different machines) measure the same work.
+ */
+class SyntheticData {
+	
+	private SyntheticData() {}
+	
+	/**
+	 * Create a polygonal ROI approximating a nucleus, with a little random variation in the vertices.
+	 * @param rand
+	 * @param cx centroid x-coordinate
+	 * @param cy centroid y-coordinate
+	 * @param radius approximate radius
+	 * @param nVertices number of polygon vertices
+	 * @return
+	 */
+	static ROI createNucleusROI(Random rand, double cx, double cy, double radius, int nVertices) {
+		double[] x = new double[nVertices];
+		double[] y = new double[nVertices];
+		for (int i = 0; i < nVertices; i++) {
+			double theta = 2 * Math.PI * i / nVertices;
+			double r = radius * (0.8 + 0.4 * rand.nextDouble());
+			x[i] = cx + Math.cos(theta) * r;
+			y[i] = cy + Math.sin(theta) * r;
+		}
+		return ROIs.createPolygonROI(x, y, ImagePlane.getDefaultPlane());
+	}
+	
+	/**
+	 * Create detections distributed uniformly at random across an image.
+	 * @param seed seed for the random number generator
+	 * @param n number of detections
+	 * @param width image width
+	 * @param height image height
+	 * @param nMeasurements number of measurements to add to each detection
+	 * @return
+	 */
+	static List<PathObject> createDetections(long seed, int n, double width, double height, int nMeasurements) {
+		var rand = new Random(seed);
+		var classes = new PathClass[] {
+				PathClassFactory.getPathClass("Tumor"),
+				PathClassFactory.getPathClass("Stroma"),
+				PathClassFactory.getPathClass("Immune cells"),
+				null
+		};
+		var names = createMeasurementNames(nMeasurements);
+		List<PathObject> pathObjects = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			double radius = 3 + rand.nextDouble() * 5;
+			double cx = radius + rand.nextDouble() * (width - radius * 2);
+			double cy = radius + rand.nextDouble() * (height - radius * 2);
+			var roi = createNucleusROI(rand, cx, cy, radius, 8);
+			MeasurementList list = MeasurementListFactory.createMeasurementList(nMeasurements, MeasurementList.MeasurementListType.FLOAT);
+			for (var name : names)
+				list.addMeasurement(name, rand.nextGaussian());
+			list.close();
+			pathObjects.add(PathObjects.createDetectionObject(roi, classes[rand.nextInt(classes.length)], list));
+		}
+		return pathObjects;
+	}
+	
+	/**
+	 * Create measurement names in the style of those generated by cell detection.
+	 * @param n
+	 * @return
+	 */
+	static List<String> createMeasurementNames(int n) {
+		List<String> names = new ArrayList<>(n);
+		for (int i = 0; i < n; i++)
+			names.add("Measurement " + (i + 1) + ": Mean");
+		return names;
+	}
+
+}
@@ -0,0 +1,112 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import qupath.lib.images.servers.ImageServerProvider;
+import qupath.lib.regions.RegionRequest;
+
+/**
+ * Benchmarks for requesting regions from a tiled image server, 
+ * including stitching tiles together and resampling between pyramid levels.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TileReadingBenchmark {
+	
+	private static final int WIDTH = 40_000;
+	private static final int HEIGHT = 30_000;
+	private static final int N_REQUESTS = 64;
+	
+	/**
+	 * Size of each requested region, at the requested resolution.
+	 */
+	@Param({"256", "1024"})
+	public int regionSize;
+	
+	/**
+	 * Requested downsample; non-integer values require resampling from the closest pyramid level.
+	 */
+	@Param({"1.0", "2.5", "4.0"})
+	public double downsample;
+	
+	/**
+	 * If true, tiles are cached between requests (as they would be in the viewer).
+	 */
+	@Param({"true", "false"})
+	public boolean cached;
+	
+	private Map<RegionRequest, BufferedImage> previousCache;
+	private GeneratingImageServer server;
+	private RegionRequest[] requests;
+	private int ind = 0;
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		previousCache = ImageServerProvider.getCache(BufferedImage.class);
+		ImageServerProvider.setCache(cached ? new ConcurrentHashMap<>() : null, BufferedImage.class);
+		server = new GeneratingImageServer(WIDTH, HEIGHT, 512, 1.0, 4.0, 16.0);
+		
+		// Use a limited set of requests, so that caching can be effective
+		var rand = new Random(20200615L);
+		int size = (int)Math.round(regionSize * downsample);
+		requests = new RegionRequest[N_REQUESTS];
+		for (int i = 0; i < N_REQUESTS; i++) {
+			int x = rand.nextInt(WIDTH - size);
+			int y = rand.nextInt(HEIGHT - size);
+			requests[i] = RegionRequest.createInstance(server.getPath(), downsample, x, y, size, size);
+		}
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		server.close();
+		ImageServerProvider.setCache(previousCache, BufferedImage.class);
+	}
+	
+	@Benchmark
+	public BufferedImage readRegion() throws IOException {
+		var request = requests[ind];
+		ind = (ind + 1) % requests.length;
+		return server.readBufferedImage(request);
+	}
+
+}
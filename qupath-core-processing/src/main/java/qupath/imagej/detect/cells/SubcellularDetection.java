@@ -487,7 +487,7 @@ public class SubcellularDetection extends AbstractInteractivePlugin<BufferedImag
 		 */
 		@Override
 		protected MeasurementList createEmptyMeasurementList() {
-			return MeasurementListFactory.createMeasurementList(0, MeasurementListType.FLOAT);
+			return MeasurementListFactory.createMeasurementList(0, MeasurementListType.COLUMNAR);
 		}
 		
 		@Override
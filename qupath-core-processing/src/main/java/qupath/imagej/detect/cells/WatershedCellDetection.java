@@ -812,7 +812,7 @@ public class WatershedCellDetection extends AbstractTileableDetectionPlugin<Buff
 				}
 				
 				// Create a new shared measurement list
-				MeasurementList measurementList = MeasurementListFactory.createMeasurementList(makeMeasurements ? 30 : 0, MeasurementList.MeasurementListType.FLOAT);
+				MeasurementList measurementList = MeasurementListFactory.createMeasurementList(makeMeasurements ? 30 : 0, MeasurementList.MeasurementListType.COLUMNAR);
 				
 				if (makeMeasurements) {
 					ObjectMeasurements.addShapeStatistics(measurementList, r, fpDetection, cal, "Nucleus: ");
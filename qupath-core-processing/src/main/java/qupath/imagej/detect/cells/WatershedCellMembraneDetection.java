@@ -807,7 +807,7 @@ public class WatershedCellMembraneDetection extends AbstractTileableDetectionPlu
 				}
 				
 				// Create a new shared measurement list
-				MeasurementList measurementList = MeasurementListFactory.createMeasurementList(makeMeasurements ? 30 : 0, MeasurementList.MeasurementListType.FLOAT);
+				MeasurementList measurementList = MeasurementListFactory.createMeasurementList(makeMeasurements ? 30 : 0, MeasurementList.MeasurementListType.COLUMNAR);
 				
 				if (makeMeasurements) {
 					ObjectMeasurements.addShapeStatistics(measurementList, r, fpH, cal, "Nucleus: ");
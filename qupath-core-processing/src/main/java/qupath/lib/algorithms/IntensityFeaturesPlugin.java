@@ -30,6 +30,7 @@ import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -87,6 +88,12 @@ public class IntensityFeaturesPlugin extends AbstractInteractivePlugin<BufferedI
 	
 	private boolean parametersInitialized = false;
 	
+	/**
+	 * Maximum width and height of a region, in pixels at the requested resolution, for it to be 
+	 * cropped from a larger tile rather than read separately.
+	 */
+	private static final int TILE_SIZE = 512;
+	
 	private static Map<Integer, BasicChannel> channelMap = new HashMap<>();
 	
 	static enum RegionType {
@@ -406,6 +413,86 @@ public class IntensityFeaturesPlugin extends AbstractInteractivePlugin<BufferedI
 	}
 	
 	
+	/**
+	 * Objects with small regions are grouped by their location, so that the pixels for each group can be 
+	 * read and transformed only once - rather than separately for every object.
+	 * Any other objects are processed individually.
+	 */
+	@Override
+	protected Collection<Runnable> getTasks(final PluginRunner<BufferedImage> runner) {
+		Collection<? extends PathObject> parentObjects = getParentObjects(runner);
+		if (parentObjects == null || parentObjects.isEmpty())
+			return Collections.emptyList();
+		
+		ImageData<BufferedImage> imageData = runner.getImageData();
+		ParameterList params = getParameterList(imageData);
+		ImageServer<BufferedImage> server = imageData.getServer();
+		double downsample = calculateDownsample(server.getPixelCalibration(), params);
+		boolean canTile = downsample > 0 && canCropRegions(server, downsample);
+		int tileSize = (int)Math.round(TILE_SIZE * downsample);
+		
+		List<Runnable> tasks = new ArrayList<>();
+		Map<List<Integer>, Map<PathObject, RegionRequest>> tiles = new LinkedHashMap<>();
+		for (PathObject pathObject : parentObjects) {
+			RegionRequest region = canTile ? getCroppableRegion(pathObject, server, params, downsample) : null;
+			if (region == null) {
+				addRunnableTasks(imageData, pathObject, tasks);
+				continue;
+			}
+			var key = Arrays.asList(region.getZ(), region.getT(), region.getX() / tileSize, region.getY() / tileSize);
+			tiles.computeIfAbsent(key, k -> new LinkedHashMap<>()).put(pathObject, region);
+		}
+		for (var regions : tiles.values()) {
+			if (regions.size() == 1)
+				addRunnableTasks(imageData, regions.keySet().iterator().next(), tasks);
+			else
+				tasks.add(new TiledIntensityFeatureRunnable(imageData, regions, params));
+		}
+		return tasks;
+	}
+	
+	
+	/**
+	 * Check whether regions read at the specified downsample can be cropped from a larger region without 
+	 * changing any pixel values. This requires that no interpolation is involved.
+	 */
+	private static boolean canCropRegions(final ImageServer<BufferedImage> server, final double downsample) {
+		for (double d : server.getPreferredDownsamples()) {
+			if (d == downsample)
+				return true;
+		}
+		return false;
+	}
+	
+	
+	/**
+	 * Get the region that would be used to measure an object, if it can be cropped exactly from a larger tile.
+	 * Otherwise return null, and the object should be measured using its own region.
+	 */
+	static RegionRequest getCroppableRegion(final PathObject pathObject, final ImageServer<BufferedImage> server, final ParameterList params, final double downsample) {
+		RegionType regionType = (RegionType)params.getChoiceParameterValue("region");
+		ROI roi = getMeasurementROI(pathObject, regionType);
+		if (roi == null || computeTiledROIs(roi, downsample).size() != 1)
+			return null;
+		RegionRequest region = getRegionRequest(server, params, downsample, regionType, roi);
+		// Require the region to be inside the image, and aligned with the pixel grid at the requested resolution
+		if (region.getX() < 0 || region.getY() < 0 || region.getMaxX() > server.getWidth() || region.getMaxY() > server.getHeight())
+			return null;
+		if (region.getWidth() <= 0 || region.getHeight() <= 0 || 
+				region.getWidth() > TILE_SIZE * downsample || region.getHeight() > TILE_SIZE * downsample)
+			return null;
+		if (!isAligned(region.getX(), downsample) || !isAligned(region.getY(), downsample) ||
+				!isAligned(region.getWidth(), downsample) || !isAligned(region.getHeight(), downsample))
+			return null;
+		return region;
+	}
+	
+	private static boolean isAligned(final int value, final double downsample) {
+		double scaled = value / downsample;
+		return scaled == Math.rint(scaled);
+	}
+	
+	
 //	@Override
 //	protected Collection<Runnable> getTasks(final PluginRunner<BufferedImage> runner) {
 //		Collection<Runnable> tasks = super.getTasks(runner);
@@ -470,6 +557,139 @@ public class IntensityFeaturesPlugin extends AbstractInteractivePlugin<BufferedI
 	}
 	
 	
+	/**
+	 * Compute features for multiple objects from a single tile.
+	 * <p>
+	 * The tile is read and color-transformed once, and the pixels for each object cropped from it. 
+	 * This gives the same results as processing each object individually, provided that the objects are 
+	 * aligned with the pixel grid (see {@link IntensityFeaturesPlugin#getCroppableRegion(PathObject, ImageServer, ParameterList, double)}).
+	 */
+	static class TiledIntensityFeatureRunnable implements Runnable {
+		
+		private ImageData<BufferedImage> imageData;
+		private ParameterList params;
+		private Map<PathObject, RegionRequest> regions;
+		private RegionRequest tileRegion;
+		
+		public TiledIntensityFeatureRunnable(final ImageData<BufferedImage> imageData, final Map<PathObject, RegionRequest> regions, final ParameterList params) {
+			this.imageData = imageData;
+			this.regions = regions;
+			this.params = params;
+			this.tileRegion = getTileRegion(imageData.getServer().getPath(), regions.values());
+		}
+		
+		private static RegionRequest getTileRegion(final String path, final Collection<RegionRequest> regions) {
+			int minX = Integer.MAX_VALUE;
+			int minY = Integer.MAX_VALUE;
+			int maxX = Integer.MIN_VALUE;
+			int maxY = Integer.MIN_VALUE;
+			RegionRequest first = regions.iterator().next();
+			for (var region : regions) {
+				minX = Math.min(minX, region.getX());
+				minY = Math.min(minY, region.getY());
+				maxX = Math.max(maxX, region.getMaxX());
+				maxY = Math.max(maxY, region.getMaxY());
+			}
+			return RegionRequest.createInstance(path, first.getDownsample(), minX, minY, maxX - minX, maxY - minY, first.getZ(), first.getT());
+		}
+
+		@Override
+		public void run() {
+			try {
+				processObjects();
+			} catch (IOException e) {
+				logger.error("Unable to process " + tileRegion, e);
+			} finally {
+				for (PathObject pathObject : regions.keySet())
+					pathObject.getMeasurementList().close();
+				imageData = null;
+				params = null;
+			}
+		}
+		
+		private void processObjects() throws IOException {
+			var server = imageData.getServer();
+			var stains = imageData.getColorDeconvolutionStains();
+			
+			BufferedImage img = server.readBufferedImage(tileRegion);
+			if (img == null) {
+				// Process objects individually, so that they are handled in exactly the same way
+				for (PathObject pathObject : regions.keySet()) {
+					if (Thread.currentThread().isInterrupted()) {
+						logger.warn("Measurement skipped - thread interrupted!");
+						return;
+					}
+					processObject(pathObject, params, imageData);
+				}
+				return;
+			}
+			
+			// Transform the pixels for the full tile, once per requested transform
+			int w = img.getWidth();
+			int h = img.getHeight();
+			int[] rgbBuffer = server.isRGB() ? img.getRGB(0, 0, w, h, null, 0, w) : null;
+			Map<FeatureColorTransform, float[]> tilePixels = new LinkedHashMap<>();
+			for (FeatureColorTransform transform : getTransforms(server)) {
+				if (isRequested(transform, params))
+					tilePixels.put(transform, transform.getTransformedPixels(img, rgbBuffer, stains, null));
+			}
+			
+			RegionType regionType = (RegionType)params.getChoiceParameterValue("region");
+			boolean useROI = regionType == RegionType.ROI || regionType == RegionType.NUCLEUS;
+			String prefix = getDiameterString(server, params);
+			double downsample = tileRegion.getDownsample();
+			
+			// Reuse the same feature computers (along with their histograms & co-occurrence matrices) for all objects
+			Map<FeatureColorTransform, List<FeatureComputer>> map = createFeatureComputers(server);
+			float[] pixels = null;
+			for (var entry : regions.entrySet()) {
+				if (Thread.currentThread().isInterrupted()) {
+					logger.warn("Measurement skipped - thread interrupted!");
+					return;
+				}
+				PathObject pathObject = entry.getKey();
+				RegionRequest region = entry.getValue();
+				int x = (int)Math.round((region.getX() - tileRegion.getX()) / downsample);
+				int y = (int)Math.round((region.getY() - tileRegion.getY()) / downsample);
+				int width = (int)Math.max(1, Math.round(region.getWidth() / downsample));
+				int height = (int)Math.max(1, Math.round(region.getHeight() / downsample));
+				if (x + width > w || y + height > h) {
+					processObject(pathObject, params, imageData);
+					continue;
+				}
+				
+				// Create mask ROI if necessary
+				byte[] maskBytes = null;
+				if (useROI && width * height > 1) {
+					BufferedImage imgMask = BufferedImageTools.createROIMask(width, height, getMeasurementROI(pathObject, regionType), region);
+					maskBytes = ((DataBufferByte)imgMask.getRaster().getDataBuffer()).getData();
+				}
+				
+				if (pixels == null || pixels.length < width * height)
+					pixels = new float[width * height];
+				for (var transformPixels : tilePixels.entrySet()) {
+					float[] source = transformPixels.getValue();
+					for (int yy = 0; yy < height; yy++)
+						System.arraycopy(source, (y + yy) * w + x, pixels, yy * width, width);
+					updateFeatures(map.get(transformPixels.getKey()), transformPixels.getKey(), pixels, width, height, maskBytes, regionType, params);
+				}
+				
+				addMeasurements(pathObject, map, prefix, imageData, params);
+				for (List<FeatureComputer> computers : map.values()) {
+					for (FeatureComputer computer : computers)
+						computer.reset();
+				}
+			}
+		}
+		
+		@Override
+		public String toString() {
+			return "Intensity measurements";
+		}
+		
+	}
+	
+	
 	static double calculateDownsample(PixelCalibration cal, ParameterList params) {
 		if (cal.hasPixelSizeMicrons()) {
 			return params.getDoubleParameterValue("pixelSizeMicrons") / cal.getAveragedPixelSizeMicrons();
@@ -497,43 +717,17 @@ public class IntensityFeaturesPlugin extends AbstractInteractivePlugin<BufferedI
 			
 		// Try to get ROI
 		boolean useROI = regionType == RegionType.ROI || regionType == RegionType.NUCLEUS;
-		ROI roi = null;
-		if (regionType == RegionType.NUCLEUS) {
-			if (pathObject instanceof PathCellObject)
-				roi = ((PathCellObject)pathObject).getNucleusROI();
-		} else
-			roi = pathObject.getROI();
-//		if (pathObject instanceof PathCellObject && ((PathCellObject)pathObject).getNucleusROI() != null)
-//			pathROI = ((PathCellObject)pathObject).getNucleusROI();
+		ROI roi = getMeasurementROI(pathObject, regionType);
 		if (roi == null)
 			return false;
 		
 		// Create a map - this is useful for occasions when tiling is needed
-		Map<FeatureColorTransform, List<FeatureComputer>> map = new LinkedHashMap<>();
-		if (server.isRGB()) {
-			for (FeatureColorTransform transform : FeatureColorTransformEnum.values()) {
-				List<FeatureComputer> list = new ArrayList<>();
-				map.put(transform, list);
-				for (FeatureComputerBuilder builder : builders) {
-					list.add(builder.build());
-				}
-			}
-		} else {
-			for (FeatureColorTransform transform : getBasicChannelTransforms(server.nChannels())) {
-				List<FeatureComputer> list = new ArrayList<>();
-				map.put(transform, list);
-				for (FeatureComputerBuilder builder : builders) {
-					list.add(builder.build());
-				}
-			}
-		}
+		Map<FeatureColorTransform, List<FeatureComputer>> map = createFeatureComputers(server);
 		
 		String prefix = getDiameterString(server, params);
 
 		// Create tiled ROIs, if required
-		ImmutableDimension sizePreferred = ImmutableDimension.getInstance((int)(2000*downsample), (int)(2000*downsample));
-//		ImmutableDimension sizePreferred = new ImmutableDimension((int)(200*downsample), (int)(200*downsample));
-		Collection<? extends ROI> rois = RoiTools.computeTiledROIs(roi, sizePreferred, sizePreferred, false, 0);
+		Collection<? extends ROI> rois = computeTiledROIs(roi, downsample);
 		if (rois.size() > 1)
 			logger.info("Splitting {} into {} tiles for intensity measurements", roi, rois.size());
 		
@@ -545,19 +739,7 @@ public class IntensityFeaturesPlugin extends AbstractInteractivePlugin<BufferedI
 			}
 			
 			// Get bounds
-			RegionRequest region;
-			if (useROI) {
-				region = RegionRequest.createInstance(server.getPath(), downsample, pathROI);
-			} else {
-				ImmutableDimension size = getPreferredTileSizePixels(server, params);
-				//		RegionRequest region = RegionRequest.createInstance(server.getPath(), downsample, (int)(pathROI.getCentroidX() + .5) - size.width/2, (int)(pathROI.getCentroidY() + .5) - size.height/2, size.width, size.height, pathROI.getT(), pathROI.getZ());
-				// Try to align with pixel boundaries according to the downsample being used - otherwise, interpolation can cause some strange, pattern artefacts
-				int xStart = (int)(Math.round(pathROI.getCentroidX() / downsample) * downsample) - size.width/2;
-				int yStart = (int)(Math.round(pathROI.getCentroidY() / downsample) * downsample) - size.height/2;
-				int width = Math.min(server.getWidth(), xStart + size.width) - xStart;
-				int height = Math.min(server.getHeight(), yStart + size.height) - yStart;
-				region = RegionRequest.createInstance(server.getPath(), downsample, xStart, yStart, width, height, pathROI.getT(), pathROI.getZ());			
-			}
+			RegionRequest region = getRegionRequest(server, params, downsample, regionType, pathROI);
 			
 //			// Check image large enough to do *anything* of value
 //			if (region.getWidth() / downsample < 1 || region.getHeight() / downsample < 1) {
@@ -582,55 +764,126 @@ public class IntensityFeaturesPlugin extends AbstractInteractivePlugin<BufferedI
 				maskBytes = ((DataBufferByte)imgMask.getRaster().getDataBuffer()).getData();
 			}
 			
-			boolean isRGB = server.isRGB();
-			List<FeatureColorTransform> transforms;
-			if (isRGB)
-				transforms = Arrays.asList(FeatureColorTransformEnum.values());
-			else
-				transforms = getBasicChannelTransforms(server.nChannels());
-			
 			int w = img.getWidth();
 	 		int h = img.getHeight();
-			int[] rgbBuffer = isRGB ? img.getRGB(0, 0, w, h, null, 0, w) : null;
+			int[] rgbBuffer = server.isRGB() ? img.getRGB(0, 0, w, h, null, 0, w) : null;
 			float[] pixels = null;
-			for (FeatureColorTransform transform : transforms) {
+			for (FeatureColorTransform transform : getTransforms(server)) {
 				// Check if the color transform is requested
-				if (params.containsKey(transform.getKey()) && Boolean.TRUE.equals(params.getBooleanParameterValue(transform.getKey()))) {
+				if (isRequested(transform, params)) {
 					
 					// Transform the pixels
 					pixels = transform.getTransformedPixels(img, rgbBuffer, stains, pixels);
 					
-					// Create the simple image
-					SimpleModifiableImage pixelImage = SimpleImages.createFloatImage(pixels, w, h);
-					
-					// Apply any arbitrary mask
-					if (maskBytes != null) {
-						for (int i = 0; i < pixels.length; i++) {
-							if (maskBytes[i] == (byte)0)
-								pixelImage.setValue(i % w, i / w, Float.NaN);
-						}
-					} else if (regionType == RegionType.CIRCLE) {
-						// Apply circular tile mask
-						double cx = (w-1) / 2;
-						double cy = (h-1) / 2;
-						double radius = Math.max(w, h) * .5;
-						double distThreshold = radius * radius;
-						for (int y = 0; y < h; y++) {
-							for (int x = 0; x < w; x++) {
-								if ((cx - x)*(cx - x) + (cy - y)*(cy - y) > distThreshold)
-									pixelImage.setValue(x, y, Float.NaN);
-							}			
-						}
-					}
-					
 					// Do the computations
-					for (FeatureComputer computer : map.get(transform)) {
-						computer.updateFeatures(pixelImage, transform, params);
-					}
+					updateFeatures(map.get(transform), transform, pixels, w, h, maskBytes, regionType, params);
 				}
 			}
 		}
 		
+		addMeasurements(pathObject, map, prefix, imageData, params);
+		return true;
+	}
+	
+	
+	private static ROI getMeasurementROI(final PathObject pathObject, final RegionType regionType) {
+		if (regionType == RegionType.NUCLEUS) {
+			if (pathObject instanceof PathCellObject)
+				return ((PathCellObject)pathObject).getNucleusROI();
+			return null;
+		}
+//		if (pathObject instanceof PathCellObject && ((PathCellObject)pathObject).getNucleusROI() != null)
+//			pathROI = ((PathCellObject)pathObject).getNucleusROI();
+		return pathObject.getROI();
+	}
+	
+	
+	private static Collection<? extends ROI> computeTiledROIs(final ROI roi, final double downsample) {
+		ImmutableDimension sizePreferred = ImmutableDimension.getInstance((int)(2000*downsample), (int)(2000*downsample));
+//		ImmutableDimension sizePreferred = new ImmutableDimension((int)(200*downsample), (int)(200*downsample));
+		return RoiTools.computeTiledROIs(roi, sizePreferred, sizePreferred, false, 0);
+	}
+	
+	
+	private static RegionRequest getRegionRequest(final ImageServer<BufferedImage> server, final ParameterList params, final double downsample, final RegionType regionType, final ROI pathROI) {
+		boolean useROI = regionType == RegionType.ROI || regionType == RegionType.NUCLEUS;
+		if (useROI)
+			return RegionRequest.createInstance(server.getPath(), downsample, pathROI);
+		ImmutableDimension size = getPreferredTileSizePixels(server, params);
+		//		RegionRequest region = RegionRequest.createInstance(server.getPath(), downsample, (int)(pathROI.getCentroidX() + .5) - size.width/2, (int)(pathROI.getCentroidY() + .5) - size.height/2, size.width, size.height, pathROI.getT(), pathROI.getZ());
+		// Try to align with pixel boundaries according to the downsample being used - otherwise, interpolation can cause some strange, pattern artefacts
+		int xStart = (int)(Math.round(pathROI.getCentroidX() / downsample) * downsample) - size.width/2;
+		int yStart = (int)(Math.round(pathROI.getCentroidY() / downsample) * downsample) - size.height/2;
+		int width = Math.min(server.getWidth(), xStart + size.width) - xStart;
+		int height = Math.min(server.getHeight(), yStart + size.height) - yStart;
+		return RegionRequest.createInstance(server.getPath(), downsample, xStart, yStart, width, height, pathROI.getT(), pathROI.getZ());			
+	}
+	
+	
+	private static List<FeatureColorTransform> getTransforms(final ImageServer<BufferedImage> server) {
+		if (server.isRGB())
+			return Arrays.asList(FeatureColorTransformEnum.values());
+		else
+			return getBasicChannelTransforms(server.nChannels());
+	}
+	
+	
+	private static boolean isRequested(final FeatureColorTransform transform, final ParameterList params) {
+		return params.containsKey(transform.getKey()) && Boolean.TRUE.equals(params.getBooleanParameterValue(transform.getKey()));
+	}
+	
+	
+	private static Map<FeatureColorTransform, List<FeatureComputer>> createFeatureComputers(final ImageServer<BufferedImage> server) {
+		Map<FeatureColorTransform, List<FeatureComputer>> map = new LinkedHashMap<>();
+		for (FeatureColorTransform transform : getTransforms(server)) {
+			List<FeatureComputer> list = new ArrayList<>();
+			map.put(transform, list);
+			for (FeatureComputerBuilder builder : builders) {
+				list.add(builder.build());
+			}
+		}
+		return map;
+	}
+	
+	
+	/**
+	 * Update feature computers using transformed pixels, after applying any mask.
+	 * The pixel array may be longer than w * h; any additional values are ignored (but may be modified).
+	 */
+	private static void updateFeatures(final List<FeatureComputer> computers, final FeatureColorTransform transform, final float[] pixels, final int w, final int h,
+			final byte[] maskBytes, final RegionType regionType, final ParameterList params) {
+		// Create the simple image
+		SimpleModifiableImage pixelImage = SimpleImages.createFloatImage(pixels, w, h);
+		
+		// Apply any arbitrary mask
+		if (maskBytes != null) {
+			for (int i = 0; i < w * h; i++) {
+				if (maskBytes[i] == (byte)0)
+					pixelImage.setValue(i % w, i / w, Float.NaN);
+			}
+		} else if (regionType == RegionType.CIRCLE) {
+			// Apply circular tile mask
+			double cx = (w-1) / 2;
+			double cy = (h-1) / 2;
+			double radius = Math.max(w, h) * .5;
+			double distThreshold = radius * radius;
+			for (int y = 0; y < h; y++) {
+				for (int x = 0; x < w; x++) {
+					if ((cx - x)*(cx - x) + (cy - y)*(cy - y) > distThreshold)
+						pixelImage.setValue(x, y, Float.NaN);
+				}			
+			}
+		}
+		
+		// Do the computations
+		for (FeatureComputer computer : computers) {
+			computer.updateFeatures(pixelImage, transform, params);
+		}
+	}
+	
+	
+	private static void addMeasurements(final PathObject pathObject, final Map<FeatureColorTransform, List<FeatureComputer>> map, final String prefix,
+			final ImageData<BufferedImage> imageData, final ParameterList params) {
 		// Add measurements to the parent object
 		for (Entry<FeatureColorTransform, List<FeatureComputer>> entry : map.entrySet()) {
 			String name = prefix + ": " + entry.getKey().getName(imageData, false) + ":";
@@ -644,8 +897,6 @@ public class IntensityFeaturesPlugin extends AbstractInteractivePlugin<BufferedI
 			((PathAnnotationObject)pathObject).setLocked(true);
 		else if (pathObject instanceof TMACoreObject)
 			((TMACoreObject)pathObject).setLocked(true);
-		
-		return true;
 	}
 	
 	
@@ -786,6 +1037,12 @@ public class IntensityFeaturesPlugin extends AbstractInteractivePlugin<BufferedI
 		 */
 		public abstract void addMeasurements(final PathObject pathObject, final String name, final ParameterList params);
 		
+		/**
+		 * Reset the computer, so that it may be reused for another object.
+		 * Any large buffers may be retained to avoid allocating them again.
+		 */
+		public abstract void reset();
+		
 	}
 	
 	
@@ -864,6 +1121,12 @@ public class IntensityFeaturesPlugin extends AbstractInteractivePlugin<BufferedI
 			
 		}
 		
+		@Override
+		public void reset() {
+			stats = null;
+			hueStats = null;
+		}
+		
 	}
 	
 	
@@ -895,6 +1158,7 @@ public class IntensityFeaturesPlugin extends AbstractInteractivePlugin<BufferedI
 		private long n;
 		private int nBins;
 		private long[] histogram;
+		private long[] previousHistogram;
 		
 		MedianFeatureComputer(final int originalBitsPerPixel) {
 			this.originalBitsPerPixel = originalBitsPerPixel;
@@ -949,8 +1213,12 @@ public class IntensityFeaturesPlugin extends AbstractInteractivePlugin<BufferedI
 						return;
 					}
 				}
-				// Create histogram
-				histogram = new long[nBins];
+				// Create histogram (or reuse a previous one)
+				if (previousHistogram != null && previousHistogram.length == nBins)
+					histogram = previousHistogram;
+				else
+					histogram = new long[nBins];
+				previousHistogram = null;
 			}
 			
 			// Check we can do anything
@@ -1018,6 +1286,16 @@ public class IntensityFeaturesPlugin extends AbstractInteractivePlugin<BufferedI
 			measurementList.putMeasurement(name + " Median", median);
 		}
 		
+		@Override
+		public void reset() {
+			if (histogram != null && histogram.length > 0) {
+				Arrays.fill(histogram, 0L);
+				previousHistogram = histogram;
+				histogram = null;
+			}
+			n = 0;
+		}
+		
 	}
 	
 	
@@ -1044,6 +1322,7 @@ public class IntensityFeaturesPlugin extends AbstractInteractivePlugin<BufferedI
 	static class HaralickFeaturesComp implements FeatureComputer {
 		
 		private CoocurranceMatrices matrices;
+		private CoocurranceMatrices previousMatrices;
 
 		@Override
 		public void updateFeatures(SimpleImage img, FeatureColorTransform transform, ParameterList params) {
@@ -1073,6 +1352,10 @@ public class IntensityFeaturesPlugin extends AbstractInteractivePlugin<BufferedI
 			int d = params.getIntParameterValue("haralickDistance");
 			int nBins = params.getIntParameterValue("haralickBins");
 			
+			if (matrices == null) {
+				matrices = previousMatrices;
+				previousMatrices = null;
+			}
 			matrices = HaralickFeatureComputer.updateCooccurrenceMatrices(matrices, img, null, nBins, minMax[0], minMax[1], d);
 		}
 
@@ -1089,6 +1372,15 @@ public class IntensityFeaturesPlugin extends AbstractInteractivePlugin<BufferedI
 						i), haralickFeatures.getFeature(i));
 			}
 		}
+		
+		@Override
+		public void reset() {
+			if (matrices != null) {
+				matrices.reset();
+				previousMatrices = matrices;
+				matrices = null;
+			}
+		}
 
 	}
 	
@@ -1264,6 +1556,12 @@ public class IntensityFeaturesPlugin extends AbstractInteractivePlugin<BufferedI
 			}
 		}
 		
+		@Override
+		public void reset() {
+			histogram = null;
+			n = 0;
+		}
+		
 	}
 	
 	
@@ -23,6 +23,8 @@
 
 package qupath.lib.analysis.features;
 
+import java.util.Arrays;
+
 /**
  * Data structure for containing co-occurrence matrix for Haralick texture features.
  * 
@@ -66,6 +68,15 @@ class CoocMatrix {
 		sum++;
 	}
 	
+	/**
+	 * Reset all entries to zero
+	 */
+	public void reset() {
+		Arrays.fill(mat, 0);
+		sum = 0;
+		logSum = 0;
+	}
+	
 	/**
 	 * Call this after populating the matrix
 	 */
@@ -88,6 +88,17 @@ public class CoocurranceMatrices {
 			mat135.addToEntrySymmetric(i, j);
 	}
 	
+	/**
+	 * Reset all counts to zero, so that the matrices can be reused.
+	 */
+	public void reset() {
+		mat0.reset();
+		mat45.reset();
+		mat90.reset();
+		mat135.reset();
+		features = null;
+	}
+	
 	/**
 	 * Compute features.
 	 */
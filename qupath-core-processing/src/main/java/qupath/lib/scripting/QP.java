@@ -45,7 +45,6 @@ import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
 import java.util.Set;
-import java.util.WeakHashMap;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -167,12 +166,12 @@ public class QP {
 	/**
 	 * Store ImageData accessible to the script thread
 	 */
-	private static Map<Thread, ImageData<BufferedImage>> batchImageData = new WeakHashMap<>();
+	private static ThreadLocal<ImageData<BufferedImage>> batchImageData = new ThreadLocal<>();
 
 	/**
 	 * Store Project accessible to the script thread
 	 */
-	private static Map<Thread, Project<BufferedImage>> batchProject = new WeakHashMap<>();
+	private static ThreadLocal<Project<BufferedImage>> batchProject = new ThreadLocal<>();
 	
 	/**
 	 * Placeholder for the path to the current project.
@@ -380,11 +379,13 @@ public class QP {
 	 * @return
 	 */
 	static ImageData<BufferedImage> setBatchImageData(final ImageData<BufferedImage> imageData) {
-		Thread thread = Thread.currentThread();
-		logger.trace("Setting image data for {} to {}", thread, imageData);
+		logger.trace("Setting image data for {} to {}", Thread.currentThread(), imageData);
+		var previous = batchImageData.get();
 		if (imageData == null)
-			return batchImageData.remove(thread);
-		return batchImageData.put(thread, imageData);
+			batchImageData.remove();
+		else
+			batchImageData.set(imageData);
+		return previous;
 	}
 	
 	
@@ -394,7 +395,7 @@ public class QP {
 	 * @return The ImageData set with setBatchImageData, or null if no ImageData has been set for the current thread.
 	 */
 	static ImageData<BufferedImage> getBatchImageData() {
-		return batchImageData.get(Thread.currentThread());
+		return batchImageData.get();
 	}
 	
 	/**
@@ -403,11 +404,13 @@ public class QP {
 	 * @return
 	 */
 	static Project<BufferedImage> setBatchProject(final Project<BufferedImage> project) {
-		Thread thread = Thread.currentThread();
-		logger.trace("Setting project for {} to {}", thread, project);
+		logger.trace("Setting project for {} to {}", Thread.currentThread(), project);
+		var previous = batchProject.get();
 		if (project == null)
-			return batchProject.remove(thread);
-		return batchProject.put(thread, project);
+			batchProject.remove();
+		else
+			batchProject.set(project);
+		return previous;
 	}
 	
 	
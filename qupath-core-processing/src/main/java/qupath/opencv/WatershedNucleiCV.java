@@ -265,7 +265,7 @@ public class WatershedNucleiCV extends AbstractTileableDetectionPlugin<BufferedI
 						//	        logger.info("Area comparison: " + opencv_imgproc.contourArea(contour) + ",\t" + (pathPolygon.getArea() / downsample / downsample));
 						//	        Mat matSmall = new Mat();
 						if (pathROI instanceof RectangleROI || PathObjectTools.containsROI(pathROI, pathPolygon)) {
-							MeasurementList measurementList = MeasurementListFactory.createMeasurementList(20, MeasurementList.MeasurementListType.FLOAT);
+							MeasurementList measurementList = MeasurementListFactory.createMeasurementList(20, MeasurementList.MeasurementListType.COLUMNAR);
 							PathObject pathObject = PathObjects.createDetectionObject(pathPolygon, null, measurementList);
 
 							measurementList.addMeasurement("Area", pathPolygon.getArea());
@@ -28,6 +28,9 @@ import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.bytedeco.javacpp.indexer.FloatIndexer;
 import org.bytedeco.javacpp.indexer.IntIndexer;
@@ -41,13 +44,16 @@ import com.google.common.collect.Lists;
 import qupath.lib.classifiers.object.AbstractObjectClassifier;
 import qupath.lib.classifiers.object.ObjectClassifier;
 import qupath.lib.common.GeneralTools;
+import qupath.lib.common.ThreadTools;
 import qupath.lib.images.ImageData;
+import qupath.lib.io.GsonTools;
 import qupath.lib.objects.PathObject;
 import qupath.lib.objects.PathObjectFilter;
 import qupath.lib.objects.classes.PathClass;
 import qupath.lib.objects.classes.PathClassFactory;
 import qupath.lib.objects.classes.PathClassTools;
 import qupath.lib.objects.classes.Reclassifier;
+import qupath.lib.plugins.AbstractPluginRunner;
 import qupath.opencv.ml.objects.features.FeatureExtractor;
 import qupath.opencv.ml.OpenCVClassifiers.OpenCVStatModel;
 
@@ -146,124 +152,256 @@ public class OpenCVMLClassifier<T> extends AbstractObjectClassifier<T> {
 			return 0;
 		}
 		
-		int counter = 0;
-		
-		List<Reclassifier> reclassifiers = new ArrayList<>();
-
-		// Try not to have more than ~10 million entries per list
-		int subListSize = (int)Math.max(1, Math.min(pathObjects.size(), (1024 * 1024 * 10 / featureExtractor.nFeatures())));
+		int nObjects = pathObjects.size();
+		if (nObjects == 0)
+			return 0;
 		
-		Mat samples = new Mat();
+		// Try not to have more than ~10 million entries in memory at any one time, 
+		// but aim for several chunks per thread so that the work is reasonably balanced
+		int nThreads = Math.max(1, AbstractPluginRunner.getNumThreads());
+		int nFeatures = Math.max(1, featureExtractor.nFeatures());
+		int maxChunkSize = (int)Math.max(1, Math.min(nObjects, (1024 * 1024 * 10 / nFeatures / nThreads)));
+		int chunkSize = Math.min(maxChunkSize, Math.max(MIN_CHUNK_SIZE, (int)Math.ceil(nObjects / (nThreads * 4.0))));
+		var chunks = Lists.partition(new ArrayList<>(pathObjects), chunkSize);
+		nThreads = Math.min(nThreads, chunks.size());
 		
-		Mat results = new Mat();
-		Mat probabilities = requestProbabilityEstimate ? new Mat() : null;
-
-		// Work through the objects in chunks
 		long startTime = System.currentTimeMillis();
-		long lastTime = startTime;
-		int nComplete = 0;
-		for (var tempObjectList : Lists.partition(new ArrayList<>(pathObjects), subListSize)) {
-
-			if (Thread.interrupted()) {
+		List<ChunkResult> chunkResults = new ArrayList<>();
+		if (nThreads <= 1) {
+			for (var chunk : chunks) {
+				if (Thread.interrupted()) {
+					logger.warn("Classification interrupted - will not be applied");
+					return 0;
+				}
+				chunkResults.add(classifyChunk(featureExtractor, classifier, pathClasses, imageData, chunk, resetExistingClass, requestProbabilityEstimate));
+			}
+		} else {
+			// Give each thread its own copy of the model, so that predictions don't contend for it
+			ThreadLocal<OpenCVStatModel> localClassifier = ThreadLocal.withInitial(() -> copyStatModel(classifier));
+			var pool = Executors.newFixedThreadPool(nThreads, ThreadTools.createThreadFactory("object-classifier-", true));
+			try {
+				List<Future<ChunkResult>> futures = new ArrayList<>();
+				for (var chunk : chunks) {
+					futures.add(pool.submit(() -> classifyChunk(featureExtractor, localClassifier.get(), pathClasses, 
+							imageData, chunk, resetExistingClass, requestProbabilityEstimate)));
+				}
+				long lastTime = startTime;
+				int nComplete = 0;
+				for (var future : futures) {
+					var result = future.get();
+					chunkResults.add(result);
+					nComplete += result.size();
+					long intermediateTime = System.currentTimeMillis();
+					if (intermediateTime - lastTime > 1000L) {
+						logger.debug("Classified {}/{} objects in {} ms ({}% complete)", nComplete, nObjects, 
+								(intermediateTime - startTime),
+								GeneralTools.formatNumber(nComplete * 100.0 / nObjects, 1));
+						lastTime = intermediateTime;
+					}
+				}
+			} catch (InterruptedException e) {
 				logger.warn("Classification interrupted - will not be applied");
+				Thread.currentThread().interrupt();
 				return 0;
+			} catch (ExecutionException e) {
+				// Throw the original exception, as if the chunk had been classified in this thread
+				var cause = e.getCause();
+				if (cause instanceof RuntimeException)
+					throw (RuntimeException)cause;
+				if (cause instanceof Error)
+					throw (Error)cause;
+				throw new RuntimeException(cause);
+			} finally {
+				pool.shutdownNow();
 			}
-			
-			samples.create(tempObjectList.size(), featureExtractor.nFeatures(), opencv_core.CV_32FC1);
-			FloatBuffer buffer = samples.createBuffer();
-			featureExtractor.extractFeatures(imageData, tempObjectList, buffer);
-			
-			// Possibly log time taken
-			nComplete += tempObjectList.size();
-			long intermediateTime = System.currentTimeMillis();
-			if (intermediateTime - lastTime > 1000L) {
-				logger.debug("Calculated features for {}/{} objects in {} ms ({} ms per object, {}% complete)", nComplete, pathObjects.size(), 
-						(intermediateTime - startTime),
-						GeneralTools.formatNumber((intermediateTime - startTime)/(double)nComplete, 2),
-						GeneralTools.formatNumber(nComplete * 100.0 / pathObjects.size(), 1));
-				lastTime = startTime;
-			}
-			
-			boolean doMulticlass = classifier.supportsMulticlass();
-			double threshold = 0.5;
+		}
+		long predictTime = System.currentTimeMillis() - startTime;
+		logger.info("Prediction time: {} ms for {} objects ({} ns per object)",
+				predictTime, nObjects,
+				GeneralTools.formatNumber((double)predictTime/nObjects * 1000.0, 2));
 
-			try {
-				classifier.predict(samples, results, probabilities);
+		// Apply classifications now, one chunk at a time
+		int counter = 0;
+		var iterator = chunkResults.iterator();
+		while (iterator.hasNext()) {
+			var result = iterator.next();
+			result.apply();
+			counter += result.size();
+			iterator.remove();
+		}
+		return counter;
+	}
+	
+	/**
+	 * Minimum number of objects to classify in one chunk; smaller chunks are only used 
+	 * if there are too many features to hold in memory.
+	 */
+	private static final int MIN_CHUNK_SIZE = 1000;
+	
+	/**
+	 * Create a copy of a stat model, by serializing and deserializing it.
+	 * If this fails, the original model is returned; its predict method may still be called 
+	 * from multiple threads, but might be slower.
+	 */
+	private static OpenCVStatModel copyStatModel(OpenCVStatModel model) {
+		try {
+			var gson = GsonTools.getInstance();
+			var copy = gson.fromJson(gson.toJsonTree(model, OpenCVStatModel.class), OpenCVStatModel.class);
+			if (copy != null)
+				return copy;
+		} catch (Exception e) {
+			logger.debug("Unable to copy stat model: " + e.getLocalizedMessage(), e);
+		}
+		return model;
+	}
+	
+	/**
+	 * Extract features and predict classifications for a single chunk of objects.
+	 * The classifications are returned rather than applied, so that nothing is changed 
+	 * if the classification is interrupted.
+	 */
+	private static <T> ChunkResult classifyChunk(
+			FeatureExtractor<T> featureExtractor,
+			OpenCVStatModel classifier,
+			List<PathClass> pathClasses,
+			ImageData<T> imageData,
+			List<? extends PathObject> pathObjects,
+			boolean resetExistingClass,
+			boolean requestProbabilityEstimate) {
+		
+		int n = pathObjects.size();
+		Mat samples = new Mat(n, featureExtractor.nFeatures(), opencv_core.CV_32FC1);
+		Mat results = new Mat();
+		Mat probabilities = requestProbabilityEstimate ? new Mat() : null;
+		try {
+			FloatBuffer buffer = samples.createBuffer();
+			featureExtractor.extractFeatures(imageData, pathObjects, buffer);
+			return predictChunk(classifier, pathClasses, pathObjects, samples, results, probabilities, resetExistingClass);
+		} finally {
+			samples.release();
+			results.release();
+			if (probabilities != null)
+				probabilities.release();
+		}
+	}
+	
+	private static ChunkResult predictChunk(
+			OpenCVStatModel classifier,
+			List<PathClass> pathClasses,
+			List<? extends PathObject> pathObjects,
+			Mat samples, Mat results, Mat probabilities,
+			boolean resetExistingClass) {
+		
+		int n = pathObjects.size();
+		boolean doMulticlass = classifier.supportsMulticlass();
+		double threshold = 0.5;
+		try {
+			classifier.predict(samples, results, probabilities);
 
-				IntIndexer idxResults = results.createIndexer();
-				FloatIndexer idxProbabilities = null;
-				if (probabilities != null && !probabilities.empty())
-					idxProbabilities = probabilities.createIndexer();
+			IntIndexer idxResults = results.createIndexer();
+			FloatIndexer idxProbabilities = null;
+			if (probabilities != null && !probabilities.empty())
+				idxProbabilities = probabilities.createIndexer();
 
-				if (doMulticlass && idxProbabilities != null) {
-					// Use probabilities if we require multiclass outputs
-					long row = 0;
-					int nCols = (int)idxProbabilities.size(2); // Previously .cols()
-					List<String> classifications = new ArrayList<>();
-					for (var pathObject : tempObjectList) {
-						classifications.clear();
-						for (int col = 0; col < nCols; col++) {
-							double prob = idxProbabilities.get(row, col);
-							if (prob >= threshold) {
-								var pathClass = col >= pathClasses.size() ? null : pathClasses.get(col);
-								if (pathClass != null)
-									classifications.add(pathClass.getName());
-							}
-						}
-						var pathClass = PathClassFactory.getPathClass(classifications);
-						if (PathClassTools.isIgnoredClass(pathClass)) {
-							pathClass = null;
+			var pathClassesOutput = new PathClass[n];
+			ChunkResult result;
+			if (doMulticlass && idxProbabilities != null) {
+				// Use probabilities if we require multiclass outputs
+				int nCols = (int)idxProbabilities.size(2); // Previously .cols()
+				List<String> classifications = new ArrayList<>();
+				for (int row = 0; row < n; row++) {
+					var pathObject = pathObjects.get(row);
+					classifications.clear();
+					for (int col = 0; col < nCols; col++) {
+						double prob = idxProbabilities.get(row, col);
+						if (prob >= threshold) {
+							var pathClass = col >= pathClasses.size() ? null : pathClasses.get(col);
+							if (pathClass != null)
+								classifications.add(pathClass.getName());
 						}
-						if (!resetExistingClass) {
-							pathClass = PathClassTools.mergeClasses(pathObject.getPathClass(), pathClass);
-						}
-						reclassifiers.add(new Reclassifier(pathObject, pathClass, false));
-						row++;
 					}
-				} else {
-					// Use results (indexed values) if we do not require multiclass outputs
-					long row = 0;
-					for (var pathObject : tempObjectList) {
-						int prediction = idxResults.get(row);
-						var pathClass = pathClasses.get(prediction);
-						double probability = idxProbabilities == null ? Double.NaN : idxProbabilities.get(row, prediction);
-						if (PathClassTools.isIgnoredClass(pathClass)) {
-							pathClass = null;
-							probability = Double.NaN;
-						} 
-						if (!resetExistingClass) {
-							pathClass = PathClassTools.mergeClasses(pathObject.getPathClass(), pathClass);
-							probability = Double.NaN;
-						}
-						reclassifiers.add(new Reclassifier(pathObject, pathClass, true, probability));							
-						row++;
+					var pathClass = PathClassFactory.getPathClass(classifications);
+					if (PathClassTools.isIgnoredClass(pathClass)) {
+						pathClass = null;
 					}
+					if (!resetExistingClass) {
+						pathClass = PathClassTools.mergeClasses(pathObject.getPathClass(), pathClass);
+					}
+					pathClassesOutput[row] = pathClass;
+				}
+				result = new ChunkResult(pathObjects, pathClassesOutput, null, false);
+			} else {
+				// Use results (indexed values) if we do not require multiclass outputs
+				var probabilitiesOutput = idxProbabilities == null ? null : new double[n];
+				for (int row = 0; row < n; row++) {
+					var pathObject = pathObjects.get(row);
+					int prediction = idxResults.get(row);
+					var pathClass = pathClasses.get(prediction);
+					double probability = idxProbabilities == null ? Double.NaN : idxProbabilities.get(row, prediction);
+					if (PathClassTools.isIgnoredClass(pathClass)) {
+						pathClass = null;
+						probability = Double.NaN;
+					} 
+					if (!resetExistingClass) {
+						pathClass = PathClassTools.mergeClasses(pathObject.getPathClass(), pathClass);
+						probability = Double.NaN;
+					}
+					pathClassesOutput[row] = pathClass;
+					if (probabilitiesOutput != null)
+						probabilitiesOutput[row] = probability;
 				}
-				idxResults.release();
-				if (idxProbabilities != null)
-					idxProbabilities.release();
-			} catch (Exception e) {
-				logger.warn("Error with samples: {}", samples);
-				logger.error(e.getLocalizedMessage(), e);
+				result = new ChunkResult(pathObjects, pathClassesOutput, probabilitiesOutput, true);
 			}
-			counter += tempObjectList.size();
+			idxResults.release();
+			if (idxProbabilities != null)
+				idxProbabilities.release();
+			return result;
+		} catch (Exception e) {
+			logger.warn("Error with samples: {}", samples);
+			logger.error(e.getLocalizedMessage(), e);
+			return new ChunkResult(pathObjects, null, null, false);
 		}
-		long predictTime = System.currentTimeMillis() - startTime;
-		logger.info("Prediction time: {} ms for {} objects ({} ns per object)",
-				predictTime, pathObjects.size(),
-				GeneralTools.formatNumber((double)predictTime/pathObjects.size() * 1000.0, 2));
-
-		samples.release();
-		results.release();
-		if (probabilities != null)
-			probabilities.release();
-
-		// Apply classifications now
-		reclassifiers.stream().forEach(p -> p.apply());
-
-		return counter;
 	}
 	
+	/**
+	 * Classifications for a chunk of objects, stored compactly until they can be applied.
+	 */
+	private static class ChunkResult {
+		
+		private final List<? extends PathObject> pathObjects;
+		private final PathClass[] pathClasses;
+		private final double[] probabilities;
+		private final boolean retainIntensityClass;
+		
+		/**
+		 * @param pathObjects the objects that were classified
+		 * @param pathClasses the classification for each object, or null if the classification failed
+		 * @param probabilities the probability for each object, or null if no probabilities are available
+		 * @param retainIntensityClass 
+		 */
+		ChunkResult(List<? extends PathObject> pathObjects, PathClass[] pathClasses, double[] probabilities, boolean retainIntensityClass) {
+			this.pathObjects = pathObjects;
+			this.pathClasses = pathClasses;
+			this.probabilities = probabilities;
+			this.retainIntensityClass = retainIntensityClass;
+		}
+		
+		int size() {
+			return pathObjects.size();
+		}
+		
+		void apply() {
+			if (pathClasses == null)
+				return;
+			for (int i = 0; i < pathClasses.length; i++) {
+				double probability = probabilities == null ? Double.NaN : probabilities[i];
+				new Reclassifier(pathObjects.get(i), pathClasses[i], retainIntensityClass, probability).apply();
+			}
+		}
+		
+	}
+
+	
 	@Override
 	public String toString() {
 		return String.format("OpenCV object classifier (%s, %d classes)", classifier.getName(), getPathClasses().size());
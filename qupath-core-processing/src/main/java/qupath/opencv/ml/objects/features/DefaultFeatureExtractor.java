@@ -28,6 +28,7 @@ import java.util.Collections;
 import java.util.List;
 
 import qupath.lib.images.ImageData;
+import qupath.lib.measurements.MeasurementColumnReader;
 import qupath.lib.measurements.MeasurementList;
 import qupath.lib.objects.PathObject;
 
@@ -47,8 +48,9 @@ class DefaultFeatureExtractor<T> implements FeatureExtractor<T> {
 	
 	@Override
 	public void extractFeatures(ImageData<T> imageData, Collection<? extends PathObject> pathObjects, FloatBuffer buffer) {
+		var reader = MeasurementColumnReader.create(measurements);
 		for (var pathObject : pathObjects)
-			extractFeatures(pathObject, buffer);
+			reader.readValues(pathObject.getMeasurementList(), buffer);
 	}
 	
 	@Override
@@ -61,14 +63,6 @@ class DefaultFeatureExtractor<T> implements FeatureExtractor<T> {
 		return measurements.size();
 	}
 	
-	private void extractFeatures(final PathObject pathObject, FloatBuffer buffer) {
-		var measurementList = pathObject.getMeasurementList();
-		for (var m : measurements) {
-			double value = measurementList.getMeasurementValue(m);
-			buffer.put((float)value);
-		}
-	}
-	
 	@Override
 	public Collection<String> getMissingFeatures(ImageData<T> imageData, PathObject pathObject) {
 		List<String> missing = null;
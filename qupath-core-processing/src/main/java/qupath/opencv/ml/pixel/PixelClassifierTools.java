@@ -22,10 +22,14 @@
 package qupath.opencv.ml.pixel;
 
 import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.geom.util.PolygonExtracter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import qupath.imagej.processing.SimpleThresholding;
+import qupath.lib.analysis.images.ContourStitcher;
 import qupath.lib.classifiers.pixel.PixelClassificationImageServer;
 import qupath.lib.classifiers.pixel.PixelClassifier;
 import qupath.lib.images.ImageData;
@@ -40,13 +44,15 @@ import qupath.lib.objects.classes.PathClassFactory;
 import qupath.lib.objects.classes.Reclassifier;
 import qupath.lib.objects.classes.PathClassTools;
 import qupath.lib.objects.hierarchy.PathObjectHierarchy;
-import qupath.lib.regions.ImagePlane;
 import qupath.lib.regions.RegionRequest;
 import qupath.lib.roi.GeometryTools;
 import qupath.lib.roi.interfaces.ROI;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
 import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferFloat;
+import java.awt.image.DataBufferUShort;
 import java.awt.image.WritableRaster;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -354,80 +360,54 @@ public class PixelClassifierTools {
 		double minAreaPixels = minArea / pixelArea;
 		double minHoleAreaPixels = minHoleArea / pixelArea;
 		
+		// Identify the labels for which objects are needed
+		Map<Integer, PathClass> labelsToTrace = new LinkedHashMap<>();
+		for (var entry : labels.entrySet()) {
+			PathClass pathClass = entry.getValue();
+			if (pathClass == null || pathClass == PathClassFactory.getPathClassUnclassified() || (!includeIgnored && PathClassTools.isIgnoredClass(pathClass)))
+				continue;
+			labelsToTrace.put(entry.getKey(), pathClass);
+		}
+		
+		boolean isClassification = server.getMetadata().getChannelType() == ImageServerMetadata.ChannelType.CLASSIFICATION;
+		int nChannels = server.nChannels();
+		PreparedGeometry clipAreaPrepared = clipArea == null ? null : PreparedGeometryFactory.prepare(clipArea);
+		
 		// Create output array
 		var pathObjects = new ArrayList<PathObject>();
 
 		// Loop through region requests (usually 1, unless we have a z-stack or time series)
 		for (RegionRequest regionRequest : regionRequests) {
 			Collection<TileRequest> tiles = server.getTileRequestManager().getTileRequests(regionRequest);
+			if (tiles.isEmpty() || labelsToTrace.isEmpty())
+				continue;
 			
-			Map<PathClass, List<GeometryWrapper>> pathObjectMap = tiles.parallelStream().map(t -> {
-				var list = new ArrayList<GeometryWrapper>();
+			// Trace contours within each tile, then stitch them together (rather than computing a union of per-tile geometries)
+			var stitcher = new ContourStitcher(labelsToTrace.keySet());
+			tiles.parallelStream().forEach(t -> {
 				try {
 					var img = server.readBufferedImage(t.getRegionRequest());
-					// Get raster containing classifications and integer values, by taking the argmax
-					var raster = img.getRaster();
-					if (server.getMetadata().getChannelType() != ImageServerMetadata.ChannelType.CLASSIFICATION) {
-						var nChannels = server.nChannels();
-						int h = raster.getHeight();
-						int w = raster.getWidth();
-						byte[] output = new byte[w * h];
-						for (int y = 0; y < h; y++) {
-							for (int x = 0; x < w; x++) {
-								int maxInd = 0;
-								float maxVal = raster.getSampleFloat(x, y, 0);
-								for (int c = 1; c < nChannels; c++) {
-									float val = raster.getSampleFloat(x, y, c);						
-									if (val > maxVal) {
-										maxInd = c;
-										maxVal = val;
-									}
-									output[y*w+x] = (byte)maxInd;
-								}
-							}
-						}
-						raster = WritableRaster.createPackedRaster(
-								new DataBufferByte(output, w*h), w, h, 8, null);
-					}
-					for (var entry : labels.entrySet()) {
-						int c = entry.getKey();
-						PathClass pathClass = entry.getValue();
-						if (pathClass == null || pathClass == PathClassFactory.getPathClassUnclassified() || (!includeIgnored && PathClassTools.isIgnoredClass(pathClass)))
-							continue;
-//						if (pathClass == null || PathClassTools.isGradedIntensityClass(pathClass) || PathClassTools.isIgnoredClass(pathClass))
-//							continue;
-						ROI roiDetected = SimpleThresholding.thresholdToROI(raster, c-0.5, c+0.5, 0, t);
-										
-						if (roiDetected != null)  {
-							Geometry geometry = roiDetected.getGeometry();
-							if (clipArea != null)
-								geometry = geometry.intersection(clipArea);
-							if (!geometry.isEmpty() && geometry.getArea() > 0) {
-								// Exclude lines/points that can sometimes arise
-								list.add(new GeometryWrapper(geometry, pathClass, roiDetected.getImagePlane()));
-							}
-						}
-					}
+					// Get labels from classifications, or by taking the argmax
+					int[] pixels = getLabels(img.getRaster(), isClassification ? 1 : nChannels);
+					if (img.getWidth() != t.getTileWidth() || img.getHeight() != t.getTileHeight())
+						pixels = cropOrPad(pixels, img.getWidth(), img.getHeight(), t.getTileWidth(), t.getTileHeight());
+					stitcher.addTile(t.getTileX(), t.getTileY(), t.getTileWidth(), t.getTileHeight(), pixels);
 				} catch (Exception e) {
 					logger.error("Error requesting classified tile", e);
 				}
-				return list;
-			}).flatMap(p -> p.stream()).collect(Collectors.groupingBy(p -> p.pathClass, Collectors.toList()));
+			});
+			if (Thread.currentThread().isInterrupted())
+				return pathObjects;
+			
+			double downsample = tiles.iterator().next().getDownsample();
+			var geometryMap = stitcher.createGeometries(GeometryTools.getDefaultFactory(), downsample);
 		
-			// Merge objects with the same classification
-			for (var entry : pathObjectMap.entrySet()) {
-				var pathClass = entry.getKey();
-				var list = entry.getValue();
+			for (var entry : geometryMap.entrySet()) {
+				var pathClass = labelsToTrace.get(entry.getKey());
+				var geometry = entry.getValue();
 				
-				// Merge to a single Geometry
-				var collection = list.stream().map(g -> g.geometry).collect(Collectors.toList());
-//				long start = System.currentTimeMillis();
-//				Geometry geometry = collection.get(0).getFactory().createGeometryCollection(collection.toArray(Geometry[]::new)).buffer(0);
-//				long middle = System.currentTimeMillis();
-				Geometry geometry = GeometryTools.union(collection);
-//				long end = System.currentTimeMillis();
-//				System.err.println("Buffer: " + (middle - start) + ", area = " + geometry.getArea());
-//				System.err.println("Union: " + (end - middle) + ", area = " + geometry2.getArea());
+				if (clipArea != null)
+					geometry = clipPolygons(geometry, clipArea, clipAreaPrepared);
 				
 				// Apply size filters
 				geometry = GeometryTools.refineAreas(geometry, minAreaPixels, minHoleAreaPixels);
@@ -454,18 +434,117 @@ public class PixelClassifierTools {
 	}
 	
 	
-	private static class GeometryWrapper {
-		
-		final Geometry geometry;
-		final PathClass pathClass;
-		final ImagePlane plane;
-		
-		GeometryWrapper(Geometry geometry, PathClass pathClass, ImagePlane plane) {
-			this.geometry = geometry;
-			this.pathClass = pathClass;
-			this.plane = plane;
+	/**
+	 * Clip each polygon within a geometry to a specified area.
+	 * Polygons entirely inside the area are retained without needing to compute an intersection.
+	 */
+	private static Geometry clipPolygons(Geometry geometry, Geometry clipArea, PreparedGeometry clipAreaPrepared) {
+		var polygons = new ArrayList<Polygon>();
+		for (int i = 0; i < geometry.getNumGeometries(); i++) {
+			var polygon = geometry.getGeometryN(i);
+			if (clipAreaPrepared.contains(polygon))
+				polygons.add((Polygon)polygon);
+			else if (clipAreaPrepared.intersects(polygon)) {
+				for (var p : PolygonExtracter.getPolygons(polygon.intersection(clipArea))) {
+					// Exclude lines/points that can sometimes arise
+					if (((Polygon)p).getArea() > 0)
+						polygons.add((Polygon)p);
+				}
+			}
 		}
+		return geometry.getFactory().buildGeometry(polygons);
+	}
+	
+	/**
+	 * Get the classification label for each pixel of a raster.
+	 * If there is more than one channel, the label is the index of the channel with the highest value.
+	 * 
+	 * @param raster
+	 * @param nChannels
+	 * @return
+	 */
+	private static int[] getLabels(WritableRaster raster, int nChannels) {
+		int n = raster.getWidth() * raster.getHeight();
+		float[] maxValues = readBand(raster, 0, new float[n]);
+		int[] labels = new int[n];
+		if (nChannels == 1) {
+			for (int i = 0; i < n; i++)
+				labels[i] = (int)maxValues[i];
+			return labels;
+		}
+		float[] values = null;
+		for (int c = 1; c < nChannels; c++) {
+			values = readBand(raster, c, values);
+			for (int i = 0; i < n; i++) {
+				if (values[i] > maxValues[i]) {
+					maxValues[i] = values[i];
+					labels[i] = c;
+				}
+			}
+		}
+		return labels;
+	}
+	
+	/**
+	 * Read the values for a single band of a raster, accessing the primitive arrays of the DataBuffer directly where possible.
+	 */
+	private static float[] readBand(WritableRaster raster, int band, float[] values) {
+		int w = raster.getWidth();
+		int h = raster.getHeight();
+		if (values == null || values.length < w * h)
+			values = new float[w * h];
+		var sampleModel = raster.getSampleModel();
+		var buffer = raster.getDataBuffer();
+		if (!(sampleModel instanceof ComponentSampleModel) || raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0)
+			return raster.getSamples(0, 0, w, h, band, values);
 		
+		var csm = (ComponentSampleModel)sampleModel;
+		int bank = csm.getBankIndices()[band];
+		int offset = buffer.getOffsets()[bank] + csm.getBandOffsets()[band];
+		int pixelStride = csm.getPixelStride();
+		int scanlineStride = csm.getScanlineStride();
+		if (buffer instanceof DataBufferByte) {
+			byte[] data = ((DataBufferByte)buffer).getData(bank);
+			for (int y = 0; y < h; y++) {
+				int ind = offset + y * scanlineStride;
+				for (int x = 0; x < w; x++) {
+					values[y*w + x] = data[ind] & 0xff;
+					ind += pixelStride;
+				}
+			}
+		} else if (buffer instanceof DataBufferUShort) {
+			short[] data = ((DataBufferUShort)buffer).getData(bank);
+			for (int y = 0; y < h; y++) {
+				int ind = offset + y * scanlineStride;
+				for (int x = 0; x < w; x++) {
+					values[y*w + x] = data[ind] & 0xffff;
+					ind += pixelStride;
+				}
+			}
+		} else if (buffer instanceof DataBufferFloat) {
+			float[] data = ((DataBufferFloat)buffer).getData(bank);
+			for (int y = 0; y < h; y++) {
+				int ind = offset + y * scanlineStride;
+				for (int x = 0; x < w; x++) {
+					values[y*w + x] = data[ind];
+					ind += pixelStride;
+				}
+			}
+		} else
+			return raster.getSamples(0, 0, w, h, band, values);
+		return values;
+	}
+	
+	/**
+	 * Crop or pad labels to the expected size; padded pixels are assigned -1.
+	 */
+	private static int[] cropOrPad(int[] pixels, int width, int height, int targetWidth, int targetHeight) {
+		int[] output = new int[targetWidth * targetHeight];
+		Arrays.fill(output, -1);
+		int w = Math.min(width, targetWidth);
+		for (int y = 0; y < Math.min(height, targetHeight); y++)
+			System.arraycopy(pixels, y * width, output, y * targetWidth, w);
+		return output;
 	}
 	
 	/**
@@ -30,8 +30,12 @@ import java.lang.annotation.Target;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -52,7 +56,9 @@ import org.slf4j.LoggerFactory;
 
 import com.google.gson.RuntimeTypeAdapterFactory;
 import qupath.lib.color.ColorDeconvolutionStains;
+import qupath.lib.common.BatchProcessor;
 import qupath.lib.common.ColorTools;
+import qupath.lib.common.ThreadTools;
 import qupath.lib.images.ImageData;
 import qupath.lib.images.servers.ColorTransforms.ColorTransform;
 import qupath.lib.images.servers.ImageChannel;
@@ -1645,6 +1651,25 @@ public class ImageOps {
 			return new DnnOp(dnn, inputWidth, inputHeight, padding, false);
 		}
 		
+		/**
+		 * Apply a {@link OpenCVDNN} to pixels to generate a prediction, combining tiles into batches 
+		 * so that the network can be applied to several tiles in a single forward pass.
+		 * <p>
+		 * Tiles are combined both within a single (large) input and across inputs passed to the op from 
+		 * different threads at around the same time.
+		 * @param dnn 
+		 * @param inputWidth 
+		 * @param inputHeight 
+		 * @param padding 
+		 * @param batchSize maximum number of tiles in a batch; if &le; 1, no batching is applied
+		 * @param batchWaitMillis maximum time to wait (in milliseconds) for a batch to fill before applying the network
+		 * @return
+		 * @see BatchProcessor
+		 */
+		public static ImageOp dnn(OpenCVDNN dnn, int inputWidth, int inputHeight, Padding padding, int batchSize, long batchWaitMillis) {
+			return new DnnOp(dnn, inputWidth, inputHeight, padding, false, batchSize, batchWaitMillis);
+		}
+		
 		/**
 		 * Apply a {@link FeaturePreprocessor} to pixels, considering each channel as features.
 		 * @param preprocessor
@@ -1698,6 +1723,14 @@ public class ImageOps {
 			
 			private Padding padding;
 			
+			private int batchSize = 1;
+			private long batchWaitMillis = 0L;
+			
+			private transient BatchProcessor<Mat, Mat> batcher;
+			
+			// Batches are run on their own threads, so that the outputs aren't attached to the PointerScope of whichever 
+			// thread happened to submit the first tile - since this could release them while other threads are using them
+			private static ExecutorService batchPool = Executors.newCachedThreadPool(ThreadTools.createThreadFactory("dnn-batch-", true));
 			private transient Net net;
 			private transient ThreadLocal<Net> localNet = ThreadLocal.withInitial(() -> readNet());
 			private transient Exception exception;
@@ -1712,11 +1745,27 @@ public class ImageOps {
 			 *                   This is not a good idea if the net is 'heavyweight'.
 			 */
 			DnnOp(OpenCVDNN model, int inputWidth, int inputHeight, Padding padding, boolean doParallel) {
+				this(model, inputWidth, inputHeight, padding, doParallel, 1, 0L);
+			}
+			
+			/**
+			 * A DNN op that combines tiles into batches.
+			 * @param model
+			 * @param inputWidth
+			 * @param inputHeight
+			 * @param padding
+			 * @param doParallel if true, load the Net for each thread so it may be applied in parallel (ignored when batching)
+			 * @param batchSize maximum number of tiles in a batch; if &le; 1, no batching is applied
+			 * @param batchWaitMillis maximum time to wait for a batch to fill
+			 */
+			DnnOp(OpenCVDNN model, int inputWidth, int inputHeight, Padding padding, boolean doParallel, int batchSize, long batchWaitMillis) {
 				this.model = model;
 				this.inputWidth = inputWidth;
 				this.inputHeight = inputHeight;
 				this.padding = padding;
 				this.doParallel = doParallel;
+				this.batchSize = batchSize;
+				this.batchWaitMillis = batchWaitMillis;
 			}
 
 			@Override
@@ -1747,9 +1796,27 @@ public class ImageOps {
 				return net;
 			}
 
+			private BatchProcessor<Mat, Mat> getBatcher(Net net) {
+				if (batcher == null) {
+					synchronized (this) {
+						if (batcher == null)
+							batcher = new BatchProcessor<>(mats -> doClassification(mats, net), batchSize, batchWaitMillis, TimeUnit.MILLISECONDS, batchPool);
+					}
+				}
+				return batcher;
+			}
+
 			@Override
 			protected Mat transformPadded(Mat input) {
 				Net net = getNet();
+				if (exception == null && batchSize > 1) {
+					// Use a single shared Net when batching
+					var batcher = getBatcher(net);
+					if ((inputWidth <= 0 && inputHeight <= 0) || (input.cols() == inputWidth && input.rows() == inputHeight))
+						return batcher.process(input);
+					else
+						return OpenCVTools.applyTiledBatch(mats -> batcher.processAll(mats), input, inputWidth, inputHeight, opencv_core.BORDER_REFLECT);
+				}
 				if (exception == null) {
 					if ((inputWidth <= 0 && inputHeight <= 0) || (input.cols() == inputWidth && input.rows() == inputHeight))
 						return doClassification(input, net);
@@ -1804,6 +1871,44 @@ public class ImageOps {
 	}
 	
 	
+	/**
+	 * Apply a Net to a batch of images with a single forward pass.
+	 * If the images cannot be combined into a single blob, each is classified separately.
+	 */
+	private static List<Mat> doClassification(List<Mat> mats, Net net) {
+		if (mats.size() == 1)
+			return Collections.singletonList(doClassification(mats.get(0), net));
+		var first = mats.get(0);
+		for (var mat : mats) {
+			if (mat.channels() != 3 || mat.cols() != first.cols() || mat.rows() != first.rows())
+				return mats.stream().map(m -> doClassification(m, net)).collect(Collectors.toList());
+		}
+		for (var mat : mats)
+			mat.convertTo(mat, opencv_core.CV_32F);
+		
+		List<Mat> results = new ArrayList<>();
+		try (var matvecInput = new MatVector(mats.toArray(Mat[]::new))) {
+			var blob = opencv_dnn.blobFromImages(matvecInput);
+			// See doClassification(Mat, Net) regarding synchronization & cloning
+			synchronized(net) {
+				long startTime = System.currentTimeMillis();
+				net.setInput(blob);
+				Mat prob = net.forward();
+				MatVector matvec = new MatVector();
+				opencv_dnn.imagesFromBlob(prob, matvec);
+				if (matvec.size() != mats.size())
+					throw new IllegalArgumentException("DNN result must contain one image per input - here, the result is " + matvec.size() + " images for " + mats.size() + " inputs");
+				for (long i = 0; i < matvec.size(); i++)
+					results.add(matvec.get(i).clone());
+				matvec.close();
+				long endTime = System.currentTimeMillis();
+				logger.trace("Classification time for batch of {}: {} ms", mats.size(), endTime - startTime);
+			}
+			blob.close();
+		}
+		return results;
+	}
+	
 	private static Mat doClassification(Mat mat, Net net) {
     	// Currently we require 32-bit input
     	mat.convertTo(mat, opencv_core.CV_32F);
@@ -33,6 +33,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -1240,4 +1241,84 @@ public class OpenCVTools {
 	}
 	
 
+
+	/**
+	 * Apply a function to a {@link Mat} that strictly requires a specific input size, passing all the tiles 
+	 * to the function together.
+	 * <p>
+	 * This is equivalent to {@link #applyTiled(Function, Mat, int, int, int)}, except that the function receives 
+	 * a list of tiles (all with the requested size) and should return a list of outputs in the same order. 
+	 * This makes it possible to process the tiles as a single batch.
+	 * 
+	 * @param fun the function to apply to the tiles
+	 * @param mat the input Mat
+	 * @param tileWidth the strict tile width required by the input
+	 * @param tileHeight the strict tile height required by the input
+	 * @param borderType an OpenCV border type, in case padding is needed
+	 * @return the result of applying fun to mat, having applied any necessary tiling along the way
+	 * @see #applyTiled(Function, Mat, int, int, int)
+	 */
+	public static Mat applyTiledBatch(Function<List<Mat>, List<Mat>> fun, Mat mat, int tileWidth, int tileHeight, int borderType) {
+		if (mat.cols() == tileWidth && mat.rows() == tileHeight)
+			return fun.apply(Collections.singletonList(mat)).get(0);
+		
+		// Extract all tiles, padding where needed
+		List<Mat> tiles = new ArrayList<>();
+		List<int[]> bounds = new ArrayList<>();
+		int nRows = 0;
+		for (int y = 0; y < mat.rows(); y += tileHeight) {
+			for (int x = 0; x < mat.cols(); x += tileWidth) {
+				int w = Math.min(tileWidth, mat.cols() - x);
+				int h = Math.min(tileHeight, mat.rows() - y);
+				var tile = crop(mat, x, y, w, h);
+				int top = 0, left = 0;
+				if (w < tileWidth || h < tileHeight) {
+					top = (tileHeight - h) / 2;
+					left = (tileWidth - w) / 2;
+					int bottom = tileHeight - h - top;
+					int right = tileWidth - w - left;
+					var matPadded = new Mat();
+					opencv_core.copyMakeBorder(tile, matPadded, top, bottom, left, right, borderType);
+					tile.close();
+					tile = matPadded;
+				}
+				tiles.add(tile);
+				bounds.add(new int[] {left, top, w, h});
+			}
+			nRows++;
+		}
+		
+		var results = fun.apply(tiles);
+		if (results.size() != tiles.size())
+			throw new IllegalArgumentException("Expected " + tiles.size() + " results, but got " + results.size());
+		
+		// Strip padding & merge the results
+		int nCols = tiles.size() / nRows;
+		List<Mat> rows = new ArrayList<>();
+		for (int r = 0; r < nRows; r++) {
+			List<Mat> row = new ArrayList<>();
+			for (int c = 0; c < nCols; c++) {
+				int ind = r * nCols + c;
+				var result = results.get(ind);
+				var b = bounds.get(ind);
+				if (result.cols() != b[2] || result.rows() != b[3])
+					result.put(crop(result, b[0], b[1], b[2], b[3]));
+				row.add(result);
+			}
+			if (row.size() == 1)
+				rows.add(row.get(0));
+			else {
+				Mat matRow = new Mat();
+				opencv_core.hconcat(new MatVector(row.toArray(Mat[]::new)), matRow);
+				rows.add(matRow);
+			}
+		}
+		if (rows.size() == 1)
+			return rows.get(0);
+		Mat matResult = new Mat();
+		opencv_core.vconcat(new MatVector(rows.toArray(Mat[]::new)), matResult);
+		return matResult;
+	}
+	
+
 }
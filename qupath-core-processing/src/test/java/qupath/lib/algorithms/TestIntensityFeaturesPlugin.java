@@ -0,0 +1,123 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.lib.algorithms;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.algorithms.IntensityFeaturesPlugin.RegionType;
+import qupath.lib.algorithms.IntensityFeaturesPlugin.TiledIntensityFeatureRunnable;
+import qupath.lib.images.ImageData;
+import qupath.lib.images.ImageData.ImageType;
+import qupath.lib.images.servers.WrappedBufferedImageServer;
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjects;
+import qupath.lib.plugins.parameters.BooleanParameter;
+import qupath.lib.plugins.parameters.ChoiceParameter;
+import qupath.lib.plugins.parameters.DoubleParameter;
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.regions.RegionRequest;
+import qupath.lib.roi.ROIs;
+
+@SuppressWarnings("javadoc")
+public class TestIntensityFeaturesPlugin {
+	
+	@SuppressWarnings("unchecked")
+	@Test
+	public void test_tiledMatchesPerObject() throws IOException {
+		var rand = new Random(100L);
+		var img = new BufferedImage(256, 256, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < img.getHeight(); y++) {
+			for (int x = 0; x < img.getWidth(); x++) {
+				img.setRGB(x, y, rand.nextInt(0xffffff));
+			}
+		}
+		var server = new WrappedBufferedImageServer("test", img);
+		var imageData = new ImageData<>(server, ImageType.BRIGHTFIELD_H_E);
+		
+		// Request all the features
+		var plugin = new IntensityFeaturesPlugin();
+		var params = plugin.getDefaultParameterList(imageData);
+		for (var parameter : params.getParameters().values()) {
+			if (parameter instanceof BooleanParameter)
+				((BooleanParameter)parameter).setValue(Boolean.TRUE);
+		}
+		((DoubleParameter)params.getParameters().get("downsample")).setValue(1.0);
+		((DoubleParameter)params.getParameters().get("tileSizePixels")).setValue(20.0);
+		
+		for (RegionType regionType : RegionType.values()) {
+			((ChoiceParameter<RegionType>)params.getParameters().get("region")).setValue(regionType);
+			
+			List<PathObject> objectsIndividual = createCells(new Random(1L));
+			List<PathObject> objectsTiled = createCells(new Random(1L));
+			
+			for (var pathObject : objectsIndividual)
+				IntensityFeaturesPlugin.processObject(pathObject, params, imageData);
+			
+			Map<PathObject, RegionRequest> regions = new LinkedHashMap<>();
+			for (var pathObject : objectsTiled) {
+				var region = IntensityFeaturesPlugin.getCroppableRegion(pathObject, server, params, 1.0);
+				if (region != null)
+					regions.put(pathObject, region);
+				else
+					IntensityFeaturesPlugin.processObject(pathObject, params, imageData);
+			}
+			assertFalse(regions.isEmpty());
+			new TiledIntensityFeatureRunnable(imageData, regions, params).run();
+			
+			for (int i = 0; i < objectsIndividual.size(); i++) {
+				var expected = objectsIndividual.get(i).getMeasurementList();
+				var actual = objectsTiled.get(i).getMeasurementList();
+				assertFalse(expected.isEmpty());
+				assertEquals(expected.getMeasurementNames(), actual.getMeasurementNames());
+				for (String name : expected.getMeasurementNames())
+					assertEquals(expected.getMeasurementValue(name), actual.getMeasurementValue(name), regionType + ": " + name);
+			}
+		}
+	}
+	
+	private static List<PathObject> createCells(Random rand) {
+		List<PathObject> cells = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			double x = rand.nextDouble() * 220;
+			double y = rand.nextDouble() * 220;
+			double w = 5 + rand.nextDouble() * 25;
+			double h = 5 + rand.nextDouble() * 25;
+			var roi = ROIs.createEllipseROI(x, y, w, h, ImagePlane.getDefaultPlane());
+			var roiNucleus = ROIs.createEllipseROI(x + w/4, y + h/4, w/2, h/2, ImagePlane.getDefaultPlane());
+			cells.add(PathObjects.createCellObject(roi, roiNucleus, null, null));
+		}
+		return cells;
+	}
+
+}
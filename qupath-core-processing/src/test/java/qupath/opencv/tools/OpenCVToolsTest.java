@@ -22,13 +22,18 @@
 package qupath.opencv.tools;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 
 import java.awt.image.BufferedImage;
 import java.util.Arrays;
 import java.util.Random;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import org.bytedeco.javacpp.PointerScope;
+import org.bytedeco.javacpp.indexer.FloatIndexer;
+import org.bytedeco.opencv.global.opencv_core;
+import org.bytedeco.opencv.opencv_core.Mat;
 import org.junit.jupiter.api.Test;
 
 import qupath.imagej.tools.IJTools;
@@ -93,4 +98,41 @@ public class OpenCVToolsTest {
 		}
 	}
 
+	
+	@Test
+	public void testApplyTiledBatch() {
+		var rand = new Random(100L);
+		try (PointerScope scope = new PointerScope()) {
+			var mat = new Mat(70, 100, opencv_core.CV_32FC2);
+			FloatIndexer indexer = mat.createIndexer();
+			for (int y = 0; y < mat.rows(); y++) {
+				for (int x = 0; x < mat.cols(); x++) {
+					for (int c = 0; c < mat.channels(); c++)
+						indexer.put(y, x, c, rand.nextFloat());
+				}
+			}
+			int tileWidth = 32;
+			int tileHeight = 40;
+			int[] batchSize = new int[1];
+			var expected = OpenCVTools.applyTiled(m -> {
+				assertEquals(tileWidth, m.cols());
+				assertEquals(tileHeight, m.rows());
+				return OpenCVTools.crop(m, 0, 0, m.cols(), m.rows());
+			}, mat, tileWidth, tileHeight, opencv_core.BORDER_REFLECT);
+			var actual = OpenCVTools.applyTiledBatch(list -> {
+				batchSize[0] = list.size();
+				return list.stream().map(m -> {
+					assertEquals(tileWidth, m.cols());
+					assertEquals(tileHeight, m.rows());
+					return OpenCVTools.crop(m, 0, 0, m.cols(), m.rows());
+				}).collect(Collectors.toList());
+			}, mat, tileWidth, tileHeight, opencv_core.BORDER_REFLECT);
+			assertEquals(8, batchSize[0]);
+			assertEquals(mat.cols(), actual.cols());
+			assertEquals(mat.rows(), actual.rows());
+			assertArrayEquals(OpenCVTools.extractPixels(expected, null), OpenCVTools.extractPixels(actual, null), 0.0f);
+			assertArrayEquals(OpenCVTools.extractPixels(mat, null), OpenCVTools.extractPixels(actual, null), 0.0f);
+		}
+	}
+
 }
\ No newline at end of file
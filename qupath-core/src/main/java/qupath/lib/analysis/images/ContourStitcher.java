@@ -0,0 +1,602 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.lib.analysis.images;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.locationtech.jts.algorithm.locate.IndexedPointInAreaLocator;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Location;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Create polygons from labeled images that are provided tile by tile, without needing to compute a (potentially very expensive) 
+ * union of per-tile polygons.
+ * <p>
+ * Contours are traced within each tile as soon as it is added, retaining only the open segments that end on the tile boundary 
+ * along with the labels of the pixels along each tile edge.
+ * When {@link #createGeometries(GeometryFactory, double)} is called, the boundary segments along the seams between tiles are generated 
+ * and all segments are linked by their end points into closed rings.
+ * <p>
+ * Pixels are treated as 4-connected. Tiles are expected to form a regular grid, i.e. tiles that are adjacent should share 
+ * the full length of their common edge - as is the case for tiles obtained from an image server.
+ */
+public class ContourStitcher {
+	
+	private final static Logger logger = LoggerFactory.getLogger(ContourStitcher.class);
+	
+	private static final int RIGHT = 0, DOWN = 1, LEFT = 2, UP = 3;
+	
+	private final int[] labels;
+	private final Map<Integer, Integer> labelIndex = new HashMap<>();
+	
+	private final List<Tile> tiles = new ArrayList<>();
+	
+	/**
+	 * Create a stitcher for the specified labels. 
+	 * Pixels with any other value are treated as background.
+	 * @param labels
+	 */
+	public ContourStitcher(Collection<Integer> labels) {
+		this.labels = new LinkedHashSet<>(labels).stream().mapToInt(i -> i).toArray();
+		for (int i = 0; i < this.labels.length; i++)
+			labelIndex.put(this.labels[i], i);
+	}
+	
+	/**
+	 * Add a labeled tile.
+	 * This method is thread-safe, so that tiles may be traced in parallel.
+	 * 
+	 * @param x x-coordinate of the top left of the tile, in the pixel coordinates of the full (labeled) image
+	 * @param y y-coordinate of the top left of the tile, in the pixel coordinates of the full (labeled) image
+	 * @param width tile width
+	 * @param height tile height
+	 * @param pixels labels for all pixels in the tile, in row-major order
+	 */
+	public void addTile(int x, int y, int width, int height, int[] pixels) {
+		if (pixels.length < width * height)
+			throw new IllegalArgumentException("Pixel array length " + pixels.length + " is too short for " + width + "x" + height + " tile");
+		var tile = new Tile(x, y, width, height, pixels, labels.length);
+		// Trace each label that is present
+		boolean[] present = new boolean[labels.length];
+		int nPresent = 0;
+		for (int i = 0; i < width * height && nPresent < labels.length; i++) {
+			var ind = labelIndex.get(pixels[i]);
+			if (ind != null && !present[ind]) {
+				present[ind] = true;
+				nPresent++;
+			}
+		}
+		byte[] edges = nPresent == 0 ? null : new byte[(width + 1) * (height + 1)];
+		for (int i = 0; i < labels.length; i++) {
+			if (present[i])
+				traceTile(tile, i, labels[i], pixels, edges);
+		}
+		synchronized (tiles) {
+			tiles.add(tile);
+		}
+	}
+	
+	/**
+	 * Create geometries for each label from all the tiles that have been added.
+	 * 
+	 * @param factory factory used to create the geometries
+	 * @param scale scale factor applied to all pixel coordinates (e.g. the downsample at which the labeled image was created)
+	 * @return a map of labels and their geometries; labels for which no pixels were found are omitted
+	 */
+	public Map<Integer, Geometry> createGeometries(GeometryFactory factory, double scale) {
+		List<Tile> tiles;
+		synchronized (this.tiles) {
+			tiles = new ArrayList<>(this.tiles);
+		}
+		var byOrigin = new HashMap<Long, Tile>();
+		var byBottomLeft = new HashMap<Long, Tile>();
+		var byTopRight = new HashMap<Long, Tile>();
+		for (var tile : tiles) {
+			byOrigin.put(key(tile.x, tile.y), tile);
+			byBottomLeft.put(key(tile.x, tile.y + tile.height), tile);
+			byTopRight.put(key(tile.x + tile.width, tile.y), tile);
+		}
+		
+		Map<Integer, Geometry> output = new LinkedHashMap<>();
+		for (int ind = 0; ind < labels.length; ind++) {
+			List<IntPoints> rings = new ArrayList<>();
+			List<IntPoints> segments = new ArrayList<>();
+			for (var tile : tiles) {
+				rings.addAll(tile.rings[ind]);
+				segments.addAll(tile.segments[ind]);
+				addSeamSegments(tile, labels[ind], byOrigin, byBottomLeft, byTopRight, segments);
+			}
+			rings.addAll(linkSegments(segments));
+			var geometry = createGeometry(factory, rings, scale);
+			if (geometry != null)
+				output.put(labels[ind], geometry);
+		}
+		return output;
+	}
+	
+	
+	/**
+	 * Trace all boundaries between pixels with the specified label and other pixels within a tile.
+	 * Edges along the tile boundary are ignored here, since they depend upon neighboring tiles.
+	 * <p>
+	 * Edges are directed so that the labeled pixel is always on the same side, with the result that 
+	 * outer rings and holes have opposite orientations.
+	 */
+	private static void traceTile(Tile tile, int ind, int label, int[] pixels, byte[] edges) {
+		int w = tile.width;
+		int h = tile.height;
+		int w1 = w + 1;
+		Arrays.fill(edges, (byte)0);
+		// Horizontal edges between pixel rows
+		for (int y = 1; y < h; y++) {
+			for (int x = 0; x < w; x++) {
+				boolean above = pixels[(y-1)*w + x] == label;
+				boolean below = pixels[y*w + x] == label;
+				if (below && !above)
+					edges[y*w1 + x + 1] |= 1 << LEFT;
+				else if (above && !below)
+					edges[y*w1 + x] |= 1 << RIGHT;
+			}
+		}
+		// Vertical edges between pixel columns
+		for (int y = 0; y < h; y++) {
+			for (int x = 1; x < w; x++) {
+				boolean left = pixels[y*w + x - 1] == label;
+				boolean right = pixels[y*w + x] == label;
+				if (right && !left)
+					edges[y*w1 + x] |= 1 << DOWN;
+				else if (left && !right)
+					edges[(y+1)*w1 + x] |= 1 << UP;
+			}
+		}
+		// Open segments must start on the tile boundary
+		for (int y = 0; y <= h; y++) {
+			int inc = y == 0 || y == h ? 1 : w;
+			for (int x = 0; x <= w; x += inc) {
+				while (edges[y*w1 + x] != 0)
+					tile.segments[ind].add(trace(tile, edges, x, y, false));
+			}
+		}
+		// Anything remaining must be a closed ring
+		for (int y = 1; y < h; y++) {
+			for (int x = 1; x < w; x++) {
+				while (edges[y*w1 + x] != 0)
+					tile.rings[ind].add(trace(tile, edges, x, y, true));
+			}
+		}
+	}
+	
+	/**
+	 * Follow edges from a starting vertex, removing them as they are used.
+	 * Only vertices where the direction changes are retained.
+	 */
+	private static IntPoints trace(Tile tile, byte[] edges, int x, int y, boolean closed) {
+		int w1 = tile.width + 1;
+		var points = new IntPoints();
+		int x0 = x, y0 = y;
+		int lastDir = -1;
+		while (true) {
+			int ind = y*w1 + x;
+			int e = edges[ind];
+			int dir = lastDir < 0 ? -1 : preferredDirection(lastDir);
+			if (dir < 0 || (e & (1 << dir)) == 0) {
+				// If we've returned to the start of a closed ring, we're done - unless we should continue along a different edge
+				if (closed && lastDir >= 0 && x == x0 && y == y0)
+					break;
+				dir = Integer.numberOfTrailingZeros(e);
+			}
+			if (dir >= 4)
+				break;
+			edges[ind] = (byte)(e & ~(1 << dir));
+			if (dir != lastDir)
+				points.add(tile.x + x, tile.y + y);
+			lastDir = dir;
+			switch (dir) {
+			case RIGHT: x++; break;
+			case DOWN: y++; break;
+			case LEFT: x--; break;
+			default: y--; break;
+			}
+		}
+		if (!closed)
+			points.add(tile.x + x, tile.y + y);
+		return points;
+	}
+	
+	/**
+	 * Get the preferred outgoing direction, given the incoming direction.
+	 * Where labeled pixels touch only diagonally, this ensures the contour continues around the same pixel - 
+	 * so that pixels are treated as 4-connected.
+	 * If the preferred direction is unavailable, there can only be one other option.
+	 */
+	private static int preferredDirection(int incomingDir) {
+		return (incomingDir + 3) % 4;
+	}
+	
+	private static int getDirection(int x1, int y1, int x2, int y2) {
+		if (x2 > x1)
+			return RIGHT;
+		if (x2 < x1)
+			return LEFT;
+		if (y2 > y1)
+			return DOWN;
+		return UP;
+	}
+	
+	/**
+	 * Add segments for the boundaries along the top and left of a tile, using neighboring tiles where available.
+	 * Boundaries along the bottom and right are only added if there is no neighbor there (since otherwise they will be added 
+	 * as the top or left of the neighbor).
+	 */
+	private static void addSeamSegments(Tile tile, int label, Map<Long, Tile> byOrigin, Map<Long, Tile> byBottomLeft, Map<Long, Tile> byTopRight, List<IntPoints> segments) {
+		var above = byBottomLeft.get(key(tile.x, tile.y));
+		if (above != null && above.width != tile.width)
+			throw new IllegalArgumentException("Tiles do not form a regular grid - tile widths " + above.width + " and " + tile.width + " are not compatible");
+		addHorizontalSeam(tile.x, tile.y, tile.width, above == null ? null : above.bottom, tile.top, label, segments);
+		
+		var left = byTopRight.get(key(tile.x, tile.y));
+		if (left != null && left.height != tile.height)
+			throw new IllegalArgumentException("Tiles do not form a regular grid - tile heights " + left.height + " and " + tile.height + " are not compatible");
+		addVerticalSeam(tile.x, tile.y, tile.height, left == null ? null : left.right, tile.left, label, segments);
+
+		if (!byOrigin.containsKey(key(tile.x, tile.y + tile.height)))
+			addHorizontalSeam(tile.x, tile.y + tile.height, tile.width, tile.bottom, null, label, segments);
+		if (!byOrigin.containsKey(key(tile.x + tile.width, tile.y)))
+			addVerticalSeam(tile.x + tile.width, tile.y, tile.height, tile.right, null, label, segments);
+	}
+	
+	/**
+	 * Add segments along a horizontal seam, merging consecutive edges with the same direction.
+	 */
+	private static void addHorizontalSeam(int x, int y, int length, int[] above, int[] below, int label, List<IntPoints> segments) {
+		int runStart = -1;
+		int runDir = -1;
+		for (int i = 0; i <= length; i++) {
+			int dir = -1;
+			if (i < length) {
+				boolean a = above != null && above[i] == label;
+				boolean b = below != null && below[i] == label;
+				if (b && !a)
+					dir = LEFT;
+				else if (a && !b)
+					dir = RIGHT;
+			}
+			if (dir != runDir) {
+				if (runDir == LEFT)
+					segments.add(new IntPoints().add(x + i, y).add(x + runStart, y));
+				else if (runDir == RIGHT)
+					segments.add(new IntPoints().add(x + runStart, y).add(x + i, y));
+				runStart = i;
+				runDir = dir;
+			}
+		}
+	}
+	
+	/**
+	 * Add segments along a vertical seam, merging consecutive edges with the same direction.
+	 */
+	private static void addVerticalSeam(int x, int y, int length, int[] left, int[] right, int label, List<IntPoints> segments) {
+		int runStart = -1;
+		int runDir = -1;
+		for (int i = 0; i <= length; i++) {
+			int dir = -1;
+			if (i < length) {
+				boolean l = left != null && left[i] == label;
+				boolean r = right != null && right[i] == label;
+				if (r && !l)
+					dir = DOWN;
+				else if (l && !r)
+					dir = UP;
+			}
+			if (dir != runDir) {
+				if (runDir == DOWN)
+					segments.add(new IntPoints().add(x, y + runStart).add(x, y + i));
+				else if (runDir == UP)
+					segments.add(new IntPoints().add(x, y + i).add(x, y + runStart));
+				runStart = i;
+				runDir = dir;
+			}
+		}
+	}
+	
+	/**
+	 * Link open segments into closed rings, by matching the end of each segment with the start of another.
+	 */
+	private static List<IntPoints> linkSegments(List<IntPoints> segments) {
+		// Map each start vertex to the segments that start there (at most two, where labeled pixels touch diagonally)
+		var starts = new HashMap<Long, List<IntPoints>>();
+		for (var segment : segments)
+			starts.computeIfAbsent(key(segment.getX(0), segment.getY(0)), k -> new ArrayList<>(1)).add(segment);
+		
+		List<IntPoints> rings = new ArrayList<>();
+		for (var segment : segments) {
+			long startKey = key(segment.getX(0), segment.getY(0));
+			var list = starts.get(startKey);
+			if (!list.remove(segment))
+				continue;
+			var ring = new IntPoints();
+			ring.addAll(segment);
+			while (true) {
+				int n = ring.size();
+				long endKey = key(ring.getX(n-1), ring.getY(n-1));
+				int preferred = preferredDirection(getDirection(ring.getX(n-2), ring.getY(n-2), ring.getX(n-1), ring.getY(n-1)));
+				var candidates = starts.get(endKey);
+				IntPoints next = null;
+				if (candidates != null) {
+					for (var candidate : candidates) {
+						if (next == null || getDirection(candidate.getX(0), candidate.getY(0), candidate.getX(1), candidate.getY(1)) == preferred)
+							next = candidate;
+					}
+				}
+				if (endKey == startKey) {
+					// Close the ring, unless the preferred direction leads elsewhere
+					if (next == null || getDirection(next.getX(0), next.getY(0), next.getX(1), next.getY(1)) != preferred) {
+						ring.removeLast();
+						rings.add(ring);
+						break;
+					}
+				}
+				if (next == null) {
+					logger.warn("Unable to close contour at ({}, {}) - will be discarded", ring.getX(n-1), ring.getY(n-1));
+					break;
+				}
+				candidates.remove(next);
+				ring.addAll(next);
+			}
+		}
+		return rings;
+	}
+	
+	/**
+	 * Create a geometry from closed rings, with outer rings and holes distinguished by their orientation.
+	 */
+	private static Geometry createGeometry(GeometryFactory factory, List<IntPoints> rings, double scale) {
+		List<IntPoints> shells = new ArrayList<>();
+		List<IntPoints> holes = new ArrayList<>();
+		for (var ring : rings) {
+			for (var simple : splitAtRepeatedVertices(ring)) {
+				long area2 = simple.getSignedArea2();
+				if (area2 < 0)
+					shells.add(simple);
+				else if (area2 > 0)
+					holes.add(simple);
+			}
+		}
+		if (shells.isEmpty())
+			return null;
+		
+		// Assign each hole to the smallest shell that contains a pixel adjacent to the hole
+		var tree = new STRtree();
+		var shellPolygons = new Polygon[shells.size()];
+		var shellAreas = new double[shells.size()];
+		for (int i = 0; i < shells.size(); i++) {
+			var shell = shells.get(i);
+			shellPolygons[i] = factory.createPolygon(shell.toLinearRing(factory, 1.0));
+			shellAreas[i] = shellPolygons[i].getArea();
+			tree.insert(shellPolygons[i].getEnvelopeInternal(), i);
+		}
+		var locators = new IndexedPointInAreaLocator[shells.size()];
+		Map<Integer, List<LinearRing>> holeMap = new HashMap<>();
+		for (var hole : holes) {
+			// Find the center of the labeled pixel alongside the first edge
+			int dx = Integer.signum(hole.getX(1) - hole.getX(0));
+			int dy = Integer.signum(hole.getY(1) - hole.getY(0));
+			var c = new Coordinate(hole.getX(0) + 0.5*dx + 0.5*dy, hole.getY(0) + 0.5*dy - 0.5*dx);
+			int best = -1;
+			for (var item : tree.query(new Envelope(c))) {
+				int i = (Integer)item;
+				if (best >= 0 && shellAreas[i] >= shellAreas[best])
+					continue;
+				if (locators[i] == null)
+					locators[i] = new IndexedPointInAreaLocator(shellPolygons[i]);
+				if (locators[i].locate(c) == Location.INTERIOR)
+					best = i;
+			}
+			if (best < 0)
+				logger.warn("Unable to find outer ring for hole at ({}, {}) - will be discarded", hole.getX(0), hole.getY(0));
+			else
+				holeMap.computeIfAbsent(best, k -> new ArrayList<>()).add(hole.toLinearRing(factory, scale));
+		}
+		
+		var polygons = new ArrayList<Polygon>();
+		for (int i = 0; i < shells.size(); i++) {
+			var shell = shells.get(i).toLinearRing(factory, scale);
+			var holesForShell = holeMap.getOrDefault(i, Collections.emptyList());
+			polygons.add(factory.createPolygon(shell, holesForShell.toArray(LinearRing[]::new)));
+		}
+		return factory.buildGeometry(polygons);
+	}
+	
+	/**
+	 * Split a ring that passes through the same vertex more than once (where labeled pixels touch diagonally) 
+	 * into simple rings.
+	 */
+	private static List<IntPoints> splitAtRepeatedVertices(IntPoints ring) {
+		int n = ring.size();
+		var stack = new IntPoints();
+		var positions = new HashMap<Long, Integer>();
+		List<IntPoints> output = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			int x = ring.getX(i);
+			int y = ring.getY(i);
+			long k = key(x, y);
+			var pos = positions.get(k);
+			if (pos == null) {
+				positions.put(k, stack.size());
+				stack.addVertex(x, y);
+				continue;
+			}
+			// Remove the loop that has just been closed
+			var loop = new IntPoints();
+			for (int j = pos; j < stack.size(); j++) {
+				loop.addVertex(stack.getX(j), stack.getY(j));
+				if (j > pos)
+					positions.remove(key(stack.getX(j), stack.getY(j)));
+			}
+			stack.truncate(pos + 1);
+			if (loop.size() >= 4)
+				output.add(loop);
+		}
+		if (stack.size() >= 4)
+			output.add(stack);
+		return output;
+	}
+	
+	private static long key(int x, int y) {
+		return ((long)x << 32) | (y & 0xffffffffL);
+	}
+	
+	
+	private static class Tile {
+		
+		private final int x, y, width, height;
+		private final int[] top, bottom, left, right;
+		
+		private final List<IntPoints>[] segments;
+		private final List<IntPoints>[] rings;
+		
+		@SuppressWarnings("unchecked")
+		private Tile(int x, int y, int width, int height, int[] pixels, int nLabels) {
+			this.x = x;
+			this.y = y;
+			this.width = width;
+			this.height = height;
+			this.top = Arrays.copyOfRange(pixels, 0, width);
+			this.bottom = Arrays.copyOfRange(pixels, (height-1)*width, height*width);
+			this.left = new int[height];
+			this.right = new int[height];
+			for (int yy = 0; yy < height; yy++) {
+				left[yy] = pixels[yy*width];
+				right[yy] = pixels[yy*width + width - 1];
+			}
+			segments = new List[nLabels];
+			rings = new List[nLabels];
+			for (int i = 0; i < nLabels; i++) {
+				segments[i] = new ArrayList<>();
+				rings[i] = new ArrayList<>();
+			}
+		}
+		
+	}
+	
+	
+	/**
+	 * Growable list of integer vertices.
+	 * Vertices that are collinear with their neighbors along the x or y axis are dropped as they are added.
+	 */
+	private static class IntPoints {
+		
+		private int[] xy = new int[16];
+		private int n = 0;
+		
+		IntPoints add(int x, int y) {
+			if (n > 0 && xy[2*n-2] == x && xy[2*n-1] == y)
+				return this;
+			if (n > 1) {
+				int x1 = xy[2*n-4], y1 = xy[2*n-3];
+				int x2 = xy[2*n-2], y2 = xy[2*n-1];
+				if ((x1 == x2 && x2 == x) || (y1 == y2 && y2 == y)) {
+					xy[2*n-2] = x;
+					xy[2*n-1] = y;
+					return this;
+				}
+			}
+			addVertex(x, y);
+			return this;
+		}
+		
+		/**
+		 * Add a vertex without checking for duplicate or collinear vertices.
+		 */
+		void addVertex(int x, int y) {
+			if (2*n + 2 > xy.length)
+				xy = Arrays.copyOf(xy, xy.length * 2);
+			xy[2*n] = x;
+			xy[2*n+1] = y;
+			n++;
+		}
+		
+		void addAll(IntPoints points) {
+			for (int i = 0; i < points.n; i++)
+				add(points.getX(i), points.getY(i));
+		}
+		
+		int getX(int i) {
+			return xy[2*i];
+		}
+		
+		int getY(int i) {
+			return xy[2*i+1];
+		}
+		
+		int size() {
+			return n;
+		}
+		
+		void removeLast() {
+			n--;
+		}
+		
+		void truncate(int size) {
+			n = size;
+		}
+		
+		/**
+		 * Twice the signed area of the ring defined by these vertices.
+		 */
+		long getSignedArea2() {
+			long sum = 0;
+			for (int i = 0; i < n; i++) {
+				int j = (i + 1) % n;
+				sum += (long)getX(i) * getY(j) - (long)getX(j) * getY(i);
+			}
+			return sum;
+		}
+		
+		LinearRing toLinearRing(GeometryFactory factory, double scale) {
+			var coords = new Coordinate[n + 1];
+			for (int i = 0; i < n; i++)
+				coords[i] = new Coordinate(getX(i) * scale, getY(i) * scale);
+			coords[n] = coords[0];
+			return factory.createLinearRing(coords);
+		}
+		
+	}
+
+}
@@ -26,6 +26,7 @@ package qupath.lib.analysis.stats;
 //import java.io.Serializable;
 import java.util.Collection;
 
+import qupath.lib.measurements.MeasurementColumnReader;
 import qupath.lib.objects.PathObject;
 
 
@@ -418,9 +419,10 @@ public class Histogram { // implements Serializable {
 	 */
 	public static double[] getMeasurementValues(final Collection<PathObject> pathObjects, final String measurementName) {
 		double[] values = new double[pathObjects.size()];
+		var reader = MeasurementColumnReader.create(measurementName);
 		int ind = 0;
 		for (PathObject pathObject : pathObjects) {
-			values[ind] = pathObject.getMeasurementList().getMeasurementValue(measurementName);
+			reader.readValues(pathObject.getMeasurementList(), values, ind);
 			ind++;
 		}
 		return values;
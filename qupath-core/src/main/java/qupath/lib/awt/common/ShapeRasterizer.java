@@ -0,0 +1,433 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.lib.awt.common;
+
+import java.awt.BasicStroke;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+
+/**
+ * Scanline rasterizer for filling and stroking shapes directly into primitive pixel arrays.
+ * <p>
+ * Unlike drawing with {@link java.awt.Graphics2D}, this does not require a new image for every 
+ * output plane. Instead, the pixels covered by a shape are first computed as a list of horizontal {@link Spans}, 
+ * which can then be written cheaply into any number of {@code byte[]}, {@code short[]} or {@code int[]} buffers.
+ * <p>
+ * Filling follows the same rules as Java2D without antialiasing: a pixel is inside a shape if its center is 
+ * inside, with ties broken by including pixels whose centers lie on a top or left edge.
+ * The winding rule of the shape is respected.
+ * <p>
+ * Optionally, coordinates can be normalized to approximate the default behavior of Java2D 
+ * (i.e. unless {@link java.awt.RenderingHints#VALUE_STROKE_PURE} is set), which effectively samples pixels 
+ * at their top left corner rather than their center. This helps to give results that are consistent with 
+ * drawing using a {@link java.awt.Graphics2D} object, although thin lines may still differ slightly.
+ */
+public class ShapeRasterizer {
+	
+	/**
+	 * Maximum distance between flattened curves and the original shape, in output pixels.
+	 */
+	private static final double FLATNESS = 0.1;
+	
+	private ShapeRasterizer() {}
+	
+	/**
+	 * Compute the spans of pixels inside a filled shape, without normalization.
+	 * @param shape the shape to fill
+	 * @param transform optional transform to apply to the shape, mapping its coordinates to pixel coordinates (may be null)
+	 * @param width width of the output raster; spans are clipped to this
+	 * @param height height of the output raster; spans are clipped to this
+	 * @return the spans covered by the shape
+	 * @see #fill(Shape, AffineTransform, int, int, boolean)
+	 */
+	public static Spans fill(Shape shape, AffineTransform transform, int width, int height) {
+		return fill(shape, transform, width, height, false);
+	}
+	
+	/**
+	 * Compute the spans of pixels inside a filled shape.
+	 * @param shape the shape to fill
+	 * @param transform optional transform to apply to the shape, mapping its coordinates to pixel coordinates (may be null)
+	 * @param width width of the output raster; spans are clipped to this
+	 * @param height height of the output raster; spans are clipped to this
+	 * @param normalize if true, normalize coordinates to approximate Java2D's default behavior
+	 * @return the spans covered by the shape
+	 */
+	public static Spans fill(Shape shape, AffineTransform transform, int width, int height, boolean normalize) {
+		if (normalize) {
+			if (shape instanceof Rectangle2D && isRectilinear(transform)) {
+				shape = normalizeRectangle((Rectangle2D)shape, transform);
+				transform = null;
+			} else
+				transform = normalize(transform);
+		}
+		var edges = new EdgeList();
+		edges.add(shape.getPathIterator(transform, FLATNESS));
+		return edges.scan(width, height);
+	}
+	
+	/**
+	 * Compute the spans of pixels covered by the outline of a shape, without normalization.
+	 * @param shape the shape to stroke
+	 * @param transform optional transform to apply to the shape, mapping its coordinates to pixel coordinates (may be null)
+	 * @param lineThickness thickness of the outline, in output pixels
+	 * @param width width of the output raster; spans are clipped to this
+	 * @param height height of the output raster; spans are clipped to this
+	 * @return the spans covered by the outline
+	 * @see #stroke(Shape, AffineTransform, float, int, int, boolean)
+	 */
+	public static Spans stroke(Shape shape, AffineTransform transform, float lineThickness, int width, int height) {
+		return stroke(shape, transform, lineThickness, width, height, false);
+	}
+	
+	/**
+	 * Compute the spans of pixels covered by the outline of a shape.
+	 * @param shape the shape to stroke
+	 * @param transform optional transform to apply to the shape, mapping its coordinates to pixel coordinates (may be null)
+	 * @param lineThickness thickness of the outline, in output pixels
+	 * @param width width of the output raster; spans are clipped to this
+	 * @param height height of the output raster; spans are clipped to this
+	 * @param normalize if true, normalize coordinates to approximate Java2D's default behavior
+	 * @return the spans covered by the outline
+	 */
+	public static Spans stroke(Shape shape, AffineTransform transform, float lineThickness, int width, int height, boolean normalize) {
+		if (normalize)
+			transform = normalize(transform);
+		var shapeTransformed = transform == null || transform.isIdentity() ? shape : transform.createTransformedShape(shape);
+		var stroke = new BasicStroke(lineThickness);
+		return fill(stroke.createStrokedShape(shapeTransformed), null, width, height, false);
+	}
+	
+	/**
+	 * Append a half-pixel translation to a transform, so that sampling pixel centers gives the same result 
+	 * as sampling pixel corners without the translation.
+	 */
+	private static AffineTransform normalize(AffineTransform transform) {
+		var transformNormalized = AffineTransform.getTranslateInstance(0.5, 0.5);
+		if (transform != null)
+			transformNormalized.concatenate(transform);
+		return transformNormalized;
+	}
+	
+	private static boolean isRectilinear(AffineTransform transform) {
+		return transform == null || (transform.getType() & 
+				(AffineTransform.TYPE_GENERAL_ROTATION | AffineTransform.TYPE_QUADRANT_ROTATION | AffineTransform.TYPE_GENERAL_TRANSFORM)) == 0;
+	}
+	
+	/**
+	 * Java2D handles rectangles differently from other shapes, rounding coordinates to the nearest pixel 
+	 * center with a small bias (as when normalizing strokes).
+	 */
+	private static Rectangle2D normalizeRectangle(Rectangle2D rect, AffineTransform transform) {
+		var bounds = transform == null ? rect : transform.createTransformedShape(rect).getBounds2D();
+		double x1 = Math.floor(bounds.getMinX() + 0.25) + 0.25;
+		double y1 = Math.floor(bounds.getMinY() + 0.25) + 0.25;
+		double x2 = Math.floor(bounds.getMaxX() + 0.25) + 0.25;
+		double y2 = Math.floor(bounds.getMaxY() + 0.25) + 0.25;
+		return new Rectangle2D.Double(x1, y1, x2 - x1, y2 - y1);
+	}
+	
+	/**
+	 * Compute the spans for individual pixels, given their x and y coordinates.
+	 * Coordinates are transformed and then truncated to integers; those falling outside the raster are ignored.
+	 * @param xy interleaved x and y coordinates
+	 * @param transform optional transform to apply to the coordinates, mapping them to pixel coordinates (may be null)
+	 * @param width width of the output raster
+	 * @param height height of the output raster
+	 * @return the spans for the pixels
+	 */
+	public static Spans points(double[] xy, AffineTransform transform, int width, int height) {
+		if (transform != null && !transform.isIdentity()) {
+			xy = xy.clone();
+			transform.transform(xy, 0, xy, 0, xy.length / 2);
+		}
+		var spans = new Spans(xy.length / 2);
+		for (int i = 0; i < xy.length-1; i += 2) {
+			int x = (int)xy[i];
+			int y = (int)xy[i+1];
+			if (x >= 0 && x < width && y >= 0 && y < height)
+				spans.add(y, x, x+1);
+		}
+		return spans;
+	}
+	
+	
+	/**
+	 * Horizontal runs of pixels covered by a shape, in a raster of a fixed size.
+	 * Each span is defined by a row, and start (inclusive) and end (exclusive) column.
+	 * <p>
+	 * Spans can be written into any buffer where pixels are stored row by row, 
+	 * and are safe to reuse for multiple buffers.
+	 */
+	public static class Spans {
+		
+		private int[] data;
+		private int n = 0;
+		
+		private Spans(int capacity) {
+			data = new int[Math.max(3, capacity * 3)];
+		}
+		
+		private void add(int y, int x1, int x2) {
+			if (n * 3 + 3 > data.length)
+				data = Arrays.copyOf(data, data.length * 2);
+			int ind = n * 3;
+			data[ind] = y;
+			data[ind+1] = x1;
+			data[ind+2] = x2;
+			n++;
+		}
+		
+		/**
+		 * Get the number of spans.
+		 * @return
+		 */
+		public int size() {
+			return n;
+		}
+		
+		/**
+		 * Returns true if there are no spans, i.e. no pixels are covered.
+		 * @return
+		 */
+		public boolean isEmpty() {
+			return n == 0;
+		}
+		
+		/**
+		 * Set all pixels covered by the spans to a fixed value.
+		 * @param buffer pixel buffer
+		 * @param stride number of elements in each row of the buffer
+		 * @param value the value to set
+		 */
+		public void fill(byte[] buffer, int stride, byte value) {
+			for (int i = 0; i < n*3; i += 3) {
+				int offset = data[i] * stride;
+				Arrays.fill(buffer, offset + data[i+1], offset + data[i+2], value);
+			}
+		}
+		
+		/**
+		 * Set all pixels covered by the spans to a fixed value.
+		 * @param buffer pixel buffer
+		 * @param stride number of elements in each row of the buffer
+		 * @param value the value to set
+		 */
+		public void fill(short[] buffer, int stride, short value) {
+			for (int i = 0; i < n*3; i += 3) {
+				int offset = data[i] * stride;
+				Arrays.fill(buffer, offset + data[i+1], offset + data[i+2], value);
+			}
+		}
+		
+		/**
+		 * Set all pixels covered by the spans to a fixed value.
+		 * @param buffer pixel buffer
+		 * @param stride number of elements in each row of the buffer
+		 * @param value the value to set
+		 */
+		public void fill(int[] buffer, int stride, int value) {
+			for (int i = 0; i < n*3; i += 3) {
+				int offset = data[i] * stride;
+				Arrays.fill(buffer, offset + data[i+1], offset + data[i+2], value);
+			}
+		}
+		
+	}
+	
+	
+	/**
+	 * Non-horizontal edges of a flattened shape, with the information needed to scan them.
+	 */
+	private static class EdgeList {
+		
+		private int n = 0;
+		private double[] xTop = new double[16];
+		private double[] yTop = new double[16];
+		private double[] yBottom = new double[16];
+		private double[] slope = new double[16];
+		private int[] direction = new int[16];
+		
+		private boolean evenOdd = false;
+		private double minY = Double.POSITIVE_INFINITY;
+		private double maxY = Double.NEGATIVE_INFINITY;
+		
+		void add(PathIterator iterator) {
+			evenOdd = iterator.getWindingRule() == PathIterator.WIND_EVEN_ODD;
+			double[] coords = new double[6];
+			double xStart = 0, yStart = 0, xLast = 0, yLast = 0;
+			while (!iterator.isDone()) {
+				switch (iterator.currentSegment(coords)) {
+				case PathIterator.SEG_MOVETO:
+					// Implicitly close any previous subpath, as Graphics2D does when filling
+					addEdge(xLast, yLast, xStart, yStart);
+					xStart = xLast = coords[0];
+					yStart = yLast = coords[1];
+					break;
+				case PathIterator.SEG_LINETO:
+					addEdge(xLast, yLast, coords[0], coords[1]);
+					xLast = coords[0];
+					yLast = coords[1];
+					break;
+				case PathIterator.SEG_CLOSE:
+					addEdge(xLast, yLast, xStart, yStart);
+					xLast = xStart;
+					yLast = yStart;
+					break;
+				default:
+					// Shouldn't happen when using a flattening iterator
+					throw new IllegalArgumentException("Unsupported path segment - shape must be flattened");
+				}
+				iterator.next();
+			}
+			addEdge(xLast, yLast, xStart, yStart);
+		}
+		
+		private void addEdge(double x1, double y1, double x2, double y2) {
+			if (y1 == y2 || Double.isNaN(y1) || Double.isNaN(y2))
+				return;
+			if (n == yTop.length) {
+				int len = n * 2;
+				xTop = Arrays.copyOf(xTop, len);
+				yTop = Arrays.copyOf(yTop, len);
+				yBottom = Arrays.copyOf(yBottom, len);
+				slope = Arrays.copyOf(slope, len);
+				direction = Arrays.copyOf(direction, len);
+			}
+			if (y1 < y2) {
+				xTop[n] = x1;
+				yTop[n] = y1;
+				yBottom[n] = y2;
+				direction[n] = 1;
+			} else {
+				xTop[n] = x2;
+				yTop[n] = y2;
+				yBottom[n] = y1;
+				direction[n] = -1;
+			}
+			slope[n] = (x2 - x1) / (y2 - y1);
+			minY = Math.min(minY, yTop[n]);
+			maxY = Math.max(maxY, yBottom[n]);
+			n++;
+		}
+		
+		/**
+		 * Index of the first pixel (row or column) whose center is at or after a coordinate.
+		 */
+		private static int firstPixel(double y) {
+			return (int)Math.ceil(y - 0.5);
+		}
+		
+		Spans scan(int width, int height) {
+			if (n == 0)
+				return new Spans(0);
+			
+			int rowStart = Math.max(0, firstPixel(minY));
+			int rowEnd = Math.min(height, firstPixel(maxY));
+			var spans = new Spans(Math.max(0, rowEnd - rowStart));
+			if (rowStart >= rowEnd)
+				return spans;
+			
+			// Sort edges by the first row they intersect
+			Integer[] order = new Integer[n];
+			for (int i = 0; i < n; i++)
+				order[i] = i;
+			Arrays.sort(order, (a, b) -> Double.compare(yTop[a], yTop[b]));
+			
+			int[] active = new int[n];
+			double[] xCurrent = new double[n];
+			int nActive = 0;
+			int next = 0;
+			
+			for (int row = rowStart; row < rowEnd; row++) {
+				double yc = row + 0.5;
+				
+				// Remove edges that end at or above this row center, and add edges that start here
+				int k = 0;
+				for (int i = 0; i < nActive; i++) {
+					int e = active[i];
+					if (yBottom[e] > yc)
+						active[k++] = e;
+				}
+				nActive = k;
+				while (next < n && yTop[order[next]] <= yc) {
+					int e = order[next++];
+					if (yBottom[e] > yc)
+						active[nActive++] = e;
+				}
+				if (nActive == 0)
+					continue;
+				
+				// Update crossings & sort by x; the order is usually unchanged from the previous row, 
+				// so insertion sort is effectively linear
+				for (int i = 0; i < nActive; i++) {
+					int e = active[i];
+					xCurrent[e] = xTop[e] + (yc - yTop[e]) * slope[e];
+				}
+				for (int i = 1; i < nActive; i++) {
+					int e = active[i];
+					double x = xCurrent[e];
+					int j = i - 1;
+					while (j >= 0 && xCurrent[active[j]] > x) {
+						active[j+1] = active[j];
+						j--;
+					}
+					active[j+1] = e;
+				}
+				
+				// Walk the crossings, emitting spans for regions inside the shape
+				int winding = 0;
+				double xSpanStart = 0;
+				for (int i = 0; i < nActive; i++) {
+					int e = active[i];
+					boolean wasInside = winding != 0;
+					if (evenOdd)
+						winding ^= 1;
+					else
+						winding += direction[e];
+					boolean isInside = winding != 0;
+					if (!wasInside && isInside)
+						xSpanStart = xCurrent[e];
+					else if (wasInside && !isInside)
+						addSpan(spans, row, xSpanStart, xCurrent[e], width);
+				}
+			}
+			return spans;
+		}
+		
+		/**
+		 * Add a span for pixels with centers in the interval [x1, x2), clipped to the raster.
+		 */
+		private static void addSpan(Spans spans, int row, double x1, double x2, int width) {
+			int start = Math.max(0, firstPixel(x1));
+			int end = Math.min(width, firstPixel(x2));
+			if (end > start)
+				spans.add(row, start, end);
+		}
+		
+	}
+
+}
@@ -0,0 +1,175 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.lib.color;
+
+/**
+ * Bulk color transforms for packed RGB pixels, converting a full array (e.g. a tile) into one or more planes of float values.
+ * <p>
+ * These give identical results to applying the per-pixel methods in {@link ColorTransformer}, but are designed 
+ * for transforming many pixels at a time:
+ * <ul>
+ *   <li>lookup tables are created once per call, with any stain matrix coefficients already applied</li>
+ *   <li>the red, green and blue values of each pixel are unpacked only once, however many planes are requested</li>
+ *   <li>loops avoid method calls and multidimensional array lookups, which makes them easier for the JIT to unroll</li>
+ * </ul>
+ * Output arrays may be null if a particular plane is not required; otherwise they must have at least as many 
+ * elements as the input array.
+ */
+public class ColorTransformKernels {
+	
+	private ColorTransformKernels() {}
+	
+	/**
+	 * Convert packed RGB values to optical densities for each channel.
+	 * 
+	 * @param rgb packed RGB values
+	 * @param stains stains defining the background (white) values; if null, 255 is used for each channel
+	 * @param red output array for red optical densities (may be null)
+	 * @param green output array for green optical densities (may be null)
+	 * @param blue output array for blue optical densities (may be null)
+	 */
+	public static void opticalDensities(final int[] rgb, final ColorDeconvolutionStains stains, final float[] red, final float[] green, final float[] blue) {
+		double[] lutRed = ColorDeconvolutionHelper.makeODLUT(stains == null ? 255.0 : stains.getMaxRed());
+		double[] lutGreen = ColorDeconvolutionHelper.makeODLUT(stains == null ? 255.0 : stains.getMaxGreen());
+		double[] lutBlue = ColorDeconvolutionHelper.makeODLUT(stains == null ? 255.0 : stains.getMaxBlue());
+		int n = rgb.length;
+		checkLength(n, red, green, blue);
+		for (int i = 0; i < n; i++) {
+			int v = rgb[i];
+			if (red != null)
+				red[i] = (float)lutRed[(v >> 16) & 0xff];
+			if (green != null)
+				green[i] = (float)lutGreen[(v >> 8) & 0xff];
+			if (blue != null)
+				blue[i] = (float)lutBlue[v & 0xff];
+		}
+	}
+	
+	/**
+	 * Compute the sum of red, green and blue optical densities for packed RGB values.
+	 * 
+	 * @param rgb packed RGB values
+	 * @param stains stains defining the background (white) values; if null, 255 is used for each channel
+	 * @param output optional output array; if null or too short, a new array will be created
+	 * @return the output array
+	 * @see ColorTransformer#opticalDensitySum(int, double[], double[], double[])
+	 */
+	public static float[] opticalDensitySum(final int[] rgb, final ColorDeconvolutionStains stains, float[] output) {
+		double[] lutRed = ColorDeconvolutionHelper.makeODLUT(stains == null ? 255.0 : stains.getMaxRed());
+		double[] lutGreen = ColorDeconvolutionHelper.makeODLUT(stains == null ? 255.0 : stains.getMaxGreen());
+		double[] lutBlue = ColorDeconvolutionHelper.makeODLUT(stains == null ? 255.0 : stains.getMaxBlue());
+		int n = rgb.length;
+		if (output == null || output.length < n)
+			output = new float[n];
+		for (int i = 0; i < n; i++) {
+			int v = rgb[i];
+			output[i] = (float)(lutRed[(v >> 16) & 0xff] + lutGreen[(v >> 8) & 0xff] + lutBlue[v & 0xff]);
+		}
+		return output;
+	}
+	
+	/**
+	 * Apply color deconvolution to packed RGB values, computing a single stain.
+	 * 
+	 * @param rgb packed RGB values
+	 * @param stains the stains used for deconvolution
+	 * @param stain the stain number (1, 2 or 3)
+	 * @param output optional output array; if null or too short, a new array will be created
+	 * @return the output array
+	 */
+	public static float[] deconvolve(final int[] rgb, final ColorDeconvolutionStains stains, final int stain, float[] output) {
+		if (stain < 1 || stain > 3)
+			throw new IllegalArgumentException("Stain number must be 1, 2 or 3 - not " + stain);
+		if (output == null || output.length < rgb.length)
+			output = new float[rgb.length];
+		deconvolve(rgb, stains,
+				stain == 1 ? output : null,
+				stain == 2 ? output : null,
+				stain == 3 ? output : null);
+		return output;
+	}
+	
+	/**
+	 * Apply color deconvolution to packed RGB values, computing up to three stains in a single pass.
+	 * 
+	 * @param rgb packed RGB values
+	 * @param stains the stains used for deconvolution
+	 * @param stain1 output array for the first stain (may be null)
+	 * @param stain2 output array for the second stain (may be null)
+	 * @param stain3 output array for the third stain (may be null)
+	 */
+	public static void deconvolve(final int[] rgb, final ColorDeconvolutionStains stains, final float[] stain1, final float[] stain2, final float[] stain3) {
+		if (stains == null)
+			throw new IllegalArgumentException("Stains are required for color deconvolution!");
+		int n = rgb.length;
+		checkLength(n, stain1, stain2, stain3);
+		
+		double[] lutRed = ColorDeconvolutionHelper.makeODLUT(stains.getMaxRed());
+		double[] lutGreen = ColorDeconvolutionHelper.makeODLUT(stains.getMaxGreen());
+		double[] lutBlue = ColorDeconvolutionHelper.makeODLUT(stains.getMaxBlue());
+		double[][] inverse = stains.getMatrixInverse();
+		
+		// Fold the inverse matrix into the lookup tables, so that each stain requires only 3 lookups & 2 additions
+		double[] r1 = stain1 == null ? null : scaledLUT(lutRed, inverse[0][0]);
+		double[] g1 = stain1 == null ? null : scaledLUT(lutGreen, inverse[1][0]);
+		double[] b1 = stain1 == null ? null : scaledLUT(lutBlue, inverse[2][0]);
+		double[] r2 = stain2 == null ? null : scaledLUT(lutRed, inverse[0][1]);
+		double[] g2 = stain2 == null ? null : scaledLUT(lutGreen, inverse[1][1]);
+		double[] b2 = stain2 == null ? null : scaledLUT(lutBlue, inverse[2][1]);
+		double[] r3 = stain3 == null ? null : scaledLUT(lutRed, inverse[0][2]);
+		double[] g3 = stain3 == null ? null : scaledLUT(lutGreen, inverse[1][2]);
+		double[] b3 = stain3 == null ? null : scaledLUT(lutBlue, inverse[2][2]);
+		
+		for (int i = 0; i < n; i++) {
+			int v = rgb[i];
+			int r = (v >> 16) & 0xff;
+			int g = (v >> 8) & 0xff;
+			int b = v & 0xff;
+			if (stain1 != null)
+				stain1[i] = (float)(r1[r] + g1[g] + b1[b]);
+			if (stain2 != null)
+				stain2[i] = (float)(r2[r] + g2[g] + b2[b]);
+			if (stain3 != null)
+				stain3[i] = (float)(r3[r] + g3[g] + b3[b]);
+		}
+	}
+	
+	/**
+	 * Create a lookup table by multiplying each entry of an existing table by a scale factor.
+	 * The multiplication is performed exactly as it would be per pixel, so results are unchanged.
+	 */
+	private static double[] scaledLUT(final double[] lut, final double scale) {
+		double[] scaled = new double[lut.length];
+		for (int i = 0; i < lut.length; i++)
+			scaled[i] = lut[i] * scale;
+		return scaled;
+	}
+	
+	private static void checkLength(final int n, final float[]... outputs) {
+		for (float[] output : outputs) {
+			if (output != null && output.length < n)
+				throw new IllegalArgumentException("Output array length " + output.length + " is less than the number of pixels (" + n + ")");
+		}
+	}
+
+}
@@ -325,9 +325,6 @@ public class ColorTransformer {
 		if (pixels == null || pixels.length != buf.length)
 			pixels = new float[buf.length];
 		
-		double[] od_lut, od_lut_red, od_lut_green, od_lut_blue;
-		double[][] inverse;
-		
 		switch (method) {
 		case Red:
 			for (int i = 0; i < buf.length; i++) {
@@ -344,22 +341,13 @@ public class ColorTransformer {
 			}
 			break;
 		case Red_OD:
-			od_lut = ColorDeconvolutionHelper.makeODLUT(stains.getMaxRed());
-			for (int i = 0; i < buf.length; i++) {
-				pixels[i] = (float)od_lut[ColorTools.red(buf[i])];
-			}
+			ColorTransformKernels.opticalDensities(buf, stains, pixels, null, null);
 			break;
 		case Green_OD:
-			od_lut = ColorDeconvolutionHelper.makeODLUT(stains.getMaxGreen());
-			for (int i = 0; i < buf.length; i++) {
-				pixels[i] = (float)od_lut[ColorTools.green(buf[i])];
-			}
+			ColorTransformKernels.opticalDensities(buf, stains, null, pixels, null);
 			break;
 		case Blue_OD:
-			od_lut = ColorDeconvolutionHelper.makeODLUT(stains.getMaxBlue());
-			for (int i = 0; i < buf.length; i++) {
-				pixels[i] = (float)od_lut[ColorTools.blue(buf[i])];
-			}
+			ColorTransformKernels.opticalDensities(buf, stains, null, null, pixels);
 			break;
 		case RGB_mean:
 			for (int i = 0; i < buf.length; i++) {
@@ -396,107 +384,65 @@ public class ColorTransformer {
 				throw new IllegalArgumentException("No valid H&E stains supplied!");
 			}
 		case Stain_1:
-			od_lut_red = ColorDeconvolutionHelper.makeODLUT(stains.getMaxRed());
-			od_lut_green = ColorDeconvolutionHelper.makeODLUT(stains.getMaxGreen());
-			od_lut_blue = ColorDeconvolutionHelper.makeODLUT(stains.getMaxBlue());
-			inverse = stains.getMatrixInverse();
-			for (int i = 0; i < buf.length; i++) {
-				pixels[i] = ColorTransformer.deconvolve(buf[i], inverse, od_lut_red, od_lut_green, od_lut_blue, 1);
-			}
+			ColorTransformKernels.deconvolve(buf, stains, 1, pixels);
 			break;
 		case Eosin_H_E:
 			if (stains == null || !stains.isH_E()) {
 				throw new IllegalArgumentException("No valid H&E stains supplied!");
 			}
 		case Stain_2:
-			od_lut_red = ColorDeconvolutionHelper.makeODLUT(stains.getMaxRed());
-			od_lut_green = ColorDeconvolutionHelper.makeODLUT(stains.getMaxGreen());
-			od_lut_blue = ColorDeconvolutionHelper.makeODLUT(stains.getMaxBlue());
-			inverse = stains.getMatrixInverse();
-			for (int i = 0; i < buf.length; i++) {
-				pixels[i] = ColorTransformer.deconvolve(buf[i], inverse, od_lut_red, od_lut_green, od_lut_blue, 2);
-			}
+			ColorTransformKernels.deconvolve(buf, stains, 2, pixels);
 			break;
 		case Stain_3:
-			od_lut_red = ColorDeconvolutionHelper.makeODLUT(stains.getMaxRed());
-			od_lut_green = ColorDeconvolutionHelper.makeODLUT(stains.getMaxGreen());
-			od_lut_blue = ColorDeconvolutionHelper.makeODLUT(stains.getMaxBlue());
-			inverse = stains.getMatrixInverse();
-			for (int i = 0; i < buf.length; i++) {
-				pixels[i] = ColorTransformer.deconvolve(buf[i], inverse, od_lut_red, od_lut_green, od_lut_blue, 3);
-			}
+			ColorTransformKernels.deconvolve(buf, stains, 3, pixels);
 			break;
 		case Hematoxylin_H_DAB:
 			if (stains == null || !stains.isH_DAB()) {
 				throw new IllegalArgumentException("No valid H-DAB stains supplied!");
 			}
-			od_lut_red = ColorDeconvolutionHelper.makeODLUT(stains.getMaxRed());
-			od_lut_green = ColorDeconvolutionHelper.makeODLUT(stains.getMaxGreen());
-			od_lut_blue = ColorDeconvolutionHelper.makeODLUT(stains.getMaxBlue());
-			inverse = stains.getMatrixInverse();
-			for (int i = 0; i < buf.length; i++) {
-				pixels[i] = ColorTransformer.deconvolve(buf[i], inverse, od_lut_red, od_lut_green, od_lut_blue, 1);
-			}
+			ColorTransformKernels.deconvolve(buf, stains, 1, pixels);
 			break;
 		case DAB_H_DAB:
 			if (stains == null || !stains.isH_DAB()) {
 				throw new IllegalArgumentException("No valid H-DAB stains supplied!");
 			}
-			od_lut_red = ColorDeconvolutionHelper.makeODLUT(stains.getMaxRed());
-			od_lut_green = ColorDeconvolutionHelper.makeODLUT(stains.getMaxGreen());
-			od_lut_blue = ColorDeconvolutionHelper.makeODLUT(stains.getMaxBlue());
-			inverse = stains.getMatrixInverse();
-			for (int i = 0; i < buf.length; i++) {
-				pixels[i] = ColorTransformer.deconvolve(buf[i], inverse, od_lut_red, od_lut_green, od_lut_blue, 2);
-			}
+			ColorTransformKernels.deconvolve(buf, stains, 2, pixels);
 			break;
 			
 		case Hematoxylin_H_E_8_bit:
 			if (stains == null || !stains.isH_E()) {
 				throw new IllegalArgumentException("No valid H&E stains supplied!");
 			}
-			od_lut_red = ColorDeconvolutionHelper.makeODLUT(stains.getMaxRed());
-			od_lut_green = ColorDeconvolutionHelper.makeODLUT(stains.getMaxGreen());
-			od_lut_blue = ColorDeconvolutionHelper.makeODLUT(stains.getMaxBlue());
-			inverse = stains.getMatrixInverse();
+			ColorTransformKernels.deconvolve(buf, stains, 1, pixels);
 			for (int i = 0; i < buf.length; i++) {
-				pixels[i] = ColorTransformer.deconvolve8bit(buf[i], inverse, od_lut_red, od_lut_green, od_lut_blue, 1);
+				pixels[i] = ColorTools.do8BitRangeCheck(Math.exp(-pixels[i]) * 255);
 			}
 			break;
 		case Eosin_H_E_8_bit:
 			if (stains == null || !stains.isH_E()) {
 				throw new IllegalArgumentException("No valid H&E stains supplied!");
 			}
-			od_lut_red = ColorDeconvolutionHelper.makeODLUT(stains.getMaxRed());
-			od_lut_green = ColorDeconvolutionHelper.makeODLUT(stains.getMaxGreen());
-			od_lut_blue = ColorDeconvolutionHelper.makeODLUT(stains.getMaxBlue());
-			inverse = stains.getMatrixInverse();
+			ColorTransformKernels.deconvolve(buf, stains, 2, pixels);
 			for (int i = 0; i < buf.length; i++) {
-				pixels[i] = ColorTransformer.deconvolve8bit(buf[i], inverse, od_lut_red, od_lut_green, od_lut_blue, 2);
+				pixels[i] = ColorTools.do8BitRangeCheck(Math.exp(-pixels[i]) * 255);
 			}
 			break;
 		case Hematoxylin_H_DAB_8_bit:
 			if (stains == null || !stains.isH_DAB()) {
 				throw new IllegalArgumentException("No valid H-DAB stains supplied!");
 			}
-			od_lut_red = ColorDeconvolutionHelper.makeODLUT(stains.getMaxRed());
-			od_lut_green = ColorDeconvolutionHelper.makeODLUT(stains.getMaxGreen());
-			od_lut_blue = ColorDeconvolutionHelper.makeODLUT(stains.getMaxBlue());
-			inverse = stains.getMatrixInverse();
+			ColorTransformKernels.deconvolve(buf, stains, 1, pixels);
 			for (int i = 0; i < buf.length; i++) {
-				pixels[i] = ColorTransformer.deconvolve8bit(buf[i], inverse, od_lut_red, od_lut_green, od_lut_blue, 1);
+				pixels[i] = ColorTools.do8BitRangeCheck(Math.exp(-pixels[i]) * 255);
 			}
 			break;
 		case DAB_H_DAB_8_bit:
 			if (stains == null || !stains.isH_DAB()) {
 				throw new IllegalArgumentException("No valid H-DAB stains supplied!");
 			}
-			od_lut_red = ColorDeconvolutionHelper.makeODLUT(stains.getMaxRed());
-			od_lut_green = ColorDeconvolutionHelper.makeODLUT(stains.getMaxGreen());
-			od_lut_blue = ColorDeconvolutionHelper.makeODLUT(stains.getMaxBlue());
-			inverse = stains.getMatrixInverse();
+			ColorTransformKernels.deconvolve(buf, stains, 2, pixels);
 			for (int i = 0; i < buf.length; i++) {
-				pixels[i] = ColorTransformer.deconvolve8bit(buf[i], inverse, od_lut_red, od_lut_green, od_lut_blue, 2);
+				pixels[i] = ColorTools.do8BitRangeCheck(Math.exp(-pixels[i]) * 255);
 			}
 			break;
 			
@@ -545,19 +491,7 @@ public class ColorTransformer {
 			Arrays.fill(pixels, 0);
 			break;
 		case Optical_density_sum:
-			if (stains != null) {
-				od_lut_red = ColorDeconvolutionHelper.makeODLUT(stains.getMaxRed());
-				od_lut_green = ColorDeconvolutionHelper.makeODLUT(stains.getMaxGreen());
-				od_lut_blue = ColorDeconvolutionHelper.makeODLUT(stains.getMaxBlue());
-				for (int i = 0; i < buf.length; i++) {
-					pixels[i] = ColorTransformer.opticalDensitySum(buf[i], od_lut_red, od_lut_green, od_lut_blue);
-				}			
-			} else {
-				od_lut = ColorDeconvolutionHelper.makeODLUT(255.0);
-				for (int i = 0; i < buf.length; i++) {
-					pixels[i] = ColorTransformer.opticalDensitySum(buf[i], od_lut);
-				}			
-			}
+			ColorTransformKernels.opticalDensitySum(buf, stains, pixels);
 			break;
 		case Original:
 			return null;
@@ -670,11 +604,6 @@ public class ColorTransformer {
 			return (float)(r * invMat[0][stain-1] + g * invMat[1][stain-1] + b * invMat[2][stain-1]);
 	}
 
-	private static int deconvolve8bit(int rgb, double[][] invMat, double[] od_lut_red, double[] od_lut_green, double[] od_lut_blue, int stain) {
-		// Apply deconvolution & store the results
-		return ColorTools.do8BitRangeCheck(Math.exp(-deconvolve(rgb, invMat, od_lut_red, od_lut_green, od_lut_blue, stain)) * 255);
-	}
-
 	/**
 	 * Extract mean of RGB values from a packed RGB pixel.
 	 * @param rgb
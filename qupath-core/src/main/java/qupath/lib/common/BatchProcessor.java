@@ -0,0 +1,222 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.lib.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Helper class to combine inputs submitted from different threads into batches, 
+ * which are then processed with a single function call.
+ * <p>
+ * This is useful whenever processing a batch of inputs is more efficient than processing each input separately, 
+ * for example when applying a deep learning model.
+ * <p>
+ * The first thread to submit an input when no other inputs are waiting becomes responsible for processing the batch. 
+ * It waits until either the maximum batch size is reached or the maximum wait time has elapsed, and then applies 
+ * the function to all inputs received - on its own thread - before passing the results back to the submitting threads.
+ * The maximum batch size should therefore generally not exceed the number of threads submitting inputs, 
+ * otherwise every batch will incur the full wait time.
+ * <p>
+ * If an {@link Executor} is provided, the function is instead applied using the executor. This is required whenever 
+ * the outputs must not be tied to the thread that created them - for example, native memory allocated within 
+ * a JavaCPP {@code PointerScope} would otherwise be released when the scope of the submitting thread is closed, 
+ * while other threads are still using their outputs.
+ *
+ * @param <T> input type
+ * @param <R> output type
+ */
+public class BatchProcessor<T, R> {
+	
+	private final Function<List<T>, List<R>> function;
+	private final int maxBatchSize;
+	private final long maxWaitNanos;
+	private final Executor executor;
+	
+	private final Object lock = new Object();
+	private List<Task<T, R>> pending = new ArrayList<>();
+	
+	/**
+	 * Constructor.
+	 * @param function function to apply to each batch; this must return one output for each input, in the same order
+	 * @param maxBatchSize maximum number of inputs to pass to the function in a single call
+	 * @param maxWait maximum time to wait for a batch to be filled
+	 * @param unit time unit for the maximum wait
+	 */
+	public BatchProcessor(Function<List<T>, List<R>> function, int maxBatchSize, long maxWait, TimeUnit unit) {
+		this(function, maxBatchSize, maxWait, unit, null);
+	}
+	
+	/**
+	 * Constructor, specifying an executor used to apply the function.
+	 * @param function function to apply to each batch; this must return one output for each input, in the same order
+	 * @param maxBatchSize maximum number of inputs to pass to the function in a single call
+	 * @param maxWait maximum time to wait for a batch to be filled
+	 * @param unit time unit for the maximum wait
+	 * @param executor executor used to apply the function; if null, the function is applied on the thread that submitted the first input to the batch
+	 */
+	public BatchProcessor(Function<List<T>, List<R>> function, int maxBatchSize, long maxWait, TimeUnit unit, Executor executor) {
+		if (maxBatchSize < 1)
+			throw new IllegalArgumentException("Maximum batch size must be at least 1, but was " + maxBatchSize);
+		this.function = function;
+		this.maxBatchSize = maxBatchSize;
+		this.maxWaitNanos = Math.max(0L, unit.toNanos(maxWait));
+		this.executor = executor;
+	}
+	
+	/**
+	 * Get the maximum batch size.
+	 * @return
+	 */
+	public int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+	
+	/**
+	 * Process a single input, blocking until the output is available.
+	 * @param input
+	 * @return
+	 * @throws RuntimeException if the function threw an exception when processing the batch containing the input
+	 */
+	public R process(T input) throws RuntimeException {
+		return processAll(List.of(input)).get(0);
+	}
+	
+	/**
+	 * Process multiple inputs, blocking until all the outputs are available.
+	 * The inputs may be split across batches, and combined with inputs from other threads.
+	 * @param inputs
+	 * @return a list of outputs, in the same order as the inputs
+	 * @throws RuntimeException if the function threw an exception when processing any batch containing the inputs
+	 */
+	public List<R> processAll(List<? extends T> inputs) throws RuntimeException {
+		if (inputs.isEmpty())
+			return new ArrayList<>();
+		List<Task<T, R>> tasks = new ArrayList<>();
+		for (var input : inputs)
+			tasks.add(new Task<>(input));
+		
+		boolean isLeader;
+		synchronized (lock) {
+			isLeader = pending.isEmpty();
+			pending.addAll(tasks);
+			if (!isLeader && pending.size() >= maxBatchSize)
+				lock.notifyAll();
+		}
+		if (isLeader)
+			processPending();
+		
+		List<R> results = new ArrayList<>(tasks.size());
+		for (var task : tasks) {
+			try {
+				results.add(task.future.join());
+			} catch (CompletionException e) {
+				if (e.getCause() instanceof RuntimeException)
+					throw (RuntimeException)e.getCause();
+				if (e.getCause() instanceof Error)
+					throw (Error)e.getCause();
+				throw e;
+			}
+		}
+		return results;
+	}
+	
+	/**
+	 * Wait for the batch to fill (or the time to expire), then process everything waiting.
+	 */
+	private void processPending() {
+		List<Task<T, R>> batch;
+		synchronized (lock) {
+			long deadline = System.nanoTime() + maxWaitNanos;
+			long remaining;
+			while (pending.size() < maxBatchSize && (remaining = deadline - System.nanoTime()) > 0) {
+				try {
+					TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+			batch = pending;
+			pending = new ArrayList<>();
+		}
+		if (executor == null) {
+			processBatch(batch);
+			return;
+		}
+		try {
+			executor.execute(() -> processBatch(batch));
+		} catch (Throwable t) {
+			// Don't leave anyone waiting if the executor rejected the batch
+			for (var task : batch)
+				task.future.completeExceptionally(t);
+		}
+	}
+	
+	/**
+	 * Apply the function to a batch, split according to the maximum batch size, and complete the future for every task.
+	 */
+	private void processBatch(List<Task<T, R>> batch) {
+		for (int i = 0; i < batch.size(); i += maxBatchSize) {
+			var tasks = batch.subList(i, Math.min(i + maxBatchSize, batch.size()));
+			try {
+				List<T> inputs = new ArrayList<>(tasks.size());
+				for (var task : tasks)
+					inputs.add(task.input);
+				var outputs = function.apply(inputs);
+				if (outputs.size() != inputs.size())
+					throw new IllegalStateException("Expected " + inputs.size() + " outputs, but function returned " + outputs.size());
+				for (int j = 0; j < tasks.size(); j++)
+					tasks.get(j).future.complete(outputs.get(j));
+			} catch (RuntimeException e) {
+				for (var task : tasks)
+					task.future.completeExceptionally(e);
+			} catch (Throwable t) {
+				// Errors are unlikely to be recoverable, so fail everything that remains (including this batch)
+				for (var task : batch.subList(i, batch.size()))
+					task.future.completeExceptionally(t);
+				if (t instanceof Error)
+					throw (Error)t;
+				return;
+			}
+		}
+	}
+	
+	
+	private static class Task<T, R> {
+		
+		private final T input;
+		private final CompletableFuture<R> future = new CompletableFuture<>();
+		
+		private Task(T input) {
+			this.input = input;
+		}
+		
+	}
+
+}
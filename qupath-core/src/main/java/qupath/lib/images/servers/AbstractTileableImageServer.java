@@ -23,23 +23,34 @@ package qupath.lib.images.servers;
 
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
+import java.awt.Transparency;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.awt.image.Raster;
 import java.awt.image.WritableRaster;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import qupath.lib.awt.common.BufferedImageTools;
 import qupath.lib.color.ColorModelFactory;
+import qupath.lib.common.ThreadTools;
 import qupath.lib.images.servers.ImageServerMetadata.ChannelType;
 import qupath.lib.regions.RegionRequest;
 
@@ -57,20 +68,87 @@ public abstract class AbstractTileableImageServer extends AbstractImageServer<Bu
 	
 	private static final Logger logger = LoggerFactory.getLogger(AbstractTileableImageServer.class);
 	
+	/**
+	 * Shared pool used to fetch tiles in parallel.
+	 * This may grow as required, since the number of threads working on behalf of any one server 
+	 * is limited by {@link #getMaxParallelTileRequests()}.
+	 */
+	private static ExecutorService tilePool = Executors.newCachedThreadPool(ThreadTools.createThreadFactory("tile-reader-", true));
+	
+	private static int defaultMaxParallelTileRequests = Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors()));
+	
 	private ColorModel colorModel;
-	private Map<String, BufferedImage> emptyTileMap = new HashMap<>();
+	private Map<String, BufferedImage> emptyTileMap = new ConcurrentHashMap<>();
 	
-	private transient Set<TileRequest> emptyTiles = new HashSet<>();
+	private transient Set<TileRequest> emptyTiles = ConcurrentHashMap.newKeySet();
 	
 	private final static Long ZERO = Long.valueOf(0L);
 	
 	// Maintain a record of tiles that could not be cached, so we warn for each only once
-	private transient Set<RegionRequest> failedCacheTiles = new HashSet<>();
+	private transient Set<RegionRequest> failedCacheTiles = ConcurrentHashMap.newKeySet();
+	
+	// Maximum number of tiles that may be read concurrently for this server (or -1 to use the default)
+	private int maxParallelTileRequests = -1;
+	
+	// Permits for additional threads that may read tiles for this server at any one time
+	private transient Semaphore tilePermits;
+	private transient int tilePermitsMax = -1;
 		
 	protected AbstractTileableImageServer() {
 		super(BufferedImage.class);
 	}
 	
+	/**
+	 * Get the default maximum number of tiles that may be read in parallel by any one server, 
+	 * if this has not been set for the server itself.
+	 * @return
+	 * @see #setDefaultMaxParallelTileRequests(int)
+	 */
+	public static int getDefaultMaxParallelTileRequests() {
+		return defaultMaxParallelTileRequests;
+	}
+	
+	/**
+	 * Set the default maximum number of tiles that may be read in parallel by any one server, 
+	 * if this has not been set for the server itself.
+	 * This will be clipped to be at least 1; a value of 1 indicates that tiles should be read sequentially.
+	 * @param n
+	 */
+	public static void setDefaultMaxParallelTileRequests(int n) {
+		defaultMaxParallelTileRequests = Math.max(1, n);
+	}
+	
+	/**
+	 * Get the maximum number of tiles that may be read in parallel for this server.
+	 * This includes the thread that makes the request, and is shared across all concurrent requests.
+	 * @return
+	 * @see #setMaxParallelTileRequests(int)
+	 */
+	public int getMaxParallelTileRequests() {
+		return maxParallelTileRequests > 0 ? maxParallelTileRequests : defaultMaxParallelTileRequests;
+	}
+	
+	/**
+	 * Set the maximum number of tiles that may be read in parallel for this server.
+	 * <p>
+	 * Subclasses that cannot read tiles concurrently (or where doing so is not beneficial) may set this to 1. 
+	 * A value &le; 0 indicates that {@link #getDefaultMaxParallelTileRequests()} should be used.
+	 * @param n
+	 */
+	public synchronized void setMaxParallelTileRequests(int n) {
+		maxParallelTileRequests = n <= 0 ? -1 : n;
+		tilePermits = null;
+	}
+	
+	private synchronized Semaphore getTilePermits() {
+		int n = getMaxParallelTileRequests() - 1;
+		if (tilePermits == null || tilePermitsMax != n) {
+			tilePermits = new Semaphore(n);
+			tilePermitsMax = n;
+		}
+		return tilePermits;
+	}
+	
 	protected BufferedImage getEmptyTile(int width, int height) throws IOException {
 		return getEmptyTile(width, height, true);
 //		return getEmptyTile(width, height,
@@ -179,6 +257,24 @@ public abstract class AbstractTileableImageServer extends AbstractImageServer<Bu
 				return imgCached;
 			}
 		}
+		
+		// Try the persistent cache, if available
+		String persistentKey = null;
+		var persistentCache = ImageServerProvider.getPersistentTileCache();
+		if (persistentCache != null) {
+			String serverKey = getPersistentCacheKey();
+			if (serverKey != null) {
+				persistentKey = PersistentTileCache.createKey(serverKey, request);
+				var imgPersistent = persistentCache.get(persistentKey, getDefaultColorModel());
+				if (imgPersistent != null) {
+					logger.trace("Returning tile from persistent cache: {}", request);
+					if (cache != null)
+						cache.put(request, imgPersistent);
+					return imgPersistent;
+				}
+			}
+		}
+		
 		logger.trace("Reading tile: {}", request);
 		
 		var imgCached = readTile(tileRequest);
@@ -187,16 +283,163 @@ public abstract class AbstractTileableImageServer extends AbstractImageServer<Bu
 		if (imgCached != null) {
 			if (isEmptyTile(imgCached)) {
 				emptyTiles.add(tileRequest);
-			} else if (cache != null) {
-				cache.put(request, imgCached);
-				// Check if we were able to cache the tile; sometimes we can't if it is too big
-				if (!cache.containsKey(request) && failedCacheTiles.add(request))
-					logger.warn("Unable to add {} to cache.\nYou might need to give QuPath more memory, or to increase the 'Percentage memory for tile caching' preference.", request);
+			} else {
+				if (persistentKey != null)
+					persistentCache.put(persistentKey, imgCached);
+				if (cache != null) {
+					cache.put(request, imgCached);
+					// Check if we were able to cache the tile; sometimes we can't if it is too big
+					if (!cache.containsKey(request) && failedCacheTiles.add(request))
+						logger.warn("Unable to add {} to cache.\nYou might need to give QuPath more memory, or to increase the 'Percentage memory for tile caching' preference.", request);
+				}
 			}
 		}
 		return imgCached;
 	}
 	
+	/**
+	 * Get a key used to identify tiles from this server in the {@link PersistentTileCache}, if one is available.
+	 * <p>
+	 * This should identify both the server and the version of its pixels, so that tiles are not reused 
+	 * if the underlying image changes (e.g. by incorporating a file modification timestamp).
+	 * The default implementation returns null, indicating that tiles should not be cached persistently; 
+	 * subclasses that read tiles slowly (e.g. from a remote source) should override this.
+	 * 
+	 * @return a key for the server, or null if tiles from this server should not be cached persistently
+	 * @see ImageServerProvider#setPersistentTileCache(PersistentTileCache)
+	 */
+	protected String getPersistentCacheKey() {
+		return null;
+	}
+	
+	/**
+	 * Get a tile for the request only if it is already available without reading it, 
+	 * i.e. either it is known to be empty or it is in the cache.
+	 * @param tileRequest
+	 * @return the tile, or null if it would need to be read
+	 * @throws IOException
+	 */
+	private BufferedImage getTileIfAvailable(final TileRequest tileRequest) throws IOException {
+		if (emptyTiles.contains(tileRequest))
+			return getEmptyTile(tileRequest.getTileWidth(), tileRequest.getTileHeight());
+		var cache = getCache();
+		return cache == null ? null : cache.get(tileRequest.getRegionRequest());
+	}
+	
+	/**
+	 * Get all the tiles for a collection of requests, reading these in parallel if required.
+	 * <p>
+	 * The calling thread always participates in reading tiles, with up to {@link #getMaxParallelTileRequests()} - 1 
+	 * additional threads from a shared pool. This means that progress is always possible, even if all 
+	 * permits for this server are currently in use (e.g. because one tile is blocked).
+	 * If reading any tile fails, no further tiles are started and the exception is rethrown.
+	 * 
+	 * @param tiles the tiles to request
+	 * @return a list of tiles, in the same order as the iterator of the input collection
+	 * @throws IOException
+	 */
+	private List<BufferedImage> getTiles(final Collection<TileRequest> tiles) throws IOException {
+		int n = tiles.size();
+		var tileList = new ArrayList<>(tiles);
+		var images = new BufferedImage[n];
+		int[] pending = new int[n];
+		int nPending = 0;
+		for (int i = 0; i < n; i++) {
+			images[i] = getTileIfAvailable(tileList.get(i));
+			if (images[i] == null)
+				pending[nPending++] = i;
+		}
+		
+		int nHelpers = 0;
+		Semaphore permits = null;
+		if (nPending > 1) {
+			permits = getTilePermits();
+			while (nHelpers < nPending - 1 && permits.tryAcquire())
+				nHelpers++;
+		}
+		
+		var fetcher = new TileFetcher(tileList, pending, nPending, images);
+		if (nHelpers == 0) {
+			fetcher.run();
+		} else {
+			var futures = new ArrayList<Future<?>>();
+			var helperPermits = permits;
+			for (int i = 0; i < nHelpers; i++) {
+				futures.add(tilePool.submit(() -> {
+					try {
+						fetcher.run();
+					} finally {
+						helperPermits.release();
+					}
+				}));
+			}
+			fetcher.run();
+			try {
+				for (var future : futures)
+					future.get();
+			} catch (InterruptedException e) {
+				// Don't interrupt the helpers, since this can close file channels in some readers - 
+				// but ensure that no more tiles will be started
+				fetcher.cancel();
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while reading " + nPending + " tiles for " + getPath());
+			} catch (ExecutionException e) {
+				fetcher.cancel();
+				throw new IOException(e.getCause());
+			}
+		}
+		if (fetcher.exception != null) {
+			if (fetcher.exception instanceof IOException)
+				throw (IOException)fetcher.exception;
+			throw new IOException(fetcher.exception);
+		}
+		return Arrays.asList(images);
+	}
+	
+	
+	/**
+	 * Helper class to read pending tiles from multiple threads.
+	 */
+	private class TileFetcher implements Runnable {
+		
+		private final List<TileRequest> tiles;
+		private final int[] pending;
+		private final int nPending;
+		private final BufferedImage[] images;
+		
+		private final AtomicInteger nextInd = new AtomicInteger();
+		private volatile boolean cancelled = false;
+		private volatile Exception exception;
+		
+		private TileFetcher(List<TileRequest> tiles, int[] pending, int nPending, BufferedImage[] images) {
+			this.tiles = tiles;
+			this.pending = pending;
+			this.nPending = nPending;
+			this.images = images;
+		}
+		
+		void cancel() {
+			cancelled = true;
+		}
+		
+		@Override
+		public void run() {
+			int i;
+			while (!cancelled && (i = nextInd.getAndIncrement()) < nPending) {
+				int ind = pending[i];
+				try {
+					images[ind] = getTile(tiles.get(ind));
+				} catch (Exception e) {
+					if (exception == null)
+						exception = e;
+					cancelled = true;
+				}
+			}
+		}
+		
+	}
+	
+	
 	/**
 	 * Create the default (blank) RGB image for this server.
 	 * <p>
@@ -248,34 +491,23 @@ public abstract class AbstractTileableImageServer extends AbstractImageServer<Bu
 		int height = (int)Math.max(1, Math.round(request.getHeight() / request.getDownsample()));
 		if (isRGB()) {
 			BufferedImage imgResult = createDefaultRGBImage(width, height);
-			Graphics2D g2d = imgResult.createGraphics();
-			g2d.scale(1.0/request.getDownsample(), 1.0/request.getDownsample());
-			g2d.translate(-request.getX(), -request.getY());
-			// Interpolate if downsampling
-			if (request.getDownsample() > 1)
-				g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-			
-			// Requests could be parallelized, but should consider the number of threads created/what happens if one blocks
-//			Map<TileRequest, BufferedImage> map = tiles.stream()
-//					.collect(Collectors.toMap(tileRequest -> tileRequest,
-//							tileRequest -> {
-//					try {
-//						return getTile(tileRequest);
-//					} catch (Exception ex) {
-//						return null;
-//					}
-//					}));
-//			for (TileRequest tileRequest : tiles) {
-//				BufferedImage imgTile = map.get(tileRequest);
-//				if (imgTile != null)
-//					g2d.drawImage(imgTile, tileRequest.getImageX(), tileRequest.getImageY(), tileRequest.getImageWidth(), tileRequest.getImageHeight(), null);
-//			}
+			List<BufferedImage> imgTiles = getTiles(tiles);
 			
-			for (TileRequest tileRequest : tiles) {
-				BufferedImage imgTile = getTile(tileRequest);
-				g2d.drawImage(imgTile, tileRequest.getImageX(), tileRequest.getImageY(), tileRequest.getImageWidth(), tileRequest.getImageHeight(), null);
+			// If the tiles are at the requested resolution, we can copy pixels directly
+			if (!copyTilesDirectly(request, tiles, imgTiles, imgResult)) {
+				Graphics2D g2d = imgResult.createGraphics();
+				g2d.scale(1.0/request.getDownsample(), 1.0/request.getDownsample());
+				g2d.translate(-request.getX(), -request.getY());
+				// Interpolate if downsampling
+				if (request.getDownsample() > 1)
+					g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+				int i = 0;
+				for (TileRequest tileRequest : tiles) {
+					BufferedImage imgTile = imgTiles.get(i++);
+					g2d.drawImage(imgTile, tileRequest.getImageX(), tileRequest.getImageY(), tileRequest.getImageWidth(), tileRequest.getImageHeight(), null);
+				}
+				g2d.dispose();
 			}
-			g2d.dispose();
 			
 			long endTime = System.currentTimeMillis();
 			logger.trace("Requested " + tiles.size() + " tiles in " + (endTime - startTime) + " ms (RGB)");
@@ -304,6 +536,17 @@ public abstract class AbstractTileableImageServer extends AbstractImageServer<Bu
 				tileMaxY = Math.max(tileRequest.getTileY() + tileRequest.getTileHeight(), tileMaxY);
 			}
 			
+			// Calculate the requested region mapped to the pyramidal level, and relative to the tiled image
+			int xStart = (int)Math.round(request.getX() / tileDownsample) - tileMinX;
+			int yStart = (int)Math.round(request.getY() / tileDownsample) - tileMinY;
+			int xEnd = (int)Math.round((request.getX() + request.getWidth()) / tileDownsample) - tileMinX;
+			int yEnd = (int)Math.round((request.getY() + request.getHeight()) / tileDownsample) - tileMinY;
+			
+			if (xEnd > getWidth() || yEnd > getHeight())
+				logger.warn("Region request is too large for {}x{} image: {}", getWidth(), getHeight(), request);
+			else if (xEnd - xStart <= 0 || yEnd - yStart <= 0)
+				return null;
+			
 			boolean isEmptyRegion = true;
 			if (singleTile) {
 				// Use the raster directly, if appropriate (because copying can be expensive)
@@ -314,34 +557,36 @@ public abstract class AbstractTileableImageServer extends AbstractImageServer<Bu
 					alphaPremultiplied = imgTile.isAlphaPremultiplied();
 					isEmptyRegion = isEmptyTile(imgTile);
 				}
+				// Do cropping (or padding, if the request starts outside the image), if we need to
+				if (raster != null && (xStart != 0 || yStart != 0 || xEnd != raster.getWidth() || yEnd != raster.getHeight())) {
+					// Best avoid creating a child raster, for memory & convenience reasons
+					// (i.e. sometimes weird things happen when not expecting to have a child raster)
+					var raster2 = raster.createCompatibleWritableRaster(xEnd - xStart, yEnd - yStart);
+					copyPixels(raster, -xStart, -yStart, raster2);
+					raster = raster2;
+				}
 			} else {
+				// Copy each tile straight into the (cropped) destination raster
+				List<BufferedImage> imgTiles = getTiles(tiles);
+				int i = 0;
 				for (var tileRequest : tiles) {
-					BufferedImage imgTile = getTile(tileRequest);
+					BufferedImage imgTile = imgTiles.get(i++);
 					if (imgTile != null && !isEmptyTile(imgTile)) {
 						isEmptyRegion = false;
-						// Figure out coordinates
-						int dx = tileRequest.getTileX() - tileMinX;
-						int dy = tileRequest.getTileY() - tileMinY;
-						int tileWidth = tileMaxX - tileMinX;
-						int tileHeight = tileMaxY - tileMinY;
 						// Preallocate a raster if we need to, and everything else the tile might give us
 						if (raster == null) {
-							raster = imgTile.getRaster().createCompatibleWritableRaster(tileWidth, tileHeight);
+							raster = imgTile.getRaster().createCompatibleWritableRaster(xEnd - xStart, yEnd - yStart);
 							colorModel = imgTile.getColorModel();
 							alphaPremultiplied = imgTile.isAlphaPremultiplied();							
 						}
-						// Insert the tile into the raster
-						if (dx >= raster.getWidth() ||
-								dy >= raster.getHeight()
-								)
+						// Figure out coordinates & insert the tile into the raster
+						int dx = tileRequest.getTileX() - tileMinX - xStart;
+						int dy = tileRequest.getTileY() - tileMinY - yStart;
+						if (dx >= raster.getWidth() || dy >= raster.getHeight() ||
+								dx + imgTile.getWidth() <= 0 || dy + imgTile.getHeight() <= 0)
 							continue;
 						
 						copyPixels(imgTile.getRaster(), dx, dy, raster);
-
-//						raster.setRect(
-//								dx,
-//								dy,
-//								imgTile.getRaster());
 					}
 				}
 			}
@@ -349,33 +594,6 @@ public abstract class AbstractTileableImageServer extends AbstractImageServer<Bu
 			if (raster == null)
 				return null;
 			
-			// Calculate the requested region mapped to the pyramidal level, and relative to the tiled image
-			int xStart = (int)Math.round(request.getX() / tileDownsample) - tileMinX;
-			int yStart = (int)Math.round(request.getY() / tileDownsample) - tileMinY;
-			int xEnd = (int)Math.round((request.getX() + request.getWidth()) / tileDownsample) - tileMinX;
-			int yEnd = (int)Math.round((request.getY() + request.getHeight()) / tileDownsample) - tileMinY;
-			
-			if (xEnd > getWidth() || yEnd > getHeight())
-				logger.warn("Region request is too large for {}x{} image: {}", getWidth(), getHeight(), request);
-			else if (xEnd - xStart <= 0 || yEnd - yStart <= 0)
-				return null;
-						
-			// Do cropping, if we need to
-			if (xStart > 0 || yStart > 0 || xEnd != raster.getWidth() || yEnd != raster.getHeight()) {
-				// Best avoid creating a child raster, for memory & convenience reasons
-				// (i.e. sometimes weird things happen when not expecting to have a child raster)
-				int x = Math.max(xStart, 0);
-				int y = Math.max(yStart, 0);
-				int w = xEnd - xStart;
-				int h = yEnd - yStart;
-				
-//				int w = Math.min(raster.getWidth() - xStart, xEnd - xStart);
-//				int h = Math.min(raster.getHeight() - yStart, yEnd - yStart);
-				var raster2 = raster.createCompatibleWritableRaster(w, h);
-				copyPixels(raster, -x, -y, raster2);
-				raster = raster2;
-			}
-
 			// If we have an empty region, try to use an empty tile
 			if (isEmptyRegion) {
 				return getEmptyTile(raster.getWidth(), raster.getHeight());
@@ -395,6 +613,57 @@ public abstract class AbstractTileableImageServer extends AbstractImageServer<Bu
 		}
 	}
 	
+	/**
+	 * Try to copy tile pixels directly into an RGB image, without any scaling or compositing.
+	 * <p>
+	 * This is only possible whenever the tiles are at the requested resolution, aligned with the pixel grid 
+	 * and share the same color model as the output image; otherwise nothing is copied.
+	 * Images with an alpha channel are never copied directly, because {@link Graphics2D} composites these 
+	 * rather than replacing the existing pixels.
+	 * 
+	 * @param request the request that the tiles are intended to fulfil
+	 * @param tiles the tile requests
+	 * @param imgTiles the tile images, in the same order as the tile requests
+	 * @param imgResult the output image
+	 * @return true if the pixels were copied, false if {@link Graphics2D} is required instead
+	 */
+	private static boolean copyTilesDirectly(RegionRequest request, Collection<TileRequest> tiles, List<BufferedImage> imgTiles, BufferedImage imgResult) {
+		double downsample = request.getDownsample();
+		double x = request.getX() / downsample;
+		double y = request.getY() / downsample;
+		if (x != Math.rint(x) || y != Math.rint(y))
+			return false;
+		var colorModel = imgResult.getColorModel();
+		if (colorModel.getTransparency() != Transparency.OPAQUE)
+			return false;
+		int i = 0;
+		for (var tileRequest : tiles) {
+			var imgTile = imgTiles.get(i++);
+			if (tileRequest.getDownsample() != downsample)
+				return false;
+			if (imgTile == null || isEmptyTile(imgTile))
+				continue;
+			if (imgTile.getWidth() != tileRequest.getTileWidth() ||
+					imgTile.getHeight() != tileRequest.getTileHeight() ||
+					!colorModel.equals(imgTile.getColorModel()))
+				return false;
+		}
+		var raster = imgResult.getRaster();
+		i = 0;
+		for (var tileRequest : tiles) {
+			var imgTile = imgTiles.get(i++);
+			if (imgTile == null || isEmptyTile(imgTile))
+				continue;
+			int dx = tileRequest.getTileX() - (int)x;
+			int dy = tileRequest.getTileY() - (int)y;
+			if (dx >= raster.getWidth() || dy >= raster.getHeight() ||
+					dx + imgTile.getWidth() <= 0 || dy + imgTile.getHeight() <= 0)
+				continue;
+			copyPixels(imgTile.getRaster(), dx, dy, raster);
+		}
+		return true;
+	}
+	
 	/**
 	 * This method essentially wraps a call to {@link WritableRaster#setRect(int, int, Raster)}, while working 
 	 * around an inconvenient JDK bug: https://bugs.openjdk.java.net/browse/JDK-4847156
@@ -417,7 +686,7 @@ public abstract class AbstractTileableImageServer extends AbstractImageServer<Bu
 				logger.warn("No pixels needed to be copied!");
 				return;
 			}
-			dest.setRect(0, 0, source.createChild(sx, sy, source.getWidth()-sx, source.getHeight()-sy, 0, 0, null));
+			dest.setRect(Math.max(dx, 0), Math.max(dy, 0), source.createChild(sx, sy, source.getWidth()-sx, source.getHeight()-sy, 0, 0, null));
 		} else
 			dest.setRect(dx, dy, (Raster)source);
 	}
@@ -28,7 +28,6 @@ import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferFloat;
 import java.awt.image.Raster;
 import java.awt.image.SampleModel;
-import java.awt.image.WritableRaster;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -40,7 +39,7 @@ import org.slf4j.LoggerFactory;
 
 import qupath.lib.color.ColorDeconvolutionStains;
 import qupath.lib.color.ColorModelFactory;
-import qupath.lib.color.ColorTransformer;
+import qupath.lib.color.ColorTransformKernels;
 import qupath.lib.color.StainVector;
 import qupath.lib.color.ColorTransformer.ColorTransformMethod;
 import qupath.lib.images.servers.ImageServerBuilder.ServerBuilder;
@@ -172,13 +171,21 @@ class ColorDeconvolutionImageServer extends TransformingImageServer<BufferedImag
 		SampleModel model = new BandedSampleModel(DataBuffer.TYPE_FLOAT, w, h, nChannels);
 		float[][] bytes = new float[nChannels][w*h];
 		DataBufferFloat buffer = new DataBufferFloat(bytes, w*h);
-		WritableRaster raster = Raster.createWritableRaster(model, buffer, null);
 		
 		int[] rgb = img.getRGB(0, 0, w, h, null, 0, img.getWidth());
-		float[] pixels = new float[w * h];
-		for (int b = 0; b < methods.size(); b++) {
-			ColorTransformer.getTransformedPixels(rgb, methods.get(b), pixels, stains);			
-			raster.setSamples(0, 0, img.getWidth(), img.getHeight(), b, pixels);
+		
+		// Deconvolve all the stains we need in a single pass, directly into the raster's data arrays
+		float[][] stainPixels = new float[3][];
+		for (int b = 0; b < nChannels; b++) {
+			int s = getStainIndex(methods.get(b));
+			if (stainPixels[s] == null)
+				stainPixels[s] = bytes[b];
+		}
+		ColorTransformKernels.deconvolve(rgb, stains, stainPixels[0], stainPixels[1], stainPixels[2]);
+		for (int b = 0; b < nChannels; b++) {
+			float[] pixels = stainPixels[getStainIndex(methods.get(b))];
+			if (pixels != bytes[b])
+				System.arraycopy(pixels, 0, bytes[b], 0, w * h);
 		}
 		return new BufferedImage(getColorModel(), Raster.createWritableRaster(model, buffer, null), false, null);
 		
@@ -188,6 +195,19 @@ class ColorDeconvolutionImageServer extends TransformingImageServer<BufferedImag
 //		return new BufferedImage(colorModel, raster, false, null);
 	}
 
+	private static int getStainIndex(ColorTransformMethod method) {
+		switch (method) {
+		case Stain_1:
+			return 0;
+		case Stain_2:
+			return 1;
+		case Stain_3:
+			return 2;
+		default:
+			throw new IllegalArgumentException("Unsupported color transform " + method);
+		}
+	}
+
 	@Override
 	public ImageServerMetadata getOriginalMetadata() {
 		return metadata;
@@ -58,6 +58,8 @@ public class ImageServerProvider {
 	
 	private static Map<Class<?>, Map<RegionRequest, ?>> cacheMap = new HashMap<>();
 	
+	private static PersistentTileCache persistentTileCache;
+	
 	@SuppressWarnings("rawtypes")
 	private static ServiceLoader<ImageServerBuilder> serviceLoader = ServiceLoader.load(ImageServerBuilder.class);
 	
@@ -82,6 +84,23 @@ public class ImageServerProvider {
 		return (Map<RegionRequest, T>)cacheMap.get(cls);
 	}
 	
+	/**
+	 * Set the persistent (disk-based) cache to be used for image tiles from servers that support it.
+	 * @param cache the cache, or null if no persistent cache should be used
+	 * @see AbstractTileableImageServer#getPersistentCacheKey()
+	 */
+	public static void setPersistentTileCache(PersistentTileCache cache) {
+		persistentTileCache = cache;
+	}
+	
+	/**
+	 * Get the persistent (disk-based) cache used for image tiles from servers that support it.
+	 * @return the cache, or null if no persistent cache is in use
+	 */
+	public static PersistentTileCache getPersistentTileCache() {
+		return persistentTileCache;
+	}
+	
 	/**
 	 * Replace the default service loader with another.
 	 * <p>
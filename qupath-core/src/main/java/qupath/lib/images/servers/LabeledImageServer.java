@@ -1,47 +1,50 @@
-/*-
- * #%L
- * This file is part of QuPath.
- * %%
- * Copyright (C) 2018 - 2020 QuPath developers, The University of Edinburgh
- * %%
- * QuPath is free software: you can redistribute it and/or modify
- * it under the terms of the GNU General Public License as
- * published by the Free Software Foundation, either version 3 of the
- * License, or (at your option) any later version.
- * 
- * QuPath is distributed in the hope that it will be useful,
- * but WITHOUT ANY WARRANTY; without even the implied warranty of
- * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
- * GNU General Public License for more details.
- * 
- * You should have received a copy of the GNU General Public License 
- * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
- * #L%
- */
-
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2020 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
 package qupath.lib.images.servers;
 
-import java.awt.BasicStroke;
-import java.awt.Color;
-import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
 import java.awt.image.BandedSampleModel;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
 import java.awt.image.IndexColorModel;
 import java.awt.image.WritableRaster;
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.TreeMap;
 import java.util.UUID;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -49,9 +52,10 @@ import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import qupath.lib.awt.common.ShapeRasterizer;
+import qupath.lib.awt.common.ShapeRasterizer.Spans;
 import qupath.lib.classifiers.PathClassifierTools;
 import qupath.lib.color.ColorModelFactory;
-import qupath.lib.color.ColorToolsAwt;
 import qupath.lib.common.ColorTools;
 import qupath.lib.images.ImageData;
 import qupath.lib.images.servers.AbstractTileableImageServer;
@@ -700,195 +704,191 @@ public class LabeledImageServer extends AbstractTileableImageServer implements G
 	}
 	
 	
-	private BufferedImage createMultichannelTile(TileRequest tileRequest, Collection<PathObject> pathObjects) {
+	/**
+	 * A labelled object within a tile, along with the pixels it covers.
+	 * Spans are computed lazily, but at most once per tile - regardless of how many labels or channels require them.
+	 */
+	private class TileObject {
 		
-		int nChannels = nChannels();
-		if (nChannels == 1)
-			return createBinaryTile(tileRequest, pathObjects, 0);
+		private final PathObject pathObject;
+		private final RegionRequest request;
+		private final AffineTransform transform;
+		private final int width, height;
+		private ROI roi;
+		private Spans spans, boundarySpans;
 		
-		int tileWidth = tileRequest.getTileWidth();
-		int tileHeight = tileRequest.getTileHeight();
-		byte[][] dataArray = new byte[nChannels][];
-		for (int i = 0; i < nChannels; i++) {
-			var tile = createBinaryTile(tileRequest, pathObjects, i);
-			dataArray[i] = ((DataBufferByte)tile.getRaster().getDataBuffer()).getData();
+		TileObject(PathObject pathObject, TileRequest tileRequest, AffineTransform transform) {
+			this.pathObject = pathObject;
+			this.request = tileRequest.getRegionRequest();
+			this.transform = transform;
+			this.width = tileRequest.getTileWidth();
+			this.height = tileRequest.getTileHeight();
 		}
-		DataBuffer buffer = new DataBufferByte(dataArray, tileWidth * tileHeight);
 		
-		int[] offsets = new int[nChannels];
-		for (int b = 0; b < nChannels; b++)
-			offsets[b] = b * tileWidth * tileHeight;
+		private ROI getROI() {
+			if (roi == null)
+				roi = params.roiFunction.apply(pathObject);
+			return roi;
+		}
 		
-		var sampleModel = new BandedSampleModel(buffer.getDataType(), tileWidth, tileHeight, nChannels);
-//		var sampleModel = new ComponentSampleModel(buffer.getDataType(), tileWidth, tileHeight, 1, tileWidth, offsets);
+		/**
+		 * Get the pixels corresponding to the object, i.e. filled areas, stroked lines or individual points.
+		 * @return the spans, or null if the object has no ROI
+		 */
+		Spans getSpans() {
+			var roi = getROI();
+			if (roi == null)
+				return null;
+			if (spans == null) {
+				if (roi.isArea())
+					spans = ShapeRasterizer.fill(roi.getShape(), transform, width, height, true);
+				else if (roi.isLine())
+					spans = ShapeRasterizer.stroke(roi.getShape(), transform, params.lineThickness, width, height, true);
+				else {
+					// Points are mapped by truncation relative to the request origin, without further rounding
+					var points = roi.getAllPoints();
+					double[] xy = new double[points.size() * 2];
+					int i = 0;
+					for (var p : points) {
+						xy[i++] = (p.getX() - request.getX()) / request.getDownsample();
+						xy[i++] = (p.getY() - request.getY()) / request.getDownsample();
+					}
+					spans = ShapeRasterizer.points(xy, null, width, height);
+				}
+			}
+			return spans;
+		}
 		
-		var raster = WritableRaster.createWritableRaster(sampleModel, buffer, null);
+		/**
+		 * Get the pixels corresponding to the boundary of the object, or null if the object does not have an area ROI.
+		 * @return
+		 */
+		Spans getBoundarySpans() {
+			var roi = getROI();
+			if (roi == null || !roi.isArea())
+				return null;
+			if (boundarySpans == null)
+				boundarySpans = ShapeRasterizer.stroke(roi.getShape(), transform, params.lineThickness, width, height, true);
+			return boundarySpans;
+		}
 		
-		return new BufferedImage(colorModel, raster, false, null);
 	}
 	
-	private BufferedImage createBinaryTile(TileRequest tileRequest, Collection<PathObject> pathObjects, int label) {
-		int width = tileRequest.getTileWidth();
-		int height = tileRequest.getTileHeight();
-		BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
-		WritableRaster raster = img.getRaster();
-		Graphics2D g2d = img.createGraphics();
-		
-		if (!pathObjects.isEmpty()) {
-			
-			RegionRequest request = tileRequest.getRegionRequest();
-			double downsampleFactor = request.getDownsample();
-			
-			g2d.setClip(0, 0, width, height);
-			double scale = 1.0/downsampleFactor;
-			g2d.scale(scale, scale);
-			g2d.translate(-request.getX(), -request.getY());
-			g2d.setColor(Color.WHITE);
-			
-			BasicStroke stroke = new BasicStroke((float)(params.lineThickness * tileRequest.getDownsample()));
-			g2d.setStroke(stroke);
-
-			// We want to order consistently to avoid confusing overlaps
-			for (var entry : params.labels.entrySet()) {
-				if (entry.getValue() != label)
-					continue;
-				var pathClass = getPathClass(entry.getKey());
-				for (var pathObject : pathObjects) {
-					if (getPathClass(pathObject) == pathClass) {
-						var roi = params.roiFunction.apply(pathObject);
-						if (roi.isArea())
-							g2d.fill(roi.getShape());
-						else if (roi.isLine())
-							g2d.draw(roi.getShape());
-						else if (roi.isPoint()) {
-							for (var p : roi.getAllPoints()) {
-								int x = (int)((p.getX() - request.getX()) / downsampleFactor);
-								int y = (int)((p.getY() - request.getY()) / downsampleFactor);
-								if (x >= 0 && x < width && y >= 0 && y < height) {
-									raster.setSample(x, y, 0, 255);
-								}
-							}
-						}
-					}
-				}
+	/**
+	 * Group objects according to their (standardized) classifications, so that each can be painted in a consistent order.
+	 * @param tileRequest
+	 * @param pathObjects
+	 * @return
+	 */
+	private Map<PathClass, List<TileObject>> groupTileObjects(TileRequest tileRequest, Collection<PathObject> pathObjects) {
+		var request = tileRequest.getRegionRequest();
+		double scale = 1.0/request.getDownsample();
+		var transform = new AffineTransform();
+		transform.scale(scale, scale);
+		transform.translate(-request.getX(), -request.getY());
+		
+		Map<PathClass, List<TileObject>> map = new HashMap<>();
+		for (var pathObject : pathObjects) {
+			var pathClass = getPathClass(pathObject);
+			if (pathClass != null && (params.labels.containsKey(pathClass)))
+				map.computeIfAbsent(pathClass, p -> new ArrayList<>()).add(new TileObject(pathObject, tileRequest, transform));
+		}
+		return map;
+	}
+	
+	/**
+	 * Paint all labels for a tile in a single pass.
+	 * <p>
+	 * The painter is called for each object and label value, first for all labels (in the order they were added) 
+	 * and then for all boundaries. Later calls should overwrite earlier calls.
+	 */
+	private void paintLabels(Map<PathClass, List<TileObject>> tileObjects, BiConsumer<Spans, Integer> painter) {
+		if (tileObjects.isEmpty())
+			return;
+		// We want to order consistently to avoid confusing overlaps
+		for (var entry : params.labels.entrySet()) {
+			var list = tileObjects.get(getPathClass(entry.getKey()));
+			if (list == null)
+				continue;
+			int label = entry.getValue();
+			for (var tileObject : list) {
+				var spans = tileObject.getSpans();
+				if (spans != null)
+					painter.accept(spans, label);
 			}
-			for (var entry : params.boundaryLabels.entrySet()) {
-				if (entry.getValue() != label)
-					continue;
-				for (var pathObject : pathObjects) {
-					var pathClass = getPathClass(pathObject);
-					if (params.labels.containsKey(pathClass)) { // && !PathClassTools.isIgnoredClass(pathObject.getPathClass())) {
-						var roi = params.roiFunction.apply(pathObject);
-						if (roi.isArea()) {
-							var shape = roi.getShape();
-							g2d.draw(shape);
-						}
-					}
+		}
+		for (var entry : params.boundaryLabels.entrySet()) {
+			int label = entry.getValue();
+			for (var list : tileObjects.values()) {
+				for (var tileObject : list) {
+					var spans = tileObject.getBoundarySpans();
+					if (spans != null)
+						painter.accept(spans, label);
 				}
 			}
 		}
-		
-		g2d.dispose();
-		return img;
 	}
 	
 	
-	private static Color getColorForLabel(int label, boolean doRGB) {
-		if (doRGB)
-			return new Color(label, false);
-		return ColorToolsAwt.getCachedColor(label, label, label);
+	private BufferedImage createMultichannelTile(TileRequest tileRequest, Collection<PathObject> pathObjects) {
+		
+		int nChannels = nChannels();
+		int tileWidth = tileRequest.getTileWidth();
+		int tileHeight = tileRequest.getTileHeight();
+		
+		// Paint each object once, into every channel to which it belongs
+		byte[][] dataArray = new byte[nChannels][tileWidth * tileHeight];
+		var tileObjects = groupTileObjects(tileRequest, pathObjects);
+		paintLabels(tileObjects, (spans, label) -> {
+			if (label < nChannels)
+				spans.fill(dataArray[label], tileWidth, (byte)255);
+		});
+		
+		if (nChannels == 1) {
+			var img = new BufferedImage(tileWidth, tileHeight, BufferedImage.TYPE_BYTE_GRAY);
+			img.getRaster().setDataElements(0, 0, tileWidth, tileHeight, dataArray[0]);
+			return img;
+		}
+		
+		DataBuffer buffer = new DataBufferByte(dataArray, tileWidth * tileHeight);
+		var sampleModel = new BandedSampleModel(buffer.getDataType(), tileWidth, tileHeight, nChannels);
+		var raster = WritableRaster.createWritableRaster(sampleModel, buffer, null);
+		
+		return new BufferedImage(colorModel, raster, false, null);
 	}
 	
 	
 	private BufferedImage createIndexedColorTile(TileRequest tileRequest, Collection<PathObject> pathObjects) {
 
-		RegionRequest request = tileRequest.getRegionRequest();
-
-		double downsampleFactor = request.getDownsample();
-
-		// Fill in the background color
 		int width = tileRequest.getTileWidth();
 		int height = tileRequest.getTileHeight();
-		boolean doRGB = maxLabel > 255;
-		// If we have > 255 labels, we can only use Graphics2D if we pretend to have an RGB image
-		BufferedImage img = doRGB ? new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB) : new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
-		WritableRaster raster = img.getRaster();
-		
-		Graphics2D g2d = img.createGraphics();
 		int bgLabel = params.labels.get(params.unannotatedClass);
-		Color color = getColorForLabel(bgLabel, doRGB);
-		g2d.setColor(color);
-		g2d.fillRect(0, 0, width, height);
-
-		if (!pathObjects.isEmpty()) {
-			g2d.setClip(0, 0, width, height);
-			double scale = 1.0/downsampleFactor;
-			g2d.scale(scale, scale);
-			g2d.translate(-request.getX(), -request.getY());
-			
-			BasicStroke stroke = new BasicStroke((float)(params.lineThickness * tileRequest.getDownsample()));
-			g2d.setStroke(stroke);
-			
-			// We want to order consistently to avoid confusing overlaps
-			for (var entry : params.labels.entrySet()) {
-				var pathClass = getPathClass(entry.getKey());
-				int c = entry.getValue();
-				color = getColorForLabel(c, doRGB);
-				for (var pathObject : pathObjects) {
-					if (getPathClass(pathObject) == pathClass) {
-						var roi = params.roiFunction.apply(pathObject);
-						g2d.setColor(color);
-						if (roi.isArea())
-							g2d.fill(roi.getShape());
-						else if (roi.isLine())
-							g2d.draw(roi.getShape());
-						else if (roi.isPoint()) {
-							for (var p : roi.getAllPoints()) {
-								int x = (int)((p.getX() - request.getX()) / downsampleFactor);
-								int y = (int)((p.getY() - request.getY()) / downsampleFactor);
-								if (x >= 0 && x < width && y >= 0 && y < height) {
-									if (doRGB)
-										img.setRGB(x, y, color.getRGB());
-									else
-										raster.setSample(x, y, 0, c);
-								}
-							}
-						}
-					}
-				}
-			}
-			for (var entry : params.boundaryLabels.entrySet()) {
-				int c = entry.getValue();
-				color = getColorForLabel(c, doRGB);
-				for (var pathObject : pathObjects) {
-//					if (pathObject.getPathClass() == pathClass) {
-					var pathClass = getPathClass(pathObject);
-					if (params.labels.containsKey(pathClass)) {// && !PathClassTools.isIgnoredClass(pathObject.getPathClass())) {
-						var roi = params.roiFunction.apply(pathObject);
-						if (roi.isArea()) {
-							g2d.setColor(color);
-							g2d.draw(roi.getShape());
-						}
-					}
-				}
-			}
-		}
-		g2d.dispose();
-		if (doRGB) {
+		var tileObjects = groupTileObjects(tileRequest, pathObjects);
+		
+		if (maxLabel >= 65536) {
 			// Resort to RGB if we have to
-			if (maxLabel >= 65536)
-				return img;			
-			// Convert to unsigned short if we can
-			var shortRaster = WritableRaster.createBandedRaster(DataBuffer.TYPE_USHORT, width, height, 1, null);
-			int[] samples = img.getRGB(0, 0, width, height, null, 0, width);
-			shortRaster.setSamples(0, 0, width, height, 0, samples);
-//			System.err.println("Before: " + Arrays.stream(samples).summaryStatistics());
-			raster = shortRaster;
-			samples = raster.getSamples(0, 0, width, height, 0, (int[])null);
-//			System.err.println("After: " + Arrays.stream(samples).summaryStatistics());
+			var img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			int[] data = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
+			Arrays.fill(data, bgLabel & 0xffffff);
+			paintLabels(tileObjects, (spans, label) -> spans.fill(data, width, label & 0xffffff));
+			return img;
+		}
+		
+		WritableRaster raster;
+		if (maxLabel > 255) {
+			// Use unsigned short if we can
+			raster = WritableRaster.createBandedRaster(DataBuffer.TYPE_USHORT, width, height, 1, null);
+			short[] data = ((DataBufferUShort)raster.getDataBuffer()).getData();
+			Arrays.fill(data, (short)bgLabel);
+			paintLabels(tileObjects, (spans, label) -> spans.fill(data, width, (short)label.intValue()));
+		} else {
+			raster = WritableRaster.createInterleavedRaster(DataBuffer.TYPE_BYTE, width, height, 1, null);
+			byte[] data = ((DataBufferByte)raster.getDataBuffer()).getData();
+			Arrays.fill(data, (byte)bgLabel);
+			paintLabels(tileObjects, (spans, label) -> spans.fill(data, width, (byte)label.intValue()));
 		}
 		return new BufferedImage((IndexColorModel)colorModel, raster, false, null);
 	}
 	
 
-}
\ No newline at end of file
+}
\ No newline at end of file
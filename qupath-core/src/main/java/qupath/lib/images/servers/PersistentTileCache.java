@@ -0,0 +1,736 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.lib.images.servers;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.regions.RegionRequest;
+
+/**
+ * Persistent, disk-based cache for image tiles.
+ * <p>
+ * This is intended as a second-level cache for tiles from {@link ImageServer ImageServers} that are slow to read 
+ * (e.g. because they are remote), so that tiles that have been seen before can be read back cheaply in later sessions.
+ * <p>
+ * Tiles are compressed losslessly and appended to a single pack file, which is memory-mapped for reading. 
+ * An index of the tiles is written alongside the pack file when the cache is flushed or closed.
+ * When the total size of the cached tiles exceeds the maximum size, the least-recently-used tiles are removed 
+ * from the index; the pack file is compacted whenever it contains too much space that is no longer used.
+ * <p>
+ * Each tile is stored with a checksum, so that tiles damaged on disk are discarded rather than returned.
+ *
+ */
+public class PersistentTileCache implements AutoCloseable {
+	
+	private final static Logger logger = LoggerFactory.getLogger(PersistentTileCache.class);
+	
+	private static final int INDEX_MAGIC = 0x51505443; // QPTC
+	private static final int INDEX_VERSION = 2;
+	
+	private static final String INDEX_NAME = "tiles.idx";
+	private static final String LOCK_NAME = "tiles.lock";
+	private static final String PACK_PREFIX = "tiles-";
+	private static final String PACK_EXT = ".pack";
+	
+	private static final byte TYPE_RGB = 1;
+	private static final byte TYPE_RASTER = 2;
+	
+	/**
+	 * Maximum size of a single memory-mapped segment; tiles never cross segment boundaries.
+	 */
+	private static final long SEGMENT_SIZE = 256L * 1024L * 1024L;
+	
+	/**
+	 * Number of tiles that may be added before the index is written again.
+	 */
+	private static final int FLUSH_INTERVAL = 1000;
+	
+	private final Path dir;
+	private final long maxBytes;
+	
+	private FileChannel lockChannel;
+	private FileLock lock;
+	
+	private int generation;
+	private FileChannel channel;
+	private long fileSize;
+	private MappedByteBuffer[] segments = new MappedByteBuffer[0];
+	
+	private final LinkedHashMap<String, IndexEntry> index = new LinkedHashMap<>(1024, 0.75f, true);
+	private long liveBytes = 0L;
+	private int nUnflushed = 0;
+	private boolean closed = false;
+	
+	private PersistentTileCache(Path dir, long maxBytes) {
+		this.dir = dir;
+		this.maxBytes = maxBytes;
+	}
+	
+	/**
+	 * Open a persistent tile cache stored in a specified directory, creating it if necessary.
+	 * <p>
+	 * The directory should be used exclusively for the cache. A lock file is used to prevent two caches 
+	 * (possibly in different processes) using the same directory at the same time; if the directory is already locked, 
+	 * the cache that is returned is disabled and will not store or return any tiles.
+	 * 
+	 * @param dir the directory containing the cache files
+	 * @param maxBytes the maximum size of the cached tiles, in bytes
+	 * @return
+	 * @throws IOException
+	 * @see #isEnabled()
+	 */
+	public static PersistentTileCache open(Path dir, long maxBytes) throws IOException {
+		var cache = new PersistentTileCache(dir, maxBytes);
+		cache.initialize();
+		return cache;
+	}
+	
+	/**
+	 * Check if the cache can be used to store and return tiles.
+	 * @return false if the cache has been closed, or if its directory was locked by another cache when it was opened
+	 */
+	public synchronized boolean isEnabled() {
+		return !closed;
+	}
+	
+	/**
+	 * Create the key used to store a tile for a specified server.
+	 * @param serverKey a key identifying the server and the version of its pixels, e.g. derived from {@link ImageServer#getPath()}
+	 * @param request the region corresponding to the tile
+	 * @return
+	 */
+	public static String createKey(String serverKey, RegionRequest request) {
+		return serverKey + "::" + Double.toString(request.getDownsample()) + 
+				":" + request.getX() + ":" + request.getY() + ":" + request.getWidth() + ":" + request.getHeight() + 
+				":" + request.getZ() + ":" + request.getT();
+	}
+	
+	private synchronized void initialize() throws IOException {
+		Files.createDirectories(dir);
+		if (!acquireLock()) {
+			logger.warn("Persistent tile cache {} is in use elsewhere and will be disabled", dir);
+			closed = true;
+			return;
+		}
+		try {
+			openPack();
+		} catch (IOException e) {
+			releaseLock();
+			throw e;
+		}
+	}
+	
+	private boolean acquireLock() throws IOException {
+		lockChannel = FileChannel.open(dir.resolve(LOCK_NAME), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		try {
+			lock = lockChannel.tryLock();
+		} catch (OverlappingFileLockException e) {
+			// Already locked within this JVM
+			lock = null;
+		} catch (IOException e) {
+			lockChannel.close();
+			throw e;
+		}
+		if (lock == null) {
+			lockChannel.close();
+			lockChannel = null;
+			return false;
+		}
+		return true;
+	}
+	
+	private void releaseLock() throws IOException {
+		if (lockChannel == null)
+			return;
+		try {
+			if (lock != null)
+				lock.release();
+		} finally {
+			lock = null;
+			lockChannel.close();
+			lockChannel = null;
+		}
+	}
+	
+	private void openPack() throws IOException {
+		var pathIndex = dir.resolve(INDEX_NAME);
+		generation = 0;
+		if (Files.exists(pathIndex)) {
+			try {
+				readIndex(pathIndex);
+			} catch (IOException e) {
+				logger.warn("Unable to read tile cache index, will start a new cache: {}", e.getLocalizedMessage());
+				index.clear();
+				liveBytes = 0L;
+				generation++;
+			}
+		}
+		var pathPack = getPackPath(generation);
+		channel = FileChannel.open(pathPack, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		fileSize = channel.size();
+		// Remove any entries that aren't available (e.g. because the index was written before the pack file was truncated)
+		var iter = index.values().iterator();
+		while (iter.hasNext()) {
+			var entry = iter.next();
+			if (entry.offset + entry.length > fileSize) {
+				iter.remove();
+				liveBytes -= entry.length;
+			}
+		}
+		deleteUnusedPackFiles();
+		logger.debug("Opened persistent tile cache with {} tiles ({} bytes) in {}", index.size(), liveBytes, dir);
+	}
+	
+	private Path getPackPath(int generation) {
+		return dir.resolve(PACK_PREFIX + generation + PACK_EXT);
+	}
+	
+	private void deleteUnusedPackFiles() throws IOException {
+		var current = getPackPath(generation).getFileName().toString();
+		try (var stream = Files.newDirectoryStream(dir, PACK_PREFIX + "*" + PACK_EXT)) {
+			for (var path : stream) {
+				if (!path.getFileName().toString().equals(current)) {
+					try {
+						Files.deleteIfExists(path);
+					} catch (IOException e) {
+						// May fail on some platforms if the file is still mapped
+						logger.debug("Unable to delete {} ({})", path, e.getLocalizedMessage());
+					}
+				}
+			}
+		}
+	}
+	
+	private void readIndex(Path path) throws IOException {
+		try (var stream = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+			if (stream.readInt() != INDEX_MAGIC)
+				throw new IOException("Invalid tile cache index");
+			int version = stream.readInt();
+			if (version != INDEX_VERSION)
+				throw new IOException("Unsupported tile cache index version " + version);
+			generation = stream.readInt();
+			int n = stream.readInt();
+			// Entries are stored from least to most recently used
+			for (int i = 0; i < n; i++) {
+				String key = stream.readUTF();
+				long offset = stream.readLong();
+				int length = stream.readInt();
+				int crc = stream.readInt();
+				index.put(key, new IndexEntry(offset, length, crc));
+				liveBytes += length;
+			}
+		}
+	}
+	
+	private void writeIndex() throws IOException {
+		// Ensure the index never refers to tiles that haven't reached the disk
+		channel.force(false);
+		var path = dir.resolve(INDEX_NAME);
+		var pathTemp = dir.resolve(INDEX_NAME + ".tmp");
+		try (var stream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(pathTemp)))) {
+			stream.writeInt(INDEX_MAGIC);
+			stream.writeInt(INDEX_VERSION);
+			stream.writeInt(generation);
+			stream.writeInt(index.size());
+			for (var entry : index.entrySet()) {
+				stream.writeUTF(entry.getKey());
+				stream.writeLong(entry.getValue().offset);
+				stream.writeInt(entry.getValue().length);
+				stream.writeInt(entry.getValue().crc);
+			}
+		}
+		Files.move(pathTemp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		nUnflushed = 0;
+	}
+	
+	/**
+	 * Get the maximum size of the cached tiles, in bytes.
+	 * @return
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+	
+	/**
+	 * Get the current size of the cached tiles, in bytes.
+	 * @return
+	 */
+	public synchronized long getSizeBytes() {
+		return liveBytes;
+	}
+	
+	/**
+	 * Get the number of cached tiles.
+	 * @return
+	 */
+	public synchronized int size() {
+		return index.size();
+	}
+	
+	/**
+	 * Check if a tile is available in the cache.
+	 * @param key
+	 * @return
+	 */
+	public synchronized boolean containsKey(String key) {
+		return index.containsKey(key);
+	}
+	
+	/**
+	 * Request a tile from the cache.
+	 * 
+	 * @param key the key for the tile
+	 * @param colorModel color model used to create the image, for tiles that are not RGB
+	 * @return the tile, or null if no compatible tile could be found
+	 */
+	public BufferedImage get(String key, ColorModel colorModel) {
+		byte[] bytes;
+		IndexEntry entry;
+		synchronized (this) {
+			if (closed)
+				return null;
+			entry = index.get(key);
+			if (entry == null)
+				return null;
+			try {
+				bytes = readBytes(entry);
+			} catch (IOException e) {
+				logger.warn("Unable to read cached tile: {}", e.getLocalizedMessage());
+				removeEntry(key);
+				return null;
+			}
+		}
+		if (!entry.checksumMatches(bytes)) {
+			logger.warn("Checksum mismatch for cached tile {}, will discard it", key);
+			synchronized (this) {
+				if (index.get(key) == entry)
+					removeEntry(key);
+			}
+			return null;
+		}
+		try {
+			return decode(bytes, colorModel);
+		} catch (IOException e) {
+			logger.warn("Unable to decode cached tile: {}", e.getLocalizedMessage());
+			synchronized (this) {
+				removeEntry(key);
+			}
+			return null;
+		}
+	}
+	
+	/**
+	 * Add a tile to the cache.
+	 * @param key the key for the tile
+	 * @param img the tile
+	 */
+	public void put(String key, BufferedImage img) {
+		byte[] bytes;
+		try {
+			bytes = encode(img);
+		} catch (IOException e) {
+			logger.warn("Unable to encode tile for caching: {}", e.getLocalizedMessage());
+			return;
+		}
+		if (bytes == null || bytes.length > maxBytes || bytes.length > SEGMENT_SIZE)
+			return;
+		synchronized (this) {
+			if (closed)
+				return;
+			try {
+				removeEntry(key);
+				long offset = fileSize;
+				// Pad if needed so that we don't cross a segment boundary
+				long segmentEnd = (offset / SEGMENT_SIZE + 1) * SEGMENT_SIZE;
+				if (offset + bytes.length > segmentEnd)
+					offset = segmentEnd;
+				var buffer = ByteBuffer.wrap(bytes);
+				long pos = offset;
+				while (buffer.hasRemaining())
+					pos += channel.write(buffer, pos);
+				fileSize = offset + bytes.length;
+				index.put(key, new IndexEntry(offset, bytes.length, computeChecksum(bytes)));
+				liveBytes += bytes.length;
+				evictIfNeeded();
+				if (++nUnflushed >= FLUSH_INTERVAL)
+					writeIndex();
+			} catch (IOException e) {
+				logger.warn("Unable to write tile to persistent cache: {}", e.getLocalizedMessage());
+			}
+		}
+	}
+	
+	/**
+	 * Remove a tile from the cache.
+	 * @param key
+	 * @return true if the tile was removed, false if it was not in the cache
+	 */
+	public synchronized boolean remove(String key) {
+		return removeEntry(key);
+	}
+	
+	/**
+	 * Remove all tiles from the cache.
+	 * @throws IOException 
+	 */
+	public synchronized void clear() throws IOException {
+		if (closed)
+			return;
+		index.clear();
+		liveBytes = 0L;
+		compact();
+	}
+	
+	/**
+	 * Write the current index to disk.
+	 * @throws IOException
+	 */
+	public synchronized void flush() throws IOException {
+		if (closed)
+			return;
+		writeIndex();
+	}
+	
+	/**
+	 * Write the index to disk and close the cache.
+	 * @throws IOException 
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed)
+			return;
+		try {
+			flush();
+		} finally {
+			closed = true;
+			segments = new MappedByteBuffer[0];
+			try {
+				channel.close();
+			} finally {
+				releaseLock();
+			}
+		}
+	}
+	
+	private boolean removeEntry(String key) {
+		var entry = index.remove(key);
+		if (entry == null)
+			return false;
+		liveBytes -= entry.length;
+		return true;
+	}
+	
+	private void evictIfNeeded() throws IOException {
+		if (liveBytes <= maxBytes)
+			return;
+		// Evict to a little below the maximum, so we don't need to do this on every write
+		long target = (long)(maxBytes * 0.9);
+		var iter = index.values().iterator();
+		while (liveBytes > target && iter.hasNext()) {
+			var entry = iter.next();
+			iter.remove();
+			liveBytes -= entry.length;
+		}
+		// Compact if most of the file is no longer used
+		if (fileSize > Math.max(liveBytes * 2, SEGMENT_SIZE))
+			compact();
+	}
+	
+	/**
+	 * Rewrite all tiles that are still in use to a new pack file.
+	 * @throws IOException
+	 */
+	private void compact() throws IOException {
+		int newGeneration = generation + 1;
+		var pathPack = getPackPath(newGeneration);
+		var newChannel = FileChannel.open(pathPack, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		long pos = 0L;
+		var entries = new ArrayList<>(index.entrySet());
+		var newIndex = new LinkedHashMap<String, IndexEntry>();
+		long discardedBytes = 0L;
+		try {
+			for (var entry : entries) {
+				var bytes = readBytes(entry.getValue());
+				if (!entry.getValue().checksumMatches(bytes)) {
+					logger.debug("Discarding cached tile {} with checksum mismatch", entry.getKey());
+					discardedBytes += entry.getValue().length;
+					continue;
+				}
+				long segmentEnd = (pos / SEGMENT_SIZE + 1) * SEGMENT_SIZE;
+				if (pos + bytes.length > segmentEnd)
+					pos = segmentEnd;
+				long offset = pos;
+				var buffer = ByteBuffer.wrap(bytes);
+				while (buffer.hasRemaining())
+					pos += newChannel.write(buffer, pos);
+				newIndex.put(entry.getKey(), new IndexEntry(offset, bytes.length, entry.getValue().crc));
+			}
+		} catch (IOException e) {
+			newChannel.close();
+			Files.deleteIfExists(pathPack);
+			throw e;
+		}
+		channel.close();
+		channel = newChannel;
+		fileSize = pos;
+		segments = new MappedByteBuffer[0];
+		generation = newGeneration;
+		index.clear();
+		index.putAll(newIndex);
+		liveBytes -= discardedBytes;
+		writeIndex();
+		deleteUnusedPackFiles();
+		logger.debug("Compacted persistent tile cache to {} bytes", fileSize);
+	}
+	
+	private static int computeChecksum(byte[] bytes) {
+		var crc = new CRC32();
+		crc.update(bytes);
+		return (int)crc.getValue();
+	}
+	
+	private byte[] readBytes(IndexEntry entry) throws IOException {
+		int ind = (int)(entry.offset / SEGMENT_SIZE);
+		long segmentStart = ind * SEGMENT_SIZE;
+		if (ind >= segments.length) {
+			var temp = new MappedByteBuffer[ind + 1];
+			System.arraycopy(segments, 0, temp, 0, segments.length);
+			segments = temp;
+		}
+		var segment = segments[ind];
+		int start = (int)(entry.offset - segmentStart);
+		if (segment == null || segment.capacity() < start + entry.length) {
+			// Map (or remap) the segment, since the file may have grown
+			long length = Math.min(SEGMENT_SIZE, fileSize - segmentStart);
+			segment = channel.map(MapMode.READ_ONLY, segmentStart, length);
+			segments[ind] = segment;
+		}
+		var bytes = new byte[entry.length];
+		segment.duplicate().position(start).get(bytes);
+		return bytes;
+	}
+	
+	
+	/**
+	 * Encode a tile as a compressed byte array.
+	 * @param img
+	 * @return
+	 * @throws IOException
+	 */
+	static byte[] encode(BufferedImage img) throws IOException {
+		int width = img.getWidth();
+		int height = img.getHeight();
+		var raster = img.getRaster();
+		var bytes = new ByteArrayOutputStream();
+		var deflater = new Deflater(Deflater.BEST_SPEED);
+		try (var stream = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(bytes, deflater)))) {
+			boolean isRGB = img.getType() == BufferedImage.TYPE_INT_RGB || img.getType() == BufferedImage.TYPE_INT_ARGB ||
+					img.getType() == BufferedImage.TYPE_3BYTE_BGR || img.getType() == BufferedImage.TYPE_4BYTE_ABGR ||
+					img.getType() == BufferedImage.TYPE_INT_BGR;
+			if (isRGB) {
+				stream.writeByte(TYPE_RGB);
+				stream.writeInt(width);
+				stream.writeInt(height);
+				int[] rgb = img.getRGB(0, 0, width, height, null, 0, width);
+				boolean hasAlpha = false;
+				for (int v : rgb) {
+					if ((v & 0xff000000) != 0xff000000) {
+						hasAlpha = true;
+						break;
+					}
+				}
+				stream.writeBoolean(hasAlpha);
+				for (int v : rgb)
+					stream.writeInt(v);
+			} else {
+				int dataType = raster.getTransferType();
+				int nBands = raster.getNumBands();
+				stream.writeByte(TYPE_RASTER);
+				stream.writeInt(width);
+				stream.writeInt(height);
+				stream.writeInt(nBands);
+				stream.writeInt(dataType);
+				for (int b = 0; b < nBands; b++) {
+					switch (dataType) {
+					case DataBuffer.TYPE_BYTE:
+						for (int v : raster.getSamples(0, 0, width, height, b, (int[])null))
+							stream.writeByte(v);
+						break;
+					case DataBuffer.TYPE_USHORT:
+					case DataBuffer.TYPE_SHORT:
+						for (int v : raster.getSamples(0, 0, width, height, b, (int[])null))
+							stream.writeShort(v);
+						break;
+					case DataBuffer.TYPE_INT:
+						for (int v : raster.getSamples(0, 0, width, height, b, (int[])null))
+							stream.writeInt(v);
+						break;
+					case DataBuffer.TYPE_FLOAT:
+						for (float v : raster.getSamples(0, 0, width, height, b, (float[])null))
+							stream.writeFloat(v);
+						break;
+					case DataBuffer.TYPE_DOUBLE:
+						for (double v : raster.getSamples(0, 0, width, height, b, (double[])null))
+							stream.writeDouble(v);
+						break;
+					default:
+						return null;
+					}
+				}
+			}
+		} finally {
+			deflater.end();
+		}
+		return bytes.toByteArray();
+	}
+	
+	/**
+	 * Decode a tile from a compressed byte array.
+	 * @param bytes
+	 * @param colorModel
+	 * @return the tile, or null if the tile is incompatible with the color model
+	 * @throws IOException
+	 */
+	static BufferedImage decode(byte[] bytes, ColorModel colorModel) throws IOException {
+		try (var stream = new DataInputStream(new BufferedInputStream(new InflaterInputStream(new ByteArrayInputStream(bytes))))) {
+			byte type = stream.readByte();
+			int width = stream.readInt();
+			int height = stream.readInt();
+			if (type == TYPE_RGB) {
+				boolean hasAlpha = stream.readBoolean();
+				var img = new BufferedImage(width, height, hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+				int[] rgb = new int[width * height];
+				for (int i = 0; i < rgb.length; i++)
+					rgb[i] = stream.readInt();
+				img.setRGB(0, 0, width, height, rgb, 0, width);
+				return img;
+			} else if (type != TYPE_RASTER)
+				throw new IOException("Unknown tile type " + type);
+			
+			int nBands = stream.readInt();
+			int dataType = stream.readInt();
+			if (colorModel == null)
+				return null;
+			var raster = colorModel.createCompatibleWritableRaster(width, height);
+			if (raster.getNumBands() != nBands || raster.getTransferType() != dataType)
+				return null;
+			int n = width * height;
+			for (int b = 0; b < nBands; b++) {
+				switch (dataType) {
+				case DataBuffer.TYPE_BYTE:
+					int[] bytePixels = new int[n];
+					for (int i = 0; i < n; i++)
+						bytePixels[i] = stream.readUnsignedByte();
+					raster.setSamples(0, 0, width, height, b, bytePixels);
+					break;
+				case DataBuffer.TYPE_USHORT:
+					int[] ushortPixels = new int[n];
+					for (int i = 0; i < n; i++)
+						ushortPixels[i] = stream.readUnsignedShort();
+					raster.setSamples(0, 0, width, height, b, ushortPixels);
+					break;
+				case DataBuffer.TYPE_SHORT:
+					int[] shortPixels = new int[n];
+					for (int i = 0; i < n; i++)
+						shortPixels[i] = stream.readShort();
+					raster.setSamples(0, 0, width, height, b, shortPixels);
+					break;
+				case DataBuffer.TYPE_INT:
+					int[] intPixels = new int[n];
+					for (int i = 0; i < n; i++)
+						intPixels[i] = stream.readInt();
+					raster.setSamples(0, 0, width, height, b, intPixels);
+					break;
+				case DataBuffer.TYPE_FLOAT:
+					float[] floatPixels = new float[n];
+					for (int i = 0; i < n; i++)
+						floatPixels[i] = stream.readFloat();
+					raster.setSamples(0, 0, width, height, b, floatPixels);
+					break;
+				case DataBuffer.TYPE_DOUBLE:
+					double[] doublePixels = new double[n];
+					for (int i = 0; i < n; i++)
+						doublePixels[i] = stream.readDouble();
+					raster.setSamples(0, 0, width, height, b, doublePixels);
+					break;
+				default:
+					throw new IOException("Unsupported data type " + dataType);
+				}
+			}
+			return new BufferedImage(colorModel, raster, colorModel.isAlphaPremultiplied(), null);
+		}
+	}
+	
+	
+	private static class IndexEntry {
+		
+		private final long offset;
+		private final int length;
+		private final int crc;
+		
+		IndexEntry(long offset, int length, int crc) {
+			this.offset = offset;
+			this.length = length;
+			this.crc = crc;
+		}
+		
+		boolean checksumMatches(byte[] bytes) {
+			return bytes.length == length && computeChecksum(bytes) == crc;
+		}
+		
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("PersistentTileCache: %s (%d tiles, %.1f/%.1f MB)", dir, size(), getSizeBytes()/(1024.0*1024.0), maxBytes/(1024.0*1024.0));
+	}
+
+}
@@ -28,18 +28,24 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import qupath.lib.awt.common.BufferedImageTools;
 import qupath.lib.common.GeneralTools;
+import qupath.lib.common.ThreadTools;
 import qupath.lib.images.ImageData;
 import qupath.lib.images.servers.ImageServer;
+import qupath.lib.images.servers.ImageServerBuilder.ServerBuilder;
+import qupath.lib.images.servers.ImageServerMetadata;
 import qupath.lib.images.servers.ImageServerMetadata.ChannelType;
 import qupath.lib.images.servers.TransformedServerBuilder;
+import qupath.lib.images.servers.TransformingImageServer;
 import qupath.lib.objects.PathAnnotationObject;
 import qupath.lib.regions.RegionRequest;
 
@@ -67,6 +73,8 @@ public class TileExporter  {
 
 	private ImageServer<BufferedImage> serverLabeled;
 
+	private int nThreads = Runtime.getRuntime().availableProcessors();
+
 	/**
 	 * Create a builder to export tiles.
 	 * @param imageData
@@ -219,6 +227,18 @@ public class TileExporter  {
 		return this;
 	}
 
+	/**
+	 * Specify the number of threads to use for export.
+	 * Tiles are read and written in separate stages, each using up to this number of threads.
+	 * The default is the number of available processors.
+	 * @param nThreads
+	 * @return this exporter
+	 */
+	public TileExporter parallelize(int nThreads) {
+		this.nThreads = Math.max(1, nThreads);
+		return this;
+	}
+
 	/**
 	 * Export the image tiles to the specified directory.
 	 * @param dirOutput full path to th export directory
@@ -234,10 +254,9 @@ public class TileExporter  {
 				extLabeled = serverLabeled.getMetadata().getChannelType() == ChannelType.CLASSIFICATION ? ".png" : ".tif";
 		}
 
-		var pool = Executors.newWorkStealingPool(4);
-
 		var server = this.server;
 		var labeledServer = serverLabeled;
+		var tasks = new ArrayList<ExportTask>();
 		var requests = getTiledRegionRequests(server,
 				downsample, tileWidth, tileHeight, overlapX, overlapY, includePartialTiles);
 
@@ -268,24 +287,66 @@ public class TileExporter  {
 			}
 
 			if (taskImage != null)
-				pool.submit(taskImage);
-			if (taskLabels != null) {
-				pool.submit(taskLabels);
-			}
+				tasks.add(taskImage);
+			if (taskLabels != null)
+				tasks.add(taskLabels);
 		}
-
-		pool.shutdown();
+		
+		runTasks(tasks);
+	}
+	
+	/**
+	 * Run export tasks, reading and writing tiles in separate pools so that reading 
+	 * can continue while previous tiles are being encoded and written.
+	 * The number of tiles that have been read but not yet written is limited to avoid 
+	 * holding too many images in memory.
+	 */
+	private void runTasks(List<ExportTask> tasks) {
+		int maxPending = nThreads * 2;
+		var pending = new Semaphore(maxPending);
+		ExecutorService poolRead = Executors.newFixedThreadPool(nThreads, ThreadTools.createThreadFactory("tile-export-read-", true));
+		ExecutorService poolWrite = Executors.newFixedThreadPool(nThreads, ThreadTools.createThreadFactory("tile-export-write-", true));
 		try {
-			pool.awaitTermination(24, TimeUnit.HOURS);
+			for (var task : tasks) {
+				pending.acquire();
+				try {
+					poolRead.execute(() -> {
+						BufferedImage img = task.read();
+						if (img == null) {
+							pending.release();
+							return;
+						}
+						try {
+							poolWrite.execute(() -> {
+								try {
+									task.write(img);
+								} finally {
+									pending.release();
+								}
+							});
+						} catch (RejectedExecutionException e) {
+							pending.release();
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					pending.release();
+					logger.warn("Unable to submit tile export task: {}", e.getLocalizedMessage());
+				}
+			}
+			// Wait for all pending tiles to be written
+			pending.acquire(maxPending);
 		} catch (InterruptedException e) {
-			pool.shutdownNow();
+			Thread.currentThread().interrupt();
 			logger.error("Tile export interrupted: {}", e);
 			logger.error("", e);
+		} finally {
+			poolRead.shutdownNow();
+			poolWrite.shutdownNow();
 		}
 	}
 
 
-	static class ExportTask implements Runnable {
+	static class ExportTask {
 
 		private ImageServer<BufferedImage> server;
 		private RegionRequest request;
@@ -300,25 +361,90 @@ public class TileExporter  {
 			this.tileHeight = tileHeight;
 		}
 
-		@Override
-		public void run() {
+		/**
+		 * Read the tile, resizing if necessary.
+		 * @return the tile, or null if it could not be read
+		 */
+		BufferedImage read() {
 			try {
+				if (Thread.currentThread().isInterrupted()) {
+					logger.debug("Interrupted! Will not read image for {}", path);
+					return null;
+				}
 				var img = server.readBufferedImage(request);
 				if ((tileWidth > 0 && tileHeight > 0) && (img.getWidth() != tileWidth || img.getHeight() != tileHeight)) {
 					logger.warn("Resizing tile from {}x{} to {}x{}", img.getWidth(), img.getHeight(), tileWidth, tileHeight);
 					img = BufferedImageTools.resize(img, tileWidth, tileHeight, false);
 				}
+				return img;
+			} catch (Exception e) {
+				logger.error("Error reading tile: " + e.getLocalizedMessage(), e);
+				return null;
+			}
+		}
+
+		/**
+		 * Write a tile that has previously been read.
+		 * The original server is still used to provide metadata (e.g. pixel sizes) to the writer.
+		 * @param img
+		 */
+		void write(BufferedImage img) {
+			try {
 				if (!Thread.currentThread().isInterrupted())
-					ImageWriterTools.writeImageRegion(server, request, path);
+					ImageWriterTools.writeImageRegion(new ReadRegionServer(server, request, img), request, path);
 				else
 					logger.debug("Interrupted! Will not write image to {}", path);
-				//				ImageWriterTools.writeImage(img, path);
 			} catch (Exception e) {
 				logger.error("Error writing tile: " + e.getLocalizedMessage(), e);
 			}
 		}
 
 	}
+	
+	/**
+	 * Server that returns an image that has already been read for a specific request, 
+	 * and otherwise defers to the wrapped server.
+	 * This avoids needing to request the pixels again when writing, while retaining the original metadata.
+	 */
+	static class ReadRegionServer extends TransformingImageServer<BufferedImage> {
+		
+		private RegionRequest request;
+		private BufferedImage img;
+
+		ReadRegionServer(ImageServer<BufferedImage> server, RegionRequest request, BufferedImage img) {
+			super(server);
+			this.request = request;
+			this.img = img;
+		}
+		
+		@Override
+		public BufferedImage readBufferedImage(RegionRequest request) throws IOException {
+			if (this.request.equals(request))
+				return img;
+			return super.readBufferedImage(request);
+		}
+		
+		@Override
+		public ImageServerMetadata getOriginalMetadata() {
+			return getWrappedServer().getMetadata();
+		}
+
+		@Override
+		public String getServerType() {
+			return getWrappedServer().getServerType();
+		}
+
+		@Override
+		protected ServerBuilder<BufferedImage> createServerBuilder() {
+			return getWrappedServer().getBuilder();
+		}
+
+		@Override
+		protected String createID() {
+			return getClass().getName() + ": " + getWrappedServer().getPath() + " " + request;
+		}
+		
+	}
 
 	static String getRegionString(RegionRequest request) {
 		String s = "x="+request.getX()+",y="+request.getY()+",w="+request.getWidth()+",h="+request.getHeight();
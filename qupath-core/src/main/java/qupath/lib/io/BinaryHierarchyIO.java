@@ -0,0 +1,1579 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.lib.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKBReader;
+import org.locationtech.jts.io.WKBWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.geom.Point2;
+import qupath.lib.measurements.MeasurementList;
+import qupath.lib.measurements.MeasurementList.MeasurementListType;
+import qupath.lib.measurements.MeasurementListFactory;
+import qupath.lib.objects.MetadataStore;
+import qupath.lib.objects.PathAnnotationObject;
+import qupath.lib.objects.PathCellObject;
+import qupath.lib.objects.PathDetectionObject;
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjects;
+import qupath.lib.objects.PathTileObject;
+import qupath.lib.objects.TMACoreObject;
+import qupath.lib.objects.classes.PathClass;
+import qupath.lib.objects.classes.PathClassFactory;
+import qupath.lib.objects.hierarchy.DefaultTMAGrid;
+import qupath.lib.objects.hierarchy.PathObjectHierarchy;
+import qupath.lib.objects.hierarchy.PathObjectLoader;
+import qupath.lib.objects.hierarchy.TMAGrid;
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.regions.ImageRegion;
+import qupath.lib.roi.EllipseROI;
+import qupath.lib.roi.GeometryTools;
+import qupath.lib.roi.LineROI;
+import qupath.lib.roi.PointsROI;
+import qupath.lib.roi.PolygonROI;
+import qupath.lib.roi.PolylineROI;
+import qupath.lib.roi.ROIs;
+import qupath.lib.roi.RectangleROI;
+import qupath.lib.roi.interfaces.ROI;
+
+/**
+ * Binary, columnar encoding of a {@link PathObjectHierarchy}.
+ * <p>
+ * This avoids Java serialization for the (potentially very large) object hierarchy. 
+ * Annotations, TMA cores and other 'structural' objects are written first as a small block. 
+ * Detections (along with any descendants) are then grouped into chunks according to the spatial tile 
+ * containing their ROI, and each chunk is encoded and compressed independently - so that 
+ * chunks can be written and read in parallel.
+ * <p>
+ * Within a chunk, ROIs are stored as packed coordinate arrays, classifications and measurement names 
+ * refer to dictionaries shared across the whole file, and measurement values are stored as columns 
+ * (using floats whenever this is lossless).
+ * <p>
+ * Each chunk is preceded by its bounds, so that it is also possible to read only the chunk index and 
+ * decode detections on demand (see {@link #readHierarchyDeferred(DataInput, CountingInputStream, Path)}).
+ */
+final class BinaryHierarchyIO {
+	
+	private final static Logger logger = LoggerFactory.getLogger(BinaryHierarchyIO.class);
+	
+	/**
+	 * Current version of the hierarchy encoding.
+	 */
+	static final int VERSION = 1;
+	
+	/**
+	 * Width and height of the spatial tiles used to group detections into chunks.
+	 */
+	static final int CHUNK_SIZE = 2048;
+	
+	private static final int TYPE_ANNOTATION = 1;
+	private static final int TYPE_DETECTION = 2;
+	private static final int TYPE_CELL = 3;
+	private static final int TYPE_TILE = 4;
+	private static final int TYPE_TMA_CORE = 5;
+	
+	private static final int ROI_NONE = 0;
+	private static final int ROI_RECTANGLE = 1;
+	private static final int ROI_ELLIPSE = 2;
+	private static final int ROI_LINE = 3;
+	private static final int ROI_POLYGON = 4;
+	private static final int ROI_POLYLINE = 5;
+	private static final int ROI_POINTS = 6;
+	private static final int ROI_GEOMETRY = 7;
+	
+	private static final int FLAG_NAME = 1;
+	private static final int FLAG_COLOR = 1 << 1;
+	private static final int FLAG_CLASS = 1 << 2;
+	private static final int FLAG_PROBABILITY = 1 << 3;
+	private static final int FLAG_LOCKED = 1 << 4;
+	private static final int FLAG_METADATA = 1 << 5;
+	private static final int FLAG_DESCRIPTION = 1 << 6;
+	private static final int FLAG_MISSING = 1 << 7;
+	private static final int FLAG_MEASUREMENTS = 1 << 8;
+	
+	private static final int VALUES_FLOAT = 0;
+	private static final int VALUES_DOUBLE = 1;
+	
+	private BinaryHierarchyIO() {}
+	
+	
+	/**
+	 * Check whether all objects in a hierarchy can be represented in the binary format.
+	 * This requires that all objects are instances of the standard {@link PathObject} classes, 
+	 * rather than custom subclasses.
+	 * @param hierarchy
+	 * @return true if {@link #writeHierarchy(DataOutput, PathObjectHierarchy)} may be used
+	 */
+	static boolean isSupported(PathObjectHierarchy hierarchy) {
+		Deque<PathObject> stack = new ArrayDeque<>(hierarchy.getRootObject().getChildObjects());
+		while (!stack.isEmpty()) {
+			var pathObject = stack.pop();
+			if (getType(pathObject) < 0)
+				return false;
+			if (pathObject.hasChildren())
+				stack.addAll(pathObject.getChildObjects());
+		}
+		return true;
+	}
+	
+	private static int getType(PathObject pathObject) {
+		var cls = pathObject.getClass();
+		if (cls == PathAnnotationObject.class)
+			return TYPE_ANNOTATION;
+		if (cls == PathDetectionObject.class)
+			return TYPE_DETECTION;
+		if (cls == PathCellObject.class)
+			return TYPE_CELL;
+		if (cls == PathTileObject.class)
+			return TYPE_TILE;
+		if (cls == TMACoreObject.class)
+			return TYPE_TMA_CORE;
+		return -1;
+	}
+	
+	
+	/**
+	 * Write a hierarchy.
+	 * @param out
+	 * @param hierarchy
+	 * @throws IOException
+	 * @see #isSupported(PathObjectHierarchy)
+	 */
+	static void writeHierarchy(DataOutput out, PathObjectHierarchy hierarchy) throws IOException {
+		
+		var root = hierarchy.getRootObject();
+		
+		// Split the hierarchy into structural objects & spatial chunks of detections
+		var structure = new ChunkSource(null);
+		var detections = new ChunkSource(null);
+		structure.add(root, -1, 0);
+		for (int i = 0; i < structure.objects.size(); i++) {
+			int ordinal = 0;
+			for (var child : structure.objects.get(i).getChildObjects()) {
+				if (getType(child) < 0)
+					throw new IOException("Unsupported object type for binary encoding: " + child.getClass().getName());
+				if (child.isDetection())
+					detections.add(child, i, ordinal);
+				else
+					structure.add(child, i, ordinal);
+				ordinal++;
+			}
+		}
+		var keys = detections.objects.parallelStream().map(ChunkKey::forObject).toArray(ChunkKey[]::new);
+		Map<ChunkKey, ChunkSource> chunkMap = new HashMap<>();
+		for (int i = 0; i < keys.length; i++)
+			chunkMap.computeIfAbsent(keys[i], k -> new ChunkSource(k)).add(detections.objects.get(i), detections.parents[i], detections.ordinals[i]);
+		var chunks = new ArrayList<>(chunkMap.values());
+		chunks.sort(Comparator.comparing(c -> c.key));
+		
+		// Encode chunks in parallel - dictionaries are populated as we go
+		var dictionary = new Dictionary();
+		var structureChunk = new ChunkEncoder(dictionary, true).encode(structure);
+		List<EncodedChunk> encoded;
+		try {
+			encoded = chunks.parallelStream()
+					.map(c -> new ChunkEncoder(dictionary, false).encode(c))
+					.collect(Collectors.toList());
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		
+		out.writeInt(VERSION);
+		out.writeInt(CHUNK_SIZE);
+		dictionary.write(out);
+		
+		// Write the TMA grid as indices of the structural objects
+		TMAGrid tmaGrid = hierarchy.getTMAGrid();
+		if (tmaGrid == null) {
+			out.writeInt(0);
+		} else {
+			var cores = tmaGrid.getTMACoreList();
+			out.writeInt(cores.size());
+			out.writeInt(tmaGrid.getGridWidth());
+			for (var core : cores)
+				out.writeInt(structure.indexOf(core));
+		}
+		
+		writeBlock(out, structure.objects.size(), structureChunk.bytes);
+		
+		out.writeInt(encoded.size());
+		for (var chunk : encoded) {
+			chunk.key.write(out);
+			out.writeFloat(chunk.minX);
+			out.writeFloat(chunk.minY);
+			out.writeFloat(chunk.maxX);
+			out.writeFloat(chunk.maxY);
+			writeBlock(out, chunk.nObjects, chunk.bytes);
+		}
+		logger.debug("Wrote {} structural object(s) and {} detection chunk(s)", structure.objects.size(), encoded.size());
+	}
+	
+	
+	/**
+	 * Read a hierarchy written with {@link #writeHierarchy(DataOutput, PathObjectHierarchy)}.
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	static PathObjectHierarchy readHierarchy(DataInput in) throws IOException {
+		return readHierarchy(in, null, null);
+	}
+	
+	/**
+	 * Read a hierarchy written with {@link #writeHierarchy(DataOutput, PathObjectHierarchy)}, deferring 
+	 * decoding of detection chunks until they are requested.
+	 * <p>
+	 * Only the structural objects and the chunk index are read immediately. 
+	 * The hierarchy is given a {@link PathObjectLoader} that reads chunks from the file whenever a region overlapping 
+	 * their bounds is requested.
+	 * 
+	 * @param in input, which must read from the same stream as the counter
+	 * @param counter stream used to determine the offset of each chunk within the file
+	 * @param path path to the file, which will be reopened whenever chunks need to be read
+	 * @return
+	 * @throws IOException
+	 */
+	static PathObjectHierarchy readHierarchyDeferred(DataInput in, CountingInputStream counter, Path path) throws IOException {
+		Objects.requireNonNull(counter);
+		Objects.requireNonNull(path);
+		return readHierarchy(in, counter, path);
+	}
+	
+	private static PathObjectHierarchy readHierarchy(DataInput in, CountingInputStream counter, Path path) throws IOException {
+		int version = in.readInt();
+		if (version > VERSION)
+			throw new IOException("Unsupported hierarchy version " + version + " (max supported version is " + VERSION + ")");
+		in.readInt(); // Chunk size - only relevant for region requests
+		var dictionary = Dictionary.read(in);
+		
+		int nCores = in.readInt();
+		int gridWidth = -1;
+		int[] coreIndices = new int[nCores];
+		if (nCores > 0) {
+			gridWidth = in.readInt();
+			for (int i = 0; i < nCores; i++)
+				coreIndices[i] = in.readInt();
+		}
+		
+		// Decode the structural objects - the root is not stored, so we use the one from the hierarchy
+		var hierarchy = new PathObjectHierarchy();
+		var structureBlock = readBlock(in);
+		var structure = new ChunkDecoder(dictionary, null).decode(structureBlock.inflate(), structureBlock.nObjects, true);
+		structure.objects.set(0, hierarchy.getRootObject());
+		
+		int nChunks = in.readInt();
+		boolean deferred = path != null;
+		ChunkLoader loader = null;
+		if (deferred) {
+			// Read the chunk index only
+			List<ChunkIndex> index = new ArrayList<>(nChunks);
+			for (int i = 0; i < nChunks; i++) {
+				var key = ChunkKey.read(in);
+				var chunk = new ChunkIndex(key, in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat(),
+						in.readInt(), in.readInt(), counter.getCount());
+				index.add(chunk);
+				skipFully(in, chunk.length);
+			}
+			if (!index.isEmpty())
+				loader = new ChunkLoader(path, dictionary, structure, index);
+		} else {
+			// Read all chunks, then decode in parallel
+			List<Block> blocks = new ArrayList<>(nChunks);
+			for (int i = 0; i < nChunks; i++) {
+				ChunkKey.read(in);
+				for (int b = 0; b < 4; b++)
+					in.readFloat();
+				blocks.add(readBlock(in));
+			}
+			try {
+				blocks.parallelStream().forEach(b -> {
+					try {
+						new ChunkDecoder(dictionary, structure).decode(b.inflate(), b.nObjects, false);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+		}
+		
+		// Set the TMA grid first, since this will also add the cores to the root
+		if (nCores > 0) {
+			List<TMACoreObject> cores = new ArrayList<>();
+			for (int ind : coreIndices)
+				cores.add((TMACoreObject)structure.objects.get(ind));
+			hierarchy.setTMAGrid(DefaultTMAGrid.create(cores, gridWidth));
+			hierarchy.getRootObject().clearPathObjects();
+		}
+		
+		// Add all objects to their parents, retaining the original order
+		for (int i = 0; i < structure.objects.size(); i++) {
+			var slots = structure.slots.get(i);
+			if (slots.length == 0)
+				continue;
+			var children = new ArrayList<PathObject>(slots.length);
+			for (var child : slots) {
+				if (child != null)
+					children.add(child);
+			}
+			// If we are deferring detections, then their slots are expected to be empty
+			if (children.size() < slots.length && !deferred)
+				logger.warn("Expected {} child object(s) but found {}", slots.length, children.size());
+			structure.objects.get(i).addPathObjects(children);
+		}
+		
+		hierarchy.setObjectLoader(loader);
+		return hierarchy;
+	}
+	
+	
+	private static void skipFully(DataInput in, int length) throws IOException {
+		int remaining = length;
+		while (remaining > 0) {
+			int n = in.skipBytes(remaining);
+			if (n <= 0)
+				throw new EOFException("Unexpected end of file");
+			remaining -= n;
+		}
+	}
+	
+	private static void writeBlock(DataOutput out, int nObjects, byte[] bytes) throws IOException {
+		out.writeInt(nObjects);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+	
+	private static Block readBlock(DataInput in) throws IOException {
+		int nObjects = in.readInt();
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new Block(nObjects, bytes);
+	}
+	
+	
+	/**
+	 * A compressed block of encoded objects.
+	 */
+	private static class Block {
+		
+		private final int nObjects;
+		private final byte[] bytes;
+		
+		Block(int nObjects, byte[] bytes) {
+			this.nObjects = nObjects;
+			this.bytes = bytes;
+		}
+		
+		byte[] inflate() throws IOException {
+			var inflater = new Inflater();
+			try {
+				byte[] output = new byte[ByteBuffer.wrap(bytes).getInt()];
+				inflater.setInput(bytes, Integer.BYTES, bytes.length - Integer.BYTES);
+				int n = 0;
+				while (n < output.length && !inflater.finished()) {
+					int count = inflater.inflate(output, n, output.length - n);
+					if (count == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+						break;
+					n += count;
+				}
+				if (n != output.length)
+					throw new IOException("Truncated hierarchy chunk (expected " + output.length + " bytes, found " + n + ")");
+				return output;
+			} catch (DataFormatException e) {
+				throw new IOException(e);
+			} finally {
+				inflater.end();
+			}
+		}
+		
+		static byte[] deflate(byte[] bytes, int length) {
+			var deflater = new Deflater(Deflater.BEST_SPEED);
+			try {
+				deflater.setInput(bytes, 0, length);
+				deflater.finish();
+				var output = new ByteWriter(length / 2 + 64);
+				output.writeInt(length);
+				byte[] buffer = new byte[65536];
+				while (!deflater.finished()) {
+					int n = deflater.deflate(buffer);
+					output.write(buffer, n);
+				}
+				return output.toByteArray();
+			} finally {
+				deflater.end();
+			}
+		}
+		
+	}
+	
+	
+	/**
+	 * Key identifying the spatial tile of a chunk.
+	 */
+	private static class ChunkKey implements Comparable<ChunkKey> {
+		
+		private final int z, t, x, y;
+		
+		ChunkKey(int z, int t, int x, int y) {
+			this.z = z;
+			this.t = t;
+			this.x = x;
+			this.y = y;
+		}
+		
+		static ChunkKey forObject(PathObject pathObject) {
+			var roi = pathObject.getROI();
+			if (roi == null)
+				return new ChunkKey(0, 0, 0, 0);
+			// Avoid requesting the centroid or bounds of polygons, since these can be expensive to compute 
+			// if they haven't been cached - any vertex is good enough to assign the object to a chunk
+			double x, y;
+			if (roi instanceof PolygonROI || roi instanceof PolylineROI || roi instanceof PointsROI) {
+				var points = roi.getAllPoints();
+				if (points.isEmpty())
+					return new ChunkKey(roi.getZ(), roi.getT(), 0, 0);
+				x = points.get(0).getX();
+				y = points.get(0).getY();
+			} else {
+				x = roi.getBoundsX() + roi.getBoundsWidth() / 2.0;
+				y = roi.getBoundsY() + roi.getBoundsHeight() / 2.0;
+			}
+			return new ChunkKey(roi.getZ(), roi.getT(),
+					(int)Math.floor(x / CHUNK_SIZE),
+					(int)Math.floor(y / CHUNK_SIZE));
+		}
+		
+		void write(DataOutput out) throws IOException {
+			out.writeInt(z);
+			out.writeInt(t);
+			out.writeInt(x);
+			out.writeInt(y);
+		}
+		
+		static ChunkKey read(DataInput in) throws IOException {
+			return new ChunkKey(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+		}
+
+		@Override
+		public int compareTo(ChunkKey o) {
+			int cmp = Integer.compare(t, o.t);
+			if (cmp == 0)
+				cmp = Integer.compare(z, o.z);
+			if (cmp == 0)
+				cmp = Integer.compare(y, o.y);
+			if (cmp == 0)
+				cmp = Integer.compare(x, o.x);
+			return cmp;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(x, y, z, t);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof ChunkKey))
+				return false;
+			var other = (ChunkKey)obj;
+			return x == other.x && y == other.y && z == other.z && t == other.t;
+		}
+		
+	}
+	
+	
+	/**
+	 * Objects to write within a chunk, along with the index of their (structural) parent 
+	 * and their position in the parent's child list.
+	 */
+	private static class ChunkSource {
+		
+		private final ChunkKey key;
+		private final List<PathObject> objects = new ArrayList<>();
+		private int[] parents = new int[16];
+		private int[] ordinals = new int[16];
+		private Map<PathObject, Integer> indices;
+		
+		ChunkSource(ChunkKey key) {
+			this.key = key;
+		}
+		
+		void add(PathObject pathObject, int parent, int ordinal) {
+			int n = objects.size();
+			if (n == parents.length) {
+				parents = Arrays.copyOf(parents, n * 2);
+				ordinals = Arrays.copyOf(ordinals, n * 2);
+			}
+			objects.add(pathObject);
+			parents[n] = parent;
+			ordinals[n] = ordinal;
+		}
+		
+		int indexOf(PathObject pathObject) {
+			if (indices == null) {
+				indices = new IdentityHashMap<>();
+				for (int i = 0; i < objects.size(); i++)
+					indices.put(objects.get(i), i);
+			}
+			return indices.getOrDefault(pathObject, -1);
+		}
+		
+	}
+	
+	
+	private static class EncodedChunk {
+		
+		private final ChunkKey key;
+		private final int nObjects;
+		private final byte[] bytes;
+		private final float minX, minY, maxX, maxY;
+		
+		EncodedChunk(ChunkKey key, int nObjects, byte[] bytes, double minX, double minY, double maxX, double maxY) {
+			this.key = key;
+			this.nObjects = nObjects;
+			this.bytes = bytes;
+			this.minX = (float)Math.floor(minX);
+			this.minY = (float)Math.floor(minY);
+			this.maxX = (float)Math.ceil(maxX);
+			this.maxY = (float)Math.ceil(maxY);
+		}
+		
+	}
+	
+	
+	/**
+	 * Shared dictionaries of measurement names and classifications.
+	 */
+	/**
+	 * Location and bounds of a chunk within a file, used to load chunks on demand.
+	 */
+	private static class ChunkIndex {
+		
+		private final ChunkKey key;
+		private final float minX, minY, maxX, maxY;
+		private final int nObjects;
+		private final int length;
+		private final long offset;
+		
+		ChunkIndex(ChunkKey key, float minX, float minY, float maxX, float maxY, int nObjects, int length, long offset) {
+			this.key = key;
+			this.minX = minX;
+			this.minY = minY;
+			this.maxX = maxX;
+			this.maxY = maxY;
+			this.nObjects = nObjects;
+			this.length = length;
+			this.offset = offset;
+		}
+		
+		boolean overlaps(ImageRegion region) {
+			if (region == null)
+				return true;
+			return key.z == region.getZ() && key.t == region.getT() &&
+					maxX >= region.getMinX() && minX <= region.getMaxX() &&
+					maxY >= region.getMinY() && minY <= region.getMaxY();
+		}
+		
+	}
+	
+	
+	/**
+	 * Loader that reads chunks of detections from a file whenever they are first requested.
+	 * The file is reopened for each request, so that no file handle is retained by the hierarchy.
+	 */
+	private static class ChunkLoader implements PathObjectLoader {
+		
+		private final Path path;
+		private final long size;
+		private final FileTime lastModified;
+		
+		private final Dictionary dictionary;
+		private final StructureObjects structure;
+		private final List<ChunkIndex> pending;
+		
+		ChunkLoader(Path path, Dictionary dictionary, StructureObjects structure, List<ChunkIndex> index) throws IOException {
+			this.path = path;
+			this.size = Files.size(path);
+			this.lastModified = Files.getLastModifiedTime(path);
+			this.dictionary = dictionary;
+			this.structure = structure;
+			this.pending = new ArrayList<>(index);
+		}
+
+		@Override
+		public synchronized Collection<PathObject> loadObjects(ImageRegion region) {
+			if (pending.isEmpty())
+				return Collections.emptyList();
+			List<ChunkIndex> chunks;
+			if (region == null)
+				chunks = new ArrayList<>(pending);
+			else
+				chunks = pending.stream().filter(c -> c.overlaps(region)).collect(Collectors.toList());
+			if (chunks.isEmpty())
+				return Collections.emptyList();
+			// Remove the chunks whether or not we succeed, so we don't repeatedly try to read invalid data
+			pending.removeAll(new HashSet<>(chunks));
+			
+			long startTime = System.currentTimeMillis();
+			try {
+				var blocks = readBlocks(chunks);
+				List<Map<PathObject, List<PathObject>>> decoded;
+				try {
+					decoded = blocks.parallelStream().map(b -> {
+						try {
+							return new ChunkDecoder(dictionary, structure).decodeDeferred(b.inflate());
+						} catch (IOException e) {
+							throw new UncheckedIOException(e);
+						}
+					}).collect(Collectors.toList());
+				} catch (UncheckedIOException e) {
+					throw e.getCause();
+				}
+				// Add objects to their parents - the original ordering can't be retained, 
+				// since the parents may already contain other objects
+				List<PathObject> loaded = new ArrayList<>();
+				for (var map : decoded) {
+					for (var entry : map.entrySet()) {
+						entry.getKey().addPathObjects(entry.getValue());
+						loaded.addAll(entry.getValue());
+					}
+				}
+				long endTime = System.currentTimeMillis();
+				logger.debug("Loaded {} object(s) from {} chunk(s) in {} ms", loaded.size(), chunks.size(), endTime - startTime);
+				return loaded;
+			} catch (IOException e) {
+				logger.error("Unable to load objects from " + path + ": " + e.getLocalizedMessage(), e);
+				return Collections.emptyList();
+			}
+		}
+		
+		private List<Block> readBlocks(List<ChunkIndex> chunks) throws IOException {
+			if (Files.size(path) != size || !Files.getLastModifiedTime(path).equals(lastModified)) {
+				pending.clear();
+				throw new IOException("File has been modified since it was opened");
+			}
+			// Read in file order
+			chunks.sort(Comparator.comparingLong(c -> c.offset));
+			List<Block> blocks = new ArrayList<>(chunks.size());
+			try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+				for (var chunk : chunks) {
+					var buffer = ByteBuffer.allocate(chunk.length);
+					long position = chunk.offset;
+					while (buffer.hasRemaining()) {
+						int n = channel.read(buffer, position);
+						if (n < 0)
+							throw new EOFException("Unexpected end of file");
+						position += n;
+					}
+					blocks.add(new Block(chunk.nObjects, buffer.array()));
+				}
+			}
+			return blocks;
+		}
+
+		@Override
+		public synchronized boolean isFullyLoaded() {
+			return pending.isEmpty();
+		}
+		
+	}
+	
+	
+	private static class Dictionary {
+		
+		private final Map<String, Integer> nameMap = new HashMap<>();
+		private final List<String> names = new ArrayList<>();
+		
+		private final Map<PathClass, Integer> classMap = new HashMap<>();
+		private final List<PathClass> classes = new ArrayList<>();
+		
+		synchronized int nameIndex(String name) {
+			var ind = nameMap.get(name);
+			if (ind == null) {
+				ind = names.size();
+				names.add(name);
+				nameMap.put(name, ind);
+			}
+			return ind;
+		}
+		
+		synchronized int classIndex(PathClass pathClass) {
+			var ind = classMap.get(pathClass);
+			if (ind == null) {
+				// Ensure parents always precede derived classes
+				if (pathClass.getParentClass() != null)
+					classIndex(pathClass.getParentClass());
+				ind = classes.size();
+				classes.add(pathClass);
+				classMap.put(pathClass, ind);
+			}
+			return ind;
+		}
+		
+		synchronized String getName(int ind) {
+			return names.get(ind);
+		}
+		
+		synchronized PathClass getPathClass(int ind) {
+			return classes.get(ind);
+		}
+		
+		synchronized void write(DataOutput out) throws IOException {
+			out.writeInt(names.size());
+			for (var name : names)
+				out.writeUTF(name);
+			out.writeInt(classes.size());
+			for (var pathClass : classes) {
+				var parent = pathClass.getParentClass();
+				out.writeInt(parent == null ? -1 : classMap.get(parent));
+				out.writeUTF(pathClass.getName());
+				out.writeInt(pathClass.getColor() == null ? 0 : pathClass.getColor());
+				out.writeBoolean(pathClass.getColor() != null);
+			}
+		}
+		
+		static Dictionary read(DataInput in) throws IOException {
+			var dictionary = new Dictionary();
+			int nNames = in.readInt();
+			for (int i = 0; i < nNames; i++)
+				dictionary.names.add(in.readUTF());
+			int nClasses = in.readInt();
+			for (int i = 0; i < nClasses; i++) {
+				int parent = in.readInt();
+				String name = in.readUTF();
+				int rgb = in.readInt();
+				Integer color = in.readBoolean() ? rgb : null;
+				PathClass pathClass;
+				if (parent < 0)
+					pathClass = PathClassFactory.getPathClass(name, color);
+				else
+					pathClass = PathClassFactory.getDerivedPathClass(dictionary.classes.get(parent), name, color);
+				dictionary.classes.add(pathClass);
+			}
+			return dictionary;
+		}
+		
+	}
+	
+	
+	/**
+	 * Encoder for a single chunk.
+	 * <p>
+	 * The uncompressed chunk contains three sections: measurement columns, packed coordinates 
+	 * and per-object properties.
+	 */
+	private static class ChunkEncoder {
+		
+		private final Dictionary dictionary;
+		private final boolean isStructure;
+		
+		private final ByteWriter objects = new ByteWriter(8192);
+		private final ByteWriter coords = new ByteWriter(8192);
+		
+		private final Map<List<String>, Integer> schemaIdentityMap = new IdentityHashMap<>();
+		private final Map<List<String>, Integer> schemaMap = new HashMap<>();
+		private final List<int[]> schemaNames = new ArrayList<>();
+		private final List<List<MeasurementList>> schemaRows = new ArrayList<>();
+		
+		private final Map<PathClass, Integer> classMap = new IdentityHashMap<>();
+		
+		private int nObjects = 0;
+		private double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+		private double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+		
+		ChunkEncoder(Dictionary dictionary, boolean isStructure) {
+			this.dictionary = dictionary;
+			this.isStructure = isStructure;
+		}
+		
+		EncodedChunk encode(ChunkSource source) {
+			try {
+				int n = source.objects.size();
+				// The root object isn't written, only its number of children
+				if (isStructure)
+					objects.writeVarInt(source.objects.get(0).nChildObjects());
+				for (int i = isStructure ? 1 : 0; i < n; i++) {
+					objects.writeVarInt(source.parents[i]);
+					objects.writeVarInt(source.ordinals[i]);
+					writeObject(source.objects.get(i));
+				}
+				var measurements = encodeMeasurements();
+				var output = new ByteWriter(measurements.size() + coords.size() + objects.size() + 8);
+				output.writeInt(measurements.size());
+				output.write(measurements);
+				output.writeInt(coords.size());
+				output.write(coords);
+				output.write(objects);
+				return new EncodedChunk(source.key, nObjects, Block.deflate(output.buffer, output.size()), minX, minY, maxX, maxY);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		
+		private void writeObject(PathObject pathObject) throws IOException {
+			int type = getType(pathObject);
+			if (type < 0)
+				throw new IOException("Unsupported object type for binary encoding: " + pathObject.getClass().getName());
+			
+			var pathClass = pathObject.getPathClass();
+			double probability = pathObject.getClassProbability();
+			var measurements = pathObject.hasMeasurements() ? pathObject.getMeasurementList() : null;
+			Map<String, String> metadata = pathObject instanceof MetadataStore ? ((MetadataStore)pathObject).getMetadataMap() : Collections.emptyMap();
+			String description = pathObject instanceof PathAnnotationObject ? ((PathAnnotationObject)pathObject).getDescription() : null;
+			
+			int flags = 0;
+			if (pathObject.getName() != null)
+				flags |= FLAG_NAME;
+			if (pathObject.getColorRGB() != null)
+				flags |= FLAG_COLOR;
+			if (pathClass != null)
+				flags |= FLAG_CLASS;
+			if (!Double.isNaN(probability))
+				flags |= FLAG_PROBABILITY;
+			if (pathObject.isLocked())
+				flags |= FLAG_LOCKED;
+			if (!metadata.isEmpty())
+				flags |= FLAG_METADATA;
+			if (description != null)
+				flags |= FLAG_DESCRIPTION;
+			if (pathObject instanceof TMACoreObject && ((TMACoreObject)pathObject).isMissing())
+				flags |= FLAG_MISSING;
+			if (measurements != null && !measurements.isEmpty())
+				flags |= FLAG_MEASUREMENTS;
+			
+			nObjects++;
+			objects.writeByte(type);
+			objects.writeVarInt(flags);
+			if ((flags & FLAG_NAME) != 0)
+				objects.writeString(pathObject.getName());
+			if ((flags & FLAG_COLOR) != 0)
+				objects.writeInt(pathObject.getColorRGB());
+			if ((flags & FLAG_CLASS) != 0) {
+				var ind = classMap.get(pathClass);
+				if (ind == null) {
+					ind = dictionary.classIndex(pathClass);
+					classMap.put(pathClass, ind);
+				}
+				objects.writeVarInt(ind);
+			}
+			if ((flags & FLAG_PROBABILITY) != 0)
+				objects.writeDouble(probability);
+			if ((flags & FLAG_METADATA) != 0) {
+				objects.writeVarInt(metadata.size());
+				for (var entry : metadata.entrySet()) {
+					objects.writeString(entry.getKey());
+					objects.writeString(entry.getValue() == null ? "" : entry.getValue());
+				}
+			}
+			if ((flags & FLAG_DESCRIPTION) != 0)
+				objects.writeString(description);
+			if ((flags & FLAG_MEASUREMENTS) != 0)
+				objects.writeVarInt(schemaIndex(measurements));
+			
+			writeROI(pathObject.getROI());
+			if (type == TYPE_CELL)
+				writeROI(((PathCellObject)pathObject).getNucleusROI());
+			
+			// Structural objects only need to know how many children to expect - 
+			// otherwise we write all descendants in the same chunk
+			int nChildren = pathObject.nChildObjects();
+			objects.writeVarInt(nChildren);
+			if (!isStructure && nChildren > 0) {
+				for (var child : pathObject.getChildObjects())
+					writeObject(child);
+			}
+		}
+		
+		private int schemaIndex(MeasurementList measurements) {
+			var names = measurements.getMeasurementNames();
+			var ind = schemaIdentityMap.get(names);
+			if (ind == null) {
+				ind = schemaMap.get(names);
+				if (ind == null) {
+					ind = schemaNames.size();
+					schemaNames.add(names.stream().mapToInt(n -> dictionary.nameIndex(n)).toArray());
+					schemaRows.add(new ArrayList<>());
+					schemaMap.put(names, ind);
+				}
+				schemaIdentityMap.put(names, ind);
+			}
+			schemaRows.get(ind).add(measurements);
+			return ind;
+		}
+		
+		private ByteWriter encodeMeasurements() {
+			int nValues = 0;
+			for (int s = 0; s < schemaNames.size(); s++)
+				nValues += schemaNames.get(s).length * schemaRows.get(s).size();
+			var stream = new ByteWriter(nValues * Float.BYTES + 1024);
+			stream.writeVarInt(schemaNames.size());
+			for (int s = 0; s < schemaNames.size(); s++) {
+				int[] nameIndices = schemaNames.get(s);
+				var rows = schemaRows.get(s);
+				stream.writeVarInt(nameIndices.length);
+				for (int ind : nameIndices)
+					stream.writeVarInt(ind);
+				stream.writeVarInt(rows.size());
+				double[] column = new double[rows.size()];
+				for (int c = 0; c < nameIndices.length; c++) {
+					boolean isFloat = true;
+					for (int r = 0; r < column.length; r++) {
+						double val = rows.get(r).getMeasurementValue(c);
+						column[r] = val;
+						if (isFloat && (double)(float)val != val && !Double.isNaN(val))
+							isFloat = false;
+					}
+					stream.writeByte(isFloat ? VALUES_FLOAT : VALUES_DOUBLE);
+					for (double val : column) {
+						if (isFloat)
+							stream.writeFloat((float)val);
+						else
+							stream.writeDouble(val);
+					}
+				}
+			}
+			return stream;
+		}
+		
+		private void writeROI(ROI roi) {
+			if (roi == null) {
+				objects.writeByte(ROI_NONE);
+				return;
+			}
+			int type;
+			if (roi instanceof RectangleROI)
+				type = ROI_RECTANGLE;
+			else if (roi instanceof EllipseROI)
+				type = ROI_ELLIPSE;
+			else if (roi instanceof LineROI)
+				type = ROI_LINE;
+			else if (roi instanceof PolygonROI)
+				type = ROI_POLYGON;
+			else if (roi instanceof PolylineROI)
+				type = ROI_POLYLINE;
+			else if (roi instanceof PointsROI)
+				type = ROI_POINTS;
+			else
+				type = ROI_GEOMETRY;
+			
+			objects.writeByte(type);
+			objects.writeVarInt(roi.getC() + 1);
+			objects.writeVarInt(roi.getZ());
+			objects.writeVarInt(roi.getT());
+			
+			switch (type) {
+			case ROI_RECTANGLE:
+			case ROI_ELLIPSE:
+				double x = roi.getBoundsX();
+				double y = roi.getBoundsY();
+				double width = roi.getBoundsWidth();
+				double height = roi.getBoundsHeight();
+				updateBounds(x, y);
+				updateBounds(x + width, y + height);
+				writeCoordinates(new double[] {x, y, width, height});
+				break;
+			case ROI_LINE:
+				var line = (LineROI)roi;
+				updateBounds(line.getX1(), line.getY1());
+				updateBounds(line.getX2(), line.getY2());
+				writeCoordinates(new double[] {line.getX1(), line.getY1(), line.getX2(), line.getY2()});
+				break;
+			case ROI_POLYGON:
+			case ROI_POLYLINE:
+			case ROI_POINTS:
+				var points = roi.getAllPoints();
+				int n = points.size();
+				double[] xy = new double[n * 2];
+				for (int i = 0; i < n; i++) {
+					var p = points.get(i);
+					xy[i] = p.getX();
+					xy[n + i] = p.getY();
+					updateBounds(xy[i], xy[n + i]);
+				}
+				objects.writeVarInt(n);
+				writeCoordinates(xy);
+				break;
+			case ROI_GEOMETRY:
+			default:
+				var geometry = roi.getGeometry();
+				var envelope = geometry.getEnvelopeInternal();
+				if (!envelope.isNull()) {
+					updateBounds(envelope.getMinX(), envelope.getMinY());
+					updateBounds(envelope.getMaxX(), envelope.getMaxY());
+				}
+				byte[] wkb = new WKBWriter(2).write(geometry);
+				objects.writeVarInt(wkb.length);
+				coords.write(wkb, wkb.length);
+			}
+		}
+		
+		private void updateBounds(double x, double y) {
+			if (x < minX)
+				minX = x;
+			if (x > maxX)
+				maxX = x;
+			if (y < minY)
+				minY = y;
+			if (y > maxY)
+				maxY = y;
+		}
+		
+		/**
+		 * Write coordinates to the packed coordinate section, using floats whenever this is lossless.
+		 * @param values
+		 * @throws IOException
+		 */
+		private void writeCoordinates(double[] values) {
+			boolean isFloat = true;
+			for (double v : values) {
+				if ((double)(float)v != v) {
+					isFloat = false;
+					break;
+				}
+			}
+			objects.writeByte(isFloat ? VALUES_FLOAT : VALUES_DOUBLE);
+			for (double v : values) {
+				if (isFloat)
+					coords.writeFloat((float)v);
+				else
+					coords.writeDouble(v);
+			}
+		}
+		
+	}
+	
+	
+	/**
+	 * Decoder for a single chunk.
+	 */
+	private static class ChunkDecoder {
+		
+		private final Dictionary dictionary;
+		private final StructureObjects structure;
+		
+		private ByteBuffer objects;
+		private ByteBuffer coords;
+		
+		private String[][] schemaNames;
+		private Object[][] schemaColumns;
+		private boolean[] schemaDouble;
+		private int[] schemaRows;
+		
+		ChunkDecoder(Dictionary dictionary, StructureObjects structure) {
+			this.dictionary = dictionary;
+			this.structure = structure;
+		}
+		
+		/**
+		 * Decode the objects within a chunk.
+		 * @param bytes the uncompressed chunk
+		 * @param nObjects number of objects to expect
+		 * @param isStructure true if this is the structural chunk, false if this is a detection chunk
+		 * @return the structural objects if isStructure is true, otherwise the structure passed to the constructor
+		 * @throws IOException
+		 */
+		StructureObjects decode(byte[] bytes, int nObjects, boolean isStructure) throws IOException {
+			initialize(bytes);
+			
+			if (isStructure) {
+				// The root object isn't stored, only the number of its children
+				var structure = new StructureObjects(nObjects);
+				structure.add(null, readVarInt(objects));
+				for (int i = 1; i < nObjects; i++) {
+					int parent = readVarInt(objects);
+					int ordinal = readVarInt(objects);
+					var pathObject = readObjectProperties();
+					structure.add(pathObject, readVarInt(objects));
+					structure.setChild(parent, ordinal, pathObject);
+				}
+				return structure;
+			}
+			
+			while (objects.hasRemaining()) {
+				int parent = readVarInt(objects);
+				int ordinal = readVarInt(objects);
+				structure.setChild(parent, ordinal, readObjectTree());
+			}
+			return structure;
+		}
+		
+		/**
+		 * Decode the objects within a detection chunk, without adding them to the structure.
+		 * @param bytes the uncompressed chunk
+		 * @return a map of the top-level objects in the chunk, grouped by their parents
+		 * @throws IOException
+		 */
+		Map<PathObject, List<PathObject>> decodeDeferred(byte[] bytes) throws IOException {
+			initialize(bytes);
+			Map<PathObject, List<PathObject>> map = new LinkedHashMap<>();
+			while (objects.hasRemaining()) {
+				var parent = structure.getObject(readVarInt(objects));
+				readVarInt(objects); // Ordinal
+				map.computeIfAbsent(parent, p -> new ArrayList<>()).add(readObjectTree());
+			}
+			return map;
+		}
+		
+		private void initialize(byte[] bytes) throws IOException {
+			var buffer = ByteBuffer.wrap(bytes);
+			int measurementLength = buffer.getInt();
+			decodeMeasurements(slice(buffer, measurementLength));
+			int coordLength = buffer.getInt();
+			coords = slice(buffer, coordLength);
+			objects = buffer;
+		}
+		
+		private void decodeMeasurements(ByteBuffer stream) throws IOException {
+			int nSchemas = readVarInt(stream);
+			schemaNames = new String[nSchemas][];
+			schemaColumns = new Object[nSchemas][];
+			schemaDouble = new boolean[nSchemas];
+			schemaRows = new int[nSchemas];
+			for (int s = 0; s < nSchemas; s++) {
+				int nNames = readVarInt(stream);
+				var names = new String[nNames];
+				for (int i = 0; i < nNames; i++)
+					names[i] = dictionary.getName(readVarInt(stream));
+				schemaNames[s] = names;
+				int nRows = readVarInt(stream);
+				var columns = new Object[nNames];
+				for (int c = 0; c < nNames; c++) {
+					if (stream.get() == VALUES_FLOAT) {
+						float[] values = new float[nRows];
+						stream.asFloatBuffer().get(values);
+						stream.position(stream.position() + nRows * Float.BYTES);
+						columns[c] = values;
+					} else {
+						double[] values = new double[nRows];
+						stream.asDoubleBuffer().get(values);
+						stream.position(stream.position() + nRows * Double.BYTES);
+						columns[c] = values;
+						schemaDouble[s] = true;
+					}
+				}
+				schemaColumns[s] = columns;
+			}
+		}
+		
+		private MeasurementList readMeasurements(int schema, MeasurementListType defaultType) {
+			var names = schemaNames[schema];
+			var columns = schemaColumns[schema];
+			int row = schemaRows[schema]++;
+			// Values that can't be represented as floats can only have come from a general list
+			var list = MeasurementListFactory.createMeasurementList(names.length,
+					schemaDouble[schema] ? MeasurementListType.GENERAL : defaultType);
+			for (int c = 0; c < names.length; c++) {
+				var column = columns[c];
+				double val = column instanceof float[] ? ((float[])column)[row] : ((double[])column)[row];
+				list.addMeasurement(names[c], val);
+			}
+			list.close();
+			return list;
+		}
+		
+		/**
+		 * Read an object along with all its descendants.
+		 * @return
+		 * @throws IOException
+		 */
+		private PathObject readObjectTree() throws IOException {
+			var pathObject = readObjectProperties();
+			int nChildren = readVarInt(objects);
+			if (nChildren > 0) {
+				var children = new ArrayList<PathObject>(nChildren);
+				for (int i = 0; i < nChildren; i++)
+					children.add(readObjectTree());
+				pathObject.addPathObjects(children);
+			}
+			return pathObject;
+		}
+		
+		/**
+		 * Read an object, without its child count or descendants.
+		 * @return
+		 * @throws IOException
+		 */
+		private PathObject readObjectProperties() throws IOException {
+			int type = objects.get();
+			int flags = readVarInt(objects);
+			String name = (flags & FLAG_NAME) != 0 ? readString(objects) : null;
+			Integer color = (flags & FLAG_COLOR) != 0 ? objects.getInt() : null;
+			PathClass pathClass = (flags & FLAG_CLASS) != 0 ? dictionary.getPathClass(readVarInt(objects)) : null;
+			double probability = (flags & FLAG_PROBABILITY) != 0 ? objects.getDouble() : Double.NaN;
+			Map<String, String> metadata = null;
+			if ((flags & FLAG_METADATA) != 0) {
+				int n = readVarInt(objects);
+				metadata = new LinkedHashMap<>();
+				for (int i = 0; i < n; i++)
+					metadata.put(readString(objects), readString(objects));
+			}
+			String description = (flags & FLAG_DESCRIPTION) != 0 ? readString(objects) : null;
+			int schema = (flags & FLAG_MEASUREMENTS) != 0 ? readVarInt(objects) : -1;
+			
+			var roi = readROI();
+			var nucleus = type == TYPE_CELL ? readROI() : null;
+			
+			boolean isDetection = type == TYPE_DETECTION || type == TYPE_CELL || type == TYPE_TILE;
+			var measurements = schema < 0 ? null : readMeasurements(schema,
+					isDetection ? MeasurementListType.COLUMNAR : MeasurementListType.GENERAL);
+			
+			PathObject pathObject;
+			switch (type) {
+			case TYPE_ANNOTATION:
+				pathObject = PathObjects.createAnnotationObject(roi, pathClass, measurements);
+				if (description != null)
+					((PathAnnotationObject)pathObject).setDescription(description);
+				break;
+			case TYPE_DETECTION:
+				pathObject = PathObjects.createDetectionObject(roi, pathClass, measurements);
+				break;
+			case TYPE_CELL:
+				pathObject = PathObjects.createCellObject(roi, nucleus, pathClass, measurements);
+				break;
+			case TYPE_TILE:
+				pathObject = PathObjects.createTileObject(roi, pathClass, measurements);
+				break;
+			case TYPE_TMA_CORE:
+				var core = new TMACoreObject();
+				if (roi != null)
+					core.setROI(roi);
+				core.setMissing((flags & FLAG_MISSING) != 0);
+				if (pathClass != null)
+					core.setPathClass(pathClass);
+				if (measurements != null) {
+					var list = core.getMeasurementList();
+					for (int i = 0; i < measurements.size(); i++)
+						list.addMeasurement(measurements.getMeasurementName(i), measurements.getMeasurementValue(i));
+					list.close();
+				}
+				pathObject = core;
+				break;
+			default:
+				throw new IOException("Unknown object type " + type);
+			}
+			if (!Double.isNaN(probability))
+				pathObject.setPathClass(pathClass, probability);
+			if (name != null)
+				pathObject.setName(name);
+			if (color != null)
+				pathObject.setColorRGB(color);
+			if ((flags & FLAG_LOCKED) != 0)
+				pathObject.setLocked(true);
+			if (metadata != null && pathObject instanceof MetadataStore) {
+				var store = (MetadataStore)pathObject;
+				for (var entry : metadata.entrySet())
+					store.putMetadataValue(entry.getKey(), entry.getValue());
+			}
+			return pathObject;
+		}
+		
+		private ROI readROI() throws IOException {
+			int type = objects.get();
+			if (type == ROI_NONE)
+				return null;
+			int c = readVarInt(objects) - 1;
+			int z = readVarInt(objects);
+			int t = readVarInt(objects);
+			var plane = ImagePlane.getPlaneWithChannel(c, z, t);
+			switch (type) {
+			case ROI_RECTANGLE:
+				double[] rect = readCoordinates(4);
+				return ROIs.createRectangleROI(rect[0], rect[1], rect[2], rect[3], plane);
+			case ROI_ELLIPSE:
+				double[] ellipse = readCoordinates(4);
+				return ROIs.createEllipseROI(ellipse[0], ellipse[1], ellipse[2], ellipse[3], plane);
+			case ROI_LINE:
+				double[] line = readCoordinates(4);
+				return ROIs.createLineROI(line[0], line[1], line[2], line[3], plane);
+			case ROI_POLYGON:
+			case ROI_POLYLINE:
+			case ROI_POINTS:
+				int n = readVarInt(objects);
+				double[] xy = readCoordinates(n * 2);
+				double[] x = Arrays.copyOfRange(xy, 0, n);
+				double[] y = Arrays.copyOfRange(xy, n, n * 2);
+				if (type == ROI_POLYGON)
+					return ROIs.createPolygonROI(x, y, plane);
+				if (type == ROI_POLYLINE)
+					return ROIs.createPolylineROI(x, y, plane);
+				List<Point2> points = new ArrayList<>(n);
+				for (int i = 0; i < n; i++)
+					points.add(new Point2(x[i], y[i]));
+				return ROIs.createPointsROI(points, plane);
+			case ROI_GEOMETRY:
+				byte[] wkb = new byte[readVarInt(objects)];
+				coords.get(wkb);
+				try {
+					return GeometryTools.geometryToROI(new WKBReader().read(wkb), plane);
+				} catch (ParseException e) {
+					throw new IOException(e);
+				}
+			default:
+				throw new IOException("Unknown ROI type " + type);
+			}
+		}
+		
+		private double[] readCoordinates(int n) throws IOException {
+			double[] values = new double[n];
+			boolean isFloat = objects.get() == VALUES_FLOAT;
+			for (int i = 0; i < n; i++)
+				values[i] = isFloat ? coords.getFloat() : coords.getDouble();
+			return values;
+		}
+		
+	}
+	
+	
+	/**
+	 * Structural objects, along with arrays to receive their children in the original order.
+	 */
+	private static class StructureObjects {
+		
+		private final List<PathObject> objects;
+		private final List<PathObject[]> slots;
+		
+		StructureObjects(int n) {
+			objects = new ArrayList<>(n);
+			slots = new ArrayList<>(n);
+		}
+		
+		void add(PathObject pathObject, int nChildren) {
+			objects.add(pathObject);
+			slots.add(new PathObject[nChildren]);
+		}
+		
+		PathObject getObject(int index) throws IOException {
+			if (index < 0 || index >= objects.size())
+				throw new IOException("Invalid parent index " + index);
+			return objects.get(index);
+		}
+		
+		void setChild(int parent, int ordinal, PathObject child) throws IOException {
+			if (parent < 0 || parent >= slots.size())
+				throw new IOException("Invalid parent index " + parent);
+			var array = slots.get(parent);
+			if (ordinal < 0 || ordinal >= array.length)
+				throw new IOException("Invalid child index " + ordinal + " for parent " + parent);
+			array[ordinal] = child;
+		}
+		
+	}
+	
+	
+	private static ByteBuffer slice(ByteBuffer buffer, int length) {
+		var slice = buffer.slice();
+		slice.limit(length);
+		buffer.position(buffer.position() + length);
+		return slice;
+	}
+	
+	static int readVarInt(ByteBuffer buffer) throws IOException {
+		int v = 0;
+		int shift = 0;
+		int b;
+		do {
+			if (shift > 28)
+				throw new IOException("Malformed variable-length integer");
+			b = buffer.get() & 0xFF;
+			v |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return (v >>> 1) ^ -(v & 1);
+	}
+	
+	static String readString(ByteBuffer buffer) throws IOException {
+		int length = readVarInt(buffer);
+		var s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+		buffer.position(buffer.position() + length);
+		return s;
+	}
+	
+	
+	/**
+	 * Input stream that counts the bytes read or skipped, so that the file offsets of chunks can be recorded.
+	 */
+	static class CountingInputStream extends FilterInputStream {
+		
+		private long count;
+		
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+		
+		long getCount() {
+			return count;
+		}
+		
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0)
+				count++;
+			return b;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0)
+				count += n;
+			return n;
+		}
+		
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			if (skipped > 0)
+				count += skipped;
+			return skipped;
+		}
+		
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+		
+	}
+	
+	
+	/**
+	 * Minimal growable byte buffer, avoiding the synchronization overhead of a {@link ByteArrayOutputStream} 
+	 * when writing many small values.
+	 * Multi-byte values are written in big-endian order, consistent with {@link ByteBuffer}.
+	 */
+	static class ByteWriter {
+		
+		private byte[] buffer;
+		private int size;
+		
+		ByteWriter(int capacity) {
+			buffer = new byte[Math.max(capacity, 16)];
+		}
+		
+		private void ensureCapacity(int extra) {
+			if (size + extra > buffer.length)
+				buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+		}
+		
+		int size() {
+			return size;
+		}
+		
+		void writeByte(int value) {
+			ensureCapacity(1);
+			buffer[size++] = (byte)value;
+		}
+		
+		void writeInt(int value) {
+			ensureCapacity(4);
+			buffer[size++] = (byte)(value >>> 24);
+			buffer[size++] = (byte)(value >>> 16);
+			buffer[size++] = (byte)(value >>> 8);
+			buffer[size++] = (byte)value;
+		}
+		
+		void writeLong(long value) {
+			writeInt((int)(value >>> 32));
+			writeInt((int)value);
+		}
+		
+		void writeFloat(float value) {
+			writeInt(Float.floatToRawIntBits(value));
+		}
+		
+		void writeDouble(double value) {
+			writeLong(Double.doubleToRawLongBits(value));
+		}
+		
+		void writeVarInt(int value) {
+			// Zig-zag encoding, so that small negative values remain compact
+			int v = (value << 1) ^ (value >> 31);
+			while ((v & ~0x7F) != 0) {
+				writeByte((v & 0x7F) | 0x80);
+				v >>>= 7;
+			}
+			writeByte(v);
+		}
+		
+		void writeString(String value) {
+			var bytes = value.getBytes(StandardCharsets.UTF_8);
+			writeVarInt(bytes.length);
+			write(bytes, bytes.length);
+		}
+		
+		void write(byte[] bytes, int length) {
+			ensureCapacity(length);
+			System.arraycopy(bytes, 0, buffer, size, length);
+			size += length;
+		}
+		
+		void write(ByteWriter writer) {
+			write(writer.buffer, writer.size);
+		}
+		
+		byte[] toByteArray() {
+			return Arrays.copyOf(buffer, size);
+		}
+		
+	}
+	
+}
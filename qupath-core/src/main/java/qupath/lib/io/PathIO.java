@@ -25,6 +25,10 @@ package qupath.lib.io;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
@@ -37,9 +41,11 @@ import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Locale.Category;
 import java.util.Map.Entry;
 import org.slf4j.Logger;
@@ -62,9 +68,107 @@ import qupath.lib.plugins.workflow.Workflow;
 public class PathIO {
 	
 	final private static Logger logger = LoggerFactory.getLogger(PathIO.class);
+	
+	/**
+	 * Magic number at the start of data files written using the binary format ("QPDT").
+	 * This can't be confused with Java serialization, which always starts with 0xACED.
+	 */
+	private static final int BINARY_MAGIC = 0x51504454;
+	
+	/**
+	 * Current version of the binary data file format.
+	 */
+	private static final int BINARY_VERSION = 1;
+	
+	/**
+	 * Supported formats when writing ImageData.
+	 */
+	public static enum DataFormat {
+		/**
+		 * Legacy format, using Java serialization for all contents.
+		 * This can be read by all versions of QuPath, but is slow and memory-hungry for large hierarchies.
+		 */
+		SERIALIZED,
+		/**
+		 * Binary format, storing the object hierarchy as compressed chunks that can be 
+		 * written and read in parallel.
+		 */
+		BINARY
+	}
+	
+	private static DataFormat defaultDataFormat = DataFormat.SERIALIZED;
+	
+	private static boolean deferredObjectLoading = false;
 		
 	private PathIO() {}
 	
+	/**
+	 * Set the format to use when writing ImageData. 
+	 * Data can always be read, regardless of format.
+	 * <p>
+	 * The default is {@link DataFormat#SERIALIZED}, since files written in the {@link DataFormat#BINARY} format 
+	 * cannot be read by older versions of QuPath.
+	 * @param format
+	 */
+	public static synchronized void setDefaultDataFormat(DataFormat format) {
+		Objects.requireNonNull(format);
+		defaultDataFormat = format;
+	}
+	
+	/**
+	 * Get the format used when writing ImageData.
+	 * @return
+	 */
+	public static synchronized DataFormat getDefaultDataFormat() {
+		return defaultDataFormat;
+	}
+	
+	/**
+	 * Request that detections are loaded on demand when reading binary data files from a {@link Path}.
+	 * <p>
+	 * If true, only annotations, TMA cores and a spatial index of detection chunks are read initially; 
+	 * detections are then read from the file whenever they are first requested for a region, 
+	 * or when the hierarchy needs all its objects. This can greatly reduce the time and memory 
+	 * needed to open data files containing very large numbers of detections.
+	 * @param defer
+	 * @see PathObjectHierarchy#ensureFullyLoaded()
+	 */
+	public static synchronized void setDeferredObjectLoading(boolean defer) {
+		deferredObjectLoading = defer;
+	}
+	
+	/**
+	 * Query whether detections should be loaded on demand when reading binary data files from a {@link Path}.
+	 * @return
+	 * @see #setDeferredObjectLoading(boolean)
+	 */
+	public static synchronized boolean isDeferredObjectLoading() {
+		return deferredObjectLoading;
+	}
+	
+	/**
+	 * Check whether the next bytes of a stream correspond to the binary data format, resetting the 
+	 * stream afterwards.
+	 * @param stream a stream supporting mark/reset
+	 * @return
+	 * @throws IOException
+	 */
+	private static boolean isBinaryFormat(final InputStream stream) throws IOException {
+		stream.mark(Integer.BYTES);
+		try {
+			int magic = 0;
+			for (int i = 0; i < Integer.BYTES; i++) {
+				int b = stream.read();
+				if (b < 0)
+					return false;
+				magic = (magic << 8) | b;
+			}
+			return magic == BINARY_MAGIC;
+		} finally {
+			stream.reset();
+		}
+	}
+	
 	
 	
 	/**
@@ -77,8 +181,10 @@ public class PathIO {
 	 */
 	public static String readSerializedServerPath(final File file) throws FileNotFoundException, IOException, ClassNotFoundException {
 		String serverPath = null;
-		try (FileInputStream fileIn = new FileInputStream(file)) {
-			ObjectInputStream inStream = new ObjectInputStream(new BufferedInputStream(fileIn));
+		try (var fileIn = new BufferedInputStream(new FileInputStream(file))) {
+			if (isBinaryFormat(fileIn))
+				return readBinaryHeader(new DataInputStream(fileIn));
+			ObjectInputStream inStream = new ObjectInputStream(fileIn);
 			// Check the first line, then read the server path if it is valid
 			String firstLine = inStream.readUTF();
 			if (firstLine.startsWith("Data file version")) {
@@ -89,20 +195,11 @@ public class PathIO {
 		return serverPath;
 	}
 	
-	private static <T> ImageData<T> readImageDataSerialized(final File file, ImageData<T> imageData, ImageServer<T> server, Class<T> cls) throws FileNotFoundException, IOException {
+	private static <T> ImageData<T> readImageDataFromFile(final File file, ImageData<T> imageData, ImageServer<T> server, Class<T> cls) throws FileNotFoundException, IOException {
 		if (file == null)
 			return null;
 		logger.info("Reading data from {}...", file.getName());
-		try (FileInputStream stream = new FileInputStream(file)) {
-			imageData = readImageDataSerialized(stream, imageData, server, cls);	
-			// Set the last saved path (actually the path from which this was opened)
-			if (imageData != null)
-				imageData.setLastSavedPath(file.getAbsolutePath(), true);
-			return imageData;
-//		} catch (IOException e) {
-//			logger.error("Error reading ImageData from file", e);
-//			return null;
-		}
+		return readImageData(file.toPath(), imageData, server, cls);
 	}
 	
 	@SuppressWarnings("unchecked")
@@ -184,44 +281,7 @@ public class PathIO {
 				}
 			}
 
-			// Create an entirely new ImageData if necessary
-			if (imageData == null || !(imageData.getServer().equals(server) || imageData.getServerPath().equals(serverPath))) {
-				// Create a new server if we need to
-				if (server == null) {
-					try {
-						server = ImageServerProvider.buildServer(serverPath, cls);
-					} catch (Exception e) {
-						logger.error(e.getLocalizedMessage());
-					};
-					if (server == null) {
-						logger.error("Warning: Unable to create server for path " + serverPath);
-						//							throw new RuntimeException("Warning: Unable to create server for path " + serverPath);
-					}
-				}
-				// TODO: Make this less clumsy... but for now we need to ensure we have a fully-initialized hierarchy (which deserialization alone doesn't achieve)
-				PathObjectHierarchy hierarchy2 = new PathObjectHierarchy();
-				hierarchy2.setHierarchy(hierarchy);
-				hierarchy = hierarchy2;
-
-				imageData = new ImageData<>(server, hierarchy, imageType);
-			} else {
-				if (imageType != null)
-					imageData.setImageType(imageType);
-				// Set the new hierarchy
-				imageData.getHierarchy().setHierarchy(hierarchy);
-			}
-			// Set the other properties we have just read
-			if (workflow != null) {
-				imageData.getHistoryWorkflow().clear();
-				imageData.getHistoryWorkflow().addSteps(workflow.getSteps());
-			}
-			if (stains != null) {
-				imageData.setColorDeconvolutionStains(stains);
-			}
-			if (propertyMap != null) {
-				for (Entry<String, Object> entry : propertyMap.entrySet())
-					imageData.setProperty(entry.getKey(), entry.getValue());
-			}
+			imageData = updateImageData(imageData, server, cls, serverPath, hierarchy, imageType, stains, workflow, propertyMap);
 
 			long endTime = System.currentTimeMillis();
 
@@ -239,6 +299,106 @@ public class PathIO {
 		}
 		return imageData;
 	}
+
+
+	/**
+	 * Read the header of a binary data file, checking the version.
+	 * @param stream
+	 * @return the server path
+	 * @throws IOException
+	 */
+	private static String readBinaryHeader(final DataInputStream stream) throws IOException {
+		if (stream.readInt() != BINARY_MAGIC)
+			throw new IOException("Input stream does not contain valid QuPath data!");
+		int version = stream.readInt();
+		if (version > BINARY_VERSION)
+			throw new IOException("Unsupported data file version " + version + " (max supported version is " + BINARY_VERSION + ")");
+		return stream.readUTF();
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static <T> ImageData<T> readImageDataBinary(final InputStream stream, ImageData<T> imageData, ImageServer<T> server, Class<T> cls, final Path deferredPath) throws IOException {
+		long startTime = System.currentTimeMillis();
+		// If we are deferring object loading, we need to know the position of each chunk within the file
+		var counter = deferredPath == null ? null : new BinaryHierarchyIO.CountingInputStream(stream);
+		var inStream = new DataInputStream(counter == null ? stream : counter);
+		String serverPath = readBinaryHeader(inStream);
+		
+		ImageData.ImageType imageType = null;
+		ColorDeconvolutionStains stains = null;
+		Workflow workflow = null;
+		Map<String, Object> propertyMap = null;
+		byte[] metadata = new byte[inStream.readInt()];
+		inStream.readFully(metadata);
+		try (var metadataStream = new ObjectInputStream(new ByteArrayInputStream(metadata))) {
+			imageType = (ImageData.ImageType)metadataStream.readObject();
+			stains = (ColorDeconvolutionStains)metadataStream.readObject();
+			workflow = (Workflow)metadataStream.readObject();
+			propertyMap = (Map<String, Object>)metadataStream.readObject();
+		} catch (ClassNotFoundException | ClassCastException e) {
+			logger.warn("Unable to read image metadata: " + e.getLocalizedMessage(), e);
+		}
+		
+		PathObjectHierarchy hierarchy;
+		if (counter == null)
+			hierarchy = BinaryHierarchyIO.readHierarchy(inStream);
+		else
+			hierarchy = BinaryHierarchyIO.readHierarchyDeferred(inStream, counter, deferredPath);
+		long endTime = System.currentTimeMillis();
+		if (hierarchy.isFullyLoaded())
+			logger.debug(String.format("Hierarchy with %d object(s) read in %.2f seconds", hierarchy.nObjects(), (endTime - startTime)/1000.));
+		else
+			logger.debug(String.format("Hierarchy index read in %.2f seconds - detections will be loaded on demand", (endTime - startTime)/1000.));
+		
+		return updateImageData(imageData, server, cls, serverPath, hierarchy, imageType, stains, workflow, propertyMap);
+	}
+	
+	/**
+	 * Update an existing ImageData with values that have been read from a file, or create a new ImageData if necessary.
+	 */
+	private static <T> ImageData<T> updateImageData(ImageData<T> imageData, ImageServer<T> server, Class<T> cls, String serverPath, 
+			PathObjectHierarchy hierarchy, ImageData.ImageType imageType, ColorDeconvolutionStains stains, Workflow workflow, Map<String, Object> propertyMap) {
+		// Create an entirely new ImageData if necessary
+		if (imageData == null || !(imageData.getServer().equals(server) || imageData.getServerPath().equals(serverPath))) {
+			// Create a new server if we need to
+			if (server == null) {
+				try {
+					server = ImageServerProvider.buildServer(serverPath, cls);
+				} catch (Exception e) {
+					logger.error(e.getLocalizedMessage());
+				};
+				if (server == null) {
+					logger.error("Warning: Unable to create server for path " + serverPath);
+					//							throw new RuntimeException("Warning: Unable to create server for path " + serverPath);
+				}
+			}
+			// TODO: Make this less clumsy... but for now we need to ensure we have a fully-initialized hierarchy (which deserialization alone doesn't achieve)
+			PathObjectHierarchy hierarchy2 = new PathObjectHierarchy();
+			hierarchy2.setHierarchy(hierarchy);
+			hierarchy = hierarchy2;
+
+			imageData = new ImageData<>(server, hierarchy, imageType);
+		} else {
+			if (imageType != null)
+				imageData.setImageType(imageType);
+			// Set the new hierarchy
+			imageData.getHierarchy().setHierarchy(hierarchy);
+		}
+		// Set the other properties we have just read
+		if (workflow != null) {
+			imageData.getHistoryWorkflow().clear();
+			imageData.getHistoryWorkflow().addSteps(workflow.getSteps());
+		}
+		if (stains != null) {
+			imageData.setColorDeconvolutionStains(stains);
+		}
+		if (propertyMap != null) {
+			for (Entry<String, Object> entry : propertyMap.entrySet())
+				imageData.setProperty(entry.getKey(), entry.getValue());
+		}
+
+		return imageData;
+	}
 	
 	
 //	/**
@@ -275,7 +435,40 @@ public class PathIO {
 	 * @throws IOException
 	 */
 	public static <T> ImageData<T> readImageData(final InputStream stream, ImageData<T> imageData, ImageServer<T> server, Class<T> cls) throws IOException {
-		return readImageDataSerialized(stream, imageData, server, cls);
+		var bufferedStream = new BufferedInputStream(stream);
+		if (isBinaryFormat(bufferedStream))
+			return readImageDataBinary(bufferedStream, imageData, server, cls, null);
+		return readImageDataSerialized(bufferedStream, imageData, server, cls);
+	}
+	
+	/**
+	 * Read ImageData from a Path into an existing ImageData object, or create a new one if required.
+	 * <p>
+	 * If {@link #isDeferredObjectLoading()} is true and the file uses the binary format, detections will be 
+	 * loaded on demand from the file. In this case, the file should not be modified while the ImageData is in use 
+	 * (apart from by writing the same ImageData, which first ensures all objects are loaded).
+	 * @param <T> 
+	 * 
+	 * @param path
+	 * @param imageData
+	 * @param server an ImageServer to use rather than any that might be stored within the serialized data.  Should be null to use the serialized path to build a new server.
+	 * 								The main purpose of this is to make it possible to open ImageData where the original image location has been moved, so the
+	 * 								stored path is no longer accurate.
+	 * @param cls 
+	 * @return
+	 * @throws IOException 
+	 */
+	public static <T> ImageData<T> readImageData(final Path path, ImageData<T> imageData, ImageServer<T> server, Class<T> cls) throws IOException {
+		try (var stream = new BufferedInputStream(Files.newInputStream(path))) {
+			if (isBinaryFormat(stream))
+				imageData = readImageDataBinary(stream, imageData, server, cls, isDeferredObjectLoading() ? path : null);
+			else
+				imageData = readImageDataSerialized(stream, imageData, server, cls);
+			// Set the last saved path (actually the path from which this was opened)
+			if (imageData != null)
+				imageData.setLastSavedPath(path.toAbsolutePath().toString(), true);
+			return imageData;
+		}
 	}
 
 	
@@ -293,7 +486,7 @@ public class PathIO {
 	 * @throws IOException 
 	 */
 	public static <T> ImageData<T> readImageData(final File file, ImageData<T> imageData, ImageServer<T> server, Class<T> cls) throws IOException {
-		return readImageDataSerialized(file, imageData, server, cls);
+		return readImageDataFromFile(file, imageData, server, cls);
 	}
 	
 	
@@ -306,6 +499,9 @@ public class PathIO {
 	 * @throws IOException 
 	 */
 	public static void writeImageData(final File file, final ImageData<?> imageData) throws FileNotFoundException, IOException {
+		// Ensure we have all objects before touching the file, since they might be loaded from it on demand
+		imageData.getHierarchy().ensureFullyLoaded();
+		
 		File backup = null;
 		
 		// Backup any existing file... just in case of disaster
@@ -317,7 +513,7 @@ public class PathIO {
 		
 		// Write the data
 		try (var stream = new FileOutputStream(file)) {
-			writeImageDataSerialized(stream, imageData);
+			writeImageData(stream, imageData);
 			
 			// Remember the saved path
 			imageData.setLastSavedPath(file.getAbsolutePath(), true);
@@ -330,15 +526,91 @@ public class PathIO {
 	}
 	
 	/**
-	 * Serialize an ImageData object to an output stream.
+	 * Write an ImageData object to an output stream, using the default data format.
 	 * @param stream
 	 * @param imageData
 	 * @throws IOException
+	 * @see #getDefaultDataFormat()
 	 */
 	public static void writeImageData(final OutputStream stream, final ImageData<?> imageData) throws IOException {
+		writeImageData(stream, imageData, getDefaultDataFormat());
+	}
+	
+	/**
+	 * Write an ImageData object to an output stream, using a specified data format.
+	 * <p>
+	 * Note that if the hierarchy contains objects that cannot be represented in the binary format, 
+	 * the serialized format will be used instead.
+	 * @param stream
+	 * @param imageData
+	 * @param format
+	 * @throws IOException
+	 */
+	public static void writeImageData(final OutputStream stream, final ImageData<?> imageData, final DataFormat format) throws IOException {
+		imageData.getHierarchy().ensureFullyLoaded();
+		if (format == DataFormat.BINARY) {
+			if (BinaryHierarchyIO.isSupported(imageData.getHierarchy())) {
+				writeImageDataBinary(stream, imageData);
+				return;
+			}
+			logger.warn("Hierarchy contains unsupported object types - image data will be written using Java serialization");
+		}
 		writeImageDataSerialized(stream, imageData);
 	}
 	
+	
+	private static void writeImageDataBinary(final OutputStream stream, final ImageData<?> imageData) throws IOException {
+		try (var outStream = new DataOutputStream(new BufferedOutputStream(stream))) {
+			long startTime = System.currentTimeMillis();
+			
+			outStream.writeInt(BINARY_MAGIC);
+			outStream.writeInt(BINARY_VERSION);
+			outStream.writeUTF(getBackwardsCompatiblePath(imageData.getServer()));
+			
+			// Image metadata is small, so we can continue to use serialization for this
+			var metadata = new ByteArrayOutputStream();
+			try (var metadataStream = new ObjectOutputStream(metadata)) {
+				metadataStream.writeObject(imageData.getImageType());
+				metadataStream.writeObject(imageData.getColorDeconvolutionStains());
+				metadataStream.writeObject(imageData.getHistoryWorkflow());
+				metadataStream.writeObject(getSerializableProperties(imageData));
+			}
+			outStream.writeInt(metadata.size());
+			metadata.writeTo(outStream);
+			
+			PathObjectHierarchy hierarchy = imageData.getHierarchy();
+			logger.info(String.format("Writing object hierarchy with %d object(s)...", hierarchy.nObjects()));
+			BinaryHierarchyIO.writeHierarchy(outStream, hierarchy);
+			
+			long endTime = System.currentTimeMillis();
+			logger.info(String.format("Image data written in %.2f seconds", (endTime - startTime)/1000.));
+		}
+	}
+	
+	private static String getBackwardsCompatiblePath(ImageServer<?> server) {
+		var uris = server.getURIs();
+		if (uris.size() == 1) {
+			var uri = uris.iterator().next();
+			var serverPath = GeneralTools.toPath(uri);
+			if (serverPath != null && Files.exists(serverPath))
+				return serverPath.toFile().getAbsolutePath();
+			else
+				return uri.toString();
+		} else
+			return server.getPath();
+	}
+	
+	private static Map<String, Object> getSerializableProperties(ImageData<?> imageData) {
+		Map<String, Object> map = new HashMap<>();
+		for (Entry<String, Object> entry : imageData.getProperties().entrySet()) {
+			if (entry.getValue() instanceof Serializable)
+				map.put(entry.getKey(), entry.getValue());
+			else
+				logger.error("Property not serializable and will not be saved!  Key: " + entry.getKey() + ", Value: " + entry.getValue());
+		}
+		return map;
+	}
+	
 
 	private static void writeImageDataSerialized(final OutputStream stream, final ImageData<?> imageData) throws IOException {
 				
@@ -353,19 +625,7 @@ public class PathIO {
 			outStream.writeUTF("Data file version 2");
 			
 			// Try to write a backwards-compatible image path
-			var server = imageData.getServer();
-			var uris = server.getURIs();
-			String path;
-			if (uris.size() == 1) {
-				var uri = uris.iterator().next();
-				var serverPath = GeneralTools.toPath(uri);
-				if (serverPath != null && Files.exists(serverPath))
-					path = serverPath.toFile().getAbsolutePath();
-				else
-					path = uri.toString();
-			} else
-				path = server.getPath();
-			outStream.writeObject("Image path: " + path);
+			outStream.writeObject("Image path: " + getBackwardsCompatiblePath(imageData.getServer()));
 			
 			// Write the current locale
 			outStream.writeObject(Locale.getDefault(Category.FORMAT));
@@ -381,15 +641,7 @@ public class PathIO {
 			outStream.writeObject(hierarchy);
 			
 			// Write any remaining (serializable) properties
-			Map<String, Object> map = new HashMap<>();
-			for (Entry<String, Object> entry : imageData.getProperties().entrySet()) {
-				if (entry.getValue() instanceof Serializable)
-					map.put(entry.getKey(), entry.getValue());
-				else
-					logger.error("Property not serializable and will not be saved!  Key: " + entry.getKey() + ", Value: " + entry.getValue());
-			}
-			if (map != null)
-				outStream.writeObject(map);
+			outStream.writeObject(getSerializableProperties(imageData));
 			
 			// Write EOF marker
 			outStream.writeObject("EOF");
@@ -426,10 +678,20 @@ public class PathIO {
 	 */
 	public static PathObjectHierarchy readHierarchy(final InputStream fileIn) throws IOException {
 
+		var bufferedStream = new BufferedInputStream(fileIn);
+		if (isBinaryFormat(bufferedStream)) {
+			try (var inStream = new DataInputStream(bufferedStream)) {
+				readBinaryHeader(inStream);
+				// Skip the image metadata
+				inStream.readFully(new byte[inStream.readInt()]);
+				return BinaryHierarchyIO.readHierarchy(inStream);
+			}
+		}
+
 		Locale locale = Locale.getDefault(Category.FORMAT);
 		boolean localeChanged = false;
 
-		try (ObjectInputStream inStream = new ObjectInputStream(new BufferedInputStream(fileIn))) {
+		try (ObjectInputStream inStream = new ObjectInputStream(bufferedStream)) {
 			if (!inStream.readUTF().startsWith("Data file version")) {
 				logger.error("Input stream is not from a valid QuPath data file!");
 			}
@@ -0,0 +1,434 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.lib.measurements;
+
+import java.io.ObjectStreamException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A MeasurementList that stores its values in float columns shared with all other closed lists 
+ * that have the same measurement names.
+ * <p>
+ * While the list is open it behaves much like a float list, storing names and values locally.
+ * Upon calling {@code close()} the names are interned as a shared {@link Schema} and the values 
+ * moved into a row of a column block belonging to that schema.
+ * A closed list then only stores a reference to its block and the row index - which greatly reduces 
+ * the memory needed for large numbers of detections with the same measurements.
+ * <p>
+ * Setting the value of an existing measurement writes directly into the shared column.
+ * Adding or removing a measurement reopens the list, copying its values back out of the block.
+ * <p>
+ * Blocks are only referenced by the lists that use them (and the block currently being filled), 
+ * so that storage is reclaimed whenever all the lists using a block are no longer needed.
+ * Note that rows are not reused, so lists that are repeatedly reopened and closed will waste some space 
+ * until their previous block can be reclaimed.
+ * <p>
+ * Lists are serialized as float lists, for compatibility with older versions of QuPath.
+ * <p>
+ * These lists can be instantiated through the {@link MeasurementListFactory} class.
+ *
+ * @see MeasurementColumnReader
+ */
+class ColumnarMeasurementList implements MeasurementList {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private static final int EXPAND = 8; // Initial capacity when reopening an empty list
+	
+	private static final int MIN_BLOCK_ROWS = 16;
+	private static final int MAX_BLOCK_ROWS = 4096;
+	
+	private static final Map<List<String>, WeakReference<Schema>> schemas = new WeakHashMap<>();
+	
+	/**
+	 * Block containing the values when the list is closed, or null if the list is open or empty
+	 */
+	private transient volatile Block block;
+	private transient int row;
+	
+	/**
+	 * Names and values when the list is open, or null if the list is closed or empty
+	 */
+	private transient OpenValues open;
+	
+	ColumnarMeasurementList(int capacity) {
+		if (capacity > 0)
+			open = new OpenValues(capacity);
+	}
+	
+	/**
+	 * Read values for the specified columns directly from the shared block.
+	 * @param schema the schema used to determine the column indices
+	 * @param columns column indices, or -1 for a missing measurement
+	 * @param values array to which values should be written
+	 * @return true if the values could be read, false if the list no longer uses the specified schema
+	 */
+	boolean readValues(Schema schema, int[] columns, float[] values) {
+		var block = this.block;
+		if (block == null || block.schema != schema)
+			return false;
+		int row = this.row;
+		var blockColumns = block.columns;
+		for (int i = 0; i < columns.length; i++) {
+			int c = columns[i];
+			values[i] = c < 0 ? Float.NaN : blockColumns[c][row];
+		}
+		return true;
+	}
+	
+	/**
+	 * Get the schema used by this list, or null if the list is open or empty.
+	 * @return
+	 */
+	Schema getSchema() {
+		var block = this.block;
+		return block == null ? null : block.schema;
+	}
+	
+	/**
+	 * Get the shared, interned schema for the specified measurement names.
+	 * @param names
+	 * @return
+	 */
+	static Schema getSchema(List<String> names) {
+		synchronized (schemas) {
+			var ref = schemas.get(names);
+			var schema = ref == null ? null : ref.get();
+			if (schema == null) {
+				schema = new Schema(names);
+				schemas.put(schema.names, new WeakReference<>(schema));
+			}
+			return schema;
+		}
+	}
+
+	@Override
+	public synchronized boolean addMeasurement(String name, double value) {
+		ensureListOpen().add(name, (float)value);
+		return true;
+	}
+
+	@Override
+	public Measurement putMeasurement(Measurement measurement) {
+		if (measurement.isDynamic())
+			throw new UnsupportedOperationException("This MeasurementList does not support dynamic measurements");
+		String name = measurement.getName();
+		synchronized (this) {
+			Measurement previous = null;
+			if (containsNamedMeasurement(name))
+				previous = MeasurementFactory.createMeasurement(name, getMeasurementValue(name));
+			putMeasurement(name, measurement.getValue());
+			return previous;
+		}
+	}
+
+	@Override
+	public synchronized void putMeasurement(String name, double value) {
+		if (block != null) {
+			int col = block.schema.getIndex(name);
+			if (col >= 0) {
+				block.columns[col][row] = (float)value;
+				return;
+			}
+		}
+		var open = ensureListOpen();
+		int ind = open.names.indexOf(name);
+		if (ind >= 0)
+			open.values[ind] = (float)value;
+		else
+			open.add(name, (float)value);
+	}
+
+	@Override
+	public List<String> getMeasurementNames() {
+		var block = this.block;
+		if (block != null)
+			return block.schema.names;
+		var open = this.open;
+		if (open == null || open.names.isEmpty())
+			return Collections.emptyList();
+		return Collections.unmodifiableList(open.names);
+	}
+
+	@Override
+	public String getMeasurementName(int ind) {
+		return getMeasurementNames().get(ind);
+	}
+
+	@Override
+	public double getMeasurementValue(int ind) {
+		var block = this.block;
+		if (block != null) {
+			if (ind >= 0 && ind < block.columns.length)
+				return block.columns[ind][row];
+			return Double.NaN;
+		}
+		var open = this.open;
+		if (open != null && ind >= 0 && ind < open.names.size())
+			return open.values[ind];
+		return Double.NaN;
+	}
+
+	@Override
+	public double getMeasurementValue(String name) {
+		var block = this.block;
+		if (block != null) {
+			int col = block.schema.getIndex(name);
+			return col < 0 ? Double.NaN : block.columns[col][row];
+		}
+		var open = this.open;
+		if (open == null)
+			return Double.NaN;
+		return getMeasurementValue(open.names.indexOf(name));
+	}
+
+	@Override
+	public boolean containsNamedMeasurement(String name) {
+		var block = this.block;
+		if (block != null)
+			return block.schema.getIndex(name) >= 0;
+		var open = this.open;
+		return open != null && open.names.contains(name);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	@Override
+	public int size() {
+		var block = this.block;
+		if (block != null)
+			return block.columns.length;
+		var open = this.open;
+		return open == null ? 0 : open.names.size();
+	}
+
+	@Override
+	public boolean supportsDynamicMeasurements() {
+		return false;
+	}
+
+	@Override
+	public synchronized void close() {
+		if (open == null)
+			return;
+		if (open.names.isEmpty()) {
+			open = null;
+			return;
+		}
+		var schema = getSchema(open.names);
+		Block block;
+		int row;
+		synchronized (schema) {
+			block = schema.allocate();
+			row = block.nextRow++;
+		}
+		var values = open.values;
+		for (int c = 0; c < block.columns.length; c++)
+			block.columns[c][row] = values[c];
+		this.row = row;
+		this.block = block;
+		this.open = null;
+	}
+
+	@Override
+	public synchronized void removeMeasurements(String... measurementNames) {
+		var open = ensureListOpen();
+		for (String name : measurementNames) {
+			int ind = open.names.indexOf(name);
+			if (ind < 0)
+				continue;
+			open.names.remove(ind);
+			System.arraycopy(open.values, ind+1, open.values, ind, open.values.length-ind-1);
+		}
+	}
+
+	@Override
+	public synchronized void clear() {
+		block = null;
+		open = null;
+	}
+	
+	/**
+	 * Ensure the list is open, copying values out of the shared block if necessary.
+	 * @return
+	 */
+	private OpenValues ensureListOpen() {
+		if (open != null)
+			return open;
+		var block = this.block;
+		if (block == null) {
+			open = new OpenValues(EXPAND);
+		} else {
+			int n = block.columns.length;
+			open = new OpenValues(n);
+			open.names.addAll(block.schema.names);
+			for (int c = 0; c < n; c++)
+				open.values[c] = block.columns[c][row];
+			this.block = null;
+		}
+		return open;
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		int n = size();
+		sb.append("[");
+		for (int i = 0; i < n; i++) {
+			sb.append(getMeasurementName(i)).append(": ").append(getMeasurementValue(i));
+			if (i < n - 1)
+				sb.append(", ");
+		}
+		sb.append("]");
+		return sb.toString();
+	}
+	
+	/**
+	 * Serialize as a float list, so that data files can still be read by versions of QuPath 
+	 * that do not include columnar lists.
+	 * Deserialized lists are therefore no longer columnar.
+	 * @return
+	 * @throws ObjectStreamException
+	 */
+	private synchronized Object writeReplace() throws ObjectStreamException {
+		int n = size();
+		var list = new NumericMeasurementList.FloatList(n);
+		for (int i = 0; i < n; i++)
+			list.addMeasurement(getMeasurementName(i), getMeasurementValue(i));
+		list.close();
+		return list;
+	}
+	
+	
+	/**
+	 * Names and values stored locally while a list is open.
+	 */
+	private static class OpenValues {
+		
+		private final List<String> names;
+		private float[] values;
+		
+		OpenValues(int capacity) {
+			names = new ArrayList<>(capacity);
+			values = new float[capacity];
+		}
+		
+		void add(String name, float value) {
+			int ind = names.size();
+			names.add(name);
+			if (values.length <= ind)
+				values = Arrays.copyOf(values, Math.max(values.length * 2, ind + 1));
+			values[ind] = value;
+		}
+		
+	}
+	
+	
+	/**
+	 * Interned measurement names, shared by all closed lists with the same measurements.
+	 */
+	static class Schema {
+		
+		private final List<String> names;
+		private final Map<String, Integer> map;
+		
+		/**
+		 * The block currently being filled, guarded by this schema
+		 */
+		private Block current;
+		
+		private Schema(List<String> names) {
+			this.names = Collections.unmodifiableList(new ArrayList<>(names));
+			this.map = new HashMap<>();
+			int i = 0;
+			for (String name : this.names) {
+				map.putIfAbsent(name, i);
+				i++;
+			}
+		}
+		
+		/**
+		 * Get the unmodifiable measurement names.
+		 * @return
+		 */
+		List<String> getNames() {
+			return names;
+		}
+		
+		/**
+		 * Get the column index for a measurement name, or -1 if the measurement is not found.
+		 * @param name
+		 * @return
+		 */
+		int getIndex(String name) {
+			Integer ind = map.get(name);
+			return ind == null ? -1 : ind.intValue();
+		}
+		
+		/**
+		 * Get a block with at least one free row.
+		 * The caller must hold the schema lock, and claim the row before releasing it.
+		 * @return
+		 */
+		private Block allocate() {
+			assert Thread.holdsLock(this);
+			if (current == null || current.nextRow >= current.capacity()) {
+				int nRows = current == null ? MIN_BLOCK_ROWS : Math.min(MAX_BLOCK_ROWS, current.capacity() * 2);
+				current = new Block(this, nRows);
+			}
+			return current;
+		}
+		
+	}
+	
+	/**
+	 * Column-oriented storage for a fixed number of rows of a schema.
+	 */
+	static class Block {
+		
+		private final Schema schema;
+		private final float[][] columns;
+		private int nextRow;
+		
+		private Block(Schema schema, int nRows) {
+			this.schema = schema;
+			this.columns = new float[schema.names.size()][nRows];
+		}
+		
+		private int capacity() {
+			return columns[0].length;
+		}
+		
+	}
+
+}
@@ -0,0 +1,159 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.lib.measurements;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import qupath.lib.measurements.ColumnarMeasurementList.Schema;
+
+/**
+ * Helper class to read the values of specific measurements from many measurement lists.
+ * <p>
+ * For lists created with {@link MeasurementList.MeasurementListType#COLUMNAR} the column indices are resolved 
+ * once for each shared schema, and values are then read directly from the shared column storage - 
+ * avoiding a name lookup for every value.
+ * Other lists are supported, but are queried by name.
+ * <p>
+ * Instances cache the most recent schema, and so are not thread-safe; a reader should be created for each thread.
+ */
+public class MeasurementColumnReader {
+	
+	private final List<String> names;
+	private final float[] values;
+	
+	private Schema lastSchema;
+	private int[] lastColumns;
+	
+	private MeasurementColumnReader(Collection<String> names) {
+		this.names = Collections.unmodifiableList(new ArrayList<>(names));
+		this.values = new float[this.names.size()];
+	}
+	
+	/**
+	 * Create a reader for the specified measurement names.
+	 * @param names
+	 * @return
+	 */
+	public static MeasurementColumnReader create(Collection<String> names) {
+		return new MeasurementColumnReader(names);
+	}
+	
+	/**
+	 * Create a reader for the specified measurement names.
+	 * @param names
+	 * @return
+	 */
+	public static MeasurementColumnReader create(String... names) {
+		return new MeasurementColumnReader(Arrays.asList(names));
+	}
+	
+	/**
+	 * Get the names of the measurements read by this reader.
+	 * @return
+	 */
+	public List<String> getNames() {
+		return names;
+	}
+	
+	/**
+	 * Read the values of all measurements from a list, putting them into a buffer in the order 
+	 * given by {@link #getNames()}. Missing measurements are given the value NaN.
+	 * @param list
+	 * @param buffer
+	 */
+	public void readValues(MeasurementList list, FloatBuffer buffer) {
+		if (readColumnar(list)) {
+			buffer.put(values);
+			return;
+		}
+		for (String name : names)
+			buffer.put((float)list.getMeasurementValue(name));
+	}
+	
+	/**
+	 * Read the values of all measurements from a list, putting them into an array in the order 
+	 * given by {@link #getNames()}. Missing measurements are given the value NaN.
+	 * @param list
+	 * @param array the array into which values should be written
+	 * @param offset the first index of the array to use
+	 */
+	public void readValues(MeasurementList list, double[] array, int offset) {
+		if (readColumnar(list)) {
+			for (int i = 0; i < values.length; i++)
+				array[offset + i] = values[i];
+			return;
+		}
+		for (int i = 0; i < values.length; i++)
+			array[offset + i] = list.getMeasurementValue(names.get(i));
+	}
+	
+	/**
+	 * Read the values of all measurements from the specified lists, with one array per measurement.
+	 * @param lists
+	 * @return an array of columns, in the order given by {@link #getNames()}
+	 */
+	public double[][] readColumns(Collection<? extends MeasurementList> lists) {
+		int n = lists.size();
+		double[][] columns = new double[names.size()][n];
+		int row = 0;
+		for (var list : lists) {
+			if (readColumnar(list)) {
+				for (int c = 0; c < values.length; c++)
+					columns[c][row] = values[c];
+			} else {
+				for (int c = 0; c < values.length; c++)
+					columns[c][row] = list.getMeasurementValue(names.get(c));
+			}
+			row++;
+		}
+		return columns;
+	}
+	
+	/**
+	 * Try to read values directly from shared columns into {@link #values}.
+	 * @param list
+	 * @return true if values were read, false if the list must be queried by name
+	 */
+	private boolean readColumnar(MeasurementList list) {
+		if (list instanceof ColumnarMeasurementList) {
+			var columnar = (ColumnarMeasurementList)list;
+			var schema = columnar.getSchema();
+			if (schema != null) {
+				if (schema != lastSchema) {
+					lastColumns = new int[names.size()];
+					for (int i = 0; i < lastColumns.length; i++)
+						lastColumns[i] = schema.getIndex(names.get(i));
+					lastSchema = schema;
+				}
+				return columnar.readValues(schema, lastColumns, values);
+			}
+		}
+		return false;
+	}
+
+}
@@ -54,7 +54,14 @@ public interface MeasurementList extends Serializable, AutoCloseable {
 		/**
 		 * A list backed by an array of floats.
 		 */
-		FLOAT
+		FLOAT,
+		/**
+		 * A list storing floats in columns shared by all closed lists with the same measurement names.
+		 * This is the most memory-efficient option for large numbers of objects with the same measurements, 
+		 * provided each list is closed once it is fully populated.
+		 * @see MeasurementColumnReader
+		 */
+		COLUMNAR
 	}
 	
 	/**
@@ -26,7 +26,7 @@ package qupath.lib.measurements;
 /**
  * Factory for creating new measurement lists.
  * <p>
- * For efficiently, (static) Float lists are generally preferred for detection objects.
+ * For efficiently, (static) columnar lists are generally preferred for detection objects.
  * 
  * @author Pete Bankhead
  *
@@ -47,6 +47,8 @@ public class MeasurementListFactory {
 			return new NumericMeasurementList.DoubleList(capacity);
 		case FLOAT:
 			return new NumericMeasurementList.FloatList(capacity);
+		case COLUMNAR:
+			return new ColumnarMeasurementList(capacity);
 		case GENERAL:
 		default:
 			return new DefaultMeasurementList(capacity);
@@ -25,8 +25,10 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.locationtech.jts.algorithm.Centroid;
@@ -99,7 +101,37 @@ public class CellTools {
 			}
 			map.put(cell, cell.getROI().getGeometry());
  		}
-		return detectionsToCells(map);
+		return detectionsToCells(map, map.keySet());
+	}
+	
+	/**
+	 * Adjust cell boundary ROIs to be non-overlapping, by assigning overlaps to the cell with the closest nucleus - 
+	 * taking into consideration additional neighboring cells.
+	 * <p>
+	 * This is useful when cells are created in batches, since the neighbors can include cells from adjacent batches.
+	 * Only the cells are returned; the neighbors are not adjusted.
+	 * @param cells input cells
+	 * @param neighbors additional cells that should constrain the boundaries of the input cells
+	 * @return a new list of cells, potentially containing some of the original cells and other adjusted cells
+	 */
+	public static List<PathObject> constrainCellOverlaps(Collection<? extends PathObject> cells, Collection<? extends PathObject> neighbors) {
+		var map = new HashMap<PathObject, Geometry>();
+		var keep = new HashSet<PathObject>();
+		for (var cell : cells) {
+			if (!cell.isCell()) {
+				logger.warn("{} is not a cell - will be skipped!", cell);
+				continue;
+			}
+			map.put(cell, cell.getROI().getGeometry());
+			keep.add(cell);
+ 		}
+		if (keep.isEmpty())
+			return Collections.emptyList();
+		for (var cell : neighbors) {
+			if (cell.isCell() && !map.containsKey(cell))
+				map.put(cell, cell.getROI().getGeometry());
+		}
+		return detectionsToCells(map, keep);
 	}
 	
 	/**
@@ -121,7 +153,7 @@ public class CellTools {
 			var geomCell = estimateCellBoundary(geomNucleus, distance, nucleusScale, transform);
 			map.put(detection, geomCell);
 		}
-		return detectionsToCells(map);
+		return detectionsToCells(map, map.keySet());
 	}
 	
 	/**
@@ -161,9 +193,10 @@ public class CellTools {
 	 * Convert detections to cells, using pre-computed boundary geometry estimates.
 	 * This purpose of this method is to apply an additional Voronoi constraint to refine the estimates.
 	 * @param cellBoundaryMap
+	 * @param keep detections for which cells should be returned; others in the map are used only as neighbors
 	 * @return
 	 */
-	private static List<PathObject> detectionsToCells(Map<PathObject, Geometry> cellBoundaryMap) {
+	private static List<PathObject> detectionsToCells(Map<PathObject, Geometry> cellBoundaryMap, Set<PathObject> keep) {
 		
 		// Creating a large, dense triangulation can be very slow
 		// Here, we create a spatial cache with a mapping to the preferred expanded Geometry
@@ -186,14 +219,14 @@ public class CellTools {
 			}
 			cache.build();
 			var items = cache.itemsTree();
-			return detectionsToCellsSubtree(cache, items, cellBoundaryMap, envelopes);
+			return detectionsToCellsSubtree(cache, items, cellBoundaryMap, envelopes, keep);
 		} else
-			return detectionsToCells(cellBoundaryMap.keySet(), cellBoundaryMap.keySet(), cellBoundaryMap);
+			return detectionsToCells(keep, cellBoundaryMap.keySet(), cellBoundaryMap);
 	}
 	
 	
 	@SuppressWarnings({ "unchecked", "rawtypes" })
-	private static List<PathObject> detectionsToCellsSubtree(STRtree tree, List<?> list, Map<PathObject, Geometry> cellBoundaryMap, Map<PathObject, Envelope> envelopes) {
+	private static List<PathObject> detectionsToCellsSubtree(STRtree tree, List<?> list, Map<PathObject, Geometry> cellBoundaryMap, Map<PathObject, Envelope> envelopes, Set<PathObject> keep) {
 		if (list.isEmpty())
 			return Collections.emptyList();
 		var first = list.get(0);
@@ -202,9 +235,15 @@ public class CellTools {
 
 		if (first instanceof PathObject) {
 			var env = new Envelope();
-			var pathObjects = (Collection<PathObject>)list;
-			for (var pathObject : pathObjects)
-				env.expandToInclude(envelopes.get(pathObject));
+			var pathObjects = new ArrayList<PathObject>();
+			for (var pathObject : (Collection<PathObject>)list) {
+				if (keep.contains(pathObject)) {
+					pathObjects.add(pathObject);
+					env.expandToInclude(envelopes.get(pathObject));
+				}
+			}
+			if (pathObjects.isEmpty())
+				return Collections.emptyList();
 			var allObjects = (List<PathObject>)tree.query(env);
 			try {
 				return detectionsToCells(pathObjects, allObjects, cellBoundaryMap);
@@ -215,13 +254,13 @@ public class CellTools {
 		} else if (first instanceof List) {
 			if (doParallel) {
 				return list.parallelStream()
-						.map(sublist -> detectionsToCellsSubtree(tree, (List)sublist, cellBoundaryMap, envelopes))
+						.map(sublist -> detectionsToCellsSubtree(tree, (List)sublist, cellBoundaryMap, envelopes, keep))
 						.flatMap(Collection::stream)
 						.collect(Collectors.toList());
 			} else {
 				var cells = new ArrayList<PathObject>();
 				for (var sublist : list)
-					cells.addAll(detectionsToCellsSubtree(tree, (List)sublist, cellBoundaryMap, envelopes));
+					cells.addAll(detectionsToCellsSubtree(tree, (List)sublist, cellBoundaryMap, envelopes, keep));
 				return cells;
 			}
 		} else
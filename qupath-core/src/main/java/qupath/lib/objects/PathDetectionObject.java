@@ -84,11 +84,11 @@ public class PathDetectionObject extends PathROIObject {
 	}
 	
 	/**
-	 * Default to a simple, float measurement list.
+	 * Default to a columnar float measurement list, which shares storage between detections with the same measurements.
 	 */
 	@Override
 	protected MeasurementList createEmptyMeasurementList() {
-		return MeasurementListFactory.createMeasurementList(0, MeasurementListType.FLOAT);
+		return MeasurementListFactory.createMeasurementList(0, MeasurementListType.COLUMNAR);
 	}
 	
 }
@@ -0,0 +1,315 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.lib.objects.hierarchy;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.objects.PathAnnotationObject;
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.TMACoreObject;
+import qupath.lib.regions.ImageRegion;
+import qupath.lib.roi.interfaces.ROI;
+
+/**
+ * Helper class to insert a batch of objects into a {@link PathObjectHierarchy}, 
+ * using the same rules as {@link PathObjectHierarchy#insertPathObject(PathObject, boolean)}.
+ * <p>
+ * Rather than scanning all the children of each potential parent, only objects with bounding boxes 
+ * intersecting the object being inserted are considered, using the spatial index of the {@link PathObjectTileCache}. 
+ * The cache is updated as the objects are inserted, so that it does not need to be rebuilt afterwards.
+ * <p>
+ * Objects within the batch are split into groups that do not overlap one another. 
+ * Because an object can only become the parent or child of an object that it overlaps, these groups are independent 
+ * and can be resolved in parallel. All changes are applied to the hierarchy at the end.
+ * <p>
+ * Note that this class does not acquire the hierarchy lock, nor does it fire any events: 
+ * this is the responsibility of the caller. The previous parents of any objects that are moved are recorded with the hierarchy, 
+ * to be included in the next event.
+ */
+class IncrementalHierarchyResolver {
+	
+	private final static Logger logger = LoggerFactory.getLogger(IncrementalHierarchyResolver.class);
+	
+	/**
+	 * Minimum number of objects in a batch before independent groups are resolved in parallel.
+	 */
+	private static final int MIN_PARALLEL_OBJECTS = 100;
+	
+	private final PathObjectHierarchy hierarchy;
+	private final PathObjectTileCache tileCache;
+	private final PathObject rootObject;
+	private final boolean hasTMAGrid;
+	
+	IncrementalHierarchyResolver(PathObjectHierarchy hierarchy, PathObjectTileCache tileCache) {
+		this.hierarchy = hierarchy;
+		this.tileCache = tileCache;
+		this.rootObject = hierarchy.getRootObjectWithoutLoading();
+		// Request this now, since the hierarchy lock can't be acquired from other threads
+		this.hasTMAGrid = hierarchy.getTMAGrid() != null;
+	}
+	
+	/**
+	 * Insert objects into the hierarchy. Any objects that are already in the hierarchy are first removed 
+	 * (with their children retained by the previous parent), and then reinserted.
+	 * <p>
+	 * TMA cores must not be included.
+	 * 
+	 * @param pathObjects the objects to insert
+	 */
+	void insertPathObjects(Collection<? extends PathObject> pathObjects) {
+		long startTime = System.currentTimeMillis();
+		
+		var batch = new ArrayList<PathObject>(new LinkedHashSet<>(pathObjects));
+		
+		detach(batch);
+		tileCache.updateObjects(batch);
+		
+		// Insert from largest to smallest, so that parents are always inserted before their children
+		batch.sort(PathObjectHierarchy.HIERARCHY_COMPARATOR.reversed());
+		var groups = groupOverlappingObjects(batch);
+		
+		var stream = groups.size() > 1 && batch.size() >= MIN_PARALLEL_OBJECTS ? groups.parallelStream() : groups.stream();
+		var plans = stream.map(group -> resolveGroup(group)).collect(Collectors.toList());
+		
+		// Apply all changes, grouping children by their new parent
+		Map<PathObject, List<PathObject>> childrenByParent = new LinkedHashMap<>();
+		for (var plan : plans) {
+			for (var entry : plan.entrySet())
+				childrenByParent.computeIfAbsent(entry.getValue(), p -> new ArrayList<>()).add(entry.getKey());
+		}
+		for (var entry : childrenByParent.entrySet()) {
+			for (var child : entry.getValue())
+				hierarchy.recordPreviousParent(child);
+			entry.getKey().addPathObjects(entry.getValue());
+		}
+		
+		long endTime = System.currentTimeMillis();
+		logger.debug("Inserted {} objects ({} independent groups) in {} ms", batch.size(), groups.size(), endTime - startTime);
+	}
+	
+	/**
+	 * Remove any objects that are currently in the hierarchy, assigning their children (if not also being removed) 
+	 * to their current parent. Objects are removed from the deepest level upwards, so that children are passed 
+	 * up to the first ancestor that is not being removed.
+	 */
+	private void detach(List<PathObject> pathObjects) {
+		var set = Collections.newSetFromMap(new IdentityHashMap<PathObject, Boolean>());
+		set.addAll(pathObjects);
+		var attached = pathObjects.stream()
+				.filter(p -> p.getParent() != null)
+				.sorted(Comparator.comparingInt(PathObject::getLevel).reversed())
+				.collect(Collectors.toList());
+		for (var pathObject : attached) {
+			var parent = pathObject.getParent();
+			if (pathObject.hasChildren()) {
+				var children = new ArrayList<>(pathObject.getChildObjects());
+				children.removeIf(c -> set.contains(c));
+				if (!children.isEmpty()) {
+					for (var child : children)
+						hierarchy.recordPreviousParent(child);
+					parent.addPathObjects(children);
+				}
+			}
+			hierarchy.recordPreviousParent(pathObject);
+			parent.removePathObject(pathObject);
+		}
+	}
+	
+	/**
+	 * Split objects into groups, where objects in different groups have non-overlapping bounding boxes 
+	 * (or are on different planes). The order of objects within each group is preserved.
+	 */
+	private static List<List<PathObject>> groupOverlappingObjects(List<PathObject> pathObjects) {
+		int n = pathObjects.size();
+		if (n <= 1)
+			return Collections.singletonList(pathObjects);
+		
+		var tree = new STRtree();
+		for (int i = 0; i < n; i++) {
+			var roi = pathObjects.get(i).getROI();
+			if (roi != null)
+				tree.insert(getEnvelope(roi), Integer.valueOf(i));
+		}
+		
+		// Use union-find to merge overlapping objects into groups
+		int[] groupParents = new int[n];
+		for (int i = 0; i < n; i++)
+			groupParents[i] = i;
+		for (int i = 0; i < n; i++) {
+			var roi = pathObjects.get(i).getROI();
+			if (roi == null)
+				continue;
+			for (var item : tree.query(getEnvelope(roi))) {
+				int j = (Integer)item;
+				if (j != i && samePlane(roi, pathObjects.get(j).getROI()))
+					union(groupParents, i, j);
+			}
+		}
+		
+		Map<Integer, List<PathObject>> groups = new LinkedHashMap<>();
+		for (int i = 0; i < n; i++)
+			groups.computeIfAbsent(find(groupParents, i), k -> new ArrayList<>()).add(pathObjects.get(i));
+		return new ArrayList<>(groups.values());
+	}
+	
+	private static int find(int[] groupParents, int i) {
+		while (groupParents[i] != i) {
+			groupParents[i] = groupParents[groupParents[i]];
+			i = groupParents[i];
+		}
+		return i;
+	}
+	
+	private static void union(int[] groupParents, int i, int j) {
+		int rootI = find(groupParents, i);
+		int rootJ = find(groupParents, j);
+		if (rootI != rootJ)
+			groupParents[Math.max(rootI, rootJ)] = Math.min(rootI, rootJ);
+	}
+	
+	/**
+	 * Determine the new parent for each object in a group, and for any existing objects that should become 
+	 * children of an object in the group. No changes are made to the hierarchy.
+	 * 
+	 * @param group objects to insert, sorted so that potential parents come first
+	 * @return a map of objects to their new parents, in the order they were determined
+	 */
+	private Map<PathObject, PathObject> resolveGroup(List<PathObject> group) {
+		Map<PathObject, PathObject> newParents = new LinkedHashMap<>();
+		List<PathObject> inserted = new ArrayList<>();
+		for (var pathObject : group) {
+			var parent = findParent(pathObject, inserted);
+			newParents.put(pathObject, parent);
+			if (!pathObject.isDetection() && pathObject.hasROI()) {
+				for (var child : findChildren(pathObject, parent, inserted, newParents))
+					newParents.put(child, pathObject);
+			}
+			inserted.add(pathObject);
+		}
+		return newParents;
+	}
+	
+	/**
+	 * Find the parent for an object, using the logic of {@link PathObjectHierarchy#HIERARCHY_COMPARATOR}.
+	 * 
+	 * @param pathObject the object to insert
+	 * @param inserted objects from the same group that have already been assigned a parent
+	 * @return
+	 */
+	private PathObject findParent(PathObject pathObject, List<PathObject> inserted) {
+		var roi = pathObject.getROI();
+		if (roi == null)
+			return rootObject;
+		
+		var region = ImageRegion.createInstance(roi);
+		Set<PathObject> candidates = new HashSet<>();
+		tileCache.getObjectsForRegion(PathAnnotationObject.class, region, candidates, true);
+		if (hasTMAGrid)
+			tileCache.getObjectsForRegion(TMACoreObject.class, region, candidates, true);
+		for (var previous : inserted) {
+			if (!previous.isDetection() && overlaps(roi, previous.getROI()))
+				candidates.add(previous);
+		}
+		
+		var possibleParents = new ArrayList<>(candidates);
+		possibleParents.sort(PathObjectHierarchy.HIERARCHY_COMPARATOR);
+		Geometry geometry = null;
+		for (var possibleParent : possibleParents) {
+			if (possibleParent == pathObject || possibleParent.isDetection() || possibleParent.isRootObject())
+				continue;
+			// If we're adding a detection, check centroid; otherwise check covers
+			boolean isParent;
+			if (pathObject.isDetection())
+				isParent = PathObjectTileCache.containsCentroid(tileCache.getLocator(possibleParent.getROI()), pathObject);
+			else {
+				if (geometry == null)
+					geometry = roi.getGeometry();
+				isParent = PathObjectTileCache.covers(tileCache.getPreparedGeometry(possibleParent.getROI()), geometry);
+			}
+			if (isParent)
+				return possibleParent;
+		}
+		return rootObject;
+	}
+	
+	/**
+	 * Find the objects that should become children of a newly-inserted object.
+	 * These are the objects that currently share the same parent, and fall inside the object's ROI.
+	 * 
+	 * @param pathObject the object being inserted
+	 * @param parent the new parent of the object being inserted
+	 * @param inserted objects from the same group that have already been assigned a parent
+	 * @param newParents new parents for objects in the same group, which take precedence over the current parents
+	 * @return
+	 */
+	private Collection<PathObject> findChildren(PathObject pathObject, PathObject parent, List<PathObject> inserted, Map<PathObject, PathObject> newParents) {
+		var roi = pathObject.getROI();
+		var region = ImageRegion.createInstance(roi);
+		Collection<PathObject> candidates = new HashSet<>();
+		tileCache.getObjectsForRegion(null, region, candidates, true);
+		for (var previous : inserted) {
+			if (overlaps(roi, previous.getROI()))
+				candidates.add(previous);
+		}
+		// Beware that we could have 'orphaned' detections, which belong to the parent of a TMA core
+		var orphanParent = parent.isTMACore() ? parent.getParent() : null;
+		candidates.removeIf(c -> {
+			if (c == pathObject || c.isTMACore() || c.isRootObject())
+				return true;
+			var currentParent = newParents.containsKey(c) ? newParents.get(c) : c.getParent();
+			return !(currentParent == parent || (orphanParent != null && c.isDetection() && currentParent == orphanParent));
+		});
+		return hierarchy.filterObjectsForROI(roi, candidates);
+	}
+	
+	private static Envelope getEnvelope(ROI roi) {
+		return new Envelope(roi.getBoundsX(), roi.getBoundsX() + roi.getBoundsWidth(), 
+				roi.getBoundsY(), roi.getBoundsY() + roi.getBoundsHeight());
+	}
+	
+	private static boolean overlaps(ROI roi, ROI roi2) {
+		return roi2 != null && samePlane(roi, roi2) && getEnvelope(roi).intersects(getEnvelope(roi2));
+	}
+	
+	private static boolean samePlane(ROI roi, ROI roi2) {
+		return roi2 != null && PathObjectHierarchy.samePlane(roi, roi2, false);
+	}
+
+}
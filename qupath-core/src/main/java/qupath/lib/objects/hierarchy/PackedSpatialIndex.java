@@ -0,0 +1,475 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.lib.objects.hierarchy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import qupath.lib.objects.PathObject;
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.regions.ImageRegion;
+import qupath.lib.roi.interfaces.ROI;
+
+/**
+ * Spatial index for objects with ROIs, based on a packed R-tree for each z-slice and timepoint.
+ * <p>
+ * The tree for each plane is bulk-loaded using the Sort-Tile-Recursive (STR) algorithm, 
+ * and stores the bounding boxes of all nodes in a single primitive array. 
+ * Trees are immutable: objects added later are kept in a small pending buffer (and removed objects in a small set), 
+ * and the tree is rebuilt whenever either of these becomes too large.
+ * <p>
+ * Modifications create a new snapshot of the affected plane and must be synchronized, 
+ * but queries only ever see a complete snapshot and do not require any locking.
+ */
+class PackedSpatialIndex {
+	
+	/**
+	 * Maximum number of children for each node of the tree.
+	 */
+	static final int NODE_SIZE = 16;
+	
+	private static final int MIN_CHANGES_BEFORE_REBUILD = 256;
+	private static final int MAX_CHANGES_BEFORE_REBUILD = 4096;
+	
+	private volatile Map<ImagePlane, Snapshot> planes = Collections.emptyMap();
+	
+	/**
+	 * Create a spatial index containing the specified objects.
+	 * Objects without ROIs are ignored.
+	 * @param pathObjects
+	 * @return
+	 */
+	static PackedSpatialIndex build(Collection<? extends PathObject> pathObjects) {
+		var index = new PackedSpatialIndex();
+		var planes = new HashMap<ImagePlane, Snapshot>();
+		for (var entry : groupByPlane(pathObjects).entrySet())
+			planes.put(entry.getKey(), new Snapshot(PackedTree.build(entry.getValue())));
+		index.planes = Collections.unmodifiableMap(planes);
+		return index;
+	}
+	
+	/**
+	 * Add objects to the index.
+	 * @param pathObjects
+	 */
+	synchronized void insert(Collection<? extends PathObject> pathObjects) {
+		if (pathObjects.isEmpty())
+			return;
+		var newPlanes = new HashMap<>(planes);
+		for (var entry : groupByPlane(pathObjects).entrySet()) {
+			var snapshot = newPlanes.getOrDefault(entry.getKey(), Snapshot.EMPTY);
+			newPlanes.put(entry.getKey(), snapshot.insert(entry.getValue()));
+		}
+		planes = Collections.unmodifiableMap(newPlanes);
+	}
+	
+	/**
+	 * Remove objects from the index.
+	 * <p>
+	 * Note that objects are removed from all planes, in case their ROIs have been changed since they were added.
+	 * @param pathObjects
+	 */
+	synchronized void remove(Collection<? extends PathObject> pathObjects) {
+		if (pathObjects.isEmpty() || planes.isEmpty())
+			return;
+		var newPlanes = new HashMap<ImagePlane, Snapshot>();
+		for (var entry : planes.entrySet()) {
+			var snapshot = entry.getValue().remove(pathObjects);
+			if (snapshot.size() > 0)
+				newPlanes.put(entry.getKey(), snapshot);
+		}
+		planes = Collections.unmodifiableMap(newPlanes);
+	}
+	
+	/**
+	 * Visit all objects with bounding boxes that intersect a region.
+	 * @param region the region, or null if all objects should be visited
+	 * @param visitor predicate to call for each object; querying stops whenever this returns false
+	 * @return true if all objects were visited, false if the query stopped early
+	 */
+	boolean query(ImageRegion region, Predicate<PathObject> visitor) {
+		var current = planes;
+		if (region == null) {
+			for (var snapshot : current.values()) {
+				if (!snapshot.query(-Double.MAX_VALUE, -Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE, true, visitor))
+					return false;
+			}
+			return true;
+		}
+		var snapshot = current.get(ImagePlane.getPlane(region));
+		if (snapshot == null)
+			return true;
+		return snapshot.query(region.getMinX(), region.getMinY(), region.getMaxX(), region.getMaxY(), false, visitor);
+	}
+	
+	/**
+	 * Get the number of objects in the index.
+	 * @return
+	 */
+	int size() {
+		int n = 0;
+		for (var snapshot : planes.values())
+			n += snapshot.size();
+		return n;
+	}
+	
+	private static Map<ImagePlane, List<PathObject>> groupByPlane(Collection<? extends PathObject> pathObjects) {
+		Map<ImagePlane, List<PathObject>> map = new LinkedHashMap<>();
+		for (var pathObject : pathObjects) {
+			var roi = pathObject.getROI();
+			if (roi == null)
+				continue;
+			map.computeIfAbsent(ImagePlane.getPlane(roi), p -> new ArrayList<>()).add(pathObject);
+		}
+		return map;
+	}
+	
+	
+	/**
+	 * Immutable view of the objects on a single plane.
+	 */
+	private static class Snapshot {
+		
+		private static final Snapshot EMPTY = new Snapshot(PackedTree.EMPTY);
+		
+		private final PackedTree tree;
+		private final PathObject[] pending;
+		private final Set<PathObject> removed;
+		
+		Snapshot(PackedTree tree) {
+			this(tree, new PathObject[0], Collections.emptySet());
+		}
+		
+		private Snapshot(PackedTree tree, PathObject[] pending, Set<PathObject> removed) {
+			this.tree = tree;
+			this.pending = pending;
+			this.removed = removed;
+		}
+		
+		int size() {
+			return tree.size() - removed.size() + pending.length;
+		}
+		
+		Snapshot insert(List<PathObject> pathObjects) {
+			// Avoid adding the same object twice
+			var newPending = new ArrayList<PathObject>(pending.length + pathObjects.size());
+			var added = Collections.newSetFromMap(new IdentityHashMap<PathObject, Boolean>());
+			added.addAll(pathObjects);
+			for (var pathObject : pending) {
+				if (!added.contains(pathObject))
+					newPending.add(pathObject);
+			}
+			newPending.addAll(added);
+			return update(newPending, removed);
+		}
+		
+		Snapshot remove(Collection<? extends PathObject> pathObjects) {
+			var toRemove = Collections.newSetFromMap(new IdentityHashMap<PathObject, Boolean>());
+			toRemove.addAll(pathObjects);
+			var newPending = new ArrayList<PathObject>(pending.length);
+			for (var pathObject : pending) {
+				if (!toRemove.contains(pathObject))
+					newPending.add(pathObject);
+			}
+			// Objects in the tree are hidden until the tree is rebuilt
+			// (they may also be in the pending buffer, if they have been reinserted)
+			Set<PathObject> newRemoved = removed;
+			if (tree.size() > 0) {
+				newRemoved = Collections.newSetFromMap(new IdentityHashMap<PathObject, Boolean>());
+				newRemoved.addAll(removed);
+				for (var pathObject : toRemove) {
+					if (!removed.contains(pathObject) && tree.contains(pathObject))
+						newRemoved.add(pathObject);
+				}
+			}
+			return update(newPending, newRemoved);
+		}
+		
+		private Snapshot update(List<PathObject> newPending, Set<PathObject> newRemoved) {
+			int nChanges = newPending.size() + newRemoved.size();
+			int maxChanges = Math.max(MIN_CHANGES_BEFORE_REBUILD, Math.min(MAX_CHANGES_BEFORE_REBUILD, tree.size() / 16));
+			if (nChanges <= maxChanges)
+				return new Snapshot(tree, newPending.toArray(PathObject[]::new), newRemoved);
+			// Rebuild the tree with all objects that remain
+			var all = new ArrayList<PathObject>(tree.size() + newPending.size());
+			tree.query(-Double.MAX_VALUE, -Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE, true, newRemoved, p -> all.add(p));
+			all.addAll(newPending);
+			return new Snapshot(PackedTree.build(all));
+		}
+		
+		boolean query(double minX, double minY, double maxX, double maxY, boolean all, Predicate<PathObject> visitor) {
+			if (!tree.query(minX, minY, maxX, maxY, all, removed, visitor))
+				return false;
+			for (var pathObject : pending) {
+				if ((all || intersects(pathObject.getROI(), minX, minY, maxX, maxY)) && !visitor.test(pathObject))
+					return false;
+			}
+			return true;
+		}
+		
+	}
+	
+	
+	private static boolean intersects(ROI roi, double minX, double minY, double maxX, double maxY) {
+		double x = roi.getBoundsX();
+		double y = roi.getBoundsY();
+		return x <= maxX && y <= maxY && x + roi.getBoundsWidth() >= minX && y + roi.getBoundsHeight() >= minY;
+	}
+	
+	
+	/**
+	 * Static R-tree, with nodes stored in packed arrays.
+	 * <p>
+	 * Leaves are stored first (one per object), followed by each level of internal nodes; 
+	 * the last node is the root.
+	 */
+	private static class PackedTree {
+		
+		private static final PackedTree EMPTY = new PackedTree(new PathObject[0], new double[0], new int[0], new int[0]);
+		
+		private final PathObject[] items;
+		private final double[] boxes;
+		private final int[] firstChild;
+		private final int[] levelEnds;
+		
+		private PackedTree(PathObject[] items, double[] boxes, int[] firstChild, int[] levelEnds) {
+			this.items = items;
+			this.boxes = boxes;
+			this.firstChild = firstChild;
+			this.levelEnds = levelEnds;
+		}
+		
+		int size() {
+			return items.length;
+		}
+		
+		/**
+		 * Check whether an object is in the tree.
+		 * This first searches using the current bounding box of the object, but falls back to checking 
+		 * all objects since the ROI may have been changed after the tree was built.
+		 */
+		boolean contains(PathObject pathObject) {
+			if (items.length == 0)
+				return false;
+			var roi = pathObject.getROI();
+			if (roi != null) {
+				double x = roi.getBoundsX();
+				double y = roi.getBoundsY();
+				if (!query(x, y, x + roi.getBoundsWidth(), y + roi.getBoundsHeight(), false, Collections.emptySet(), p -> p != pathObject))
+					return true;
+			}
+			for (var item : items) {
+				if (item == pathObject)
+					return true;
+			}
+			return false;
+		}
+		
+		static PackedTree build(List<? extends PathObject> pathObjects) {
+			int n = pathObjects.size();
+			if (n == 0)
+				return EMPTY;
+			
+			// Get the bounding boxes & centroids
+			double[] leafBoxes = new double[n * 4];
+			double[] cx = new double[n];
+			double[] cy = new double[n];
+			for (int i = 0; i < n; i++) {
+				var roi = pathObjects.get(i).getROI();
+				double x = roi.getBoundsX();
+				double y = roi.getBoundsY();
+				double x2 = x + roi.getBoundsWidth();
+				double y2 = y + roi.getBoundsHeight();
+				leafBoxes[i*4] = x;
+				leafBoxes[i*4+1] = y;
+				leafBoxes[i*4+2] = x2;
+				leafBoxes[i*4+3] = y2;
+				cx[i] = (x + x2) / 2.0;
+				cy[i] = (y + y2) / 2.0;
+			}
+			
+			// Sort-Tile-Recursive ordering: sort by x, split into vertical slices, then sort each slice by y
+			int[] order = sortedIndices(cx, null, 0, n);
+			int nLeafNodes = (n + NODE_SIZE - 1) / NODE_SIZE;
+			int nSlices = (int)Math.ceil(Math.sqrt(nLeafNodes));
+			int sliceSize = (int)Math.ceil((double)nLeafNodes / nSlices) * NODE_SIZE;
+			for (int start = 0; start < n; start += sliceSize) {
+				int end = Math.min(n, start + sliceSize);
+				int[] sliceOrder = sortedIndices(cy, order, start, end);
+				System.arraycopy(sliceOrder, 0, order, start, end - start);
+			}
+			
+			// Count the nodes, and determine where each level ends
+			int nLevels = 1;
+			int levelSize = n;
+			while (levelSize > 1) {
+				levelSize = (levelSize + NODE_SIZE - 1) / NODE_SIZE;
+				nLevels++;
+			}
+			int[] levelEnds = new int[nLevels];
+			levelEnds[0] = n;
+			levelSize = n;
+			for (int l = 1; l < nLevels; l++) {
+				levelSize = (levelSize + NODE_SIZE - 1) / NODE_SIZE;
+				levelEnds[l] = levelEnds[l-1] + levelSize;
+			}
+			int nNodes = levelEnds[nLevels - 1];
+			
+			var items = new PathObject[n];
+			var boxes = new double[nNodes * 4];
+			for (int i = 0; i < n; i++) {
+				int ind = order[i];
+				items[i] = pathObjects.get(ind);
+				System.arraycopy(leafBoxes, ind*4, boxes, i*4, 4);
+			}
+			
+			// Build the internal nodes, grouping consecutive nodes of the level below
+			int[] firstChild = new int[nNodes - n];
+			int levelStart = 0;
+			int levelEnd = n;
+			int pos = n;
+			while (levelEnd - levelStart > 1) {
+				for (int i = levelStart; i < levelEnd; i += NODE_SIZE) {
+					int end = Math.min(i + NODE_SIZE, levelEnd);
+					double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+					double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+					for (int c = i; c < end; c++) {
+						minX = Math.min(minX, boxes[c*4]);
+						minY = Math.min(minY, boxes[c*4+1]);
+						maxX = Math.max(maxX, boxes[c*4+2]);
+						maxY = Math.max(maxY, boxes[c*4+3]);
+					}
+					boxes[pos*4] = minX;
+					boxes[pos*4+1] = minY;
+					boxes[pos*4+2] = maxX;
+					boxes[pos*4+3] = maxY;
+					firstChild[pos - n] = i;
+					pos++;
+				}
+				levelStart = levelEnd;
+				levelEnd = pos;
+			}
+			return new PackedTree(items, boxes, firstChild, levelEnds);
+		}
+		
+		/**
+		 * Sort indices according to their values.
+		 * @param values values used for sorting
+		 * @param indices indices to sort, or null if these should be 0 to values.length
+		 * @param start first index to sort (inclusive)
+		 * @param end last index to sort (exclusive)
+		 * @return the sorted indices, in an array of length end - start
+		 */
+		private static int[] sortedIndices(double[] values, int[] indices, int start, int end) {
+			// Pack quantized values and indices into longs, so we can use a primitive sort
+			double min = Double.POSITIVE_INFINITY;
+			double max = Double.NEGATIVE_INFINITY;
+			for (int i = start; i < end; i++) {
+				double v = values[indices == null ? i : indices[i]];
+				if (v < min)
+					min = v;
+				if (v > max)
+					max = v;
+			}
+			double scale = max > min ? (Integer.MAX_VALUE - 1) / (max - min) : 0;
+			long[] keys = new long[end - start];
+			for (int i = start; i < end; i++) {
+				int ind = indices == null ? i : indices[i];
+				double v = values[ind];
+				long q = Double.isFinite(v) ? (long)((v - min) * scale) : Integer.MAX_VALUE;
+				keys[i - start] = (q << 32) | ind;
+			}
+			Arrays.sort(keys);
+			int[] sorted = new int[keys.length];
+			for (int i = 0; i < keys.length; i++)
+				sorted[i] = (int)keys[i];
+			return sorted;
+		}
+		
+		boolean query(double minX, double minY, double maxX, double maxY, boolean all, Set<PathObject> removed, Predicate<PathObject> visitor) {
+			int n = items.length;
+			if (n == 0)
+				return true;
+			boolean checkRemoved = !removed.isEmpty();
+			if (all) {
+				for (var pathObject : items) {
+					if ((!checkRemoved || !removed.contains(pathObject)) && !visitor.test(pathObject))
+						return false;
+				}
+				return true;
+			}
+			int[] stack = new int[32];
+			int stackSize = 0;
+			int root = boxes.length / 4 - 1;
+			if (!intersects(root, minX, minY, maxX, maxY))
+				return true;
+			stack[stackSize++] = root;
+			while (stackSize > 0) {
+				int node = stack[--stackSize];
+				if (node < n) {
+					var pathObject = items[node];
+					if ((!checkRemoved || !removed.contains(pathObject)) && !visitor.test(pathObject))
+						return false;
+					continue;
+				}
+				int start = firstChild[node - n];
+				int end = Math.min(start + NODE_SIZE, childLevelEnd(start));
+				for (int c = start; c < end; c++) {
+					if (intersects(c, minX, minY, maxX, maxY)) {
+						if (stackSize == stack.length)
+							stack = Arrays.copyOf(stack, stackSize * 2);
+						stack[stackSize++] = c;
+					}
+				}
+			}
+			return true;
+		}
+		
+		/**
+		 * Get the end index of the level containing the specified node.
+		 */
+		private int childLevelEnd(int node) {
+			for (int end : levelEnds) {
+				if (node < end)
+					return end;
+			}
+			return levelEnds[levelEnds.length - 1];
+		}
+		
+		private boolean intersects(int node, double minX, double minY, double maxX, double maxY) {
+			int i = node * 4;
+			return boxes[i] <= maxX && boxes[i+1] <= maxY && boxes[i+2] >= minX && boxes[i+3] >= minY;
+		}
+		
+	}
+
+}
@@ -23,6 +23,8 @@
 
 package qupath.lib.objects.hierarchy;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -30,6 +32,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -37,6 +40,8 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.stream.Collectors;
+
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -50,6 +55,7 @@ import qupath.lib.objects.PathRootObject;
 import qupath.lib.objects.PathTileObject;
 import qupath.lib.objects.TMACoreObject;
 import qupath.lib.objects.hierarchy.events.PathObjectHierarchyEvent;
+import qupath.lib.objects.hierarchy.events.PathObjectHierarchyEventFilter;
 import qupath.lib.objects.hierarchy.events.PathObjectHierarchyListener;
 import qupath.lib.objects.hierarchy.events.PathObjectSelectionModel;
 import qupath.lib.objects.hierarchy.events.PathObjectHierarchyEvent.HierarchyEventType;
@@ -67,6 +73,13 @@ import qupath.lib.roi.interfaces.ROI;
  * Note: Be cautious when deserializing - it may not result in a hierarchy in a valid state.
  * As a workaround, you can construct a new PathObjectHierarchy and call setHierarchy(deserializedHierarchy) to
  * ensure that you have a properly-constructed hierarchy with the same data within it.
+ * <p>
+ * A hierarchy may also be given a {@link PathObjectLoader}, in which case some detections are only added when they are 
+ * first requested by region (e.g. via {@link #getObjectsForRegion(Class, ImageRegion, Collection)}). 
+ * Methods that need to access all detections (e.g. {@link #getDetectionObjects()}) load any remaining objects first, 
+ * as does {@link #getRootObject()} - so that the child lists of objects reached from the root are always complete.
+ * Objects obtained in other ways (e.g. via {@link #getAnnotationObjects()}) may not yet have all their child objects 
+ * until {@link #ensureFullyLoaded()} has been called.
  * 
  * @author Pete Bankhead
  *
@@ -101,10 +114,19 @@ public final class PathObjectHierarchy implements Serializable {
 	private PathObject rootObject = new PathRootObject();
 	
 	transient private PathObjectSelectionModel selectionModel = new PathObjectSelectionModel();
-	transient private List<PathObjectHierarchyListener> listeners = new ArrayList<>();
+	transient private PathObjectHierarchyEventBus eventBus = new PathObjectHierarchyEventBus();
 
 	// Cache enabling faster access of objects according to location
 	transient private PathObjectTileCache tileCache = new PathObjectTileCache(this);
+	
+	// Optional loader for objects that have not yet been added to the hierarchy
+	transient private volatile PathObjectLoader objectLoader;
+	
+	// Flag used to avoid loading recursively, e.g. if the loader requests the root object
+	transient private boolean isLoading = false;
+	
+	// Parents of objects that have been added, removed or moved since the last event was fired
+	transient private Map<PathObject, PathObject> previousParents = new IdentityHashMap<>();
 
 	/**
 	 * Default constructor, creates an empty hierarchy.
@@ -120,17 +142,136 @@ public final class PathObjectHierarchy implements Serializable {
 	 * @return
 	 */
 	public synchronized boolean isEmpty() {
-		return (tmaGrid == null || tmaGrid.nCores() == 0) && !rootObject.hasChildren();// && featureMaps.isEmpty();
+		return (tmaGrid == null || tmaGrid.nCores() == 0) && !rootObject.hasChildren() && objectLoader == null;// && featureMaps.isEmpty();
+	}
+	
+	/**
+	 * Set a loader that can supply objects belonging to this hierarchy on demand.
+	 * <p>
+	 * Objects are requested from the loader as regions are queried. Any objects that remain will be loaded 
+	 * whenever all detections are requested, or when the hierarchy is changed in a way that might 
+	 * otherwise lose them (e.g. by removing a parent annotation).
+	 * 
+	 * @param loader the loader, or null if all objects are already in the hierarchy
+	 * @see #ensureFullyLoaded()
+	 */
+	public void setObjectLoader(PathObjectLoader loader) {
+		this.objectLoader = loader;
+	}
+	
+	/**
+	 * Query whether all objects have been added to the hierarchy, or if some remain to be loaded on demand.
+	 * @return true if there are no more objects to load, false otherwise
+	 * @see #setObjectLoader(PathObjectLoader)
+	 */
+	public boolean isFullyLoaded() {
+		return objectLoader == null;
+	}
+	
+	/**
+	 * Ensure that any objects that are being loaded on demand have been added to the hierarchy.
+	 * This is called automatically for methods that require access to all objects (including {@link #getRootObject()}), 
+	 * but should also be called before accessing the child objects of an object that was obtained in some other way.
+	 * <p>
+	 * Loading objects does not fire hierarchy change events.
+	 */
+	public void ensureFullyLoaded() {
+		loadObjects(null);
+	}
+	
+	/**
+	 * Load any objects that might overlap a region, if they have not already been loaded.
+	 * @param cls the class of object requested, or null if all objects are requested
+	 * @param region the region, or null if all objects should be loaded
+	 */
+	private void loadObjects(Class<? extends PathObject> cls, ImageRegion region) {
+		if (!mayLoadObjects(cls))
+			return;
+		loadObjects(region);
+	}
+	
+	private void loadObjects(ImageRegion region) {
+		if (objectLoader == null)
+			return;
+		// Load while holding the hierarchy lock, so that the child lists aren't modified by another thread at the same time
+		synchronized (this) {
+			var loader = objectLoader;
+			if (loader == null || isLoading)
+				return;
+			isLoading = true;
+			try {
+				tileCache.loadObjects(() -> loader.loadObjects(region));
+			} finally {
+				isLoading = false;
+			}
+			if (loader.isFullyLoaded() && objectLoader == loader)
+				objectLoader = null;
+		}
+	}
+	
+	/**
+	 * Objects loaded on demand are only ever detections (or their descendants), so there is no need 
+	 * to load them if some other kind of object is requested.
+	 * @param cls the class of object requested, or null if all objects are requested
+	 * @return true if the request could include objects that have not yet been loaded
+	 */
+	private boolean mayLoadObjects(Class<? extends PathObject> cls) {
+		return objectLoader != null && (cls == null || cls.isAssignableFrom(PathDetectionObject.class) || PathDetectionObject.class.isAssignableFrom(cls));
+	}
+	
+	/**
+	 * Ensure objects are fully loaded before removing any non-detection objects, 
+	 * since otherwise detections that have not yet been loaded could be added to an object that is no longer in the hierarchy.
+	 * @param pathObjects
+	 */
+	private void ensureFullyLoadedForRemoval(Collection<? extends PathObject> pathObjects) {
+		if (objectLoader != null && pathObjects.stream().anyMatch(p -> !p.isDetection()))
+			ensureFullyLoaded();
 	}
 	
 	/**
 	 * Add a hierarchy change listener.
+	 * Events are delivered synchronously, except during a transaction (see {@link #beginTransaction()}).
 	 * @param listener
 	 */
 	public void addPathObjectListener(PathObjectHierarchyListener listener) {
-		synchronized(listeners) {
-			listeners.add(listener);
-		}
+		addPathObjectListener(listener, null);
+	}
+	
+	/**
+	 * Add a hierarchy change listener that is only notified of events accepted by a filter.
+	 * Events are delivered synchronously, except during a transaction (see {@link #beginTransaction()}).
+	 * @param listener
+	 * @param filter the filter; if null, all events are accepted
+	 */
+	public void addPathObjectListener(PathObjectHierarchyListener listener, PathObjectHierarchyEventFilter filter) {
+		eventBus.addListener(listener, filter);
+	}
+	
+	/**
+	 * Add a hierarchy change listener that is notified asynchronously.
+	 * <p>
+	 * Events are queued and delivered on a background thread after the specified delay, 
+	 * with all events that arrived in the meantime coalesced. 
+	 * This is intended for user interface components that only need to update occasionally, 
+	 * and should not slow down code that modifies the hierarchy. 
+	 * Listeners that need to update the user interface are responsible for passing the work to the appropriate thread.
+	 * 
+	 * @param listener
+	 * @param filter the filter; if null, all events are accepted
+	 * @param delayMillis delay in milliseconds between the first event being received and the listener being notified
+	 */
+	public void addDebouncedPathObjectListener(PathObjectHierarchyListener listener, PathObjectHierarchyEventFilter filter, long delayMillis) {
+		eventBus.addDebouncedListener(listener, filter, delayMillis);
+	}
+	
+	/**
+	 * Add a listener that is notified of every event as soon as it is fired, ignoring any transaction.
+	 * This is needed for caches that must remain in sync with the hierarchy.
+	 * @param listener
+	 */
+	void addImmediatePathObjectListener(PathObjectHierarchyListener listener) {
+		eventBus.addImmediateListener(listener);
 	}
 	
 	/**
@@ -138,16 +279,80 @@ public final class PathObjectHierarchy implements Serializable {
 	 * @param listener
 	 */
 	public void removePathObjectListener(PathObjectHierarchyListener listener) {
-		synchronized(listeners) {
-			listeners.remove(listener);
+		eventBus.removeListener(listener);
+	}
+	
+	/**
+	 * Begin a transaction, during which hierarchy events are held back from listeners.
+	 * <p>
+	 * When the (outermost) transaction is committed with {@link #commitTransaction()}, the events are coalesced 
+	 * so that listeners receive a single event for all structural changes, and a single event for each 
+	 * other type of change. This makes it much cheaper to apply many small changes to the hierarchy, 
+	 * e.g. when updating objects one at a time within a loop.
+	 * <p>
+	 * Transactions may be nested, and apply to all events fired by the hierarchy regardless of the thread. 
+	 * Every call to this method must be followed by a call to {@link #commitTransaction()}, 
+	 * ideally within a {@code finally} block - or else use {@link #runInTransaction(Runnable)}.
+	 */
+	public synchronized void beginTransaction() {
+		eventBus.beginTransaction();
+	}
+	
+	/**
+	 * Commit a transaction started with {@link #beginTransaction()}. 
+	 * If this is the outermost transaction, listeners will be notified of all changes that were made.
+	 * @throws IllegalStateException if no transaction is in progress
+	 */
+	public synchronized void commitTransaction() throws IllegalStateException {
+		eventBus.commitTransaction();
+	}
+	
+	/**
+	 * Query whether a transaction is currently in progress.
+	 * @return
+	 * @see #beginTransaction()
+	 */
+	public synchronized boolean isInTransaction() {
+		return eventBus.isInTransaction();
+	}
+	
+	/**
+	 * Run the specified task within a transaction, so that listeners are notified of any changes once it completes.
+	 * @param runnable
+	 * @see #beginTransaction()
+	 */
+	public void runInTransaction(Runnable runnable) {
+		beginTransaction();
+		try {
+			runnable.run();
+		} finally {
+			commitTransaction();
 		}
 	}
 	
 	/**
 	 * Get the root object. All other objects in the hierarchy are descendants of the root.
+	 * <p>
+	 * If the hierarchy has a {@link PathObjectLoader}, any objects that remain to be loaded are added first, 
+	 * since otherwise traversing the hierarchy from the root would only find objects in the regions requested so far.
 	 * @return
+	 * @see #ensureFullyLoaded()
 	 */
 	public PathObject getRootObject() {
+		if (objectLoader != null)
+			ensureFullyLoaded();
+		return rootObject;
+	}
+	
+	/**
+	 * Get the root object without loading any objects that remain to be loaded.
+	 * <p>
+	 * This is useful to check whether the root has been replaced (e.g. by {@link #setHierarchy(PathObjectHierarchy)}), 
+	 * but should not be used to traverse the hierarchy, since objects that have not yet been loaded will be missing.
+	 * @return
+	 * @see #getRootObject()
+	 */
+	public PathObject getRootObjectWithoutLoading() {
 		return rootObject;
 	}
 		
@@ -186,6 +391,7 @@ public final class PathObjectHierarchy implements Serializable {
 	 * @param tmaGrid
 	 */
 	public synchronized void setTMAGrid(TMAGrid tmaGrid) {
+		ensureFullyLoaded();
 		clearTMAGrid();
 		if (tmaGrid == null)
 			return;
@@ -223,7 +429,7 @@ public final class PathObjectHierarchy implements Serializable {
 	 * @return true if the hierarchy changed as a result of this call, false otherwise
 	 */
 	public synchronized boolean insertPathObject(PathObject pathObject, boolean fireChangeEvents) {
-		return insertPathObject(getRootObject(), pathObject, fireChangeEvents, !fireChangeEvents);
+		return insertPathObject(rootObject, pathObject, fireChangeEvents, !fireChangeEvents);
 	}
 	
 	/**
@@ -242,18 +448,18 @@ public final class PathObjectHierarchy implements Serializable {
 		
 		if (selectedObjects.isEmpty())
 			return false;
-		removeObjects(selectedObjects, true);
-		selectedObjects.sort(PathObjectHierarchy.HIERARCHY_COMPARATOR.reversed());
-		boolean singleObject = selectedObjects.size() == 1;
-		// We don't want to reset caches for every object if we have only detections, since previously-inserted objects don't impact the potential parent
-		boolean allDetections = selectedObjects.stream().allMatch(p -> p.isDetection());
-		for (var pathObject : selectedObjects) {
-//			hierarchy.insertPathObject(pathObject, true);
-			insertPathObject(getRootObject(), pathObject, singleObject, !singleObject && !allDetections);
-//			insertPathObject(pathObject, selectedObjects.size() == 1);
+		ensureFullyLoadedForRemoval(selectedObjects);
+		
+		// Only objects overlapping those being inserted need to be considered, and the tile cache is updated along the way
+		new IncrementalHierarchyResolver(this, tileCache).insertPathObjects(selectedObjects);
+		if (selectedObjects.size() == 1) {
+			fireObjectAddedEvent(this, selectedObjects.get(0));
+		} else {
+			// Include the previous parents now, since the tile cache checks the event by identity
+			var event = withPreviousParents(PathObjectHierarchyEvent.createStructureChangeEvent(this, this, rootObject, selectedObjects));
+			tileCache.setUpToDate(event);
+			fireEvent(event);
 		}
-		if (!singleObject)
-			fireHierarchyChangedEvent(this);
 		return true;
 	}
 	
@@ -302,8 +508,11 @@ public final class PathObjectHierarchy implements Serializable {
 		
 		// Get all the annotations that might be a parent of this object
 		var region = ImageRegion.createInstance(pathObject.getROI());
+		// Detections that haven't been loaded yet might need to become children of the object
+		if (!pathObject.isDetection())
+			loadObjects(region);
 		Collection<PathObject> tempSet = new HashSet<>();
-		tempSet.add(getRootObject());
+		tempSet.add(rootObject);
 		tileCache.getObjectsForRegion(PathAnnotationObject.class, region, tempSet, true);
 		if (tmaGrid != null)
 			tileCache.getObjectsForRegion(TMACoreObject.class, region, tempSet, true);
@@ -344,9 +553,12 @@ public final class PathObjectHierarchy implements Serializable {
 				// Beware that we could have 'orphaned' detections
 				if (possibleParent.isTMACore())
 					possibleParent.getParent().getChildObjects().stream().filter(p -> p.isDetection()).forEach(previousChildren::add);
+				recordPreviousParent(pathObject);
 				possibleParent.addPathObject(pathObject);
 				if (!previousChildren.isEmpty()) {
-					pathObject.addPathObjects(filterObjectsForROI(pathObject.getROI(), previousChildren));
+					var newChildren = filterObjectsForROI(pathObject.getROI(), previousChildren);
+					recordPreviousParents(newChildren);
+					pathObject.addPathObjects(newChildren);
 				}
 				
 				// Notify listeners of changes, if required
@@ -367,12 +579,13 @@ public final class PathObjectHierarchy implements Serializable {
 	synchronized void clearTMAGrid() {
 		if (tmaGrid == null)
 			return;
-		removeObjects(new ArrayList<>(tmaGrid.getTMACoreList()), true);
+		var cores = new ArrayList<>(tmaGrid.getTMACoreList());
+		removeObjects(cores, true);
 //		for (TMACoreObject core : tmaGrid.getTMACoreList())
 //			removeObject(core, true);
 //		this.tmaGrid = null;
 		// Notify listeners of changes
-		fireHierarchyChangedEvent(getRootObject());
+		fireHierarchyChangedEvent(this, rootObject, cores);
 	}
 	
 	/**
@@ -403,6 +616,7 @@ public final class PathObjectHierarchy implements Serializable {
 	 * @return
 	 */
 	private synchronized boolean removeObject(PathObject pathObject, boolean keepChildren, boolean fireEvent) {
+		ensureFullyLoadedForRemoval(Collections.singletonList(pathObject));
 		// Check the object is within the hierarchy & has a valid parent (from which it can be removed)
 		PathObject pathObjectParent = pathObject.getParent();
 		if (!inHierarchy(pathObject) || pathObjectParent == null) {
@@ -413,12 +627,14 @@ public final class PathObjectHierarchy implements Serializable {
 		// Can't keep children if there aren't any
 		boolean hasChildren = pathObject.hasChildren();
 		
+		recordPreviousParent(pathObject);
 		pathObjectParent.removePathObject(pathObject);
 
 		// Assign the children to the parent object, if necessary
 		if (keepChildren && hasChildren) {
 			// We create a new array list because getPathObjectList returns an unmodifiable collection
 //			List<PathObject> list = new ArrayList<>(pathObject.getPathObjectList());
+			recordPreviousParents(pathObject.getChildObjects());
 			pathObjectParent.addPathObjects(pathObject.getChildObjects());
 //			pathObject.clearPathObjects(); // Clear child objects, just in case
 		}
@@ -426,7 +642,7 @@ public final class PathObjectHierarchy implements Serializable {
 			if (keepChildren || !hasChildren)
 				fireObjectRemovedEvent(this, pathObject, pathObjectParent);
 			else
-				fireHierarchyChangedEvent(this, pathObjectParent);
+				fireHierarchyChangedEvent(this, pathObjectParent, Collections.singletonList(pathObject));
 		}
 		return true;
 	}
@@ -443,6 +659,8 @@ public final class PathObjectHierarchy implements Serializable {
 		if (pathObjects.isEmpty())
 			return;
 		
+		ensureFullyLoadedForRemoval(pathObjects);
+		
 		List<PathObject> pathObjectSet = new ArrayList<>(pathObjects);
 		pathObjectSet.sort((o1, o2) -> Integer.compare(o2.getLevel(), o1.getLevel()));
 		
@@ -464,11 +682,14 @@ public final class PathObjectHierarchy implements Serializable {
 			return;
 		
 		// Loop through and remove objects, keeping children if necessary
+		List<PathObject> changedObjects = new ArrayList<>();
 		Set<PathObject> childrenToKeep = new LinkedHashSet<>();
 		for (Entry<PathObject, List<PathObject>> entry : map.entrySet()) {
 			PathObject parent = entry.getKey();
 			List<PathObject> children = entry.getValue();
+			recordPreviousParents(children);
 			parent.removePathObjects(children);
+			changedObjects.addAll(children);
 			if (keepChildren) {
 				for (PathObject child : children)
 					childrenToKeep.addAll(child.getChildObjects());
@@ -480,7 +701,8 @@ public final class PathObjectHierarchy implements Serializable {
 		for (PathObject pathObject : childrenToKeep) {
 			addPathObject(pathObject, false);
 		}
-		fireHierarchyChangedEvent(this);
+		changedObjects.addAll(childrenToKeep);
+		fireHierarchyChangedEvent(this, rootObject, changedObjects);
 		
 		// This previously could result in child objects being deleted even if keepChildren was 
 		// true, depending upon the order in which objects were removed.
@@ -515,7 +737,7 @@ public final class PathObjectHierarchy implements Serializable {
 			return false;
 		while (pathObject.getParent() != null)
 			pathObject = pathObject.getParent();
-		return pathObject.equals(getRootObject());
+		return pathObject.equals(rootObject);
 	}
 	
 	
@@ -525,15 +747,19 @@ public final class PathObjectHierarchy implements Serializable {
 
 		// Assign annotations to cores
 		List<PathObject> pathObjectChildren = new ArrayList<>(rootObject.getChildObjects());
+		recordPreviousParents(pathObjectChildren);
 		rootObject.clearPathObjects();
 		// Add cores to the start of the object list
+		recordPreviousParents(tmaGrid.getTMACoreList());
 		rootObject.addPathObjects(tmaGrid.getTMACoreList());
 		// Add back any other objects
 		for (PathObject pathObject : pathObjectChildren)
 			addPathObject(pathObject, false);
 
 		// Notify listeners of changes
-		fireHierarchyChangedEvent(getRootObject());
+		var changedObjects = new ArrayList<PathObject>(tmaGrid.getTMACoreList());
+		changedObjects.addAll(pathObjectChildren);
+		fireHierarchyChangedEvent(this, rootObject, changedObjects);
 	}
 	
 	
@@ -560,10 +786,13 @@ public final class PathObjectHierarchy implements Serializable {
 	
 	// TODO: Be very cautious about this!!!!  Use of tileCache inside a synchronized method might lead to deadlocks?
 	private synchronized boolean addPathObjectToList(PathObject pathObjectParent, PathObject pathObject, boolean fireChangeEvents) {
+		recordPreviousParent(pathObject);
 		pathObjectParent.addPathObject(pathObject);
 		// Notify listeners of changes, if required
 		if (fireChangeEvents)
 			fireObjectAddedEvent(this, pathObject);
+		else
+			tileCache.resetCache(); // The cache will be rebuilt when it is next needed, since no event will update it
 		return true;
 	}
 	
@@ -609,9 +838,9 @@ public final class PathObjectHierarchy implements Serializable {
 	 * @return
 	 */
 	private synchronized boolean addPathObject(PathObject pathObject, boolean fireUpdate) {
-		if (pathObject == getRootObject() || !pathObject.hasROI())
+		if (pathObject == rootObject || !pathObject.hasROI())
 			return false;
-		return addPathObjectToList(getRootObject(), pathObject, fireUpdate);
+		return addPathObjectToList(rootObject, pathObject, fireUpdate);
 	}
 	
 	/**
@@ -629,11 +858,11 @@ public final class PathObjectHierarchy implements Serializable {
 					logger.debug("Adding {} of {}", counter, n);
 			} else if (n > 1000 && counter % 100 == 0)
 				logger.debug("Adding {} of {}", counter, n);
-			changes = addPathObjectToList(getRootObject(), pathObject, false) || changes;
+			changes = addPathObjectToList(rootObject, pathObject, false) || changes;
 			counter++;
 		}
 		if (changes)
-			fireHierarchyChangedEvent(getRootObject());
+			fireHierarchyChangedEvent(this, rootObject, pathObjects);
 //			fireChangeEvent(getRootObject());
 		return changes;
 	}
@@ -642,9 +871,12 @@ public final class PathObjectHierarchy implements Serializable {
 	 * Remove all objects from the hierarchy.
 	 */
 	public synchronized void clearAll() {
-		getRootObject().clearPathObjects();
+		objectLoader = null;
+		var changedObjects = new ArrayList<>(rootObject.getChildObjects());
+		recordPreviousParents(changedObjects);
+		rootObject.clearPathObjects();
 		tmaGrid = null;
-		fireHierarchyChangedEvent(getRootObject());
+		fireHierarchyChangedEvent(this, rootObject, changedObjects);
 	}
 	
 
@@ -714,10 +946,12 @@ public final class PathObjectHierarchy implements Serializable {
 			pathObjects.addAll(tileCache.getObjectsForRegion(cls, null, null, true));
 			return pathObjects;
 		}
+		if (mayLoadObjects(cls))
+			ensureFullyLoaded();
 		if (cls == null || cls.isAssignableFrom(PathRootObject.class))
-			pathObjects.add(getRootObject());
+			pathObjects.add(rootObject);
 		
-		return PathObjectTools.getDescendantObjects(getRootObject(), pathObjects, cls);
+		return PathObjectTools.getDescendantObjects(rootObject, pathObjects, cls);
 	}
 	
 	/**
@@ -754,7 +988,8 @@ public final class PathObjectHierarchy implements Serializable {
 	 * @return
 	 */
 	public synchronized int nObjects() {
-		int count = PathObjectTools.countDescendants(getRootObject());
+		ensureFullyLoaded();
+		int count = PathObjectTools.countDescendants(rootObject);
 		return count;
 	}
 	
@@ -766,8 +1001,11 @@ public final class PathObjectHierarchy implements Serializable {
 	public synchronized void setHierarchy(PathObjectHierarchy hierarchy) {
 		if (this == hierarchy)
 			return;
-		rootObject = hierarchy.getRootObject();
+		rootObject = hierarchy.rootObject;
 		tmaGrid = hierarchy.tmaGrid;
+		// Take over any loader, since it will add objects to the root we now share
+		objectLoader = hierarchy.objectLoader;
+		hierarchy.objectLoader = null;
 		fireHierarchyChangedEvent(rootObject);
 	}
 	
@@ -783,7 +1021,9 @@ public final class PathObjectHierarchy implements Serializable {
 		if (roi.isEmpty() || !roi.isArea())
 			return Collections.emptyList();
 		
-		Collection<PathObject> pathObjects = tileCache.getObjectsForRegion(cls, ImageRegion.createInstance(roi), new HashSet<>(), true);
+		var region = ImageRegion.createInstance(roi);
+		loadObjects(cls, region);
+		Collection<PathObject> pathObjects = tileCache.getObjectsForRegion(cls, region, new HashSet<>(), true);
 		return filterObjectsForROI(roi, pathObjects);
 	}
 	
@@ -799,17 +1039,18 @@ public final class PathObjectHierarchy implements Serializable {
 		if (pathObjects.isEmpty() || !roi.isArea() || roi.isEmpty())
 			return Collections.emptyList();
 		
-		var locator = tileCache.getLocator(roi, false);
-		var preparedGeometry = tileCache.getPreparedGeometry(tileCache.getGeometry(roi));
+		var geometry = roi.getGeometry();
+		var locator = PathObjectTileCache.createLocator(geometry);
+		var preparedGeometry = PreparedGeometryFactory.prepare(geometry);
 		return pathObjects.parallelStream().filter(child -> {
 			// Test plane first
 			if (!samePlane(roi, child.getROI(), false))
 				return false;
 			
 			if (child.isDetection())
-				return tileCache.containsCentroid(locator, child);
+				return PathObjectTileCache.containsCentroid(locator, child);
 			else {
-				return tileCache.covers(preparedGeometry, tileCache.getGeometry(child));
+				return PathObjectTileCache.covers(preparedGeometry, child.getROI().getGeometry());
 			}
 		}).collect(Collectors.toList());
 	}
@@ -840,6 +1081,7 @@ public final class PathObjectHierarchy implements Serializable {
 	 * @return collection containing identified objects (same as the input collection, if provided)
 	 */
 	public Collection<PathObject> getObjectsForRegion(Class<? extends PathObject> cls, ImageRegion region, Collection<PathObject> pathObjects) {
+		loadObjects(cls, region);
 		return tileCache.getObjectsForRegion(cls, region, pathObjects, true);
 	}
 	
@@ -851,10 +1093,20 @@ public final class PathObjectHierarchy implements Serializable {
 	 * @return
 	 */
 	public boolean hasObjectsForRegion(Class<? extends PathObject> cls, ImageRegion region) {
+		loadObjects(cls, region);
 		return tileCache.hasObjectsForRegion(cls, region, true);
 	}
 	
 	
+	/**
+	 * Ensure all objects are loaded before serialization.
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		ensureFullyLoaded();
+		out.defaultWriteObject();
+	}
+	
+	
 	void fireObjectRemovedEvent(Object source, PathObject pathObject, PathObject previousParent) {
 		PathObjectHierarchyEvent event = PathObjectHierarchyEvent.createObjectRemovedEvent(source, this, previousParent, pathObject);
 		fireEvent(event);
@@ -924,6 +1176,20 @@ public final class PathObjectHierarchy implements Serializable {
 		PathObjectHierarchyEvent event = PathObjectHierarchyEvent.createStructureChangeEvent(source, this, pathObject);
 		fireEvent(event);
 	}
+	
+	/**
+	 * Fire a hierarchy update indicating the hierarchy structure has changed, impacting descendants of a specified object, 
+	 * where the objects that were added, removed or moved are known.
+	 * This enables listeners to update themselves without needing to check all the descendants.
+	 * @param source
+	 * @param pathObject
+	 * @param changedObjects the objects that were added, removed or moved (not including any children that moved with them)
+	 * @see PathObjectHierarchyEvent#createStructureChangeEvent(Object, PathObjectHierarchy, PathObject, Collection)
+	 */
+	public void fireHierarchyChangedEvent(Object source, PathObject pathObject, Collection<? extends PathObject> changedObjects) {
+		PathObjectHierarchyEvent event = PathObjectHierarchyEvent.createStructureChangeEvent(source, this, pathObject, changedObjects);
+		fireEvent(event);
+	}
 
 	/**
 	 * Fire a hierarchy update indicating the hierarchy structure has changed.
@@ -932,15 +1198,42 @@ public final class PathObjectHierarchy implements Serializable {
 	 * @param source
 	 */
 	public void fireHierarchyChangedEvent(Object source) {
-		fireHierarchyChangedEvent(source, getRootObject());
+		fireHierarchyChangedEvent(source, rootObject);
 	}
 	
 	
 	synchronized void fireEvent(PathObjectHierarchyEvent event) {
-		synchronized(listeners) {
-			for (PathObjectHierarchyListener listener : listeners)
-				listener.hierarchyChanged(event);
-		}
+		eventBus.fireEvent(withPreviousParents(event));
+	}
+	
+	/**
+	 * Record the current parent of an object that is about to be added, removed or moved, 
+	 * unless a parent has already been recorded since the last event was fired.
+	 * The parents are passed to listeners with the next event, so that they can tell which objects moved and where from.
+	 * <p>
+	 * This must be called while holding the hierarchy lock.
+	 * @param pathObject
+	 * @see PathObjectHierarchyEvent#getPreviousParents()
+	 */
+	void recordPreviousParent(PathObject pathObject) {
+		if (!previousParents.containsKey(pathObject))
+			previousParents.put(pathObject, pathObject.getParent());
+	}
+	
+	private void recordPreviousParents(Collection<? extends PathObject> pathObjects) {
+		for (PathObject pathObject : pathObjects)
+			recordPreviousParent(pathObject);
+	}
+	
+	/**
+	 * Add any previous parents that have been recorded to an event, so that they are not included in any later event.
+	 */
+	private PathObjectHierarchyEvent withPreviousParents(PathObjectHierarchyEvent event) {
+		if (previousParents.isEmpty())
+			return event;
+		var map = previousParents;
+		previousParents = new IdentityHashMap<>();
+		return PathObjectHierarchyEvent.createEventWithPreviousParents(event, map);
 	}
 	
 	
@@ -0,0 +1,365 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.lib.objects.hierarchy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.common.ThreadTools;
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.hierarchy.events.PathObjectHierarchyEvent;
+import qupath.lib.objects.hierarchy.events.PathObjectHierarchyEventFilter;
+import qupath.lib.objects.hierarchy.events.PathObjectHierarchyListener;
+import qupath.lib.objects.hierarchy.events.PathObjectHierarchyEvent.HierarchyEventType;
+
+/**
+ * Helper class to deliver {@link PathObjectHierarchyEvent}s to listeners on behalf of a {@link PathObjectHierarchy}.
+ * <p>
+ * Listeners may be registered in one of three ways:
+ * <ul>
+ *   <li><b>immediate</b>: events are always delivered synchronously as soon as they are fired, even during a transaction. 
+ *   This is needed for internal caches that must never be out of sync with the hierarchy.</li>
+ *   <li><b>synchronous</b>: events are delivered synchronously, but are held back and coalesced while a transaction is in progress.</li>
+ *   <li><b>debounced</b>: events are queued and delivered later on a background thread, coalescing all events 
+ *   that arrived during the delay. This is intended for user interface components, which otherwise may be 
+ *   swamped by many small updates.</li>
+ * </ul>
+ * A single thread is used to time the delays for debounced listeners, but the events are delivered from a pool of threads. 
+ * Each listener receives its events in order and never concurrently, but a slow listener does not delay any other.
+ * Listeners may be added or removed from any thread, but events and transactions are expected to be handled while holding the lock of the hierarchy.
+ */
+class PathObjectHierarchyEventBus {
+	
+	private static final Logger logger = LoggerFactory.getLogger(PathObjectHierarchyEventBus.class);
+	
+	private static ScheduledExecutorService debounceExecutor;
+	private static ExecutorService deliveryExecutor;
+	
+	private final List<ListenerRegistration> registrations = new CopyOnWriteArrayList<>();
+	
+	private int transactionDepth = 0;
+	private List<PathObjectHierarchyEvent> pendingEvents = new ArrayList<>();
+	
+	private static synchronized ScheduledExecutorService getDebounceExecutor() {
+		if (debounceExecutor == null)
+			debounceExecutor = Executors.newSingleThreadScheduledExecutor(ThreadTools.createThreadFactory("hierarchy-events-", true));
+		return debounceExecutor;
+	}
+	
+	private static synchronized ExecutorService getDeliveryExecutor() {
+		if (deliveryExecutor == null)
+			deliveryExecutor = Executors.newCachedThreadPool(ThreadTools.createThreadFactory("hierarchy-listeners-", true));
+		return deliveryExecutor;
+	}
+	
+	/**
+	 * Add a listener that receives all events immediately, bypassing any transactions.
+	 * @param listener
+	 */
+	void addImmediateListener(PathObjectHierarchyListener listener) {
+		registrations.add(new ListenerRegistration(listener, PathObjectHierarchyEventFilter.acceptAll(), true, -1));
+	}
+	
+	/**
+	 * Add a listener that receives events synchronously, deferring events during transactions.
+	 * @param listener
+	 * @param filter
+	 */
+	void addListener(PathObjectHierarchyListener listener, PathObjectHierarchyEventFilter filter) {
+		registrations.add(new ListenerRegistration(listener, filter, false, -1));
+	}
+	
+	/**
+	 * Add a listener that receives coalesced events on a background thread, after the specified delay.
+	 * @param listener
+	 * @param filter
+	 * @param delayMillis
+	 */
+	void addDebouncedListener(PathObjectHierarchyListener listener, PathObjectHierarchyEventFilter filter, long delayMillis) {
+		if (delayMillis < 0)
+			throw new IllegalArgumentException("Delay must be >= 0, but was " + delayMillis);
+		registrations.add(new ListenerRegistration(listener, filter, false, delayMillis));
+	}
+	
+	/**
+	 * Remove all registrations for the specified listener.
+	 * Any debounced events that have not yet been delivered to the listener are discarded.
+	 * @param listener
+	 */
+	void removeListener(PathObjectHierarchyListener listener) {
+		for (var registration : registrations) {
+			if (registration.listener == listener) {
+				registration.cancel();
+				registrations.remove(registration);
+			}
+		}
+	}
+	
+	void beginTransaction() {
+		transactionDepth++;
+	}
+	
+	/**
+	 * Commit the current transaction. If this is the outermost transaction, 
+	 * all events that were deferred will be coalesced and delivered.
+	 */
+	void commitTransaction() {
+		if (transactionDepth <= 0)
+			throw new IllegalStateException("No transaction in progress");
+		transactionDepth--;
+		if (transactionDepth > 0)
+			return;
+		var events = coalesce(pendingEvents);
+		pendingEvents = new ArrayList<>();
+		for (var event : events)
+			deliver(event, false);
+	}
+	
+	boolean isInTransaction() {
+		return transactionDepth > 0;
+	}
+	
+	void fireEvent(PathObjectHierarchyEvent event) {
+		if (transactionDepth > 0) {
+			deliver(event, true);
+			pendingEvents.add(event);
+		} else {
+			for (var registration : registrations)
+				registration.accept(event);
+		}
+	}
+	
+	private void deliver(PathObjectHierarchyEvent event, boolean immediate) {
+		for (var registration : registrations) {
+			if (registration.immediate == immediate)
+				registration.accept(event);
+		}
+	}
+	
+	
+	/**
+	 * Coalesce a list of events into as few events as possible, without changing the order of structural and object changes.
+	 * <p>
+	 * Events are split into consecutive runs of either structural or object changes. 
+	 * All structural changes within a run are combined into a single event (retaining the original event if there was only one), 
+	 * which contains the changed objects only if these were known for every event it replaces. 
+	 * Object changes within a run are combined into one event per {@link HierarchyEventType}, containing all changed objects. 
+	 * A combined event is only flagged as 'changing' if all the events it replaces were changing. 
+	 * It contains the earliest previous parent of each object recorded by the events it replaces.
+	 * 
+	 * @param events
+	 * @return
+	 */
+	static List<PathObjectHierarchyEvent> coalesce(List<PathObjectHierarchyEvent> events) {
+		if (events.size() <= 1)
+			return new ArrayList<>(events);
+		
+		List<PathObjectHierarchyEvent> coalesced = new ArrayList<>();
+		List<PathObjectHierarchyEvent> run = new ArrayList<>();
+		for (var event : events) {
+			if (!run.isEmpty() && run.get(0).isStructureChangeEvent() != event.isStructureChangeEvent()) {
+				coalesceRun(run, coalesced);
+				run.clear();
+			}
+			run.add(event);
+		}
+		coalesceRun(run, coalesced);
+		return coalesced;
+	}
+	
+	/**
+	 * Coalesce a run of events that are either all structural changes, or all object changes.
+	 */
+	private static void coalesceRun(List<PathObjectHierarchyEvent> run, List<PathObjectHierarchyEvent> coalesced) {
+		if (run.size() == 1) {
+			coalesced.add(run.get(0));
+			return;
+		}
+		
+		PathObjectHierarchy hierarchy = run.get(0).getHierarchy();
+		if (run.get(0).isStructureChangeEvent()) {
+			PathObject base = run.get(0).getStructureChangeBase();
+			// The changed objects are only known if they are known for every event
+			Set<PathObject> changed = new LinkedHashSet<>();
+			Map<PathObject, PathObject> previousParents = new IdentityHashMap<>();
+			boolean changedKnown = true;
+			for (var event : run) {
+				if (event.getStructureChangeBase() != base)
+					base = hierarchy.getRootObjectWithoutLoading();
+				if (event.getChangedObjects().isEmpty())
+					changedKnown = false;
+				else if (changedKnown)
+					changed.addAll(event.getChangedObjects());
+				addPreviousParents(event, previousParents);
+			}
+			if (!changedKnown)
+				changed.clear();
+			var event = PathObjectHierarchyEvent.createStructureChangeEvent(getCommonSource(run, hierarchy), hierarchy, base, changed);
+			coalesced.add(withPreviousParents(event, previousParents));
+			return;
+		}
+		
+		Map<HierarchyEventType, List<PathObjectHierarchyEvent>> objectEvents = new LinkedHashMap<>();
+		for (var event : run)
+			objectEvents.computeIfAbsent(event.getEventType(), t -> new ArrayList<>()).add(event);
+		for (var entry : objectEvents.entrySet()) {
+			var list = entry.getValue();
+			if (list.size() == 1) {
+				coalesced.add(list.get(0));
+				continue;
+			}
+			Set<PathObject> changed = new LinkedHashSet<>();
+			Map<PathObject, PathObject> previousParents = new IdentityHashMap<>();
+			boolean isChanging = true;
+			for (var event : list) {
+				changed.addAll(event.getChangedObjects());
+				isChanging = isChanging && event.isChanging();
+				addPreviousParents(event, previousParents);
+			}
+			var event = PathObjectHierarchyEvent.createObjectsChangedEvent(getCommonSource(list, hierarchy), hierarchy, entry.getKey(), changed, isChanging);
+			coalesced.add(withPreviousParents(event, previousParents));
+		}
+	}
+	
+	/**
+	 * Add the previous parents from an event, unless a parent was already added for the same object by an earlier event.
+	 */
+	private static void addPreviousParents(PathObjectHierarchyEvent event, Map<PathObject, PathObject> previousParents) {
+		for (var entry : event.getPreviousParents().entrySet()) {
+			if (!previousParents.containsKey(entry.getKey()))
+				previousParents.put(entry.getKey(), entry.getValue());
+		}
+	}
+	
+	private static PathObjectHierarchyEvent withPreviousParents(PathObjectHierarchyEvent event, Map<PathObject, PathObject> previousParents) {
+		if (previousParents.isEmpty())
+			return event;
+		return PathObjectHierarchyEvent.createEventWithPreviousParents(event, previousParents);
+	}
+	
+	/**
+	 * Get the source shared by all events, or the hierarchy if the sources differ.
+	 */
+	private static Object getCommonSource(List<PathObjectHierarchyEvent> events, PathObjectHierarchy hierarchy) {
+		Object source = events.get(0).getSource();
+		for (var event : events) {
+			if (event.getSource() != source)
+				return hierarchy;
+		}
+		return source;
+	}
+	
+	
+	private static class ListenerRegistration {
+		
+		private final PathObjectHierarchyListener listener;
+		private final PathObjectHierarchyEventFilter filter;
+		private final boolean immediate;
+		private final long delayMillis;
+		
+		private List<PathObjectHierarchyEvent> queued = new ArrayList<>();
+		private boolean scheduled = false;
+		private boolean cancelled = false;
+		
+		ListenerRegistration(PathObjectHierarchyListener listener, PathObjectHierarchyEventFilter filter, boolean immediate, long delayMillis) {
+			this.listener = listener;
+			this.filter = filter == null ? PathObjectHierarchyEventFilter.acceptAll() : filter;
+			this.immediate = immediate;
+			this.delayMillis = delayMillis;
+		}
+		
+		void accept(PathObjectHierarchyEvent event) {
+			if (!filter.test(event))
+				return;
+			if (delayMillis < 0)
+				listener.hierarchyChanged(event);
+			else
+				enqueue(event);
+		}
+		
+		private synchronized void enqueue(PathObjectHierarchyEvent event) {
+			if (cancelled)
+				return;
+			queued.add(event);
+			if (!scheduled) {
+				scheduled = true;
+				schedule();
+			}
+		}
+		
+		/**
+		 * Schedule a flush after the delay. The debounce thread only hands the flush to the delivery executor, 
+		 * so that it is never blocked by a slow listener.
+		 */
+		private void schedule() {
+			getDebounceExecutor().schedule(() -> getDeliveryExecutor().execute(this::flush), delayMillis, TimeUnit.MILLISECONDS);
+		}
+		
+		private void flush() {
+			List<PathObjectHierarchyEvent> events;
+			synchronized (this) {
+				if (cancelled) {
+					scheduled = false;
+					return;
+				}
+				events = queued;
+				queued = new ArrayList<>();
+			}
+			for (var event : coalesce(events)) {
+				try {
+					listener.hierarchyChanged(event);
+				} catch (Exception e) {
+					logger.error("Error notifying hierarchy listener: " + e.getLocalizedMessage(), e);
+				}
+			}
+			// Remain scheduled until delivery is complete, so that events are never delivered concurrently
+			synchronized (this) {
+				if (cancelled || queued.isEmpty())
+					scheduled = false;
+				else
+					schedule();
+			}
+		}
+		
+		synchronized void cancel() {
+			cancelled = true;
+			queued = Collections.emptyList();
+		}
+		
+	}
+
+}
@@ -0,0 +1,56 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.lib.objects.hierarchy;
+
+import java.util.Collection;
+
+import qupath.lib.objects.PathObject;
+import qupath.lib.regions.ImageRegion;
+
+/**
+ * Interface for loading objects into a {@link PathObjectHierarchy} on demand.
+ * <p>
+ * This makes it possible to open a hierarchy containing a very large number of detections, 
+ * while only reading the detections needed to display or query specific regions of the image.
+ * <p>
+ * Implementations are responsible for adding loaded objects to their parents. 
+ * The hierarchy then updates its spatial cache, but does not fire any change events - 
+ * since from the point of view of the user, the objects were there all along.
+ * @see PathObjectHierarchy#setObjectLoader(PathObjectLoader)
+ */
+public interface PathObjectLoader {
+	
+	/**
+	 * Load all objects that might overlap the specified region, and that have not previously been loaded.
+	 * @param region the region of interest, or null if all remaining objects should be loaded
+	 * @return the objects that were added to the hierarchy (not including their descendants), or an empty collection if no objects were added
+	 */
+	public Collection<PathObject> loadObjects(ImageRegion region);
+	
+	/**
+	 * Query whether all objects have now been loaded.
+	 * @return true if there are no more objects to load, false otherwise
+	 */
+	public boolean isFullyLoaded();
+
+}
@@ -23,30 +23,28 @@
 
 package qupath.lib.objects.hierarchy;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.WeakHashMap;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
 import org.locationtech.jts.algorithm.locate.IndexedPointInAreaLocator;
 import org.locationtech.jts.algorithm.locate.PointOnGeometryLocator;
 import org.locationtech.jts.algorithm.locate.SimplePointInAreaLocator;
 import org.locationtech.jts.geom.Coordinate;
-import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.LinearRing;
 import org.locationtech.jts.geom.Location;
 import org.locationtech.jts.geom.Polygonal;
 import org.locationtech.jts.geom.prep.PreparedGeometry;
 import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
-import org.locationtech.jts.index.SpatialIndex;
-import org.locationtech.jts.index.quadtree.Quadtree;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -67,6 +65,9 @@ import qupath.lib.roi.interfaces.ROI;
  * In practice, the cache itself is constructed lazily whenever a request is made 
  * through getObjectsForRegion, so as to avoid rebuilding it too often when the hierarchy
  * is changing a lot.
+ * <p>
+ * Objects are stored in a {@link PackedSpatialIndex} for each class. Changes to the cache are made while holding 
+ * a write lock, but queries use immutable snapshots and so do not need to wait for any lock.
  * 
  * @author Pete Bankhead
  *
@@ -78,85 +79,132 @@ class PathObjectTileCache implements PathObjectHierarchyListener {
 	final private static Logger logger = LoggerFactory.getLogger(PathObjectTileCache.class);
 	
 	/**
-	 * Largest positive envelope, used when all objects are requested.
+	 * Store a spatial index according to the class of PathObject, or null if the cache has not been constructed.
+	 * This map is replaced (rather than modified) whenever a new class is added, so that it can be queried without locking. 
+	 * Because it also determines whether the cache is active, a query can never see an active cache before its map has been built.
 	 */
-	private final static Envelope MAX_ENVELOPE = new Envelope(-Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, Double.MAX_VALUE);
+	private volatile Map<Class<? extends PathObject>, PackedSpatialIndex> map = null;
 	
 	/**
-	 * Keep a map of envelopes per ROI; ROIs should be immutable.
+	 * Maximum number of ROIs for which geometries are cached.
 	 */
-	private Map<ROI, Envelope> envelopeMap = new WeakHashMap<>();
+	private static final int MAX_CACHED_GEOMETRIES = 1000;
 	
 	/**
-	 * Keep a map of envelopes per object, because potentially an object might have its ROI replaced behind our back...
+	 * Geometries, locators and prepared geometries for the ROIs of potential parent objects.
+	 * These can be expensive to create for complex ROIs, and the same parents are tested repeatedly as objects are inserted.
+	 * ROIs are immutable, so entries never need to be invalidated - but the cache is bounded, and the least-recently-used 
+	 * ROIs are discarded whenever it is full.
 	 */
-	private Map<PathObject, Envelope> lastEnvelopeMap = new WeakHashMap<>();
+	private final Map<ROI, CachedGeometry> geometryCache = Collections.synchronizedMap(
+			new LinkedHashMap<ROI, CachedGeometry>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<ROI, CachedGeometry> eldest) {
+					return size() > MAX_CACHED_GEOMETRIES;
+				}
+			});
 	
-	/**
-	 * Store a spatial index according to the class of PathObject.
-	 */
-	private Map<Class<? extends PathObject>, SpatialIndex> map = new HashMap<>();
+	private PathObjectHierarchy hierarchy;
+	
+	private final Lock w = new ReentrantLock();
 	
 	/**
-	 * Map to cache Geometries, specifically for annotations.
+	 * A structure change event for which the cache has already been updated, and therefore no reset is required.
 	 */
-	final private static Map<ROI, Geometry> geometryMap = Collections.synchronizedMap(new WeakHashMap<>());
-	final private static Map<ROI, PointOnGeometryLocator> locatorMap = Collections.synchronizedMap(new WeakHashMap<>());
-//	final private static Map<ROI, Coordinate> centroidMap = Collections.synchronizedMap(new WeakHashMap<>());
-
-	private PathObjectHierarchy hierarchy;
-	private boolean isActive = false;
-	
-	private final ReentrantReadWriteLock rwl = new ReentrantReadWriteLock();
-    private final Lock r = rwl.readLock();
-    private final Lock w = rwl.writeLock();
+	private PathObjectHierarchyEvent upToDateEvent;
 	
 	
 	public PathObjectTileCache(PathObjectHierarchy hierarchy) {
 		this.hierarchy = hierarchy;
 		if (hierarchy != null)
-			hierarchy.addPathObjectListener(this);
+			hierarchy.addImmediatePathObjectListener(this);
 	}
 	
 	public void resetCache() {
-		isActive = false;
+		w.lock();
+		try {
+			map = null;
+		} finally {
+			w.unlock();
+		}
 		logger.trace("Cache reset!");
 	}
 	
 //	int cacheCounter = 0;
 
-	private void constructCache(Class<? extends PathObject> limitToClass) {
+	private Map<Class<? extends PathObject>, PackedSpatialIndex> constructCache(Class<? extends PathObject> limitToClass) {
 		w.lock();
 		try {
-	//		logger.info("Skipping cache reconstruction...");
 			long startTime = System.currentTimeMillis();
-			isActive = true;
-			if (limitToClass == null)
-				map.clear();
-			else
-				map.remove(limitToClass);
-			addToCache(hierarchy.getRootObject(), true, limitToClass);
+			var objectsByClass = collectObjects(hierarchy.getRootObjectWithoutLoading(), true, limitToClass);
+			Map<Class<? extends PathObject>, PackedSpatialIndex> newMap = new HashMap<>();
+			if (limitToClass != null && map != null) {
+				newMap.putAll(map);
+				newMap.remove(limitToClass);
+			}
+			for (var entry : objectsByClass.entrySet())
+				newMap.put(entry.getKey(), PackedSpatialIndex.build(entry.getValue()));
+			var constructed = Collections.unmodifiableMap(newMap);
+			map = constructed;
 			long endTime = System.currentTimeMillis();
 			logger.debug("Cache reconstructed in " + (endTime - startTime)/1000.);
+			return constructed;
 		} finally {
 			w.unlock();
 		}
-//		cacheCounter += (endTime - startTime);
-//		logger.info("Cache count: " + (cacheCounter)/1000.);
 	}
 	
-	private void ensureCacheConstructed() {
-		if (!isActive())
-			constructCache(null);
+	/**
+	 * Get the current map of spatial indexes, constructing the cache first if necessary.
+	 * Callers should use the returned map, rather than reading the field again, in case the cache is reset in the meantime.
+	 */
+	private Map<Class<? extends PathObject>, PackedSpatialIndex> ensureCacheConstructed() {
+		var current = map;
+		if (current != null)
+			return current;
+		w.lock();
+		try {
+			// Check again, in case the cache was constructed while we were waiting
+			current = map;
+			if (current == null)
+				current = constructCache(null);
+			return current;
+		} finally {
+			w.unlock();
+		}
 	}
 	
 	// TRUE if the cache has been constructed
 	public boolean isActive() {
-		return isActive;
+		return map != null;
+	}
+	
+	/**
+	 * Collect objects with ROIs according to their class, optionally including children.
+	 */
+	private static Map<Class<? extends PathObject>, List<PathObject>> collectObjects(PathObject pathObject, boolean includeChildren, Class<? extends PathObject> limitToClass) {
+		Map<Class<? extends PathObject>, List<PathObject>> objectsByClass = new HashMap<>();
+		collectObjects(pathObject, includeChildren, limitToClass, objectsByClass);
+		return objectsByClass;
+	}
+	
+	private static void collectObjects(PathObject pathObject, boolean includeChildren, Class<? extends PathObject> limitToClass, Map<Class<? extends PathObject>, List<PathObject>> objectsByClass) {
+		if (pathObject.hasROI()) {
+			Class<? extends PathObject> cls = pathObject.getClass();
+			if (limitToClass == null || cls == limitToClass)
+				objectsByClass.computeIfAbsent(cls, c -> new ArrayList<>()).add(pathObject);
+		}
+		// Add the children
+		if (includeChildren && !(pathObject instanceof TemporaryObject) && pathObject.hasChildren()) {
+			for (PathObject child : pathObject.getChildObjectsAsArray())
+				collectObjects(child, includeChildren, limitToClass, objectsByClass);
+		}
 	}
 	
 	/**
 	 * Add a PathObject to the cache, optionally including children.
+	 * This doesn't acquire the lock! The locking is done first.
 	 * 
 	 * @param pathObject
 	 * @param includeChildren
@@ -165,187 +213,201 @@ class PathObjectTileCache implements PathObjectHierarchyListener {
 		// If the cache isn't active, we can ignore this... it will be constructed when it is needed
 		if (!isActive())
 			return;
-
-		if (pathObject.hasROI()) {
-			Class<? extends PathObject> cls = pathObject.getClass();
-			if (limitToClass == null || cls == limitToClass) {
-				SpatialIndex mapObjects = map.get(cls);
-				if (mapObjects == null) {
-					mapObjects = createSpatialIndex();
-					map.put(cls, mapObjects);
-				}
-				Envelope envelope = getEnvelope(pathObject);
-				mapObjects.insert(envelope, pathObject);
-			}
+		addToCache(collectObjects(pathObject, includeChildren, limitToClass));
+	}
+	
+	private void addToCache(Map<Class<? extends PathObject>, List<PathObject>> objectsByClass) {
+		var current = map;
+		if (current == null)
+			return;
+		Map<Class<? extends PathObject>, PackedSpatialIndex> newMap = null;
+		for (var entry : objectsByClass.entrySet()) {
+			var index = current.get(entry.getKey());
+			if (index == null) {
+				if (newMap == null)
+					newMap = new HashMap<>(current);
+				newMap.put(entry.getKey(), PackedSpatialIndex.build(entry.getValue()));
+			} else
+				index.insert(entry.getValue());
 		}
-		
-		// Add the children
-		if (includeChildren && !(pathObject instanceof TemporaryObject) && pathObject.hasChildren()) {
-			for (PathObject child : pathObject.getChildObjectsAsArray())
-				addToCache(child, includeChildren, limitToClass);
+		if (newMap != null)
+			map = Collections.unmodifiableMap(newMap);
+	}
+
+	/**
+	 * Request objects from a loader, and add them to the cache (if it is active).
+	 * The write lock is held throughout so that the cache cannot be reconstructed while objects
+	 * are being added to the hierarchy.
+	 *
+	 * @param loader the loader, which should return the objects it has just added to the hierarchy
+	 */
+	void loadObjects(Supplier<Collection<PathObject>> loader) {
+		w.lock();
+		try {
+			var loaded = loader.get();
+			if (!isActive() || loaded.isEmpty())
+				return;
+			Map<Class<? extends PathObject>, List<PathObject>> objectsByClass = new HashMap<>();
+			for (PathObject pathObject : loaded)
+				collectObjects(pathObject, true, null, objectsByClass);
+			addToCache(objectsByClass);
+		} finally {
+			w.unlock();
 		}
 	}
 
-	Geometry getGeometry(ROI roi) {
-		var geometry = geometryMap.get(roi);
-		if (geometry == null)
-			return roi.getGeometry();
-		else
-			return geometry;
+	/**
+	 * Update the cache for objects that are being inserted into the hierarchy, ignoring their children.
+	 * The cache is constructed first if necessary, so that it can be kept up to date without 
+	 * a full rebuild after the objects have been inserted.
+	 * 
+	 * @param pathObjects
+	 */
+	void updateObjects(Collection<? extends PathObject> pathObjects) {
+		w.lock();
+		try {
+			ensureCacheConstructed();
+			Map<Class<? extends PathObject>, List<PathObject>> objectsByClass = new HashMap<>();
+			for (PathObject pathObject : pathObjects) {
+				removeFromCache(pathObject, false);
+				collectObjects(pathObject, false, null, objectsByClass);
+			}
+			addToCache(objectsByClass);
+		} finally {
+			w.unlock();
+		}
 	}
 	
-	Geometry getGeometry(PathObject pathObject) {
-		ROI roi = pathObject.getROI();
-		Geometry geometry = geometryMap.get(roi);
-		if (geometry == null) {
-			geometry = roi.getGeometry();
-			if (pathObject.isAnnotation() || pathObject.isTMACore()) {
-				geometryMap.put(roi, geometry);
-			}
-////			long startTime = System.currentTimeMillis();
-//			if (!geometry.isValid()) {
-//				int nVertices = geometry.getNumPoints();
-//				if (geometry.getNumPoints() < 100)
-//					logger.warn("{} is not a valid geometry! Actual geometry {}", pathObject, geometry);
-//				else
-//					logger.warn("{} is not a valid geometry! Actual geometry {} ({} vertices)", pathObject, geometry.getGeometryType(), nVertices);
-//			}
-////			long endTime = System.currentTimeMillis();
-////			System.err.println("Testing " + (endTime - startTime) + " ms for " + geometry);
+	/**
+	 * Indicate that the cache is already up to date for a structure change event that is about to be fired, 
+	 * so that it does not need to be reset.
+	 * 
+	 * @param event
+	 */
+	void setUpToDate(PathObjectHierarchyEvent event) {
+		w.lock();
+		try {
+			upToDateEvent = event;
+		} finally {
+			w.unlock();
 		}
-		return geometry;
+	}
+
+	/**
+	 * Create a locator to test whether points fall inside a geometry.
+	 * This is worthwhile if the same geometry will be used to test many points.
+	 * @param geometry
+	 * @return
+	 */
+	static PointOnGeometryLocator createLocator(Geometry geometry) {
+		if (geometry instanceof Polygonal || geometry instanceof LinearRing)
+			return new IndexedPointInAreaLocator(geometry);
+		else
+			return new SimplePointInAreaLocator(geometry);
 	}
 	
-	private Coordinate getCentroidCoordinate(PathObject pathObject) {
+	private static Coordinate getCentroidCoordinate(PathObject pathObject) {
 		ROI roi = PathObjectTools.getROI(pathObject, true);
-		// It's faster not to rely on a synchronized map
 		return new Coordinate(roi.getCentroidX(), roi.getCentroidY());
-//		Coordinate coordinate = centroidMap.get(roi);
-//		if (coordinate == null) {
-//			coordinate = new Coordinate(roi.getCentroidX(), roi.getCentroidY());
-////			coordinate = getGeometry(pathObject).getCentroid().getCoordinate();
-//			centroidMap.put(roi, coordinate);
-//		}
-//		return coordinate;
 	}
 	
-	PointOnGeometryLocator getLocator(ROI roi, boolean addToCache) {
-		var locator = locatorMap.get(roi);
-		if (locator == null) {
-			var geometry = getGeometry(roi);
-			if (geometry instanceof Polygonal || geometry instanceof LinearRing)
-				locator = new IndexedPointInAreaLocator(geometry);
-			else
-				locator = new SimplePointInAreaLocator(geometry);
-			locatorMap.put(roi, locator);
-		}
-		return locator;
+	private CachedGeometry getCachedGeometry(ROI roi) {
+		return geometryCache.computeIfAbsent(roi, CachedGeometry::new);
 	}
 	
-//	public boolean covers(PathObject possibleParent, PathObject possibleChild) {
-//		return getGeometry(possibleParent).covers(getGeometry(possibleChild));
-//	}
-	
-	private Map<Geometry, PreparedGeometry> preparedGeometryMap = new WeakHashMap<>();
+	/**
+	 * Get a (possibly cached) locator to test whether points fall inside a ROI.
+	 * @param roi
+	 * @return
+	 */
+	PointOnGeometryLocator getLocator(ROI roi) {
+		return getCachedGeometry(roi).getLocator();
+	}
 	
-	PreparedGeometry getPreparedGeometry(Geometry geometry) {
-		var prepared = preparedGeometryMap.get(geometry);
-		if (prepared != null)
-			return prepared;
-		
-		synchronized (preparedGeometryMap) {
-			prepared = preparedGeometryMap.get(geometry);
-			if (prepared != null)
-				return prepared;
-			prepared = PreparedGeometryFactory.prepare(geometry);
-			preparedGeometryMap.put(geometry, prepared);
-			return prepared;
-		}
+	/**
+	 * Get a (possibly cached) prepared geometry for a ROI.
+	 * @param roi
+	 * @return
+	 */
+	PreparedGeometry getPreparedGeometry(ROI roi) {
+		return getCachedGeometry(roi).getPreparedGeometry();
 	}
 	
+	/**
+	 * Check if one object covers another. 
+	 * The geometry of the possible parent is cached, since it is likely to be tested against other objects.
+	 * @param possibleParent
+	 * @param possibleChild
+	 * @return
+	 */
 	boolean covers(PathObject possibleParent, PathObject possibleChild) {
-		var child = getGeometry(possibleChild);
-		// If we have an annotation, do a quick check for a single coordinate outside
-		if (possibleParent.isAnnotation()) {
-			if (getLocator(possibleParent.getROI(), true).locate(child.getCoordinate()) == Location.EXTERIOR)
-				return false;
-		}
-		var parent = getGeometry(possibleParent);
-		return covers(parent, child);
+		var cached = getCachedGeometry(possibleParent.getROI());
+		var child = possibleChild.getROI().getGeometry();
+		// Do a quick check for a single coordinate outside
+		var coordinate = child.getCoordinate();
+		if (coordinate != null && cached.getLocator().locate(coordinate) == Location.EXTERIOR)
+			return false;
+		return covers(cached.getPreparedGeometry(), child);
 	}
 	
-	boolean covers(PreparedGeometry parent, Geometry child) {
+	static boolean covers(PreparedGeometry parent, Geometry child) {
 		return parent.covers(child);
 	}
 	
-	boolean covers(Geometry parent, Geometry child) {
-//		if (!parent.getEnvelopeInternal().covers(child.getEnvelopeInternal()))
-//			return false;
-//		if (parent instanceof Polygon)
-//			return parent.covers(child);
-//		if (parent instanceof MultiPolygon) {
-//			for (int i = 0; i < parent.getNumGeometries(); i++) {
-//				if (covers(parent.getGeometryN(i), child))
-//					return true;
-//			}
-//			return false;
-//		}
-		return covers(getPreparedGeometry(parent), child);
-	}
-	
+	/**
+	 * Check if the centroid of one object falls inside another.
+	 * The locator for the possible parent is cached, since it is likely to be tested against other objects.
+	 * @param possibleParent
+	 * @param possibleChild
+	 * @return
+	 */
 	boolean containsCentroid(PathObject possibleParent, PathObject possibleChild) {
-		Coordinate centroid = getCentroidCoordinate(possibleChild);
-		if (centroid == null)
-			return false;
-		if (possibleParent.isDetection())
-			return SimplePointInAreaLocator.locate(
-					centroid, getGeometry(possibleParent)) != Location.EXTERIOR;
-		return getLocator(possibleParent.getROI(), true).locate(centroid) != Location.EXTERIOR;
+		return containsCentroid(getLocator(possibleParent.getROI()), possibleChild);
 	}
 	
-	boolean containsCentroid(PointOnGeometryLocator locator, PathObject possibleChild) {
+	static boolean containsCentroid(PointOnGeometryLocator locator, PathObject possibleChild) {
 		Coordinate centroid = getCentroidCoordinate(possibleChild);
 		if (centroid == null)
 			return false;
 		return locator.locate(centroid) != Location.EXTERIOR;
 	}
 	
-	boolean containsCentroid(Geometry possibleParent, PathObject possibleChild) {
-		Coordinate centroid = getCentroidCoordinate(possibleChild);
-		if (centroid == null)
-			return false;
-		return SimplePointInAreaLocator.locate(centroid, possibleParent) != Location.EXTERIOR;
-	}
-	
-	
-	private SpatialIndex createSpatialIndex() {
-		return new Quadtree();
-//		return new STRtree();
-	}
-	
-	private Envelope getEnvelope(PathObject pathObject) {
-		var envelope = getEnvelope(pathObject.getROI());
-		lastEnvelopeMap.put(pathObject, envelope);
-		return envelope;
-	}
 	
-	private Envelope getEnvelope(ROI roi) {
-		var envelope = envelopeMap.get(roi);
-		if (envelope == null) {
-			envelope = new Envelope(roi.getBoundsX(), roi.getBoundsX() + roi.getBoundsWidth(),
-					roi.getBoundsY(), roi.getBoundsY() + roi.getBoundsHeight());
-			envelopeMap.put(roi, envelope);
+	/**
+	 * Geometry for a ROI, along with a locator and prepared geometry. 
+	 * These are all created when first needed, so that the cache isn't locked while they are created.
+	 */
+	private static class CachedGeometry {
+		
+		private final ROI roi;
+		private Geometry geometry;
+		private PointOnGeometryLocator locator;
+		private PreparedGeometry preparedGeometry;
+		
+		CachedGeometry(ROI roi) {
+			this.roi = roi;
 		}
-		return envelope;
-	}
-	
-	private Envelope getEnvelope(ImageRegion region) {
-		return new Envelope(region.getMinX(), region.getMaxX(),
-				region.getMinY(), region.getMaxY());
+		
+		synchronized Geometry getGeometry() {
+			if (geometry == null)
+				geometry = roi.getGeometry();
+			return geometry;
+		}
+		
+		synchronized PointOnGeometryLocator getLocator() {
+			if (locator == null)
+				locator = createLocator(getGeometry());
+			return locator;
+		}
+		
+		synchronized PreparedGeometry getPreparedGeometry() {
+			if (preparedGeometry == null)
+				preparedGeometry = PreparedGeometryFactory.prepare(getGeometry());
+			return preparedGeometry;
+		}
+		
 	}
 	
-	
-	
 	/**
 	 * This doesn't acquire the lock! The locking is done first.
 	 * 
@@ -354,49 +416,21 @@ class PathObjectTileCache implements PathObjectHierarchyListener {
 	 */
 	private void removeFromCache(PathObject pathObject, boolean removeChildren) {
 		// If the cache isn't active, then nothing to remove
-		if (!isActive())
+		var current = map;
+		if (current == null)
 			return;
 		
-		SpatialIndex mapObjects = map.get(pathObject.getClass());
-		
-		// We can remove objects from a Quadtree
-		if (mapObjects instanceof Quadtree) {
-			Envelope envelope = lastEnvelopeMap.get(pathObject);
-			envelope = MAX_ENVELOPE;
-//				System.err.println("Before: " + mapObjects.query(MAX_ENVELOPE).size());
-			if (envelope != null) {
-				if (mapObjects.remove(envelope, pathObject)) {
-					logger.debug("Removed {} from cache", pathObject);
-				} else
-					logger.debug("Unable to remove {} from cache", pathObject);
-			} else {
-				logger.debug("No envelope found for {}", pathObject);					
-			}
-//				System.err.println("After: " + mapObjects.query(MAX_ENVELOPE).size());
-			// Remove the children
-			if (removeChildren) {
-				for (PathObject child : pathObject.getChildObjectsAsArray())
-					removeFromCache(child, removeChildren);
-			}
-		} else if (mapObjects instanceof SpatialIndex && !removeChildren) {
-			// We can't remove objects from a STRtree, but since we're just removing one object we can rebuild only the cache for this class
-			constructCache(pathObject.getClass());
-		} else {
-			// If we need to remove multiple objects, better to just rebuild the entire cache
-			constructCache(null);
+		var objectsByClass = collectObjects(pathObject, removeChildren, null);
+		// Ensure we remove the object even if it no longer has a ROI (since this might have been set to null)
+		objectsByClass.computeIfAbsent(pathObject.getClass(), c -> new ArrayList<>()).add(pathObject);
+		for (var entry : objectsByClass.entrySet()) {
+			var index = current.get(entry.getKey());
+			if (index != null)
+				index.remove(entry.getValue());
 		}
 	}
 	
 	
-//	/**
-//	 * Add a PathObject to the cache.  Child objects are not added.
-//	 * @param pathObject
-//	 */
-//	private void addToCache(PathObject pathObject) {
-//		addToCache(pathObject, false);
-//	}
-	
-	
 	/**
 	 * Get all the PathObjects stored in this cache of a specified type and having ROIs with bounds overlapping a specified region.
 	 * This does not guarantee that the ROI (which may not be rectangular) overlaps the region...
@@ -416,86 +450,55 @@ class PathObjectTileCache implements PathObjectHierarchyListener {
 	 * @return
 	 */
 	public Collection<PathObject> getObjectsForRegion(Class<? extends PathObject> cls, ImageRegion region, Collection<PathObject> pathObjects, boolean includeSubclasses) {
-		ensureCacheConstructed();
-		
-		var envelope = region == null ? MAX_ENVELOPE : getEnvelope(region);
+		var current = ensureCacheConstructed();
 		
-		int z = region == null ? -1 : region.getZ();
-		int t = region == null ? -1 : region.getT();
-		r.lock();
-		try {
-			// Iterate through all the classes, getting objects of the specified class or subclasses thereof
-			for (Entry<Class<? extends PathObject>, SpatialIndex> entry : map.entrySet()) {
-				if (cls == null || (includeSubclasses && cls.isAssignableFrom(entry.getKey())) || cls.isInstance(entry.getKey())) {
-					if (entry.getValue() != null) {
-						var list = entry.getValue().query(envelope);
-						if (list.isEmpty())
-							continue;
-						
-						if (pathObjects == null)
-							pathObjects = new HashSet<PathObject>();
-						
-						// Add all objects that have a parent, i.e. might be in the hierarchy
-						for (PathObject pathObject : (List<PathObject>)list) {
-							var roi = pathObject.getROI();
-							if (roi == null || region == null || (roi.getZ() == z && roi.getT() == t)) {
-								if (pathObject.getParent() != null || pathObject.isRootObject()) {
-									if (envelope.intersects(getEnvelope(pathObject)))
-										pathObjects.add(pathObject);
-								}
-							}
-						}
-					}
-//						pathObjects = entry.getValue().getObjectsForRegion(region, pathObjects);
-				}
+		Collection<PathObject> output = pathObjects == null ? new HashSet<>() : pathObjects;
+		// Iterate through all the classes, getting objects of the specified class or subclasses thereof
+		for (var entry : current.entrySet()) {
+			if (cls == null || (includeSubclasses && cls.isAssignableFrom(entry.getKey())) || cls.isInstance(entry.getKey())) {
+				entry.getValue().query(region, pathObject -> {
+					// Add all objects that have a parent, i.e. might be in the hierarchy
+					if (isInRegion(pathObject, region) && (pathObject.getParent() != null || pathObject.isRootObject()))
+						output.add(pathObject);
+					return true;
+				});
 			}
-	//		logger.info("Objects for " + region + ": " + (pathObjects == null ? 0 : pathObjects.size()));
-			if (pathObjects == null)
-				return Collections.emptySet();
-			return pathObjects;
-		} finally {
-			r.unlock();
 		}
+		if (pathObjects == null && output.isEmpty())
+			return Collections.emptySet();
+		return output;
+	}
+	
+	/**
+	 * Check the current ROI of an object overlaps a region, since the ROI might have been changed after the object was 
+	 * added to the cache.
+	 */
+	private static boolean isInRegion(PathObject pathObject, ImageRegion region) {
+		var roi = pathObject.getROI();
+		if (roi == null)
+			return false;
+		if (region == null)
+			return true;
+		if (roi.getZ() != region.getZ() || roi.getT() != region.getT())
+			return false;
+		double x = roi.getBoundsX();
+		double y = roi.getBoundsY();
+		return x <= region.getMaxX() && y <= region.getMaxY() && 
+				x + roi.getBoundsWidth() >= region.getMinX() && y + roi.getBoundsHeight() >= region.getMinY();
 	}
 	
 	public boolean hasObjectsForRegion(Class<? extends PathObject> cls, ImageRegion region, boolean includeSubclasses) {
-		ensureCacheConstructed();
-		
-		var envelope = region == null ? MAX_ENVELOPE : getEnvelope(region);
+		var current = ensureCacheConstructed();
 		
-		int z = region == null ? -1 : region.getZ();
-		int t = region == null ? -1 : region.getT();
-		r.lock();
-		try {
-			// Iterate through all the classes, getting objects of the specified class or subclasses thereof
-			for (Entry<Class<? extends PathObject>, SpatialIndex> entry : map.entrySet()) {
-				if (cls == null || cls.isInstance(entry.getKey()) || (includeSubclasses && cls.isAssignableFrom(entry.getKey()))) {
-					if (entry.getValue() != null) {
-						var list = (List<PathObject>)entry.getValue().query(envelope);
-						for (var pathObject : list) {
-							var roi = pathObject.getROI();
-							if (roi == null)
-								continue;
-							if (region == null)
-								return true;
-							if (roi.getZ() != z || roi.getT() != t)
-								continue;
-							if (region.intersects(roi.getBoundsX(), roi.getBoundsY(), roi.getBoundsWidth(), roi.getBoundsHeight())) {
-								return true;
-							}
-						}
-//						if (list.stream().anyMatch(p -> p.hasROI() && 
-//								(region == null || (p.getROI().getZ() == z && p.getROI().getT() == t))))
-//							return true;
-//						if (entry.getValue().hasObjectsForRegion(region))
-//							return true;
-					}
-				}
+		// Iterate through all the classes, getting objects of the specified class or subclasses thereof
+		for (var entry : current.entrySet()) {
+			if (cls == null || cls.isInstance(entry.getKey()) || (includeSubclasses && cls.isAssignableFrom(entry.getKey()))) {
+				// Querying stops as soon as we find an object
+				if (!entry.getValue().query(region, pathObject -> !isInRegion(pathObject, region)))
+					return true;
 			}
-			return false;
-		} finally {
-			r.unlock();
 		}
+		return false;
 	}
 	
 //	public synchronized Collection<PathObject> getObjectsForRegion(Class<? extends PathObject> cls, Rectangle region, Collection<PathObject> pathObjects) {
@@ -547,9 +550,11 @@ class PathObjectTileCache implements PathObjectHierarchyListener {
 //					addToCache(singleObject, false, singleObject.getClass());					
 //				} else
 //				System.err.println(event);
-				if (!event.isChanging())
+				if (!event.isChanging() && event != upToDateEvent)
 					resetCache();
 			}
+			if (event == upToDateEvent)
+				upToDateEvent = null;
 		} finally {
 			w.unlock();
 		}
@@ -27,6 +27,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import qupath.lib.objects.PathObject;
 import qupath.lib.objects.hierarchy.PathObjectHierarchy;
@@ -81,6 +82,7 @@ public class PathObjectHierarchyEvent {
 	private HierarchyEventType type;
 	private List<PathObject> pathObjects;
 	private boolean isChanging;
+	private Map<PathObject, PathObject> previousParents = Collections.emptyMap();
 
 	PathObjectHierarchyEvent(final Object source, final PathObjectHierarchy hierarchy, final HierarchyEventType type, final PathObject parentObject, final List<PathObject> pathObjects, final boolean isChanging) {
 		this.source = source;
@@ -106,6 +108,24 @@ public class PathObjectHierarchyEvent {
 	public static PathObjectHierarchyEvent createStructureChangeEvent(Object source, PathObjectHierarchy hierarchy, PathObject parentObject) {
 		return new PathObjectHierarchyEvent(source, hierarchy, HierarchyEventType.OTHER_STRUCTURE_CHANGE, parentObject, new ArrayList<>(0), false);						
 	}
+	
+	/**
+	 * Create a hierarchy event indicating that the hierarchy structure has been changed, where the objects that were 
+	 * added, removed or moved are known.
+	 * <p>
+	 * The changed objects should include every object whose parent has changed, apart from objects that were moved because 
+	 * they are (or were) children of one of the changed objects.
+	 * If the collection is empty, any object below the parent object may have changed.
+	 * 
+	 * @param source
+	 * @param hierarchy
+	 * @param parentObject
+	 * @param changedObjects
+	 * @return
+	 */
+	public static PathObjectHierarchyEvent createStructureChangeEvent(Object source, PathObjectHierarchy hierarchy, PathObject parentObject, Collection<? extends PathObject> changedObjects) {
+		return new PathObjectHierarchyEvent(source, hierarchy, HierarchyEventType.OTHER_STRUCTURE_CHANGE, parentObject, new ArrayList<>(changedObjects), false);
+	}
 
 	/**
 	 * Create a hierarchy event indicated objects were added.
@@ -143,6 +163,20 @@ public class PathObjectHierarchyEvent {
 	public static PathObjectHierarchyEvent createObjectsChangedEvent(Object source, PathObjectHierarchy hierarchy, HierarchyEventType type, Collection<? extends PathObject> pathObjects, boolean isChanging) {
 		return new PathObjectHierarchyEvent(source, hierarchy, type, null, new ArrayList<>(pathObjects), isChanging);
 	}
+	
+	/**
+	 * Create a copy of an event that also contains the previous parents of objects that were added, removed or moved.
+	 * @param event the original event
+	 * @param previousParents map from each object to its parent before the change, or null if it was not previously in the hierarchy; 
+	 *                        this is not copied, and so should not be modified later
+	 * @return
+	 * @see #getPreviousParents()
+	 */
+	public static PathObjectHierarchyEvent createEventWithPreviousParents(PathObjectHierarchyEvent event, Map<PathObject, PathObject> previousParents) {
+		var newEvent = new PathObjectHierarchyEvent(event.source, event.hierarchy, event.type, event.parentObject, event.pathObjects, event.isChanging);
+		newEvent.previousParents = Collections.unmodifiableMap(previousParents);
+		return newEvent;
+	}
 
 	/**
 	 * Returns true if changes are still being made, so more events will be fired.
@@ -165,12 +199,27 @@ public class PathObjectHierarchyEvent {
 	
 	/**
 	 * The objects that were affected by whichever changes were made.
+	 * <p>
+	 * For structure change events, this may be empty if the affected objects are not known.
 	 * @return
 	 */
 	public List<PathObject> getChangedObjects() {
 		return pathObjects;
 	}
 	
+	/**
+	 * Get the parents that objects had before the change, for every object that the hierarchy added, removed or moved - 
+	 * including children that were reassigned along with one of the changed objects. 
+	 * Objects that were not previously in the hierarchy have a null parent.
+	 * <p>
+	 * This is empty if the event was not created by the hierarchy, or if objects were moved directly (e.g. using 
+	 * {@link PathObject#addPathObject(PathObject)}) rather than through the hierarchy.
+	 * @return an unmodifiable map from each object to its previous parent
+	 */
+	public Map<PathObject, PathObject> getPreviousParents() {
+		return previousParents;
+	}
+	
 	/**
 	 * Get the hierarchy event type.
 	 * @return
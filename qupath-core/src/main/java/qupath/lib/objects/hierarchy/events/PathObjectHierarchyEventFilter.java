@@ -0,0 +1,155 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.lib.objects.hierarchy.events;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.hierarchy.events.PathObjectHierarchyEvent.HierarchyEventType;
+
+/**
+ * Filter used by a {@link PathObjectHierarchyListener} to declare which hierarchy events it is interested in.
+ * <p>
+ * Events can be filtered by {@link HierarchyEventType} and by the classes of the objects that have changed.
+ * An object class filter is not applied to {@link HierarchyEventType#OTHER_STRUCTURE_CHANGE} events, 
+ * since these may impact any object in the hierarchy.
+ * <p>
+ * Filters are immutable; each method returns a new filter.
+ * @see qupath.lib.objects.hierarchy.PathObjectHierarchy#addPathObjectListener(PathObjectHierarchyListener, PathObjectHierarchyEventFilter)
+ */
+public class PathObjectHierarchyEventFilter implements Predicate<PathObjectHierarchyEvent> {
+	
+	private static final PathObjectHierarchyEventFilter ACCEPT_ALL = new PathObjectHierarchyEventFilter(EnumSet.allOf(HierarchyEventType.class), Collections.emptySet());
+	
+	private final Set<HierarchyEventType> eventTypes;
+	private final Set<Class<? extends PathObject>> objectClasses;
+	
+	private PathObjectHierarchyEventFilter(Set<HierarchyEventType> eventTypes, Set<Class<? extends PathObject>> objectClasses) {
+		this.eventTypes = Collections.unmodifiableSet(eventTypes);
+		this.objectClasses = Collections.unmodifiableSet(objectClasses);
+	}
+	
+	/**
+	 * Get a filter that accepts all events.
+	 * @return
+	 */
+	public static PathObjectHierarchyEventFilter acceptAll() {
+		return ACCEPT_ALL;
+	}
+	
+	/**
+	 * Create a filter that accepts only events of the specified types.
+	 * @param types
+	 * @return
+	 */
+	public static PathObjectHierarchyEventFilter forEventTypes(HierarchyEventType... types) {
+		return ACCEPT_ALL.eventTypes(types);
+	}
+	
+	/**
+	 * Create a filter that accepts only events that refer to objects of the specified classes (or subclasses).
+	 * @param classes
+	 * @return
+	 */
+	@SafeVarargs
+	public static PathObjectHierarchyEventFilter forObjectClasses(Class<? extends PathObject>... classes) {
+		return ACCEPT_ALL.objectClasses(classes);
+	}
+	
+	/**
+	 * Create a filter that accepts all events except those of the specified types.
+	 * @param types
+	 * @return
+	 */
+	public static PathObjectHierarchyEventFilter excludeEventTypes(HierarchyEventType... types) {
+		var set = EnumSet.allOf(HierarchyEventType.class);
+		set.removeAll(Arrays.asList(types));
+		return new PathObjectHierarchyEventFilter(set, Collections.emptySet());
+	}
+	
+	/**
+	 * Create a new filter that retains the object classes of this filter, but accepts only the specified event types.
+	 * @param types
+	 * @return
+	 */
+	public PathObjectHierarchyEventFilter eventTypes(HierarchyEventType... types) {
+		var set = EnumSet.noneOf(HierarchyEventType.class);
+		set.addAll(Arrays.asList(types));
+		return new PathObjectHierarchyEventFilter(set, objectClasses);
+	}
+	
+	/**
+	 * Create a new filter that retains the event types of this filter, but accepts only events referring to objects of the specified classes.
+	 * @param classes
+	 * @return
+	 */
+	@SafeVarargs
+	public final PathObjectHierarchyEventFilter objectClasses(Class<? extends PathObject>... classes) {
+		return new PathObjectHierarchyEventFilter(eventTypes, new LinkedHashSet<>(Arrays.asList(classes)));
+	}
+	
+	/**
+	 * Get the event types accepted by this filter.
+	 * @return
+	 */
+	public Set<HierarchyEventType> getEventTypes() {
+		return eventTypes;
+	}
+	
+	/**
+	 * Get the object classes accepted by this filter, or an empty set if objects of any class are accepted.
+	 * @return
+	 */
+	public Set<Class<? extends PathObject>> getObjectClasses() {
+		return objectClasses;
+	}
+
+	@Override
+	public boolean test(PathObjectHierarchyEvent event) {
+		if (!eventTypes.contains(event.getEventType()))
+			return false;
+		if (objectClasses.isEmpty() || event.getEventType() == HierarchyEventType.OTHER_STRUCTURE_CHANGE)
+			return true;
+		var changed = event.getChangedObjects();
+		if (changed.isEmpty())
+			return true;
+		for (var pathObject : changed) {
+			for (var cls : objectClasses) {
+				if (cls.isInstance(pathObject))
+					return true;
+			}
+		}
+		return false;
+	}
+	
+	@Override
+	public String toString() {
+		return "PathObjectHierarchyEventFilter [eventTypes=" + eventTypes + ", objectClasses=" + objectClasses + "]";
+	}
+
+}
@@ -725,8 +725,9 @@ class DefaultProject implements Project<BufferedImage> {
 				return null;
 			ImageData<BufferedImage> imageData = null;
 			if (Files.exists(path)) {
-				try (var stream = Files.newInputStream(path)) {
-					imageData = PathIO.readImageData(stream, null, server, BufferedImage.class);
+				try {
+					// Read from the path, so that detections may be loaded on demand (if requested)
+					imageData = PathIO.readImageData(path, null, server, BufferedImage.class);
 					imageData.setLastSavedPath(path.toString(), true);
 				} catch (IOException e) {
 					logger.error("Error reading image data from " + path, e);
@@ -760,6 +761,9 @@ class DefaultProject implements Project<BufferedImage> {
 			getEntryPath(true);
 			var pathData = getImageDataPath();
 			
+			// Ensure all objects are available before moving the file, since they might be loaded from it on demand
+			imageData.getHierarchy().ensureFullyLoaded();
+			
 			// If we already have a file, back it up first
 			var pathBackup = getBackupImageDataPath();
 			if (Files.exists(pathData))
@@ -0,0 +1,152 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.lib.analysis.images;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Polygon;
+
+import qupath.lib.roi.GeometryTools;
+
+@SuppressWarnings("javadoc")
+public class TestContourStitcher {
+	
+	private static GeometryFactory factory = GeometryTools.getDefaultFactory();
+	
+	@Test
+	public void testSinglePixel() {
+		int[] pixels = new int[9];
+		pixels[4] = 1;
+		var stitcher = new ContourStitcher(Arrays.asList(1));
+		stitcher.addTile(0, 0, 3, 3, pixels);
+		var geom = stitcher.createGeometries(factory, 2.0).get(1);
+		assertEquals(4.0, geom.getArea(), 1e-9);
+		assertTrue(geom.isValid());
+		assertEquals(1, geom.getNumGeometries());
+	}
+	
+	@Test
+	public void testDiagonalPixels() {
+		// Diagonal pixels should be separate polygons, and diagonal holes separate holes
+		int[] pixels = {
+				1, 1, 1, 1, 1,
+				1, 0, 1, 1, 1,
+				1, 1, 0, 1, 1,
+				1, 1, 1, 0, 1,
+				1, 1, 1, 1, 1,
+				0, 1, 0, 1, 0
+		};
+		for (int tileSize : new int[] {1, 2, 3, 10}) {
+			var geometries = traceTiled(pixels, 5, 6, tileSize, Arrays.asList(0, 1));
+			var expected = createExpected(pixels, 5, 6, Arrays.asList(0, 1));
+			assertGeometriesMatch(expected, geometries);
+			assertEquals(1, geometries.get(1).getNumGeometries());
+			assertEquals(3, ((Polygon)geometries.get(1).getGeometryN(0)).getNumInteriorRing());
+		}
+	}
+	
+	@Test
+	public void testRandomTiles() {
+		var rng = new Random(100);
+		int width = 67;
+		int height = 53;
+		var labels = Arrays.asList(0, 1, 2);
+		for (int trial = 0; trial < 5; trial++) {
+			int[] pixels = new int[width * height];
+			for (int i = 0; i < pixels.length; i++)
+				pixels[i] = rng.nextInt(10) < 6 ? 1 : rng.nextInt(3);
+			var expected = createExpected(pixels, width, height, labels);
+			for (int tileSize : new int[] {7, 16, 32, 100}) {
+				var geometries = traceTiled(pixels, width, height, tileSize, labels);
+				assertGeometriesMatch(expected, geometries);
+			}
+		}
+	}
+	
+	@Test
+	public void testEmpty() {
+		var stitcher = new ContourStitcher(Arrays.asList(1, 2));
+		stitcher.addTile(0, 0, 4, 4, new int[16]);
+		assertTrue(stitcher.createGeometries(factory, 1.0).isEmpty());
+	}
+	
+	
+	private static void assertGeometriesMatch(Map<Integer, Geometry> expected, Map<Integer, Geometry> actual) {
+		assertEquals(expected.keySet(), actual.keySet());
+		for (var key : expected.keySet()) {
+			var geomExpected = expected.get(key);
+			var geomActual = actual.get(key);
+			assertTrue(geomActual.isValid(), () -> new org.locationtech.jts.operation.valid.IsValidOp(geomActual).getValidationError().toString());
+			assertEquals(geomExpected.getArea(), geomActual.getArea(), 1e-6);
+			assertEquals(geomExpected.getNumGeometries(), geomActual.getNumGeometries());
+			assertTrue(geomExpected.symDifference(geomActual).isEmpty());
+		}
+	}
+	
+	private static Map<Integer, Geometry> traceTiled(int[] pixels, int width, int height, int tileSize, List<Integer> labels) {
+		var stitcher = new ContourStitcher(labels);
+		for (int y = 0; y < height; y += tileSize) {
+			for (int x = 0; x < width; x += tileSize) {
+				int w = Math.min(tileSize, width - x);
+				int h = Math.min(tileSize, height - y);
+				int[] tile = new int[w * h];
+				for (int yy = 0; yy < h; yy++)
+					System.arraycopy(pixels, (y + yy) * width + x, tile, yy * w, w);
+				stitcher.addTile(x, y, w, h, tile);
+			}
+		}
+		return stitcher.createGeometries(factory, 1.0);
+	}
+	
+	private static Map<Integer, Geometry> createExpected(int[] pixels, int width, int height, List<Integer> labels) {
+		var map = new LinkedHashMap<Integer, Geometry>();
+		for (int label : labels) {
+			List<Geometry> squares = new ArrayList<>();
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					if (pixels[y * width + x] == label)
+						squares.add(GeometryTools.createRectangle(x, y, 1, 1));
+				}
+			}
+			if (!squares.isEmpty()) {
+				var union = GeometryTools.union(squares);
+				assertFalse(union.isEmpty());
+				map.put(label, union);
+			}
+		}
+		return map;
+	}
+
+}
@@ -0,0 +1,188 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.lib.awt.common;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("javadoc")
+public class TestShapeRasterizer {
+	
+	private static final int WIDTH = 128;
+	private static final int HEIGHT = 96;
+	
+	private static List<Shape> createShapes(long seed) {
+		List<Shape> shapes = new ArrayList<>();
+		shapes.add(new Rectangle2D.Double(10, 20, 30, 40));
+		shapes.add(new Rectangle2D.Double(-10.3, 3.3, 300.1, 11.35));
+		shapes.add(new Ellipse2D.Double(50.2, 10.7, 60.3, 45.1));
+		shapes.addAll(createPolygons(seed));
+		return shapes;
+	}
+	
+	private static List<Shape> createPolygons(long seed) {
+		var rand = new Random(seed);
+		List<Shape> shapes = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			int windingRule = i % 2 == 0 ? Path2D.WIND_EVEN_ODD : Path2D.WIND_NON_ZERO;
+			var path = new Path2D.Double(windingRule);
+			// Include self-intersecting polygons and multiple subpaths, some of which extend beyond the raster
+			int nSubpaths = 1 + rand.nextInt(3);
+			for (int s = 0; s < nSubpaths; s++) {
+				int nVertices = 3 + rand.nextInt(12);
+				for (int v = 0; v < nVertices; v++) {
+					double x = rand.nextDouble() * WIDTH * 1.4 - WIDTH * 0.2;
+					double y = rand.nextDouble() * HEIGHT * 1.4 - HEIGHT * 0.2;
+					if (v == 0)
+						path.moveTo(x, y);
+					else
+						path.lineTo(x, y);
+				}
+				path.closePath();
+			}
+			shapes.add(path);
+		}
+		return shapes;
+	}
+	
+	private static byte[] fillWithGraphics(Shape shape, AffineTransform transform, boolean normalize) {
+		var img = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_BYTE_GRAY);
+		var g2d = img.createGraphics();
+		if (!normalize)
+			g2d.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+		g2d.setColor(Color.WHITE);
+		if (transform != null)
+			g2d.transform(transform);
+		g2d.fill(shape);
+		g2d.dispose();
+		return ((DataBufferByte)img.getRaster().getDataBuffer()).getData();
+	}
+	
+	private static byte[] fillWithRasterizer(Shape shape, AffineTransform transform, boolean normalize) {
+		var spans = ShapeRasterizer.fill(shape, transform, WIDTH, HEIGHT, normalize);
+		byte[] data = new byte[WIDTH * HEIGHT];
+		spans.fill(data, WIDTH, (byte)255);
+		return data;
+	}
+	
+	/**
+	 * Count differences between two binary images, ensuring these are few relative to the number of filled pixels.
+	 * Small differences are expected, because Java2D uses reduced precision when rasterizing and flattens curves differently.
+	 */
+	private static void assertSimilar(byte[] expected, byte[] actual) {
+		int nDifferent = 0;
+		int nFilled = 0;
+		for (int i = 0; i < expected.length; i++) {
+			if (expected[i] != actual[i])
+				nDifferent++;
+			if (expected[i] != 0)
+				nFilled++;
+		}
+		assertTrue(nDifferent <= nFilled / 100 + 2, "Too many pixels differ: " + nDifferent + " of " + nFilled);
+	}
+	
+	@Test
+	public void test_fill() {
+		var transform = new AffineTransform();
+		transform.scale(1.0/2.3, 1.0/2.3);
+		transform.translate(-13.1, -7.9);
+		var transformLarge = new AffineTransform();
+		transformLarge.scale(2.3, 2.3);
+		for (boolean normalize : new boolean[] {false, true}) {
+			for (var shape : createShapes(100L)) {
+				assertSimilar(fillWithGraphics(shape, null, normalize), fillWithRasterizer(shape, null, normalize));
+				var shapeLarge = transformLarge.createTransformedShape(shape);
+				assertSimilar(fillWithGraphics(shapeLarge, transform, normalize), fillWithRasterizer(shapeLarge, transform, normalize));
+			}
+			// Rectangles with integer coordinates should match exactly
+			var rect = new Rectangle2D.Double(10, 20, 30, 40);
+			assertArrayEquals(fillWithGraphics(rect, null, normalize), fillWithRasterizer(rect, null, normalize));
+		}
+	}
+	
+	@Test
+	public void test_stroke() {
+		// Curves are stroked differently by Java2D, so only compare polygons
+		for (var shape : createPolygons(200L)) {
+			var spans = ShapeRasterizer.stroke(shape, null, 2.5f, WIDTH, HEIGHT);
+			byte[] stroked = new byte[WIDTH * HEIGHT];
+			spans.fill(stroked, WIDTH, (byte)255);
+			
+			var img = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_BYTE_GRAY);
+			var g2d = img.createGraphics();
+			g2d.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+			g2d.setColor(Color.WHITE);
+			g2d.setStroke(new BasicStroke(2.5f));
+			g2d.draw(shape);
+			g2d.dispose();
+			assertSimilar(((DataBufferByte)img.getRaster().getDataBuffer()).getData(), stroked);
+		}
+	}
+	
+	@Test
+	public void test_spans() {
+		var spans = ShapeRasterizer.fill(new Rectangle2D.Double(2, 3, 4, 5), null, 10, 10);
+		assertEquals(5, spans.size());
+		
+		short[] dataShort = new short[100];
+		spans.fill(dataShort, 10, (short)1000);
+		int[] dataInt = new int[100];
+		spans.fill(dataInt, 10, 100000);
+		int count = 0;
+		for (int y = 0; y < 10; y++) {
+			for (int x = 0; x < 10; x++) {
+				boolean inside = x >= 2 && x < 6 && y >= 3 && y < 8;
+				assertEquals(inside ? 1000 : 0, dataShort[y*10+x]);
+				assertEquals(inside ? 100000 : 0, dataInt[y*10+x]);
+				if (inside)
+					count++;
+			}
+		}
+		assertEquals(20, count);
+		
+		// Outside the raster
+		assertTrue(ShapeRasterizer.fill(new Rectangle2D.Double(20, 3, 4, 5), null, 10, 10).isEmpty());
+		
+		// Points
+		var points = ShapeRasterizer.points(new double[] {0.5, 0.5, 9.9, 9.9, 10, 5, -1, 2}, null, 10, 10);
+		assertEquals(2, points.size());
+	}
+
+}
@@ -23,11 +23,14 @@
 
 package qupath.lib.color;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.Locale;
+import java.util.Random;
 
 import org.junit.jupiter.api.Test;
 
@@ -264,5 +267,41 @@ public class TestColors {
 		
 	}
 	
+	@Test
+	public void test_ColorTransformKernels() {
+		var rand = new Random(100L);
+		int[] buf = new int[10_000];
+		for (int i = 0; i < buf.length; i++)
+			buf[i] = rand.nextInt();
+		
+		var stains = ColorDeconvolutionStains.makeDefaultColorDeconvolutionStains(ColorDeconvolutionStains.DefaultColorDeconvolutionStains.H_DAB)
+				.changeMaxValues(240, 245, 250);
+		double[] lutRed = ColorDeconvolutionHelper.makeODLUT(stains.getMaxRed());
+		double[] lutGreen = ColorDeconvolutionHelper.makeODLUT(stains.getMaxGreen());
+		double[] lutBlue = ColorDeconvolutionHelper.makeODLUT(stains.getMaxBlue());
+		double[][] inverse = stains.getMatrixInverse();
+		
+		// Kernels should give identical results to the per-pixel methods
+		float[] stain1 = new float[buf.length];
+		float[] stain2 = new float[buf.length];
+		float[] stain3 = new float[buf.length];
+		ColorTransformKernels.deconvolve(buf, stains, stain1, stain2, stain3);
+		float[] odSum = ColorTransformKernels.opticalDensitySum(buf, stains, null);
+		float[] odRed = new float[buf.length];
+		ColorTransformKernels.opticalDensities(buf, stains, odRed, null, null);
+		for (int i = 0; i < buf.length; i++) {
+			assertEquals(ColorTransformer.deconvolve(buf[i], inverse, lutRed, lutGreen, lutBlue, 1), stain1[i]);
+			assertEquals(ColorTransformer.deconvolve(buf[i], inverse, lutRed, lutGreen, lutBlue, 2), stain2[i]);
+			assertEquals(ColorTransformer.deconvolve(buf[i], inverse, lutRed, lutGreen, lutBlue, 3), stain3[i]);
+			assertEquals(ColorTransformer.opticalDensitySum(buf[i], lutRed, lutGreen, lutBlue), odSum[i]);
+			assertEquals((float)lutRed[ColorTools.red(buf[i])], odRed[i]);
+		}
+		assertArrayEquals(stain2, ColorTransformKernels.deconvolve(buf, stains, 2, null));
+		assertArrayEquals(stain1, ColorTransformer.getTransformedPixels(buf, ColorTransformMethod.Hematoxylin_H_DAB, null, stains));
+		assertArrayEquals(stain2, ColorTransformer.getTransformedPixels(buf, ColorTransformMethod.DAB_H_DAB, null, stains));
+		
+		assertThrows(IllegalArgumentException.class, () -> ColorTransformKernels.deconvolve(buf, stains, 4, null));
+		assertThrows(IllegalArgumentException.class, () -> ColorTransformKernels.deconvolve(buf, stains, new float[10], null, null));
+	}
+	
 }
-
@@ -0,0 +1,132 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.lib.common;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("javadoc")
+public class TestBatchProcessor {
+	
+	@Test
+	public void testBatches() throws Exception {
+		List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+		var processor = new BatchProcessor<Integer, Integer>(list -> {
+			batchSizes.add(list.size());
+			return list.stream().map(i -> i * 2).collect(Collectors.toList());
+		}, 4, 100, TimeUnit.MILLISECONDS);
+		
+		// Single input should be processed after the timeout
+		assertEquals(10, processor.process(5));
+		assertEquals(List.of(1), batchSizes);
+		
+		// Multiple inputs should be split into batches no larger than the maximum
+		batchSizes.clear();
+		var inputs = IntStream.range(0, 10).boxed().collect(Collectors.toList());
+		var outputs = processor.processAll(inputs);
+		assertEquals(inputs.stream().map(i -> i * 2).collect(Collectors.toList()), outputs);
+		assertEquals(List.of(4, 4, 2), batchSizes);
+		
+		// Inputs from different threads should be combined
+		batchSizes.clear();
+		List<Thread> threads = new ArrayList<>();
+		List<Integer> results = new CopyOnWriteArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			int val = i;
+			threads.add(new Thread(() -> results.add(processor.process(val))));
+		}
+		for (var thread : threads)
+			thread.start();
+		for (var thread : threads)
+			thread.join();
+		assertEquals(4, results.size());
+		assertTrue(results.containsAll(List.of(0, 2, 4, 6)));
+		assertEquals(4, batchSizes.stream().mapToInt(i -> i).sum());
+		assertTrue(batchSizes.size() < 4);
+	}
+	
+	@Test
+	public void testException() {
+		var processor = new BatchProcessor<Integer, Integer>(list -> {
+			throw new IllegalArgumentException("Failed");
+		}, 4, 0, TimeUnit.MILLISECONDS);
+		assertThrows(IllegalArgumentException.class, () -> processor.process(1));
+		// Processor should still be usable
+		assertThrows(IllegalArgumentException.class, () -> processor.processAll(List.of(1, 2, 3)));
+	}
+
+	@Test
+	public void testError() throws Exception {
+		var processor = new BatchProcessor<Integer, Integer>(list -> {
+			throw new Error("Failed");
+		}, 4, 100, TimeUnit.MILLISECONDS);
+		// Every waiting thread should receive the error, rather than blocking forever
+		List<Throwable> errors = new CopyOnWriteArrayList<>();
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			int val = i;
+			threads.add(new Thread(() -> {
+				try {
+					processor.process(val);
+				} catch (Throwable t) {
+					errors.add(t);
+				}
+			}));
+		}
+		for (var thread : threads)
+			thread.start();
+		for (var thread : threads) {
+			thread.join(5000);
+			assertFalse(thread.isAlive());
+		}
+		assertEquals(4, errors.size());
+		assertTrue(errors.stream().allMatch(e -> e instanceof Error));
+	}
+	
+	@Test
+	public void testExecutor() throws Exception {
+		var pool = Executors.newSingleThreadExecutor(ThreadTools.createThreadFactory("batch-test-", true));
+		try {
+			List<String> threadNames = new CopyOnWriteArrayList<>();
+			var processor = new BatchProcessor<Integer, Integer>(list -> {
+				threadNames.add(Thread.currentThread().getName());
+				return list.stream().map(i -> i + 1).collect(Collectors.toList());
+			}, 2, 10, TimeUnit.MILLISECONDS, pool);
+			assertEquals(List.of(1, 2, 3), processor.processAll(List.of(0, 1, 2)));
+			assertFalse(threadNames.isEmpty());
+			assertTrue(threadNames.stream().allMatch(n -> n.startsWith("batch-test-")));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+}
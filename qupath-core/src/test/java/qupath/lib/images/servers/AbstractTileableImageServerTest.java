@@ -0,0 +1,268 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.images.servers;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.color.ColorModelFactory;
+import qupath.lib.images.servers.ImageServerBuilder.ServerBuilder;
+import qupath.lib.regions.RegionRequest;
+
+@SuppressWarnings("javadoc")
+public class AbstractTileableImageServerTest {
+	
+	@Test
+	public void testParallelTiles() throws Exception {
+		var regions = Arrays.asList(
+				RegionRequest.createInstance("", 2, 5, 20, 263, 258),
+				RegionRequest.createInstance("", 3.5, 0, 0, 500, 400)
+				);
+		
+		for (var img : createImages()) {
+			var serverSequential = new CroppingTileServer(img, false);
+			serverSequential.setMaxParallelTileRequests(1);
+			var serverParallel = new CroppingTileServer(img, false);
+			serverParallel.setMaxParallelTileRequests(8);
+			for (var region : regions) {
+				var imgSequential = serverSequential.readBufferedImage(region.updatePath(serverSequential.getPath()));
+				var imgParallel = serverParallel.readBufferedImage(region.updatePath(serverParallel.getPath()));
+				assertArrayEquals(getPixels(imgSequential), getPixels(imgParallel));
+			}
+			serverSequential.close();
+			serverParallel.close();
+		}
+	}
+	
+	@Test
+	public void testTilePixels() throws Exception {
+		var regions = Arrays.asList(
+				RegionRequest.createInstance("", 1, 0, 0, 500, 400),
+				RegionRequest.createInstance("", 1, 20, 10, 300, 250),
+				RegionRequest.createInstance("", 1, 55, 21, 163, 158),
+				// Within a single tile
+				RegionRequest.createInstance("", 1, 70, 75, 40, 30),
+				// Outside the image
+				RegionRequest.createInstance("", 1, -20, -15, 150, 120),
+				RegionRequest.createInstance("", 1, -30, 70, 100, 100),
+				RegionRequest.createInstance("", 1, 100, -10, 50, 40),
+				RegionRequest.createInstance("", 1, -10, -5, 40, 30)
+				);
+		
+		for (var img : createImages()) {
+			for (int nThreads : new int[] {1, 8}) {
+				var server = new CroppingTileServer(img, false);
+				server.setMaxParallelTileRequests(nThreads);
+				for (var region : regions) {
+					var imgRegion = server.readBufferedImage(region.updatePath(server.getPath()));
+					String message = "Type " + img.getType() + " with " + img.getRaster().getNumBands() + " bands, " + region;
+					assertEquals(region.getWidth(), imgRegion.getWidth(), message);
+					assertEquals(region.getHeight(), imgRegion.getHeight(), message);
+					assertArrayEquals(getExpectedPixels(img, region), getPixels(imgRegion), message);
+				}
+				server.close();
+			}
+		}
+	}
+	
+	@Test
+	public void testTileAlpha() throws Exception {
+		// Translucent tiles should be composited onto the output image, rather than replacing its pixels
+		var img = new BufferedImage(500, 400, BufferedImage.TYPE_INT_ARGB);
+		var g2d = img.createGraphics();
+		g2d.setColor(new Color(255, 0, 0, 100));
+		g2d.fillOval(0, 0, 400, 300);
+		g2d.dispose();
+		
+		var server = new CroppingTileServer(img, false) {
+			@Override
+			protected BufferedImage createDefaultRGBImage(int width, int height) {
+				var imgOutput = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+				var g = imgOutput.createGraphics();
+				g.setColor(Color.WHITE);
+				g.fillRect(0, 0, width, height);
+				g.dispose();
+				return imgOutput;
+			}
+		};
+		server.setMaxParallelTileRequests(4);
+		var region = RegionRequest.createInstance(server.getPath(), 1, 55, 21, 263, 258);
+		var imgRegion = server.readBufferedImage(region);
+		
+		for (int y = 0; y < imgRegion.getHeight(); y++) {
+			for (int x = 0; x < imgRegion.getWidth(); x++) {
+				var colorOutput = new Color(imgRegion.getRGB(x, y), true);
+				var colorInput = new Color(img.getRGB(x + region.getX(), y + region.getY()), true);
+				assertEquals(255, colorOutput.getAlpha());
+				assertEquals(255, colorOutput.getRed());
+				if (colorInput.getAlpha() == 0) {
+					assertEquals(Color.WHITE, colorOutput);
+				} else {
+					assertTrue(colorOutput.getGreen() > 0 && colorOutput.getGreen() < 255);
+					assertTrue(colorOutput.getBlue() > 0 && colorOutput.getBlue() < 255);
+				}
+			}
+		}
+		server.close();
+	}
+	
+	@Test
+	public void testParallelTileException() throws Exception {
+		var server = new CroppingTileServer(createImage(BufferedImage.TYPE_INT_RGB), true);
+		server.setMaxParallelTileRequests(4);
+		var request = RegionRequest.createInstance(server.getPath(), 1, 0, 0, 500, 400);
+		assertThrows(IOException.class, () -> server.readBufferedImage(request));
+		server.close();
+	}
+	
+	
+	private static int[] getPixels(BufferedImage img) {
+		return img.getRaster().getPixels(0, 0, img.getWidth(), img.getHeight(), (int[])null);
+	}
+	
+	/**
+	 * Get the pixels of a region at full resolution directly from an image, using zeros for pixels outside the image.
+	 */
+	private static int[] getExpectedPixels(BufferedImage img, RegionRequest region) {
+		var raster = img.getRaster();
+		int nBands = raster.getNumBands();
+		int[] pixels = new int[region.getWidth() * region.getHeight() * nBands];
+		int ind = 0;
+		for (int y = region.getY(); y < region.getY() + region.getHeight(); y++) {
+			for (int x = region.getX(); x < region.getX() + region.getWidth(); x++) {
+				for (int b = 0; b < nBands; b++) {
+					if (x >= 0 && y >= 0 && x < img.getWidth() && y < img.getHeight())
+						pixels[ind] = raster.getSample(x, y, b);
+					ind++;
+				}
+			}
+		}
+		return pixels;
+	}
+	
+	/**
+	 * Create RGB, 8-bit grayscale and 16-bit multichannel images.
+	 */
+	private static List<BufferedImage> createImages() {
+		var imgRGB = createImage(BufferedImage.TYPE_INT_RGB);
+		var imgGray = createImage(BufferedImage.TYPE_BYTE_GRAY);
+		
+		var channels = ImageChannel.getDefaultChannelList(4);
+		var colorModel = ColorModelFactory.createColorModel(PixelType.UINT16, channels);
+		var raster = colorModel.createCompatibleWritableRaster(500, 400);
+		for (int y = 0; y < raster.getHeight(); y++) {
+			for (int x = 0; x < raster.getWidth(); x++) {
+				for (int b = 0; b < raster.getNumBands(); b++)
+					raster.setSample(x, y, b, (x * 7 + y * 13 + b * 1000) % 65536);
+			}
+		}
+		var imgMultichannel = new BufferedImage(colorModel, raster, false, null);
+		return Arrays.asList(imgRGB, imgGray, imgMultichannel);
+	}
+	
+	private static BufferedImage createImage(int type) {
+		var img = new BufferedImage(500, 400, type);
+		var g2d = img.createGraphics();
+		g2d.setColor(Color.RED);
+		g2d.fillOval(0, 0, 400, 300);
+		g2d.setColor(Color.BLUE);
+		g2d.drawLine(10, 10, 480, 380);
+		g2d.setColor(Color.GREEN);
+		g2d.fillRect(200, 150, 64, 100);
+		g2d.dispose();
+		return img;
+	}
+	
+	/**
+	 * Server that returns small tiles cropped from a single image.
+	 */
+	static class CroppingTileServer extends AbstractTileableImageServer {
+		
+		private BufferedImage img;
+		private boolean failLastTile;
+		private ImageServerMetadata metadata;
+		
+		CroppingTileServer(BufferedImage img, boolean failLastTile) {
+			this.img = img;
+			this.failLastTile = failLastTile;
+			boolean isRGB = img.getType() == BufferedImage.TYPE_INT_RGB || img.getType() == BufferedImage.TYPE_INT_ARGB;
+			int nBands = img.getRaster().getNumBands();
+			this.metadata = new ImageServerMetadata.Builder(getClass(), createID(), img.getWidth(), img.getHeight())
+					.preferredTileSize(64, 64)
+					.levelsFromDownsamples(1.0)
+					.rgb(isRGB)
+					.pixelType(img.getRaster().getTransferType() == DataBuffer.TYPE_USHORT ? PixelType.UINT16 : PixelType.UINT8)
+					.channels(isRGB ? ImageChannel.getDefaultRGBChannels() : ImageChannel.getDefaultChannelList(nBands))
+					.build();
+		}
+
+		@Override
+		public Collection<URI> getURIs() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public String getServerType() {
+			return "Cropping tile server";
+		}
+
+		@Override
+		public ImageServerMetadata getOriginalMetadata() {
+			return metadata;
+		}
+
+		@Override
+		protected BufferedImage readTile(TileRequest tileRequest) throws IOException {
+			if (failLastTile && tileRequest.getImageX() + tileRequest.getImageWidth() >= img.getWidth()
+					&& tileRequest.getImageY() + tileRequest.getImageHeight() >= img.getHeight())
+				throw new IOException("Unable to read " + tileRequest);
+			var raster = img.getRaster().createCompatibleWritableRaster(tileRequest.getTileWidth(), tileRequest.getTileHeight());
+			raster.setRect(img.getRaster().createChild(tileRequest.getImageX(), tileRequest.getImageY(), 
+					tileRequest.getTileWidth(), tileRequest.getTileHeight(), 0, 0, null));
+			return new BufferedImage(img.getColorModel(), raster, img.isAlphaPremultiplied(), null);
+		}
+
+		@Override
+		protected ServerBuilder<BufferedImage> createServerBuilder() {
+			return null;
+		}
+
+		@Override
+		protected String createID() {
+			return UUID.randomUUID().toString();
+		}
+		
+	}
+
+}
@@ -0,0 +1,150 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.lib.images.servers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.images.ImageData;
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjects;
+import qupath.lib.objects.classes.PathClassFactory;
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.regions.RegionRequest;
+import qupath.lib.roi.ROIs;
+
+@SuppressWarnings("javadoc")
+public class LabeledImageServerTest {
+	
+	private static ImageData<BufferedImage> createImageData(List<PathObject> pathObjects) {
+		var img = new BufferedImage(200, 150, BufferedImage.TYPE_INT_RGB);
+		var imageData = new ImageData<>(new WrappedBufferedImageServer("Test", img));
+		imageData.getHierarchy().addPathObjects(pathObjects);
+		return imageData;
+	}
+	
+	private static int[] readLabels(ImageServer<BufferedImage> server, int band) throws IOException {
+		var img = server.readBufferedImage(RegionRequest.createInstance(server));
+		return img.getRaster().getSamples(0, 0, img.getWidth(), img.getHeight(), band, (int[])null);
+	}
+	
+	@Test
+	public void test_indexedAndMultichannel() throws IOException {
+		var plane = ImagePlane.getDefaultPlane();
+		var tumor = PathClassFactory.getPathClass("Tumor");
+		var stroma = PathClassFactory.getPathClass("Stroma");
+		List<PathObject> pathObjects = new ArrayList<>();
+		pathObjects.add(PathObjects.createAnnotationObject(ROIs.createRectangleROI(10, 10, 50, 40, plane), tumor));
+		pathObjects.add(PathObjects.createAnnotationObject(ROIs.createEllipseROI(100, 20, 80, 60, plane), stroma));
+		pathObjects.add(PathObjects.createAnnotationObject(
+				ROIs.createPolygonROI(new double[] {20, 90, 40}, new double[] {90, 100, 140}, plane), tumor));
+		pathObjects.add(PathObjects.createAnnotationObject(ROIs.createLineROI(120, 100, 190, 140, plane), stroma));
+		var imageData = createImageData(pathObjects);
+		
+		// Use tiles that don't align with objects
+		var serverIndexed = new LabeledImageServer.Builder(imageData)
+				.tileSize(64)
+				.addLabel(tumor, 1)
+				.addLabel(stroma, 2)
+				.build();
+		var indexed = readLabels(serverIndexed, 0);
+		assertEquals(1, indexed[30 * 200 + 30]);
+		assertEquals(2, indexed[50 * 200 + 140]);
+		assertEquals(0, indexed[5 * 200 + 5]);
+		
+		var serverMultichannel = new LabeledImageServer.Builder(imageData)
+				.tileSize(64)
+				.addLabel(tumor, 1)
+				.addLabel(stroma, 2)
+				.multichannelOutput(true)
+				.build();
+		assertEquals(3, serverMultichannel.nChannels());
+		for (int c = 0; c < serverMultichannel.nChannels(); c++) {
+			var channel = readLabels(serverMultichannel, c);
+			for (int i = 0; i < indexed.length; i++) {
+				// No objects overlap, so channels should exactly match the indexed labels
+				// (the background channel is empty, since there are no objects with the background class)
+				boolean expected = c > 0 && indexed[i] == c;
+				assertEquals(expected ? 255 : 0, channel[i]);
+			}
+		}
+		
+		// Boundaries should be painted over areas, without changing anything else
+		var serverBoundaries = new LabeledImageServer.Builder(imageData)
+				.tileSize(64)
+				.addLabel(tumor, 1)
+				.addLabel(stroma, 2)
+				.setBoundaryLabel("Boundary", 3)
+				.build();
+		var boundaries = readLabels(serverBoundaries, 0);
+		assertEquals(3, boundaries[10 * 200 + 30]);
+		assertEquals(1, boundaries[30 * 200 + 30]);
+		int nBoundary = 0;
+		for (int i = 0; i < indexed.length; i++) {
+			if (boundaries[i] == 3)
+				nBoundary++;
+			else
+				assertEquals(indexed[i], boundaries[i]);
+		}
+		assertTrue(nBoundary > 0);
+	}
+	
+	@Test
+	public void test_uniqueLabels() throws IOException {
+		// Create enough objects to require 16-bit labels
+		List<PathObject> pathObjects = new ArrayList<>();
+		for (int y = 0; y < 15; y++) {
+			for (int x = 0; x < 20; x++) {
+				pathObjects.add(PathObjects.createDetectionObject(
+						ROIs.createRectangleROI(x * 10 + 2, y * 10 + 2, 6, 6, ImagePlane.getDefaultPlane())));
+			}
+		}
+		var imageData = createImageData(pathObjects);
+		var server = new LabeledImageServer.Builder(imageData)
+				.useDetections()
+				.useUniqueLabels()
+				.tileSize(64)
+				.build();
+		assertEquals(PixelType.UINT16, server.getPixelType());
+		var labels = readLabels(server, 0);
+		var set = new HashSet<Integer>();
+		for (int v : labels)
+			set.add(v);
+		assertEquals(pathObjects.size() + 1, set.size());
+		// Every object should have exactly 36 pixels
+		var counts = new int[pathObjects.size() + 1];
+		for (int v : labels)
+			counts[v]++;
+		for (int i = 1; i < counts.length; i++)
+			assertEquals(36, counts[i]);
+	}
+
+}
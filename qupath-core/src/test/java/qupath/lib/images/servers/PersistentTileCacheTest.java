@@ -0,0 +1,175 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.lib.images.servers;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.color.ColorModelFactory;
+import qupath.lib.regions.RegionRequest;
+
+@SuppressWarnings("javadoc")
+public class PersistentTileCacheTest {
+	
+	@Test
+	public void testPersistence() throws Exception {
+		var dir = Files.createTempDirectory("qupath-tile-cache");
+		var random = new Random(100L);
+		
+		var imgRGB = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < imgRGB.getHeight(); y++) {
+			for (int x = 0; x < imgRGB.getWidth(); x++)
+				imgRGB.setRGB(x, y, random.nextInt());
+		}
+		var colorModel = ColorModelFactory.createColorModel(PixelType.FLOAT32, ImageChannel.getDefaultChannelList(3));
+		var raster = colorModel.createCompatibleWritableRaster(32, 40);
+		for (int b = 0; b < raster.getNumBands(); b++) {
+			for (int y = 0; y < raster.getHeight(); y++) {
+				for (int x = 0; x < raster.getWidth(); x++)
+					raster.setSample(x, y, b, random.nextFloat());
+			}
+		}
+		var imgFloat = new BufferedImage(colorModel, raster, false, null);
+		
+		var request = RegionRequest.createInstance("server", 2.0, 0, 0, 128, 96);
+		var keyRGB = PersistentTileCache.createKey("serverRGB", request);
+		var keyFloat = PersistentTileCache.createKey("serverFloat", request);
+		
+		try (var cache = PersistentTileCache.open(dir, 10L * 1024L * 1024L)) {
+			cache.put(keyRGB, imgRGB);
+			cache.put(keyFloat, imgFloat);
+			assertEquals(2, cache.size());
+		}
+		
+		// Reopen & check we get the same pixels back
+		try (var cache = PersistentTileCache.open(dir, 10L * 1024L * 1024L)) {
+			assertEquals(2, cache.size());
+			var imgRGB2 = cache.get(keyRGB, null);
+			assertArrayEquals(
+					imgRGB.getRGB(0, 0, imgRGB.getWidth(), imgRGB.getHeight(), null, 0, imgRGB.getWidth()),
+					imgRGB2.getRGB(0, 0, imgRGB.getWidth(), imgRGB.getHeight(), null, 0, imgRGB.getWidth()));
+			var imgFloat2 = cache.get(keyFloat, colorModel);
+			assertArrayEquals(
+					raster.getPixels(0, 0, raster.getWidth(), raster.getHeight(), (float[])null),
+					imgFloat2.getRaster().getPixels(0, 0, raster.getWidth(), raster.getHeight(), (float[])null));
+			// Incompatible color model should give no tile
+			assertNull(cache.get(keyFloat, ColorModelFactory.createColorModel(PixelType.UINT8, ImageChannel.getDefaultChannelList(3))));
+			assertNull(cache.get("missing", colorModel));
+			cache.clear();
+			assertEquals(0, cache.size());
+		}
+	}
+	
+	@Test
+	public void testEviction() throws Exception {
+		var dir = Files.createTempDirectory("qupath-tile-cache");
+		var random = new Random(100L);
+		int n = 50;
+		long maxBytes = 0L;
+		try (var cache = PersistentTileCache.open(dir, Long.MAX_VALUE)) {
+			for (int i = 0; i < n; i++) {
+				var img = new BufferedImage(64, 64, BufferedImage.TYPE_BYTE_GRAY);
+				var raster = img.getRaster();
+				for (int y = 0; y < 64; y++) {
+					for (int x = 0; x < 64; x++)
+						raster.setSample(x, y, 0, random.nextInt(256));
+				}
+				cache.put("tile" + i, img);
+			}
+			maxBytes = cache.getSizeBytes() / 5;
+		}
+		try (var cache = PersistentTileCache.open(dir, maxBytes)) {
+			// Accessing a tile should protect it from eviction
+			var colorModel = new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_GRAY).getColorModel();
+			assertNotNull(cache.get("tile0", colorModel));
+			var img = new BufferedImage(64, 64, BufferedImage.TYPE_BYTE_GRAY);
+			cache.put("another", img);
+			assertTrue(cache.getSizeBytes() <= maxBytes);
+			assertTrue(cache.containsKey("tile0"));
+			assertTrue(cache.containsKey("another"));
+			assertFalse(cache.containsKey("tile1"));
+			assertNotNull(cache.get("tile0", colorModel));
+		}
+	}
+	
+	@Test
+	public void testLocking() throws Exception {
+		var dir = Files.createTempDirectory("qupath-tile-cache");
+		var img = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB);
+		try (var cache = PersistentTileCache.open(dir, 1024L * 1024L)) {
+			assertTrue(cache.isEnabled());
+			cache.put("tile", img);
+			// A second cache must not use the same directory at the same time
+			try (var cache2 = PersistentTileCache.open(dir, 1024L * 1024L)) {
+				assertFalse(cache2.isEnabled());
+				assertNull(cache2.get("tile", null));
+				cache2.put("tile2", img);
+				assertEquals(0, cache2.size());
+			}
+			assertNotNull(cache.get("tile", null));
+		}
+		try (var cache = PersistentTileCache.open(dir, 1024L * 1024L)) {
+			assertTrue(cache.isEnabled());
+			assertTrue(cache.containsKey("tile"));
+			assertFalse(cache.containsKey("tile2"));
+		}
+	}
+	
+	@Test
+	public void testChecksum() throws Exception {
+		var dir = Files.createTempDirectory("qupath-tile-cache");
+		var random = new Random(100L);
+		var img = new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < img.getHeight(); y++) {
+			for (int x = 0; x < img.getWidth(); x++)
+				img.setRGB(x, y, random.nextInt());
+		}
+		try (var cache = PersistentTileCache.open(dir, 10L * 1024L * 1024L)) {
+			cache.put("tile", img);
+		}
+		// Damage the pack file
+		try (var channel = FileChannel.open(dir.resolve("tiles-0.pack"), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			long pos = channel.size() / 2;
+			var buffer = ByteBuffer.allocate(1);
+			channel.read(buffer, pos);
+			buffer.put(0, (byte)~buffer.get(0));
+			buffer.rewind();
+			channel.write(buffer, pos);
+		}
+		try (var cache = PersistentTileCache.open(dir, 10L * 1024L * 1024L)) {
+			assertTrue(cache.containsKey("tile"));
+			assertNull(cache.get("tile", null));
+			assertFalse(cache.containsKey("tile"));
+			assertEquals(0L, cache.getSizeBytes());
+		}
+	}
+
+}
@@ -0,0 +1,276 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.lib.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.images.ImageData;
+import qupath.lib.images.servers.WrappedBufferedImageServer;
+import qupath.lib.io.PathIO.DataFormat;
+import qupath.lib.measurements.MeasurementList.MeasurementListType;
+import qupath.lib.measurements.MeasurementListFactory;
+import qupath.lib.objects.PathAnnotationObject;
+import qupath.lib.objects.PathDetectionObject;
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjectTools;
+import qupath.lib.objects.PathObjects;
+import qupath.lib.objects.TMACoreObject;
+import qupath.lib.objects.classes.PathClassFactory;
+import qupath.lib.objects.hierarchy.DefaultTMAGrid;
+import qupath.lib.objects.hierarchy.PathObjectHierarchy;
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.regions.ImageRegion;
+import qupath.lib.roi.ROIs;
+
+@SuppressWarnings("javadoc")
+public class PathIOTest {
+	
+	private static ImageData<BufferedImage> createImageData() {
+		var img = new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB);
+		var imageData = new ImageData<>(new WrappedBufferedImageServer("test", img), ImageData.ImageType.BRIGHTFIELD_H_E);
+		imageData.setProperty("Some key", "Some value");
+		
+		var hierarchy = imageData.getHierarchy();
+		var plane = ImagePlane.getDefaultPlane();
+		var rng = new Random(100L);
+		
+		var cores = new ArrayList<TMACoreObject>();
+		for (int i = 0; i < 4; i++) {
+			var core = PathObjects.createTMACoreObject(i * 20000, 0, 15000, i == 2);
+			core.setName("Core " + i);
+			core.setUniqueID("Patient " + i);
+			cores.add(core);
+		}
+		hierarchy.setTMAGrid(DefaultTMAGrid.create(cores, 2));
+		
+		var annotation = (PathAnnotationObject)PathObjects.createAnnotationObject(
+				ROIs.createRectangleROI(1000, 1000, 10000, 6000, plane),
+				PathClassFactory.getPathClass("Tumor"));
+		annotation.setName("Annotation");
+		annotation.setDescription("Some description");
+		annotation.setLocked(true);
+		annotation.setColorRGB(0xff00ff);
+		annotation.getMeasurementList().putMeasurement("Precise", Math.PI);
+		hierarchy.addPathObjectWithoutUpdate(annotation);
+		
+		var stroma = PathClassFactory.getPathClass("Stroma");
+		var positive = PathClassFactory.getPositive(stroma);
+		int n = 5000;
+		var detections = new ArrayList<PathObject>();
+		for (int i = 0; i < n; i++) {
+			// Coordinates are stored as floats by the legacy serialization
+			double x = 1000 + rng.nextInt(9980 * 8) / 8.0;
+			double y = 1000 + rng.nextInt(5980 * 8) / 8.0;
+			var roi = ROIs.createPolygonROI(
+					new double[] {x, x + 10.5, x + 5.25},
+					new double[] {y, y + 0.75, y + 12},
+					plane);
+			var measurements = MeasurementListFactory.createMeasurementList(3, MeasurementListType.FLOAT);
+			measurements.putMeasurement("Area", rng.nextFloat());
+			measurements.putMeasurement("Intensity", rng.nextFloat());
+			if (i % 10 == 0)
+				measurements.putMeasurement("Rare", Double.NaN);
+			measurements.close();
+			PathObject detection;
+			if (i % 3 == 0) {
+				detection = PathObjects.createCellObject(roi, ROIs.createEllipseROI(x + 2, y + 2, 3, 3, plane), positive, measurements);
+				detection.addPathObject(PathObjects.createDetectionObject(ROIs.createPointsROI(x + 3, y + 3, plane)));
+			} else if (i % 3 == 1)
+				detection = PathObjects.createDetectionObject(roi, stroma, measurements);
+			else
+				detection = PathObjects.createTileObject(roi, null, measurements);
+			if (i % 7 == 0)
+				detection.setPathClass(stroma, 0.25);
+			detections.add(detection);
+		}
+		annotation.addPathObjects(detections);
+		
+		// Objects that aren't inside an annotation
+		hierarchy.addPathObjectWithoutUpdate(PathObjects.createAnnotationObject(ROIs.createLineROI(0, 0, 100.1, 100.1, plane)));
+		hierarchy.addPathObjectWithoutUpdate(PathObjects.createDetectionObject(ROIs.createRectangleROI(50000, 50000, 10, 10, ImagePlane.getPlane(1, 0))));
+		cores.get(1).addPathObject(PathObjects.createAnnotationObject(ROIs.createEllipseROI(20000, 0, 100, 100, plane)));
+		
+		return imageData;
+	}
+	
+	private static ImageData<BufferedImage> roundTrip(ImageData<BufferedImage> imageData, DataFormat format) throws IOException {
+		var bytes = new ByteArrayOutputStream();
+		PathIO.writeImageData(bytes, imageData, format);
+		return PathIO.readImageData(new ByteArrayInputStream(bytes.toByteArray()), null, imageData.getServer(), BufferedImage.class);
+	}
+	
+	@Test
+	public void testBinaryRoundTrip() throws IOException {
+		var imageData = createImageData();
+		var imageData2 = roundTrip(imageData, DataFormat.BINARY);
+		
+		assertEquals(imageData.getImageType(), imageData2.getImageType());
+		assertEquals("Some value", imageData2.getProperty("Some key"));
+		assertHierarchiesEqual(imageData.getHierarchy(), imageData2.getHierarchy());
+		
+		var grid = imageData2.getHierarchy().getTMAGrid();
+		assertNotNull(grid);
+		assertEquals(2, grid.getGridWidth());
+		assertEquals(4, grid.nCores());
+		assertTrue(grid.getTMACoreList().get(2).isMissing());
+		assertEquals("Patient 3", grid.getTMACoreList().get(3).getUniqueID());
+		for (var core : grid.getTMACoreList())
+			assertSame(imageData2.getHierarchy().getRootObject(), core.getParent());
+		
+		var annotation = (PathAnnotationObject)imageData2.getHierarchy().getAnnotationObjects().stream()
+				.filter(p -> "Annotation".equals(p.getName())).findFirst().get();
+		assertEquals("Some description", annotation.getDescription());
+		assertTrue(annotation.isLocked());
+		assertEquals(Math.PI, annotation.getMeasurementList().getMeasurementValue("Precise"));
+	}
+	
+	@Test
+	public void testSerializedRoundTrip() throws IOException {
+		var imageData = createImageData();
+		var imageData2 = roundTrip(imageData, DataFormat.SERIALIZED);
+		assertHierarchiesEqual(imageData.getHierarchy(), imageData2.getHierarchy());
+	}
+	
+	@Test
+	public void testReadHierarchy() throws IOException {
+		var imageData = createImageData();
+		for (var format : DataFormat.values()) {
+			var bytes = new ByteArrayOutputStream();
+			PathIO.writeImageData(bytes, imageData, format);
+			var hierarchy = PathIO.readHierarchy(new ByteArrayInputStream(bytes.toByteArray()));
+			assertHierarchiesEqual(imageData.getHierarchy(), hierarchy);
+		}
+	}
+	
+	@Test
+	public void testBinaryIsSmaller() throws IOException {
+		var imageData = createImageData();
+		var bytesSerialized = new ByteArrayOutputStream();
+		PathIO.writeImageData(bytesSerialized, imageData, DataFormat.SERIALIZED);
+		var bytesBinary = new ByteArrayOutputStream();
+		PathIO.writeImageData(bytesBinary, imageData, DataFormat.BINARY);
+		assertTrue(bytesBinary.size() < bytesSerialized.size());
+	}
+	
+	@Test
+	public void testDeferredLoading() throws IOException {
+		var imageData = createImageData();
+		var hierarchy = imageData.getHierarchy();
+		var path = Files.createTempFile("qupath-data", ".qpdata");
+		boolean defer = PathIO.isDeferredObjectLoading();
+		try {
+			try (var stream = Files.newOutputStream(path)) {
+				PathIO.writeImageData(stream, imageData, DataFormat.BINARY);
+			}
+			PathIO.setDeferredObjectLoading(true);
+			var imageData2 = PathIO.readImageData(path, null, imageData.getServer(), BufferedImage.class);
+			var hierarchy2 = imageData2.getHierarchy();
+			assertFalse(hierarchy2.isFullyLoaded());
+			assertFalse(hierarchy2.isEmpty());
+			assertEquals(hierarchy.getAnnotationObjects().size(), hierarchy2.getAnnotationObjects().size());
+			assertFalse(hierarchy2.isFullyLoaded());
+			
+			// Requesting a region should only load the chunks that are needed
+			var region = ImageRegion.createInstance(1000, 1000, 500, 500, 0, 0);
+			var expected = hierarchy.getObjectsForRegion(PathDetectionObject.class, region, null);
+			var actual = hierarchy2.getObjectsForRegion(PathDetectionObject.class, region, null);
+			assertTrue(expected.size() > 0);
+			assertEquals(expected.size(), actual.size());
+			assertFalse(hierarchy2.isFullyLoaded());
+			assertTrue(PathObjectTools.countDescendants(hierarchy2.getRootObject()) < PathObjectTools.countDescendants(hierarchy.getRootObject()));
+			
+			// Requesting all detections should load everything
+			assertEquals(hierarchy.getDetectionObjects().size(), hierarchy2.getDetectionObjects().size());
+			assertTrue(hierarchy2.isFullyLoaded());
+			assertEquals(hierarchy.nObjects(), hierarchy2.nObjects());
+			assertEquals(expected.size(), hierarchy2.getObjectsForRegion(PathDetectionObject.class, region, null).size());
+			assertFalse(imageData2.isChanged());
+		} finally {
+			PathIO.setDeferredObjectLoading(defer);
+			Files.deleteIfExists(path);
+		}
+	}
+	
+	@Test
+	public void testVarInt() throws IOException {
+		var out = new BinaryHierarchyIO.ByteWriter(16);
+		int[] values = {0, 1, -1, 63, 64, -65, 127, 128, 16384, Integer.MAX_VALUE, Integer.MIN_VALUE};
+		for (int v : values)
+			out.writeVarInt(v);
+		var in = ByteBuffer.wrap(out.toByteArray());
+		for (int v : values)
+			assertEquals(v, BinaryHierarchyIO.readVarInt(in));
+	}
+	
+	
+	private static void assertHierarchiesEqual(PathObjectHierarchy expected, PathObjectHierarchy actual) {
+		assertEquals(expected.nObjects(), actual.nObjects());
+		assertObjectsEqual(expected.getRootObject(), actual.getRootObject());
+	}
+	
+	private static void assertObjectsEqual(PathObject expected, PathObject actual) {
+		assertEquals(expected.getClass(), actual.getClass());
+		assertEquals(expected.getName(), actual.getName());
+		assertEquals(expected.getColorRGB(), actual.getColorRGB());
+		assertSame(expected.getPathClass(), actual.getPathClass());
+		assertEquals(expected.getClassProbability(), actual.getClassProbability());
+		assertEquals(expected.isLocked(), actual.isLocked());
+		if (expected.hasROI()) {
+			var roi1 = expected.getROI();
+			var roi2 = actual.getROI();
+			assertEquals(roi1.getClass(), roi2.getClass());
+			assertEquals(roi1.getImagePlane(), roi2.getImagePlane());
+			assertEquals(roi1.getAllPoints(), roi2.getAllPoints());
+		}
+		var m1 = expected.getMeasurementList();
+		var m2 = actual.getMeasurementList();
+		assertEquals(m1.getMeasurementNames(), m2.getMeasurementNames());
+		for (int i = 0; i < m1.size(); i++)
+			assertEquals(m1.getMeasurementValue(i), m2.getMeasurementValue(i));
+		
+		List<PathObject> children1 = new ArrayList<>(expected.getChildObjects());
+		List<PathObject> children2 = new ArrayList<>(actual.getChildObjects());
+		assertEquals(children1.size(), children2.size());
+		for (int i = 0; i < children1.size(); i++) {
+			assertSame(actual, children2.get(i).getParent());
+			assertObjectsEqual(children1.get(i), children2.get(i));
+		}
+	}
+
+}
@@ -0,0 +1,144 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.lib.measurements;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.measurements.MeasurementList.MeasurementListType;
+
+@SuppressWarnings("javadoc")
+public class TestColumnarMeasurementList {
+	
+	private static MeasurementList createList(int i, String... names) {
+		var list = MeasurementListFactory.createMeasurementList(names.length, MeasurementListType.COLUMNAR);
+		for (int j = 0; j < names.length; j++)
+			list.addMeasurement(names[j], i * 10 + j);
+		list.close();
+		return list;
+	}
+
+	@Test
+	public void testSharedSchema() {
+		List<MeasurementList> lists = new ArrayList<>();
+		for (int i = 0; i < 1000; i++)
+			lists.add(createList(i, "A", "B", "C"));
+		
+		var first = (ColumnarMeasurementList)lists.get(0);
+		for (int i = 0; i < lists.size(); i++) {
+			var list = (ColumnarMeasurementList)lists.get(i);
+			assertSame(first.getSchema(), list.getSchema());
+			assertSame(first.getMeasurementNames(), list.getMeasurementNames());
+			assertEquals(i * 10 + 1, list.getMeasurementValue("B"));
+			assertEquals(i * 10 + 2, list.getMeasurementValue(2));
+		}
+		
+		// Updating an existing measurement shouldn't affect other lists
+		lists.get(5).putMeasurement("A", -1);
+		assertEquals(-1, lists.get(5).getMeasurementValue("A"));
+		assertEquals(40, lists.get(4).getMeasurementValue("A"));
+		assertEquals(60, lists.get(6).getMeasurementValue("A"));
+		assertSame(first.getSchema(), ((ColumnarMeasurementList)lists.get(5)).getSchema());
+
+		// Adding a measurement should move the list to a new schema when closed
+		var list = lists.get(7);
+		list.putMeasurement("D", 5);
+		assertEquals(4, list.size());
+		assertEquals(71, list.getMeasurementValue("B"));
+		list.close();
+		assertNotSame(first.getSchema(), ((ColumnarMeasurementList)list).getSchema());
+		assertEquals(List.of("A", "B", "C", "D"), list.getMeasurementNames());
+		assertEquals(5, list.getMeasurementValue("D"));
+		assertEquals(81, lists.get(8).getMeasurementValue("B"));
+		
+		list.removeMeasurements("A");
+		list.close();
+		assertEquals(List.of("B", "C", "D"), list.getMeasurementNames());
+		assertEquals(71, list.getMeasurementValue(0));
+		assertTrue(Double.isNaN(list.getMeasurementValue("A")));
+		
+		list.clear();
+		assertTrue(list.isEmpty());
+		assertEquals(81, lists.get(8).getMeasurementValue("B"));
+	}
+	
+	@Test
+	public void testColumnReader() {
+		List<MeasurementList> lists = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			if (i % 3 == 0)
+				lists.add(createList(i, "A", "B", "C"));
+			else if (i % 3 == 1)
+				lists.add(createList(i, "C", "B"));
+			else {
+				var list = MeasurementListFactory.createMeasurementList(2, MeasurementListType.DOUBLE);
+				list.addMeasurement("B", i * 10);
+				list.addMeasurement("C", i * 10 + 1);
+				lists.add(list);
+			}
+		}
+		var reader = MeasurementColumnReader.create("C", "A");
+		var buffer = FloatBuffer.allocate(lists.size() * 2);
+		for (var list : lists)
+			reader.readValues(list, buffer);
+		var columns = reader.readColumns(lists);
+		for (int i = 0; i < lists.size(); i++) {
+			var list = lists.get(i);
+			assertEquals(list.getMeasurementValue("C"), buffer.get(i*2));
+			assertEquals(list.getMeasurementValue("C"), columns[0][i]);
+			if (i % 3 == 0) {
+				assertEquals(i * 10, buffer.get(i*2+1));
+				assertEquals(i * 10, columns[1][i]);
+			} else {
+				assertTrue(Float.isNaN(buffer.get(i*2+1)));
+				assertTrue(Double.isNaN(columns[1][i]));
+			}
+		}
+	}
+	
+	@Test
+	public void testSerialization() throws Exception {
+		var list = createList(3, "A", "B");
+		var bytes = new ByteArrayOutputStream();
+		try (var stream = new ObjectOutputStream(bytes)) {
+			stream.writeObject(list);
+		}
+		try (var stream = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			// Written as a float list for compatibility with older versions
+			var list2 = (MeasurementList)stream.readObject();
+			assertTrue(list2 instanceof NumericMeasurementList.FloatList);
+			assertEquals(list.getMeasurementNames(), list2.getMeasurementNames());
+			assertEquals(31, list2.getMeasurementValue("B"));
+		}
+	}
+
+}
@@ -0,0 +1,134 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.lib.objects.hierarchy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjects;
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.regions.ImageRegion;
+import qupath.lib.roi.ROIs;
+
+@SuppressWarnings("javadoc")
+public class TestPackedSpatialIndex {
+	
+	private static List<PathObject> createObjects(Random rng, int n, int nPlanes) {
+		var list = new ArrayList<PathObject>();
+		for (int i = 0; i < n; i++) {
+			var plane = ImagePlane.getPlane(rng.nextInt(nPlanes), 0);
+			double x = rng.nextDouble() * 10000;
+			double y = rng.nextDouble() * 10000;
+			list.add(PathObjects.createDetectionObject(ROIs.createRectangleROI(x, y, 1 + rng.nextDouble() * 50, 1 + rng.nextDouble() * 50, plane)));
+		}
+		return list;
+	}
+	
+	private static Set<PathObject> query(PackedSpatialIndex index, ImageRegion region) {
+		var set = new HashSet<PathObject>();
+		assertTrue(index.query(region, p -> set.add(p)));
+		return set;
+	}
+	
+	private static Set<PathObject> bruteForce(Set<PathObject> objects, ImageRegion region) {
+		return objects.stream().filter(p -> {
+			var roi = p.getROI();
+			return roi.getZ() == region.getZ() && roi.getT() == region.getT() &&
+					roi.getBoundsX() <= region.getMaxX() && roi.getBoundsY() <= region.getMaxY() &&
+					roi.getBoundsX() + roi.getBoundsWidth() >= region.getMinX() &&
+					roi.getBoundsY() + roi.getBoundsHeight() >= region.getMinY();
+		}).collect(Collectors.toSet());
+	}
+	
+	private static void checkQueries(Random rng, PackedSpatialIndex index, Set<PathObject> expected, int nPlanes) {
+		assertEquals(expected.size(), index.size());
+		assertEquals(expected, query(index, null));
+		for (int i = 0; i < 50; i++) {
+			int w = rng.nextInt(2000);
+			int h = rng.nextInt(2000);
+			var region = ImageRegion.createInstance(rng.nextInt(10000) - w/2, rng.nextInt(10000) - h/2, w, h, rng.nextInt(nPlanes), 0);
+			assertEquals(bruteForce(expected, region), query(index, region));
+		}
+	}
+
+	@Test
+	public void testBuild() {
+		var rng = new Random(1L);
+		for (int n : new int[] {0, 1, 15, 16, 17, 255, 256, 257, 10000}) {
+			var objects = createObjects(rng, n, 2);
+			var index = PackedSpatialIndex.build(objects);
+			checkQueries(rng, index, new HashSet<>(objects), 2);
+		}
+	}
+	
+	@Test
+	public void testInsertAndRemove() {
+		var rng = new Random(2L);
+		var objects = createObjects(rng, 5000, 3);
+		var index = PackedSpatialIndex.build(objects);
+		var expected = new HashSet<>(objects);
+		
+		// Make enough changes to require the tree to be rebuilt a few times
+		for (int round = 0; round < 20; round++) {
+			var toAdd = createObjects(rng, 200, 3);
+			for (var pathObject : toAdd)
+				index.insert(Collections.singletonList(pathObject));
+			expected.addAll(toAdd);
+			
+			var toRemove = new ArrayList<>(expected).subList(0, 150);
+			index.remove(new ArrayList<>(toRemove));
+			expected.removeAll(new ArrayList<>(toRemove));
+			
+			checkQueries(rng, index, expected, 3);
+		}
+		
+		// Reinserting an object should not lead to duplicates
+		var pathObject = expected.iterator().next();
+		index.remove(Collections.singletonList(pathObject));
+		index.insert(Collections.singletonList(pathObject));
+		index.insert(Collections.singletonList(pathObject));
+		checkQueries(rng, index, expected, 3);
+	}
+	
+	@Test
+	public void testStopEarly() {
+		var objects = createObjects(new Random(3L), 1000, 1);
+		var index = PackedSpatialIndex.build(objects);
+		int[] count = new int[1];
+		assertFalse(index.query(null, p -> ++count[0] < 10));
+		assertEquals(10, count[0]);
+	}
+
+}
@@ -21,107 +21,112 @@
  * #L%
  */
 
-package qupath.lib.objects.hierarchy;
-
-import static org.junit.jupiter.api.Assertions.*;
-
+package qupath.lib.objects.hierarchy;
+
+import static org.junit.jupiter.api.Assertions.*;
+
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
-import java.util.List;
-
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import org.junit.jupiter.api.Test;
 
 import qupath.lib.regions.ImagePlane;
-import qupath.lib.regions.ImageRegion;
-import qupath.lib.objects.PathAnnotationObject;
+import qupath.lib.regions.ImageRegion;
+import qupath.lib.objects.PathAnnotationObject;
+import qupath.lib.objects.PathDetectionObject;
 import qupath.lib.objects.PathObject;
 import qupath.lib.objects.PathObjectTools;
 import qupath.lib.objects.PathObjects;
 import qupath.lib.objects.PathRootObject;
-import qupath.lib.objects.hierarchy.events.PathObjectHierarchyEvent;
+import qupath.lib.objects.hierarchy.events.PathObjectHierarchyEvent;
+import qupath.lib.objects.hierarchy.events.PathObjectHierarchyEventFilter;
+import qupath.lib.objects.hierarchy.events.PathObjectHierarchyEvent.HierarchyEventType;
 import qupath.lib.objects.hierarchy.events.PathObjectHierarchyListener;
 import qupath.lib.roi.ROIs;
-import qupath.lib.roi.interfaces.ROI;
-
-@SuppressWarnings("javadoc")
-public class TestPathObjectHierarchy {
-	PathObjectHierarchy myPH = new PathObjectHierarchy();
-	PO_hlistener myPOHL = new PO_hlistener();
-	PathObjectHierarchyEvent event = PathObjectHierarchyEvent.createObjectAddedEvent(new Object(), myPH, new PathAnnotationObject(), new PathAnnotationObject());
-	PathRootObject myPRO = new PathRootObject();
-	ROI my_PR1 = ROIs.createRectangleROI(10, 10, 2, 2, ImagePlane.getDefaultPlane());
-	ROI my_PR2 = ROIs.createRectangleROI(10, 10, 1, 1, ImagePlane.getDefaultPlane());
-	ROI my_PR3 = ROIs.createRectangleROI(30, 30, 1, 1, ImagePlane.getDefaultPlane());
-	PathObject myChild1PAO = PathObjects.createAnnotationObject(my_PR1);
-	PathObject myChild2PAO = PathObjects.createAnnotationObject(my_PR2); 
-	PathObject myChild3PAO = PathObjects.createAnnotationObject(my_PR3);
-	ImageRegion myIR = ImageRegion.createInstance(25, 25, 10, 10, 0, 0); // set to contain child3 - other values can be used to test negative 
-	
-	@Test
-	public void test_PathHierarchy() {
-
-		// Created new PH with listeners
-		myPH.addPathObjectListener(myPOHL);
-		assertTrue(myPH.isEmpty());
-		
-		// Firing direct event 
-		myPH.fireEvent(event);
-		assertEquals(myPOHL.getFiredState(), 1); // event(ADDED) fired
-		myPOHL.setFiredState(0);
-		
-		// Creating structure of POs
-		myChild1PAO.addPathObject(myChild3PAO);
-		myPRO.addPathObject(myChild1PAO);
-		assertEquals(myPRO.nChildObjects(), 1);
-		assertEquals(myChild1PAO.getParent(), myPRO);
-		
-		// Firing indirect events (adding/removing from hierarchy)
-		// Adding one PO with a child (so 2)
-		myPH.addPathObject(myChild1PAO);
-		Collection<PathObject> POAL1 = new ArrayList<>();
-		POAL1 = myPH.getObjects(POAL1, PathAnnotationObject.class);
-		assertEquals(POAL1.size(), 2); // 1 + child
-		assertEquals(myPH.getObjects(null, PathAnnotationObject.class), POAL1);
-		assertEquals(myChild1PAO.getParent(), myPH.getRootObject()); // child1 has been added to the PH - the PH root is the parent of child1
-		assertEquals(myChild3PAO.getParent(), myChild1PAO); // child3 is added to the PH through the addition of child1 (its parent)
-		
-		assertEquals(myPOHL.getFiredState(), 1); // event(ADDED) fired
-		myPOHL.setFiredState(0);
-
-		// Adding one PO without a child (so 1) - this PO, however, is fully contained within Child1 
-		myPH.insertPathObject(myChild2PAO, true);
-		Collection<PathObject> POAL2 = new ArrayList<>();
-		POAL2 = myPH.getObjects(POAL2, PathAnnotationObject.class);
-		assertEquals(POAL2.size(), 3); //  2 + 1 
-		assertEquals(myPH.getObjects(null, PathAnnotationObject.class), POAL2);
-		assertEquals(myChild2PAO.nChildObjects(), 0); // child2 doesn't have any children (child3 is only a child to child1 through the PO lineage)
-		//assertEquals(myChild2PAO.getParent(), myPH.getRootObject()); // child2's parent is not the root of the PH
-		assertEquals(myChild2PAO.getParent(), myChild1PAO); // child2's parent is child1 (as child2 is contained within child1)
-		
-		Collection<PathObject> POAL3 = new ArrayList<>();
-		POAL3 = PathObjectTools.getDescendantObjects(myChild1PAO, POAL3, PathAnnotationObject.class);
-		assertEquals(POAL3.size(), 2); // child1 has now 2 descendants - one on the PH lineage (child2) and one on the PO lineage (child3)
-		assertEquals(PathObjectTools.getDescendantObjects(myChild1PAO, null, PathAnnotationObject.class), POAL3);
-		
-		List<PathObject> POAL4 = new ArrayList<>();
-		POAL4 = myPH.getFlattenedObjectList(POAL4);
-		assertEquals(POAL4.size(), 4); // all nodes (including parent node from hierarchy)
-		assertEquals(myPH.getFlattenedObjectList(null), POAL4);
-				
-		assertEquals(myPH.nObjects(), 3); // descendants - TODO: name may be a bit misleading???
-		
-//		// Remove one PO without a child (so 2 left)		
-//		myPH.removeObject(myChild2PAO, true); // no children, so a changed structure event will fire 
-//		List<PathObject> POAL5 = new ArrayList<>();
-//		POAL5 = myPH.getObjects(POAL5, PathAnnotationObject.class);
-//		assertEquals(POAL5.size(), 2); // 3 - 1  
-//		assertEquals(myPH.getObjects(null, PathAnnotationObject.class), POAL5);		
-//
-//		assertEquals(myPOHL.getFiredState(), 3); // event(CHANGED STRUCTURE) fired
+import qupath.lib.roi.interfaces.ROI;
+
+@SuppressWarnings("javadoc")
+public class TestPathObjectHierarchy {
+	PathObjectHierarchy myPH = new PathObjectHierarchy();
+	PO_hlistener myPOHL = new PO_hlistener();
+	PathObjectHierarchyEvent event = PathObjectHierarchyEvent.createObjectAddedEvent(new Object(), myPH, new PathAnnotationObject(), new PathAnnotationObject());
+	PathRootObject myPRO = new PathRootObject();
+	ROI my_PR1 = ROIs.createRectangleROI(10, 10, 2, 2, ImagePlane.getDefaultPlane());
+	ROI my_PR2 = ROIs.createRectangleROI(10, 10, 1, 1, ImagePlane.getDefaultPlane());
+	ROI my_PR3 = ROIs.createRectangleROI(30, 30, 1, 1, ImagePlane.getDefaultPlane());
+	PathObject myChild1PAO = PathObjects.createAnnotationObject(my_PR1);
+	PathObject myChild2PAO = PathObjects.createAnnotationObject(my_PR2); 
+	PathObject myChild3PAO = PathObjects.createAnnotationObject(my_PR3);
+	ImageRegion myIR = ImageRegion.createInstance(25, 25, 10, 10, 0, 0); // set to contain child3 - other values can be used to test negative 
+	
+	@Test
+	public void test_PathHierarchy() {
+
+		// Created new PH with listeners
+		myPH.addPathObjectListener(myPOHL);
+		assertTrue(myPH.isEmpty());
+		
+		// Firing direct event 
+		myPH.fireEvent(event);
+		assertEquals(myPOHL.getFiredState(), 1); // event(ADDED) fired
+		myPOHL.setFiredState(0);
+		
+		// Creating structure of POs
+		myChild1PAO.addPathObject(myChild3PAO);
+		myPRO.addPathObject(myChild1PAO);
+		assertEquals(myPRO.nChildObjects(), 1);
+		assertEquals(myChild1PAO.getParent(), myPRO);
+		
+		// Firing indirect events (adding/removing from hierarchy)
+		// Adding one PO with a child (so 2)
+		myPH.addPathObject(myChild1PAO);
+		Collection<PathObject> POAL1 = new ArrayList<>();
+		POAL1 = myPH.getObjects(POAL1, PathAnnotationObject.class);
+		assertEquals(POAL1.size(), 2); // 1 + child
+		assertEquals(myPH.getObjects(null, PathAnnotationObject.class), POAL1);
+		assertEquals(myChild1PAO.getParent(), myPH.getRootObject()); // child1 has been added to the PH - the PH root is the parent of child1
+		assertEquals(myChild3PAO.getParent(), myChild1PAO); // child3 is added to the PH through the addition of child1 (its parent)
+		
+		assertEquals(myPOHL.getFiredState(), 1); // event(ADDED) fired
+		myPOHL.setFiredState(0);
+
+		// Adding one PO without a child (so 1) - this PO, however, is fully contained within Child1 
+		myPH.insertPathObject(myChild2PAO, true);
+		Collection<PathObject> POAL2 = new ArrayList<>();
+		POAL2 = myPH.getObjects(POAL2, PathAnnotationObject.class);
+		assertEquals(POAL2.size(), 3); //  2 + 1 
+		assertEquals(myPH.getObjects(null, PathAnnotationObject.class), POAL2);
+		assertEquals(myChild2PAO.nChildObjects(), 0); // child2 doesn't have any children (child3 is only a child to child1 through the PO lineage)
+		//assertEquals(myChild2PAO.getParent(), myPH.getRootObject()); // child2's parent is not the root of the PH
+		assertEquals(myChild2PAO.getParent(), myChild1PAO); // child2's parent is child1 (as child2 is contained within child1)
+		
+		Collection<PathObject> POAL3 = new ArrayList<>();
+		POAL3 = PathObjectTools.getDescendantObjects(myChild1PAO, POAL3, PathAnnotationObject.class);
+		assertEquals(POAL3.size(), 2); // child1 has now 2 descendants - one on the PH lineage (child2) and one on the PO lineage (child3)
+		assertEquals(PathObjectTools.getDescendantObjects(myChild1PAO, null, PathAnnotationObject.class), POAL3);
+		
+		List<PathObject> POAL4 = new ArrayList<>();
+		POAL4 = myPH.getFlattenedObjectList(POAL4);
+		assertEquals(POAL4.size(), 4); // all nodes (including parent node from hierarchy)
+		assertEquals(myPH.getFlattenedObjectList(null), POAL4);
+				
+		assertEquals(myPH.nObjects(), 3); // descendants - TODO: name may be a bit misleading???
+		
+//		// Remove one PO without a child (so 2 left)		
+//		myPH.removeObject(myChild2PAO, true); // no children, so a changed structure event will fire 
+//		List<PathObject> POAL5 = new ArrayList<>();
+//		POAL5 = myPH.getObjects(POAL5, PathAnnotationObject.class);
+//		assertEquals(POAL5.size(), 2); // 3 - 1  
+//		assertEquals(myPH.getObjects(null, PathAnnotationObject.class), POAL5);		
+//
+//		assertEquals(myPOHL.getFiredState(), 3); // event(CHANGED STRUCTURE) fired
 //		myPOHL.setFiredState(0);
 		
 		// Remove one PO without a child (so 2 left)		
@@ -132,29 +137,29 @@ public class TestPathObjectHierarchy {
 		assertEquals(myPH.getObjects(null, PathAnnotationObject.class), POAL5);		
 
 		assertEquals(myPOHL.getFiredState(), 2); // event(CHANGED REMOVED) fired
-		myPOHL.setFiredState(0);
-		
-		// Remove one PO with a child but keep child (so 1 left)		
-		myPH.removeObject(myChild1PAO, true);
-		Collection<PathObject> POAL6 = new ArrayList<>();
-		POAL6 = myPH.getObjects(POAL6, PathAnnotationObject.class);
-		assertEquals(POAL6.size(), 1); // 2 - 1  
-		assertEquals(myPH.getObjects(null, PathAnnotationObject.class), POAL6);		
-
-		assertEquals(myPOHL.getFiredState(), 2); // event(REMOVED) fired
-		myPOHL.setFiredState(0);
-		
-		// Check how many objects present in the region indicated below 
-		Collection<PathObject> POAL7 = new ArrayList<>();
-		POAL7 = myPH.getObjectsForRegion(PathAnnotationObject.class, myIR, POAL7);
-		assertEquals(POAL7.size(), 1); // since there's only 1 object left (child3), this checks whether it falls within the region   
-		assertEquals(myPH.getObjects(null, PathAnnotationObject.class), POAL7);		
-		
-		// Finalise by removing all items left
-		assertEquals(myPH.nObjects(), 1); 
-		myPH.clearAll();
-		assertEquals(myPH.nObjects(), 0);
-
+		myPOHL.setFiredState(0);
+		
+		// Remove one PO with a child but keep child (so 1 left)		
+		myPH.removeObject(myChild1PAO, true);
+		Collection<PathObject> POAL6 = new ArrayList<>();
+		POAL6 = myPH.getObjects(POAL6, PathAnnotationObject.class);
+		assertEquals(POAL6.size(), 1); // 2 - 1  
+		assertEquals(myPH.getObjects(null, PathAnnotationObject.class), POAL6);		
+
+		assertEquals(myPOHL.getFiredState(), 2); // event(REMOVED) fired
+		myPOHL.setFiredState(0);
+		
+		// Check how many objects present in the region indicated below 
+		Collection<PathObject> POAL7 = new ArrayList<>();
+		POAL7 = myPH.getObjectsForRegion(PathAnnotationObject.class, myIR, POAL7);
+		assertEquals(POAL7.size(), 1); // since there's only 1 object left (child3), this checks whether it falls within the region   
+		assertEquals(myPH.getObjects(null, PathAnnotationObject.class), POAL7);		
+		
+		// Finalise by removing all items left
+		assertEquals(myPH.nObjects(), 1); 
+		myPH.clearAll();
+		assertEquals(myPH.nObjects(), 0);
+
 	}
 	
 	/**
@@ -378,35 +383,337 @@ public class TestPathObjectHierarchy {
 		}
 
 	}
-	
-	
-}
-
-// Helper classes for testing
-
-class PO_hlistener implements PathObjectHierarchyListener {
-	private int firedState = 0;  
-	
-	public int getFiredState() {
-		return firedState;
-	}
-	
-	public void setFiredState(int state) {
-		this.firedState = state;
-	}
-
-	@Override
-	public void hierarchyChanged(PathObjectHierarchyEvent event) {
-		if (event.getEventType() == PathObjectHierarchyEvent.HierarchyEventType.ADDED)
-			//System.out.println("Added!");
-			this.firedState = 1; 
-		else if (event.getEventType() == PathObjectHierarchyEvent.HierarchyEventType.REMOVED)
-			//System.out.println("Removed!");
-			this.firedState = 2;
-		else if (event.getEventType() == PathObjectHierarchyEvent.HierarchyEventType.OTHER_STRUCTURE_CHANGE)
-			//System.out.println("Other!");
-			this.firedState = 3;
-	}
-
-}
-
+	
+	
+	@Test
+	public void test_insertPathObjects() {
+		
+		var hierarchy = new PathObjectHierarchy();
+		var plane = ImagePlane.getDefaultPlane();
+		
+		// Add a grid of detections, directly below the root
+		var detections = new ArrayList<PathObject>();
+		for (int y = 0; y < 100; y++) {
+			for (int x = 0; x < 100; x++) {
+				detections.add(PathObjects.createDetectionObject(ROIs.createRectangleROI(x * 10, y * 10, 5, 5, plane)));
+			}
+		}
+		hierarchy.addPathObjects(detections);
+		
+		// Insert nested annotations in one region, and a separate annotation elsewhere
+		var outer = PathObjects.createAnnotationObject(ROIs.createRectangleROI(0, 0, 200, 200, plane));
+		var inner = PathObjects.createAnnotationObject(ROIs.createRectangleROI(50, 50, 50, 50, plane));
+		var separate = PathObjects.createAnnotationObject(ROIs.createRectangleROI(500, 500, 100, 100, plane));
+		var otherPlane = PathObjects.createAnnotationObject(ROIs.createRectangleROI(0, 0, 1000, 1000, ImagePlane.getPlane(1, 0)));
+		
+		myPOHL.setFiredState(0);
+		hierarchy.addPathObjectListener(myPOHL);
+		assertTrue(hierarchy.insertPathObjects(Arrays.asList(inner, separate, outer, otherPlane)));
+		assertEquals(3, myPOHL.getFiredState()); // event(CHANGED STRUCTURE) fired
+		
+		var root = hierarchy.getRootObject();
+		assertEquals(root, outer.getParent());
+		assertEquals(outer, inner.getParent());
+		assertEquals(root, separate.getParent());
+		assertEquals(root, otherPlane.getParent());
+		assertEquals(0, otherPlane.nChildObjects());
+		
+		for (var detection : detections) {
+			var roi = detection.getROI();
+			double cx = roi.getCentroidX();
+			double cy = roi.getCentroidY();
+			PathObject expected = root;
+			if (inner.getROI().contains(cx, cy))
+				expected = inner;
+			else if (outer.getROI().contains(cx, cy))
+				expected = outer;
+			else if (separate.getROI().contains(cx, cy))
+				expected = separate;
+			assertEquals(expected, detection.getParent());
+		}
+		
+		// Reinserting should give the same result, even if objects are already in the hierarchy
+		hierarchy.insertPathObjects(Arrays.asList(outer, inner));
+		assertEquals(root, outer.getParent());
+		assertEquals(outer, inner.getParent());
+		assertEquals(25, inner.nChildObjects());
+		assertEquals(400 - 25 + 1, outer.nChildObjects());
+		
+		// Detections should still be found after reinsertion, since the cache was kept up to date
+		assertEquals(25, hierarchy.getObjectsForROI(PathDetectionObject.class, inner.getROI()).size());
+	}
+	
+
+	@Test
+	public void test_eventTransactions() throws Exception {
+		var hierarchy = new PathObjectHierarchy();
+		var plane = ImagePlane.getDefaultPlane();
+		var annotation = PathObjects.createAnnotationObject(ROIs.createRectangleROI(0, 0, 1000, 1000, plane));
+		hierarchy.addPathObject(annotation);
+		
+		List<PathObjectHierarchyEvent> allEvents = new ArrayList<>();
+		List<PathObjectHierarchyEvent> measurementEvents = new ArrayList<>();
+		List<PathObjectHierarchyEvent> annotationEvents = new ArrayList<>();
+		hierarchy.addPathObjectListener(e -> allEvents.add(e));
+		hierarchy.addPathObjectListener(e -> measurementEvents.add(e), PathObjectHierarchyEventFilter.forEventTypes(HierarchyEventType.CHANGE_MEASUREMENTS));
+		hierarchy.addPathObjectListener(e -> annotationEvents.add(e), 
+				PathObjectHierarchyEventFilter.forEventTypes(HierarchyEventType.CHANGE_CLASSIFICATION).objectClasses(PathAnnotationObject.class));
+		
+		List<PathObjectHierarchyEvent> debouncedEvents = Collections.synchronizedList(new ArrayList<>());
+		// The transaction should be coalesced into three events, which the latch waits for
+		var latch = new CountDownLatch(3);
+		hierarchy.addDebouncedPathObjectListener(e -> {
+			debouncedEvents.add(e);
+			latch.countDown();
+		}, null, 50);
+		
+		// Add objects & then update them one at a time within a transaction
+		List<PathObject> detections = new ArrayList<>();
+		hierarchy.beginTransaction();
+		for (int i = 0; i < 100; i++) {
+			var detection = PathObjects.createDetectionObject(ROIs.createRectangleROI(i*5, i*5, 4, 4, plane));
+			detections.add(detection);
+			hierarchy.insertPathObject(detection, true);
+		}
+		for (var detection : detections) {
+			hierarchy.fireObjectClassificationsChangedEvent(this, Collections.singletonList(detection));
+			hierarchy.fireObjectMeasurementsChangedEvent(this, Collections.singletonList(detection));
+		}
+		assertTrue(hierarchy.isInTransaction());
+		assertTrue(allEvents.isEmpty());
+		// Queries should see the changes immediately, since the tile cache isn't deferred
+		assertEquals(100, hierarchy.getObjectsForROI(PathDetectionObject.class, annotation.getROI()).size());
+		hierarchy.commitTransaction();
+		assertFalse(hierarchy.isInTransaction());
+		
+		// Expect one structure event, one classification event & one measurement event
+		assertEquals(3, allEvents.size());
+		assertTrue(allEvents.get(0).isStructureChangeEvent());
+		assertEquals(annotation, allEvents.get(0).getStructureChangeBase());
+		assertEquals(HierarchyEventType.CHANGE_CLASSIFICATION, allEvents.get(1).getEventType());
+		assertEquals(detections, allEvents.get(1).getChangedObjects());
+		assertEquals(1, measurementEvents.size());
+		assertEquals(detections, measurementEvents.get(0).getChangedObjects());
+		assertTrue(annotationEvents.isEmpty());
+		assertThrows(IllegalStateException.class, () -> hierarchy.commitTransaction());
+		
+		// Debounced events should be coalesced too
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertEquals(3, debouncedEvents.size());
+		
+		// Outside a transaction, events should be delivered individually
+		allEvents.clear();
+		hierarchy.fireObjectClassificationsChangedEvent(this, Collections.singletonList(annotation));
+		hierarchy.fireObjectClassificationsChangedEvent(this, detections);
+		assertEquals(2, allEvents.size());
+		assertEquals(1, annotationEvents.size());
+		
+		// Nested transactions should only notify listeners at the end
+		allEvents.clear();
+		hierarchy.runInTransaction(() -> {
+			hierarchy.runInTransaction(() -> hierarchy.removeObjects(detections.subList(0, 10), true));
+			assertTrue(allEvents.isEmpty());
+			hierarchy.removeObjects(detections.subList(10, 20), true);
+		});
+		assertEquals(1, allEvents.size());
+		assertEquals(80, hierarchy.getObjectsForROI(PathDetectionObject.class, annotation.getROI()).size());
+		
+		// Coalescing shouldn't change the order of structure and object events
+		allEvents.clear();
+		hierarchy.runInTransaction(() -> {
+			hierarchy.fireObjectClassificationsChangedEvent(this, detections.subList(20, 30));
+			hierarchy.removeObjects(detections.subList(20, 30), true);
+			hierarchy.fireObjectMeasurementsChangedEvent(this, detections.subList(30, 40));
+		});
+		assertEquals(3, allEvents.size());
+		assertEquals(HierarchyEventType.CHANGE_CLASSIFICATION, allEvents.get(0).getEventType());
+		assertTrue(allEvents.get(1).isStructureChangeEvent());
+		assertEquals(HierarchyEventType.CHANGE_MEASUREMENTS, allEvents.get(2).getEventType());
+	}
+	
+	
+	@Test
+	public void test_insertWithDeferredLoading() {
+		var hierarchy = new PathObjectHierarchy();
+		var plane = ImagePlane.getDefaultPlane();
+		
+		// Create a loader that adds detections below the root whenever their bounds overlap the requested region
+		var pending = new ArrayList<PathObject>();
+		for (int i = 0; i < 10; i++)
+			pending.add(PathObjects.createDetectionObject(ROIs.createRectangleROI(i * 10, 0, 4, 4, plane)));
+		hierarchy.setObjectLoader(new PathObjectLoader() {
+
+			@Override
+			public Collection<PathObject> loadObjects(ImageRegion region) {
+				var loaded = new ArrayList<PathObject>();
+				var iter = pending.iterator();
+				while (iter.hasNext()) {
+					var pathObject = iter.next();
+					var roi = pathObject.getROI();
+					if (region == null || region.intersects(roi.getBoundsX(), roi.getBoundsY(), roi.getBoundsWidth(), roi.getBoundsHeight())) {
+						loaded.add(pathObject);
+						iter.remove();
+					}
+				}
+				hierarchy.getRootObject().addPathObjects(loaded);
+				return loaded;
+			}
+
+			@Override
+			public boolean isFullyLoaded() {
+				return pending.isEmpty();
+			}
+			
+		});
+		
+		// Inserting an annotation should load the detections it contains, and make them its children
+		var annotation = PathObjects.createAnnotationObject(ROIs.createRectangleROI(0, 0, 45, 10, plane));
+		assertTrue(hierarchy.insertPathObject(annotation, true));
+		assertEquals(5, annotation.nChildObjects());
+		for (var child : annotation.getChildObjects())
+			assertTrue(child.getROI().getBoundsX() < 45);
+		
+		// Detections elsewhere don't need to be loaded yet
+		assertFalse(hierarchy.isFullyLoaded());
+		assertEquals(5, pending.size());
+		assertEquals(10, hierarchy.getDetectionObjects().size());
+		assertEquals(5, hierarchy.getRootObject().nChildObjects() - 1);
+	}
+	
+	@Test
+	public void test_childrenWithDeferredLoading() {
+		var hierarchy = new PathObjectHierarchy();
+		var plane = ImagePlane.getDefaultPlane();
+		var annotation = PathObjects.createAnnotationObject(ROIs.createRectangleROI(0, 0, 100, 10, plane));
+		hierarchy.addPathObject(annotation);
+		
+		// Create a loader that adds detections to the annotation whenever their bounds overlap the requested region
+		var pending = new ArrayList<PathObject>();
+		for (int i = 0; i < 10; i++)
+			pending.add(PathObjects.createDetectionObject(ROIs.createRectangleROI(i * 10, 0, 4, 4, plane)));
+		hierarchy.setObjectLoader(new PathObjectLoader() {
+
+			@Override
+			public Collection<PathObject> loadObjects(ImageRegion region) {
+				var loaded = new ArrayList<PathObject>();
+				var iter = pending.iterator();
+				while (iter.hasNext()) {
+					var pathObject = iter.next();
+					var roi = pathObject.getROI();
+					if (region == null || region.intersects(roi.getBoundsX(), roi.getBoundsY(), roi.getBoundsWidth(), roi.getBoundsHeight())) {
+						loaded.add(pathObject);
+						iter.remove();
+					}
+				}
+				annotation.addPathObjects(loaded);
+				return loaded;
+			}
+
+			@Override
+			public boolean isFullyLoaded() {
+				return pending.isEmpty();
+			}
+			
+		});
+		
+		// Requesting a region should only load the detections it overlaps
+		var region = ImageRegion.createInstance(0, 0, 25, 10, 0, 0);
+		assertEquals(3, hierarchy.getObjectsForRegion(PathDetectionObject.class, region, null).size());
+		assertEquals(3, annotation.nChildObjects());
+		assertFalse(hierarchy.isFullyLoaded());
+		
+		// Accessing children from the root should find all the detections
+		var root = hierarchy.getRootObject();
+		assertTrue(hierarchy.isFullyLoaded());
+		assertEquals(1, root.nChildObjects());
+		var annotation2 = root.getChildObjects().iterator().next();
+		assertSame(annotation, annotation2);
+		assertEquals(10, annotation2.nChildObjects());
+		assertEquals(11, PathObjectTools.countDescendants(root));
+		assertEquals(10, hierarchy.getObjectsForRegion(PathDetectionObject.class, ImageRegion.createInstance(0, 0, 100, 10, 0, 0), null).size());
+	}
+	
+	@Test
+	public void test_previousParents() {
+		var hierarchy = new PathObjectHierarchy();
+		var plane = ImagePlane.getDefaultPlane();
+		var annotation = PathObjects.createAnnotationObject(ROIs.createRectangleROI(0, 0, 100, 100, plane));
+		hierarchy.addPathObject(annotation);
+		List<PathObject> detections = new ArrayList<>();
+		for (int i = 0; i < 5; i++)
+			detections.add(PathObjects.createDetectionObject(ROIs.createRectangleROI(i*10, i*10, 4, 4, plane)));
+		
+		List<PathObjectHierarchyEvent> events = new ArrayList<>();
+		hierarchy.addPathObjectListener(e -> events.add(e));
+		
+		// New objects didn't have a parent
+		hierarchy.insertPathObjects(detections);
+		assertEquals(1, events.size());
+		var previousParents = events.get(0).getPreviousParents();
+		assertEquals(5, previousParents.size());
+		for (var detection : detections) {
+			assertSame(annotation, detection.getParent());
+			assertTrue(previousParents.containsKey(detection));
+			assertNull(previousParents.get(detection));
+		}
+		
+		// Children that are kept should be included, even though they aren't named as changed objects
+		events.clear();
+		hierarchy.removeObject(annotation, true);
+		assertEquals(1, events.size());
+		previousParents = events.get(0).getPreviousParents();
+		assertEquals(6, previousParents.size());
+		assertSame(hierarchy.getRootObject(), previousParents.get(annotation));
+		for (var detection : detections)
+			assertSame(annotation, previousParents.get(detection));
+		
+		// Coalesced events should retain the earliest parent
+		events.clear();
+		hierarchy.runInTransaction(() -> {
+			hierarchy.addPathObject(annotation);
+			hierarchy.removeObject(annotation, false);
+			hierarchy.addPathObject(annotation);
+		});
+		assertEquals(1, events.size());
+		previousParents = events.get(0).getPreviousParents();
+		assertTrue(previousParents.containsKey(annotation));
+		assertNull(previousParents.get(annotation));
+		
+		// Nothing was moved since the last event
+		events.clear();
+		hierarchy.fireHierarchyChangedEvent(this);
+		assertEquals(1, events.size());
+		assertTrue(events.get(0).getPreviousParents().isEmpty());
+	}
+	
+	
+}
+
+// Helper classes for testing
+
+class PO_hlistener implements PathObjectHierarchyListener {
+	private int firedState = 0;  
+	
+	public int getFiredState() {
+		return firedState;
+	}
+	
+	public void setFiredState(int state) {
+		this.firedState = state;
+	}
+
+	@Override
+	public void hierarchyChanged(PathObjectHierarchyEvent event) {
+		if (event.getEventType() == PathObjectHierarchyEvent.HierarchyEventType.ADDED)
+			//System.out.println("Added!");
+			this.firedState = 1; 
+		else if (event.getEventType() == PathObjectHierarchyEvent.HierarchyEventType.REMOVED)
+			//System.out.println("Removed!");
+			this.firedState = 2;
+		else if (event.getEventType() == PathObjectHierarchyEvent.HierarchyEventType.OTHER_STRUCTURE_CHANGE)
+			//System.out.println("Other!");
+			this.firedState = 3;
+	}
+
+}
+
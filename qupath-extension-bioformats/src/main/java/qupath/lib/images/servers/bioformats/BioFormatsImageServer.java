@@ -162,6 +162,11 @@ public class BioFormatsImageServer extends AbstractTileableImageServer {
 	 */
 	private String filePath;
 	
+	/**
+	 * Key used to identify tiles in a persistent cache
+	 */
+	private transient String persistentCacheKey;
+	
 	/**
 	 * Fix issue related to VSI images having (wrong) z-slices
 	 */
@@ -751,6 +756,26 @@ public class BioFormatsImageServer extends AbstractTileableImageServer {
 		return id;
 	}
 	
+	/**
+	 * Returns a key that includes the last modified time of the file, so that cached tiles are not 
+	 * reused if the file changes. Returns null if the URI does not correspond to a local file.
+	 */
+	@Override
+	protected String getPersistentCacheKey() {
+		if (persistentCacheKey == null) {
+			var path = GeneralTools.toPath(uri);
+			if (path == null)
+				return null;
+			try {
+				persistentCacheKey = getPath() + "@" + Files.getLastModifiedTime(path).toMillis();
+			} catch (IOException e) {
+				logger.debug("Unable to get last modified time for {}: {}", path, e.getLocalizedMessage());
+				return null;
+			}
+		}
+		return persistentCacheKey;
+	}
+	
 	/**
 	 * Returns a builder capable of creating a server like this one.
 	 */
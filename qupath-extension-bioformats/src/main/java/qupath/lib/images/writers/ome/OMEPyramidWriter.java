@@ -22,6 +22,7 @@
 package qupath.lib.images.writers.ome;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
 import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
@@ -35,8 +36,11 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -59,6 +63,7 @@ import ome.xml.model.primitives.Color;
 import ome.xml.model.primitives.PositiveInteger;
 import qupath.lib.color.ColorModelFactory;
 import qupath.lib.common.ColorTools;
+import qupath.lib.common.ThreadTools;
 import qupath.lib.images.servers.ImageChannel;
 import qupath.lib.images.servers.ImageServer;
 import qupath.lib.images.servers.ImageServerMetadata;
@@ -320,7 +325,7 @@ public class OMEPyramidWriter {
 		
 		private ByteOrder endian = ByteOrder.BIG_ENDIAN;
 		
-		private boolean parallelExport = false;
+		private int nThreads = 1;
 		
 		private Boolean bigTiff;
 		private ChannelExportType channelExportType = ChannelExportType.DEFAULT;
@@ -524,135 +529,218 @@ public class OMEPyramidWriter {
 			writer.setSeries(series);
 			
 			Map<Integer, IFD> map = new HashMap<>();
-	
-			writer.setSeries(series);
-			for (int level = 0; level < downsamples.length; level++) {
-				
-				writer.setResolution(level);
-				
-				// Preallocate any IFD
-				map.clear();
-				for (int i = 0; i < nPlanes; i++) {
-					IFD ifd = new IFD();
-					if (isTiled) {
-						ifd.put(IFD.TILE_WIDTH, tileWidth);
-						ifd.put(IFD.TILE_LENGTH, tileHeight);
+			
+			/*
+			 * Reading/converting and writing/compressing tiles are handled as separate stages, 
+			 * with the number of tiles in flight limited to avoid holding too many buffers in memory.
+			 */
+			ExecutorService readPool = null;
+			ExecutorService writePool = null;
+			if (nThreads > 1) {
+				readPool = Executors.newFixedThreadPool(nThreads, ThreadTools.createThreadFactory("ome-tiff-reader-", true));
+				writePool = Executors.newFixedThreadPool(nThreads, ThreadTools.createThreadFactory("ome-tiff-writer-", true));
+			}
+			
+			// Each level can be read from the previous level (if it was small enough to cache), rather than the server
+			DownsampledLevel currentLevel = null;
+			
+			try {
+				writer.setSeries(series);
+				for (int level = 0; level < downsamples.length; level++) {
+					
+					writer.setResolution(level);
+					
+					// Preallocate any IFD
+					map.clear();
+					for (int i = 0; i < nPlanes; i++) {
+						IFD ifd = new IFD();
+						if (isTiled) {
+							ifd.put(IFD.TILE_WIDTH, tileWidth);
+							ifd.put(IFD.TILE_LENGTH, tileHeight);
+						}
+						if (nSamples > 1 && !isRGB)
+							ifd.put(IFD.EXTRA_SAMPLES, new short[nSamples-1]);
+						map.put(Integer.valueOf(i), ifd);
 					}
-					if (nSamples > 1 && !isRGB)
-						ifd.put(IFD.EXTRA_SAMPLES, new short[nSamples-1]);
-					map.put(Integer.valueOf(i), ifd);
-				}
-	
-				double d = downsamples[level];
-								
-				int w = (int)(width * downsamples[0] / d);
-				int h = (int)(height * downsamples[0] / d);
-	
-				int tInc = tEnd >= tStart ? 1 : -1;
-				int zInc = zEnd >= zStart ? 1 : -1;
-				int effectiveSizeC = nChannels / nSamples;
-				
-				AtomicInteger count = new AtomicInteger(0);
-								
-				int ti = 0;
-				for (int t = tStart; t < tEnd; t += tInc) {
-					int zi = 0;
-					for (int z = zStart; z < zEnd; z += zInc) {
-						
-						/*
-						 *  It appears we can use parallelization for tile writing (thanks to synchronization in the writer),
-						 *  provided we write the (0,0) tile first.
-						 */
-						long planeStartTime = System.currentTimeMillis();
-						
-						// Create a list of all required requests, extracting the first
-						List<ImageRegion> regions = new ArrayList<>();
-						for (int yy = 0; yy < h; yy += tileHeight) {
-							int hh = Math.min(h - yy, tileHeight);
-							for (int xx = 0; xx < w; xx += tileWidth) {
-								int ww = Math.min(w - xx, tileWidth);
-								regions.add(ImageRegion.createInstance(xx, yy, ww, hh, z, t));
+		
+					double d = downsamples[level];
+									
+					int w = (int)(width * downsamples[0] / d);
+					int h = (int)(height * downsamples[0] / d);
+		
+					int tInc = tEnd >= tStart ? 1 : -1;
+					int zInc = zEnd >= zStart ? 1 : -1;
+					int effectiveSizeC = nChannels / nSamples;
+					
+					DownsampledLevel sourceLevel = currentLevel;
+					DownsampledLevel nextLevel = level < downsamples.length - 1 ?
+							DownsampledLevel.tryToCreate(server, width, height, downsamples[0], d, downsamples[level+1], tileWidth, tileHeight, 
+									sizeZ * sizeT) : null;
+					if (nextLevel != null)
+						logger.debug("Resolution {} will be generated from resolution {}", level+2, level+1);
+					currentLevel = nextLevel;
+					
+					AtomicInteger count = new AtomicInteger(0);
+									
+					int ti = 0;
+					for (int t = tStart; t < tEnd; t += tInc) {
+						int zi = 0;
+						for (int z = zStart; z < zEnd; z += zInc) {
+							
+							/*
+							 *  It appears we can use parallelization for tile writing (thanks to synchronization in the writer),
+							 *  provided we write the (0,0) tile first.
+							 */
+							long planeStartTime = System.currentTimeMillis();
+							
+							// Create a list of all required requests, extracting the first
+							List<ImageRegion> regions = new ArrayList<>();
+							for (int yy = 0; yy < h; yy += tileHeight) {
+								int hh = Math.min(h - yy, tileHeight);
+								for (int xx = 0; xx < w; xx += tileWidth) {
+									int ww = Math.min(w - xx, tileWidth);
+									regions.add(ImageRegion.createInstance(xx, yy, ww, hh, z, t));
+								}
 							}
-						}
-						
-						int total = regions.size() * (tEnd - tStart) * (zEnd - zStart);
-						if (z == zStart && t == tStart)
-							logger.info("Writing resolution {} of {} (downsample={}, {} tiles)", level+1, downsamples.length, d, total);
-
-						ImageRegion firstRegion = regions.remove(0);
-						
-						// Show progress at key moments
-						int inc = total > 1000 ? 20 : 10;
-						Set<Integer> keyCounts = IntStream.range(1, inc).mapToObj(i -> (int)Math.round((double)total / inc * i)).collect(Collectors.toCollection(() -> new HashSet<>()));
-						keyCounts.add(total-1);
-						
-						// Loop through effective channels (which is 1 if we are writing interleaved)
-						for (int ci = 0; ci < effectiveSizeC; ci++) {
 							
-							int plane = ti * sizeZ * effectiveSizeC + zi * effectiveSizeC + ci;
-							IFD ifd = map.get(Integer.valueOf(plane));
-							int[] localChannels = effectiveSizeC == channels.length ? new int[] {channels[ci]} : channels;
-						
-							logger.info("Writing plane {}/{}", plane+1, nPlanes);
+							int total = regions.size() * (tEnd - tStart) * (zEnd - zStart);
+							if (z == zStart && t == tStart)
+								logger.info("Writing resolution {} of {} (downsample={}, {} tiles)", level+1, downsamples.length, d, total);
+	
+							ImageRegion firstRegion = regions.remove(0);
+							
+							// Show progress at key moments
+							int inc = total > 1000 ? 20 : 10;
+							Set<Integer> keyCounts = IntStream.range(1, inc).mapToObj(i -> (int)Math.round((double)total / inc * i)).collect(Collectors.toCollection(() -> new HashSet<>()));
+							keyCounts.add(total-1);
+							
+							// Loop through effective channels (which is 1 if we are writing interleaved)
+							for (int ci = 0; ci < effectiveSizeC; ci++) {
 								
-							// We *must* write the first region first
-							writeRegion(writer, plane, ifd, firstRegion, d, isRGB, localChannels);
-							if (!regions.isEmpty()) {
-								var tasks = regions.stream().map(region -> new Runnable() {
-									@Override
-									public void run() {
-										try {
-											if (Thread.currentThread().isInterrupted())
-												return;
-											writeRegion(writer, plane, ifd, region, d, isRGB, localChannels);
-										} catch (Exception e) {
-											logger.error(String.format(
-													"Error writing %s (downsample=%.2f)",
-													region.toString(), d),
-													e);
-										} finally {
-											int localCount = count.incrementAndGet();
-											if (total > 20 && keyCounts.size() > 1 && keyCounts.contains(localCount)) {
-												double percentage = localCount*100.0/total;
-												logger.info("Written {}% tiles", Math.round(percentage));
-											}
-										}
-									}
-								}).collect(Collectors.toList());
+								int plane = ti * sizeZ * effectiveSizeC + zi * effectiveSizeC + ci;
+								IFD ifd = map.get(Integer.valueOf(plane));
+								int[] localChannels = effectiveSizeC == channels.length ? new int[] {channels[ci]} : channels;
+								// All channels are read together, so we only need to update the next level once
+								DownsampledLevel targetLevel = ci == 0 ? nextLevel : null;
+							
+								logger.info("Writing plane {}/{}", plane+1, nPlanes);
+									
+								// We *must* write the first region first
+								readRegion(firstRegion, d, isRGB, localChannels, sourceLevel, targetLevel).write(writer, plane, ifd);
+								if (regions.isEmpty())
+									continue;
 								
-								if (parallelExport) {
-									var pool = Executors.newWorkStealingPool(4);
-									for (var task : tasks) {
-										pool.submit(task);
-									}
-									pool.shutdown();
-									try {
-										pool.awaitTermination(regions.size(), TimeUnit.MINUTES);
-										logger.info("Plane written in {} ms", System.currentTimeMillis() - planeStartTime);
-									} catch (InterruptedException e) {
-										logger.warn("OME-TIFF export interrupted!");
-										pool.shutdownNow();
-										throw new IOException("Error writing regions", e);
-									}
+								if (readPool != null) {
+									writeRegionsParallel(writer, plane, ifd, regions, d, isRGB, localChannels, sourceLevel, targetLevel,
+											readPool, writePool, count, total, keyCounts);
+									logger.info("Plane written in {} ms", System.currentTimeMillis() - planeStartTime);
 								} else {
-									for (var task : tasks) {
+									for (var region : regions) {
 										if (Thread.currentThread().isInterrupted()) {
 											throw new IOException("Interrupted writing regions!");
 										}
-										task.run();
+										try {
+											readRegion(region, d, isRGB, localChannels, sourceLevel, targetLevel).write(writer, plane, ifd);
+										} catch (Exception e) {
+											logRegionError(region, d, e);
+										} finally {
+											logProgress(count.incrementAndGet(), total, keyCounts);
+										}
 									}
 								}
 							}
+							zi++;
 						}
-						zi++;
+						ti++;
 					}
-					ti++;
 				}
+			} finally {
+				if (readPool != null)
+					readPool.shutdownNow();
+				if (writePool != null)
+					writePool.shutdownNow();
 			}
 			logger.trace("Image count: {}", meta.getImageCount());
 			logger.trace("Plane count: {}", writer.getPlaneCount());
 			logger.trace("Resolution count: {}", writer.getResolutionCount());
 		}
+		
+		
+		/**
+		 * Read and write regions using separate pools, so that reading the next tiles can proceed while 
+		 * previous tiles are being compressed and written.
+		 * The number of tiles that have been read but not yet written is limited, so that reading 
+		 * cannot get too far ahead of writing.
+		 */
+		private void writeRegionsParallel(PyramidOMETiffWriter writer, int plane, IFD ifd, List<ImageRegion> regions, double downsample, boolean isRGB, int[] channels,
+				DownsampledLevel sourceLevel, DownsampledLevel targetLevel,
+				ExecutorService readPool, ExecutorService writePool,
+				AtomicInteger count, int total, Set<Integer> keyCounts) throws IOException {
+			
+			int maxPending = nThreads * 2;
+			Semaphore pending = new Semaphore(maxPending);
+			try {
+				for (var region : regions) {
+					pending.acquire();
+					try {
+						readPool.execute(() -> {
+							RegionBytes bytes = null;
+							try {
+								if (!Thread.currentThread().isInterrupted())
+									bytes = readRegion(region, downsample, isRGB, channels, sourceLevel, targetLevel);
+							} catch (Exception e) {
+								logRegionError(region, downsample, e);
+							}
+							if (bytes == null) {
+								logProgress(count.incrementAndGet(), total, keyCounts);
+								pending.release();
+								return;
+							}
+							var toWrite = bytes;
+							try {
+								writePool.execute(() -> {
+									try {
+										if (!Thread.currentThread().isInterrupted())
+											toWrite.write(writer, plane, ifd);
+									} catch (Exception e) {
+										logRegionError(region, downsample, e);
+									} finally {
+										logProgress(count.incrementAndGet(), total, keyCounts);
+										pending.release();
+									}
+								});
+							} catch (RejectedExecutionException e) {
+								pending.release();
+							}
+						});
+					} catch (RejectedExecutionException e) {
+						pending.release();
+						throw new IOException("Error writing regions", e);
+					}
+				}
+				// Wait for all pending tiles to be written
+				pending.acquire(maxPending);
+				pending.release(maxPending);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				logger.warn("OME-TIFF export interrupted!");
+				throw new IOException("Error writing regions", e);
+			}
+		}
+		
+		private static void logRegionError(ImageRegion region, double downsample, Exception e) {
+			logger.error(String.format(
+					"Error writing %s (downsample=%.2f)",
+					region.toString(), downsample),
+					e);
+		}
+		
+		private static void logProgress(int localCount, int total, Set<Integer> keyCounts) {
+			if (total > 20 && keyCounts.size() > 1 && keyCounts.contains(localCount)) {
+				double percentage = localCount*100.0/total;
+				logger.info("Written {}% tiles", Math.round(percentage));
+			}
+		}
 	
 		
 		/**
@@ -674,17 +762,56 @@ public class OMEPyramidWriter {
 		}
 		
 		
-		private void writeRegion(PyramidOMETiffWriter writer, int plane, IFD ifd, ImageRegion region, double downsample, boolean isRGB, int[] channels) throws FormatException, IOException {
-			RegionRequest request = downsampledRegionToRequest(region, downsample);
-			BufferedImage img = server.readBufferedImage(request);
+		/**
+		 * Pixels for a single region, converted to the bytes required by the writer.
+		 */
+		private static class RegionBytes {
+			
+			private final ImageRegion region;
+			private final int width, height;
+			private final byte[] bytes;
 			
+			private RegionBytes(ImageRegion region, int width, int height, byte[] bytes) {
+				this.region = region;
+				this.width = width;
+				this.height = height;
+				this.bytes = bytes;
+			}
+			
+			private void write(PyramidOMETiffWriter writer, int plane, IFD ifd) throws FormatException, IOException {
+				writer.saveBytes(plane, bytes, ifd, region.getX(), region.getY(), width, height);
+			}
+			
+		}
+		
+		/**
+		 * Read the pixels for a region, either from the server or from a cached lower-resolution level, 
+		 * and convert them to bytes.
+		 * 
+		 * @param region the region, in the coordinate space of the current resolution level
+		 * @param downsample the downsample for the current resolution level
+		 * @param isRGB true if the output is packed RGB
+		 * @param channels the channels to extract
+		 * @param sourceLevel if not null, pixels will be read from this rather than the server (if available)
+		 * @param targetLevel if not null, the pixels that are read will be used to update the next resolution level
+		 * @return
+		 * @throws IOException
+		 */
+		private RegionBytes readRegion(ImageRegion region, double downsample, boolean isRGB, int[] channels,
+				DownsampledLevel sourceLevel, DownsampledLevel targetLevel) throws IOException {
+			BufferedImage img = sourceLevel == null ? null : sourceLevel.getRegion(region);
+			if (img == null) {
+				RegionRequest request = downsampledRegionToRequest(region, downsample);
+				img = server.readBufferedImage(request);
+			}
 			int bytesPerPixel = server.getPixelType().getBytesPerPixel();
 			int nChannels = channels.length;
 			if (img == null) {
 				byte[] zeros = new byte[region.getWidth() * region.getHeight() * bytesPerPixel * nChannels];
-				writer.saveBytes(plane, zeros, ifd, region.getX(), region.getY(), region.getWidth(), region.getHeight());
-				return;
+				return new RegionBytes(region, region.getWidth(), region.getHeight(), zeros);
 			}
+			if (targetLevel != null)
+				targetLevel.accumulate(region, img);
 			
 			int ww = img.getWidth();
 			int hh = img.getHeight();
@@ -701,15 +828,120 @@ public class OMEPyramidWriter {
 					buf.put((byte)ColorTools.green(val));
 					buf.put((byte)ColorTools.blue(val));
 				}
-				writer.saveBytes(plane, buf.array(), ifd, region.getX(), region.getY(), ww, hh);
 			} else {
 				for (int ci = 0; ci < channels.length; ci++) {
 					int c = channels[ci];
 					int ind = ci * bytesPerPixel;
 					channelToBuffer(img.getRaster(), c, buf, ind, channels.length * bytesPerPixel);
 				}
-				writer.saveBytes(plane, buf.array(), ifd, region.getX(), region.getY(), ww, hh);
 			}
+			return new RegionBytes(region, ww, hh, buf.array());
+		}
+		
+		
+		/**
+		 * An in-memory representation of a single resolution level, generated by averaging 
+		 * the pixels of the level above.
+		 * This avoids needing to request all pixels from the server again for each level.
+		 */
+		private static class DownsampledLevel {
+			
+			private final int width, height;
+			private final int factor;
+			private final Map<List<Integer>, BufferedImage> planes = new ConcurrentHashMap<>();
+			
+			private DownsampledLevel(int width, int height, int factor) {
+				this.width = width;
+				this.height = height;
+				this.factor = factor;
+			}
+			
+			/**
+			 * Create a level that can be generated from a higher-resolution level, if this is possible.
+			 * This requires that the downsamples differ by an integer factor, that the tile sizes are divisible 
+			 * by that factor, and that all the pixels fit comfortably in memory.
+			 * 
+			 * @return the level, or null if the level should instead be read from the server
+			 */
+			static DownsampledLevel tryToCreate(ImageServer<BufferedImage> server, int width, int height, double baseDownsample,
+					double downsample, double nextDownsample, int tileWidth, int tileHeight, int nPlanes) {
+				// Averaging doesn't make sense for labels
+				if (server.getMetadata().getChannelType() == ChannelType.CLASSIFICATION)
+					return null;
+				double ratio = nextDownsample / downsample;
+				int factor = (int)Math.round(ratio);
+				if (factor < 2 || Math.abs(ratio - factor) > 1e-6 || tileWidth % factor != 0 || tileHeight % factor != 0)
+					return null;
+				int w = (int)(width * baseDownsample / nextDownsample);
+				int h = (int)(height * baseDownsample / nextDownsample);
+				if (w <= 0 || h <= 0)
+					return null;
+				int bytesPerSample = server.isRGB() ? 4 : Math.max(server.getPixelType().getBytesPerPixel(), 1);
+				long nBytes = (long)w * h * (server.isRGB() ? 1 : server.nChannels()) * bytesPerSample * Math.max(nPlanes, 1);
+				if (nBytes > Runtime.getRuntime().maxMemory() / 4)
+					return null;
+				return new DownsampledLevel(w, h, factor);
+			}
+			
+			/**
+			 * Get the pixels for a region of this level, or null if the plane is not available.
+			 */
+			BufferedImage getRegion(ImageRegion region) {
+				var img = planes.get(Arrays.asList(region.getZ(), region.getT()));
+				if (img == null)
+					return null;
+				int x = Math.min(region.getX(), width-1);
+				int y = Math.min(region.getY(), height-1);
+				int w = Math.min(region.getWidth(), width - x);
+				int h = Math.min(region.getHeight(), height - y);
+				return img.getSubimage(x, y, w, h);
+			}
+			
+			/**
+			 * Update this level with the average of pixels from a region of the level above.
+			 * Different regions may be added in parallel, provided they do not overlap.
+			 */
+			void accumulate(ImageRegion region, BufferedImage img) {
+				var plane = planes.computeIfAbsent(Arrays.asList(region.getZ(), region.getT()), k -> {
+					var raster = img.getRaster().createCompatibleWritableRaster(width, height);
+					return new BufferedImage(img.getColorModel(), raster, img.isAlphaPremultiplied(), null);
+				});
+				var src = img.getRaster();
+				var dest = plane.getRaster();
+				int x0 = region.getX() / factor;
+				int y0 = region.getY() / factor;
+				int srcWidth = src.getWidth();
+				int srcHeight = src.getHeight();
+				int w = Math.min(width - x0, (srcWidth + factor - 1) / factor);
+				int h = Math.min(height - y0, (srcHeight + factor - 1) / factor);
+				if (w <= 0 || h <= 0)
+					return;
+				int dataType = src.getDataBuffer().getDataType();
+				boolean doRound = dataType != DataBuffer.TYPE_FLOAT && dataType != DataBuffer.TYPE_DOUBLE;
+				double[] samples = new double[srcWidth * factor];
+				double[] averaged = new double[w];
+				for (int b = 0; b < src.getNumBands(); b++) {
+					for (int y = 0; y < h; y++) {
+						int sy = y * factor;
+						int nRows = Math.min(factor, srcHeight - sy);
+						samples = src.getSamples(0, sy, srcWidth, nRows, b, samples);
+						for (int x = 0; x < w; x++) {
+							int sx = x * factor;
+							int nCols = Math.min(factor, srcWidth - sx);
+							double sum = 0;
+							for (int r = 0; r < nRows; r++) {
+								int ind = r * srcWidth + sx;
+								for (int c = 0; c < nCols; c++)
+									sum += samples[ind + c];
+							}
+							double val = sum / (nRows * nCols);
+							averaged[x] = doRound ? Math.round(val) : val;
+						}
+						dest.setSamples(x0, y0 + y, w, 1, b, averaged);
+					}
+				}
+			}
+			
 		}
 		
 		/**
@@ -993,12 +1225,26 @@ public class OMEPyramidWriter {
 
 		/**
 		 * Specify if tile export should be parallelized if possible.
+		 * If true, the number of threads is determined by the number of available processors.
 		 * 
 		 * @param doParallel
-		 * @return
+		 * @return this builder
+		 * @see #parallelize(int)
 		 */
 		public Builder parallelize(boolean doParallel) {
-			series.parallelExport = doParallel;
+			return parallelize(doParallel ? Runtime.getRuntime().availableProcessors() : 1);
+		}
+		
+		/**
+		 * Specify the number of threads to use for tile export.
+		 * Tiles are read and written in separate stages, each using up to this number of threads; 
+		 * a value of 1 means that tiles are exported sequentially.
+		 * 
+		 * @param nThreads number of threads
+		 * @return this builder
+		 */
+		public Builder parallelize(int nThreads) {
+			series.nThreads = Math.max(1, nThreads);
 			return this;
 		}
 
@@ -0,0 +1,143 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.images.servers.bioformats;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.images.servers.ImageServer;
+import qupath.lib.images.servers.WrappedBufferedImageServer;
+import qupath.lib.images.writers.ome.OMEPyramidWriter;
+import qupath.lib.images.writers.ome.OMEPyramidWriter.CompressionType;
+import qupath.lib.regions.RegionRequest;
+
+/**
+ * Check the resolution levels written by {@link OMEPyramidWriter}.
+ * <p>
+ * Where possible, lower resolutions are generated by averaging the pixels of the level above
+ * rather than by requesting them from the server again.
+ * For most images this gives slightly different values from reading the server at the same downsample,
+ * since the server uses interpolation while the writer averages blocks of pixels (and rounds integer values at each level).
+ * Both approaches agree whenever the pixels are constant within each block being averaged.
+ */
+@SuppressWarnings("javadoc")
+public class TestOMEPyramidWriter {
+
+	private static final int SIZE = 512;
+	private static final double[] DOWNSAMPLES = {1, 2, 4};
+
+	@Test
+	public void testLevelsMatchServer() throws Exception {
+		// Pixels are constant in 4x4 blocks, so averaging and interpolation should give the same values
+		var img = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_BYTE_GRAY);
+		var raster = img.getRaster();
+		for (int y = 0; y < SIZE; y++) {
+			for (int x = 0; x < SIZE; x++) {
+				raster.setSample(x, y, 0, ((x / 4) * 31 + (y / 4) * 17) % 256);
+			}
+		}
+		var server = new WrappedBufferedImageServer("Blocks", img);
+
+		for (int nThreads : new int[] {1, 4}) {
+			var levels = writeAndReadLevels(server, nThreads);
+			for (int level = 0; level < DOWNSAMPLES.length; level++) {
+				var expected = server.readBufferedImage(RegionRequest.createInstance(server.getPath(), DOWNSAMPLES[level], 0, 0, SIZE, SIZE));
+				assertArrayEquals(getPixels(expected), getPixels(levels[level]), "Level " + level + ", " + nThreads + " thread(s)");
+			}
+		}
+	}
+
+	@Test
+	public void testLevelsAreAveraged() throws Exception {
+		// With random pixels, each level should be the rounded mean of 2x2 blocks of the level above
+		var img = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_BYTE_GRAY);
+		var raster = img.getRaster();
+		var rand = new Random(100L);
+		for (int y = 0; y < SIZE; y++) {
+			for (int x = 0; x < SIZE; x++) {
+				raster.setSample(x, y, 0, rand.nextInt(256));
+			}
+		}
+		var server = new WrappedBufferedImageServer("Random", img);
+
+		for (int nThreads : new int[] {1, 4}) {
+			var levels = writeAndReadLevels(server, nThreads);
+			assertArrayEquals(getPixels(img), getPixels(levels[0]));
+			for (int level = 1; level < DOWNSAMPLES.length; level++) {
+				assertArrayEquals(average2x2(levels[level-1]), getPixels(levels[level]), "Level " + level + ", " + nThreads + " thread(s)");
+			}
+		}
+	}
+
+
+	private static BufferedImage[] writeAndReadLevels(ImageServer<BufferedImage> server, int nThreads) throws Exception {
+		var file = File.createTempFile("pyramid", ".ome.tif");
+		file.delete();
+		try {
+			new OMEPyramidWriter.Builder(server)
+				.tileSize(256)
+				.downsamples(DOWNSAMPLES)
+				.compression(CompressionType.UNCOMPRESSED)
+				.parallelize(nThreads)
+				.build()
+				.writePyramid(file.getAbsolutePath());
+
+			try (var serverRead = new BioFormatsServerBuilder().buildServer(file.toURI())) {
+				assertEquals(DOWNSAMPLES.length, serverRead.nResolutions());
+				var levels = new BufferedImage[DOWNSAMPLES.length];
+				for (int level = 0; level < DOWNSAMPLES.length; level++) {
+					levels[level] = serverRead.readBufferedImage(RegionRequest.createInstance(serverRead.getPath(), DOWNSAMPLES[level], 0, 0, SIZE, SIZE));
+					assertEquals((int)(SIZE / DOWNSAMPLES[level]), levels[level].getWidth());
+				}
+				return levels;
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	private static int[] getPixels(BufferedImage img) {
+		return img.getRaster().getSamples(0, 0, img.getWidth(), img.getHeight(), 0, (int[])null);
+	}
+
+	private static int[] average2x2(BufferedImage img) {
+		var raster = img.getRaster();
+		int w = img.getWidth() / 2;
+		int h = img.getHeight() / 2;
+		int[] averaged = new int[w * h];
+		for (int y = 0; y < h; y++) {
+			for (int x = 0; x < w; x++) {
+				double sum = raster.getSample(x*2, y*2, 0) + raster.getSample(x*2+1, y*2, 0) +
+						raster.getSample(x*2, y*2+1, 0) + raster.getSample(x*2+1, y*2+1, 0);
+				averaged[y * w + x] = (int)Math.round(sum / 4.0);
+			}
+		}
+		return averaged;
+	}
+
+}
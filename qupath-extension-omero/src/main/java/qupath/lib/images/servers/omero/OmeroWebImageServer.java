@@ -359,6 +359,14 @@ public class OmeroWebImageServer extends AbstractTileableImageServer implements
         return jsonList;
     }
 
+	/**
+	 * Tiles are rendered remotely with fixed settings, and so can be cached persistently.
+	 */
+	@Override
+	protected String getPersistentCacheKey() {
+		return getPath() + "?q=" + QUALITY;
+	}
+
 	@Override
 	protected BufferedImage readTile(TileRequest request) throws IOException {
 
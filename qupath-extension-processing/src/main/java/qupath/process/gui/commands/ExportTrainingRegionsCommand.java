@@ -22,10 +22,11 @@
 package qupath.process.gui.commands;
 
 import java.awt.Color;
-import java.awt.Graphics2D;
 import java.awt.Shape;
+import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
 import java.awt.image.IndexColorModel;
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -33,6 +34,7 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
@@ -79,6 +81,7 @@ import javafx.scene.layout.Pane;
 import javafx.scene.layout.Priority;
 import javafx.stage.Stage;
 import qupath.imagej.tools.IJTools;
+import qupath.lib.awt.common.ShapeRasterizer;
 import qupath.lib.common.ColorTools;
 import qupath.lib.common.GeneralTools;
 import qupath.lib.gui.QuPathGUI;
@@ -534,79 +537,72 @@ public class ExportTrainingRegionsCommand implements Runnable {
 				regionAnnotations.add(PathObjects.createAnnotationObject(
 						ROIs.createRectangleROI(0, 0, server.getWidth(), server.getHeight(), ImagePlane.getDefaultPlane())));
 			
-			// Loop through region annotations
-			for (PathObject annotation : regionAnnotations) {
-			    // Read the TMA core - we take care of downsampling ourselves afterwards
-				RegionRequest request = RegionRequest.createInstance(server.getPath(), downsample, annotation.getROI());
-			    BufferedImage img;
-				try {
-					img = server.readBufferedImage(request);
-				} catch (IOException e1) {
-					logger.error("Error exporting " + request, e1);
-					continue;
-				}
-
-			    // Create the mask
-			    int w = img.getWidth();
-			    int h = img.getHeight();
-
-			    // Create a temporary image for painting
-			    BufferedImage imgTemp = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_GRAY);
-
-			    Graphics2D g2d = imgTemp.createGraphics();
-			    
-			    // Fill in background, if available
-			    Color colorBackground = mapLabelColor.getOrDefault("NOT ANNOTATED", null);
-			    if (colorBackground != null) {
-			    	g2d.setColor(colorBackground);
-			    	g2d.fillRect(0, 0, w, h);
-			    }
-			    
-			    g2d.scale(1.0/downsample, 1.0/downsample);
-			    g2d.translate(-request.getX(), -request.getY());
-			    int c = 0;
-			    for (PathObject other : otherAnnotations) {
-			        ROI roi = other.getROI();
-			        if (!request.intersects(
-			        		ImageRegion.createInstance(roi)))
-			            continue;
-			        // Paint the nucleus
-//			        g2d.setBackground(Color.BLACK);
-//			        g2d.clearRect(0, 0, w, h);
-			        Color color = other.getPathClass() == null ? null : mapLabelColor.getOrDefault(other.getPathClass().getName(), null);
-			        if (color == null) {
-			            logger.warn("{}: No color for classification {}", entry.getImageName(), other.getPathClass());
-			            continue;
-			        }
-			        g2d.setColor(color);
-			        Shape shape = RoiTools.getShape(roi);
-			        g2d.fill(shape);
-			        c++;
-			    }
-			    g2d.dispose();
+			// Loop through region annotations - in parallel, if requested
+			Stream<PathObject> regionStream = regionAnnotations.stream();
+			if (exportParallel.get())
+				regionStream = regionStream.parallel();
+			regionStream.forEach(annotation -> exportRegion(entry, server, annotation, otherAnnotations, dirOutput, downsample, mapLabelColor, colorModel));
+		}
+		
+		
+		private void exportRegion(final ProjectImageEntry<BufferedImage> entry, final ImageServer<BufferedImage> server, final PathObject annotation, final List<PathObject> otherAnnotations,
+				final File dirOutput, final double downsample, final Map<String, Color> mapLabelColor, final IndexColorModel colorModel) {
+		    // Read the TMA core - we take care of downsampling ourselves afterwards
+			RegionRequest request = RegionRequest.createInstance(server.getPath(), downsample, annotation.getROI());
+		    BufferedImage img;
+			try {
+				img = server.readBufferedImage(request);
+			} catch (IOException e1) {
+				logger.error("Error exporting " + request, e1);
+				return;
+			}
 
-			    // Write images
-			    String name = String.format("%s-(%.2f,%d,%d,%d,%d)",
-			    		ServerTools.getDisplayableImageName(server),
-			            request.getDownsample(), request.getX(), request.getY(), request.getWidth(), request.getHeight());
+		    // Create the mask, painting labels directly into the indexed image
+		    int w = img.getWidth();
+		    int h = img.getHeight();
+		    BufferedImage imgMask = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_INDEXED, colorModel);
+		    byte[] mask = ((DataBufferByte)imgMask.getRaster().getDataBuffer()).getData();
+		    
+		    // Fill in background, if available
+		    Color colorBackground = mapLabelColor.getOrDefault("NOT ANNOTATED", null);
+		    if (colorBackground != null)
+		    	Arrays.fill(mask, (byte)colorBackground.getRed());
+		    
+		    AffineTransform transform = AffineTransform.getScaleInstance(1.0/downsample, 1.0/downsample);
+		    transform.translate(-request.getX(), -request.getY());
+		    int c = 0;
+		    for (PathObject other : otherAnnotations) {
+		        ROI roi = other.getROI();
+		        if (!request.intersects(
+		        		ImageRegion.createInstance(roi)))
+		            continue;
+		        Color color = other.getPathClass() == null ? null : mapLabelColor.getOrDefault(other.getPathClass().getName(), null);
+		        if (color == null) {
+		            logger.warn("{}: No color for classification {}", entry.getImageName(), other.getPathClass());
+		            continue;
+		        }
+		        // Labels are stored as gray values
+		        Shape shape = RoiTools.getShape(roi);
+		        ShapeRasterizer.fill(shape, transform, w, h, true).fill(mask, w, (byte)color.getRed());
+		        c++;
+		    }
 
-			    // Set color model
-			    BufferedImage imgTempIndexed = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_INDEXED, colorModel);
-			    imgTempIndexed.getRaster().setRect(imgTemp.getRaster());
+		    // Write images
+		    String name = String.format("%s-(%.2f,%d,%d,%d,%d)",
+		    		ServerTools.getDisplayableImageName(server),
+		            request.getDownsample(), request.getX(), request.getY(), request.getWidth(), request.getHeight());
 
-			    try {
-			    	ImagePlus imp = IJTools.convertToImagePlus("Image", server, img, request).getImage();
-			    	IJ.saveAsTiff(imp, new File(dirOutput, name + ".tif").getAbsolutePath());
-//				    ImageIO.write(img, "PNG", new File(dirOutput, name + ".png"));
-				    ImageIO.write(imgTempIndexed, "PNG", new File(dirOutput, name + "-mask.png"));
-			    } catch (Exception e) {
-			    	logger.error("Error exporting for " + entry.getImageName(), e);
-			    }
+		    try {
+		    	ImagePlus imp = IJTools.convertToImagePlus("Image", server, img, request).getImage();
+		    	IJ.saveAsTiff(imp, new File(dirOutput, name + ".tif").getAbsolutePath());
+			    ImageIO.write(imgMask, "PNG", new File(dirOutput, name + "-mask.png"));
+		    } catch (Exception e) {
+		    	logger.error("Error exporting for " + entry.getImageName(), e);
+		    }
 
-			    // Flag the empty ones for checking
-			    if (c == 0)
-			    	logger.warn("No classified annotations inside {}", name + ".png");
-			}
+		    // Flag the empty ones for checking
+		    if (c == 0)
+		    	logger.warn("No classified annotations inside {}", name + ".png");
 		}
 		
 		
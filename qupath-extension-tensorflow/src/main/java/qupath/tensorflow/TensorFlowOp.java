@@ -24,11 +24,15 @@ package qupath.tensorflow;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.bytedeco.javacpp.BytePointer;
@@ -53,6 +57,8 @@ import org.bytedeco.tensorflow.global.tensorflow;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import qupath.lib.common.BatchProcessor;
+import qupath.lib.common.ThreadTools;
 import qupath.lib.images.servers.ImageChannel;
 import qupath.lib.regions.Padding;
 import qupath.opencv.ops.ImageOp;
@@ -77,10 +83,23 @@ public class TensorFlowOp extends PaddedOp {
 	// Identifier for the requested output node - may be null to use the default output
 	private String outputName = null;
 	
+	// Maximum number of tiles to pass to the model in a single call, and maximum time to wait for a batch to fill
+	private int batchSize = 1;
+	private long batchWaitMillis = 0L;
+	
 	private transient TensorFlowBundle bundle;
+	private transient BatchProcessor<Mat, Mat> batcher;
+	
+	// Batches are run on their own threads, so that the outputs aren't attached to the PointerScope of whichever 
+	// thread happened to submit the first tile - since this could release them while other threads are using them
+	private static ExecutorService batchPool = Executors.newCachedThreadPool(ThreadTools.createThreadFactory("tensorflow-batch-", true));
 	private transient Exception exception;
 
 	TensorFlowOp(String modelPath, int tileWidth, int tileHeight, Padding padding, String outputName) {
+		this(modelPath, tileWidth, tileHeight, padding, outputName, 1, 0L);
+	}
+	
+	TensorFlowOp(String modelPath, int tileWidth, int tileHeight, Padding padding, String outputName, int batchSize, long batchWaitMillis) {
 		super();
 		logger.debug("Creating op from {}", modelPath);
 		this.modelPath = modelPath;
@@ -91,6 +110,8 @@ public class TensorFlowOp extends PaddedOp {
 			this.padding = Padding.empty();
 		else
 			this.padding = padding;
+		this.batchSize = batchSize;
+		this.batchWaitMillis = batchWaitMillis;
 	}
 	
 	private TensorFlowBundle getBundle() {
@@ -111,11 +132,34 @@ public class TensorFlowOp extends PaddedOp {
 		return padding;
 	}
 
+	/**
+	 * Get the processor used to combine inputs from different threads into batches, 
+	 * or null if batching is not used.
+	 */
+	private BatchProcessor<Mat, Mat> getBatcher(TensorFlowBundle bundle) {
+		if (batchSize <= 1)
+			return null;
+		if (batcher == null) {
+			synchronized (this) {
+				if (batcher == null)
+					batcher = new BatchProcessor<>(mats -> bundle.run(mats, outputName), batchSize, batchWaitMillis, TimeUnit.MILLISECONDS, batchPool);
+			}
+		}
+		return batcher;
+	}
+
 	@Override
 	protected Mat transformPadded(Mat input) {
 		var bundle = getBundle();
 		if (exception != null)
 			throw new RuntimeException(exception);
+		var batcher = getBatcher(bundle);
+		if (batcher != null) {
+			if (tileWidth > 0 && tileHeight > 0)
+				return OpenCVTools.applyTiledBatch(mats -> batcher.processAll(mats), input, tileWidth, tileHeight, opencv_core.BORDER_REFLECT);
+			else
+				return batcher.process(input);
+		}
 		if (tileWidth > 0 && tileHeight > 0)
 			return OpenCVTools.applyTiled(m -> bundle.run(m, outputName), input, tileWidth, tileHeight, opencv_core.BORDER_REFLECT);
 		else
@@ -294,7 +338,35 @@ public class TensorFlowOp extends PaddedOp {
 
         private Mat run(Mat mat, String outputName) {
             var tensor = TensorFlowTools.convertToTensor(mat);
+            var outputTensor = run(tensor, outputName);
+            var output = TensorFlowTools.convertToMat(outputTensor);
+            outputTensor.close();
+            return output;
+        }
+        
+        /**
+         * Run the model for a batch of inputs with a single session call.
+         * Inputs with different shapes are split into separate calls.
+         */
+        private List<Mat> run(List<Mat> mats, String outputName) {
+        	if (mats.size() == 1)
+        		return Collections.singletonList(run(mats.get(0), outputName));
+        	
+        	var first = mats.get(0);
+        	for (var mat : mats) {
+        		if (mat.cols() != first.cols() || mat.rows() != first.rows() || mat.channels() != first.channels())
+        			return mats.stream().map(m -> run(m, outputName)).collect(Collectors.toList());
+        	}
+        	
+        	var tensor = TensorFlowTools.convertToTensor(mats);
+        	var outputTensor = run(tensor, outputName);
+        	var outputs = TensorFlowTools.convertToMats(outputTensor);
+        	outputTensor.close();
+        	logger.trace("Ran batch of {} inputs", mats.size());
+        	return outputs;
+        }
 
+        private Tensor run(Tensor tensor, String outputName) {
             var outputs = new TensorVector();
             var inputs = new StringTensorPairVector(
                     new String[] {inputName},
@@ -316,14 +388,12 @@ public class TensorFlowOp extends PaddedOp {
             
             logger.debug("Number of outputs: {}", outputs.size());
             var outputTensor = outputs.get(0L);
-            var output = TensorFlowTools.convertToMat(outputTensor);
             
             inputs.close();
             outputNames.close();
             targetNodeNames.close();
-            outputTensor.close();
             
-            return output;
+            return outputTensor;
         }
         
         @Override
@@ -23,6 +23,8 @@ package qupath.tensorflow;
 
 import java.io.File;
 import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.bytedeco.opencv.global.opencv_core;
 import org.bytedeco.opencv.opencv_core.Mat;
@@ -32,6 +34,7 @@ import org.bytedeco.tensorflow.global.tensorflow;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import qupath.lib.common.BatchProcessor;
 import qupath.lib.regions.Padding;
 import qupath.opencv.ops.ImageOp;
 
@@ -74,6 +77,43 @@ public class TensorFlowTools {
 	    return tensor;
 	}
 
+	/**
+	 * Convert a list of {@link Mat} to a single {@link Tensor}, stacking them along the batch dimension.
+	 * <p>
+	 * All inputs must have the same size and number of channels; the output will be TF_FLOAT, 
+	 * with the shape (batch, rows, columns, channels).
+	 *
+	 * @param mats the input {@link Mat} list
+	 * @return the converted {@link Tensor}
+	 * @throws IllegalArgumentException if the inputs have different sizes
+	 * @see #convertToMats(Tensor)
+	 */
+	public static Tensor convertToTensor(List<Mat> mats) throws IllegalArgumentException {
+		if (mats.isEmpty())
+			throw new IllegalArgumentException("Cannot convert an empty list to a tensor!");
+		var first = mats.get(0);
+		int w = first.cols();
+		int h = first.rows();
+		int nBands = first.channels();
+		for (var mat : mats) {
+			if (mat.cols() != w || mat.rows() != h || mat.channels() != nBands)
+				throw new IllegalArgumentException("All inputs must have the same size and number of channels!");
+		}
+	    long[] shape = new long[] {mats.size(), h, w, nBands};
+	    var tensor = new Tensor(tensorflow.TF_FLOAT, new TensorShape(shape));
+	    FloatBuffer tensorBuffer = tensor.createBuffer();
+	    for (var mat : mats) {
+	    	if (mat.depth() != opencv_core.CV_32F) {
+	    		var mat2 = new Mat();
+	    		mat.convertTo(mat2, opencv_core.CV_32F);
+	    		mat = mat2;
+	    	}
+	    	FloatBuffer matBuffer = mat.createBuffer();
+	    	tensorBuffer.put(matBuffer);
+	    }
+	    return tensor;
+	}
+
 	/**
 	 * Convert a {@link Tensor} to a {@link Mat}.
 	 * Currently this is rather limited in scope:
@@ -107,6 +147,39 @@ public class TensorFlowTools {
 	    return mat;
 	}
 	
+	/**
+	 * Convert a {@link Tensor} to a list of {@link Mat}, splitting along the batch dimension.
+	 * This has the same limitations as {@link #convertToMat(Tensor)}.
+	 * 
+	 * @param tensor
+	 * @return one {@link Mat} for each entry in the batch
+	 * @see #convertToTensor(List)
+	 */
+	public static List<Mat> convertToMats(Tensor tensor) {
+	    var shape = tensor.shape().dim_sizes();
+	    int n = (int)shape.size();
+	    int nBatch = (int)shape.get(0);
+	    int[] dims = new int[Math.max(3, n-1)];
+	    for (int i = 1; i < n; i++) {
+	    	dims[i-1] = (int)shape.get(i);
+	    }
+	    FloatBuffer buffer = tensor.createBuffer();
+	    int length = buffer.remaining() / Math.max(1, nBatch);
+	    List<Mat> mats = new ArrayList<>();
+	    for (int b = 0; b < nBatch; b++) {
+	    	Mat mat;
+	    	if (n <= 4)
+	    		mat = new Mat(dims[0], dims[1], opencv_core.CV_32FC(dims[2]));
+	    	else
+	    		mat = new Mat(dims, opencv_core.CV_32F);
+	    	buffer.limit((b + 1) * length);
+	    	buffer.position(b * length);
+	    	transferBuffers(buffer, mat.createBuffer());
+	    	mats.add(mat);
+	    }
+	    return mats;
+	}
+	
 	private static void transferBuffers(FloatBuffer bufferSource, FloatBuffer bufferTarget) {
     	bufferTarget.put(bufferSource);
     }
@@ -146,5 +219,32 @@ public class TensorFlowTools {
 		}
 		return new TensorFlowOp(modelPath, tileWidth, tileHeight, padding, outputName);
 	}
+	
+	/**
+	 * Create an {@link ImageOp} to run a TensorFlow model with a single image input and output, 
+	 * combining tiles into batches so that the model can be applied to several tiles with a single call.
+	 * <p>
+	 * Tiles are combined both within a single (large) input and across inputs passed to the op from 
+	 * different threads at around the same time.
+	 * 
+	 * @param modelPath
+	 * @param tileWidth input tile width; ignored if &le; 0
+	 * @param tileHeight input tile height; ignored if &le; 0
+	 * @param padding amount of padding to add to each request
+	 * @param outputName optional name of the node to use for output (may be null)
+	 * @param batchSize maximum number of tiles in a batch; if &le; 1, no batching is applied
+	 * @param batchWaitMillis maximum time to wait (in milliseconds) for a batch to fill before running the model
+	 * @return the {@link ImageOp}
+	 * @throws IllegalArgumentException if the model path is not a directory
+	 * @see BatchProcessor
+	 */
+	public static ImageOp createOp(String modelPath, int tileWidth, int tileHeight, Padding padding, String outputName, int batchSize, long batchWaitMillis) throws IllegalArgumentException {
+		var file = new File(modelPath);
+		if (!file.isDirectory()) {
+			logger.error("Invalid model path, not a directory! {}", modelPath);
+			throw new IllegalArgumentException("Model path should be a directory!");
+		}
+		return new TensorFlowOp(modelPath, tileWidth, tileHeight, padding, outputName, batchSize, batchWaitMillis);
+	}
 
 }
\ No newline at end of file
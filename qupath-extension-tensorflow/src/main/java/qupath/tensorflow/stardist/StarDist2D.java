@@ -30,12 +30,15 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.TreeMap;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import org.bytedeco.javacpp.PointerScope;
@@ -120,12 +123,17 @@ public class StarDist2D {
 		private int tileWidth = 1024;
 		private int tileHeight = 1024;
 		
+		private int batchSize = 1;
+		private long batchWaitMillis = 20L;
+		
 		private boolean measureShape = false;
 		private Collection<Compartments> compartments = Arrays.asList(Compartments.values());
 		private Collection<Measurements> measurements;
 		
 		private boolean constrainToParent = true;
 		
+		private boolean streaming = false;
+		
 		private int pad = 32;
 		
 		private List<ImageOp> ops = new ArrayList<>();
@@ -270,6 +278,24 @@ public class StarDist2D {
 			return this;
 		}
 		
+		/**
+		 * If true, process tiles row by row and add detections to the parent object in batches as soon as 
+		 * they are complete (default is false).
+		 * <p>
+		 * Overlaps are then resolved only against neighboring tiles that have already been processed, 
+		 * so that peak memory use depends upon the width of a row of tiles rather than the size of the region.
+		 * This is recommended when detecting cells across very large regions.
+		 * <p>
+		 * Nuclei are assumed to be no larger than the tile padding (see {@link #padding(int)}), 
+		 * since this determines how far apart nuclei must be before they can no longer affect one another.
+		 * @param streaming
+		 * @return this builder
+		 */
+		public Builder streaming(boolean streaming) {
+			this.streaming = streaming;
+			return this;
+		}
+		
 		/**
 		 * Specify the number of threads to use for processing.
 		 * If you encounter problems, setting this to 1 may help to resolve them by preventing 
@@ -369,6 +395,33 @@ public class StarDist2D {
 			return this;
 		}
 		
+		/**
+		 * Maximum number of tiles to pass to the model in a single call (default is 1, i.e. no batching).
+		 * <p>
+		 * Batching can improve throughput, particularly for CPU inference. 
+		 * Tiles processed in parallel are combined into batches, so the batch size should generally not 
+		 * exceed the number of threads used for processing.
+		 * @param batchSize
+		 * @return this builder
+		 * @see #batchWait(long)
+		 */
+		public Builder batchSize(int batchSize) {
+			this.batchSize = batchSize;
+			return this;
+		}
+		
+		/**
+		 * Maximum time to wait (in milliseconds) for a batch of tiles to fill before running the model 
+		 * (default is 20 ms). This is only relevant if the batch size is greater than 1.
+		 * @param millis
+		 * @return this builder
+		 * @see #batchSize(int)
+		 */
+		public Builder batchWait(long millis) {
+			this.batchWaitMillis = millis;
+			return this;
+		}
+		
 		/**
 		 * Amount to pad tiles to reduce boundary artifacts.
 		 * @param pad padding in pixels; width and height of tiles will be increased by pad x 2.
@@ -437,21 +490,33 @@ public class StarDist2D {
 		 * @return
 		 */
 		public StarDist2D build() {
-			var stardist = new StarDist2D();
-			
 			var padding = pad > 0 ? Padding.symmetric(pad) : Padding.empty();
 			var mergedOps = new ArrayList<>(ops);
-			mergedOps.add(TensorFlowTools.createOp(modelPath, tileWidth, tileHeight, padding));
+			mergedOps.add(TensorFlowTools.createOp(modelPath, tileWidth, tileHeight, padding, null, batchSize, batchWaitMillis));
 			mergedOps.add(ImageOps.Core.ensureType(PixelType.FLOAT32));
 			
-			stardist.op = ImageOps.buildImageDataOp(channels)
-					.appendOps(mergedOps.toArray(ImageOp[]::new));
+			return build(ImageOps.buildImageDataOp(channels)
+					.appendOps(mergedOps.toArray(ImageOp[]::new)));
+		}
+		
+		/**
+		 * Create a {@link StarDist2D} that uses a specified op for prediction, rather than the model.
+		 * The op should output the probability followed by the ray distances for each pixel.
+		 * This is intended for testing.
+		 * @param op
+		 * @return
+		 */
+		StarDist2D build(ImageDataOp op) {
+			var stardist = new StarDist2D();
+			
+			stardist.op = op;
 			stardist.threshold = threshold;
 			stardist.pixelSize = pixelSize;
 			stardist.cellConstrainScale = cellConstrainScale;
 			stardist.cellExpansion = cellExpansion;
 			stardist.tileWidth = tileWidth-pad*2;
 			stardist.tileHeight = tileHeight-pad*2;
+			stardist.pad = pad;
 			stardist.includeProbability = includeProbability;
 			stardist.ignoreCellOverlaps = ignoreCellOverlaps;
 			stardist.measureShape = measureShape;
@@ -459,6 +524,7 @@ public class StarDist2D {
 			stardist.simplifyDistance = simplifyDistance;
 			stardist.nThreads = nThreads;
 			stardist.constrainToParent = constrainToParent;
+			stardist.streaming = streaming;
 			
 			stardist.compartments = new LinkedHashSet<>(compartments);
 			
@@ -486,12 +552,15 @@ public class StarDist2D {
 	
 	private boolean constrainToParent = true;
 	
+	private boolean streaming = false;
+	
 	private int nThreads = -1;
 	
 	private boolean includeProbability = false;
 	
 	private int tileWidth = 1024;
 	private int tileHeight = 1024;
+	private int pad = 0;
 
 	private boolean measureShape = false;
 
@@ -580,10 +649,14 @@ public class StarDist2D {
 		// Lock early, so the user doesn't make modifications
 		parent.setLocked(true);
 		
-		List<PathObject> detections = detectObjects(imageData, parent.getROI());		
-		
-		parent.clearPathObjects();
-		parent.addPathObjects(detections);
+		if (streaming) {
+			parent.clearPathObjects();
+			detectObjects(imageData, parent.getROI(), batch -> parent.addPathObjects(batch));
+		} else {
+			List<PathObject> detections = detectObjects(imageData, parent.getROI());		
+			parent.clearPathObjects();
+			parent.addPathObjects(detections);
+		}
 		if (fireUpdate)
 			imageData.getHierarchy().fireHierarchyChangedEvent(imageData.getHierarchy(), parent);
 	}
@@ -598,11 +671,7 @@ public class StarDist2D {
 	 */
 	public List<PathObject> detectObjects(ImageData<BufferedImage> imageData, ROI roi) {
 
-		var resolution = imageData.getServer().getPixelCalibration();
-		if (Double.isFinite(pixelSize) && pixelSize > 0) {
-			double downsample = pixelSize / resolution.getAveragedPixelSize().doubleValue();
-			resolution = resolution.createScaledInstance(downsample, downsample);
-		}
+		var resolution = getResolution(imageData);
 		var opServer = ImageOps.buildServer(imageData, op, resolution, tileWidth, tileHeight);
 		
 		RegionRequest request;
@@ -642,8 +711,175 @@ public class StarDist2D {
 		}
 		
 		// Convert to detections, dilating to approximate cells if necessary
-		// Drop cells if they fail (rather than catastropically give up)
-		var detections = nuclei.parallelStream()
+		var detections = convertToObjects(nuclei, plane, expansion, mask);
+		
+		// Resolve cell overlaps, if needed
+		if (expansion > 0 && !ignoreCellOverlaps) {
+			log("Resolving cell overlaps");
+			detections = CellTools.constrainCellOverlaps(detections);
+		}
+		
+		addMeasurements(imageData, resolution, detections);
+		
+		log("Detected {} cells", detections.size());
+
+		return detections;
+	}
+	
+	
+	/**
+	 * Detect cells within a {@link ROI}, passing the detections to a consumer in batches as they are completed.
+	 * <p>
+	 * Tiles are processed one row at a time, from top to bottom.
+	 * Nuclei and cells are only completed once they cannot be affected by any later tile, 
+	 * and overlaps are resolved only against neighbors from earlier rows that may still be affected.
+	 * This means that peak memory use depends upon the width of the region, rather than its area.
+	 * 
+	 * @param imageData image to which the ROI belongs
+	 * @param roi region of interest which which to detect cells. If null, the entire image will be used.
+	 * @param consumer consumer for each batch of completed detections; this is called from the calling thread
+	 */
+	public void detectObjects(ImageData<BufferedImage> imageData, ROI roi, Consumer<? super List<PathObject>> consumer) {
+
+		var resolution = getResolution(imageData);
+		var opServer = ImageOps.buildServer(imageData, op, resolution, tileWidth, tileHeight);
+		
+		RegionRequest request;
+		if (roi == null)
+			request = RegionRequest.createInstance(opServer);
+		else
+			request = RegionRequest.createInstance(
+				opServer.getPath(),
+				opServer.getDownsampleForResolution(0),
+				roi);
+
+		var tiles = opServer.getTileRequestManager().getTileRequests(request);
+		var mask = roi == null ? null : roi.getGeometry();
+		boolean excludeOnBounds = tiles.size() > 1;
+		
+		var cal = imageData.getServer().getPixelCalibration();
+		double expansion = cellExpansion / cal.getAveragedPixelSize().doubleValue();
+		boolean resolveCellOverlaps = expansion > 0 && !ignoreCellOverlaps;
+		var plane = roi == null ? request.getPlane() : roi.getImagePlane();
+		
+		// Every nucleus is predicted from a pixel within its tile, and is assumed to extend no further than the padding from that pixel - 
+		// since otherwise it would be affected by the tile boundaries anyway. 
+		// This gives a fixed bound on how far above its tile a nucleus can reach, and on the height of any nucleus.
+		double maxNucleusExtent = (pad > 0 ? pad : tileHeight) * request.getDownsample();
+		double maxNucleusHeight = maxNucleusExtent * 2;
+		
+		// Group tiles into rows, ordered from top to bottom
+		var rows = new ArrayList<>(tiles.stream()
+				.collect(Collectors.groupingBy(t -> t.getRegionRequest().getY(), TreeMap::new, Collectors.toList()))
+				.values());
+		log("Detecting nuclei for {} tiles in {} rows", tiles.size(), rows.size());
+		
+		// Nuclei that may still be affected by later rows, with their geometries from the tile in which they were detected 
+		// (so that overlaps can be resolved again from the start when more nuclei are available)
+		Map<PotentialNucleus, Geometry> pendingNuclei = new LinkedHashMap<>();
+		// Completed nuclei that may still affect pending nuclei
+		List<PotentialNucleus> neighborNuclei = new ArrayList<>();
+		// Cells that may still be affected by later rows
+		List<PathObject> pendingCells = new ArrayList<>();
+		// Completed cells (before resolving overlaps) that may still affect pending cells
+		List<PathObject> neighborCells = new ArrayList<>();
+		
+		int count = 0;
+		for (int r = 0; r < rows.size(); r++) {
+			var nuclei = rows.get(r).parallelStream()
+					.flatMap(t -> detectObjectsForTile(op, imageData, t.getRegionRequest(), excludeOnBounds, mask).stream())
+					.collect(Collectors.toList());
+			for (var nucleus : nuclei)
+				pendingNuclei.put(nucleus, nucleus.geometry);
+			
+			// Resolve overlaps within the row, and with nuclei from previous rows close to the boundary
+			var candidates = new ArrayList<PotentialNucleus>();
+			for (var entry : pendingNuclei.entrySet()) {
+				entry.getKey().geometry = entry.getValue();
+				candidates.add(entry.getKey());
+			}
+			candidates.addAll(neighborNuclei);
+			List<PotentialNucleus> retained = excludeOnBounds ? filterNuclei(candidates) : candidates;
+			
+			// Any nucleus from the next row can only reach a short distance above its top boundary. 
+			// A nucleus is complete if it can't overlap any nucleus that might be affected by such a nucleus.
+			double nextY = r < rows.size()-1 ? rows.get(r+1).get(0).getRegionRequest().getY() : Double.POSITIVE_INFINITY;
+			double nucleusLimit = nextY - maxNucleusExtent - maxNucleusHeight;
+			var neighborSet = new HashSet<>(neighborNuclei);
+			var completedNuclei = new ArrayList<PotentialNucleus>();
+			for (var nucleus : retained) {
+				if (!neighborSet.contains(nucleus) && pendingNuclei.get(nucleus).getEnvelopeInternal().getMaxY() < nucleusLimit)
+					completedNuclei.add(nucleus);
+			}
+			pendingNuclei.values().removeIf(g -> g.getEnvelopeInternal().getMaxY() < nucleusLimit);
+			
+			// Retain completed nuclei only while they might overlap a pending nucleus
+			double neighborLimit = nucleusLimit - maxNucleusHeight;
+			neighborNuclei.removeIf(n -> n.geometry.getEnvelopeInternal().getMaxY() < neighborLimit);
+			for (var nucleus : completedNuclei) {
+				if (nucleus.geometry.getEnvelopeInternal().getMaxY() >= neighborLimit)
+					neighborNuclei.add(nucleus);
+			}
+			
+			var detections = convertToObjects(completedNuclei, plane, expansion, mask);
+			
+			if (resolveCellOverlaps) {
+				// A cell is complete if it cannot be reached by any cell from a pending nucleus
+				double cellLimit = nucleusLimit - maxNucleusHeight - expansion;
+				pendingCells.addAll(detections);
+				var completedCells = new ArrayList<PathObject>();
+				var remainingCells = new ArrayList<PathObject>();
+				for (var cell : pendingCells) {
+					if (cell.getROI().getBoundsY() + cell.getROI().getBoundsHeight() < cellLimit)
+						completedCells.add(cell);
+					else
+						remainingCells.add(cell);
+				}
+				pendingCells = remainingCells;
+				if (completedCells.isEmpty())
+					detections = Collections.emptyList();
+				else {
+					var neighbors = new ArrayList<>(neighborCells);
+					neighbors.addAll(remainingCells);
+					detections = CellTools.constrainCellOverlaps(completedCells, neighbors);
+				}
+				// Retain completed cells only while they might touch a pending cell
+				double neighborCellLimit = cellLimit - maxNucleusHeight - expansion * 2;
+				neighborCells.removeIf(c -> c.getROI().getBoundsY() + c.getROI().getBoundsHeight() < neighborCellLimit);
+				for (var cell : completedCells) {
+					if (cell.getROI().getBoundsY() + cell.getROI().getBoundsHeight() >= neighborCellLimit)
+						neighborCells.add(cell);
+				}
+			}
+			
+			if (!detections.isEmpty()) {
+				addMeasurements(imageData, resolution, detections);
+				count += detections.size();
+				log("Completed {} cells (row {}/{})", detections.size(), r+1, rows.size());
+				consumer.accept(detections);
+			}
+		}
+		
+		log("Detected {} cells", count);
+	}
+	
+	
+	private PixelCalibration getResolution(ImageData<BufferedImage> imageData) {
+		var resolution = imageData.getServer().getPixelCalibration();
+		if (Double.isFinite(pixelSize) && pixelSize > 0) {
+			double downsample = pixelSize / resolution.getAveragedPixelSize().doubleValue();
+			resolution = resolution.createScaledInstance(downsample, downsample);
+		}
+		return resolution;
+	}
+	
+	
+	/**
+	 * Convert nuclei to detections, dilating to approximate cells if necessary.
+	 * Drop cells if they fail (rather than catastropically give up).
+	 */
+	private List<PathObject> convertToObjects(List<PotentialNucleus> nuclei, ImagePlane plane, double expansion, Geometry mask) {
+		return nuclei.parallelStream()
 				.map(n -> {
 					try {
 						return convertToObject(n, plane, expansion, constrainToParent ? mask : null);
@@ -653,12 +889,15 @@ public class StarDist2D {
 					}
 				}).filter(n -> n != null)
 				.collect(Collectors.toList());
-		
-		// Resolve cell overlaps, if needed
-		if (expansion > 0 && !ignoreCellOverlaps) {
-			log("Resolving cell overlaps");
-			detections = CellTools.constrainCellOverlaps(detections);
-		}
+	}
+	
+	
+	/**
+	 * Add shape and intensity measurements, as required.
+	 */
+	private void addMeasurements(ImageData<BufferedImage> imageData, PixelCalibration resolution, List<PathObject> detections) {
+		var server = imageData.getServer();
+		var cal = server.getPixelCalibration();
 		
 		// Add shape measurements, if needed
 		if (measureShape)
@@ -690,10 +929,6 @@ public class StarDist2D {
 			});
 			
 		}
-		
-		log("Detected {} cells", detections.size());
-
-		return detections;
 	}
 	
 	
@@ -0,0 +1,222 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.tensorflow.stardist;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.bytedeco.javacpp.indexer.FloatIndexer;
+import org.bytedeco.opencv.global.opencv_core;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Scalar;
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.images.ImageData;
+import qupath.lib.images.servers.ImageChannel;
+import qupath.lib.images.servers.PixelType;
+import qupath.lib.images.servers.WrappedBufferedImageServer;
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjectTools;
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.regions.RegionRequest;
+import qupath.lib.roi.ROIs;
+import qupath.opencv.ops.ImageDataOp;
+import qupath.opencv.ops.ImageOp;
+
+@SuppressWarnings("javadoc")
+public class StarDist2DTest {
+
+	private static final int SIZE = 320;
+	private static final int N_RAYS = 32;
+	private static final double RADIUS = 10;
+
+	@Test
+	public void testStreamingNuclei() {
+		var imageData = createImageData();
+
+		var expected = detect(imageData, false, Double.NaN);
+		var streamed = detect(imageData, true, Double.NaN);
+
+		assertFalse(expected.isEmpty());
+		assertEquals(expected.size(), streamed.size());
+		for (int i = 0; i < expected.size(); i++) {
+			var geomExpected = expected.get(i).getROI().getGeometry();
+			var geomStreamed = streamed.get(i).getROI().getGeometry();
+			assertTrue(geomExpected.equalsExact(geomStreamed, 1e-6));
+		}
+	}
+
+	@Test
+	public void testStreamingCells() {
+		var imageData = createImageData();
+
+		var expected = detect(imageData, false, 15);
+		var streamed = detect(imageData, true, 15);
+
+		assertFalse(expected.isEmpty());
+		assertEquals(expected.size(), streamed.size());
+		for (int i = 0; i < expected.size(); i++) {
+			var nucleusExpected = PathObjectTools.getROI(expected.get(i), true).getGeometry();
+			var nucleusStreamed = PathObjectTools.getROI(streamed.get(i), true).getGeometry();
+			assertTrue(nucleusExpected.equalsExact(nucleusStreamed, 1e-6));
+			// Cell boundaries depend upon a triangulation of different objects, so allow some tolerance
+			double areaExpected = expected.get(i).getROI().getArea();
+			double areaStreamed = streamed.get(i).getROI().getArea();
+			assertEquals(areaExpected, areaStreamed, areaExpected * 0.01);
+		}
+	}
+
+
+	private static List<PathObject> detect(ImageData<BufferedImage> imageData, boolean streaming, double cellExpansion) {
+		var stardist = StarDist2D.builder("synthetic")
+				.threshold(0.5)
+				.tileSize(112)
+				.padding(24)
+				.cellExpansion(cellExpansion)
+				.streaming(streaming)
+				.build(new CircleOp(createCircles()));
+
+		var roi = ROIs.createRectangleROI(0, 0, SIZE, SIZE, ImagePlane.getDefaultPlane());
+		List<PathObject> detections;
+		if (streaming) {
+			var batches = new ArrayList<PathObject>();
+			stardist.detectObjects(imageData, roi, batch -> batches.addAll(batch));
+			detections = batches;
+		} else
+			detections = stardist.detectObjects(imageData, roi);
+
+		detections.sort(Comparator.comparingDouble((PathObject p) -> PathObjectTools.getROI(p, true).getCentroidY())
+				.thenComparingDouble(p -> PathObjectTools.getROI(p, true).getCentroidX()));
+		return detections;
+	}
+
+	private static ImageData<BufferedImage> createImageData() {
+		var img = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_BYTE_GRAY);
+		var server = new WrappedBufferedImageServer("Circles", img);
+		return new ImageData<>(server);
+	}
+
+	/**
+	 * Create circles on a regular grid, many of which straddle tile boundaries,
+	 * with an overlapping partner for some of them.
+	 * Each circle is represented by its x, y and maximum probability.
+	 */
+	private static List<double[]> createCircles() {
+		var circles = new ArrayList<double[]>();
+		int i = 0;
+		for (int y = 20; y < SIZE; y += 40) {
+			for (int x = 20; x < SIZE; x += 40) {
+				double prob = i % 2 == 0 ? 0.9 : 0.8;
+				circles.add(new double[] {x, y, prob});
+				if (i % 3 == 0 && x + 13 + RADIUS < SIZE && y + 9 + RADIUS < SIZE)
+					circles.add(new double[] {x + 13, y + 9, 1.7 - prob});
+				i++;
+			}
+		}
+		return circles;
+	}
+
+
+	/**
+	 * Op that mimics a StarDist prediction for a collection of circles.
+	 * The output contains a probability channel followed by the distance to the circle boundary along each ray.
+	 */
+	static class CircleOp implements ImageDataOp {
+
+		private List<double[]> circles;
+
+		CircleOp(List<double[]> circles) {
+			this.circles = circles;
+		}
+
+		@Override
+		public Mat apply(ImageData<BufferedImage> imageData, RegionRequest request) throws IOException {
+			double downsample = request.getDownsample();
+			int w = (int)Math.round(request.getWidth() / downsample);
+			int h = (int)Math.round(request.getHeight() / downsample);
+			var mat = new Mat(h, w, opencv_core.CV_32FC(N_RAYS + 1), Scalar.all(0.0));
+			FloatIndexer indexer = mat.createIndexer();
+			for (int y = 0; y < h; y++) {
+				double py = request.getY() + y * downsample;
+				for (int x = 0; x < w; x++) {
+					double px = request.getX() + x * downsample;
+					// Use the circle giving the highest probability
+					double[] best = null;
+					double bestProb = 0;
+					for (var circle : circles) {
+						double dist = Math.sqrt((px - circle[0])*(px - circle[0]) + (py - circle[1])*(py - circle[1]));
+						if (dist > RADIUS / 3)
+							continue;
+						double prob = circle[2] * (1 - dist / (2 * RADIUS));
+						if (prob > bestProb) {
+							best = circle;
+							bestProb = prob;
+						}
+					}
+					if (best == null)
+						continue;
+					// Avoid ties, so that the order in which nuclei are resolved is well-defined
+					indexer.put(y, x, 0, (float)(bestProb + (py * SIZE + px) * 2e-7));
+					double dx = px - best[0];
+					double dy = py - best[1];
+					for (int a = 0; a < N_RAYS; a++) {
+						double theta = 2 * Math.PI / N_RAYS * a;
+						double b = dx * Math.cos(theta) + dy * Math.sin(theta);
+						double t = -b + Math.sqrt(b*b - (dx*dx + dy*dy - RADIUS*RADIUS));
+						indexer.put(y, x, a + 1, (float)(t / downsample));
+					}
+				}
+			}
+			indexer.release();
+			return mat;
+		}
+
+		@Override
+		public boolean supportsImage(ImageData<BufferedImage> imageData) {
+			return true;
+		}
+
+		@Override
+		public List<ImageChannel> getChannels(ImageData<BufferedImage> imageData) {
+			return ImageChannel.getDefaultChannelList(N_RAYS + 1);
+		}
+
+		@Override
+		public ImageDataOp appendOps(ImageOp... ops) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public PixelType getOutputType(PixelType inputType) {
+			return PixelType.FLOAT32;
+		}
+
+	}
+
+}
@@ -79,8 +79,17 @@ abstract class AbstractSingleChannelInfo extends AbstractChannelInfo implements
 		// Don't do anything with an existing pixel if display range is 0, or it is lower than the min display
 		if (maxDisplay == minDisplay || value <= minDisplay)
 			return rgb;
+		return addRGB(rgb, getRGB(value, useColorLUT));
+	}
+	
+	/**
+	 * Combine two packed RGB values additively, clipping each component to the range 0-255.
+	 * @param rgb the existing RGB value
+	 * @param rgbNew the RGB value to add
+	 * @return the combined RGB value
+	 */
+	static int addRGB(int rgb, int rgbNew) {
 		// Just return the (scaled) RGB value for this pixel if we don't have to update anything
-		int rgbNew = getRGB(value, useColorLUT);
 		if (rgb == 0)
 			return rgbNew;
 		if (rgbNew == 0)
@@ -23,7 +23,9 @@ package qupath.lib.display;
 
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
 import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
 
 import qupath.lib.color.ColorTransformer;
 import qupath.lib.common.ColorTools;
@@ -38,8 +40,8 @@ import qupath.lib.images.ImageData;
  * <li>Otherwise, a scaled version of the color is used</li>
  * </ul>
  * 
- * The end result is like having a lookup table (LUT) that stretches from black to the 'pure' color specified,
- * but without actually generating the LUT.
+ * The end result is like having a lookup table (LUT) that stretches from black to the 'pure' color specified.
+ * For 8-bit and 16-bit images, this LUT is generated for the current display range and applied directly to the pixel values.
  * 
  * @author Pete Bankhead
  *
@@ -50,6 +52,7 @@ public class DirectServerChannelInfo extends AbstractSingleChannelInfo {
 
 	transient private ColorModel cm;
 	transient private int[] rgbLUT;
+	transient private volatile DisplayLUT displayLUT;
 	private int rgb;
 	//		private int rgb, r, g, b;
 
@@ -147,6 +150,92 @@ public class DirectServerChannelInfo extends AbstractSingleChannelInfo {
 		return ColorTransformer.makeScaledRGBwithRangeCheck(value, minDisplay, 255.f/(maxDisplay - minDisplay), useColorLUT ? cm : null);
 	}
 
+	@Override
+	public int[] getRGB(BufferedImage img, int[] rgb, boolean useColorLUT) {
+		int[] lut = getDisplayLUT(img, useColorLUT);
+		if (lut == null)
+			return super.getRGB(img, rgb, useColorLUT);
+		int n = img.getWidth() * img.getHeight();
+		if (rgb == null || rgb.length < n)
+			rgb = new int[n];
+		int[] samples = img.getRaster().getSamples(0, 0, img.getWidth(), img.getHeight(), channel, (int[])null);
+		for (int i = 0; i < n; i++)
+			rgb[i] = lut[samples[i]];
+		return rgb;
+	}
+	
+	@Override
+	public void updateRGBAdditive(BufferedImage img, int[] rgb, boolean useColorLUT) {
+		int[] lut = getDisplayLUT(img, useColorLUT);
+		if (lut == null) {
+			super.updateRGBAdditive(img, rgb, useColorLUT);
+			return;
+		}
+		// Don't do anything with existing pixels if display range is 0
+		if (maxDisplay == minDisplay)
+			return;
+		int[] samples = img.getRaster().getSamples(0, 0, img.getWidth(), img.getHeight(), channel, (int[])null);
+		int n = Math.min(samples.length, rgb.length);
+		float min = minDisplay;
+		for (int i = 0; i < n; i++) {
+			int v = samples[i];
+			if (v > min)
+				rgb[i] = addRGB(rgb[i], lut[v]);
+		}
+	}
+	
+	/**
+	 * Get a lookup table mapping every possible pixel value to RGB for the current display settings, 
+	 * or null if the image is not 8-bit or 16-bit unsigned.
+	 * The table is cached until the display range or color changes.
+	 */
+	private int[] getDisplayLUT(BufferedImage img, boolean useColorLUT) {
+		Raster raster = img.getRaster();
+		int n;
+		switch (raster.getDataBuffer().getDataType()) {
+		case DataBuffer.TYPE_BYTE:
+			n = 256;
+			break;
+		case DataBuffer.TYPE_USHORT:
+			n = 65536;
+			break;
+		default:
+			return null;
+		}
+		var lut = displayLUT;
+		if (lut == null || !lut.matches(n, minDisplay, maxDisplay, useColorLUT ? cm : null)) {
+			lut = new DisplayLUT(n, minDisplay, maxDisplay, useColorLUT ? cm : null);
+			displayLUT = lut;
+		}
+		return lut.rgb;
+	}
+	
+	
+	/**
+	 * Lookup table for a specific display range &amp; color model.
+	 */
+	private static class DisplayLUT {
+		
+		private final float minDisplay, maxDisplay;
+		private final ColorModel cm;
+		private final int[] rgb;
+		
+		DisplayLUT(int n, float minDisplay, float maxDisplay, ColorModel cm) {
+			this.minDisplay = minDisplay;
+			this.maxDisplay = maxDisplay;
+			this.cm = cm;
+			this.rgb = new int[n];
+			float scale = 255.f/(maxDisplay - minDisplay);
+			for (int i = 0; i < n; i++)
+				rgb[i] = ColorTransformer.makeScaledRGBwithRangeCheck(i, minDisplay, scale, cm);
+		}
+		
+		boolean matches(int n, float minDisplay, float maxDisplay, ColorModel cm) {
+			return rgb.length == n && this.minDisplay == minDisplay && this.maxDisplay == maxDisplay && this.cm == cm;
+		}
+		
+	}
+
 	@Override
 	public boolean doesSomething() {
 		return true;
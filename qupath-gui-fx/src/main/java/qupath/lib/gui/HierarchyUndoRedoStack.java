@@ -0,0 +1,534 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.lib.gui;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathROIObject;
+import qupath.lib.objects.classes.PathClass;
+import qupath.lib.objects.hierarchy.PathObjectHierarchy;
+import qupath.lib.objects.hierarchy.events.PathObjectHierarchyEvent;
+import qupath.lib.objects.hierarchy.events.PathObjectSelectionListener;
+import qupath.lib.plugins.ParallelTileObject;
+import qupath.lib.roi.interfaces.ROI;
+
+/**
+ * Undo/redo stack for a single {@link PathObjectHierarchy}, which records the changes described by hierarchy events as deltas.
+ * <p>
+ * Only the objects named by each event are considered, i.e. the changed objects along with any objects that the hierarchy 
+ * reports it has moved (see {@link PathObjectHierarchyEvent#getPreviousParents()}). 
+ * For each of these, the parent, ROI, classification and name before and after the change are stored. 
+ * Undo and redo then only need to restore the objects that changed, regardless of the size of the hierarchy, 
+ * and only the stored changes count towards the memory limit.
+ * <p>
+ * The values before a change are taken from the last change recorded for the same object or, failing that, from 
+ * the values the object had when it was last selected. Adding, removing and moving objects through the hierarchy 
+ * can therefore always be undone, but a new classification, name or ROI can only be undone if the object was selected 
+ * or had already been changed.
+ * <p>
+ * Events that do not name any objects (e.g. to indicate that anything below the root may have changed) are not recorded, 
+ * nor are measurement changes. Changes that add or remove TMA cores clear the history, since the TMA grid itself is not tracked.
+ */
+class HierarchyUndoRedoStack {
+	
+	private final static Logger logger = LoggerFactory.getLogger(HierarchyUndoRedoStack.class);
+	
+	/**
+	 * Approximate number of bytes needed to store a single change, including the states before and after.
+	 */
+	private static final long BYTES_PER_CHANGE = 160;
+	
+	/**
+	 * Approximate number of bytes for each object that is retained only by the stack after it has been removed, excluding its ROI.
+	 */
+	private static final long BYTES_PER_OBJECT = 256;
+	
+	private PathObjectHierarchy hierarchy;
+	private PathObject rootObject;
+	
+	// Most recent state of objects that have been changed, used as the starting point for their next change
+	private Map<PathObject, ObjectState> states = new WeakHashMap<>();
+	
+	// States of the selected objects whenever the selection changes, since these are the objects that are most likely to be edited
+	private volatile Map<PathObject, ObjectState> latestSelectionStates = Collections.emptyMap();
+	private Map<PathObject, ObjectState> selectionStates = Collections.emptyMap();
+	
+	private final PathObjectSelectionListener selectionListener = this::selectionChanged;
+	
+	private Deque<HierarchyDelta> undoStack = new ArrayDeque<>();
+	private Deque<HierarchyDelta> redoStack = new ArrayDeque<>();
+	private long undoBytes = 0L;
+	private long redoBytes = 0L;
+	
+	private boolean applying = false;
+	
+	HierarchyUndoRedoStack(final PathObjectHierarchy hierarchy) {
+		this.hierarchy = hierarchy;
+		this.rootObject = hierarchy.getRootObjectWithoutLoading();
+		var selectionModel = hierarchy.getSelectionModel();
+		// Lock the selection model so that the selection can't change before we start listening
+		synchronized (selectionModel) {
+			selectionChanged(selectionModel.getSelectedObject(), null, selectionModel.getSelectedObjects());
+			selectionModel.addPathObjectSelectionListener(selectionListener);
+		}
+	}
+	
+	/**
+	 * Stop recording changes, and clear the undo and redo stacks.
+	 * This should be called when the stack is no longer needed.
+	 */
+	public void close() {
+		hierarchy.getSelectionModel().removePathObjectSelectionListener(selectionListener);
+		clear();
+	}
+	
+	/**
+	 * Get the hierarchy whose changes are recorded.
+	 * @return
+	 */
+	public PathObjectHierarchy getHierarchy() {
+		return hierarchy;
+	}
+	
+	/**
+	 * Returns true if the undo stack is not empty.
+	 * @return
+	 */
+	public synchronized boolean canUndo() {
+		return !undoStack.isEmpty();
+	}
+	
+	/**
+	 * Returns true if the redo stack is not empty.
+	 * @return
+	 */
+	public synchronized boolean canRedo() {
+		return !redoStack.isEmpty();
+	}
+	
+	/**
+	 * Get the approximate number of bytes used to store the changes in the undo and redo stacks.
+	 * @return
+	 */
+	public synchronized long totalBytes() {
+		return undoBytes + redoBytes;
+	}
+	
+	/**
+	 * Clear the undo and redo stacks, along with the states of any objects that were changed.
+	 */
+	public synchronized void clear() {
+		undoStack.clear();
+		redoStack.clear();
+		undoBytes = 0L;
+		redoBytes = 0L;
+		states.clear();
+	}
+	
+	/**
+	 * Record any changes to the hierarchy indicated by an event.
+	 * This will clear any redo status, on the assumption that redo is no longer possible.
+	 * 
+	 * @param event the hierarchy event
+	 * @param maxBytes maximum number of bytes that the undo stack may use; the oldest changes are discarded first
+	 * @return true if a change was recorded, false otherwise
+	 */
+	public boolean recordChanges(final PathObjectHierarchyEvent event, final long maxBytes) {
+		synchronized (hierarchy) {
+			synchronized (this) {
+				if (applying || event.getHierarchy() != hierarchy)
+					return false;
+				// Earlier changes can't be applied if the root has been replaced
+				PathObject root = hierarchy.getRootObjectWithoutLoading();
+				if (root != rootObject) {
+					clear();
+					rootObject = root;
+				}
+				if (event.isObjectMeasurementEvent())
+					return false;
+				updateSelectionStates();
+				
+				Map<PathObject, PathObject> previousParents = event.getPreviousParents();
+				List<ObjectChange> changes = new ArrayList<>();
+				int nUnknown = 0;
+				for (PathObject pathObject : getNamedObjects(event)) {
+					ObjectChange change = getChange(pathObject, previousParents);
+					if (change != null)
+						changes.add(change);
+					else if (!event.isStructureChangeEvent() && getKnownState(pathObject) == null)
+						nUnknown++;
+				}
+				if (nUnknown > 0)
+					logger.debug("Unable to record changes to {} object(s) that were neither selected nor previously changed", nUnknown);
+				if (changes.isEmpty())
+					return false;
+				
+				if (changes.stream().anyMatch(c -> c.pathObject.isTMACore() && c.before.parent != c.after.parent)) {
+					logger.debug("TMA grid changed - resetting undo/redo history");
+					clear();
+					return false;
+				}
+				
+				HierarchyDelta delta = new HierarchyDelta(changes);
+				if (delta.bytes > maxBytes) {
+					logger.debug("Changes to {} objects exceed the maximum undo memory - resetting undo/redo history", changes.size());
+					clear();
+					return false;
+				}
+				for (ObjectChange change : changes)
+					states.put(change.pathObject, change.after);
+				undoStack.push(delta);
+				undoBytes += delta.bytes;
+				while (!redoStack.isEmpty())
+					discardStates(redoStack.pop());
+				redoBytes = 0L;
+				
+				// Discard the oldest changes if we are over the limit
+				while (undoBytes > maxBytes) {
+					HierarchyDelta oldest = undoStack.pollLast();
+					undoBytes -= oldest.bytes;
+					discardStates(oldest);
+				}
+				logger.trace("Recorded {} object changes (undo stack {} bytes)", changes.size(), undoBytes);
+				return true;
+			}
+		}
+	}
+	
+	/**
+	 * Revert the most recently-recorded changes.
+	 * @return true if the hierarchy was changed, false otherwise
+	 */
+	public boolean undoOnce() {
+		synchronized (hierarchy) {
+			synchronized (this) {
+				if (undoStack.isEmpty()) {
+					logger.debug("Cannot undo! Stack is empty.");
+					return false;
+				}
+				HierarchyDelta delta = undoStack.pop();
+				undoBytes -= delta.bytes;
+				redoStack.push(delta);
+				redoBytes += delta.bytes;
+				applyDelta(delta, true);
+				return true;
+			}
+		}
+	}
+	
+	/**
+	 * Reapply the most recently-reverted changes.
+	 * @return true if the hierarchy was changed, false otherwise
+	 */
+	public boolean redoOnce() {
+		synchronized (hierarchy) {
+			synchronized (this) {
+				if (redoStack.isEmpty()) {
+					logger.debug("Cannot redo! Stack is empty.");
+					return false;
+				}
+				HierarchyDelta delta = redoStack.pop();
+				redoBytes -= delta.bytes;
+				undoStack.push(delta);
+				undoBytes += delta.bytes;
+				applyDelta(delta, false);
+				return true;
+			}
+		}
+	}
+	
+	
+	/**
+	 * Store the states of the selected objects. 
+	 * This may be called while the selection model is locked, so the states are only published here - 
+	 * they are put to use the next time changes are recorded or applied.
+	 */
+	private void selectionChanged(PathObject pathObjectSelected, PathObject previousObject, Collection<PathObject> allSelected) {
+		Map<PathObject, ObjectState> map = new IdentityHashMap<>();
+		for (PathObject pathObject : allSelected)
+			map.put(pathObject, new ObjectState(pathObject));
+		latestSelectionStates = map;
+	}
+	
+	/**
+	 * Start using the states from the latest selection change, if we haven't already. 
+	 * These are more recent than any existing states for the same objects, which are therefore removed.
+	 */
+	private void updateSelectionStates() {
+		Map<PathObject, ObjectState> latest = latestSelectionStates;
+		if (latest == selectionStates)
+			return;
+		for (PathObject pathObject : latest.keySet())
+			states.remove(pathObject);
+		selectionStates = latest;
+	}
+	
+	/**
+	 * Get the most recent known state of an object, or null if its state is not known.
+	 */
+	private ObjectState getKnownState(final PathObject pathObject) {
+		ObjectState state = states.get(pathObject);
+		return state == null ? selectionStates.get(pathObject) : state;
+	}
+	
+	/**
+	 * Remove any states that were only needed by a delta that is being discarded.
+	 */
+	private void discardStates(final HierarchyDelta delta) {
+		for (ObjectChange change : delta.changes) {
+			states.remove(change.pathObject, change.before);
+			states.remove(change.pathObject, change.after);
+		}
+	}
+	
+	
+	/**
+	 * Apply the changes in a delta, firing a single round of hierarchy events on completion.
+	 * @param delta
+	 * @param undo if true, restore the states before the changes were made; otherwise restore the states after
+	 */
+	private void applyDelta(final HierarchyDelta delta, final boolean undo) {
+		boolean structureChanged = false;
+		boolean classificationChanged = false;
+		boolean otherChanged = false;
+		List<PathObject> changedObjects = new ArrayList<>(delta.changes.size());
+		
+		updateSelectionStates();
+		applying = true;
+		try {
+			int n = delta.changes.size();
+			for (int i = 0; i < n; i++) {
+				ObjectChange change = delta.changes.get(undo ? n - 1 - i : i);
+				PathObject pathObject = change.pathObject;
+				ObjectState state = undo ? change.before : change.after;
+				changedObjects.add(pathObject);
+				states.put(pathObject, state);
+				
+				if (pathObject.getParent() != state.parent) {
+					if (state.parent == null)
+						pathObject.getParent().removePathObject(pathObject);
+					else
+						state.parent.addPathObject(pathObject);
+					structureChanged = true;
+				}
+				// If the object is being removed, we don't need to restore anything else
+				if (state.parent == null)
+					continue;
+				
+				if (state.roi != null && pathObject.getROI() != state.roi && pathObject instanceof PathROIObject) {
+					((PathROIObject)pathObject).setROI(state.roi);
+					otherChanged = true;
+				}
+				if (!Objects.equals(pathObject.getPathClass(), state.pathClass)) {
+					pathObject.setPathClass(state.pathClass);
+					classificationChanged = true;
+				}
+				if (!Objects.equals(pathObject.getName(), state.name)) {
+					pathObject.setName(state.name);
+					otherChanged = true;
+				}
+			}
+			
+			// Objects that have been removed shouldn't remain selected
+			if (structureChanged)
+				hierarchy.getSelectionModel().clearSelection();
+			
+			boolean fireStructureEvent = structureChanged;
+			boolean fireClassificationEvent = classificationChanged;
+			boolean fireOtherEvent = otherChanged;
+			hierarchy.runInTransaction(() -> {
+				if (fireStructureEvent)
+					hierarchy.fireHierarchyChangedEvent(this);
+				if (fireClassificationEvent)
+					hierarchy.fireObjectClassificationsChangedEvent(this, changedObjects);
+				if (fireOtherEvent)
+					hierarchy.fireObjectsChangedEvent(this, changedObjects);
+			});
+		} finally {
+			applying = false;
+		}
+	}
+	
+	
+	/**
+	 * Get the objects named by an event, either because they were changed or because the hierarchy moved them. 
+	 * If no objects are named, the base of any structure change is used instead.
+	 */
+	private static Collection<PathObject> getNamedObjects(final PathObjectHierarchyEvent event) {
+		Set<PathObject> set = Collections.newSetFromMap(new IdentityHashMap<>());
+		List<PathObject> pathObjects = new ArrayList<>();
+		for (PathObject pathObject : event.getChangedObjects()) {
+			if (set.add(pathObject))
+				pathObjects.add(pathObject);
+		}
+		for (PathObject pathObject : event.getPreviousParents().keySet()) {
+			if (set.add(pathObject))
+				pathObjects.add(pathObject);
+		}
+		PathObject base = event.getStructureChangeBase();
+		if (pathObjects.isEmpty() && base != null)
+			pathObjects.add(base);
+		return pathObjects;
+	}
+	
+	/**
+	 * Compare the current properties of an object with its properties before the event, returning the change or null if there is no change 
+	 * (or the object should be ignored).
+	 */
+	private ObjectChange getChange(final PathObject pathObject, final Map<PathObject, PathObject> previousParents) {
+		if (pathObject.isRootObject() || pathObject instanceof ParallelTileObject || isTemporary(pathObject.getParent()))
+			return null;
+		
+		ObjectState after = new ObjectState(pathObject);
+		ObjectState before = getKnownState(pathObject);
+		if (before == null)
+			before = after;
+		if (previousParents.containsKey(pathObject)) {
+			PathObject parent = previousParents.get(pathObject);
+			// Objects within a temporary tile weren't really in the hierarchy
+			if (isTemporary(parent))
+				parent = null;
+			if (parent != before.parent)
+				before = new ObjectState(parent, before.roi, before.pathClass, before.name);
+		}
+		
+		if (before.parent == after.parent && before.roi == after.roi && 
+				Objects.equals(before.pathClass, after.pathClass) && Objects.equals(before.name, after.name))
+			return null;
+		return new ObjectChange(pathObject, before, after);
+	}
+	
+	/**
+	 * Check if an object is (or is within) a {@link ParallelTileObject}. 
+	 * Objects within these tiles are treated as being outside the hierarchy, since they are only there temporarily.
+	 */
+	private static boolean isTemporary(PathObject pathObject) {
+		while (pathObject != null) {
+			if (pathObject instanceof ParallelTileObject)
+				return true;
+			pathObject = pathObject.getParent();
+		}
+		return false;
+	}
+	
+	
+	private static long estimateBytes(final ROI roi) {
+		return roi == null ? 0L : 64L + 16L * roi.getNumPoints();
+	}
+	
+	/**
+	 * Estimate the memory needed to retain an object and its descendants.
+	 */
+	private static long estimateBytes(final PathObject pathObject) {
+		long bytes = BYTES_PER_OBJECT * (1 + pathObject.nDescendants()) + estimateBytes(pathObject.getROI());
+		if (pathObject.hasMeasurements())
+			bytes += 16L * pathObject.getMeasurementList().size();
+		return bytes;
+	}
+	
+	
+	/**
+	 * Stored properties of an object at a particular time.
+	 */
+	private static class ObjectState {
+		
+		private final PathObject parent;
+		private final ROI roi;
+		private final PathClass pathClass;
+		private final String name;
+		
+		ObjectState(final PathObject pathObject) {
+			this(pathObject.getParent(), pathObject.getROI(), pathObject.getPathClass(), pathObject.getName());
+		}
+		
+		ObjectState(final PathObject parent, final ROI roi, final PathClass pathClass, final String name) {
+			this.parent = parent;
+			this.roi = roi;
+			this.pathClass = pathClass;
+			this.name = name;
+		}
+		
+	}
+	
+	
+	/**
+	 * Change to a single object, storing its states before and after.
+	 */
+	private static class ObjectChange {
+		
+		private final PathObject pathObject;
+		private final ObjectState before;
+		private final ObjectState after;
+		
+		ObjectChange(final PathObject pathObject, final ObjectState before, final ObjectState after) {
+			this.pathObject = pathObject;
+			this.before = before;
+			this.after = after;
+		}
+		
+		long estimateBytes() {
+			long bytes = BYTES_PER_CHANGE;
+			if (before.roi != after.roi)
+				bytes += HierarchyUndoRedoStack.estimateBytes(before.roi) + HierarchyUndoRedoStack.estimateBytes(after.roi);
+			// Removed objects are retained only by the stack
+			if (after.parent == null)
+				bytes += HierarchyUndoRedoStack.estimateBytes(pathObject);
+			return bytes;
+		}
+		
+	}
+	
+	
+	/**
+	 * All the changes associated with a single undo/redo step.
+	 */
+	private static class HierarchyDelta {
+		
+		private final List<ObjectChange> changes;
+		private final long bytes;
+		
+		HierarchyDelta(final List<ObjectChange> changes) {
+			this.changes = changes;
+			long total = 0L;
+			for (ObjectChange change : changes)
+				total += change.estimateBytes();
+			this.bytes = total;
+		}
+		
+	}
+
+}
@@ -213,6 +213,7 @@ import qupath.lib.images.servers.ImageServerBuilder.ServerBuilder;
 import qupath.lib.images.servers.ImageServerBuilder.UriImageSupport;
 import qupath.lib.images.servers.ImageServerProvider;
 import qupath.lib.images.servers.ImageServers;
+import qupath.lib.images.servers.PersistentTileCache;
 import qupath.lib.images.servers.ServerTools;
 import qupath.lib.io.PathIO;
 import qupath.lib.objects.PathAnnotationObject;
@@ -786,13 +787,14 @@ public class QuPathGUI {
 		long startTime = System.currentTimeMillis();
 		
 		// Set up cache
-		imageRegionStore = ImageRegionStoreFactory.createImageRegionStore(QuPathGUI.getTileCacheSizeBytes());
+		imageRegionStore = ImageRegionStoreFactory.createImageRegionStore(QuPathGUI.getTileCacheSizeBytes(), QuPathGUI.getOffHeapTileCacheSizeBytes());
 		
 		PathPrefs.tileCachePercentageProperty().addListener((v, o, n) -> {
 			imageRegionStore.getCache().clear();
 		});
 		
 		ImageServerProvider.setCache(imageRegionStore.getCache(), BufferedImage.class);
+		initializePersistentTileCache();
 		
 		this.stage = stage;
 		this.isStandalone = isStandalone;
@@ -835,6 +837,11 @@ public class QuPathGUI {
 		AbstractPluginRunner.setNumThreadsRequested(PathPrefs.numCommandThreadsProperty().get());
 		PathPrefs.numCommandThreadsProperty().addListener(o -> AbstractPluginRunner.setNumThreadsRequested(PathPrefs.numCommandThreadsProperty().get()));
 		
+		PathIO.setDefaultDataFormat(PathPrefs.useBinaryDataFormatProperty().get() ? PathIO.DataFormat.BINARY : PathIO.DataFormat.SERIALIZED);
+		PathPrefs.useBinaryDataFormatProperty().addListener((v, o, n) -> PathIO.setDefaultDataFormat(n ? PathIO.DataFormat.BINARY : PathIO.DataFormat.SERIALIZED));
+		PathIO.setDeferredObjectLoading(PathPrefs.deferObjectLoadingProperty().get());
+		PathPrefs.deferObjectLoadingProperty().addListener((v, o, n) -> PathIO.setDeferredObjectLoading(n));
+		
 		// Activate the log at an early stage
 		// TODO: NEED TO TURN ON LOG!
 //		Action actionLog = createAction(GUIActions.SHOW_LOG);
@@ -4167,6 +4174,45 @@ public class QuPathGUI {
 		logger.info(String.format("Setting tile cache size to %.2f MB (%.1f%% max memory)", tileCacheSize/(1024.*1024.), percentage));
 		return tileCacheSize;
 	}
+	
+	/**
+	 * Create the persistent tile cache, if requested in the user preferences.
+	 */
+	private static void initializePersistentTileCache() {
+		int sizeMB = PathPrefs.persistentTileCacheMBProperty().get();
+		String path = PathPrefs.getPersistentTileCachePath();
+		if (sizeMB <= 0 || path == null || ImageServerProvider.getPersistentTileCache() != null)
+			return;
+		try {
+			var cache = PersistentTileCache.open(Paths.get(path), sizeMB * 1024L * 1024L);
+			// Another instance of QuPath may already be using the cache
+			if (!cache.isEnabled())
+				return;
+			ImageServerProvider.setPersistentTileCache(cache);
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				try {
+					cache.close();
+				} catch (IOException e) {
+					logger.warn("Unable to close persistent tile cache: {}", e.getLocalizedMessage());
+				}
+			}));
+			logger.info("Using persistent tile cache: {}", cache);
+		} catch (IOException e) {
+			logger.error("Unable to create persistent tile cache", e);
+		}
+	}
+	
+	/**
+	 * Calculate the appropriate off-heap tile cache size based upon the user preferences.
+	 * @return off-heap tile cache size in bytes, or 0 if no off-heap cache should be used
+	 */
+	private static long getOffHeapTileCacheSizeBytes() {
+		int sizeMB = PathPrefs.tileCacheOffHeapMBProperty().get();
+		if (sizeMB <= 0)
+			return 0L;
+		logger.info("Setting off-heap tile cache size to {} MB", sizeMB);
+		return sizeMB * 1024L * 1024L;
+	}
 
 
 
@@ -23,14 +23,10 @@ package qupath.lib.gui;
 
 import java.awt.Shape;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.util.ArrayDeque;
-import java.util.Deque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.WeakHashMap;
 
 import org.slf4j.Logger;
@@ -43,7 +39,6 @@ import javafx.beans.property.ReadOnlyObjectProperty;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
-import qupath.lib.common.GeneralTools;
 import qupath.lib.gui.prefs.PathPrefs;
 import qupath.lib.gui.viewer.QuPathViewer;
 import qupath.lib.gui.viewer.QuPathViewerListener;
@@ -58,20 +53,15 @@ import qupath.lib.plugins.ParallelTileObject;
 /**
  * Helper class to add undo/redo support to QuPath.
  * <p>
- * This is restricted to tracking changes in the PathObjectHierarchy for individual viewers, 
- * and is intended mostly for cases where there aren't many objects - but where making mistakes 
- * would be especially annoying (e.g. laboriously annotating images).
+ * This is restricted to tracking changes in the PathObjectHierarchy for individual viewers.
  * <p>
- * Preferences are created to control the maximum number of levels of undo, and also the maximum hierarchy 
- * size.  This latter option is used to automatically turn off undo/redo support if the hierarchy size 
- * grows beyond a specified number of objects.
+ * Every time the hierarchy is changed, the objects named by the event that were added, removed, reparented, reclassified, renamed 
+ * or given a new ROI are recorded - along with their previous state - so that the change can be reverted 
+ * without needing to store the entire hierarchy. The previous classification, name and ROI of an object are only known 
+ * if it was selected or had already been changed, and changes to measurements are not recorded.
  * <p>
- * The reason is because of the (fairly simple) implementation: every time the hierarchy is changed, 
- * the <i>entire hierarchy</i> is serialized in case it becomes necessary to revert back.
- * <p>
- * This is a lot easier than trying to figure out how to computationally revert every conceivable change 
- * that the hierarchy might experience, but it is inevitably quite memory hungry and risks having a substantial 
- * impact on performance for large object hierarchies.
+ * A preference is created to control the maximum memory used to store changes; the oldest changes are discarded 
+ * whenever this is exceeded.
  * 
  * @author Pete Bankhead
  *
@@ -80,8 +70,7 @@ public class UndoRedoManager implements ChangeListener<QuPathViewerPlus>, QuPath
 	
 	private static Logger logger = LoggerFactory.getLogger(UndoRedoManager.class);
 	
-	private IntegerProperty maxUndoLevels = PathPrefs.createPersistentPreference("undoMaxLevels", 10);
-	private IntegerProperty maxUndoHierarchySize = PathPrefs.createPersistentPreference("undoMaxHierarchySize", 10000);
+	private IntegerProperty maxUndoMemoryMB = PathPrefs.createPersistentPreference("undoMaxMemoryMB", 256);
 	
 	private ReadOnlyObjectProperty<QuPathViewerPlus> viewerProperty;
 	
@@ -90,14 +79,13 @@ public class UndoRedoManager implements ChangeListener<QuPathViewerPlus>, QuPath
 	
 	private boolean undoingOrRedoing = false;
 	
-	private Map<QuPathViewer, SerializableUndoRedoStack<PathObjectHierarchy>> map = new WeakHashMap<>();
+	private Map<QuPathViewer, HierarchyUndoRedoStack> map = new WeakHashMap<>();
 	
 	UndoRedoManager(final QuPathGUI qupath) {
 		this.viewerProperty = qupath.viewerProperty();
 		this.viewerProperty.addListener(this);
 		
-		qupath.getPreferencePane().addPropertyPreference(maxUndoLevels, Integer.class, "Max undo levels", "Undo/Redo", "Maximum number of 'undo' levels");
-		qupath.getPreferencePane().addPropertyPreference(maxUndoHierarchySize, Integer.class, "Max undo hierarchy size", "Undo/Redo", "Maximum number of objects in hierarchy before 'undo' switches off (for performance)");
+		qupath.getPreferencePane().addPropertyPreference(maxUndoMemoryMB, Integer.class, "Max undo memory (MB)", "Undo/Redo", "Maximum memory used to store changes for 'undo' - the oldest changes are discarded first. Set to 0 to turn off undo/redo.");
 		
 		changed(this.viewerProperty, null, this.viewerProperty.get());
 		
@@ -113,7 +101,7 @@ public class UndoRedoManager implements ChangeListener<QuPathViewerPlus>, QuPath
 			Platform.runLater(() -> refreshProperties());
 			return;
 		}
-		SerializableUndoRedoStack<PathObjectHierarchy> undoRedo = map.get(viewerProperty.get());
+		HierarchyUndoRedoStack undoRedo = map.get(viewerProperty.get());
 		if (undoRedo == null) {
 			canUndo.set(false);
 			canRedo.set(false);
@@ -133,14 +121,13 @@ public class UndoRedoManager implements ChangeListener<QuPathViewerPlus>, QuPath
 	}
 	
 	/**
-	 * The total number of bytes used for all viewers.
+	 * The (approximate) total number of bytes used for all viewers.
 	 * @return 
 	 */
 	public long totalBytes() {
 		long total = 0L;
-		for (var manager : map.values()) {
-			if (manager != null)
-				total += manager.totalBytes();
+		for (var manager : getStacks()) {
+			total += manager.totalBytes();
 		}
 		return total;
 	}
@@ -149,12 +136,25 @@ public class UndoRedoManager implements ChangeListener<QuPathViewerPlus>, QuPath
 	 * Clear all undo/redo stacks (useful when memory is low).
 	 */
 	public void clear() {
-		for (var manager : map.values()) {
+		for (var manager : getStacks()) {
 			manager.clear();
 		}
 		refreshProperties();
 	}
 	
+	/**
+	 * Get the distinct undo/redo stacks, since viewers showing the same hierarchy share a stack.
+	 * @return
+	 */
+	private Set<HierarchyUndoRedoStack> getStacks() {
+		Set<HierarchyUndoRedoStack> stacks = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (var manager : map.values()) {
+			if (manager != null)
+				stacks.add(manager);
+		}
+		return stacks;
+	}
+	
 	/**
 	 * Request to 'redo' the last 'undone' hierarchy change for the current active viewer.
 	 * 
@@ -176,24 +176,25 @@ public class UndoRedoManager implements ChangeListener<QuPathViewerPlus>, QuPath
 			return false;
 		}
 		
-		SerializableUndoRedoStack<PathObjectHierarchy> undoRedo = map.get(viewer);
+		HierarchyUndoRedoStack undoRedo = map.get(viewer);
 		if (undoRedo == null) {
 			logger.warn("Undo requested, but undo stack available.");
 			return false;
 		}
 		
 		// Update the hierarchy
-		PathObjectHierarchy hierarchy = undoRedo.undoOnce();
-		if (hierarchy == null) {
+		boolean changed;
+		undoingOrRedoing = true;
+		try {
+			changed = undoRedo.undoOnce();
+		} finally {
+			undoingOrRedoing = false;
+		}
+		if (!changed) {
 			logger.warn("Unable to call 'undo' for {}", viewer);
 			return false;
 		}
-		undoingOrRedoing = true;
 		logger.debug("Called 'undo' for {}", viewer);
-		// Need to make sure we've no selection, since selected objects can linger
-		viewer.getImageData().getHierarchy().getSelectionModel().clearSelection();
-		viewer.getImageData().getHierarchy().setHierarchy(hierarchy);
-		undoingOrRedoing = false;
 		refreshProperties();
 		
 		return true;
@@ -211,24 +212,25 @@ public class UndoRedoManager implements ChangeListener<QuPathViewerPlus>, QuPath
 			return false;
 		}
 		
-		SerializableUndoRedoStack<PathObjectHierarchy> undoRedo = map.get(viewer);
+		HierarchyUndoRedoStack undoRedo = map.get(viewer);
 		if (undoRedo == null) {
 			logger.warn("Redo requested, but redo stack available.");
 			return false;
 		}
 		
 		// Update the hierarchy
-		PathObjectHierarchy hierarchy = undoRedo.redoOnce();
-		if (hierarchy == null) {
+		boolean changed;
+		undoingOrRedoing = true;
+		try {
+			changed = undoRedo.redoOnce();
+		} finally {
+			undoingOrRedoing = false;
+		}
+		if (!changed) {
 			logger.warn("Unable to call 'redo' for {}", viewer);
 			return false;
 		}
-		undoingOrRedoing = true;
 		logger.debug("Called 'redo' for {}", viewer);
-		// Need to make sure we've no selection, since selected objects can linger
-		viewer.getImageData().getHierarchy().getSelectionModel().clearSelection();
-		viewer.getImageData().getHierarchy().setHierarchy(hierarchy);
-		undoingOrRedoing = false;
 		refreshProperties();
 		
 		return true;
@@ -271,168 +273,6 @@ public class UndoRedoManager implements ChangeListener<QuPathViewerPlus>, QuPath
 	
 
 	
-	/**
-	 * Serialize objects on request for use in undo/redo.
-	 *
-	 * @param <T>
-	 */
-	static class SerializableUndoRedoStack<T> {
-		
-		private byte[] current = null;
-		private Deque<byte[]> undoStack = new ArrayDeque<>();
-		private Deque<byte[]> redoStack = new ArrayDeque<>();
-		
-		SerializableUndoRedoStack(T object) {
-			if (object != null)
-				current = serialize(object, 1024);
-		}
-		
-		/**
-		 * Returns true if the undo stack is not empty.
-		 * @return
-		 */
-		public boolean canUndo() {
-			return !undoStack.isEmpty();
-		}
-		
-		/**
-		 * Returns true if the redo stack is not empty.
-		 * @return
-		 */
-		public boolean canRedo() {
-			return !redoStack.isEmpty();
-		}
-		
-		/**
-		 * Get the total number of allocated bytes.
-		 * @return
-		 */
-		public synchronized long totalBytes() {
-			long total = 0L;
-			if (current != null)
-				total = current.length;
-			for (byte[] bytes : undoStack)
-				total += bytes.length;
-			for (byte[] bytes : redoStack)
-				total += bytes.length;
-			return total;
-		}
-		
-		/**
-		 * Clear the undo and redo stacks, in addition to the current bytes.
-		 */
-		public synchronized void clear() {
-			current = null;
-			undoStack.clear();
-			redoStack.clear();
-		}
-		
-		/**
-		 * Request redo once, updating the current (serialized) object, 
-		 * and return the deserialized version of the object at the top of the 'redo' stack.
-		 * @return
-		 */
-		public synchronized T redoOnce() {
-			if (redoStack.isEmpty()) {
-				logger.debug("Cannot redo! Stack is empty.");
-				return null;
-			}
-			if (current != null) {
-				undoStack.push(current);
-			}
-			current = redoStack.pop();
-			return deserialize(current);
-		}
-		
-		/**
-		 * Request undo once, updating the current (serialized) object, 
-		 * and return the deserialized version of the object at the top of the 'undo' stack.
-		 * @return
-		 */
-		public synchronized T undoOnce() {
-			if (undoStack.isEmpty()) {
-				logger.debug("Cannot undo! Stack is empty.");
-				return null;
-			}
-			if (current != null) {
-				redoStack.push(current);
-			}
-			current = undoStack.pop();
-			return deserialize(current);
-		}
-		
-		/**
-		 * Record a new change event, updating the current object.
-		 * This will clear any redo status, on the assumption that redo is no longer possible.
-		 * 
-		 * @param object
-		 * @param historySize
-		 */
-		public synchronized void addLatest(final T object, int historySize) {
-			int initialSize = 1024;
-			if (current != null) {
-				// If we are low on memory, clear the undo stack
-				long remainingMemory = GeneralTools.estimateAvailableMemory();
-				if (remainingMemory < current.length * 1.5) {
-					undoStack.clear();
-				} else {
-					// Default to something a bit bigger than the last things we had
-					initialSize = Math.min(Integer.MAX_VALUE-64, (int)(current.length * 1.1));
-					undoStack.push(current);
-				}
-			}
-			current = serialize(object, initialSize);
-			// Reset the ability to redo
-			redoStack.clear();
-			// Check the history size
-			if (historySize > 0) {
-				while (undoStack.size() > historySize)
-					undoStack.pollLast();
-			}
-		}
-		
-		/**
-		 * Serialize an object to an array of bytes.
-		 * Providing an estimate of the initial array size can help performance.
-		 * 
-		 * @param object
-		 * @param initialSize
-		 * @return
-		 */
-		private byte[] serialize(T object, int initialSize) {
-			try (ByteArrayOutputStream stream = new ByteArrayOutputStream(initialSize)) {
-				ObjectOutputStream out = new ObjectOutputStream(stream);
-				out.writeObject(object);
-				out.flush();
-				return stream.toByteArray();
-			} catch (IOException e) {
-				logger.error("Error serializing " + object, e);
-				return null;
-			}
-		}
-		
-		/**
-		 * Deserialize an object from an array of bytes.
-		 * It's assumed at the object is of the generic type used elsewhere in this class.
-		 * 
-		 * @param bytes
-		 * @return
-		 */
-		@SuppressWarnings("unchecked")
-		private T deserialize(byte[] bytes) {
-			try (ByteArrayInputStream stream = new ByteArrayInputStream(bytes)) {
-				ObjectInputStream in = new ObjectInputStream(stream);
-				return (T)in.readObject();
-			} catch (ClassNotFoundException | IOException e) {
-				logger.error("Error deserializing object", e);
-				return null;
-			}
-		}
-		
-	}
-
-
-
 	@Override
 	public void imageDataChanged(QuPathViewer viewer, ImageData<BufferedImage> imageDataOld,
 			ImageData<BufferedImage> imageDataNew) {
@@ -444,14 +284,14 @@ public class UndoRedoManager implements ChangeListener<QuPathViewerPlus>, QuPath
 		
 		// Start listening for changes on the new image... if we can
 		PathObjectHierarchy hierarchy = imageDataNew == null ? null : imageDataNew.getHierarchy();
-		if (hierarchy == null) {
-			map.put(viewer, (SerializableUndoRedoStack<PathObjectHierarchy>)null);
+		HierarchyUndoRedoStack previous;
+		if (hierarchy == null || maxUndoMemoryMB.get() <= 0) {
+			previous = map.put(viewer, null);
 		} else {
-			int maxSize = maxUndoHierarchySize.get();
-			if (maxSize >= hierarchy.nObjects())
-				map.put(viewer, new SerializableUndoRedoStack<>(hierarchy));
-			else
-				map.put(viewer, new SerializableUndoRedoStack<>(null));
+			previous = map.put(viewer, getStack(hierarchy));
+		}
+		closeIfUnused(previous);
+		if (hierarchy != null) {
 			// Listen for changes
 			hierarchy.addPathObjectListener(this);
 		}
@@ -459,6 +299,28 @@ public class UndoRedoManager implements ChangeListener<QuPathViewerPlus>, QuPath
 		refreshProperties();
 	}
 
+	/**
+	 * Get the undo/redo stack for a hierarchy, reusing the stack of another viewer if possible.
+	 * @param hierarchy
+	 * @return
+	 */
+	private HierarchyUndoRedoStack getStack(PathObjectHierarchy hierarchy) {
+		for (var undoRedo : map.values()) {
+			if (undoRedo != null && undoRedo.getHierarchy() == hierarchy)
+				return undoRedo;
+		}
+		return new HierarchyUndoRedoStack(hierarchy);
+	}
+	
+	/**
+	 * Close a stack if it is no longer used by any viewer, so that it stops tracking its hierarchy.
+	 * @param undoRedo
+	 */
+	private void closeIfUnused(HierarchyUndoRedoStack undoRedo) {
+		if (undoRedo != null && !map.containsValue(undoRedo))
+			undoRedo.close();
+	}
+
 	@Override
 	public void visibleRegionChanged(QuPathViewer viewer, Shape shape) {}
 
@@ -467,41 +329,33 @@ public class UndoRedoManager implements ChangeListener<QuPathViewerPlus>, QuPath
 
 	@Override
 	public void viewerClosed(QuPathViewer viewer) {
-		map.remove(viewer);
+		closeIfUnused(map.remove(viewer));
 		viewer.removeViewerListener(this);
 	}
 
 	@Override
 	public void hierarchyChanged(PathObjectHierarchyEvent event) {
 		// Try to avoid calling too often
-		if (undoingOrRedoing || event.isChanging() || maxUndoHierarchySize.get() <= 0 || event.getChangedObjects().stream().allMatch(p -> p instanceof ParallelTileObject))
+		if (undoingOrRedoing || event.isChanging() || maxUndoMemoryMB.get() <= 0 || event.isObjectMeasurementEvent())
+			return;
+		if (!event.getChangedObjects().isEmpty() && event.getChangedObjects().stream().allMatch(p -> p instanceof ParallelTileObject))
 			return;
 		
 		// *Potentially* we might have the same hierarchy in multiple viewers
 		// Since we don't have the viewer stored in the event, check to see what viewers are impacted
 		QuPathViewer[] viewers = map.keySet().toArray(new QuPathViewer[map.size()]);
 		PathObjectHierarchy hierarchy = event.getHierarchy();
-		int maxSize = maxUndoHierarchySize.get();
-		boolean sizeOK = hierarchy.nObjects() <= maxSize;
+		long maxBytes = maxUndoMemoryMB.get() * 1024L * 1024L;
+		Set<HierarchyUndoRedoStack> updated = Collections.newSetFromMap(new IdentityHashMap<>());
 		for (QuPathViewer viewer : viewers) {
 			if (viewer.getHierarchy() == hierarchy) {
-				
-				SerializableUndoRedoStack<PathObjectHierarchy> undoRedo = map.get(viewer);
-				// If the size is ok, register the change for potential undo-ing
-				if (sizeOK) {
-					// Consider trying to reduce these calls
-//					if (event.getEventType() == HierarchyEventType.CHANGE_MEASUREMENTS && 
-//							!event.getChangedObjects().stream().anyMatch(p -> p.isDetection()))
-//						continue;
-					
-					if (undoRedo == null)
-						map.put(viewer, new SerializableUndoRedoStack<>(hierarchy));
-					else
-						undoRedo.addLatest(hierarchy, maxUndoLevels.get());
-				} else {
-					// If the hierarchy is too big turn off undo/redo
-					map.put(viewer, (SerializableUndoRedoStack<PathObjectHierarchy>)null);
-				}
+				HierarchyUndoRedoStack undoRedo = map.get(viewer);
+				// If undo was previously turned off, start recording from now
+				if (undoRedo == null || undoRedo.getHierarchy() != hierarchy) {
+					undoRedo = getStack(hierarchy);
+					closeIfUnused(map.put(viewer, undoRedo));
+				} else if (updated.add(undoRedo))
+					undoRedo.recordChanges(event, maxBytes);
 			}
 		}
 		refreshProperties();
@@ -25,22 +25,17 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
-import java.nio.charset.StandardCharsets;
+import java.io.OutputStream;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import org.controlsfx.control.CheckComboBox;
@@ -49,8 +44,6 @@ import org.controlsfx.dialog.ProgressDialog;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.LinkedListMultimap;
-import com.google.common.collect.Multimap;
 import com.google.common.io.Files;
 
 import javafx.application.Platform;
@@ -377,168 +370,60 @@ public class MeasurementExportCommand implements Runnable {
 
 	class ExportTask extends Task<Void> {
 		
-		private boolean quietCancel = false;
 		private String pathOut;
-		private List<ProjectImageEntry<BufferedImage>> imageList;
-		private List<String> excludeColumns;
-		private List<String> includeOnlyColumns;
-		private String separator;
-		
-		// Default: Exporting image
-		private Class<? extends PathObject> type = PathAnnotationObject.class;
+		private MeasurementExporter exporter;
 		
 		
 		public ExportTask(MeasurementExporter exporter, String pathOut) {
 			this.pathOut = pathOut;
-			this.imageList = exporter.getImageList();
-			this.excludeColumns = exporter.getExcludeColumns();
-			this.includeOnlyColumns = exporter.getIncludeColumns();
+			this.exporter = exporter;
 			if (exporter.getSeparator().isEmpty())
-				this.separator = defSep;
-			else
-				this.separator = exporter.getSeparator();
-			this.type = exporter.getType();
+				exporter.separator(defSep);
 		}
 		
 		public void quietCancel() {
-			this.quietCancel = true;
+			exporter.cancel();
 		}
 
 		public boolean isQuietlyCancelled() {
-			return quietCancel;
+			return exporter.isCancelled();
 		}
 		
 
 		@Override
 		protected Void call() {
-			long startTime = System.currentTimeMillis();
-	
-			Map<ProjectImageEntry<?>, String[]> imageCols = new HashMap<ProjectImageEntry<?>, String[]>();
-			Map<ProjectImageEntry<?>, Integer> nImageEntries = new HashMap<ProjectImageEntry<?>, Integer>();
-			List<String> allColumns = new ArrayList<String>();
-			Multimap<String, String> valueMap = LinkedListMultimap.create();
 			File file = new File(pathOut);
-			String pattern = "(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)";
+			int nImages = exporter.getImageList().size();
+			AtomicInteger counter = new AtomicInteger();
 			
-			int counter = 0;
+			updateProgress(0, nImages);
+			updateMessage("Calculating measurements...");
+			exporter.listener(entry -> {
+				int n = counter.incrementAndGet();
+				updateProgress(n, nImages);
+				updateMessage("Calculated measurements for " + entry.getImageName() + " (" + n + "/" + nImages + ")");
+				if (isCancelled())
+					exporter.cancel();
+			});
 			
-			for (ProjectImageEntry<?> entry: imageList) {
-				if (isQuietlyCancelled() || isCancelled()) {
-					logger.warn("Export cancelled");
-					return null;
-				}
-				
-				updateProgress(counter, imageList.size()*2);
-				counter++;
-				updateMessage("Calculating measurements for " + entry.getImageName() + " (" + counter + "/" + imageList.size()*2 + ")");
-				
-				try {
-					ImageData<?> imageData = entry.readImageData();
-					ObservableMeasurementTableData model = new ObservableMeasurementTableData();
-					model.setImageData(imageData, imageData == null ? Collections.emptyList() : imageData.getHierarchy().getObjects(null, type));
-					List<String> data = SummaryMeasurementTableCommand.getTableModelStrings(model, separator, excludeColumns);
-					
-					// Get header
-					String[] header;
-					String headerString = data.get(0);
-					if (headerString.chars().filter(e -> e == '"').count() > 1)
-						header = headerString.split(separator.equals("\t") ? "\\" + separator : separator + pattern , -1);
-					else
-						header = headerString.split(separator);
-					
-					imageCols.put(entry, header);
-					nImageEntries.put(entry, data.size()-1);
-					
-					for (String col: header) {
-						if (!allColumns.contains(col)  && !excludeColumns.contains(col))
-							allColumns.add(col);
-					}
-					
-					// To keep the same column order, just delete non-relevant columns
-					if (!includeOnlyColumns.isEmpty())
-						allColumns.removeIf(n -> !includeOnlyColumns.contains(n));
-					
-					for (int i = 1; i < data.size(); i++) {
-						String[] row;
-						String rowString = data.get(i);
-						
-						// Check if some values in the row are escaped
-						if (rowString.chars().filter(e -> e == '"').count() > 1)
-							row = rowString.split(separator.equals("\t") ? "\\" + separator : separator + pattern , -1);
-						else
-							row = rowString.split(separator);
-						
-						// Put value in map
-						for (int elem = 0; elem < row.length; elem++) {
-							if (allColumns.contains(header[elem]))
-								valueMap.put(header[elem], row[elem]);
-						}
-					}
-				} catch (Exception e) {
-					logger.error(e.getLocalizedMessage(), e);
-				}
-			}
-	
-			try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))){
-				writer.println(String.join(separator, allColumns));
-	
-				Iterator[] its = new Iterator[allColumns.size()];
-				for (int col = 0; col < allColumns.size(); col++) {
-					its[col] = valueMap.get(allColumns.get(col)).iterator();
-				}
-				
-				int counter2 = 0;
-				for (ProjectImageEntry<?> entry: imageList) {
-					if (isQuietlyCancelled() || isCancelled()) {
-						logger.warn("Export cancelled with " + (imageList.size() - counter2) + " image(s) remaining");
-						return null;
-					}
-					
-					counter++;
-					updateProgress(counter, imageList.size()*2);
-					updateMessage("Exporting measurements of " + entry.getImageName() + " (" + counter + "/" + imageList.size()*2 + ")");
-					
-					for (int nObject = 0; nObject < nImageEntries.get(entry); nObject++) {
-						for (int nCol = 0; nCol < allColumns.size(); nCol++) {
-							if (Arrays.stream(imageCols.get(entry)).anyMatch(allColumns.get(nCol)::equals)) {
-								String val = (String)its[nCol].next();
-									
-								// NaN values -> blank
-								if (val.equals("NaN"))
-									val = "";
-								writer.print(val);
-							}
-							if (nCol < allColumns.size()-1)
-								writer.print(separator);
-						}
-						writer.println();
-					}
-					counter2++;
-				}
+			try (OutputStream stream = new FileOutputStream(file)) {
+				exporter.exportMeasurements(stream);
 			} catch (FileNotFoundException e) {
 				Dialogs.showMessageDialog("Export Failed", "Could not create output file. Export failed!");
 				return null;
-				
 			} catch (Exception e) {
 				logger.error(e.getLocalizedMessage(), e);
 			}
 			
-			long endTime = System.currentTimeMillis();
+			if (exporter.isCancelled() || isCancelled()) {
+				// Don't leave an incomplete file behind
+				file.delete();
+				return null;
+			}
 			
-			long timeMillis = endTime - startTime;
-			String time = null;
-			if (timeMillis > 1000*60)
-				time = String.format("Total processing time: %.2f minutes", timeMillis/(1000.0 * 60.0));
-			else if (timeMillis > 1000)
-				time = String.format("Total processing time: %.2f seconds", timeMillis/(1000.0));
-			else
-				time = String.format("Total processing time: %d milliseconds", timeMillis);
-			logger.info("Processed {} images", imageList.size());
-			logger.info(time);
 			logger.info("Measurements exported to " + outputText.getText());
-			
 			Dialogs.showMessageDialog("Export completed", "Successful export!");
 			return null;
 		}
 	}
-}
\ No newline at end of file
+}
@@ -44,6 +44,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.property.ReadOnlyStringWrapper;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.property.StringProperty;
 import javafx.collections.ListChangeListener;
@@ -83,6 +85,7 @@ import qupath.lib.common.GeneralTools;
 import qupath.lib.gui.QuPathGUI;
 import qupath.lib.gui.charts.HistogramDisplay;
 import qupath.lib.gui.dialogs.Dialogs;
+import qupath.lib.gui.measure.ColumnarMeasurementTableData;
 import qupath.lib.gui.measure.ObservableMeasurementTableData;
 import qupath.lib.gui.measure.PathTableData;
 import qupath.lib.gui.prefs.PathPrefs;
@@ -101,6 +104,7 @@ import qupath.lib.objects.TMACoreObject;
 import qupath.lib.objects.classes.PathClass;
 import qupath.lib.objects.hierarchy.PathObjectHierarchy;
 import qupath.lib.objects.hierarchy.events.PathObjectHierarchyEvent;
+import qupath.lib.objects.hierarchy.events.PathObjectHierarchyEventFilter;
 import qupath.lib.objects.hierarchy.events.PathObjectHierarchyListener;
 import qupath.lib.objects.hierarchy.events.PathObjectSelectionModel;
 import qupath.lib.plugins.workflow.DefaultScriptableWorkflowStep;
@@ -166,9 +170,12 @@ public class SummaryMeasurementTableCommand {
 
 		ObservableMeasurementTableData model = new ObservableMeasurementTableData();
 		model.setImageData(imageData, imageData == null ? Collections.emptyList() : imageData.getHierarchy().getObjects(null, type));
+		// Compute numeric values once, rather than creating a binding for every cell
+		// This is done in a background thread once the table is shown; until then, values are requested from the model
+		ColumnarMeasurementTableData columnarModel = new ColumnarMeasurementTableData(model, false);
 
 		SplitPane splitPane = new SplitPane();
-		HistogramDisplay histogramDisplay = new HistogramDisplay(model, true);
+		HistogramDisplay histogramDisplay = new HistogramDisplay(columnarModel, true);
 
 		//		table.setTableMenuButtonVisible(true);
 		TableView<PathObject> table = new TableView<>();
@@ -262,12 +269,12 @@ public class SummaryMeasurementTableCommand {
 			// Add column
 			if (model.isStringMeasurement(columnName)) {
 				TableColumn<PathObject, String> col = new TableColumn<>(columnName);
-				col.setCellValueFactory(column -> model.createStringMeasurement(column.getValue(), column.getTableColumn().getText()));
+				col.setCellValueFactory(column -> new ReadOnlyStringWrapper(columnarModel.getStringValue(column.getValue(), column.getTableColumn().getText())));
 				col.setCellFactory(column -> new BasicTableCell<>());
 				table.getColumns().add(col);			
 			} else {
 				TableColumn<PathObject, Number> col = new TableColumn<>(columnName);
-				col.setCellValueFactory(column -> model.createNumericMeasurement(column.getValue(), column.getTableColumn().getText()));
+				col.setCellValueFactory(column -> new ReadOnlyObjectWrapper<>(columnarModel.getNumericValue(column.getValue(), column.getTableColumn().getText())));
 				col.setCellFactory(column -> new NumericTableCell<PathObject>(histogramDisplay));
 				table.getColumns().add(col);			
 			}
@@ -313,7 +320,7 @@ public class SummaryMeasurementTableCommand {
 				if (!col.isVisible())
 					excludeColumns.add(col.getText());
 			}
-			copyTableContentsToClipboard(model, excludeColumns);
+			copyTableContentsToClipboard(columnarModel, excludeColumns);
 		});
 		buttons.add(btnCopy);
 
@@ -327,7 +334,7 @@ public class SummaryMeasurementTableCommand {
 			File fileOutput = promptForOutputFile();
 			if (fileOutput == null)
 				return;
-			if (saveTableModel(model, fileOutput, excludeColumns)) {
+			if (saveTableModel(columnarModel, fileOutput, excludeColumns)) {
 				WorkflowStep step;
 				String includeColumns;
 				if (excludeColumns.isEmpty())
@@ -421,14 +428,8 @@ public class SummaryMeasurementTableCommand {
 				if (event.isChanging())
 					return;
 				
-				if (!Platform.isFxApplicationThread()) {
-					Platform.runLater(() -> hierarchyChanged(event));
-					return;
-				}
-				model.refreshEntries();
-				table.refresh();
-				if (histogramDisplay != null)
-					histogramDisplay.refreshHistogram();
+				// Events are delivered on a background thread, so recompute the columns here & only update the display on the application thread
+				refreshColumnarModel(columnarModel, table, histogramDisplay);
 			}
 			
 		};
@@ -438,7 +439,7 @@ public class SummaryMeasurementTableCommand {
 		TableViewerListener tableViewerListener = new TableViewerListener(viewer, table);
 
 		frame.setOnShowing(e -> {
-			hierarchy.addPathObjectListener(listener);
+			hierarchy.addDebouncedPathObjectListener(listener, PathObjectHierarchyEventFilter.acceptAll(), 100);
 			viewer.addViewerListener(tableViewerListener);
 		});
 		frame.setOnHiding(e -> {
@@ -450,6 +451,9 @@ public class SummaryMeasurementTableCommand {
 		frame.setScene(scene);
 		frame.show();
 		
+		// Compute the initial snapshot without blocking the application thread
+		qupath.submitShortTask(() -> refreshColumnarModel(columnarModel, table, histogramDisplay));
+		
 		
 		// Add ability to remove entries from table
 		ContextMenu menu = new ContextMenu();
@@ -489,7 +493,20 @@ public class SummaryMeasurementTableCommand {
 
 	}
 
-	
+	/**
+	 * Recompute the columns of a table model, then refresh the display on the application thread.
+	 * This should not be called on the application thread, since computing the columns can be slow.
+	 */
+	private static void refreshColumnarModel(ColumnarMeasurementTableData columnarModel, TableView<PathObject> table, HistogramDisplay histogramDisplay) {
+		columnarModel.refresh();
+		Platform.runLater(() -> {
+			table.refresh();
+			if (histogramDisplay != null)
+				histogramDisplay.refreshHistogram();
+		});
+	}
+
+
 	private void maybeCenterROI(PathObject pathObject) {
 		if (pathObject == null)
 			return;
@@ -30,10 +30,13 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -44,11 +47,6 @@ import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.RemovalCause;
-import com.google.common.cache.Weigher;
-
 import qupath.lib.awt.common.AwtTools;
 import qupath.lib.common.ThreadTools;
 import qupath.lib.gui.images.stores.TileWorker;
@@ -113,47 +111,31 @@ abstract class AbstractImageRegionStore<T> implements ImageRegionStore<T> {
 	
 	
 
-	protected AbstractImageRegionStore(final SizeEstimator<T> sizeEstimator, final int thumbnailSize, final long tileCacheSizeBytes) {
+	protected AbstractImageRegionStore(final SizeEstimator<T> sizeEstimator, final int thumbnailSize, final long tileCacheSizeBytes,
+			final OffHeapCodec<T> offHeapCodec, final long offHeapCacheSizeBytes) {
 		this.maxThumbnailSize = thumbnailSize;
 		this.tileCacheSizeBytes = tileCacheSizeBytes;
 		
-		// Because Guava uses integer weights, and we sometimes have *very* large images, we convert our size estimates KB
-		Weigher<RegionRequest, T> weigher = (var r, var t) -> (int)Long.min(Integer.MAX_VALUE, sizeEstimator.getApproxImageSize(t)/1024);
-		long maxWeight = Long.max(1, tileCacheSizeBytes / 1024);
-		// If concurrency > 1, the maximum size for an individual tile becomes maxWeight/concurrencyLevel
-		// This makes it more difficult to tune the cache size when working with large, non-pyramidal images
-		int concurrencyLevel = 1;
-		Cache<RegionRequest, T> originalCache = CacheBuilder.newBuilder()
-				.weigher(weigher)
-				.maximumWeight(maxWeight)
-				.softValues()
-				.concurrencyLevel(concurrencyLevel)
-//				.recordStats()
-				.removalListener(n -> {
-//					System.err.println(n.getKey() + " (" + cache.size() + ")");
-					if (n.getCause() == RemovalCause.COLLECTED)
-						logger.debug("Cached tile collected" + n.getKey() + " (cache size=" + cache.size()+")");
-					})
-				.build();
-		cache = originalCache.asMap();
-
-		Cache<RegionRequest, T> originalThumbnailCache = CacheBuilder.newBuilder()
-				.weigher(weigher)
-				.concurrencyLevel(1)
-				.maximumWeight(maxWeight)
-				.softValues()
-				.build();
-		
-		thumbnailCache = originalThumbnailCache.asMap();
-		
-//		cache = new DefaultRegionCache<>(sizeEstimator, tileCacheSizeBytes);
-//		thumbnailCache = new DefaultRegionCache<>(sizeEstimator, tileCacheSizeBytes/4);
+		cache = new DefaultRegionCache<>(sizeEstimator, tileCacheSizeBytes, offHeapCodec, offHeapCacheSizeBytes);
+		thumbnailCache = new DefaultRegionCache<>(sizeEstimator, tileCacheSizeBytes);
+	}
+	
+	protected AbstractImageRegionStore(final SizeEstimator<T> sizeEstimator, final int thumbnailSize, final long tileCacheSizeBytes) {
+		this(sizeEstimator, thumbnailSize, tileCacheSizeBytes, null, 0L);
 	}
 
 	
 	protected AbstractImageRegionStore(final SizeEstimator<T> sizeEstimator, final long tileCacheSizeBytes) {
 		this(sizeEstimator, DEFAULT_THUMBNAIL_WIDTH, tileCacheSizeBytes);
 	}
+	
+	/**
+	 * Get a snapshot of the hit, miss and eviction counts for the tile cache.
+	 * @return
+	 */
+	public RegionCacheStatistics getCacheStatistics() {
+		return ((DefaultRegionCache<T>)cache).getStatistics();
+	}
 
 	/**
 	 * Get the tile cache size, in bytes.
@@ -221,6 +203,32 @@ abstract class AbstractImageRegionStore<T> implements ImageRegionStore<T> {
 		registerRequest(tileListener, server, AwtTools.getBounds(region), downsampleFactor, zPosition, tPosition);
 	}
 	
+	/**
+	 * Request tiles speculatively, because they are expected to be needed soon (e.g. based upon the motion of a viewer).
+	 * <p>
+	 * Speculative requests have a lower priority than all other requests, and use at most half of the threads available 
+	 * for fetching tiles. Each call replaces any previous speculative request from the same owner. 
+	 * Tiles requested previously that are no longer required are cancelled, unless they are needed for display in the meantime.
+	 * 
+	 * @param owner the object making the request (e.g. a viewer)
+	 * @param server the server from which tiles should be requested
+	 * @param regions the regions to prefetch, in order of priority; each is split into tiles at its own downsample. 
+	 *                An empty list cancels any outstanding requests for the owner.
+	 * @see #getPrefetchStatistics()
+	 */
+	public void prefetchTiles(final Object owner, final ImageServer<T> server, final List<RegionRequest> regions) {
+		manager.registerPrefetch(owner, server, regions);
+	}
+	
+	/**
+	 * Get a snapshot of the statistics for speculative tile requests, including how often they were subsequently needed.
+	 * @return
+	 * @see #prefetchTiles(Object, ImageServer, List)
+	 */
+	public PrefetchStatistics getPrefetchStatistics() {
+		return manager.getPrefetchStatistics();
+	}
+	
 	
 	/* (non-Javadoc)
 	 * @see qupath.lib.images.stores.ImageRegionStore#addTileListener(qupath.lib.images.stores.TileListener)
@@ -346,6 +354,7 @@ abstract class AbstractImageRegionStore<T> implements ImageRegionStore<T> {
 	 * @return
 	 */
 	protected synchronized Object requestImageTile(final ImageServer<T> server, final RegionRequest request, final Map<RegionRequest, T> cache, final boolean ensureTileReturned) {
+		manager.tileRequested(request);
 		T img = cache.get(request);
 		if (img != null)
 			return img;
@@ -536,6 +545,12 @@ abstract class AbstractImageRegionStore<T> implements ImageRegionStore<T> {
 	class TileRequestManager {
 		
 		final static int MAX_Z_SEPARATION = 10;
+		
+		/**
+		 * Maximum number of prefetched tiles to remember when checking if they were subsequently needed.
+		 */
+		final static int MAX_PREFETCHED_TILES = 4096;
+		
 		private List<TileRequestCollection<T>> list = new ArrayList<>();
 		
 		private TileRequestComparator<T> comparator = new TileRequestComparator<>();
@@ -543,9 +558,26 @@ abstract class AbstractImageRegionStore<T> implements ImageRegionStore<T> {
 		private int busyThreads = 0;
 		
 		private List<TileWorker<T>> requestedWorkers = new ArrayList<>();
+		
+		// Speculative requests, and the workers currently charged with fulfilling them
+		private Map<Object, PrefetchRequest<T>> prefetchRequests = new LinkedHashMap<>();
+		private Map<RegionRequest, TileWorker<T>> prefetchWorkers = new HashMap<>();
+		private int maxPrefetchThreads;
+		private int busyPrefetchThreads = 0;
+		
+		// Prefetched tiles that have not (yet) been needed
+		@SuppressWarnings("serial")
+		private Set<RegionRequest> prefetchedTiles = Collections.newSetFromMap(new LinkedHashMap<>() {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<RegionRequest, Boolean> eldest) {
+				return size() > MAX_PREFETCHED_TILES;
+			}
+		});
+		private long prefetchRequestedCount, prefetchCompletedCount, prefetchCancelledCount, prefetchHitCount;
 				
 		TileRequestManager(final int nThreads) {
 			this.nThreads = nThreads;
+			this.maxPrefetchThreads = Math.max(1, nThreads / 2);
 		}
 		
 		
@@ -588,39 +620,112 @@ abstract class AbstractImageRegionStore<T> implements ImageRegionStore<T> {
 		
 		
 		synchronized void assignTasks() {
-			if (list.isEmpty())
-				return;
-			int ind = 0;
-			TileRequestCollection<T> temp = list.get(ind);
-			while (busyThreads < nThreads && !list.isEmpty()) {
-				if (!temp.hasMoreTiles()) {
-					ind++;
-					if (ind < list.size())
-						temp = list.get(ind);
-					else
-						break;
-//					list.remove(temp);
-					continue;
+			if (!list.isEmpty()) {
+				int ind = 0;
+				TileRequestCollection<T> temp = list.get(ind);
+				while (busyThreads < nThreads && !list.isEmpty()) {
+					if (!temp.hasMoreTiles()) {
+						ind++;
+						if (ind < list.size())
+							temp = list.get(ind);
+						else
+							break;
+//						list.remove(temp);
+						continue;
+					}
+					RegionRequest request = temp.nextTileRequest();
+					if (cache.containsKey(request) || waitingMap.containsKey(request))
+						continue;
+					
+					submitWorker(temp.server, request);
 				}
-				RegionRequest request = temp.nextTileRequest();
-				if (cache.containsKey(request) || waitingMap.containsKey(request))
+//				list.sort(comparator);
+				Collections.sort(list, comparator);
+			}
+			
+			// Use any spare capacity for speculative requests, keeping some threads free for tiles that are definitely needed
+			Iterator<PrefetchRequest<T>> iterPrefetch = prefetchRequests.values().iterator();
+			while (busyThreads < nThreads && busyPrefetchThreads < maxPrefetchThreads && iterPrefetch.hasNext()) {
+				PrefetchRequest<T> prefetch = iterPrefetch.next();
+				while (busyThreads < nThreads && busyPrefetchThreads < maxPrefetchThreads && prefetch.hasMoreTiles()) {
+					RegionRequest request = prefetch.nextTileRequest();
+					if (cache.containsKey(request) || waitingMap.containsKey(request))
+						continue;
+					
+					TileWorker<T> worker = submitWorker(prefetch.server, request);
+					prefetchWorkers.put(request, worker);
+					busyPrefetchThreads++;
+					prefetchRequestedCount++;
+				}
+			}
+		}
+		
+		private TileWorker<T> submitWorker(final ImageServer<T> server, final RegionRequest request) {
+			TileWorker<T> worker = createTileWorker(server, request, cache, false);
+			waitingMap.put(request, worker);
+			if (server instanceof GeneratingImageServer) {
+				if (!poolLocal.isShutdown())
+					poolLocal.execute(worker);
+			} else {
+				if (!pool.isShutdown())
+					pool.execute(worker);
+			}
+//			worker.execute();
+			requestedWorkers.add(worker);
+			busyThreads++;
+			return worker;
+		}
+		
+		
+		synchronized void registerPrefetch(final Object owner, final ImageServer<T> server, final List<RegionRequest> regions) {
+			List<RegionRequest> tiles = new ArrayList<>();
+			if (server != null) {
+				for (RegionRequest region : regions)
+					tiles.addAll(ImageRegionStoreHelpers.getTilesToRequest(server, AwtTools.getBounds(region), region.getDownsample(), region.getZ(), region.getT(), null));
+			}
+			if (tiles.isEmpty())
+				prefetchRequests.remove(owner);
+			else
+				prefetchRequests.put(owner, new PrefetchRequest<>(server, tiles));
+			
+			// Cancel speculative requests that are no longer required by any owner
+			Set<RegionRequest> required = new HashSet<>();
+			for (PrefetchRequest<T> prefetch : prefetchRequests.values())
+				required.addAll(prefetch.requiredTiles);
+			for (Entry<RegionRequest, TileWorker<T>> entry : new ArrayList<>(prefetchWorkers.entrySet())) {
+				RegionRequest request = entry.getKey();
+				if (required.contains(request))
 					continue;
-				
-				TileWorker<T> worker = createTileWorker(temp.server, request, cache, false);
-				waitingMap.put(request, worker);
-				if (temp.server instanceof GeneratingImageServer) {
-					if (!poolLocal.isShutdown())
-						poolLocal.execute(worker);
-				} else {
-					if (!pool.isShutdown())
-						pool.execute(worker);
+				TileWorker<T> worker = entry.getValue();
+				// Workers that are already running can't be cancelled, and continue to occupy a thread until taskCompleted is called
+				// (which may already have happened if cancellation succeeded)
+				if (worker.cancel(false)) {
+					waitingMap.remove(request, worker);
+					if (prefetchWorkers.remove(request, worker))
+						busyPrefetchThreads--;
+					prefetchCancelledCount++;
 				}
-//				worker.execute();
-				requestedWorkers.add(worker);
-				busyThreads++;
 			}
-//			list.sort(comparator);
-			Collections.sort(list, comparator);
+			assignTasks();
+		}
+		
+		
+		/**
+		 * Record that a tile is needed, so that we can tell whether prefetching it was worthwhile.
+		 * Any speculative request for the tile is no longer considered speculative.
+		 */
+		synchronized void tileRequested(final RegionRequest request) {
+			if (prefetchedTiles.remove(request)) {
+				prefetchHitCount++;
+			} else if (prefetchWorkers.remove(request) != null) {
+				busyPrefetchThreads--;
+				prefetchHitCount++;
+			}
+		}
+		
+		
+		synchronized PrefetchStatistics getPrefetchStatistics() {
+			return new PrefetchStatistics(prefetchRequestedCount, prefetchCompletedCount, prefetchCancelledCount, prefetchHitCount, prefetchWorkers.size());
 		}
 		
 		
@@ -628,6 +733,13 @@ abstract class AbstractImageRegionStore<T> implements ImageRegionStore<T> {
 			if (!requestedWorkers.remove(worker))
 				return;
 			busyThreads--;
+			if (prefetchWorkers.remove(worker.getRequest(), worker)) {
+				busyPrefetchThreads--;
+				if (!worker.isCancelled()) {
+					prefetchCompletedCount++;
+					prefetchedTiles.add(worker.getRequest());
+				}
+			}
 			logger.trace("Number of busy threads: " + busyThreads);
 //			list.sort(comparator);
 			Collections.sort(list, comparator);
@@ -722,6 +834,34 @@ abstract class AbstractImageRegionStore<T> implements ImageRegionStore<T> {
 	}
 	
 	
+	/**
+	 * Tiles requested speculatively by a single owner.
+	 */
+	static class PrefetchRequest<T> {
+		
+		private ImageServer<T> server;
+		private List<RegionRequest> tileRequests;
+		private Set<RegionRequest> requiredTiles;
+		
+		PrefetchRequest(final ImageServer<T> server, final List<RegionRequest> tileRequests) {
+			this.server = server;
+			this.requiredTiles = new HashSet<>(tileRequests);
+			// Tiles are taken from the end of the list, so reverse to respect the requested priority
+			this.tileRequests = new ArrayList<>(tileRequests);
+			Collections.reverse(this.tileRequests);
+		}
+		
+		public boolean hasMoreTiles() {
+			return !tileRequests.isEmpty();
+		}
+		
+		public RegionRequest nextTileRequest() {
+			return tileRequests.remove(tileRequests.size() - 1);
+		}
+		
+	}
+	
+	
 	static class TileRequestComparator<T> implements Comparator<TileRequestCollection<T>> {
 
 		
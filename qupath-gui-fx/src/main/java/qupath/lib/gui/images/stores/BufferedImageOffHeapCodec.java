@@ -0,0 +1,211 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.lib.gui.images.stores;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferDouble;
+import java.awt.image.DataBufferFloat;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferShort;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Hashtable;
+
+/**
+ * {@link OffHeapCodec} that copies the pixels of a {@link BufferedImage} into a direct {@link ByteBuffer}.
+ * <p>
+ * Only the pixel data is moved off the heap; the (small) color and sample models are retained so that 
+ * an equivalent image can be recreated.
+ * Images with child rasters are not supported.
+ *
+ */
+class BufferedImageOffHeapCodec implements OffHeapCodec<BufferedImage> {
+
+	@Override
+	public Entry<BufferedImage> encode(BufferedImage img) {
+		var raster = img.getRaster();
+		if (raster.getParent() != null || raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0)
+			return null;
+		
+		var db = raster.getDataBuffer();
+		int nBanks = db.getNumBanks();
+		int bankLength = getBankLength(db, 0);
+		for (int b = 1; b < nBanks; b++) {
+			if (getBankLength(db, b) != bankLength)
+				return null;
+		}
+		int bytesPerElement = DataBuffer.getDataTypeSize(db.getDataType()) / 8;
+		long nBytes = (long)bankLength * nBanks * bytesPerElement;
+		if (nBytes > Integer.MAX_VALUE)
+			return null;
+		
+		var buffer = ByteBuffer.allocateDirect((int)nBytes).order(ByteOrder.nativeOrder());
+		for (int b = 0; b < nBanks; b++) {
+			switch (db.getDataType()) {
+			case DataBuffer.TYPE_BYTE:
+				buffer.put(((DataBufferByte)db).getData(b));
+				break;
+			case DataBuffer.TYPE_USHORT:
+				buffer.asShortBuffer().put(((DataBufferUShort)db).getData(b));
+				break;
+			case DataBuffer.TYPE_SHORT:
+				buffer.asShortBuffer().put(((DataBufferShort)db).getData(b));
+				break;
+			case DataBuffer.TYPE_INT:
+				buffer.asIntBuffer().put(((DataBufferInt)db).getData(b));
+				break;
+			case DataBuffer.TYPE_FLOAT:
+				buffer.asFloatBuffer().put(((DataBufferFloat)db).getData(b));
+				break;
+			case DataBuffer.TYPE_DOUBLE:
+				buffer.asDoubleBuffer().put(((DataBufferDouble)db).getData(b));
+				break;
+			default:
+				return null;
+			}
+			if (db.getDataType() != DataBuffer.TYPE_BYTE)
+				buffer.position(buffer.position() + bankLength * bytesPerElement);
+		}
+		buffer.flip();
+		
+		Hashtable<String, Object> properties = null;
+		var names = img.getPropertyNames();
+		if (names != null) {
+			properties = new Hashtable<>();
+			for (var name : names)
+				properties.put(name, img.getProperty(name));
+		}
+		return new BufferedImageEntry(buffer, db.getDataType(), nBanks, bankLength, db.getSize(), db.getOffsets(),
+				img.getColorModel(), raster.getSampleModel(), img.isAlphaPremultiplied(), properties);
+	}
+	
+	private static int getBankLength(DataBuffer db, int bank) {
+		switch (db.getDataType()) {
+		case DataBuffer.TYPE_BYTE:
+			return ((DataBufferByte)db).getData(bank).length;
+		case DataBuffer.TYPE_USHORT:
+			return ((DataBufferUShort)db).getData(bank).length;
+		case DataBuffer.TYPE_SHORT:
+			return ((DataBufferShort)db).getData(bank).length;
+		case DataBuffer.TYPE_INT:
+			return ((DataBufferInt)db).getData(bank).length;
+		case DataBuffer.TYPE_FLOAT:
+			return ((DataBufferFloat)db).getData(bank).length;
+		case DataBuffer.TYPE_DOUBLE:
+			return ((DataBufferDouble)db).getData(bank).length;
+		default:
+			return -1;
+		}
+	}
+	
+	
+	private static class BufferedImageEntry implements Entry<BufferedImage> {
+		
+		private final ByteBuffer buffer;
+		private final int dataType;
+		private final int nBanks;
+		private final int bankLength;
+		private final int size;
+		private final int[] offsets;
+		private final ColorModel colorModel;
+		private final SampleModel sampleModel;
+		private final boolean alphaPremultiplied;
+		private final Hashtable<String, Object> properties;
+		
+		BufferedImageEntry(ByteBuffer buffer, int dataType, int nBanks, int bankLength, int size, int[] offsets,
+				ColorModel colorModel, SampleModel sampleModel, boolean alphaPremultiplied, Hashtable<String, Object> properties) {
+			this.buffer = buffer;
+			this.dataType = dataType;
+			this.nBanks = nBanks;
+			this.bankLength = bankLength;
+			this.size = size;
+			this.offsets = offsets;
+			this.colorModel = colorModel;
+			this.sampleModel = sampleModel;
+			this.alphaPremultiplied = alphaPremultiplied;
+			this.properties = properties;
+		}
+
+		@Override
+		public BufferedImage decode() {
+			// Use a duplicate, so that concurrent calls don't interfere with one another's positions
+			var buf = buffer.duplicate().order(buffer.order());
+			DataBuffer db;
+			switch (dataType) {
+			case DataBuffer.TYPE_BYTE:
+				var bytes = new byte[nBanks][bankLength];
+				for (var bank : bytes)
+					buf.get(bank);
+				db = new DataBufferByte(bytes, size, offsets);
+				break;
+			case DataBuffer.TYPE_USHORT:
+				var ushorts = new short[nBanks][bankLength];
+				for (int b = 0; b < nBanks; b++)
+					buf.position(b * bankLength * 2).asShortBuffer().get(ushorts[b]);
+				db = new DataBufferUShort(ushorts, size, offsets);
+				break;
+			case DataBuffer.TYPE_SHORT:
+				var shorts = new short[nBanks][bankLength];
+				for (int b = 0; b < nBanks; b++)
+					buf.position(b * bankLength * 2).asShortBuffer().get(shorts[b]);
+				db = new DataBufferShort(shorts, size, offsets);
+				break;
+			case DataBuffer.TYPE_INT:
+				var ints = new int[nBanks][bankLength];
+				for (int b = 0; b < nBanks; b++)
+					buf.position(b * bankLength * 4).asIntBuffer().get(ints[b]);
+				db = new DataBufferInt(ints, size, offsets);
+				break;
+			case DataBuffer.TYPE_FLOAT:
+				var floats = new float[nBanks][bankLength];
+				for (int b = 0; b < nBanks; b++)
+					buf.position(b * bankLength * 4).asFloatBuffer().get(floats[b]);
+				db = new DataBufferFloat(floats, size, offsets);
+				break;
+			case DataBuffer.TYPE_DOUBLE:
+				var doubles = new double[nBanks][bankLength];
+				for (int b = 0; b < nBanks; b++)
+					buf.position(b * bankLength * 8).asDoubleBuffer().get(doubles[b]);
+				db = new DataBufferDouble(doubles, size, offsets);
+				break;
+			default:
+				throw new IllegalArgumentException("Unsupported data type " + dataType);
+			}
+			var raster = Raster.createWritableRaster(sampleModel, db, null);
+			return new BufferedImage(colorModel, raster, alphaPremultiplied, properties);
+		}
+
+		@Override
+		public long getSizeBytes() {
+			return buffer.capacity();
+		}
+		
+	}
+
+}
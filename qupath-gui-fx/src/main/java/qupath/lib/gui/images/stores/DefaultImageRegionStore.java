@@ -33,9 +33,15 @@ import java.awt.image.ImageObserver;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -43,6 +49,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import qupath.lib.awt.common.AwtTools;
+import qupath.lib.common.ThreadTools;
 import qupath.lib.images.servers.ImageServer;
 import qupath.lib.images.servers.ImageServerMetadata.ChannelType;
 import qupath.lib.regions.RegionRequest;
@@ -61,13 +68,27 @@ public class DefaultImageRegionStore extends AbstractImageRegionStore<BufferedIm
 	private static final Logger logger = LoggerFactory.getLogger(DefaultImageRegionStore.class);
 	
 	private static boolean DEBUG_TILES = false;
+	
+	/**
+	 * Pool for applying display transforms in the background, so that painting only needs to draw tiles that are ready.
+	 */
+	private ExecutorService poolDisplay = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), ThreadTools.createThreadFactory("region-store-display-", true));
+	
+	/**
+	 * Outstanding display transform requests for each renderer.
+	 */
+	private Map<ImageRenderer, DisplayTransformTasks> displayTasks = new WeakHashMap<>();
 
-	DefaultImageRegionStore(int thumbnailWidth, long tileCacheSize) {
-		super(new BufferedImageSizeEstimator(), thumbnailWidth, tileCacheSize);
+	DefaultImageRegionStore(int thumbnailWidth, long tileCacheSize, long offHeapCacheSize) {
+		super(new BufferedImageSizeEstimator(), thumbnailWidth, tileCacheSize, new BufferedImageOffHeapCodec(), offHeapCacheSize);
+	}
+
+	DefaultImageRegionStore(long tileCacheSize, long offHeapCacheSize) {
+		this(DEFAULT_THUMBNAIL_WIDTH, tileCacheSize, offHeapCacheSize);
 	}
 
 	DefaultImageRegionStore(long tileCacheSize) {
-		this(DEFAULT_THUMBNAIL_WIDTH, tileCacheSize);
+		this(tileCacheSize, 0L);
 	}
 	
 
@@ -190,13 +211,29 @@ public class DefaultImageRegionStore extends AbstractImageRegionStore<BufferedIm
 //		System.out.println("Requesting tiles: " + requests.size());
 //		System.out.println("Requesting tiles " + server.getServerPath() + ": " + requests.size());
 
+		// If we're compositing channels, it's worthwhile to cache RGB tiles for so long as the ImageDisplay remains constant
+//		boolean useDisplayCache = imageDisplay != null && !server.isRGB() && server.nChannels() > 1;
+		boolean useDisplayCache = server != null && !server.isRGB() && server.nChannels() > 1 && server.getMetadata().getChannelType() != ChannelType.CLASSIFICATION;
+		long displayTimestamp = imageDisplay == null ? 0L : imageDisplay.getLastChangeTimestamp();
+		String displayCachePath = null;
+		if (useDisplayCache) {
+			if (imageDisplay == null)
+				displayCachePath = "RGB::" + server.getPath();
+			else if (server != null)
+				displayCachePath = server.getPath() + imageDisplay.getUniqueID();
+		}
+
 		// If we should be painting recursively, ending up with the thumbnail, do so
 		if (imgThumbnail != null) {
 			Rectangle missingBounds = null;
 			for (RegionRequest request : requests) {
 				// Load the image
 				BufferedImage img = getCachedTile(server, request);
-				if (img == null && !cache.containsKey(request)) {
+				boolean missing = img == null && !cache.containsKey(request);
+				// Tiles still awaiting display transforms are painted at a lower resolution in the meantime
+				if (!missing && img != null && useDisplayCache && imageDisplay != null)
+					missing = !cache.containsKey(RegionRequest.createInstance(displayCachePath, request.getDownsample(), request));
+				if (missing) {
 					if (missingBounds == null)
 						missingBounds = AwtTools.getBounds(request);
 					else
@@ -230,18 +267,6 @@ public class DefaultImageRegionStore extends AbstractImageRegionStore<BufferedIm
 			}
 		}
 
-		// If we're compositing channels, it's worthwhile to cache RGB tiles for so long as the ImageDisplay remains constant
-//		boolean useDisplayCache = imageDisplay != null && !server.isRGB() && server.nChannels() > 1;
-		boolean useDisplayCache = server != null && !server.isRGB() && server.nChannels() > 1 && server.getMetadata().getChannelType() != ChannelType.CLASSIFICATION;
-		long displayTimestamp = imageDisplay == null ? 0L : imageDisplay.getLastChangeTimestamp();
-		String displayCachePath = null;
-		if (useDisplayCache) {
-			if (imageDisplay == null)
-				displayCachePath = "RGB::" + server.getPath();
-			else if (server != null)
-				displayCachePath = server.getPath() + imageDisplay.getUniqueID();
-		}
-
 		// Loop through and draw whatever tiles we've got
 		BufferedImage imgTemp = null;
 		for (RegionRequest request : requests) {
@@ -264,9 +289,11 @@ public class DefaultImageRegionStore extends AbstractImageRegionStore<BufferedIm
 					RegionRequest requestCache = RegionRequest.createInstance(displayCachePath, request.getDownsample(), request);
 					imgTemp = cache.get(requestCache);
 					if (imgTemp == null) {
-						if (imageDisplay != null)
-							imgTemp = imageDisplay.applyTransforms(img, null);
-						else {
+						if (imageDisplay != null) {
+							// Apply transforms in the background; a lower-resolution version will already have been painted, if available
+							requestDisplayTransform(img, request, requestCache, imageDisplay, displayTimestamp);
+							continue;
+						} else {
 							imgTemp = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_ARGB);
 							Graphics2D g2d = imgTemp.createGraphics();
 							g2d.drawImage(img, 0, 0, null);
@@ -301,8 +328,74 @@ public class DefaultImageRegionStore extends AbstractImageRegionStore<BufferedIm
 	}
 
 
+	/**
+	 * Request that display transforms are applied to a tile in the background.
+	 * The result is added to the cache and listeners are notified when it is available.
+	 * Outstanding requests for the same renderer are cancelled if its display settings have since changed.
+	 * 
+	 * @param img the tile to transform
+	 * @param request the request for the (untransformed) tile
+	 * @param requestCache the request used to cache the transformed tile
+	 * @param imageDisplay the renderer used to apply the transforms
+	 * @param displayTimestamp the last change timestamp of the renderer when the request was made
+	 */
+	private synchronized void requestDisplayTransform(BufferedImage img, RegionRequest request, RegionRequest requestCache, ImageRenderer imageDisplay, long displayTimestamp) {
+		if (poolDisplay.isShutdown())
+			return;
+		DisplayTransformTasks tasks = displayTasks.computeIfAbsent(imageDisplay, r -> new DisplayTransformTasks());
+		if (tasks.timestamp != displayTimestamp) {
+			tasks.cancelAll();
+			tasks.timestamp = displayTimestamp;
+		}
+		if (tasks.pending.containsKey(requestCache))
+			return;
+		FutureTask<BufferedImage> task = new FutureTask<>(() -> {
+			try {
+				// Don't bother if the display has changed since the request was made
+				if (imageDisplay.getLastChangeTimestamp() != displayTimestamp)
+					return null;
+				BufferedImage imgTransformed = imageDisplay.applyTransforms(img, null);
+				// Only cache the result if we know we've still got the same display settings
+				if (imgTransformed == null || imageDisplay.getLastChangeTimestamp() != displayTimestamp)
+					return null;
+				cache.put(requestCache, imgTransformed);
+				List<TileListener<BufferedImage>> myTileListeners = new ArrayList<>(tileListeners);
+				for (TileListener<BufferedImage> listener : myTileListeners)
+					listener.tileAvailable(request.getPath(), request, imgTransformed);
+				return imgTransformed;
+			} finally {
+				displayTransformComplete(tasks, requestCache);
+			}
+		});
+		tasks.pending.put(requestCache, task);
+		poolDisplay.execute(task);
+	}
+	
+	private synchronized void displayTransformComplete(DisplayTransformTasks tasks, RegionRequest requestCache) {
+		tasks.pending.remove(requestCache);
+	}
+	
+	
+	/**
+	 * Display transforms requested for a single renderer with specific display settings.
+	 */
+	private static class DisplayTransformTasks {
+		
+		private long timestamp;
+		private Map<RegionRequest, FutureTask<BufferedImage>> pending = new HashMap<>();
+		
+		void cancelAll() {
+			for (FutureTask<BufferedImage> task : pending.values())
+				task.cancel(false);
+			pending.clear();
+		}
+		
+	}
+
+
 	@Override
 	public void close() {
+		poolDisplay.shutdownNow();
 		super.close();
 	}
 
@@ -23,187 +23,549 @@
 
 package qupath.lib.gui.images.stores;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import qupath.lib.regions.RegionRequest;
 
 /**
  * Map for storing image tiles, which automatically removes tiles that have not been accessed
- * in a while after it reaches a maximum number of tiles, or maximum memory consumption.
- * 
+ * in a while after it reaches a maximum memory consumption.
+ * <p>
  * The memory consumption estimate is based on the bit-depth of the image &amp; number of pixels it contains
  * (other overhead is ignored).
+ * <p>
+ * To reduce contention between the threads painting the viewer and those reading tiles, entries are 
+ * split across a fixed number of independently-locked segments. Each segment uses a segmented LRU policy: 
+ * new tiles enter a probationary queue, and are promoted to a protected queue only when they are requested again. 
+ * This means that a single pass over a large region (e.g. during export or a fast pan) cannot flush the tiles 
+ * that are being used repeatedly.
+ * <p>
+ * Optionally, tiles evicted from the heap can be retained in a second tier of direct buffers (outside the Java heap), 
+ * from where they will be restored on the next request. This requires an {@link OffHeapCodec} to convert the tiles.
+ * <p>
+ * Note that {@link #keySet()}, {@link #values()} and {@link #entrySet()} return snapshots of the tiles currently 
+ * held on the heap only.
  * 
  * @author Pete Bankhead
  *
  */
 class DefaultRegionCache<T> implements Map<RegionRequest, T> {
+	
+	private final static Logger logger = LoggerFactory.getLogger(DefaultRegionCache.class);
+	
+	/**
+	 * Number of segments; must be a power of 2.
+	 */
+	private static final int N_SEGMENTS = 16;
+	
+	/**
+	 * Proportion of each segment's share of memory that may be used by protected entries.
+	 */
+	private static final double PROTECTED_PROPORTION = 0.8;
 
-	private Map<RegionRequest, T> map;
 	private final SizeEstimator<T> sizeEstimator;
-	private int maxCapacity;
-	private int nonNullSize = 0;
-	private long maxMemoryBytes;
-	private long memoryBytes = 0; // Rely on synchronization to control access to map anyway, so no need for atomic...?
+	private final long maxMemoryBytes;
+	private final AtomicLong memoryBytes = new AtomicLong();
+	
+	private final Segment[] segments;
+	
+	// Counter used to order accesses across segments
+	private final AtomicLong ticker = new AtomicLong();
+	
+	private final OffHeapTier offHeap;
+	
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+	private final LongAdder evictionCount = new LongAdder();
+	private final LongAdder offHeapHitCount = new LongAdder();
+	
+	/**
+	 * Create a cache that stores tiles on the heap only.
+	 * @param sizeEstimator
+	 * @param maxSizeBytes
+	 */
+	DefaultRegionCache(final SizeEstimator<T> sizeEstimator, final long maxSizeBytes) {
+		this(sizeEstimator, maxSizeBytes, null, 0L);
+	}
 
-	DefaultRegionCache(final SizeEstimator<T> sizeEstimator, final int maxCapacity, final long maxSizeBytes) {
-		this.maxMemoryBytes = maxSizeBytes;
+	/**
+	 * Create a cache that stores tiles on the heap, and optionally also off the heap.
+	 * @param sizeEstimator
+	 * @param maxSizeBytes maximum size of tiles on the heap
+	 * @param codec codec used to move tiles off the heap; may be null if no off-heap tier should be used
+	 * @param maxOffHeapBytes maximum size of tiles off the heap; if &le; 0 no off-heap tier will be used
+	 */
+	DefaultRegionCache(final SizeEstimator<T> sizeEstimator, final long maxSizeBytes, final OffHeapCodec<T> codec, final long maxOffHeapBytes) {
 		this.sizeEstimator = sizeEstimator;
-		this.maxCapacity = maxCapacity;
-		map = new LinkedHashMap<RegionRequest, T>(maxCapacity+1, 2f, true) {
-
-			private static final long serialVersionUID = 1L;
-
-			@Override
-			protected synchronized boolean removeEldestEntry(Map.Entry<RegionRequest, T> eldest) {
-				// Remove if the map is full (in terms of numbers), or occupying too much memory
-				boolean doRemove = nonNullSize >= maxCapacity || memoryBytes > maxMemoryBytes;
-				if (doRemove) {
-					memoryBytes = memoryBytes - sizeEstimator.getApproxImageSize(eldest.getValue());
-					if (eldest.getValue() != null)
-						nonNullSize--;
-//					if (getApproxImageSize(eldest.getValue()) > 10784000)
-//											logger.info(String.format("REMOVED! %.2f MB remaining, %d images", memoryBytes/(1024. * 1024.), size()));
-				}
-				return doRemove;
-			}
-
-		}; // Should never have to resize the cache, so loadfactor is > 1
-		//			logger.info("Max capacity: " + maxCapacity);
-		//			logger.info("Max size: " + maxSizeBytes);
-		map = Collections.synchronizedMap(map);
-	}
-
-	DefaultRegionCache(final SizeEstimator<T> sizeEstimator, long maxSizeBytes) {
-		this(sizeEstimator, Math.max(200, (int)(maxSizeBytes / (256 * 256 * 4) + 10)), maxSizeBytes);
-	}
-
-//	synchronized void clearCacheForServer(ImageServer<?> server) {
-//		Iterator<Entry<RegionRequest, T>> iter = map.entrySet().iterator();
-//		while (iter.hasNext()) {
-//			Entry<RegionRequest, T> entry = iter.next();
-//			if (entry.getKey().getPath().equals(server.getPath())) {
-//				memoryBytes -= sizeEstimator.getApproxImageSize(entry.getValue());
-//				if (entry.getValue() != null)
-//					nonNullSize--;
-//				iter.remove();
-//			}
-//		}
-//	}
-//	
-//	
-//	synchronized void clearCacheForRequestOverlap(RegionRequest request) {
-//		Iterator<Entry<RegionRequest, T>> iter = map.entrySet().iterator();
-//		while (iter.hasNext()) {
-//			Entry<RegionRequest, T> entry = iter.next();
-//			if (request.overlapsRequest(entry.getKey())) {
-//				memoryBytes -= sizeEstimator.getApproxImageSize(entry.getValue());
-//				if (entry.getValue() != null)
-//					nonNullSize--;
-//				iter.remove();
-//			}
-//		}
-//	}
-
-	/* (non-Javadoc)
-	 * @see qupath.lib.images.stores.RegionCache#put(qupath.lib.regions.RegionRequest, T)
+		this.maxMemoryBytes = maxSizeBytes;
+		long maxProtectedBytes = (long)(maxSizeBytes / N_SEGMENTS * PROTECTED_PROPORTION);
+		@SuppressWarnings("unchecked")
+		Segment[] temp = new DefaultRegionCache.Segment[N_SEGMENTS];
+		segments = temp;
+		for (int i = 0; i < N_SEGMENTS; i++)
+			segments[i] = new Segment(maxProtectedBytes);
+		if (codec != null && maxOffHeapBytes > 0)
+			offHeap = new OffHeapTier(codec, maxOffHeapBytes);
+		else
+			offHeap = null;
+	}
+	
+	private Segment getSegment(Object key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return segments[h & (N_SEGMENTS - 1)];
+	}
+	
+	/**
+	 * Get a snapshot of the current cache statistics.
+	 * @return
 	 */
+	RegionCacheStatistics getStatistics() {
+		int nHeap = 0;
+		for (var segment : segments)
+			nHeap += segment.size();
+		return new RegionCacheStatistics(
+				hitCount.sum(),
+				missCount.sum(),
+				evictionCount.sum(),
+				offHeapHitCount.sum(),
+				nHeap,
+				memoryBytes.get(),
+				maxMemoryBytes,
+				offHeap == null ? 0 : offHeap.size(),
+				offHeap == null ? 0L : offHeap.getMemoryBytes(),
+				offHeap == null ? 0L : offHeap.maxBytes
+				);
+	}
+
 	@Override
-	public synchronized T put(RegionRequest request, T img) {
-		// Update the memory requirements
-		T imgPrevious = map.put(request, img);
-		if (img != null) {
-			memoryBytes += sizeEstimator.getApproxImageSize(img);
-			nonNullSize++;
-		}
-		if (imgPrevious != null) {
-			memoryBytes -= sizeEstimator.getApproxImageSize(imgPrevious);
-			nonNullSize--;
-		}
-//		System.err.println(
-//				String.format("Cache: %d entries, %.1f/%.1f GB, %.1f%%", map.size(),
-//						memoryBytes/1024.0/1024.0/1024.0,
-//						maxMemoryBytes/1024.0/1024.0/1024.0,
-//						memoryBytes * 100.0/maxMemoryBytes));
-//		else
-//			System.out.println("PUTTING NEW: " + nonNullSize + ", " + request + ", " + Thread.currentThread());
+	public T put(RegionRequest request, T img) {
+		Objects.requireNonNull(request, "Region request must not be null");
+		Objects.requireNonNull(img, "Cached value must not be null");
+		long size = sizeEstimator.getApproxImageSize(img);
+		if (offHeap != null)
+			offHeap.discard(request);
+		// Don't cache anything that could never fit
+		if (size > maxMemoryBytes) {
+			logger.debug("Tile too large to cache ({} bytes): {}", size, request);
+			return remove(request);
+		}
+		T imgPrevious = getSegment(request).put(request, img, size);
+		evictIfNeeded();
 		return imgPrevious;
 	}
+	
+	/**
+	 * Evict entries until the memory requirements are satisfied.
+	 * <p>
+	 * The victim is the least-recently-used probationary entry across all segments; 
+	 * protected entries are only evicted if there are no probationary entries remaining.
+	 */
+	private void evictIfNeeded() {
+		while (memoryBytes.get() > maxMemoryBytes) {
+			var victim = findEldestSegment(false);
+			if (victim == null)
+				victim = findEldestSegment(true);
+			if (victim == null || !victim.evictOne())
+				break;
+		}
+	}
+	
+	private Segment findEldestSegment(boolean isProtected) {
+		Segment eldest = null;
+		long minTick = Long.MAX_VALUE;
+		for (var segment : segments) {
+			long tick = segment.getEldestTick(isProtected);
+			if (tick < minTick) {
+				minTick = tick;
+				eldest = segment;
+			}
+		}
+		return eldest;
+	}
+	
+	/**
+	 * Called after an entry has been evicted from the heap.
+	 * @param key
+	 * @param value
+	 */
+	private void evicted(RegionRequest key, T value) {
+		evictionCount.increment();
+		if (offHeap != null)
+			offHeap.put(key, value);
+	}
 
 	@Override
-	public synchronized void clear() {
-		memoryBytes = 0;
-		nonNullSize = 0;
-		map.clear();
+	public void clear() {
+		for (var segment : segments)
+			segment.clear();
+		if (offHeap != null)
+			offHeap.clear();
 	}
 	
-	
 	@Override
 	public String toString() {
-		return String.format("Cache: %d (%d/%d non-null), %s", map.size(), nonNullSize, maxCapacity, map.toString());
+		return "Cache: " + getStatistics();
 	}
 
 	@Override
-	public synchronized int size() {
-		return map.size();
+	public int size() {
+		int n = 0;
+		for (var segment : segments)
+			n += segment.size();
+		if (offHeap != null)
+			n += offHeap.size();
+		return n;
 	}
 
 	@Override
-	public synchronized boolean isEmpty() {
-		return map.isEmpty();
+	public boolean isEmpty() {
+		return size() == 0;
 	}
 
 	@Override
-	public synchronized boolean containsKey(Object key) {
-		return map.containsKey(key);
+	public boolean containsKey(Object key) {
+		if (key == null)
+			return false;
+		return getSegment(key).containsKey(key) || (offHeap != null && offHeap.containsKey(key));
 	}
 
 	@Override
-	public synchronized boolean containsValue(Object value) {
-		return map.containsValue(value);
+	public boolean containsValue(Object value) {
+		for (var segment : segments) {
+			if (segment.containsValue(value))
+				return true;
+		}
+		return false;
 	}
 
 	@Override
-	public synchronized T get(Object key) {
-		return map.get(key);
+	public T get(Object key) {
+		if (key == null)
+			return null;
+		T value = getSegment(key).get(key);
+		if (value == null && offHeap != null && key instanceof RegionRequest) {
+			// Try to restore from the off-heap tier
+			var request = (RegionRequest)key;
+			value = offHeap.remove(request);
+			if (value != null) {
+				offHeapHitCount.increment();
+				getSegment(request).put(request, value, sizeEstimator.getApproxImageSize(value));
+				evictIfNeeded();
+			}
+		}
+		if (value == null)
+			missCount.increment();
+		else
+			hitCount.increment();
+		return value;
 	}
 
 	@Override
-	public synchronized T remove(Object key) {
-		// Update the memory requirements
-		T imgPrevious = map.remove(key);
-		if (imgPrevious != null) {
-			memoryBytes -= sizeEstimator.getApproxImageSize(imgPrevious);
-			nonNullSize--;
+	public T remove(Object key) {
+		if (key == null)
+			return null;
+		T imgPrevious = getSegment(key).remove(key);
+		if (offHeap != null && key instanceof RegionRequest) {
+			T imgOffHeap = offHeap.remove((RegionRequest)key);
+			if (imgPrevious == null)
+				imgPrevious = imgOffHeap;
 		}
 		return imgPrevious;
 	}
 
 	@Override
-	public synchronized void putAll(Map<? extends RegionRequest, ? extends T> m) {
+	public void putAll(Map<? extends RegionRequest, ? extends T> m) {
 		for (Entry<? extends RegionRequest, ? extends T> entry : m.entrySet()) {
 			put(entry.getKey(), entry.getValue());
 		}
 	}
 
 	@Override
-	public synchronized Set<RegionRequest> keySet() {
-		return map.keySet();
+	public Set<RegionRequest> keySet() {
+		Set<RegionRequest> set = new HashSet<>();
+		for (var segment : segments)
+			segment.addKeys(set);
+		return Collections.unmodifiableSet(set);
 	}
 
 	@Override
-	public synchronized Collection<T> values() {
-		return map.values();
+	public Collection<T> values() {
+		List<T> list = new ArrayList<>();
+		for (var segment : segments)
+			segment.addValues(list);
+		return Collections.unmodifiableList(list);
 	}
 
 	@Override
-	public synchronized Set<Entry<RegionRequest, T>> entrySet() {
-		return map.entrySet();
+	public Set<Entry<RegionRequest, T>> entrySet() {
+		Map<RegionRequest, T> map = new LinkedHashMap<>();
+		for (var segment : segments)
+			segment.addEntries(map);
+		return Collections.unmodifiableMap(map).entrySet();
 	}
 	
-
-}
\ No newline at end of file
+	
+	/**
+	 * A single segment of the cache, using a segmented LRU policy.
+	 * All access is synchronized on the segment itself.
+	 */
+	private class Segment {
+		
+		private final long maxProtectedBytes;
+		
+		private final LinkedHashMap<RegionRequest, SizedValue<T>> probation = new LinkedHashMap<>(16, 0.75f, true);
+		private final LinkedHashMap<RegionRequest, SizedValue<T>> protect = new LinkedHashMap<>(16, 0.75f, true);
+		private long protectedBytes = 0L;
+		
+		Segment(long maxProtectedBytes) {
+			this.maxProtectedBytes = maxProtectedBytes;
+		}
+		
+		synchronized T get(Object key) {
+			var entry = protect.get(key);
+			if (entry != null) {
+				entry.tick = ticker.incrementAndGet();
+				return entry.value;
+			}
+			// Promote from probation if requested again
+			entry = probation.remove(key);
+			if (entry == null)
+				return null;
+			entry.tick = ticker.incrementAndGet();
+			protect.put((RegionRequest)key, entry);
+			protectedBytes += entry.size;
+			// Demote from protected if needed
+			var iter = protect.entrySet().iterator();
+			while (protectedBytes > maxProtectedBytes && protect.size() > 1) {
+				var eldest = iter.next();
+				iter.remove();
+				protectedBytes -= eldest.getValue().size;
+				eldest.getValue().tick = ticker.incrementAndGet();
+				probation.put(eldest.getKey(), eldest.getValue());
+			}
+			return entry.value;
+		}
+		
+		synchronized T put(RegionRequest key, T value, long size) {
+			var previous = removeEntry(key);
+			probation.put(key, new SizedValue<>(value, size, ticker.incrementAndGet()));
+			memoryBytes.addAndGet(size);
+			return previous == null ? null : previous.value;
+		}
+		
+		synchronized T remove(Object key) {
+			var previous = removeEntry(key);
+			return previous == null ? null : previous.value;
+		}
+		
+		private SizedValue<T> removeEntry(Object key) {
+			var previous = probation.remove(key);
+			if (previous == null) {
+				previous = protect.remove(key);
+				if (previous != null)
+					protectedBytes -= previous.size;
+			}
+			if (previous != null)
+				memoryBytes.addAndGet(-previous.size);
+			return previous;
+		}
+		
+		/**
+		 * Get the access tick for the least-recently-used entry.
+		 * @param isProtected if true, check the protected entries; otherwise check the probationary entries
+		 * @return the tick, or {@code Long.MAX_VALUE} if there are no entries
+		 */
+		synchronized long getEldestTick(boolean isProtected) {
+			var map = isProtected ? protect : probation;
+			if (map.isEmpty())
+				return Long.MAX_VALUE;
+			return map.values().iterator().next().tick;
+		}
+		
+		/**
+		 * Evict the least-recently-used entry, preferring probationary entries.
+		 * @return true if an entry was evicted, false if the segment is empty
+		 */
+		boolean evictOne() {
+			RegionRequest key;
+			SizedValue<T> entry;
+			synchronized (this) {
+				boolean fromProtected = probation.isEmpty();
+				var map = fromProtected ? protect : probation;
+				if (map.isEmpty())
+					return false;
+				Iterator<Entry<RegionRequest, SizedValue<T>>> iter = map.entrySet().iterator();
+				var eldest = iter.next();
+				iter.remove();
+				key = eldest.getKey();
+				entry = eldest.getValue();
+				if (fromProtected)
+					protectedBytes -= entry.size;
+				memoryBytes.addAndGet(-entry.size);
+			}
+			// Notify outside the lock, since this may involve copying the data off-heap
+			evicted(key, entry.value);
+			return true;
+		}
+		
+		synchronized boolean containsKey(Object key) {
+			return probation.containsKey(key) || protect.containsKey(key);
+		}
+		
+		synchronized boolean containsValue(Object value) {
+			for (var entry : probation.values()) {
+				if (Objects.equals(entry.value, value))
+					return true;
+			}
+			for (var entry : protect.values()) {
+				if (Objects.equals(entry.value, value))
+					return true;
+			}
+			return false;
+		}
+		
+		synchronized int size() {
+			return probation.size() + protect.size();
+		}
+		
+		synchronized void clear() {
+			long bytes = 0L;
+			for (var entry : probation.values())
+				bytes += entry.size;
+			for (var entry : protect.values())
+				bytes += entry.size;
+			probation.clear();
+			protect.clear();
+			protectedBytes = 0L;
+			memoryBytes.addAndGet(-bytes);
+		}
+		
+		synchronized void addKeys(Collection<RegionRequest> keys) {
+			keys.addAll(probation.keySet());
+			keys.addAll(protect.keySet());
+		}
+		
+		synchronized void addValues(Collection<T> values) {
+			for (var entry : probation.values())
+				values.add(entry.value);
+			for (var entry : protect.values())
+				values.add(entry.value);
+		}
+		
+		synchronized void addEntries(Map<RegionRequest, T> map) {
+			for (var entry : probation.entrySet())
+				map.put(entry.getKey(), entry.getValue().value);
+			for (var entry : protect.entrySet())
+				map.put(entry.getKey(), entry.getValue().value);
+		}
+		
+	}
+	
+	
+	private static class SizedValue<T> {
+		
+		private final T value;
+		private final long size;
+		private long tick;
+		
+		SizedValue(T value, long size, long tick) {
+			this.value = value;
+			this.size = size;
+			this.tick = tick;
+		}
+		
+	}
+	
+	
+	/**
+	 * Second-level cache for tiles that have been evicted from the heap.
+	 * This is only accessed on heap misses and evictions, so uses a single lock.
+	 */
+	private class OffHeapTier {
+		
+		private final OffHeapCodec<T> codec;
+		private final long maxBytes;
+		private long memoryBytes = 0L;
+		private final LinkedHashMap<RegionRequest, OffHeapCodec.Entry<T>> map = new LinkedHashMap<>(16, 0.75f, true);
+		
+		OffHeapTier(OffHeapCodec<T> codec, long maxBytes) {
+			this.codec = codec;
+			this.maxBytes = maxBytes;
+		}
+		
+		void put(RegionRequest key, T value) {
+			OffHeapCodec.Entry<T> entry;
+			try {
+				entry = codec.encode(value);
+			} catch (OutOfMemoryError e) {
+				// Direct memory is only released when buffers are garbage collected, so we may temporarily run out
+				logger.debug("Unable to move tile off heap: {}", e.getLocalizedMessage());
+				return;
+			}
+			if (entry == null || entry.getSizeBytes() > maxBytes)
+				return;
+			synchronized (this) {
+				var previous = map.put(key, entry);
+				if (previous != null)
+					memoryBytes -= previous.getSizeBytes();
+				memoryBytes += entry.getSizeBytes();
+				var iter = map.values().iterator();
+				while (memoryBytes > maxBytes && iter.hasNext()) {
+					memoryBytes -= iter.next().getSizeBytes();
+					iter.remove();
+				}
+			}
+		}
+		
+		synchronized void discard(RegionRequest key) {
+			var entry = map.remove(key);
+			if (entry != null)
+				memoryBytes -= entry.getSizeBytes();
+		}
+		
+		T remove(RegionRequest key) {
+			OffHeapCodec.Entry<T> entry;
+			synchronized (this) {
+				entry = map.remove(key);
+				if (entry == null)
+					return null;
+				memoryBytes -= entry.getSizeBytes();
+			}
+			return entry.decode();
+		}
+		
+		synchronized boolean containsKey(Object key) {
+			return map.containsKey(key);
+		}
+		
+		synchronized int size() {
+			return map.size();
+		}
+		
+		synchronized long getMemoryBytes() {
+			return memoryBytes;
+		}
+		
+		synchronized void clear() {
+			map.clear();
+			memoryBytes = 0L;
+		}
+		
+	}
+	
+}
@@ -44,4 +44,29 @@ public class ImageRegionStoreFactory {
 		return new DefaultImageRegionStore(tileCacheSize);
 	}
 	
+	/**
+	 * Create an ImageRegionStore with an additional off-heap tier for tiles evicted from the main cache.
+	 * <p>
+	 * Off-heap tiles are stored in direct buffers, and so do not contribute to the Java heap. 
+	 * They are restored to the heap on request, which is much faster than rereading them from most image servers.
+	 * 
+	 * @param tileCacheSize maximum size of tiles stored on the heap, in bytes
+	 * @param offHeapCacheSize maximum size of tiles stored off the heap, in bytes; if &le; 0, no off-heap tier is used
+	 * @return
+	 */
+	public static DefaultImageRegionStore createImageRegionStore(final long tileCacheSize, final long offHeapCacheSize) {
+		return new DefaultImageRegionStore(tileCacheSize, offHeapCacheSize);
+	}
+	
+	/**
+	 * Get a snapshot of the hit, miss and eviction counts for the tile cache of an ImageRegionStore.
+	 * @param store
+	 * @return the statistics, or null if these are not available for the store
+	 */
+	public static RegionCacheStatistics getCacheStatistics(final ImageRegionStore<?> store) {
+		if (store instanceof AbstractImageRegionStore<?>)
+			return ((AbstractImageRegionStore<?>)store).getCacheStatistics();
+		return null;
+	}
+	
 }
@@ -0,0 +1,59 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.gui.images.stores;
+
+/**
+ * Helper interface to move cached values out of the Java heap (e.g. into direct buffers) and restore them again.
+ *
+ * @param <T>
+ */
+interface OffHeapCodec<T> {
+	
+	/**
+	 * Copy a value off the heap.
+	 * @param value the value to copy
+	 * @return an entry that can be used to restore the value, or null if the value is not supported
+	 */
+	public Entry<T> encode(T value);
+	
+	/**
+	 * A value that is stored off the heap.
+	 *
+	 * @param <T>
+	 */
+	public static interface Entry<T> {
+		
+		/**
+		 * Restore the value on the heap.
+		 * @return
+		 */
+		public T decode();
+		
+		/**
+		 * Get the number of bytes stored off the heap.
+		 * @return
+		 */
+		public long getSizeBytes();
+		
+	}
+
+}
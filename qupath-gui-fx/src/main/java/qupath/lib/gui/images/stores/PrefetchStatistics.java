@@ -0,0 +1,100 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.lib.gui.images.stores;
+
+/**
+ * Snapshot of the statistics for speculative (prefetched) tile requests.
+ *
+ */
+public class PrefetchStatistics {
+	
+	private final long requestedCount;
+	private final long completedCount;
+	private final long cancelledCount;
+	private final long hitCount;
+	private final int pendingCount;
+	
+	PrefetchStatistics(long requestedCount, long completedCount, long cancelledCount, long hitCount, int pendingCount) {
+		this.requestedCount = requestedCount;
+		this.completedCount = completedCount;
+		this.cancelledCount = cancelledCount;
+		this.hitCount = hitCount;
+		this.pendingCount = pendingCount;
+	}
+	
+	/**
+	 * Number of tiles that have been requested speculatively.
+	 * @return
+	 */
+	public long getRequestedCount() {
+		return requestedCount;
+	}
+	
+	/**
+	 * Number of speculative tile requests that completed.
+	 * @return
+	 */
+	public long getCompletedCount() {
+		return completedCount;
+	}
+	
+	/**
+	 * Number of speculative tile requests that were cancelled because they were no longer expected to be useful.
+	 * @return
+	 */
+	public long getCancelledCount() {
+		return cancelledCount;
+	}
+	
+	/**
+	 * Number of speculative tile requests for which the tile was subsequently needed for display.
+	 * @return
+	 */
+	public long getHitCount() {
+		return hitCount;
+	}
+	
+	/**
+	 * Number of speculative tile requests that are currently queued or running.
+	 * @return
+	 */
+	public int getPendingCount() {
+		return pendingCount;
+	}
+	
+	/**
+	 * Proportion of speculative tile requests that were subsequently needed for display, 
+	 * or {@code Double.NaN} if no tiles have been requested speculatively.
+	 * @return
+	 */
+	public double getHitRate() {
+		return requestedCount == 0 ? Double.NaN : (double)hitCount / requestedCount;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%d prefetched, %d completed, %d cancelled, %d pending, %d hits (%.1f%%)",
+				requestedCount, completedCount, cancelledCount, pendingCount, hitCount, getHitRate() * 100);
+	}
+
+}
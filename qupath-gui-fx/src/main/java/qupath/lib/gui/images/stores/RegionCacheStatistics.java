@@ -0,0 +1,155 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.lib.gui.images.stores;
+
+/**
+ * Snapshot of the statistics for a tile cache.
+ *
+ */
+public class RegionCacheStatistics {
+	
+	private final long hitCount;
+	private final long missCount;
+	private final long evictionCount;
+	private final long offHeapHitCount;
+	private final int heapTileCount;
+	private final long heapBytes;
+	private final long maxHeapBytes;
+	private final int offHeapTileCount;
+	private final long offHeapBytes;
+	private final long maxOffHeapBytes;
+	
+	RegionCacheStatistics(long hitCount, long missCount, long evictionCount, long offHeapHitCount,
+			int heapTileCount, long heapBytes, long maxHeapBytes,
+			int offHeapTileCount, long offHeapBytes, long maxOffHeapBytes) {
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.evictionCount = evictionCount;
+		this.offHeapHitCount = offHeapHitCount;
+		this.heapTileCount = heapTileCount;
+		this.heapBytes = heapBytes;
+		this.maxHeapBytes = maxHeapBytes;
+		this.offHeapTileCount = offHeapTileCount;
+		this.offHeapBytes = offHeapBytes;
+		this.maxOffHeapBytes = maxOffHeapBytes;
+	}
+	
+	/**
+	 * Number of requests that returned a cached tile (from either tier).
+	 * @return
+	 */
+	public long getHitCount() {
+		return hitCount;
+	}
+	
+	/**
+	 * Number of requests for which no cached tile was available.
+	 * @return
+	 */
+	public long getMissCount() {
+		return missCount;
+	}
+	
+	/**
+	 * Proportion of requests that returned a cached tile, or {@code Double.NaN} if there have been no requests.
+	 * @return
+	 */
+	public double getHitRate() {
+		long total = hitCount + missCount;
+		return total == 0 ? Double.NaN : (double)hitCount / total;
+	}
+	
+	/**
+	 * Number of tiles that have been evicted from the heap.
+	 * @return
+	 */
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+	
+	/**
+	 * Number of requests that were satisfied by restoring a tile from off the heap.
+	 * @return
+	 */
+	public long getOffHeapHitCount() {
+		return offHeapHitCount;
+	}
+	
+	/**
+	 * Number of tiles currently stored on the heap.
+	 * @return
+	 */
+	public int getHeapTileCount() {
+		return heapTileCount;
+	}
+	
+	/**
+	 * Estimated size of the tiles currently stored on the heap, in bytes.
+	 * @return
+	 */
+	public long getHeapBytes() {
+		return heapBytes;
+	}
+	
+	/**
+	 * Maximum size of the tiles that may be stored on the heap, in bytes.
+	 * @return
+	 */
+	public long getMaxHeapBytes() {
+		return maxHeapBytes;
+	}
+	
+	/**
+	 * Number of tiles currently stored off the heap.
+	 * @return
+	 */
+	public int getOffHeapTileCount() {
+		return offHeapTileCount;
+	}
+	
+	/**
+	 * Size of the tiles currently stored off the heap, in bytes.
+	 * @return
+	 */
+	public long getOffHeapBytes() {
+		return offHeapBytes;
+	}
+	
+	/**
+	 * Maximum size of the tiles that may be stored off the heap, in bytes (0 if there is no off-heap tier).
+	 * @return
+	 */
+	public long getMaxOffHeapBytes() {
+		return maxOffHeapBytes;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%d hits, %d misses (%.1f%%), %d evictions, %d off-heap hits; " +
+				"heap %d tiles (%.1f/%.1f MB), off-heap %d tiles (%.1f/%.1f MB)",
+				hitCount, missCount, getHitRate() * 100, evictionCount, offHeapHitCount,
+				heapTileCount, heapBytes / (1024.0 * 1024.0), maxHeapBytes / (1024.0 * 1024.0),
+				offHeapTileCount, offHeapBytes / (1024.0 * 1024.0), maxOffHeapBytes / (1024.0 * 1024.0));
+	}
+
+}
@@ -0,0 +1,347 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.lib.gui.measure;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.measurements.MeasurementColumnReader;
+import qupath.lib.objects.PathObject;
+
+/**
+ * A table data model that stores a snapshot of the numeric measurements of an {@link ObservableMeasurementTableData} 
+ * in primitive columns.
+ * <p>
+ * All numeric columns are computed once (in parallel), rather than creating a binding for each table cell. 
+ * Values are stored as {@code float} wherever this is possible without losing precision, and as {@code double} otherwise.
+ * String values (e.g. names and classifications) are cheap to compute and are generated lazily when requested.
+ * <p>
+ * The snapshot is not updated automatically when objects change: call {@link #refresh()} to recompute it. 
+ * By default, rows and columns, along with any filtering, continue to be defined by the wrapped model. 
+ * Alternatively, a fixed subset of objects and columns can be specified, so that only the values needed are computed.
+ */
+public class ColumnarMeasurementTableData implements PathTableData<PathObject> {
+	
+	private final static Logger logger = LoggerFactory.getLogger(ColumnarMeasurementTableData.class);
+	
+	private static final int CHUNK_SIZE = 4096;
+	
+	private final ObservableMeasurementTableData model;
+	private final List<PathObject> rows;
+	private final List<String> columns;
+	
+	private volatile Snapshot snapshot = Snapshot.EMPTY;
+	
+	/**
+	 * Create a columnar table for the objects and measurements of an existing model.
+	 * The numeric columns are computed immediately.
+	 * @param model
+	 */
+	public ColumnarMeasurementTableData(final ObservableMeasurementTableData model) {
+		this(model, true);
+	}
+	
+	/**
+	 * Create a columnar table for the objects and measurements of an existing model, optionally 
+	 * deferring the computation of the numeric columns.
+	 * <p>
+	 * If the columns are not computed immediately, values are requested from the model directly 
+	 * until {@link #refresh()} is called. This makes it possible to show a table immediately 
+	 * and compute the snapshot in a background thread.
+	 * @param model
+	 * @param computeColumns if true, compute the numeric columns immediately
+	 */
+	public ColumnarMeasurementTableData(final ObservableMeasurementTableData model, final boolean computeColumns) {
+		this.model = model;
+		this.rows = null;
+		this.columns = null;
+		if (computeColumns)
+			refresh();
+	}
+	
+	/**
+	 * Create a columnar table for specific objects and columns of an existing model.
+	 * Only the specified columns are computed, and only for the specified objects.
+	 * This is useful to process a large number of objects in smaller batches.
+	 * 
+	 * @param model the model used to define and compute the columns
+	 * @param pathObjects the objects to include, which need not be included in the model
+	 * @param columns the columns to include; names that are unknown to the model will be treated as stored measurements
+	 */
+	public ColumnarMeasurementTableData(final ObservableMeasurementTableData model, final Collection<? extends PathObject> pathObjects, final Collection<String> columns) {
+		this.model = model;
+		this.rows = Collections.unmodifiableList(new ArrayList<>(pathObjects));
+		this.columns = Collections.unmodifiableList(new ArrayList<>(columns));
+		refresh();
+	}
+	
+	/**
+	 * Get the model that defines the rows and columns of this table.
+	 * @return
+	 */
+	public ObservableMeasurementTableData getModel() {
+		return model;
+	}
+	
+	/**
+	 * Recompute all the numeric columns for the objects currently in the model.
+	 * <p>
+	 * This may be called from any thread, and it is preferable to avoid calling it from the 
+	 * JavaFX application thread when there are many objects.
+	 * Concurrent calls are serialized, so that the most recent call always determines the snapshot.
+	 */
+	public void refresh() {
+		long startTime = System.currentTimeMillis();
+		Snapshot snapshot;
+		synchronized (model) {
+			model.refreshEntries();
+			snapshot = new Snapshot(model, 
+					rows == null ? new ArrayList<>(model.getBackingListEntries()) : rows,
+					columns == null ? model.getAllNames() : columns);
+			this.snapshot = snapshot;
+		}
+		long endTime = System.currentTimeMillis();
+		logger.debug("Measurement table snapshot ({} rows, {} columns) created in {} ms", 
+				snapshot.rows.size(), snapshot.columns.size(), endTime - startTime);
+	}
+	
+	/**
+	 * Query whether a named measurement returns a {@link String} value only.
+	 * @param name
+	 * @return
+	 * @see ObservableMeasurementTableData#isStringMeasurement(String)
+	 */
+	public boolean isStringMeasurement(final String name) {
+		return model.isStringMeasurement(name);
+	}
+	
+	/**
+	 * Query whether a named measurement returns a numeric value.
+	 * @param name
+	 * @return
+	 * @see ObservableMeasurementTableData#isNumericMeasurement(String)
+	 */
+	public boolean isNumericMeasurement(final String name) {
+		return model.isNumericMeasurement(name);
+	}
+
+	@Override
+	public List<String> getAllNames() {
+		return columns == null ? model.getAllNames() : columns;
+	}
+
+	@Override
+	public String getStringValue(final PathObject item, final String name) {
+		return getStringValue(item, name, -1);
+	}
+
+	@Override
+	public String getStringValue(final PathObject item, final String name, final int decimalPlaces) {
+		var snapshot = this.snapshot;
+		var column = snapshot.columns.get(name);
+		int row = snapshot.getRow(item);
+		if (column == null || row < 0)
+			return model.getStringValue(item, name, decimalPlaces);
+		return model.formatNumericValue(name, column.get(row), decimalPlaces);
+	}
+
+	@Override
+	public List<String> getMeasurementNames() {
+		if (columns == null)
+			return model.getMeasurementNames();
+		var names = new ArrayList<>(model.getMeasurementNames());
+		names.retainAll(columns);
+		return names;
+	}
+
+	@Override
+	public double getNumericValue(final PathObject item, final String name) {
+		var snapshot = this.snapshot;
+		var column = snapshot.columns.get(name);
+		int row = snapshot.getRow(item);
+		if (column == null || row < 0)
+			return model.getNumericValue(item, name);
+		return column.get(row);
+	}
+
+	@Override
+	public double[] getDoubleValues(final String name) {
+		var snapshot = this.snapshot;
+		var column = snapshot.columns.get(name);
+		if (column == null)
+			return model.computeNumericValues(name, new ArrayList<>(getItems()));
+		var items = getItems();
+		double[] values = new double[items.size()];
+		for (int i = 0; i < values.length; i++) {
+			var item = items.get(i);
+			int row = snapshot.getRow(item);
+			values[i] = row < 0 ? model.getNumericValue(item, name) : column.get(row);
+		}
+		return values;
+	}
+
+	@Override
+	public List<PathObject> getItems() {
+		return rows == null ? model.getItems() : rows;
+	}
+	
+	
+	/**
+	 * Immutable snapshot of all numeric columns.
+	 */
+	private static class Snapshot {
+		
+		/**
+		 * Snapshot without any columns, so that all values are requested from the model
+		 */
+		private static final Snapshot EMPTY = new Snapshot();
+		
+		private final List<PathObject> rows;
+		private final Map<PathObject, Integer> rowMap;
+		private final Map<String, Column> columns;
+		
+		private Snapshot() {
+			this.rows = Collections.emptyList();
+			this.rowMap = Collections.emptyMap();
+			this.columns = Collections.emptyMap();
+		}
+		
+		Snapshot(final ObservableMeasurementTableData model, final List<PathObject> rows, final List<String> names) {
+			this.rows = Collections.unmodifiableList(rows);
+			this.rowMap = new HashMap<>((int)Math.ceil(rows.size() / 0.75) + 1);
+			for (int i = 0; i < rows.size(); i++)
+				rowMap.put(rows.get(i), i);
+			
+			// Compute the cached counts for derived measurements first, since these are shared between columns
+			model.prepareDerivedMeasurements(rows);
+			
+			List<String> storedNames = new ArrayList<>();
+			List<String> derivedNames = new ArrayList<>();
+			for (String name : names) {
+				if (model.isDerivedMeasurement(name)) {
+					if (model.isNumericMeasurement(name))
+						derivedNames.add(name);
+				} else
+					storedNames.add(name);
+			}
+			Map<String, Column> map = new ConcurrentHashMap<>();
+			
+			// Read stored measurements for chunks of rows in parallel, reading all columns in a single pass
+			int n = rows.size();
+			double[][] stored = new double[storedNames.size()][n];
+			if (!storedNames.isEmpty()) {
+				int nChunks = (n + CHUNK_SIZE - 1) / CHUNK_SIZE;
+				IntStream.range(0, nChunks).parallel().forEach(c -> {
+					var reader = MeasurementColumnReader.create(storedNames);
+					double[] buffer = new double[storedNames.size()];
+					int end = Math.min(n, (c + 1) * CHUNK_SIZE);
+					for (int row = c * CHUNK_SIZE; row < end; row++) {
+						reader.readValues(rows.get(row).getMeasurementList(), buffer, 0);
+						for (int col = 0; col < buffer.length; col++)
+							stored[col][row] = buffer[col];
+					}
+				});
+			}
+			IntStream.range(0, storedNames.size()).parallel().forEach(col -> {
+				map.put(storedNames.get(col), Column.create(stored[col]));
+				stored[col] = null;
+			});
+			
+			// Derived measurements are computed one column at a time, with columns in parallel
+			derivedNames.parallelStream().forEach(name -> map.put(name, Column.create(model.computeNumericValues(name, rows))));
+			this.columns = Collections.unmodifiableMap(map);
+		}
+		
+		int getRow(final PathObject pathObject) {
+			Integer row = rowMap.get(pathObject);
+			return row == null ? -1 : row.intValue();
+		}
+		
+	}
+	
+	
+	/**
+	 * A single column of numeric values.
+	 */
+	private static abstract class Column {
+		
+		abstract double get(int row);
+		
+		/**
+		 * Create a column from an array of values, using float storage if all values can be represented exactly.
+		 * @param values
+		 * @return
+		 */
+		static Column create(final double[] values) {
+			for (double v : values) {
+				if ((float)v != v && !Double.isNaN(v))
+					return new DoubleColumn(values);
+			}
+			float[] floats = new float[values.length];
+			for (int i = 0; i < values.length; i++)
+				floats[i] = (float)values[i];
+			return new FloatColumn(floats);
+		}
+		
+	}
+	
+	private static class FloatColumn extends Column {
+		
+		private final float[] values;
+		
+		FloatColumn(final float[] values) {
+			this.values = values;
+		}
+
+		@Override
+		double get(int row) {
+			return values[row];
+		}
+		
+	}
+	
+	private static class DoubleColumn extends Column {
+		
+		private final double[] values;
+		
+		DoubleColumn(final double[] values) {
+			this.values = values;
+		}
+
+		@Override
+		double get(int row) {
+			return values[row];
+		}
+		
+	}
+
+}
@@ -62,6 +62,7 @@ import qupath.lib.images.ImageData;
 import qupath.lib.images.servers.ImageServer;
 import qupath.lib.images.servers.ImageServerMetadata;
 import qupath.lib.images.servers.PixelCalibration;
+import qupath.lib.measurements.MeasurementColumnReader;
 import qupath.lib.objects.MetadataStore;
 import qupath.lib.objects.PathAnnotationObject;
 import qupath.lib.objects.PathDetectionObject;
@@ -337,7 +338,7 @@ public class ObservableMeasurementTableData implements PathTableData<PathObject>
 	public void refreshEntries() {
 		// Clear the cached map to force updates
 		if (manager != null)
-			manager.map.clear();
+			manager.clearCachedCounts();
 	}
 	
 	/**
@@ -390,6 +391,15 @@ public class ObservableMeasurementTableData implements PathTableData<PathObject>
 		return builderMap.get(name) instanceof StringMeasurementBuilder;
 	}
 	
+	/**
+	 * Query whether a named measurement is computed dynamically, rather than being read from the measurement list of each object.
+	 * @param name the measurement name
+	 * @return true if the measurement is computed dynamically (this includes all String measurements), false otherwise
+	 */
+	boolean isDerivedMeasurement(final String name) {
+		return builderMap.containsKey(name);
+	}
+	
 	/**
 	 * Query whether a named measurement returns a numeric value only.
 	 * @param name the measurement name
@@ -407,18 +417,71 @@ public class ObservableMeasurementTableData implements PathTableData<PathObject>
 	
 	@Override
 	public double[] getDoubleValues(final String column) {
-		double[] values = new double[filterList.size()];
-		if (builderMap.containsKey(column)) {
-			for (int i = 0; i < filterList.size(); i++)
-				values[i] = getNumericValue(filterList.get(i), column);
+		return computeNumericValues(column, new ArrayList<>(filterList));
+	}
+	
+	/**
+	 * Compute the values of a numeric column for all the specified objects.
+	 * <p>
+	 * Unlike {@link #getNumericValue(PathObject, String)}, this avoids creating a binding for each object 
+	 * and derived measurements (e.g. class counts, H-scores) are computed for all objects together.
+	 * This may be called from multiple threads, provided the measurement list is not updated at the same time.
+	 * 
+	 * @param column
+	 * @param pathObjects
+	 * @return
+	 */
+	double[] computeNumericValues(final String column, final List<? extends PathObject> pathObjects) {
+		MeasurementBuilder<?> builder = builderMap.get(column);
+		if (builder == null) {
+			// Good news! We just need a regular measurement
+			double[] values = new double[pathObjects.size()];
+			var reader = MeasurementColumnReader.create(column);
+			for (int i = 0; i < values.length; i++)
+				reader.readValues(pathObjects.get(i).getMeasurementList(), values, i);
+			return values;
+		}
+		if (!(builder instanceof NumericMeasurementBuilder)) {
+			double[] values = new double[pathObjects.size()];
+			Arrays.fill(values, Double.NaN);
 			return values;
 		}
-		// Good news! We just need a regular measurement
-		for (int i = 0; i < filterList.size(); i++)
-			values[i] = filterList.get(i).getMeasurementList().getMeasurementValue(column);
+		double[] values = ((NumericMeasurementBuilder)builder).computeValues(pathObjects);
+		// Don't derive a measurement for a core marked as missing
+		for (int i = 0; i < values.length; i++) {
+			var pathObject = pathObjects.get(i);
+			if (pathObject instanceof TMACoreObject && ((TMACoreObject)pathObject).isMissing())
+				values[i] = Double.NaN;
+		}
 		return values;
 	}
 	
+	/**
+	 * Ensure any cached values required for derived measurements are available for the specified objects, 
+	 * computing them in parallel if necessary.
+	 * @param pathObjects
+	 */
+	void prepareDerivedMeasurements(final List<? extends PathObject> pathObjects) {
+		var manager = this.manager;
+		if (manager != null && manager.imageData != null && !manager.getMeasurementBuilders().isEmpty())
+			manager.getCounts(pathObjects);
+	}
+	
+	/**
+	 * Format a numeric value for a column in the same way as {@link #getStringValue(PathObject, String, int)}.
+	 * @param column
+	 * @param value
+	 * @param decimalPlaces
+	 * @return
+	 */
+	String formatNumericValue(final String column, final double value, final int decimalPlaces) {
+		if (builderMap.get(column) instanceof NumericMeasurementBuilder)
+			return NumericMeasurementBuilder.formatValue(value, decimalPlaces);
+		if (Double.isNaN(value))
+			return "NaN";
+		return GeneralTools.formatNumber(value, 4);
+	}
+	
 	@Override
 	public double getNumericValue(final PathObject pathObject, final String column) {
 		if (builderMap.containsKey(column)) {
@@ -568,7 +631,7 @@ public class ObservableMeasurementTableData implements PathTableData<PathObject>
 		void updateAvailableMeasurements() {
 //			parentIntensityClasses.clear();
 //			parentPositiveNegativeClasses.clear();
-			map.clear();
+			clearCachedCounts();
 			builders.clear();
 			if (imageData == null || imageData.getHierarchy() == null)
 				return;
@@ -659,6 +722,54 @@ public class ObservableMeasurementTableData implements PathTableData<PathObject>
 				updateAvailableMeasurements();
 			return builders;
 		}
+		
+		void clearCachedCounts() {
+			synchronized (map) {
+				map.clear();
+			}
+		}
+		
+		/**
+		 * Get the detection counts for a single object, using the cached value if available.
+		 * @param pathObject
+		 * @return
+		 */
+		DetectionPathClassCounts getCounts(final PathObject pathObject) {
+			synchronized (map) {
+				DetectionPathClassCounts counts = map.get(pathObject);
+				if (counts == null) {
+					counts = new DetectionPathClassCounts(imageData.getHierarchy(), pathObject);
+					map.put(pathObject, counts);
+				}
+				return counts;
+			}
+		}
+		
+		/**
+		 * Get the detection counts for many objects, computing any that are not already cached in parallel.
+		 * @param pathObjects
+		 * @return an array containing the counts for each object, in the same order as the input list
+		 */
+		DetectionPathClassCounts[] getCounts(final List<? extends PathObject> pathObjects) {
+			var counts = new DetectionPathClassCounts[pathObjects.size()];
+			List<Integer> missing = new ArrayList<>();
+			synchronized (map) {
+				for (int i = 0; i < counts.length; i++) {
+					counts[i] = map.get(pathObjects.get(i));
+					if (counts[i] == null)
+						missing.add(i);
+				}
+			}
+			if (!missing.isEmpty()) {
+				var hierarchy = imageData.getHierarchy();
+				missing.parallelStream().forEach(i -> counts[i] = new DetectionPathClassCounts(hierarchy, pathObjects.get(i)));
+				synchronized (map) {
+					for (int i : missing)
+						map.put(pathObjects.get(i), counts[i]);
+				}
+			}
+			return counts;
+		}
 
 		
 		
@@ -676,11 +787,7 @@ public class ObservableMeasurementTableData implements PathTableData<PathObject>
 
 			@Override
 			protected int computeValue() {
-				DetectionPathClassCounts counts = map.get(pathObject);
-				if (counts == null) {
-					counts = new DetectionPathClassCounts(imageData.getHierarchy(), pathObject);
-					map.put(pathObject, counts);
-				}
+				DetectionPathClassCounts counts = getCounts(pathObject);
 				if (baseClassification)
 					return counts.getCountForAncestor(pathClass);
 				else
@@ -718,11 +825,7 @@ public class ObservableMeasurementTableData implements PathTableData<PathObject>
 				if (pathObjectTemp == null || !(pathObjectTemp.isAnnotation() || pathObjectTemp.isRootObject()))
 					return Double.NaN;
 				
-				DetectionPathClassCounts counts = map.get(pathObjectTemp);
-				if (counts == null) {
-					counts = new DetectionPathClassCounts(imageData.getHierarchy(), pathObjectTemp);
-					map.put(pathObject, counts);
-				}
+				DetectionPathClassCounts counts = getCounts(pathObjectTemp);
 				int n = counts.getCountForAncestor(pathClass);
 				ROI roi = pathObjectTemp.getROI();
 				// For the root, we can measure density only for 2D images of a single time-point
@@ -757,11 +860,7 @@ public class ObservableMeasurementTableData implements PathTableData<PathObject>
 
 			@Override
 			protected double computeValue() {
-				DetectionPathClassCounts counts = map.get(pathObject);
-				if (counts == null) {
-					counts = new DetectionPathClassCounts(imageData.getHierarchy(), pathObject);
-					map.put(pathObject, counts);
-				}
+				DetectionPathClassCounts counts = getCounts(pathObject);
 				return counts.getHScore(pathClasses);
 			}
 			
@@ -782,11 +881,7 @@ public class ObservableMeasurementTableData implements PathTableData<PathObject>
 
 			@Override
 			protected double computeValue() {
-				DetectionPathClassCounts counts = map.get(pathObject);
-				if (counts == null) {
-					counts = new DetectionPathClassCounts(imageData.getHierarchy(), pathObject);
-					map.put(pathObject, counts);
-				}
+				DetectionPathClassCounts counts = getCounts(pathObject);
 				return counts.getAllredIntensity(minPositivePercentage.doubleValue() / 100, pathClasses);
 			}
 			
@@ -807,11 +902,7 @@ public class ObservableMeasurementTableData implements PathTableData<PathObject>
 
 			@Override
 			protected double computeValue() {
-				DetectionPathClassCounts counts = map.get(pathObject);
-				if (counts == null) {
-					counts = new DetectionPathClassCounts(imageData.getHierarchy(), pathObject);
-					map.put(pathObject, counts);
-				}
+				DetectionPathClassCounts counts = getCounts(pathObject);
 				return counts.getAllredProportion(minPositivePercentage.doubleValue() / 100, pathClasses);
 			}
 			
@@ -831,11 +922,7 @@ public class ObservableMeasurementTableData implements PathTableData<PathObject>
 
 			@Override
 			protected double computeValue() {
-				DetectionPathClassCounts counts = map.get(pathObject);
-				if (counts == null) {
-					counts = new DetectionPathClassCounts(imageData.getHierarchy(), pathObject);
-					map.put(pathObject, counts);
-				}
+				DetectionPathClassCounts counts = getCounts(pathObject);
 				return counts.getAllredScore(minPositivePercentage.doubleValue() / 100, pathClasses);
 			}
 			
@@ -854,11 +941,7 @@ public class ObservableMeasurementTableData implements PathTableData<PathObject>
 
 			@Override
 			protected double computeValue() {
-				DetectionPathClassCounts counts = map.get(pathObject);
-				if (counts == null) {
-					counts = new DetectionPathClassCounts(imageData.getHierarchy(), pathObject);
-					map.put(pathObject, counts);
-				}
+				DetectionPathClassCounts counts = getCounts(pathObject);
 				return counts.getPositivePercentage(pathClasses);
 			}
 			
@@ -895,6 +978,15 @@ public class ObservableMeasurementTableData implements PathTableData<PathObject>
 				return new ClassCountMeasurement(pathObject, pathClass, baseClassification);
 			}
 			
+			@Override
+			public double[] computeValues(final List<? extends PathObject> pathObjects) {
+				var counts = getCounts(pathObjects);
+				double[] values = new double[counts.length];
+				for (int i = 0; i < values.length; i++)
+					values[i] = baseClassification ? counts[i].getCountForAncestor(pathClass) : counts[i].getDirectCount(pathClass);
+				return values;
+			}
+			
 			@Override
 			public String toString() {
 				return getName();
@@ -956,6 +1048,11 @@ public class ObservableMeasurementTableData implements PathTableData<PathObject>
 				return new PositivePercentage(pathObject, parentClasses);
 			}
 			
+			@Override
+			public double[] computeValues(final List<? extends PathObject> pathObjects) {
+				return new IntensityTallies(getCounts(pathObjects), parentClasses).getPositivePercentages();
+			}
+			
 		}
 		
 		
@@ -1008,6 +1105,11 @@ public class ObservableMeasurementTableData implements PathTableData<PathObject>
 				return new HScore(pathObject, pathClasses);
 			}
 			
+			@Override
+			public double[] computeValues(final List<? extends PathObject> pathObjects) {
+				return new IntensityTallies(getCounts(pathObjects), pathClasses).getHScores();
+			}
+			
 		}
 		
 		
@@ -1035,6 +1137,11 @@ public class ObservableMeasurementTableData implements PathTableData<PathObject>
 				return new AllredIntensityScore(pathObject, PathPrefs.allredMinPercentagePositiveProperty(), pathClasses);
 			}
 			
+			@Override
+			public double[] computeValues(final List<? extends PathObject> pathObjects) {
+				return new IntensityTallies(getCounts(pathObjects), pathClasses).getAllredIntensityScores(PathPrefs.allredMinPercentagePositiveProperty().get() / 100);
+			}
+			
 		}
 		
 		class AllredProportionMeasurementBuilder extends NumericMeasurementBuilder {
@@ -1061,6 +1168,11 @@ public class ObservableMeasurementTableData implements PathTableData<PathObject>
 				return new AllredProportionScore(pathObject, PathPrefs.allredMinPercentagePositiveProperty(), pathClasses);
 			}
 			
+			@Override
+			public double[] computeValues(final List<? extends PathObject> pathObjects) {
+				return new IntensityTallies(getCounts(pathObjects), pathClasses).getAllredProportionScores(PathPrefs.allredMinPercentagePositiveProperty().get() / 100);
+			}
+			
 		}
 		
 		class AllredMeasurementBuilder extends NumericMeasurementBuilder {
@@ -1087,6 +1199,17 @@ public class ObservableMeasurementTableData implements PathTableData<PathObject>
 				return new AllredScore(pathObject, PathPrefs.allredMinPercentagePositiveProperty(), pathClasses);
 			}
 			
+			@Override
+			public double[] computeValues(final List<? extends PathObject> pathObjects) {
+				var tallies = new IntensityTallies(getCounts(pathObjects), pathClasses);
+				double minProportion = PathPrefs.allredMinPercentagePositiveProperty().get() / 100;
+				double[] values = tallies.getAllredProportionScores(minProportion);
+				double[] intensities = tallies.getAllredIntensityScores(minProportion);
+				for (int i = 0; i < values.length; i++)
+					values[i] += intensities[i];
+				return values;
+			}
+			
 		}
 		
 		
@@ -1182,6 +1305,11 @@ public class ObservableMeasurementTableData implements PathTableData<PathObject>
 			return String.format("Centroid %s %s", type, hasPixelSizeMicrons() ? GeneralTools.micrometerSymbol() : "px");
 		}
 
+		@Override
+		public double computeValue(final PathObject pathObject) {
+			return pathObject == null ? Double.NaN : getCentroid(pathObject.getROI());
+		}
+
 		public double getCentroid(ROI roi) {
 			if (roi == null || type == null)
 				return Double.NaN;
@@ -1347,8 +1475,26 @@ public class ObservableMeasurementTableData implements PathTableData<PathObject>
 			}
 		}
 		
+		/**
+		 * Compute values for many objects at once.
+		 * <p>
+		 * The default implementation calls {@link #computeValue(PathObject)} for each object in turn, 
+		 * but subclasses can override this to avoid creating a binding per object.
+		 * @param pathObjects
+		 * @return
+		 */
+		public double[] computeValues(final List<? extends PathObject> pathObjects) {
+			double[] values = new double[pathObjects.size()];
+			for (int i = 0; i < values.length; i++)
+				values[i] = computeValue(pathObjects.get(i));
+			return values;
+		}
+		
 		public String getStringValue(final PathObject pathObject, final int decimalPlaces) {
-			double val = computeValue(pathObject);
+			return formatValue(computeValue(pathObject), decimalPlaces);
+		}
+		
+		static String formatValue(final double val, final int decimalPlaces) {
 			if (Double.isNaN(val))
 				return "NaN";
 			if (decimalPlaces == 0)
@@ -1676,10 +1822,13 @@ public class ObservableMeasurementTableData implements PathTableData<PathObject>
 		
 		public int getAllredIntensity(final double minProportion, final PathClass... ancestors) {
 			int proportionScore = getAllredProportion(minProportion, ancestors);
+			return computeAllredIntensity(proportionScore, getOnePlus(ancestors), getTwoPlus(ancestors), getThreePlus(ancestors), getPositive(ancestors));
+		}
+		
+		static int computeAllredIntensity(final int proportionScore, final int onePlus, final int twoPlus, final int threePlus, final int positive) {
 			int intensityScore = 0;
 			if (proportionScore > 0) {
-				int nPositive = getPositive(ancestors);
-				double meanIntensity = (getOnePlus(ancestors) + getTwoPlus(ancestors)*2. + getThreePlus(ancestors)*3.) / nPositive;
+				double meanIntensity = (onePlus + twoPlus*2. + threePlus*3.) / positive;
 				if (meanIntensity > 7./3.)
 					intensityScore = 3;
 				else if (meanIntensity > 5./3.)
@@ -1691,8 +1840,11 @@ public class ObservableMeasurementTableData implements PathTableData<PathObject>
 		}
 		
 		public int getAllredProportion(final double minProportion, final PathClass... ancestors) {
+			return computeAllredProportion(getPositivePercentage(ancestors)/100.0, minProportion);
+		}
+		
+		static int computeAllredProportion(final double proportion, final double minProportion) {
 			// Compute Allred score
-			double proportion = getPositivePercentage(ancestors)/100.0;
 			if (proportion < minProportion)
 				return 0;
 			int proportionScore;
@@ -1736,6 +1888,71 @@ public class ObservableMeasurementTableData implements PathTableData<PathObject>
 
 	
 	
+	/**
+	 * Primitive arrays containing the number of negative, 1+, 2+, 3+ and positive detections for many objects, 
+	 * considering only descendants of the specified classes.
+	 * This makes it possible to compute scores for all objects together in simple loops.
+	 */
+	static class IntensityTallies {
+		
+		private final int n;
+		private final int[] negative;
+		private final int[] onePlus;
+		private final int[] twoPlus;
+		private final int[] threePlus;
+		private final int[] positive;
+		
+		IntensityTallies(final DetectionPathClassCounts[] counts, final PathClass... ancestors) {
+			n = counts.length;
+			negative = new int[n];
+			onePlus = new int[n];
+			twoPlus = new int[n];
+			threePlus = new int[n];
+			positive = new int[n];
+			for (int i = 0; i < n; i++) {
+				var c = counts[i];
+				negative[i] = c.getNegative(ancestors);
+				onePlus[i] = c.getOnePlus(ancestors);
+				twoPlus[i] = c.getTwoPlus(ancestors);
+				threePlus[i] = c.getThreePlus(ancestors);
+				positive[i] = c.getPositive(ancestors);
+			}
+		}
+		
+		double[] getHScores() {
+			double[] values = new double[n];
+			for (int i = 0; i < n; i++) {
+				double total = onePlus[i] + twoPlus[i] + threePlus[i] + negative[i];
+				values[i] = (onePlus[i] + twoPlus[i] * 2.0 + threePlus[i] * 3.0) / total * 100;
+			}
+			return values;
+		}
+		
+		double[] getPositivePercentages() {
+			double[] values = new double[n];
+			for (int i = 0; i < n; i++)
+				values[i] = (double)positive[i] / (positive[i] + negative[i]) * 100;
+			return values;
+		}
+		
+		double[] getAllredProportionScores(final double minProportion) {
+			double[] percentages = getPositivePercentages();
+			double[] values = new double[n];
+			for (int i = 0; i < n; i++)
+				values[i] = DetectionPathClassCounts.computeAllredProportion(percentages[i] / 100.0, minProportion);
+			return values;
+		}
+		
+		double[] getAllredIntensityScores(final double minProportion) {
+			double[] values = getAllredProportionScores(minProportion);
+			for (int i = 0; i < n; i++)
+				values[i] = DetectionPathClassCounts.computeAllredIntensity((int)values[i], onePlus[i], twoPlus[i], threePlus[i], positive[i]);
+			return values;
+		}
+		
+	}
+	
+	
 	static class PixelClassifierMeasurementBuilder extends NumericMeasurementBuilder {
 		
 		private PixelClassificationMeasurementManager manager;
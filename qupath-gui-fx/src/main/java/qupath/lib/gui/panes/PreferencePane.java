@@ -126,6 +126,22 @@ public class PreferencePane {
 				"\nA high value can improve performance (especially for multichannel images), but increases risk of out-of-memory errors." +
 				"\nChanges take effect when QuPath is restarted.");
 		
+		addPropertyPreference(PathPrefs.tileCacheOffHeapMBProperty(),
+				Integer.class,
+				"Off-heap tile cache (MB)",
+				category,
+				"Size of an additional tile cache stored outside the main Java memory, in MB (default is 0, i.e. no off-heap cache)." +
+				"\nTiles removed from the main cache are kept here, which can reduce rereading tiles for slow or remote images." +
+				"\nChanges take effect when QuPath is restarted.");
+		
+		addPropertyPreference(PathPrefs.persistentTileCacheMBProperty(),
+				Integer.class,
+				"Persistent tile cache (MB)",
+				category,
+				"Size of a tile cache stored on disk in the user directory, in MB (default is 0, i.e. no persistent cache)." +
+				"\nThis is used for images that are slow to read (e.g. from OMERO), so that tiles seen before don't need to be requested again in later sessions." +
+				"\nChanges take effect when QuPath is restarted.");
+		
 		addPropertyPreference(PathPrefs.showImageNameInTitleProperty(), Boolean.class,
 				"Show image name in window title",
 				category,
@@ -193,6 +209,19 @@ public class PreferencePane {
 			"TMA export downsample factor",
 			category,
 			"Amount to downsample TMA core images when exporting; higher downsample values give smaller image, choosing 1 exports cores at full-resolution (which may be slow)");
+		
+		addPropertyPreference(PathPrefs.useBinaryDataFormatProperty(), Boolean.class,
+			"Save data files in binary format",
+			category,
+			"Save data files in a binary format that is faster to read and write for images with very large numbers of objects." +
+			"\nFiles saved in this format cannot be opened by older versions of QuPath.");
+		
+		addPropertyPreference(PathPrefs.deferObjectLoadingProperty(), Boolean.class,
+			"Load detections on demand",
+			category,
+			"Only read detections from project data files when they are needed for the region being viewed." +
+			"\nThis can make opening images with very large numbers of detections much faster, and reduce memory use." +
+			"\nCommands that need all detections will still load them in full.");
 
 
 		/*
@@ -225,6 +254,14 @@ public class PreferencePane {
 				"Gamma value (display only)", category, 
 				"Set the gamma value applied to the image in the viewer for display - recommended to leave at default value of 1");
 		
+		addPropertyPreference(PathPrefs.viewerSharedPixelBufferProperty(), Boolean.class,
+				"Use shared pixel buffer", category, 
+				"Share pixels between the viewer and JavaFX to avoid copying the entire image on every repaint - turn this off if the viewer displays incorrectly");
+		
+		addPropertyPreference(PathPrefs.viewerPrefetchTilesProperty(), Boolean.class,
+				"Prefetch tiles", category, 
+				"Request tiles that are likely to be needed soon based upon recent panning and zooming - this can make navigation smoother, at the cost of reading more tiles");
+		
 		addPropertyPreference(PathPrefs.invertZSliderProperty(), Boolean.class,
 				"Invert z-position slider",
 				category,
@@ -46,6 +46,7 @@ import qupath.lib.gui.measure.ObservableMeasurementTableData;
 import qupath.lib.images.ImageData;
 import qupath.lib.objects.PathObject;
 import qupath.lib.objects.hierarchy.events.PathObjectHierarchyEvent;
+import qupath.lib.objects.hierarchy.events.PathObjectHierarchyEventFilter;
 import qupath.lib.objects.hierarchy.events.PathObjectHierarchyListener;
 import qupath.lib.objects.hierarchy.events.PathObjectSelectionListener;
 
@@ -163,6 +164,10 @@ public class SelectedMeasurementTableView implements PathObjectSelectionListener
 
 	@Override
 	public void hierarchyChanged(PathObjectHierarchyEvent event) {
+		if (!Platform.isFxApplicationThread()) {
+			Platform.runLater(() -> hierarchyChanged(event));
+			return;
+		}
 		// If still changing, only refresh the table to avoid expensive recomputations
 		if (event.isChanging())
 			tableMeasurements.refresh();
@@ -181,7 +186,7 @@ public class SelectedMeasurementTableView implements PathObjectSelectionListener
 		this.imageData = imageDataNew;
 		if (this.imageData != null) {
 			this.imageData.addPropertyChangeListener(this);
-			this.imageData.getHierarchy().addPathObjectListener(this);
+			this.imageData.getHierarchy().addDebouncedPathObjectListener(this, PathObjectHierarchyEventFilter.acceptAll(), 50);
 			this.imageData.getHierarchy().getSelectionModel().addPathObjectSelectionListener(this);
 		}
 		logger.trace("Image data set to {}", imageData);
@@ -532,6 +532,18 @@ public class PathPrefs {
 		return new File(userPath, "logs").getAbsolutePath();
 	}
 	
+	/**
+	 * Get the path to where the persistent tile cache should be stored. This depends upon {@link #userPathProperty()}.
+	 * @return
+	 * @see #persistentTileCacheMBProperty()
+	 */
+	public static String getPersistentTileCachePath() {
+		String userPath = getUserPath();
+		if (userPath == null)
+			return null;
+		return new File(new File(userPath, "cache"), "tiles").getAbsolutePath();
+	}
+	
 	
 	private static BooleanProperty runStartupScript = createPersistentPreference("runStartupScript", false);
 	
@@ -883,6 +895,56 @@ public class PathPrefs {
 	}
 	
 	
+	private static IntegerProperty tileCacheOffHeapMB = createPersistentPreference("tileCacheOffHeapMB", 0);
+	
+	/**
+	 * Requested size of the additional off-heap tile cache, in MB.
+	 * Tiles evicted from the main tile cache are retained here outside the Java heap. A value of 0 means no off-heap cache is used.
+	 * @return
+	 */
+	public static IntegerProperty tileCacheOffHeapMBProperty() {
+		return tileCacheOffHeapMB;
+	}
+	
+	
+	private static IntegerProperty persistentTileCacheMB = createPersistentPreference("persistentTileCacheMB", 0);
+	
+	/**
+	 * Requested size of the persistent (disk-based) tile cache, in MB.
+	 * This is used for tiles from images that are slow to read (e.g. from a remote server), and is stored in the user directory. 
+	 * A value of 0 means no persistent cache is used.
+	 * @return
+	 * @see #getPersistentTileCachePath()
+	 */
+	public static IntegerProperty persistentTileCacheMBProperty() {
+		return persistentTileCacheMB;
+	}
+	
+	
+	private static BooleanProperty useBinaryDataFormat = createPersistentPreference("useBinaryDataFormat", false);
+	
+	/**
+	 * Write data files using the binary format, which is faster to read and write for large numbers of objects 
+	 * but cannot be opened by older versions of QuPath.
+	 * @return
+	 */
+	public static BooleanProperty useBinaryDataFormatProperty() {
+		return useBinaryDataFormat;
+	}
+	
+	
+	private static BooleanProperty deferObjectLoading = createPersistentPreference("deferObjectLoading", false);
+	
+	/**
+	 * Load detections on demand when opening data files within a project, rather than reading them all at once.
+	 * This reduces memory use when working with images containing very large numbers of detections.
+	 * @return
+	 */
+	public static BooleanProperty deferObjectLoadingProperty() {
+		return deferObjectLoading;
+	}
+	
+	
 	private static BooleanProperty useCalibratedLocationString = createPersistentPreference("useCalibratedLocationString", true);
 	
 	/**
@@ -950,6 +1012,30 @@ public class PathPrefs {
 	}
 	
 	
+	private static BooleanProperty viewerSharedPixelBuffer = createPersistentPreference("viewerSharedPixelBuffer", true);
+
+	/**
+	 * Request that each viewer shares a single pixel buffer between Java2D and JavaFX, updating only the regions that have changed. 
+	 * If false, the entire image is copied for JavaFX on every repaint.
+	 * @return
+	 */
+	public static BooleanProperty viewerSharedPixelBufferProperty() {
+		return viewerSharedPixelBuffer;
+	}
+	
+	
+	private static BooleanProperty viewerPrefetchTiles = createPersistentPreference("viewerPrefetchTiles", true);
+
+	/**
+	 * Request that each viewer requests tiles in advance, based upon the recent panning and zooming. 
+	 * This can make navigation smoother, at the cost of reading some tiles that are never displayed.
+	 * @return
+	 */
+	public static BooleanProperty viewerPrefetchTilesProperty() {
+		return viewerPrefetchTiles;
+	}
+	
+	
 	private static IntegerProperty viewerBackgroundColor = createPersistentPreference("viewerBackgroundColor", ColorTools.makeRGB(0, 0, 0));
 	
 	/**
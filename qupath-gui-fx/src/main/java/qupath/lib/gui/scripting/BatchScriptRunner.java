@@ -0,0 +1,596 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.lib.gui.scripting;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.common.ThreadTools;
+import qupath.lib.gui.scripting.DefaultScriptEditor.PreparedScript;
+import qupath.lib.images.ImageData;
+import qupath.lib.projects.Project;
+import qupath.lib.projects.ProjectImageEntry;
+import qupath.lib.scripting.QP;
+
+/**
+ * Run a script for multiple images within a project, optionally processing several images in parallel.
+ * <p>
+ * Each image is read, scripted and (optionally) saved independently, using its own {@link ImageData} 
+ * and its own script bindings. If the {@link ScriptEngine} supports it, the script is compiled only once 
+ * and the compiled script reused for every image; otherwise, images are processed one at a time.
+ * <p>
+ * The number of images open at any one time is limited both by the number of threads and by a memory budget.
+ * The memory needed for each image is estimated from the size of its saved data.
+ */
+public class BatchScriptRunner {
+	
+	private final static Logger logger = LoggerFactory.getLogger(BatchScriptRunner.class);
+	
+	/**
+	 * Minimum memory to reserve for each open image.
+	 */
+	private static final long MIN_IMAGE_MEMORY = 64L * 1024L * 1024L;
+	
+	/**
+	 * Approximate ratio between the memory required for an open image and the size of its data file.
+	 */
+	private static final int DATA_MEMORY_FACTOR = 10;
+	
+	private final ScriptEngine engine;
+	private final String script;
+	private final Project<BufferedImage> project;
+	private final List<ProjectImageEntry<BufferedImage>> entries;
+	private final boolean importDefaultMethods;
+	private final boolean doSave;
+	private final int nThreads;
+	private final long memoryBudget;
+	private final Supplier<ScriptContext> contextSupplier;
+	private final Consumer<ImageResult> listener;
+	
+	private volatile boolean cancelled = false;
+	
+	private BatchScriptRunner(Builder builder) {
+		this.engine = builder.engine;
+		this.script = builder.script;
+		this.project = builder.project;
+		this.entries = new ArrayList<>(builder.entries);
+		this.importDefaultMethods = builder.importDefaultMethods;
+		this.doSave = builder.doSave;
+		this.nThreads = builder.nThreads;
+		this.memoryBudget = builder.memoryBudget;
+		this.contextSupplier = builder.contextSupplier;
+		this.listener = builder.listener;
+	}
+	
+	/**
+	 * Create a builder to run a script for images in a project.
+	 * @param engine the engine used to evaluate the script
+	 * @param script the script
+	 * @return
+	 */
+	public static Builder builder(ScriptEngine engine, String script) {
+		return new Builder(engine, script);
+	}
+	
+	/**
+	 * Request that no further images are processed. Any images that are already being processed will 
+	 * be completed, and the remaining images reported as skipped.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+	
+	/**
+	 * Returns true if {@link #cancel()} has been called.
+	 * @return
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+	
+	/**
+	 * Run the script for all images, blocking until it is complete.
+	 * @return a report summarizing the result for each image
+	 * @throws InterruptedException if the calling thread is interrupted while waiting; any images that are 
+	 *                              already being processed will also be interrupted
+	 */
+	public BatchReport run() throws InterruptedException {
+		long startTime = System.currentTimeMillis();
+		
+		var prepared = DefaultScriptEditor.prepareScript(engine, script, importDefaultMethods);
+		CompiledScript compiled = null;
+		int n = Math.max(1, Math.min(nThreads, entries.size()));
+		if (engine instanceof Compilable) {
+			try {
+				compiled = ((Compilable)engine).compile(prepared.script);
+			} catch (ScriptException e) {
+				DefaultScriptEditor.printScriptException(e, prepared.extraLines, contextSupplier.get());
+				var results = entries.stream().map(entry -> new ImageResult(entry, Status.FAILED, null, e, 0L, 0L, 0L)).collect(Collectors.toList());
+				return new BatchReport(results, n, System.currentTimeMillis() - startTime);
+			}
+		} else if (n > 1) {
+			logger.warn("Script engine {} does not support compilation - images will be processed one at a time", engine.getFactory().getEngineName());
+			n = 1;
+		}
+		
+		int budgetMB = (int)Math.max(1, Math.min(Integer.MAX_VALUE, memoryBudget / (1024L * 1024L)));
+		var memorySemaphore = new Semaphore(budgetMB);
+		
+		logger.info("Running script for {} images ({} thread(s), memory budget {} MB)", entries.size(), n, budgetMB);
+		
+		var pool = Executors.newFixedThreadPool(n, ThreadTools.createThreadFactory("batch-script-", false));
+		List<ImageResult> results = new ArrayList<>();
+		try {
+			List<Future<ImageResult>> futures = new ArrayList<>();
+			for (var entry : entries) {
+				var compiledScript = compiled;
+				futures.add(pool.submit(() -> processEntry(entry, prepared, compiledScript, memorySemaphore, budgetMB)));
+			}
+			for (var future : futures) {
+				try {
+					results.add(future.get());
+				} catch (ExecutionException e) {
+					// Shouldn't happen, since processEntry catches exceptions
+					logger.error("Error running batch script: " + e.getLocalizedMessage(), e);
+				}
+			}
+		} catch (InterruptedException e) {
+			cancelled = true;
+			pool.shutdownNow();
+			throw e;
+		} finally {
+			pool.shutdown();
+		}
+		return new BatchReport(results, n, System.currentTimeMillis() - startTime);
+	}
+	
+	
+	private ImageResult processEntry(ProjectImageEntry<BufferedImage> entry, PreparedScript prepared, CompiledScript compiled, Semaphore memorySemaphore, int budgetMB) {
+		if (cancelled || Thread.currentThread().isInterrupted())
+			return notifyListener(new ImageResult(entry, Status.SKIPPED, null, null, 0L, 0L, 0L));
+		
+		int permits = (int)Math.min(budgetMB, estimateMemory(entry) / (1024L * 1024L));
+		try {
+			memorySemaphore.acquire(permits);
+		} catch (InterruptedException e) {
+			return notifyListener(new ImageResult(entry, Status.SKIPPED, null, e, 0L, 0L, 0L));
+		}
+		
+		long readTime = 0L, scriptTime = 0L, saveTime = 0L;
+		ImageData<BufferedImage> imageData = null;
+		try {
+			// Check again, since we might have waited some time for memory to become available
+			if (cancelled)
+				return notifyListener(new ImageResult(entry, Status.SKIPPED, null, null, 0L, 0L, 0L));
+			
+			logger.info("Running script for {}", entry.getImageName());
+			long startTime = System.currentTimeMillis();
+			imageData = entry.readImageData();
+			readTime = System.currentTimeMillis() - startTime;
+			if (imageData == null)
+				return notifyListener(new ImageResult(entry, Status.FAILED, null, new IOException("Unable to read image data"), readTime, 0L, 0L));
+			
+			startTime = System.currentTimeMillis();
+			var context = contextSupplier.get();
+			Object result = null;
+			ScriptException exception = null;
+			QP.setBatchProjectAndImage(project, imageData);
+			try {
+				result = compiled == null ? engine.eval(prepared.script, context) : compiled.eval(context);
+			} catch (ScriptException e) {
+				DefaultScriptEditor.printScriptException(e, prepared.extraLines, context);
+				exception = e;
+			} finally {
+				QP.resetBatchProjectAndImage();
+				flushQuietly(context);
+			}
+			scriptTime = System.currentTimeMillis() - startTime;
+			if (exception != null)
+				return notifyListener(new ImageResult(entry, Status.FAILED, null, exception, readTime, scriptTime, 0L));
+			
+			if (doSave) {
+				startTime = System.currentTimeMillis();
+				entry.saveImageData(imageData);
+				saveTime = System.currentTimeMillis() - startTime;
+			}
+			return notifyListener(new ImageResult(entry, Status.COMPLETED, result, null, readTime, scriptTime, saveTime));
+		} catch (Exception e) {
+			logger.error("Error running batch script for " + entry.getImageName() + ": " + e.getLocalizedMessage(), e);
+			return notifyListener(new ImageResult(entry, Status.FAILED, null, e, readTime, scriptTime, saveTime));
+		} finally {
+			if (imageData != null) {
+				try {
+					imageData.getServer().close();
+				} catch (Exception e) {
+					logger.warn("Unable to close server for {}: {}", entry.getImageName(), e.getLocalizedMessage());
+				}
+			}
+			memorySemaphore.release(permits);
+		}
+	}
+	
+	private static void flushQuietly(ScriptContext context) {
+		try {
+			context.getWriter().flush();
+			context.getErrorWriter().flush();
+		} catch (IOException e) {
+			logger.debug("Unable to flush script output: {}", e.getLocalizedMessage());
+		}
+	}
+	
+	private ImageResult notifyListener(ImageResult result) {
+		if (listener != null) {
+			try {
+				listener.accept(result);
+			} catch (Exception e) {
+				logger.warn("Exception in batch script listener: " + e.getLocalizedMessage(), e);
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Estimate the memory required to open an image, based upon the size of its saved data.
+	 */
+	private static long estimateMemory(ProjectImageEntry<?> entry) {
+		long bytes = 0L;
+		Path path = entry.getEntryPath();
+		if (path != null && Files.isDirectory(path)) {
+			try (var stream = Files.list(path)) {
+				bytes = stream.filter(p -> Files.isRegularFile(p)).mapToLong(p -> {
+					try {
+						return Files.size(p);
+					} catch (IOException e) {
+						return 0L;
+					}
+				}).sum();
+			} catch (IOException e) {
+				logger.debug("Unable to estimate data size for {}: {}", entry.getImageName(), e.getLocalizedMessage());
+			}
+		}
+		return Math.max(MIN_IMAGE_MEMORY, bytes * DATA_MEMORY_FACTOR);
+	}
+	
+	
+	/**
+	 * Status of the script for a single image.
+	 */
+	public static enum Status {
+		/**
+		 * The script completed successfully (and the data was saved, if requested).
+		 */
+		COMPLETED,
+		/**
+		 * The image could not be read or saved, or the script threw an exception.
+		 */
+		FAILED,
+		/**
+		 * The image was not processed, because the batch was cancelled.
+		 */
+		SKIPPED
+	}
+	
+	
+	/**
+	 * The result of running a script for a single image.
+	 */
+	public static class ImageResult {
+		
+		private final ProjectImageEntry<BufferedImage> entry;
+		private final Status status;
+		private final Object result;
+		private final Throwable exception;
+		private final long readTime;
+		private final long scriptTime;
+		private final long saveTime;
+		
+		private ImageResult(ProjectImageEntry<BufferedImage> entry, Status status, Object result, Throwable exception, long readTime, long scriptTime, long saveTime) {
+			this.entry = entry;
+			this.status = status;
+			this.result = result;
+			this.exception = exception;
+			this.readTime = readTime;
+			this.scriptTime = scriptTime;
+			this.saveTime = saveTime;
+		}
+		
+		/**
+		 * Get the project entry for the image.
+		 * @return
+		 */
+		public ProjectImageEntry<BufferedImage> getEntry() {
+			return entry;
+		}
+		
+		/**
+		 * Get the status of the script for the image.
+		 * @return
+		 */
+		public Status getStatus() {
+			return status;
+		}
+		
+		/**
+		 * Get the value returned by the script, if any.
+		 * @return
+		 */
+		public Object getResult() {
+			return result;
+		}
+		
+		/**
+		 * Get the exception that caused the script to fail, if any.
+		 * @return
+		 */
+		public Throwable getException() {
+			return exception;
+		}
+		
+		/**
+		 * Get the time taken to read the image data, in milliseconds.
+		 * @return
+		 */
+		public long getReadTime() {
+			return readTime;
+		}
+		
+		/**
+		 * Get the time taken to run the script, in milliseconds.
+		 * @return
+		 */
+		public long getScriptTime() {
+			return scriptTime;
+		}
+		
+		/**
+		 * Get the time taken to save the image data, in milliseconds.
+		 * @return
+		 */
+		public long getSaveTime() {
+			return saveTime;
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("%s: %s (read %d ms, script %d ms, save %d ms)", entry.getImageName(), status, readTime, scriptTime, saveTime);
+		}
+		
+	}
+	
+	
+	/**
+	 * Summary of running a script for multiple images.
+	 */
+	public static class BatchReport {
+		
+		private final List<ImageResult> results;
+		private final int nThreads;
+		private final long totalTime;
+		
+		private BatchReport(List<ImageResult> results, int nThreads, long totalTime) {
+			this.results = Collections.unmodifiableList(new ArrayList<>(results));
+			this.nThreads = nThreads;
+			this.totalTime = totalTime;
+		}
+		
+		/**
+		 * Get the results for all images, in the order in which the images were provided.
+		 * @return
+		 */
+		public List<ImageResult> getResults() {
+			return results;
+		}
+		
+		/**
+		 * Get the results for all images with a specified status.
+		 * @param status
+		 * @return
+		 */
+		public List<ImageResult> getResults(Status status) {
+			return results.stream().filter(r -> r.getStatus() == status).collect(Collectors.toList());
+		}
+		
+		/**
+		 * Get the number of threads used to process the images.
+		 * @return
+		 */
+		public int getNumThreads() {
+			return nThreads;
+		}
+		
+		/**
+		 * Get the total time taken to process all images, in milliseconds.
+		 * @return
+		 */
+		public long getTotalTime() {
+			return totalTime;
+		}
+		
+		/**
+		 * Write a tab-delimited report, with one row per image.
+		 * @param path the file to write
+		 * @throws IOException
+		 */
+		public void writeReport(Path path) throws IOException {
+			try (var writer = new PrintWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8))) {
+				writer.println(String.join("\t", "Image", "Status", "Read time (ms)", "Script time (ms)", "Save time (ms)", "Error"));
+				for (var result : results) {
+					var exception = result.getException();
+					String error = exception == null ? "" : exception.getClass().getSimpleName() + ": " + Objects.toString(exception.getLocalizedMessage(), "");
+					writer.println(String.join("\t",
+							result.getEntry().getImageName(),
+							result.getStatus().toString(),
+							Long.toString(result.getReadTime()),
+							Long.toString(result.getScriptTime()),
+							Long.toString(result.getSaveTime()),
+							error.replaceAll("\\s+", " ")
+							));
+				}
+			}
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("Processed %d images in %.2f seconds (%d completed, %d failed, %d skipped)",
+					results.size(), totalTime/1000.0,
+					getResults(Status.COMPLETED).size(), getResults(Status.FAILED).size(), getResults(Status.SKIPPED).size());
+		}
+		
+	}
+	
+	
+	/**
+	 * Builder for a {@link BatchScriptRunner}.
+	 */
+	public static class Builder {
+		
+		private final ScriptEngine engine;
+		private final String script;
+		private Project<BufferedImage> project;
+		private List<ProjectImageEntry<BufferedImage>> entries = new ArrayList<>();
+		private boolean importDefaultMethods = true;
+		private boolean doSave = false;
+		private int nThreads = 1;
+		private long memoryBudget = Runtime.getRuntime().maxMemory() / 2;
+		private Supplier<ScriptContext> contextSupplier = () -> DefaultScriptEditor.createDefaultContext();
+		private Consumer<ImageResult> listener;
+		
+		private Builder(ScriptEngine engine, String script) {
+			Objects.requireNonNull(engine, "Script engine must not be null!");
+			Objects.requireNonNull(script, "Script must not be null!");
+			this.engine = engine;
+			this.script = script;
+		}
+		
+		/**
+		 * Specify the project, and the images within it for which the script should be run.
+		 * @param project
+		 * @param entries
+		 * @return this builder
+		 */
+		public Builder images(Project<BufferedImage> project, Collection<? extends ProjectImageEntry<BufferedImage>> entries) {
+			this.project = project;
+			this.entries = new ArrayList<>(entries);
+			return this;
+		}
+		
+		/**
+		 * Specify whether the default imports should be added to the script (default is true).
+		 * @param importDefaultMethods
+		 * @return this builder
+		 */
+		public Builder importDefaultMethods(boolean importDefaultMethods) {
+			this.importDefaultMethods = importDefaultMethods;
+			return this;
+		}
+		
+		/**
+		 * Specify whether the image data should be saved after the script has completed successfully (default is false).
+		 * @param doSave
+		 * @return this builder
+		 */
+		public Builder save(boolean doSave) {
+			this.doSave = doSave;
+			return this;
+		}
+		
+		/**
+		 * Specify the maximum number of images to process in parallel (default is 1).
+		 * This should only be more than 1 if the script can be run independently for each image.
+		 * @param nThreads
+		 * @return this builder
+		 */
+		public Builder threads(int nThreads) {
+			this.nThreads = Math.max(1, nThreads);
+			return this;
+		}
+		
+		/**
+		 * Specify the approximate memory available for open images, in bytes (default is half the maximum memory).
+		 * This limits how many images may be open at once, regardless of the number of threads.
+		 * @param bytes
+		 * @return this builder
+		 */
+		public Builder memoryBudget(long bytes) {
+			this.memoryBudget = bytes;
+			return this;
+		}
+		
+		/**
+		 * Specify how a new {@link ScriptContext} should be created for each image.
+		 * By default, output is sent to the log.
+		 * @param contextSupplier
+		 * @return this builder
+		 */
+		public Builder context(Supplier<ScriptContext> contextSupplier) {
+			this.contextSupplier = contextSupplier;
+			return this;
+		}
+		
+		/**
+		 * Specify a listener to be notified when each image is complete.
+		 * This may be called from different threads.
+		 * @param listener
+		 * @return this builder
+		 */
+		public Builder listener(Consumer<ImageResult> listener) {
+			this.listener = listener;
+			return this;
+		}
+		
+		/**
+		 * Build the runner.
+		 * @return
+		 */
+		public BatchScriptRunner build() {
+			return new BatchScriptRunner(this);
+		}
+		
+	}
+
+}
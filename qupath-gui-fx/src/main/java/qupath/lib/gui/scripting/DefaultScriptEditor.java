@@ -43,6 +43,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Scanner;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -65,6 +66,7 @@ import javafx.beans.binding.Bindings;
 import javafx.beans.binding.BooleanBinding;
 import javafx.beans.binding.StringBinding;
 import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.ReadOnlyBooleanProperty;
 import javafx.beans.property.SimpleObjectProperty;
@@ -72,7 +74,9 @@ import javafx.beans.property.StringProperty;
 import javafx.beans.value.ObservableValue;
 import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
+import javafx.geometry.Insets;
 import javafx.geometry.Orientation;
+import javafx.geometry.Pos;
 import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
@@ -89,6 +93,7 @@ import javafx.scene.control.Menu;
 import javafx.scene.control.MenuBar;
 import javafx.scene.control.RadioMenuItem;
 import javafx.scene.control.SeparatorMenuItem;
+import javafx.scene.control.Spinner;
 import javafx.scene.control.SplitPane;
 import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
@@ -104,6 +109,7 @@ import javafx.scene.input.KeyCombination;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
 import javafx.scene.layout.Region;
 import javafx.scene.text.Font;
 import javafx.stage.Modality;
@@ -120,6 +126,7 @@ import qupath.lib.gui.logging.LogManager;
 import qupath.lib.gui.logging.TextAppendable;
 import qupath.lib.gui.prefs.PathPrefs;
 import qupath.lib.gui.scripting.ScriptEditor;
+import qupath.lib.gui.tools.GuiTools;
 import qupath.lib.gui.tools.MenuTools;
 import qupath.lib.images.ImageData;
 import qupath.lib.objects.PathObjects;
@@ -274,6 +281,7 @@ public class DefaultScriptEditor implements ScriptEditor {
 	private BooleanProperty sendLogToConsole = PathPrefs.createPersistentPreference("scriptingSendLogToConsole", true);
 	private BooleanProperty outputScriptStartTime = PathPrefs.createPersistentPreference("scriptingOutputScriptStartTime", false);
 	private BooleanProperty autoClearConsole = PathPrefs.createPersistentPreference("scriptingAutoClearConsole", true);
+	private IntegerProperty batchScriptThreads = PathPrefs.createPersistentPreference("scriptingBatchThreads", 1);
 	
 	// Regex pattern used to identify whether a script should be run in the JavaFX Platform thread
 	// If so, this line should be included at the top of the script
@@ -793,7 +801,7 @@ public class DefaultScriptEditor implements ScriptEditor {
 
 	
 	
-	private static ScriptContext createDefaultContext() {
+	static ScriptContext createDefaultContext() {
 		ScriptContext context = new SimpleScriptContext();
 		context.setWriter(new LoggerInfoWriter());
 		context.setErrorWriter(new LoggerErrorWriter());
@@ -876,12 +884,52 @@ public class DefaultScriptEditor implements ScriptEditor {
 		// Set the current ImageData if we can
 		QP.setBatchProjectAndImage(project, imageData);
 		
+		// Prepare to return a result
+		Object result = null;
+		
+		var prepared = prepareScript(engine, script, importDefaultMethods);
+		var scriptContext = context == null ? createDefaultContext() : context;
+		try {
+			result = engine.eval(prepared.script, scriptContext);
+		} catch (ScriptException e) {
+			printScriptException(e, prepared.extraLines, scriptContext);
+		} finally {
+			QP.resetBatchProjectAndImage();
+		}
+		return result;
+	}
+	
+	
+	/**
+	 * A script that is ready to be evaluated, possibly with extra lines added to import default methods.
+	 */
+	static class PreparedScript {
+		
+		final String script;
+		final int extraLines;
+		
+		private PreparedScript(String script, int extraLines) {
+			this.script = script;
+			this.extraLines = extraLines;
+		}
+		
+	}
+	
+	
+	/**
+	 * Prepare a script for evaluation by a specific ScriptEngine, optionally adding the imports 
+	 * required to use the default methods.
+	 * 
+	 * @param engine
+	 * @param script
+	 * @param importDefaultMethods
+	 * @return
+	 */
+	static PreparedScript prepareScript(final ScriptEngine engine, final String script, final boolean importDefaultMethods) {
+		
 		// We'll actually use script2... which may or may not be the same
 		String script2 = script;
 		
-		// Prepare to return a result
-		Object result = null;
-
 		// Record if any extra lines are added to the script, to help match line numbers of any exceptions
 		int extraLines = 0;
 
@@ -921,108 +969,110 @@ public class DefaultScriptEditor implements ScriptEditor {
 			}
 			
 		}
-		
+		return new PreparedScript(script2, extraLines);
+	}
+	
+	
+	/**
+	 * Print a helpful description of a script exception to the error writer of a context.
+	 * 
+	 * @param e the exception
+	 * @param extraLines the number of lines added to the script when it was prepared, used to correct line numbers
+	 * @param context the context whose error writer should be used
+	 */
+	static void printScriptException(final ScriptException e, final int extraLines, final ScriptContext context) {
 		try {
-			result = engine.eval(script2, context == null ? createDefaultContext() : context);
-		} catch (ScriptException e) {
-			try {
-				int line = e.getLineNumber();
-				Throwable cause = e;
-				// Try to get to the root of the problem
-				while (cause.getCause() != null && cause.getCause() != cause)
-					cause = cause.getCause();
-				
-				// Sometimes we can still get the line number for a Groovy exception in this awkward way...
-				if (line < 0) {
-					for (StackTraceElement element : cause.getStackTrace()) {
-						if ("run".equals(element.getMethodName()) && element.getClassName() != null && element.getClassName().startsWith("Script")) {
-							line = element.getLineNumber();
-							break;
-						}
+			int line = e.getLineNumber();
+			Throwable cause = e;
+			// Try to get to the root of the problem
+			while (cause.getCause() != null && cause.getCause() != cause)
+				cause = cause.getCause();
+			
+			// Sometimes we can still get the line number for a Groovy exception in this awkward way...
+			if (line < 0) {
+				for (StackTraceElement element : cause.getStackTrace()) {
+					if ("run".equals(element.getMethodName()) && element.getClassName() != null && element.getClassName().startsWith("Script")) {
+						line = element.getLineNumber();
+						break;
 					}
 				}
-				
-				Writer errorWriter = context.getErrorWriter();
-				
-				StringBuilder sb = new StringBuilder();
-				String message = cause.getLocalizedMessage();
-				if (message != null && line < 0) {
-					var lineMatcher = Pattern.compile("@ line ([\\d]+)").matcher(message);
-					if (lineMatcher.find())
-						line = Integer.parseInt(lineMatcher.group(1));
-				}
-				
-				// Check if the error was to do with an import statement
-				if (message != null && !message.isBlank()) {
-					var matcher = Pattern.compile("unable to resolve class ([A-Za-z_.-]+)").matcher(message);
-					if (matcher.find()) {
-						String missingClass = matcher.group(1).strip();
-						sb.append("It looks like you have tried to import a class '" + missingClass + "' that doesn't exist!\n");
-						int ind = missingClass.lastIndexOf(".");
-						if (ind >= 0)
-							missingClass = missingClass.substring(ind+1);
-						Class<?> suggestedClass = CONFUSED_CLASSES.get(missingClass);
-						if (suggestedClass != null) {
-							sb.append("You should probably remove the broken import statement in your script (around line " + line + ").\n");
-							sb.append("Then you may want to check 'Run -> Include default imports' is selected, or alternatively add ");
-							sb.append("\n    import " + suggestedClass.getName() + "\nat the start of the script. Full error message below.\n");
-						}
+			}
+			
+			Writer errorWriter = context.getErrorWriter();
+			
+			StringBuilder sb = new StringBuilder();
+			String message = cause.getLocalizedMessage();
+			if (message != null && line < 0) {
+				var lineMatcher = Pattern.compile("@ line ([\\d]+)").matcher(message);
+				if (lineMatcher.find())
+					line = Integer.parseInt(lineMatcher.group(1));
+			}
+			
+			// Check if the error was to do with an import statement
+			if (message != null && !message.isBlank()) {
+				var matcher = Pattern.compile("unable to resolve class ([A-Za-z_.-]+)").matcher(message);
+				if (matcher.find()) {
+					String missingClass = matcher.group(1).strip();
+					sb.append("It looks like you have tried to import a class '" + missingClass + "' that doesn't exist!\n");
+					int ind = missingClass.lastIndexOf(".");
+					if (ind >= 0)
+						missingClass = missingClass.substring(ind+1);
+					Class<?> suggestedClass = CONFUSED_CLASSES.get(missingClass);
+					if (suggestedClass != null) {
+						sb.append("You should probably remove the broken import statement in your script (around line " + line + ").\n");
+						sb.append("Then you may want to check 'Run -> Include default imports' is selected, or alternatively add ");
+						sb.append("\n    import " + suggestedClass.getName() + "\nat the start of the script. Full error message below.\n");
 					}
-	
-					// Check if the error was to do with a missing property... which can again be thanks to an import statement
-					var matcherProperty = Pattern.compile("No such property: ([A-Za-z_.-]+)").matcher(message);
-					if (matcherProperty.find()) {
-						String missingClass = matcherProperty.group(1).strip();
-						sb.append("I cannot find '" + missingClass + "'!\n");
-						int ind = missingClass.lastIndexOf(".");
-						if (ind >= 0)
-							missingClass = missingClass.substring(ind+1);
-						Class<?> suggestedClass = CONFUSED_CLASSES.get(missingClass);
-						if (suggestedClass != null) {
-							if (!suggestedClass.getSimpleName().equals(missingClass)) {
-								sb.append("You can try replacing ").append(missingClass).append(" with ").append(suggestedClass.getSimpleName()).append("\n");
-							}
-							sb.append("You might want to check 'Run -> Include default imports' is selected, or alternatively add ");
-							sb.append("\n    import " + suggestedClass.getName() + "\nat the start of the script. Full error message below.\n");
+				}
+
+				// Check if the error was to do with a missing property... which can again be thanks to an import statement
+				var matcherProperty = Pattern.compile("No such property: ([A-Za-z_.-]+)").matcher(message);
+				if (matcherProperty.find()) {
+					String missingClass = matcherProperty.group(1).strip();
+					sb.append("I cannot find '" + missingClass + "'!\n");
+					int ind = missingClass.lastIndexOf(".");
+					if (ind >= 0)
+						missingClass = missingClass.substring(ind+1);
+					Class<?> suggestedClass = CONFUSED_CLASSES.get(missingClass);
+					if (suggestedClass != null) {
+						if (!suggestedClass.getSimpleName().equals(missingClass)) {
+							sb.append("You can try replacing ").append(missingClass).append(" with ").append(suggestedClass.getSimpleName()).append("\n");
 						}
+						sb.append("You might want to check 'Run -> Include default imports' is selected, or alternatively add ");
+						sb.append("\n    import " + suggestedClass.getName() + "\nat the start of the script. Full error message below.\n");
 					}
 				}
-				if (sb.length() > 0)
-					errorWriter.append(sb.toString());
-				
-				if (line >= 0) {
-					line = line - extraLines;
-					if (cause instanceof InterruptedException)
-						errorWriter.append("Script interrupted at line " + line + ": " + message + "\n");
-					else
-						errorWriter.append(cause.getClass().getSimpleName() + " at line " + line + ": " + message + "\n");
-				} else {
-					if (cause instanceof InterruptedException)
-						errorWriter.append("Script interrupted: " + message + "\n");
-					else
-						errorWriter.append(cause.getClass().getSimpleName() + ": " + message + "\n");
-				}
-				var stackTrace = Arrays.stream(cause.getStackTrace()).filter(s -> s != null).map(s -> s.toString())
-						.collect(Collectors.joining("\n" + "    "));
-				if (stackTrace != null)
-					stackTrace += "\n";
-				errorWriter.append(stackTrace);
-//				logger.error("Script error (" + cause.getClass().getSimpleName() + ")", cause);
-			} catch (IOException e1) {
-				logger.error("Script IO error: {}", e1);
-			} catch (Exception e1) {
-				logger.error("Script error: {}", e1.getLocalizedMessage(), e1);
-//				e1.printStackTrace();
 			}
-		} finally {
-			QP.resetBatchProjectAndImage();
+			if (sb.length() > 0)
+				errorWriter.append(sb.toString());
+			
+			if (line >= 0) {
+				line = line - extraLines;
+				if (cause instanceof InterruptedException)
+					errorWriter.append("Script interrupted at line " + line + ": " + message + "\n");
+				else
+					errorWriter.append(cause.getClass().getSimpleName() + " at line " + line + ": " + message + "\n");
+			} else {
+				if (cause instanceof InterruptedException)
+					errorWriter.append("Script interrupted: " + message + "\n");
+				else
+					errorWriter.append(cause.getClass().getSimpleName() + ": " + message + "\n");
+			}
+			var stackTrace = Arrays.stream(cause.getStackTrace()).filter(s -> s != null).map(s -> s.toString())
+					.collect(Collectors.joining("\n" + "    "));
+			if (stackTrace != null)
+				stackTrace += "\n";
+			errorWriter.append(stackTrace);
+//			logger.error("Script error (" + cause.getClass().getSimpleName() + ")", cause);
+		} catch (IOException e1) {
+			logger.error("Script IO error: {}", e1);
+		} catch (Exception e1) {
+			logger.error("Script error: {}", e1.getLocalizedMessage(), e1);
+//			e1.printStackTrace();
 		}
-		return result;
 	}
 
-	
-	
-	
+
 	static class ScriptTabListCell extends ListCell<ScriptTab> {
         @Override
         public void updateItem(ScriptTab item, boolean empty) {
@@ -1325,7 +1375,25 @@ public class DefaultScriptEditor implements ScriptEditor {
 		dialog.initOwner(qupath.getStage());
 		dialog.setTitle("Select project images");
 		dialog.getDialogPane().getButtonTypes().addAll(ButtonType.CANCEL, ButtonType.OK);
-		dialog.getDialogPane().setContent(listSelectionView);
+		
+		// Scripts can be run for several images in parallel, if they are independent of one another
+		var spinnerThreads = new Spinner<Integer>(1, Runtime.getRuntime().availableProcessors(), 
+				Math.min(Math.max(1, batchScriptThreads.get()), Runtime.getRuntime().availableProcessors()));
+		spinnerThreads.setEditable(true);
+		GuiTools.restrictSpinnerInputToNumber(spinnerThreads, false);
+		var labelThreads = new Label("Number of images to process in parallel");
+		labelThreads.setLabelFor(spinnerThreads);
+		var tooltipThreads = new Tooltip("Only use more than one if the script can be run independently for each image");
+		labelThreads.setTooltip(tooltipThreads);
+		spinnerThreads.setTooltip(tooltipThreads);
+		var paneThreads = new HBox(labelThreads, spinnerThreads);
+		paneThreads.setAlignment(Pos.CENTER_LEFT);
+		paneThreads.setSpacing(5);
+		paneThreads.setPadding(new Insets(10, 0, 0, 0));
+		var pane = new BorderPane(listSelectionView);
+		pane.setBottom(paneThreads);
+		
+		dialog.getDialogPane().setContent(pane);
 		dialog.setResizable(true);
 		dialog.getDialogPane().setPrefWidth(600);
 		dialog.initModality(Modality.APPLICATION_MODAL);
@@ -1333,6 +1401,9 @@ public class DefaultScriptEditor implements ScriptEditor {
 		if (!result.isPresent() || result.get() != ButtonType.OK)
 			return;
 		
+		int nThreads = spinnerThreads.getValue();
+		batchScriptThreads.set(nThreads);
+		
 		previousImages.clear();
 //		previousImages.addAll(listSelectionView.getTargetItems());
 
@@ -1343,7 +1414,7 @@ public class DefaultScriptEditor implements ScriptEditor {
 		
 		List<ProjectImageEntry<BufferedImage>> imagesToProcess = new ArrayList<>(previousImages);
 
-		ProjectTask worker = new ProjectTask(project, imagesToProcess, tab, doSave);
+		ProjectTask worker = new ProjectTask(project, imagesToProcess, tab, doSave, nThreads);
 		
 		
 		ProgressDialog progress = new ProgressDialog(worker);
@@ -1353,7 +1424,7 @@ public class DefaultScriptEditor implements ScriptEditor {
 		progress.getDialogPane().setGraphic(null);
 		progress.getDialogPane().getButtonTypes().add(ButtonType.CANCEL);
 		progress.getDialogPane().lookupButton(ButtonType.CANCEL).addEventFilter(ActionEvent.ACTION, e -> {
-			if (Dialogs.showYesNoDialog("Cancel batch script", "Are you sure you want to stop the running script after the current image?")) {
+			if (Dialogs.showYesNoDialog("Cancel batch script", "Are you sure you want to stop the running script after the current image(s)?")) {
 				worker.quietCancel();
 				progress.setHeaderText("Cancelling...");
 //				worker.cancel(false);
@@ -1379,74 +1450,95 @@ public class DefaultScriptEditor implements ScriptEditor {
 		private ScriptTab tab;
 		private boolean quietCancel = false;
 		private boolean doSave = false;
+		private int nThreads = 1;
 		
-		ProjectTask(final Project<BufferedImage> project, final Collection<ProjectImageEntry<BufferedImage>> imagesToProcess, final ScriptTab tab, final boolean doSave) {
+		private BatchScriptRunner runner;
+		
+		ProjectTask(final Project<BufferedImage> project, final Collection<ProjectImageEntry<BufferedImage>> imagesToProcess, final ScriptTab tab, final boolean doSave, final int nThreads) {
 			this.project = project;
 			this.imagesToProcess = imagesToProcess;
 			this.tab = tab;
 			this.doSave = doSave;
+			this.nThreads = nThreads;
 		}
 		
-		public void quietCancel() {
+		public synchronized void quietCancel() {
 			this.quietCancel = true;
+			if (runner != null)
+				runner.cancel();
 		}
 
-		public boolean isQuietlyCancelled() {
+		public synchronized boolean isQuietlyCancelled() {
 			return quietCancel;
 		}
 
 		@Override
 		public Void call() {
 			
-			long startTime = System.currentTimeMillis();
-			
 			tab.setRunning(true);
 			
-			int counter = 0;
-			for (ProjectImageEntry<BufferedImage> entry : imagesToProcess) {
-				try {
-					// Stop
-					if (isQuietlyCancelled() || isCancelled()) {
-						logger.warn("Script cancelled with " + (imagesToProcess.size() - counter) + " image(s) remaining");
-						break;
-					}
-					
-					updateProgress(counter, imagesToProcess.size());
-					counter++;
-					updateMessage(entry.getImageName() + " (" + counter + "/" + imagesToProcess.size() + ")");
-					
-					// Create a new region store if we need one
-					System.gc();
-
-					// Open saved data if there is any, or else the image itself
-					ImageData<BufferedImage> imageData = (ImageData<BufferedImage>)entry.readImageData();
-					if (imageData == null) {
-						logger.warn("Unable to open {} - will be skipped", entry.getImageName());
-						continue;
-					}
-//					QPEx.setBatchImageData(imageData);
-					executeScript(tab, tab.getEditorComponent().getText(), project, imageData);
-					if (doSave)
-						entry.saveImageData(imageData);
-					imageData.getServer().close();
-				} catch (Exception e) {
-					logger.error("Error running batch script: {}", e);
-				}
-			}
-			updateProgress(imagesToProcess.size(), imagesToProcess.size());
+			ScriptEditorControl console = tab.getConsoleComponent();
+			boolean attachToLog = sendLogToConsole.get();
+			if (attachToLog)
+				LogManager.addTextAppendableFX(console);
 			
-			long endTime = System.currentTimeMillis();
+			int nImages = imagesToProcess.size();
+			var counter = new AtomicInteger();
+			updateProgress(0, nImages);
 			
-			long timeMillis = endTime - startTime;
-			String time = null;
-			if (timeMillis > 1000*60)
-				time = String.format("Total processing time: %.2f minutes", timeMillis/(1000.0 * 60.0));
-			else if (timeMillis > 1000)
-				time = String.format("Total processing time: %.2f seconds", timeMillis/(1000.0));
-			else
-				time = String.format("Total processing time: %d milliseconds", timeMillis);
-			logger.info("Processed {} images", imagesToProcess.size());
-			logger.info(time);
+			ScriptEngine engine = manager.getEngineByName(tab.getLanguage().toString());
+			synchronized (this) {
+				runner = BatchScriptRunner.builder(engine, tab.getEditorComponent().getText())
+						.images(project, imagesToProcess)
+						.importDefaultMethods(useDefaultBindings.get())
+						.save(doSave)
+						.threads(nThreads)
+						.context(() -> {
+							ScriptContext context = new SimpleScriptContext();
+							context.setWriter(new ScriptConsoleWriter(console, false));
+							context.setErrorWriter(new ScriptConsoleWriter(console, true));
+							return context;
+						})
+						.listener(r -> {
+							int n = counter.incrementAndGet();
+							updateProgress(n, nImages);
+							updateMessage(r.getEntry().getImageName() + " (" + n + "/" + nImages + ")");
+							if (r.getStatus() == BatchScriptRunner.Status.COMPLETED && r.getResult() != null)
+								logger.info("Result for {}: {}", r.getEntry().getImageName(), r.getResult());
+							if (outputScriptStartTime.get())
+								logger.info(r.toString());
+						})
+						.build();
+				if (quietCancel)
+					runner.cancel();
+			}
+			
+			try {
+				var report = runner.run();
+				
+				int nSkipped = report.getResults(BatchScriptRunner.Status.SKIPPED).size();
+				if (nSkipped > 0)
+					logger.warn("Script cancelled with " + nSkipped + " image(s) remaining");
+				for (var failed : report.getResults(BatchScriptRunner.Status.FAILED))
+					logger.error("Error running batch script for {}", failed.getEntry().getImageName());
+				
+				long timeMillis = report.getTotalTime();
+				String time = null;
+				if (timeMillis > 1000*60)
+					time = String.format("Total processing time: %.2f minutes", timeMillis/(1000.0 * 60.0));
+				else if (timeMillis > 1000)
+					time = String.format("Total processing time: %.2f seconds", timeMillis/(1000.0));
+				else
+					time = String.format("Total processing time: %d milliseconds", timeMillis);
+				logger.info("Processed {} images", nImages - nSkipped);
+				logger.info(time);
+			} catch (InterruptedException e) {
+				logger.warn("Batch script interrupted");
+			} finally {
+				if (attachToLog)
+					Platform.runLater(() -> LogManager.removeTextAppendableFX(console));
+			}
+			updateProgress(nImages, nImages);
 			
 			return null;
 		}
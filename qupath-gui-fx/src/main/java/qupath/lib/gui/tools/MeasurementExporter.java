@@ -22,27 +22,34 @@
 package qupath.lib.gui.tools;
 
 import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.LinkedListMultimap;
-import com.google.common.collect.Multimap;
-
-import qupath.lib.gui.commands.SummaryMeasurementTableCommand;
+import qupath.lib.common.ThreadTools;
+import qupath.lib.gui.measure.ColumnarMeasurementTableData;
 import qupath.lib.gui.measure.ObservableMeasurementTableData;
 import qupath.lib.gui.prefs.PathPrefs;
 import qupath.lib.images.ImageData;
@@ -53,6 +60,10 @@ import qupath.lib.projects.ProjectImageEntry;
 
 /**
  * Helper class for exporting the measurements of one or more entries in a project.
+ * <p>
+ * Measurements are streamed to the output rather than held in memory: several images are processed in parallel, 
+ * and the values for each image are computed in batches of objects and written to a temporary file. 
+ * These files are then combined into the final output once the columns from all images are known.
  * 
  * @author Melvin Gelbard
  */
@@ -60,6 +71,13 @@ public class MeasurementExporter {
 	
 	private final static Logger logger = LoggerFactory.getLogger(MeasurementExporter.class);
 	
+	/**
+	 * Number of objects for which values are computed at a time.
+	 */
+	private static final int BATCH_SIZE = 10_000;
+	
+	private static final int BUFFER_SIZE = 1 << 16;
+	
 	private List<String> includeOnlyColumns = new ArrayList<String>();
 	private List<String> excludeColumns = new ArrayList<String>();
 	
@@ -70,6 +88,15 @@ public class MeasurementExporter {
 	
 	private List<ProjectImageEntry<BufferedImage>> imageList;
 	
+	// Each image being processed needs to be held in memory, so avoid using too many threads
+	private int nThreads = Math.max(1, Math.min(4, PathPrefs.numCommandThreadsProperty().get()));
+	
+	private boolean compress = false;
+	
+	private Consumer<ProjectImageEntry<BufferedImage>> listener;
+	
+	private volatile boolean cancelled = false;
+	
 	@SuppressWarnings("javadoc")
 	public MeasurementExporter() {}
 	
@@ -169,17 +196,74 @@ public class MeasurementExporter {
 		return type;
 	}
 	
+	/**
+	 * Specify the number of images that may be processed in parallel.
+	 * Default: the preferred number of threads, up to a maximum of 4.
+	 * @param nThreads
+	 * @return this exporter
+	 */
+	public MeasurementExporter threads(int nThreads) {
+		this.nThreads = Math.max(1, nThreads);
+		return this;
+	}
+	
+	/**
+	 * Specify whether the output should be compressed using gzip.
+	 * When exporting to a file, this is also done automatically if the file name ends with {@code .gz}.
+	 * @param compress
+	 * @return this exporter
+	 */
+	public MeasurementExporter compress(boolean compress) {
+		this.compress = compress;
+		return this;
+	}
+	
+	/**
+	 * Specify a listener to be notified whenever the measurements for an image have been computed.
+	 * The listener may be called from different threads.
+	 * @param listener
+	 * @return this exporter
+	 */
+	public MeasurementExporter listener(Consumer<ProjectImageEntry<BufferedImage>> listener) {
+		this.listener = listener;
+		return this;
+	}
+	
+	/**
+	 * Returns the number of images that may be processed in parallel.
+	 * @return
+	 */
+	public int getThreads() {
+		return nThreads;
+	}
+	
+	/**
+	 * Request that any export in progress is stopped as soon as possible. 
+	 * No measurements will be written after the request.
+	 */
+	public void cancel() {
+		this.cancelled = true;
+	}
+	
+	/**
+	 * Returns true if the most recent export was cancelled.
+	 * @return
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+	
 	/**
 	 * Exports the measurements of one or more entries in the project.
-	 * This function first opens all the images in the project to store 
-	 * all the column names and values of the measurements.
-	 * Then, it loops through the maps containing the values to write
-	 * them to the given output file.
+	 * Several images are processed in parallel, with the measurements of each written to a temporary file.
+	 * These are then combined into the given output file.
+	 * If the file name ends with {@code .gz}, the output is compressed.
 	 * @param file
 	 */
 	public void exportMeasurements(File file) {
-		try(FileOutputStream fos = new FileOutputStream(file)) {
-			exportMeasurements(fos);
+		boolean gzip = compress || file.getName().toLowerCase().endsWith(".gz");
+		try (OutputStream stream = Files.newOutputStream(file.toPath())) {
+			exportMeasurements(stream, gzip);
 		} catch (Exception e) {
 			logger.error(e.getLocalizedMessage(), e);
 		}
@@ -188,98 +272,76 @@ public class MeasurementExporter {
 	
 	/**
 	 * Exports the measurements of one or more entries in the project.
-	 * This function first opens all the images in the project to store 
-	 * all the column names and values of the measurements.
-	 * Then, it loops through the maps containing the values to write
-	 * them to the given output stream.
+	 * Several images are processed in parallel, with the measurements of each written to a temporary file.
+	 * These are then combined and written to the given output stream.
 	 * @param stream
 	 */
 	public void exportMeasurements(OutputStream stream) {
+		exportMeasurements(stream, compress);
+	}
+	
+	private void exportMeasurements(OutputStream stream, boolean gzip) {
 		long startTime = System.currentTimeMillis();
+		cancelled = false;
 		
-		Map<ProjectImageEntry<?>, String[]> imageCols = new HashMap<ProjectImageEntry<?>, String[]>();
-		Map<ProjectImageEntry<?>, Integer> nImageEntries = new HashMap<ProjectImageEntry<?>, Integer>();
-		List<String> allColumns = new ArrayList<String>();
-		Multimap<String, String> valueMap = LinkedListMultimap.create();
-		String pattern = "(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)";
-		
-		for (ProjectImageEntry<?> entry: imageList) {
-			try {
-				ImageData<?> imageData = entry.readImageData();
-				ObservableMeasurementTableData model = new ObservableMeasurementTableData();
-				model.setImageData(imageData, imageData == null ? Collections.emptyList() : imageData.getHierarchy().getObjects(null, type));
-				List<String> data = SummaryMeasurementTableCommand.getTableModelStrings(model, separator, excludeColumns);
-				
-				// Get header
-				String[] header;
-				String headerString = data.get(0);
-				if (headerString.chars().filter(e -> e == '"').count() > 1)
-					header = headerString.split(separator.equals("\t") ? "\\" + separator : separator + pattern , -1);
-				else
-					header = headerString.split(separator);
-				
-				imageCols.put(entry, header);
-				nImageEntries.put(entry, data.size()-1);
-				
-				for (String col: header) {
-					if (!allColumns.contains(col)  && !excludeColumns.contains(col))
-						allColumns.add(col);
-				}
-				
-				// To keep the same column order, just delete non-relevant columns
-				if (!includeOnlyColumns.isEmpty())
-					allColumns.removeIf(n -> !includeOnlyColumns.contains(n));
-				
-				for (int i = 1; i < data.size(); i++) {
-					String[] row;
-					String rowString = data.get(i);
-					
-					// Check if some values in the row are escaped
-					if (rowString.chars().filter(e -> e == '"').count() > 1)
-						row = rowString.split(separator.equals("\t") ? "\\" + separator : separator + pattern , -1);
-					else
-						row = rowString.split(separator);
-					
-					// Put value in map
-					for (int elem = 0; elem < row.length; elem++) {
-						if (allColumns.contains(header[elem]))
-							valueMap.put(header[elem], row[elem]);
-					}
+		List<ImageTable> tables = new ArrayList<>();
+		var pool = Executors.newFixedThreadPool(Math.max(1, Math.min(nThreads, imageList.size())), ThreadTools.createThreadFactory("measurement-export-", true));
+		try {
+			List<Future<ImageTable>> futures = new ArrayList<>();
+			for (var entry : imageList)
+				futures.add(pool.submit(() -> writeImageTable(entry)));
+			pool.shutdown();
+			for (var future : futures) {
+				try {
+					var table = future.get();
+					if (table != null)
+						tables.add(table);
+				} catch (ExecutionException e) {
+					logger.error(e.getCause().getLocalizedMessage(), e.getCause());
 				}
-				
-			} catch (Exception e) {
-				logger.error(e.getLocalizedMessage(), e);
 			}
-		}
-		
-		try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8))){
-			writer.write(String.join(separator, allColumns));
-			writer.write(System.lineSeparator());
-
-			Iterator[] its = new Iterator[allColumns.size()];
-			for (int col = 0; col < allColumns.size(); col++) {
-				its[col] = valueMap.get(allColumns.get(col)).iterator();
+			if (cancelled) {
+				logger.warn("Export cancelled");
+				return;
 			}
-
-			for (ProjectImageEntry<?> entry: imageList) {
-				
-				for (int nObject = 0; nObject < nImageEntries.get(entry); nObject++) {
-					for (int nCol = 0; nCol < allColumns.size(); nCol++) {
-						if (Arrays.stream(imageCols.get(entry)).anyMatch(allColumns.get(nCol)::equals)) {
-							String val = (String)its[nCol].next();
-							// NaN values -> blank
-							if (val.equals("NaN"))
-								val = "";
-							writer.write(val);
-						}
-						if (nCol < allColumns.size()-1)
-							writer.write(separator);
+			
+			// Determine the columns, in order of appearance
+			List<String> allColumns = new ArrayList<>();
+			for (var table : tables) {
+				for (String col : table.columns) {
+					if (!allColumns.contains(col) && !excludeColumns.contains(col))
+						allColumns.add(col);
+				}
+			}
+			if (!includeOnlyColumns.isEmpty())
+				allColumns.removeIf(n -> !includeOnlyColumns.contains(n));
+			
+			OutputStream output = gzip ? new GZIPOutputStream(stream, BUFFER_SIZE) : stream;
+			try (Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), BUFFER_SIZE)) {
+				for (int i = 0; i < allColumns.size(); i++) {
+					writer.write(escape(allColumns.get(i)));
+					if (i < allColumns.size() - 1)
+						writer.write(separator);
+				}
+				writer.write(System.lineSeparator());
+				for (var table : tables) {
+					if (cancelled) {
+						logger.warn("Export cancelled");
+						return;
 					}
-					writer.write(System.lineSeparator());
+					table.writeRows(writer, allColumns);
 				}
 			}
-		} catch (Exception e) {
-			logger.error("Error writing to file: " + e.getLocalizedMessage(), e);
+		} catch (InterruptedException e) {
+			logger.warn("Export interrupted");
+			cancelled = true;
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			logger.error("Error writing measurements: " + e.getLocalizedMessage(), e);
+		} finally {
+			pool.shutdownNow();
+			for (var table : tables)
+				table.delete();
 		}
 		
 		long endTime = System.currentTimeMillis();
@@ -295,4 +357,131 @@ public class MeasurementExporter {
 		logger.info("Processed {} images", imageList.size());
 		logger.info(time);
 	}
-}
\ No newline at end of file
+	
+	
+	/**
+	 * Compute the measurements for a single image, writing them to a temporary file.
+	 * @param entry
+	 * @return the table, or null if the export was cancelled
+	 * @throws IOException
+	 */
+	private ImageTable writeImageTable(ProjectImageEntry<BufferedImage> entry) throws IOException {
+		if (cancelled)
+			return null;
+		ImageData<BufferedImage> imageData = null;
+		ImageTable table = null;
+		try {
+			imageData = entry.readImageData();
+			List<PathObject> pathObjects = imageData == null ? Collections.emptyList() : new ArrayList<>(imageData.getHierarchy().getObjects(null, type));
+			ObservableMeasurementTableData model = new ObservableMeasurementTableData();
+			model.setImageData(imageData, pathObjects);
+			
+			// Only compute the columns that will be exported
+			List<String> columns = new ArrayList<>(model.getAllNames());
+			columns.removeAll(excludeColumns);
+			if (!includeOnlyColumns.isEmpty())
+				columns.retainAll(includeOnlyColumns);
+			
+			table = new ImageTable(columns, Files.createTempFile("qupath-export-", ".tmp"));
+			try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(table.file), BUFFER_SIZE))) {
+				for (int start = 0; start < pathObjects.size(); start += BATCH_SIZE) {
+					if (cancelled)
+						break;
+					var batch = pathObjects.subList(start, Math.min(pathObjects.size(), start + BATCH_SIZE));
+					var data = new ColumnarMeasurementTableData(model, batch, columns);
+					for (var pathObject : batch) {
+						for (String column : columns) {
+							String val = data.getStringValue(pathObject, column);
+							// NaN values -> blank
+							if (val == null || val.equals("NaN"))
+								val = "";
+							writeString(out, escape(val));
+						}
+					}
+					table.nRows += batch.size();
+				}
+			}
+			if (cancelled) {
+				table.delete();
+				return null;
+			}
+			return table;
+		} catch (IOException | RuntimeException e) {
+			if (table != null)
+				table.delete();
+			throw e;
+		} finally {
+			if (imageData != null) {
+				try {
+					imageData.getServer().close();
+				} catch (Exception e) {
+					logger.warn("Unable to close server: " + e.getLocalizedMessage(), e);
+				}
+			}
+			if (listener != null)
+				listener.accept(entry);
+		}
+	}
+	
+	private String escape(String val) {
+		if (val.contains(separator))
+			return "\"" + val + "\"";
+		return val;
+	}
+	
+	private static void writeString(DataOutputStream out, String val) throws IOException {
+		byte[] bytes = val.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+	
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	
+	/**
+	 * The (escaped) measurement values for a single image, stored in a temporary file.
+	 */
+	private class ImageTable {
+		
+		private final List<String> columns;
+		private final Path file;
+		private int nRows = 0;
+		
+		ImageTable(List<String> columns, Path file) {
+			this.columns = columns;
+			this.file = file;
+		}
+		
+		void writeRows(Writer writer, List<String> allColumns) throws IOException {
+			int[] inds = allColumns.stream().mapToInt(c -> columns.indexOf(c)).toArray();
+			String[] row = new String[columns.size()];
+			try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+				for (int r = 0; r < nRows; r++) {
+					for (int c = 0; c < row.length; c++)
+						row[c] = readString(in);
+					for (int i = 0; i < inds.length; i++) {
+						if (inds[i] >= 0)
+							writer.write(row[inds[i]]);
+						if (i < inds.length - 1)
+							writer.write(separator);
+					}
+					writer.write(System.lineSeparator());
+				}
+			}
+		}
+		
+		void delete() {
+			try {
+				Files.deleteIfExists(file);
+			} catch (IOException e) {
+				logger.warn("Unable to delete temp file {}", file);
+			}
+		}
+		
+	}
+	
+}
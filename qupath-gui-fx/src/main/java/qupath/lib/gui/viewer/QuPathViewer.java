@@ -41,11 +41,13 @@ import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorConvertOp;
+import java.awt.image.DataBufferInt;
 import java.awt.image.LookupOp;
 import java.awt.image.ByteLookupTable;
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Method;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -89,6 +91,8 @@ import javafx.scene.Cursor;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.control.Tooltip;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
 import javafx.scene.image.WritableImage;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
@@ -115,6 +119,7 @@ import qupath.lib.gui.viewer.overlays.GridOverlay;
 import qupath.lib.gui.viewer.overlays.HierarchyOverlay;
 import qupath.lib.gui.viewer.overlays.PathOverlay;
 import qupath.lib.gui.viewer.overlays.TMAGridOverlay;
+import qupath.lib.gui.viewer.recording.TilePrefetcher;
 import qupath.lib.gui.viewer.tools.MoveTool;
 import qupath.lib.gui.viewer.tools.PathTool;
 import qupath.lib.gui.viewer.tools.PathTools;
@@ -128,6 +133,8 @@ import qupath.lib.objects.TMACoreObject;
 import qupath.lib.objects.hierarchy.PathObjectHierarchy;
 import qupath.lib.objects.hierarchy.TMAGrid;
 import qupath.lib.objects.hierarchy.events.PathObjectHierarchyEvent;
+import qupath.lib.objects.hierarchy.events.PathObjectHierarchyEventFilter;
+import qupath.lib.objects.hierarchy.events.PathObjectHierarchyEvent.HierarchyEventType;
 import qupath.lib.objects.hierarchy.events.PathObjectHierarchyListener;
 import qupath.lib.objects.hierarchy.events.PathObjectSelectionListener;
 import qupath.lib.regions.ImagePlane;
@@ -153,6 +160,9 @@ public class QuPathViewer implements TileListener<BufferedImage>, PathObjectHier
 	private ObjectProperty<ImageData<BufferedImage>> imageDataProperty = new SimpleObjectProperty<>();
 
 	private DefaultImageRegionStore regionStore;
+	
+	// Request tiles ahead of the current view, based upon recent navigation
+	private TilePrefetcher tilePrefetcher;
 
 	// Overlay (ROI/object) display variables
 	private OverlayOptions overlayOptions;
@@ -246,6 +256,18 @@ public class QuPathViewer implements TileListener<BufferedImage>, PathObjectHier
 	private BufferedImage imgCache;
 	private WritableImage imgCacheFX;
 	
+	/**
+	 * Pixel buffer shared by imgCache and imgCacheFX, if available.
+	 * This avoids needing to copy the entire image to JavaFX on every repaint.
+	 */
+	private PixelBuffer<IntBuffer> imgCachePixelBuffer;
+	
+	/**
+	 * Bounds of the viewer that need to be repainted, or null if everything should be repainted.
+	 * This is only used when painting to a shared pixel buffer.
+	 */
+	private Rectangle dirtyBounds;
+	
 	private double borderLineWidth = 5;
 	private javafx.scene.paint.Color borderColor;
 	
@@ -397,24 +419,53 @@ public class QuPathViewer implements TileListener<BufferedImage>, PathObjectHier
 			return;
 		}
 		
-		if (imgCache == null || imgCache.getWidth() < canvas.getWidth() || imgCache.getHeight() < canvas.getHeight()) {
+		boolean useSharedBuffer = PathPrefs.viewerSharedPixelBufferProperty().get();
+		if (imgCache == null || imgCache.getWidth() < canvas.getWidth() || imgCache.getHeight() < canvas.getHeight() ||
+				useSharedBuffer != (imgCachePixelBuffer != null)) {
 			int w = (int)(canvas.getWidth() + 1);
 			int h = (int)(canvas.getHeight() + 1);
 			imgCache = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB_PRE);
-			imgCacheFX = new WritableImage(w, h);
+			if (useSharedBuffer) {
+				// Wrap the pixels of the BufferedImage, so that JavaFX uses them directly
+				int[] pixels = ((DataBufferInt)imgCache.getRaster().getDataBuffer()).getData();
+				imgCachePixelBuffer = new PixelBuffer<>(w, h, IntBuffer.wrap(pixels), PixelFormat.getIntArgbPreInstance());
+				imgCacheFX = new WritableImage(imgCachePixelBuffer);
+			} else {
+				imgCachePixelBuffer = null;
+				imgCacheFX = new WritableImage(w, h);
+			}
 //			imgCacheFX = SwingFXUtils.toFXImage(imgCache, imgCacheFX);
+			markDirty(null);
 		}
 		
 		// Reset repaint flag
 		repaintRequested = false;
 		
-		GraphicsContext context = canvas.getGraphicsContext2D();
+		// Moving the image means everything needs to be repainted
+		Rectangle dirty = takeDirtyBounds();
+		if (locationUpdated || imgCachePixelBuffer == null)
+			dirty = null;
 		
-		Graphics2D g = imgCache.createGraphics();
-		paintViewer(g, getWidth(), getHeight());
-		g.dispose();
+		GraphicsContext context = canvas.getGraphicsContext2D();
 		
-		imgCacheFX = SwingFXUtils.toFXImage(imgCache, imgCacheFX);
+		if (imgCachePixelBuffer != null) {
+			// Paint within the callback, since JavaFX may be reading the shared pixels at any other time; 
+			// the returned region indicates the pixels that have changed, where null means the entire buffer
+			var clip = dirty;
+			imgCachePixelBuffer.updateBuffer(b -> {
+				Graphics2D g = imgCache.createGraphics();
+				if (clip != null)
+					g.setClip(clip);
+				paintViewer(g, getWidth(), getHeight());
+				g.dispose();
+				return clip == null ? null : new javafx.geometry.Rectangle2D(clip.x, clip.y, clip.width, clip.height);
+			});
+		} else {
+			Graphics2D g = imgCache.createGraphics();
+			paintViewer(g, getWidth(), getHeight());
+			g.dispose();
+			imgCacheFX = SwingFXUtils.toFXImage(imgCache, imgCacheFX);
+		}
 		context.drawImage(imgCacheFX, 0, 0);
 		
 		if (borderColor != null) {
@@ -501,6 +552,16 @@ public class QuPathViewer implements TileListener<BufferedImage>, PathObjectHier
 	 * @see #repaintEntireImage()
 	 */
 	public void repaint() {
+		repaint(null);
+	}
+	
+	/**
+	 * Request that part of the viewer is repainted.
+	 * @param bounds the bounds to repaint, in viewer coordinates, or null if the entire viewer should be repainted
+	 */
+	private void repaint(Rectangle bounds) {
+		markDirty(bounds);
+		
 		if (repaintRequested && minimumRepaintSpacingMillis <= 0)
 			return;
 		
@@ -518,6 +579,35 @@ public class QuPathViewer implements TileListener<BufferedImage>, PathObjectHier
 			return;
 		Platform.runLater(() -> paintCanvas());
 	}
+	
+	/**
+	 * Record that part of the viewer needs to be repainted.
+	 * @param bounds the bounds to repaint, or null if the entire viewer should be repainted
+	 */
+	private synchronized void markDirty(Rectangle bounds) {
+		if (bounds == null || imgCache == null)
+			dirtyBounds = new Rectangle(0, 0, Integer.MAX_VALUE, Integer.MAX_VALUE);
+		else if (dirtyBounds == null)
+			dirtyBounds = new Rectangle(bounds);
+		else
+			dirtyBounds.add(bounds);
+	}
+	
+	/**
+	 * Get the bounds that need to be repainted (clipped to the cached image), and reset them.
+	 * @return the bounds to repaint, or null if the entire viewer should be repainted
+	 */
+	private synchronized Rectangle takeDirtyBounds() {
+		Rectangle bounds = dirtyBounds;
+		dirtyBounds = null;
+		if (bounds == null || imgCache == null)
+			return null;
+		var imageBounds = new Rectangle(0, 0, imgCache.getWidth(), imgCache.getHeight());
+		if (bounds.contains(imageBounds))
+			return null;
+		bounds = bounds.intersection(imageBounds);
+		return bounds.isEmpty() ? null : bounds;
+	}
 
 	/**
 	 * Get the minimum downsample value supported by this viewer.
@@ -752,6 +842,7 @@ public class QuPathViewer implements TileListener<BufferedImage>, PathObjectHier
 		super();
 
 		this.regionStore = regionStore;
+		this.tilePrefetcher = new TilePrefetcher(this);
 
 		setOverlayOptions(overlayOptions);
 		
@@ -759,6 +850,7 @@ public class QuPathViewer implements TileListener<BufferedImage>, PathObjectHier
 		manager.attachListener(PathPrefs.annotationStrokeThicknessProperty(), repainter);
 		
 		manager.attachListener(PathPrefs.viewerGammaProperty(), repainterEntire);
+		manager.attachListener(PathPrefs.viewerSharedPixelBufferProperty(), repainterEntire);
 		manager.attachListener(PathPrefs.viewerInterpolateBilinearProperty(), repainterEntire);
 		manager.attachListener(PathPrefs.viewerBackgroundColorProperty(), repainterEntire);
 		
@@ -883,6 +975,14 @@ public class QuPathViewer implements TileListener<BufferedImage>, PathObjectHier
 	public DefaultImageRegionStore getImageRegionStore() {
 		return regionStore;
 	}
+	
+	/**
+	 * Get the prefetcher used to request tiles ahead of the current view.
+	 * @return
+	 */
+	public TilePrefetcher getTilePrefetcher() {
+		return tilePrefetcher;
+	}
 
 
 	/**
@@ -1542,7 +1642,8 @@ public class QuPathViewer implements TileListener<BufferedImage>, PathObjectHier
 
 		if (imageDataNew != null) {
 			//			hierarchyPainter = new PathHierarchyPainter(hierarchy);
-			hierarchy.addPathObjectListener(this);
+			// Measurement changes don't modify the overlay, and bursts of other changes only need a single repaint
+			hierarchy.addDebouncedPathObjectListener(this, PathObjectHierarchyEventFilter.excludeEventTypes(HierarchyEventType.CHANGE_MEASUREMENTS), 20);
 			hierarchy.getSelectionModel().addPathObjectSelectionListener(this);
 		}
 
@@ -1604,8 +1705,9 @@ public class QuPathViewer implements TileListener<BufferedImage>, PathObjectHier
 		if (clipBounds.intersects(0, 0, getWidth(), getHeight())) {
 			if (updateImage)
 				imageUpdated = true;
-//			repaint(clipBounds);
-			repaint();
+			// Clip bounds are expanded a little to avoid trouble due to antialiasing
+			clipBounds.grow(2, 2);
+			repaint(clipBounds);
 		}
 	}
 	
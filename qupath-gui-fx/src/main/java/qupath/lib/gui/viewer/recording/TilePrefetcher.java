@@ -0,0 +1,263 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+
+package qupath.lib.gui.viewer.recording;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.gui.prefs.PathPrefs;
+import qupath.lib.gui.viewer.QuPathViewer;
+import qupath.lib.gui.viewer.QuPathViewerListener;
+import qupath.lib.images.ImageData;
+import qupath.lib.images.servers.ImageServer;
+import qupath.lib.images.servers.ServerTools;
+import qupath.lib.objects.PathObject;
+import qupath.lib.regions.RegionRequest;
+
+/**
+ * Requests image tiles ahead of a viewer, based upon how the visible region has recently been changing.
+ * <p>
+ * Recent motion is estimated from a short history of {@link ViewRecordingFrame ViewRecordingFrames}, 
+ * in the same form as those recorded by a {@link ViewTracker}. 
+ * Panning results in tiles being requested in the direction of motion at the current resolution, 
+ * while zooming results in tiles being requested one pyramid level higher or lower.
+ * During playback of a recording the upcoming frames are known, and so these are requested instead.
+ * <p>
+ * All requests are made at a low priority through the viewer's region store, and are replaced whenever the view changes.
+ */
+public class TilePrefetcher implements QuPathViewerListener {
+	
+	private final static Logger logger = LoggerFactory.getLogger(TilePrefetcher.class);
+	
+	/**
+	 * Maximum age of frames used to estimate the current motion.
+	 */
+	private static final long MOTION_WINDOW_MILLIS = 250;
+	
+	/**
+	 * How far ahead to predict the view.
+	 */
+	static final long LOOKAHEAD_MILLIS = 500;
+	
+	/**
+	 * Minimum predicted shift, as a proportion of the visible width or height, for panning to be considered.
+	 */
+	private static final double MIN_RELATIVE_SHIFT = 0.05;
+	
+	/**
+	 * Minimum predicted change in the downsample (as a log ratio) for zooming to be considered.
+	 */
+	private static final double MIN_LOG_ZOOM = 0.05;
+	
+	private static final int MAX_FRAMES = 32;
+	
+	private QuPathViewer viewer;
+	private Deque<ViewRecordingFrame> frames = new ArrayDeque<>();
+	private List<ViewRecordingFrame> plannedFrames = Collections.emptyList();
+	
+	/**
+	 * Create a prefetcher for the specified viewer.
+	 * @param viewer
+	 */
+	public TilePrefetcher(final QuPathViewer viewer) {
+		this.viewer = viewer;
+		viewer.addViewerListener(this);
+	}
+	
+	/**
+	 * Set frames that are known to be displayed soon, e.g. during playback of a recording.
+	 * While these are available, they are requested in preference to making any predictions.
+	 * @param frames the upcoming frames; may be empty, but not null
+	 */
+	void setPlannedFrames(final List<ViewRecordingFrame> frames) {
+		this.plannedFrames = new ArrayList<>(frames);
+	}
+	
+	/**
+	 * Cancel any outstanding speculative requests made by this prefetcher.
+	 */
+	public void cancel() {
+		frames.clear();
+		var store = viewer.getImageRegionStore();
+		if (store != null)
+			store.prefetchTiles(this, null, Collections.emptyList());
+	}
+
+	@Override
+	public void visibleRegionChanged(final QuPathViewer viewer, final Shape shape) {
+		var server = viewer.getServer();
+		if (server == null || !PathPrefs.viewerPrefetchTilesProperty().get()) {
+			cancel();
+			return;
+		}
+		
+		// Record the frame
+		var size = DefaultViewTracker.getSize(viewer);
+		var frame = new DefaultViewRecordingFrame(System.currentTimeMillis(), shape, size);
+		frames.addLast(frame);
+		while (frames.size() > MAX_FRAMES || frames.getFirst().getTimestamp() < frame.getTimestamp() - MOTION_WINDOW_MILLIS)
+			frames.removeFirst();
+		
+		List<RegionRequest> regions;
+		if (!plannedFrames.isEmpty())
+			regions = getRegionsForFrames(server, plannedFrames, viewer.getZPosition(), viewer.getTPosition());
+		else
+			regions = predictRegions(server, frames.getFirst(), frame, viewer.getZPosition(), viewer.getTPosition());
+		viewer.getImageRegionStore().prefetchTiles(this, server, regions);
+	}
+	
+	
+	private static List<RegionRequest> getRegionsForFrames(final ImageServer<BufferedImage> server, final List<ViewRecordingFrame> frames, int z, int t) {
+		List<RegionRequest> regions = new ArrayList<>();
+		for (var frame : frames) {
+			var region = createRequest(server, getDownsample(frame), frame.getImageShape().getBounds2D(), z, t);
+			if (region != null && !regions.contains(region))
+				regions.add(region);
+		}
+		return regions;
+	}
+	
+	
+	/**
+	 * Predict the regions that will be needed soon, based upon the change between two frames.
+	 */
+	private static List<RegionRequest> predictRegions(final ImageServer<BufferedImage> server, final ViewRecordingFrame first, final ViewRecordingFrame last, int z, int t) {
+		long dt = last.getTimestamp() - first.getTimestamp();
+		if (dt <= 0)
+			return Collections.emptyList();
+		
+		Rectangle2D boundsFirst = first.getImageShape().getBounds2D();
+		Rectangle2D bounds = last.getImageShape().getBounds2D();
+		double downsample = getDownsample(last);
+		double scale = (double)LOOKAHEAD_MILLIS / dt;
+		
+		List<RegionRequest> regions = new ArrayList<>();
+		
+		// Panning: request the region we expect to be visible next at the current resolution
+		double dx = (bounds.getCenterX() - boundsFirst.getCenterX()) * scale;
+		double dy = (bounds.getCenterY() - boundsFirst.getCenterY()) * scale;
+		if (Math.abs(dx) > bounds.getWidth() * MIN_RELATIVE_SHIFT || Math.abs(dy) > bounds.getHeight() * MIN_RELATIVE_SHIFT) {
+			var boundsNext = new Rectangle2D.Double(bounds.getX() + dx, bounds.getY() + dy, bounds.getWidth(), bounds.getHeight());
+			var region = createRequest(server, downsample, boundsNext, z, t);
+			if (region != null)
+				regions.add(region);
+		}
+		
+		// Zooming: request the next pyramid level in the direction of the zoom
+		// (ignoring changes caused by the viewer being resized)
+		if (first.getSize().equals(last.getSize())) {
+			double logZoom = Math.log(getDownsample(last) / getDownsample(first)) * scale;
+			if (Math.abs(logZoom) > MIN_LOG_ZOOM) {
+				boolean zoomOut = logZoom > 0;
+				double downsampleNext = getNextDownsample(server, downsample, zoomOut);
+				if (!Double.isNaN(downsampleNext)) {
+					double factor = Math.min(Math.exp(logZoom), zoomOut ? 4.0 : 1.0);
+					factor = Math.max(factor, 0.25);
+					double w = bounds.getWidth() * factor;
+					double h = bounds.getHeight() * factor;
+					var boundsNext = new Rectangle2D.Double(bounds.getCenterX() - w/2, bounds.getCenterY() - h/2, w, h);
+					var region = createRequest(server, downsampleNext, boundsNext, z, t);
+					if (region != null)
+						regions.add(region);
+				}
+			}
+		}
+		return regions;
+	}
+	
+	
+	private static double getDownsample(final ViewRecordingFrame frame) {
+		Rectangle bounds = frame.getImageBounds();
+		Dimension size = frame.getSize();
+		if (size.width <= 0 || size.height <= 0)
+			return 1.0;
+		return 0.5 * ((double)bounds.width / size.width + (double)bounds.height / size.height);
+	}
+	
+	
+	/**
+	 * Get the closest preferred downsample that is higher (if zooming out) or lower (if zooming in) than the current downsample, 
+	 * or NaN if there is none.
+	 */
+	private static double getNextDownsample(final ImageServer<BufferedImage> server, final double downsample, final boolean zoomOut) {
+		double[] downsamples = server.getPreferredDownsamples().clone();
+		Arrays.sort(downsamples);
+		double current = ServerTools.getPreferredDownsampleFactor(server, downsample);
+		if (zoomOut) {
+			for (double d : downsamples) {
+				if (d > current * 1.01)
+					return d;
+			}
+		} else {
+			for (int i = downsamples.length-1; i >= 0; i--) {
+				if (downsamples[i] < current * 0.99)
+					return downsamples[i];
+			}
+		}
+		return Double.NaN;
+	}
+	
+	
+	/**
+	 * Create a request for the part of a region that falls within the image, or null if the region is entirely outside the image.
+	 */
+	private static RegionRequest createRequest(final ImageServer<BufferedImage> server, final double downsample, final Rectangle2D bounds, int z, int t) {
+		int x1 = (int)Math.max(0, Math.floor(bounds.getMinX()));
+		int y1 = (int)Math.max(0, Math.floor(bounds.getMinY()));
+		int x2 = (int)Math.min(server.getWidth(), Math.ceil(bounds.getMaxX()));
+		int y2 = (int)Math.min(server.getHeight(), Math.ceil(bounds.getMaxY()));
+		if (x2 <= x1 || y2 <= y1)
+			return null;
+		return RegionRequest.createInstance(server.getPath(), downsample, x1, y1, x2 - x1, y2 - y1, z, t);
+	}
+	
+
+	@Override
+	public void imageDataChanged(QuPathViewer viewer, ImageData<BufferedImage> imageDataOld,
+			ImageData<BufferedImage> imageDataNew) {
+		cancel();
+		var store = viewer.getImageRegionStore();
+		if (store != null)
+			logger.debug("Tile prefetching: {}", store.getPrefetchStatistics());
+	}
+
+	@Override
+	public void selectedObjectChanged(QuPathViewer viewer, PathObject pathObjectSelected) {}
+
+	@Override
+	public void viewerClosed(QuPathViewer viewer) {
+		cancel();
+		viewer.removeViewerListener(this);
+	}
+
+}
@@ -26,6 +26,9 @@ package qupath.lib.gui.viewer.recording;
 import java.awt.Dimension;
 import java.awt.Rectangle;
 import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -134,6 +137,7 @@ class ViewTrackerPlayback {
 	void doStopPlayback() {
 		timeline.stop();
 		playing.set(false);
+		viewer.getTilePrefetcher().setPlannedFrames(Collections.emptyList());
 	}
 		
 	
@@ -145,11 +149,14 @@ class ViewTrackerPlayback {
 		
 		long timestampOfFirstFrame = tracker.nFrames() > 0 ? tracker.getFrame(0).getTimestamp() : 0;
 		
-		ViewRecordingFrame frame = tracker.getFrameForTime((timestamp - startTimestamp) + timestampOfFirstFrame);
+		long playbackTime = (timestamp - startTimestamp) + timestampOfFirstFrame;
+		ViewRecordingFrame frame = tracker.getFrameForTime(playbackTime);
 		boolean requestStop;
 		if (frame == null)
 			requestStop = true;
 		else {
+			// Let the viewer request tiles for the frames that will be shown soon
+			viewer.getTilePrefetcher().setPlannedFrames(getUpcomingFrames(playbackTime, playbackTime + TilePrefetcher.LOOKAHEAD_MILLIS));
 			setViewerForFrame(viewer, frame);
 			requestStop = tracker.isLastFrame(frame);
 		}
@@ -164,10 +171,28 @@ class ViewTrackerPlayback {
 		if (requestStop) {
 			timeline.stop();
 			playing.set(false);
+			viewer.getTilePrefetcher().setPlannedFrames(Collections.emptyList());
 		}
 	}
 	
 	
+	/**
+	 * Get the frames with timestamps after startTime, up to and including endTime.
+	 */
+	private List<ViewRecordingFrame> getUpcomingFrames(long startTime, long endTime) {
+		List<ViewRecordingFrame> frames = new ArrayList<>();
+		for (int i = 0; i < tracker.nFrames(); i++) {
+			var frame = tracker.getFrame(i);
+			if (frame.getTimestamp() <= startTime)
+				continue;
+			if (frame.getTimestamp() > endTime)
+				break;
+			frames.add(frame);
+		}
+		return frames;
+	}
+	
+	
 	
 	public void setPlaying(final boolean playing) {
 		if (isPlaying() == playing)
@@ -0,0 +1,133 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.display;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BandedSampleModel;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.images.ImageData;
+import qupath.lib.images.servers.WrappedBufferedImageServer;
+
+/**
+ * Check that 8-bit and 16-bit images converted using a lookup table give the same result as
+ * scaling each pixel value individually.
+ * <p>
+ * Float images are always converted one pixel at a time, so are used to provide the expected values.
+ */
+@SuppressWarnings("javadoc")
+public class DirectServerChannelInfoTest {
+
+	@Test
+	public void testByteLUT() {
+		// Include every possible value
+		var img = new BufferedImage(16, 16, BufferedImage.TYPE_BYTE_GRAY);
+		var raster = img.getRaster();
+		for (int i = 0; i < 256; i++)
+			raster.setSample(i % 16, i / 16, 0, i);
+
+		float[][] ranges = {
+				{0, 255}, {10, 200}, {10.5f, 100.25f}, {50, 50}, {0, 0}, {255, 255}, {-10, 300}
+		};
+		checkMatchesScalar(img, ranges);
+	}
+
+	@Test
+	public void testUShortLUT() {
+		// Include every possible value
+		var img = new BufferedImage(256, 256, BufferedImage.TYPE_USHORT_GRAY);
+		var raster = img.getRaster();
+		for (int i = 0; i < 65536; i++)
+			raster.setSample(i % 256, i / 256, 0, i);
+
+		float[][] ranges = {
+				{0, 65535}, {1000, 5000}, {1000.5f, 1255.75f}, {300, 300}, {0, 0}, {65535, 65535}, {-100, 70000}
+		};
+		checkMatchesScalar(img, ranges);
+	}
+
+
+	private static void checkMatchesScalar(BufferedImage img, float[][] ranges) {
+		var imgFloat = toFloat(img);
+		var imageData = new ImageData<>(new WrappedBufferedImageServer("Test", img));
+		var info = new DirectServerChannelInfo(imageData, 0);
+		info.setMinMaxAllowed(-1000, 100000);
+
+		int n = img.getWidth() * img.getHeight();
+		var rand = new Random(100L);
+		int[] rgbInitial = new int[n];
+		for (int i = 0; i < n; i++)
+			rgbInitial[i] = rand.nextInt() & 0xFFFFFF;
+		// Include black, which is handled differently when adding
+		for (int i = 0; i < n; i += 7)
+			rgbInitial[i] = 0;
+
+		for (int[] color : new int[][] {{255, 255, 255}, {255, 128, 0}, {0, 50, 200}}) {
+			info.setLUTColor(color[0], color[1], color[2]);
+			for (float[] range : ranges) {
+				info.setMinDisplay(range[0]);
+				info.setMaxDisplay(range[1]);
+				for (boolean useColorLUT : new boolean[] {true, false}) {
+					String message = String.format("Color %d,%d,%d, range %.2f-%.2f, useColorLUT=%b",
+							color[0], color[1], color[2], range[0], range[1], useColorLUT);
+
+					// Compare with the float image, and also with each pixel individually
+					int[] expected = info.getRGB(imgFloat, null, useColorLUT);
+					int[] actual = info.getRGB(img, null, useColorLUT);
+					assertArrayEquals(expected, actual, message);
+					int[] expectedPixels = new int[n];
+					for (int i = 0; i < n; i++)
+						expectedPixels[i] = info.getRGB(img.getRaster().getSampleFloat(i % img.getWidth(), i / img.getWidth(), 0), useColorLUT);
+					assertArrayEquals(expectedPixels, actual, message);
+
+					int[] expectedAdditive = rgbInitial.clone();
+					info.updateRGBAdditive(imgFloat, expectedAdditive, useColorLUT);
+					int[] actualAdditive = rgbInitial.clone();
+					info.updateRGBAdditive(img, actualAdditive, useColorLUT);
+					assertArrayEquals(expectedAdditive, actualAdditive, message);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Create a single-channel float image with the same values as the first channel of the input.
+	 */
+	private static BufferedImage toFloat(BufferedImage img) {
+		int w = img.getWidth();
+		int h = img.getHeight();
+		var raster = Raster.createWritableRaster(new BandedSampleModel(DataBuffer.TYPE_FLOAT, w, h, 1), null);
+		raster.setSamples(0, 0, w, h, 0, img.getRaster().getSamples(0, 0, w, h, 0, (float[])null));
+		var colorModel = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_GRAY), false, false, Transparency.OPAQUE, DataBuffer.TYPE_FLOAT);
+		return new BufferedImage(colorModel, raster, false, null);
+	}
+
+}
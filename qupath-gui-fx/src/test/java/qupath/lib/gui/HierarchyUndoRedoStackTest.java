@@ -0,0 +1,309 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.lib.gui;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjects;
+import qupath.lib.objects.PathROIObject;
+import qupath.lib.objects.classes.PathClassFactory;
+import qupath.lib.objects.hierarchy.PathObjectHierarchy;
+import qupath.lib.objects.hierarchy.PathObjectLoader;
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.regions.ImageRegion;
+import qupath.lib.roi.ROIs;
+
+@SuppressWarnings("javadoc")
+public class HierarchyUndoRedoStackTest {
+	
+	private static HierarchyUndoRedoStack createStack(PathObjectHierarchy hierarchy, long maxBytes) {
+		var stack = new HierarchyUndoRedoStack(hierarchy);
+		hierarchy.addPathObjectListener(e -> stack.recordChanges(e, maxBytes));
+		return stack;
+	}
+	
+	private static PathObject createAnnotation(double x, double y, double size) {
+		return PathObjects.createAnnotationObject(ROIs.createRectangleROI(x, y, size, size, ImagePlane.getDefaultPlane()));
+	}
+	
+	private static PathObject createDetection(double x, double y) {
+		return PathObjects.createDetectionObject(ROIs.createRectangleROI(x, y, 2, 2, ImagePlane.getDefaultPlane()));
+	}
+	
+	@Test
+	public void testAddAndRemove() {
+		var hierarchy = new PathObjectHierarchy();
+		var stack = createStack(hierarchy, Long.MAX_VALUE);
+		assertFalse(stack.canUndo());
+		
+		var annotation = createAnnotation(0, 0, 100);
+		hierarchy.addPathObject(annotation);
+		assertTrue(stack.canUndo());
+		
+		assertTrue(stack.undoOnce());
+		assertNull(annotation.getParent());
+		assertTrue(hierarchy.getAnnotationObjects().isEmpty());
+		assertFalse(stack.canUndo());
+		assertTrue(stack.canRedo());
+		
+		assertTrue(stack.redoOnce());
+		assertSame(hierarchy.getRootObject(), annotation.getParent());
+		assertEquals(1, hierarchy.getAnnotationObjects().size());
+		
+		hierarchy.removeObject(annotation, true);
+		assertTrue(hierarchy.getAnnotationObjects().isEmpty());
+		assertTrue(stack.undoOnce());
+		assertSame(hierarchy.getRootObject(), annotation.getParent());
+		
+		// Recording a new change should prevent redo
+		assertTrue(stack.undoOnce());
+		assertTrue(stack.canRedo());
+		hierarchy.addPathObject(createAnnotation(10, 10, 10));
+		assertFalse(stack.canRedo());
+	}
+	
+	@Test
+	public void testRemoveWithDescendants() {
+		var hierarchy = new PathObjectHierarchy();
+		var annotation = createAnnotation(0, 0, 100);
+		hierarchy.addPathObject(annotation);
+		for (int i = 0; i < 100; i++)
+			hierarchy.addPathObjectBelowParent(annotation, createDetection(i, i), false);
+		hierarchy.fireHierarchyChangedEvent(this);
+		var stack = createStack(hierarchy, Long.MAX_VALUE);
+		
+		hierarchy.removeObject(annotation, false);
+		assertEquals(0, hierarchy.nObjects());
+		
+		assertTrue(stack.undoOnce());
+		assertEquals(101, hierarchy.nObjects());
+		assertSame(annotation, hierarchy.getDetectionObjects().iterator().next().getParent());
+		
+		assertTrue(stack.redoOnce());
+		assertEquals(0, hierarchy.nObjects());
+		
+		// Keep the children this time
+		assertTrue(stack.undoOnce());
+		hierarchy.removeObject(annotation, true);
+		assertEquals(100, hierarchy.nObjects());
+		assertSame(hierarchy.getRootObject(), hierarchy.getDetectionObjects().iterator().next().getParent());
+		assertTrue(stack.undoOnce());
+		assertEquals(101, hierarchy.nObjects());
+		for (var detection : hierarchy.getDetectionObjects())
+			assertSame(annotation, detection.getParent());
+	}
+	
+	@Test
+	public void testClassificationAndROI() {
+		var hierarchy = new PathObjectHierarchy();
+		var annotation = createAnnotation(0, 0, 100);
+		hierarchy.addPathObject(annotation);
+		var stack = createStack(hierarchy, Long.MAX_VALUE);
+		
+		// The previous state is taken from the selection
+		hierarchy.getSelectionModel().setSelectedObject(annotation);
+		var pathClass = PathClassFactory.getPathClass("Tumor");
+		annotation.setPathClass(pathClass);
+		hierarchy.fireObjectClassificationsChangedEvent(this, Collections.singletonList(annotation));
+		
+		var roi = annotation.getROI();
+		var roi2 = ROIs.createRectangleROI(10, 10, 50, 50, ImagePlane.getDefaultPlane());
+		((PathROIObject)annotation).setROI(roi2);
+		hierarchy.updateObject(annotation, false);
+		
+		assertTrue(stack.undoOnce());
+		assertSame(roi, annotation.getROI());
+		assertEquals(pathClass, annotation.getPathClass());
+		
+		assertTrue(stack.undoOnce());
+		assertNull(annotation.getPathClass());
+		assertFalse(stack.canUndo());
+		
+		assertTrue(stack.redoOnce());
+		assertTrue(stack.redoOnce());
+		assertEquals(pathClass, annotation.getPathClass());
+		assertSame(roi2, annotation.getROI());
+	}
+	
+	@Test
+	public void testTransaction() {
+		var hierarchy = new PathObjectHierarchy();
+		var stack = createStack(hierarchy, Long.MAX_VALUE);
+		hierarchy.runInTransaction(() -> {
+			for (int i = 0; i < 3; i++)
+				hierarchy.addPathObject(createAnnotation(i * 10, 0, 5));
+		});
+		assertEquals(3, hierarchy.nObjects());
+		assertTrue(stack.undoOnce());
+		assertEquals(0, hierarchy.nObjects());
+		assertFalse(stack.canUndo());
+	}
+	
+	@Test
+	public void testAddAndRemoveMultiple() {
+		var hierarchy = new PathObjectHierarchy();
+		var annotation = createAnnotation(0, 0, 100);
+		hierarchy.addPathObject(annotation);
+		var stack = createStack(hierarchy, Long.MAX_VALUE);
+		
+		var detections = new ArrayList<PathObject>();
+		for (int i = 0; i < 5; i++)
+			detections.add(createDetection(i * 10, i * 10));
+		hierarchy.addPathObjects(detections);
+		assertEquals(6, hierarchy.nObjects());
+		assertTrue(stack.undoOnce());
+		assertEquals(1, hierarchy.nObjects());
+		assertTrue(stack.redoOnce());
+		assertEquals(6, hierarchy.nObjects());
+		
+		// Removing the annotation should move its children back to the root, and inserting it should restore them
+		hierarchy.insertPathObjects(Collections.singletonList(annotation));
+		for (var detection : detections)
+			assertSame(annotation, detection.getParent());
+		hierarchy.removeObjects(Collections.singletonList(annotation), true);
+		for (var detection : detections)
+			assertSame(hierarchy.getRootObject(), detection.getParent());
+		assertTrue(stack.undoOnce());
+		for (var detection : detections)
+			assertSame(annotation, detection.getParent());
+		assertTrue(stack.undoOnce());
+		for (var detection : detections)
+			assertSame(hierarchy.getRootObject(), detection.getParent());
+	}
+	
+	@Test
+	public void testDeferredLoading() {
+		var hierarchy = new PathObjectHierarchy();
+		var annotation = createAnnotation(0, 0, 100);
+		hierarchy.addPathObject(annotation);
+		var pending = new ArrayList<PathObject>();
+		for (int i = 0; i < 10; i++)
+			pending.add(createDetection(i * 5, i * 5));
+		hierarchy.setObjectLoader(new PathObjectLoader() {
+
+			@Override
+			public Collection<PathObject> loadObjects(ImageRegion region) {
+				var loaded = new ArrayList<>(pending);
+				pending.clear();
+				annotation.addPathObjects(loaded);
+				return loaded;
+			}
+
+			@Override
+			public boolean isFullyLoaded() {
+				return pending.isEmpty();
+			}
+			
+		});
+		
+		// Creating the stack shouldn't load any objects
+		var stack = createStack(hierarchy, Long.MAX_VALUE);
+		assertFalse(hierarchy.isFullyLoaded());
+		assertEquals(10, pending.size());
+		
+		// Loading objects shouldn't be recorded as a change
+		var detections = new ArrayList<>(hierarchy.getDetectionObjects());
+		assertEquals(10, detections.size());
+		assertFalse(stack.canUndo());
+		
+		// Undoing a change to a loaded object should restore it, not remove it
+		var detection = detections.get(0);
+		hierarchy.getSelectionModel().setSelectedObject(detection);
+		var pathClass = PathClassFactory.getPathClass("Tumor");
+		detection.setPathClass(pathClass);
+		hierarchy.fireObjectClassificationsChangedEvent(this, Collections.singletonList(detection));
+		assertTrue(stack.undoOnce());
+		assertNull(detection.getPathClass());
+		assertSame(annotation, detection.getParent());
+		assertEquals(10, hierarchy.getDetectionObjects().size());
+		assertTrue(stack.redoOnce());
+		assertEquals(pathClass, detection.getPathClass());
+	}
+	
+	@Test
+	public void testUnknownChanges() {
+		var hierarchy = new PathObjectHierarchy();
+		var annotation = createAnnotation(0, 0, 100);
+		hierarchy.addPathObject(annotation);
+		var stack = createStack(hierarchy, Long.MAX_VALUE);
+		
+		// The previous classification isn't known, because the object was neither selected nor changed
+		annotation.setPathClass(PathClassFactory.getPathClass("Tumor"));
+		hierarchy.fireObjectClassificationsChangedEvent(this, Collections.singletonList(annotation));
+		assertFalse(stack.canUndo());
+		
+		// Removing the object can still be undone, without losing the classification
+		hierarchy.removeObject(annotation, true);
+		assertTrue(stack.undoOnce());
+		assertSame(hierarchy.getRootObject(), annotation.getParent());
+		assertEquals(PathClassFactory.getPathClass("Tumor"), annotation.getPathClass());
+		
+		// Once it has been changed, its state is known
+		annotation.setPathClass(PathClassFactory.getPathClass("Stroma"));
+		hierarchy.fireObjectClassificationsChangedEvent(this, Collections.singletonList(annotation));
+		assertTrue(stack.undoOnce());
+		assertEquals(PathClassFactory.getPathClass("Tumor"), annotation.getPathClass());
+	}
+	
+	@Test
+	public void testMemoryLimit() {
+		// Existing objects shouldn't need any memory
+		var hierarchy = new PathObjectHierarchy();
+		for (int i = 0; i < 100; i++)
+			hierarchy.addPathObject(createDetection(i, i));
+		var stack = createStack(hierarchy, 1000L);
+		assertEquals(0, stack.totalBytes());
+		
+		hierarchy.addPathObject(createAnnotation(0, 0, 100));
+		assertTrue(stack.canUndo());
+		assertTrue(stack.totalBytes() > 0);
+		
+		// The oldest changes should be discarded when the limit is exceeded
+		for (int i = 0; i < 20; i++)
+			hierarchy.addPathObject(createAnnotation(i, i, 10));
+		assertTrue(stack.totalBytes() <= 1000L);
+		int nUndo = 0;
+		while (stack.undoOnce())
+			nUndo++;
+		assertTrue(nUndo > 0);
+		assertTrue(nUndo < 21);
+		stack.clear();
+		assertEquals(0, stack.totalBytes());
+		
+		// If a single change exceeds the limit, nothing should be stored
+		hierarchy = new PathObjectHierarchy();
+		stack = createStack(hierarchy, 1L);
+		hierarchy.addPathObject(createAnnotation(0, 0, 100));
+		hierarchy.addPathObject(createAnnotation(0, 0, 50));
+		assertFalse(stack.canUndo());
+		assertEquals(0, stack.totalBytes());
+	}
+
+}
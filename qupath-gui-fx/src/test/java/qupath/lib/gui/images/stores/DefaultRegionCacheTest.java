@@ -0,0 +1,136 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.lib.gui.images.stores;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.color.ColorModelFactory;
+import qupath.lib.images.servers.ImageChannel;
+import qupath.lib.images.servers.PixelType;
+import qupath.lib.regions.RegionRequest;
+
+@SuppressWarnings("javadoc")
+public class DefaultRegionCacheTest {
+	
+	private static final SizeEstimator<BufferedImage> estimator = new BufferedImageSizeEstimator();
+	
+	@Test
+	public void testEviction() {
+		// Each tile is 64 KB, so we have space for 10
+		long tileBytes = estimator.getApproxImageSize(createRGB());
+		var cache = new DefaultRegionCache<>(estimator, tileBytes * 10);
+		for (int i = 0; i < 100; i++) {
+			cache.put(createRequest(i), createRGB());
+			assertTrue(cache.getStatistics().getHeapBytes() <= tileBytes * 10);
+		}
+		assertEquals(10, cache.size());
+		assertEquals(90, cache.getStatistics().getEvictionCount());
+		// Most recent tiles should be retained
+		for (int i = 90; i < 100; i++)
+			assertNotNull(cache.get(createRequest(i)));
+		assertNull(cache.get(createRequest(0)));
+		var stats = cache.getStatistics();
+		assertEquals(10, stats.getHitCount());
+		assertEquals(1, stats.getMissCount());
+		
+		// Tiles that are too big can't be cached
+		var imgLarge = new BufferedImage(1024, 1024, BufferedImage.TYPE_INT_RGB);
+		cache.put(createRequest(1000), imgLarge);
+		assertFalse(cache.containsKey(createRequest(1000)));
+		
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertEquals(0L, cache.getStatistics().getHeapBytes());
+	}
+	
+	@Test
+	public void testScanResistance() {
+		long tileBytes = estimator.getApproxImageSize(createRGB());
+		var cache = new DefaultRegionCache<>(estimator, tileBytes * 64);
+		// Request a small set of tiles repeatedly, so they are protected
+		for (int i = 0; i < 4; i++) {
+			cache.put(createRequest(i), createRGB());
+			cache.get(createRequest(i));
+		}
+		// Scan through many other tiles, each used once
+		for (int i = 100; i < 1000; i++)
+			cache.put(createRequest(i), createRGB());
+		for (int i = 0; i < 4; i++)
+			assertNotNull(cache.get(createRequest(i)));
+	}
+	
+	@Test
+	public void testOffHeap() {
+		var images = new BufferedImage[] {
+				createRGB(),
+				new BufferedImage(32, 48, BufferedImage.TYPE_BYTE_GRAY),
+				new BufferedImage(32, 48, BufferedImage.TYPE_USHORT_GRAY),
+				createFloat(3)
+		};
+		var random = new Random(100L);
+		for (var img : images) {
+			var raster = img.getRaster();
+			for (int b = 0; b < raster.getNumBands(); b++) {
+				for (int y = 0; y < img.getHeight(); y++) {
+					for (int x = 0; x < img.getWidth(); x++)
+						raster.setSample(x, y, b, random.nextInt(255));
+				}
+			}
+		}
+		long maxBytes = estimator.getApproxImageSize(images[0]);
+		var cache = new DefaultRegionCache<>(estimator, maxBytes, new BufferedImageOffHeapCodec(), maxBytes * 10);
+		for (int i = 0; i < images.length; i++)
+			cache.put(createRequest(i), images[i]);
+		assertTrue(cache.getStatistics().getOffHeapTileCount() > 0);
+		for (int i = 0; i < images.length; i++) {
+			var img = cache.get(createRequest(i));
+			assertNotNull(img);
+			assertEquals(images[i].getColorModel(), img.getColorModel());
+			var raster = images[i].getRaster();
+			assertArrayEquals(
+					raster.getPixels(0, 0, raster.getWidth(), raster.getHeight(), (double[])null),
+					img.getRaster().getPixels(0, 0, raster.getWidth(), raster.getHeight(), (double[])null));
+		}
+		assertTrue(cache.getStatistics().getOffHeapHitCount() > 0);
+	}
+	
+	private static RegionRequest createRequest(int ind) {
+		return RegionRequest.createInstance("test", 1.0, ind * 128, 0, 128, 128);
+	}
+	
+	private static BufferedImage createRGB() {
+		return new BufferedImage(128, 128, BufferedImage.TYPE_INT_RGB);
+	}
+	
+	private static BufferedImage createFloat(int nChannels) {
+		var colorModel = ColorModelFactory.createColorModel(PixelType.FLOAT32, ImageChannel.getDefaultChannelList(nChannels));
+		var raster = colorModel.createCompatibleWritableRaster(32, 48);
+		return new BufferedImage(colorModel, raster, false, null);
+	}
+
+}
@@ -0,0 +1,255 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.lib.gui.images.stores;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.images.servers.AbstractTileableImageServer;
+import qupath.lib.images.servers.ImageChannel;
+import qupath.lib.images.servers.ImageServer;
+import qupath.lib.images.servers.ImageServerBuilder.ServerBuilder;
+import qupath.lib.images.servers.ImageServerMetadata;
+import qupath.lib.images.servers.PixelType;
+import qupath.lib.images.servers.TileRequest;
+import qupath.lib.regions.RegionRequest;
+
+@SuppressWarnings("javadoc")
+public class TilePrefetchTest {
+
+	private static final int TILE_SIZE = 64;
+
+	// The store allows up to 5 speculative requests at once (half the threads of its request manager)
+	private static final int MAX_PREFETCH = 5;
+
+	// Enough blocking requests to occupy every thread of the store's pool
+	private static final int MAX_POOL_THREADS = 32;
+
+	@Test
+	public void testRunningRequestsAreNotCancelled() throws Exception {
+		var server = new BlockingServer();
+		var store = new UncancellableStore(100L * 1024L * 1024L);
+		try {
+			var owner1 = new Object();
+			var owner2 = new Object();
+
+			store.prefetchTiles(owner1, server, Collections.singletonList(createRow(server, 0)));
+			assertTrue(server.started.tryAcquire(MAX_PREFETCH, 10, TimeUnit.SECONDS));
+			var stats = store.getPrefetchStatistics();
+			assertEquals(MAX_PREFETCH, stats.getRequestedCount());
+			assertEquals(MAX_PREFETCH, stats.getPendingCount());
+
+			// Running requests that can't be cancelled should continue to count towards the limit
+			store.prefetchTiles(owner1, server, Collections.emptyList());
+			stats = store.getPrefetchStatistics();
+			assertEquals(0, stats.getCancelledCount());
+			assertEquals(MAX_PREFETCH, stats.getPendingCount());
+
+			store.prefetchTiles(owner2, server, Collections.singletonList(createRow(server, 2)));
+			assertEquals(MAX_PREFETCH, store.getPrefetchStatistics().getRequestedCount());
+
+			// Once the running requests complete, the new requests can start
+			server.release.countDown();
+			stats = waitForStatistics(store, s -> s.getPendingCount() == 0 && s.getCompletedCount() == s.getRequestedCount());
+			assertEquals(MAX_PREFETCH + 8, stats.getRequestedCount());
+			assertEquals(0, stats.getCancelledCount());
+			assertEquals(0, stats.getHitCount());
+
+			// Requesting a tile that was prefetched should count as a hit, but only once
+			var tile = RegionRequest.createInstance(server.getPath(), 1.0, 0, 0, TILE_SIZE, TILE_SIZE);
+			assertNotNull(store.requestImageTile(server, tile, store.cache, false));
+			assertNotNull(store.requestImageTile(server, tile, store.cache, false));
+			assertEquals(1, store.getPrefetchStatistics().getHitCount());
+		} finally {
+			server.release.countDown();
+			store.close();
+		}
+	}
+
+	@Test
+	public void testQueuedRequestsAreCancelled() throws Exception {
+		var server = new BlockingServer();
+		var store = new DefaultImageRegionStore(100L * 1024L * 1024L);
+		try {
+			// Occupy all the threads, so that speculative requests are queued
+			for (int i = 0; i < MAX_POOL_THREADS; i++) {
+				var request = RegionRequest.createInstance(server.getPath(), 1.0, i * TILE_SIZE, 15 * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+				store.requestImageTile(server, request, store.cache, false);
+			}
+
+			var owner = new Object();
+			store.prefetchTiles(owner, server, Collections.singletonList(createRow(server, 0)));
+			var stats = store.getPrefetchStatistics();
+			assertEquals(MAX_PREFETCH, stats.getRequestedCount());
+			assertEquals(MAX_PREFETCH, stats.getPendingCount());
+
+			// Queued requests should be cancelled, freeing their slots
+			store.prefetchTiles(owner, server, Collections.emptyList());
+			stats = store.getPrefetchStatistics();
+			assertEquals(MAX_PREFETCH, stats.getCancelledCount());
+			assertEquals(0, stats.getPendingCount());
+
+			// New requests can then be made immediately
+			store.prefetchTiles(owner, server, Collections.singletonList(createRow(server, 2)));
+			assertEquals(MAX_PREFETCH * 2, store.getPrefetchStatistics().getRequestedCount());
+
+			server.release.countDown();
+			stats = waitForStatistics(store, s -> s.getPendingCount() == 0 && s.getCompletedCount() + s.getCancelledCount() == s.getRequestedCount());
+			assertEquals(MAX_PREFETCH, stats.getCancelledCount());
+			assertEquals(8 + MAX_PREFETCH, stats.getRequestedCount());
+			assertEquals(8, stats.getCompletedCount());
+		} finally {
+			server.release.countDown();
+			store.close();
+		}
+	}
+
+
+	/**
+	 * Create a request for a row of 8 tiles.
+	 */
+	private static RegionRequest createRow(BlockingServer server, int row) {
+		return RegionRequest.createInstance(server.getPath(), 1.0, 0, row * TILE_SIZE, TILE_SIZE * 8, TILE_SIZE);
+	}
+
+	private static PrefetchStatistics waitForStatistics(DefaultImageRegionStore store, Predicate<PrefetchStatistics> predicate) throws InterruptedException {
+		long endTime = System.currentTimeMillis() + 10_000L;
+		var stats = store.getPrefetchStatistics();
+		while (!predicate.test(stats) && System.currentTimeMillis() < endTime) {
+			Thread.sleep(10L);
+			stats = store.getPrefetchStatistics();
+		}
+		assertTrue(predicate.test(stats), "Unexpected statistics: " + stats);
+		return stats;
+	}
+
+
+	/**
+	 * Store with workers that can only be cancelled before they start running.
+	 */
+	static class UncancellableStore extends DefaultImageRegionStore {
+
+		UncancellableStore(long tileCacheSize) {
+			super(tileCacheSize);
+		}
+
+		@Override
+		protected TileWorker<BufferedImage> createTileWorker(ImageServer<BufferedImage> server, RegionRequest request,
+				Map<RegionRequest, BufferedImage> cache, boolean ensureTileReturned) {
+			return new DefaultTileWorker(server, request, cache, ensureTileReturned) {
+
+				private volatile boolean started = false;
+
+				@Override
+				public void run() {
+					started = true;
+					super.run();
+				}
+
+				@Override
+				public boolean cancel(boolean mayInterruptIfRunning) {
+					return !started && super.cancel(mayInterruptIfRunning);
+				}
+
+			};
+		}
+
+	}
+
+
+	/**
+	 * Server that blocks all reads until released.
+	 */
+	static class BlockingServer extends AbstractTileableImageServer {
+
+		private final Semaphore started = new Semaphore(0);
+		private final CountDownLatch release = new CountDownLatch(1);
+
+		private final ImageServerMetadata metadata = new ImageServerMetadata.Builder()
+				.width(TILE_SIZE * 16)
+				.height(TILE_SIZE * 16)
+				.preferredTileSize(TILE_SIZE, TILE_SIZE)
+				.levelsFromDownsamples(1.0)
+				.rgb(true)
+				.pixelType(PixelType.UINT8)
+				.channels(ImageChannel.getDefaultRGBChannels())
+				.build();
+
+		@Override
+		public BufferedImage readBufferedImage(RegionRequest request) throws IOException {
+			started.release();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException(e);
+			}
+			return createDefaultRGBImage((int)(request.getWidth() / request.getDownsample()), (int)(request.getHeight() / request.getDownsample()));
+		}
+
+		@Override
+		protected BufferedImage readTile(TileRequest tileRequest) throws IOException {
+			return createDefaultRGBImage(tileRequest.getTileWidth(), tileRequest.getTileHeight());
+		}
+
+		@Override
+		public Collection<URI> getURIs() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		protected String createID() {
+			return UUID.randomUUID().toString();
+		}
+
+		@Override
+		public String getServerType() {
+			return "Blocking test server";
+		}
+
+		@Override
+		public ImageServerMetadata getOriginalMetadata() {
+			return metadata;
+		}
+
+		@Override
+		protected ServerBuilder<BufferedImage> createServerBuilder() {
+			return null;
+		}
+
+	}
+
+}
@@ -0,0 +1,127 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.lib.gui.models;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.gui.measure.ColumnarMeasurementTableData;
+import qupath.lib.gui.measure.ObservableMeasurementTableData;
+import qupath.lib.images.ImageData;
+import qupath.lib.objects.PathAnnotationObject;
+import qupath.lib.objects.PathDetectionObject;
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjects;
+import qupath.lib.objects.classes.PathClass;
+import qupath.lib.objects.classes.PathClassFactory;
+import qupath.lib.objects.classes.PathClassFactory.StandardPathClasses;
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.roi.ROIs;
+
+/**
+ * Check a columnar table gives the same values as the observable model it wraps.
+ */
+@SuppressWarnings("javadoc")
+public class ColumnarMeasurementTableDataTest {
+	
+	@Test
+	public void test() {
+		ImageData<BufferedImage> imageData = new ImageData<>(null);
+		var hierarchy = imageData.getHierarchy();
+		var plane = ImagePlane.getDefaultPlane();
+		var rand = new Random(100L);
+		
+		PathClass tumorClass = PathClassFactory.getPathClass(StandardPathClasses.TUMOR);
+		PathClass stromaClass = PathClassFactory.getPathClass(StandardPathClasses.STROMA);
+		PathClass[] classes = {
+				PathClassFactory.getNegative(tumorClass), PathClassFactory.getOnePlus(tumorClass),
+				PathClassFactory.getTwoPlus(tumorClass), PathClassFactory.getThreePlus(tumorClass),
+				PathClassFactory.getNegative(stromaClass), PathClassFactory.getPositive(stromaClass),
+				stromaClass, null
+		};
+		
+		List<PathObject> detections = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) {
+			var detection = PathObjects.createDetectionObject(
+					ROIs.createEllipseROI(rand.nextDouble() * 1000, rand.nextDouble() * 1000, 5, 5, plane),
+					classes[rand.nextInt(classes.length)]);
+			try (var ml = detection.getMeasurementList()) {
+				ml.putMeasurement("Intensity", rand.nextDouble());
+				if (i % 2 == 0)
+					ml.putMeasurement("Only some", i);
+			}
+			detections.add(detection);
+		}
+		hierarchy.addPathObjects(detections);
+		for (int i = 0; i < 10; i++)
+			hierarchy.insertPathObject(PathObjects.createAnnotationObject(ROIs.createRectangleROI(i * 100, i * 50, 300, 400, plane)), true);
+		
+		// Compare annotations (mostly derived measurements) & detections (mostly stored measurements)
+		for (var cls : List.of(PathAnnotationObject.class, PathDetectionObject.class)) {
+			var model = new ObservableMeasurementTableData();
+			model.setImageData(imageData, hierarchy.getObjects(null, cls));
+			var columnar = new ColumnarMeasurementTableData(model);
+			assertEquals(model.getAllNames(), columnar.getAllNames());
+			assertTrue(model.getMeasurementNames().contains(cls == PathAnnotationObject.class ? "Tumor: H-score" : "Intensity"));
+			
+			for (String name : model.getAllNames()) {
+				// Image name isn't available without a server
+				if ("Image".equals(name))
+					continue;
+				for (var pathObject : model.getItems()) {
+					if (model.isNumericMeasurement(name))
+						assertEquals(model.getNumericValue(pathObject, name), columnar.getNumericValue(pathObject, name), 1e-6, name);
+					assertEquals(model.getStringValue(pathObject, name), columnar.getStringValue(pathObject, name), name);
+				}
+				if (model.isNumericMeasurement(name))
+					assertArrayEquals(model.getDoubleValues(name), columnar.getDoubleValues(name), 1e-6, name);
+			}
+		}
+		
+		// Check changes are only seen after refreshing
+		var model = new ObservableMeasurementTableData();
+		model.setImageData(imageData, hierarchy.getAnnotationObjects());
+		var columnar = new ColumnarMeasurementTableData(model);
+		var annotation = hierarchy.getAnnotationObjects().iterator().next();
+		double count = columnar.getNumericValue(annotation, "Num Detections");
+		for (int i = 0; i < 5; i++)
+			hierarchy.addPathObjectBelowParent(annotation, PathObjects.createDetectionObject(ROIs.createRectangleROI(annotation.getROI().getCentroidX(), annotation.getROI().getCentroidY(), 1, 1, plane)), true);
+		assertEquals(count, columnar.getNumericValue(annotation, "Num Detections"));
+		columnar.refresh();
+		assertEquals(count + 5, columnar.getNumericValue(annotation, "Num Detections"));
+
+		// Check values are requested from the model until a deferred snapshot is computed
+		var deferred = new ColumnarMeasurementTableData(model, false);
+		assertEquals(model.getNumericValue(annotation, "Num Detections"), deferred.getNumericValue(annotation, "Num Detections"));
+		assertArrayEquals(model.getDoubleValues("Num Detections"), deferred.getDoubleValues("Num Detections"), 1e-6);
+		deferred.refresh();
+		assertEquals(count + 5, deferred.getNumericValue(annotation, "Num Detections"));
+	}
+
+}
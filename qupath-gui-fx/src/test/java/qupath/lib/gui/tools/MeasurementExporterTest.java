@@ -0,0 +1,249 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2026 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.gui.tools;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.Multimap;
+
+import qupath.lib.gui.commands.SummaryMeasurementTableCommand;
+import qupath.lib.gui.measure.ObservableMeasurementTableData;
+import qupath.lib.images.ImageData;
+import qupath.lib.images.servers.WrappedBufferedImageServer;
+import qupath.lib.objects.PathAnnotationObject;
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjects;
+import qupath.lib.objects.classes.PathClassFactory;
+import qupath.lib.projects.ProjectImageEntry;
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.roi.ROIs;
+
+/**
+ * Check that measurements are exported in the same format as the previous, single-threaded exporter.
+ */
+@SuppressWarnings("javadoc")
+public class MeasurementExporterTest {
+
+	@Test
+	public void testExportMatchesPreviousFormat() {
+		var entries = Arrays.asList(
+				createEntry("First", () -> createImageData("First", 0, "Shared", "Comma, measurement")),
+				createEntry("Second", () -> createImageData("Second", 1, "Shared", "Only second"))
+				);
+
+		for (String separator : Arrays.asList(",", "\t", ";")) {
+			for (int nThreads : new int[] {1, 2}) {
+				var exporter = new MeasurementExporter()
+						.imageList(entries)
+						.exportType(PathAnnotationObject.class)
+						.separator(separator)
+						.threads(nThreads);
+				String output = export(exporter);
+				assertEquals(exportPreviousFormat(entries, PathAnnotationObject.class, separator, Collections.emptyList()), output,
+						"Separator '" + separator + "', " + nThreads + " thread(s)");
+
+				// Check the rows are in image & object order
+				var lines = output.split(System.lineSeparator());
+				assertEquals(1 + 3 + 3, lines.length);
+				for (int i = 0; i < 6; i++) {
+					String name = (i < 3 ? "First" : "Second") + " " + (i % 3);
+					assertTrue(lines[i+1].contains(name), "Expected " + name + " in " + lines[i+1]);
+				}
+
+				// Check values containing the separator are quoted, and missing values are blank
+				if (",".equals(separator)) {
+					assertTrue(lines[0].contains("\"Comma, measurement\""));
+					assertTrue(lines[1].contains("\"First 0, with comma\""));
+				}
+			}
+		}
+
+		// Check excluded columns are handled in the same way
+		var exporter = new MeasurementExporter()
+				.imageList(entries)
+				.exportType(PathAnnotationObject.class)
+				.separator(",")
+				.excludeColumns("Shared", "Centroid X µm");
+		String output = export(exporter);
+		assertEquals(exportPreviousFormat(entries, PathAnnotationObject.class, ",", Arrays.asList("Shared", "Centroid X µm")), output);
+		assertFalse(output.split(System.lineSeparator())[0].contains("Shared"));
+	}
+
+
+	private static String export(MeasurementExporter exporter) {
+		var stream = new ByteArrayOutputStream();
+		exporter.exportMeasurements(stream);
+		return new String(stream.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Create an image with three annotations, each with the specified measurements.
+	 * The first object has a name containing a comma, and the last is missing the final measurement.
+	 */
+	private static ImageData<BufferedImage> createImageData(String name, int seed, String... measurements) {
+		var server = new WrappedBufferedImageServer(name, new BufferedImage(100, 100, BufferedImage.TYPE_BYTE_GRAY));
+		var imageData = new ImageData<>(server);
+		List<PathObject> pathObjects = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			var annotation = PathObjects.createAnnotationObject(
+					ROIs.createRectangleROI(i * 20, i * 10, 10 + i, 20, ImagePlane.getDefaultPlane()),
+					i == 1 ? PathClassFactory.getPathClass("Tumor") : null);
+			annotation.setName(name + " " + i + (i == 0 ? ", with comma" : ""));
+			try (var ml = annotation.getMeasurementList()) {
+				for (int m = 0; m < measurements.length; m++) {
+					if (i == 2 && m == measurements.length - 1)
+						continue;
+					ml.putMeasurement(measurements[m], seed + i * 1.5 + m);
+				}
+			}
+			pathObjects.add(annotation);
+		}
+		imageData.getHierarchy().addPathObjects(pathObjects);
+		return imageData;
+	}
+
+	/**
+	 * Create a minimal project entry that provides new image data whenever it is read.
+	 */
+	@SuppressWarnings("unchecked")
+	private static ProjectImageEntry<BufferedImage> createEntry(String name, Supplier<ImageData<BufferedImage>> supplier) {
+		return (ProjectImageEntry<BufferedImage>)Proxy.newProxyInstance(
+				MeasurementExporterTest.class.getClassLoader(),
+				new Class<?>[] {ProjectImageEntry.class},
+				(proxy, method, args) -> {
+					switch (method.getName()) {
+					case "readImageData":
+						return supplier.get();
+					case "getImageName":
+					case "toString":
+						return name;
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					case "equals":
+						return proxy == args[0];
+					default:
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+
+
+	/**
+	 * Export measurements using the approach of the previous exporter, which created a table of strings
+	 * for each image and then split it into columns again.
+	 */
+	@SuppressWarnings("rawtypes")
+	private static String exportPreviousFormat(List<ProjectImageEntry<BufferedImage>> imageList, Class<? extends PathObject> type,
+			String separator, List<String> excludeColumns) {
+		Map<ProjectImageEntry<?>, String[]> imageCols = new HashMap<ProjectImageEntry<?>, String[]>();
+		Map<ProjectImageEntry<?>, Integer> nImageEntries = new HashMap<ProjectImageEntry<?>, Integer>();
+		List<String> allColumns = new ArrayList<String>();
+		Multimap<String, String> valueMap = LinkedListMultimap.create();
+		String pattern = "(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)";
+
+		for (ProjectImageEntry<?> entry: imageList) {
+			try {
+				ImageData<?> imageData = entry.readImageData();
+				ObservableMeasurementTableData model = new ObservableMeasurementTableData();
+				model.setImageData(imageData, imageData == null ? Collections.emptyList() : imageData.getHierarchy().getObjects(null, type));
+				List<String> data = SummaryMeasurementTableCommand.getTableModelStrings(model, separator, excludeColumns);
+
+				String[] header;
+				String headerString = data.get(0);
+				if (headerString.chars().filter(e -> e == '"').count() > 1)
+					header = headerString.split(separator.equals("\t") ? "\\" + separator : separator + pattern , -1);
+				else
+					header = headerString.split(separator);
+
+				imageCols.put(entry, header);
+				nImageEntries.put(entry, data.size()-1);
+
+				for (String col: header) {
+					if (!allColumns.contains(col)  && !excludeColumns.contains(col))
+						allColumns.add(col);
+				}
+
+				for (int i = 1; i < data.size(); i++) {
+					String[] row;
+					String rowString = data.get(i);
+					if (rowString.chars().filter(e -> e == '"').count() > 1)
+						row = rowString.split(separator.equals("\t") ? "\\" + separator : separator + pattern , -1);
+					else
+						row = rowString.split(separator);
+					for (int elem = 0; elem < row.length; elem++) {
+						if (allColumns.contains(header[elem]))
+							valueMap.put(header[elem], row[elem]);
+					}
+				}
+			} catch (Exception e) {
+				fail(e);
+			}
+		}
+
+		var stream = new ByteArrayOutputStream();
+		try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8))){
+			writer.write(String.join(separator, allColumns));
+			writer.write(System.lineSeparator());
+
+			Iterator[] its = new Iterator[allColumns.size()];
+			for (int col = 0; col < allColumns.size(); col++) {
+				its[col] = valueMap.get(allColumns.get(col)).iterator();
+			}
+
+			for (ProjectImageEntry<?> entry: imageList) {
+				for (int nObject = 0; nObject < nImageEntries.get(entry); nObject++) {
+					for (int nCol = 0; nCol < allColumns.size(); nCol++) {
+						if (Arrays.stream(imageCols.get(entry)).anyMatch(allColumns.get(nCol)::equals)) {
+							String val = (String)its[nCol].next();
+							if (val.equals("NaN"))
+								val = "";
+							writer.write(val);
+						}
+						if (nCol < allColumns.size()-1)
+							writer.write(separator);
+					}
+					writer.write(System.lineSeparator());
+				}
+			}
+		}
+		return new String(stream.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+}
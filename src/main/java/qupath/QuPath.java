@@ -28,9 +28,11 @@ import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.ServiceLoader;
+import java.util.stream.Collectors;
 
 import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
@@ -59,6 +61,7 @@ import qupath.lib.gui.images.stores.ImageRegionStoreFactory;
 import qupath.lib.gui.logging.LogManager;
 import qupath.lib.gui.logging.LogManager.LogLevel;
 import qupath.lib.gui.prefs.PathPrefs;
+import qupath.lib.gui.scripting.BatchScriptRunner;
 import qupath.lib.gui.scripting.DefaultScriptEditor;
 import qupath.lib.gui.tma.QuPathTMAViewer;
 import qupath.lib.images.ImageData;
@@ -263,6 +266,12 @@ class ScriptCommand implements Runnable {
 	@Option(names = {"-s", "--save"}, description = "Request that data files are updated for each image in the project.", paramLabel = "save")
 	boolean save;
 	
+	@Option(names = {"-t", "--threads"}, description = "Number of project images to process in parallel (default 1).", paramLabel = "threads")
+	int nThreads = 1;
+	
+	@Option(names = {"-r", "--report"}, description = "Path to write a tab-delimited report with the timing and status for each project image.", paramLabel = "report")
+	private String reportPath;
+	
 	@Option(names = {"-h", "--help"}, usageHelp = true, description = "Show this help message and exit.")
 	boolean usageHelpRequested;
 	
@@ -286,21 +295,30 @@ class ScriptCommand implements Runnable {
 			if (projectPath != null && !projectPath.equals("")) {
 				String path = QuPath.getEncodedPath(projectPath);
 				Project<BufferedImage> project = ProjectIO.loadProject(new File(path), BufferedImage.class);
-				for (var entry: project.getImageList()) {
-					if (imagePath != null && !imagePath.equals("") && !imagePath.equals(entry.getImageName()))
-						continue;
-					logger.info("Running script for {}", entry.getImageName());
-					imageData = entry.readImageData();
-					try {
-						Object result = runScript(project, entry.readImageData());
-						if (result != null)
-							logger.info("Script result: {}", result);
-						if (save)
-							entry.saveImageData(imageData);
-					} catch (Exception e) {
-						logger.error("Error running script for image: " + entry.getImageName(), e);
-					}
-					imageData.getServer().close();
+				var entries = project.getImageList().stream()
+						.filter(entry -> imagePath == null || imagePath.equals("") || imagePath.equals(entry.getImageName()))
+						.collect(Collectors.toList());
+				
+				PrintWriter outWriter = new PrintWriter(System.out, true);
+				PrintWriter errWriter = new PrintWriter(System.err, true);
+				var runner = BatchScriptRunner.builder(createScriptEngine(), readScript())
+						.images(project, entries)
+						.save(save)
+						.threads(nThreads)
+						.context(() -> createScriptContext(outWriter, errWriter))
+						.listener(r -> {
+							if (r.getResult() != null)
+								logger.info("Script result for {}: {}", r.getEntry().getImageName(), r.getResult());
+							logger.info(r.toString());
+						})
+						.build();
+				var report = runner.run();
+				for (var failed : report.getResults(BatchScriptRunner.Status.FAILED))
+					logger.error("Error running script for image: " + failed.getEntry().getImageName(), failed.getException());
+				logger.info(report.toString());
+				if (reportPath != null && !reportPath.isBlank()) {
+					report.writeReport(Paths.get(QuPath.getEncodedPath(reportPath)));
+					logger.info("Report written to {}", reportPath);
 				}
 			} else if (imagePath != null && !imagePath.equals("")) {
 				String path = QuPath.getEncodedPath(imagePath);
@@ -349,36 +367,50 @@ class ScriptCommand implements Runnable {
 	}
 	
 	
-	private Object runScript(Project<BufferedImage> project, ImageData<BufferedImage> imageData) throws IOException, ScriptException {
-		Object result = null;
-		
+	private ScriptEngine createScriptEngine() {
 		ClassLoader classLoader = new ExtensionClassLoader();
 		ScriptEngineManager manager = new ScriptEngineManager(classLoader);
-		
-		String script = scriptCommand;
 		ScriptEngine engine;
-		if (script == null) {
+		if (scriptCommand == null) {
 			String ext = scriptFile.substring(scriptFile.lastIndexOf(".")+1);
 			engine = manager.getEngineByExtension(ext);
 			if (engine == null)
 				throw new IllegalArgumentException("No script engine found for " + scriptFile);
-			
-			// Try to run the script
-			// Read script
-			script = GeneralTools.readFileAsString(QuPath.getEncodedPath(scriptFile));
-		} else {
-			if (GeneralTools.isWindows() && !StandardCharsets.US_ASCII.newEncoder().canEncode(script))
-				logger.warn("Non-ASCII characters detected in the specified script! If you experience encoding issues, try passing a script file instead.");
+		} else
 			engine = manager.getEngineByExtension("groovy");
-		}
+		return engine;
+	}
+	
+	
+	private String readScript() throws IOException {
+		if (scriptCommand == null)
+			return GeneralTools.readFileAsString(QuPath.getEncodedPath(scriptFile));
+		if (GeneralTools.isWindows() && !StandardCharsets.US_ASCII.newEncoder().canEncode(scriptCommand))
+			logger.warn("Non-ASCII characters detected in the specified script! If you experience encoding issues, try passing a script file instead.");
+		return scriptCommand;
+	}
+	
+	
+	/**
+	 * Try to make sure that the standard outputs are used
+	 */
+	private static ScriptContext createScriptContext(PrintWriter outWriter, PrintWriter errWriter) {
+		ScriptContext context = new SimpleScriptContext();
+		context.setWriter(outWriter);
+		context.setErrorWriter(errWriter);
+		return context;
+	}
+	
+	
+	private Object runScript(Project<BufferedImage> project, ImageData<BufferedImage> imageData) throws IOException, ScriptException {
+		Object result = null;
 		
+		ScriptEngine engine = createScriptEngine();
+		String script = readScript();
 		
-		// Try to make sure that the standard outputs are used
-		ScriptContext context = new SimpleScriptContext();
 		PrintWriter outWriter = new PrintWriter(System.out, true);
 		PrintWriter errWriter = new PrintWriter(System.err, true);
-		context.setWriter(outWriter);
-		context.setErrorWriter(errWriter);
+		ScriptContext context = createScriptContext(outWriter, errWriter);
 		
 		// Evaluate the script
 		result = DefaultScriptEditor.executeScript(engine, script, project, imageData, true, context);